@@ -34,6 +34,7 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
@@ -42,6 +43,11 @@ import java.util.Set;
 import java.util.TimeZone;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.ejb.CreateException;
 import javax.naming.NamingException;
@@ -116,6 +122,17 @@ public class DeviceQCPlotCreator {
             .getProperty("client.graphing.device.qc.plot.directory");
         this.plotsBaseUrlString = deviceQCProperties
             .getProperty("client.graphing.device.qc.plot.urlbase");
+        String deviceThreadsProperty = deviceQCProperties
+            .getProperty("client.graphing.device.qc.plot.threads");
+        try {
+            if ((deviceThreadsProperty != null)
+                && (!deviceThreadsProperty.trim().equals("")))
+                this.deviceThreads = Math.max(1, Integer
+                    .parseInt(deviceThreadsProperty.trim()));
+        } catch (NumberFormatException e) {
+            logger.error("Could not parse the number of threads: "
+                + e.getMessage());
+        }
 
         // Load the DB driver
         try {
@@ -130,7 +147,10 @@ public class DeviceQCPlotCreator {
 
     /**
      * This method reads all the configuration from the SSDS_Data database and
-     * creates all the plots that are specified there
+     * creates all the plots that are specified there. Each device is worked on
+     * as a separate task (several at a time) and the charts are rendered and
+     * written out on another pool of threads while the next device's data is
+     * being read.
      */
     public void buildPlots() {
 
@@ -141,542 +161,656 @@ public class DeviceQCPlotCreator {
                 + " device IDs from the database");
         } else {
             logger.debug("No deviceIDs were returned");
+            deviceIDs = new ArrayList();
         }
 
-        // Now loop over those IDs
+        // Look up the homes of the services once for all the devices
+        this.lookupHomes();
+
+        // Create the pools that the devices and the charts are worked on
+        ExecutorService devicePool = Executors
+            .newFixedThreadPool(this.deviceThreads);
+        this.renderPool = Executors.newFixedThreadPool(Runtime.getRuntime()
+            .availableProcessors());
+
+        // Now submit a task for each of those IDs
+        Collection deviceFutures = new ArrayList();
         Iterator deviceIDIter = deviceIDs.iterator();
         while (deviceIDIter.hasNext()) {
+            final Long deviceID = (Long) deviceIDIter.next();
+            deviceFutures.add(devicePool.submit(new Runnable() {
+                public void run() {
+                    buildPlots(deviceID);
+                }
+            }));
+        }
 
-            // Grab the ID
-            Long deviceID = (Long) deviceIDIter.next();
-            logger.debug("Working with device with ID " + deviceID);
-
-            // Grab the equivalent Device
-            Device currentDevice = null;
+        // Wait for the devices to be done (after which all the charts have
+        // been handed to the render pool)
+        Iterator futureIter = deviceFutures.iterator();
+        while (futureIter.hasNext()) {
+            Future deviceFuture = (Future) futureIter.next();
             try {
-                DeviceAccessHome devah = DeviceAccessUtil.getHome();
-                DeviceAccess deva = devah.create();
-                currentDevice = (Device) deva.findById(deviceID, true);
-            } catch (Exception e1) {
-                logger.error("Exception caught trying to find the Device: "
-                    + e1.getMessage());
-            }
-            if (currentDevice != null) {
-                logger.debug("Found matching persistent device: "
-                    + currentDevice.toStringRepresentation("|"));
-            } else {
-                logger.debug("No matching persistent device found");
+                deviceFuture.get();
+            } catch (ExecutionException e) {
+                logger.error("Exception caught building the plots for a "
+                    + "device: " + e.getCause());
+            } catch (InterruptedException e) {
+                logger.error("Interrupted waiting for the device plots");
+                Thread.currentThread().interrupt();
+                break;
             }
+        }
+        devicePool.shutdown();
+
+        // And for the charts to be written
+        this.renderPool.shutdown();
+        try {
+            while (!this.renderPool.awaitTermination(60, TimeUnit.SECONDS))
+                logger.debug("Still waiting for the charts to be written");
+        } catch (InterruptedException e) {
+            logger.error("Interrupted waiting for the charts to be written");
+            Thread.currentThread().interrupt();
+        }
+
+        // Build the header pages
+        this.buildHeadPages();
+
+        // Now build the master index page
+        this.buildIndexPage();
+    }
+
+    /**
+     * This method creates all the plots that are specified for one device. The
+     * metadata of the device is only read once and the charts are handed off
+     * to the render pool.
+     * 
+     * @param deviceID
+     *            the ID of the device to build the plots for
+     */
+    private void buildPlots(Long deviceID) {
+        logger.debug("Working with device with ID " + deviceID);
+
+        // The metadata for this device
+        DeviceMetadata deviceMetadata = new DeviceMetadata(deviceID);
+
+        // Grab the equivalent Device
+        Device currentDevice = deviceMetadata.getDevice();
+
+        // Grab the different chart types
+        Collection chartTypes = this.getChartTypes(deviceID);
+
+        // Loop over the chart types
+        Iterator chartIter = chartTypes.iterator();
+        while (chartIter.hasNext()) {
+            String chartType = (String) chartIter.next();
+            if (chartType.equalsIgnoreCase("time_series")) {
+
+                // Create the directories for the device (if needed)
+                File devicePlotsDirectory = new File(this.plotsBaseDirectory
+                    + File.separator + deviceID + File.separator + "plots");
+                if (!devicePlotsDirectory.exists())
+                    devicePlotsDirectory.mkdirs();
+                File deviceDataDirectory = new File(this.plotsBaseDirectory
+                    + File.separator + deviceID + File.separator + "data");
+                if (!deviceDataDirectory.exists())
+                    deviceDataDirectory.mkdirs();
+
+                // We need to iterate over the packetSubTypes
+                Collection packetSubTypes = this.getPacketSubTypes(deviceID);
+                Iterator packetSubTypesIter = packetSubTypes.iterator();
+                while (packetSubTypesIter.hasNext()) {
+                    // Grab the packet sub type
+                    Long packetSubType = (Long) packetSubTypesIter.next();
+
+                    // Grab the most recent data container so that I can grab
+                    // the full RecordVariable to use in graphing
+                    DataContainer mostRecentDataContainer = deviceMetadata
+                        .getMostRecentDataContainer(packetSubType);
+                    if (mostRecentDataContainer != null) {
+                        logger.debug("The most recent data container is "
+                            + mostRecentDataContainer
+                                .toStringRepresentation("|"));
+                    } else {
+                        logger
+                            .debug("No most recent data container was found");
+                    }
+
+                    // Grab the collection of record variable names
+                    Collection recordVariableNames = this
+                        .getRecordVariableNames(deviceID, packetSubType);
+                    if (recordVariableNames != null) {
+                        logger
+                            .debug(recordVariableNames.size()
+                                + " record variable names were specified in the database");
+                    } else {
+                        logger
+                            .debug("No record variable names specified in the database");
+                    }
 
-            // Grab the different chart types
-            Collection chartTypes = this.getChartTypes(deviceID);
-
-            // Loop over the chart types
-            Iterator chartIter = chartTypes.iterator();
-            while (chartIter.hasNext()) {
-                String chartType = (String) chartIter.next();
-                if (chartType.equalsIgnoreCase("time_series")) {
-
-                    // We need to iterate over the packetSubTypes
-                    Collection packetSubTypes = this
-                        .getPacketSubTypes(deviceID);
-                    Iterator packetSubTypesIter = packetSubTypes.iterator();
-                    while (packetSubTypesIter.hasNext()) {
-                        // Grab the packet sub type
-                        Long packetSubType = (Long) packetSubTypesIter.next();
-
-                        // Grab the most recent deployment so that I can grab
-                        // the full
-                        // RecordVariable to use in graphing
-                        DataContainer mostRecentDataContainer = null;
-                        try {
-                            DataProducerAccessHome dprodAccessHome = DataProducerAccessUtil
-                                .getHome();
-                            DataProducerAccess dprodAccess = dprodAccessHome
-                                .create();
-                            Collection deployments = dprodAccess.findByDevice(
-                                currentDevice, "startDate", "desc", false);
-                            if (deployments != null) {
-                                logger.debug(deployments.size()
-                                    + " deployments found for that device");
-                                Iterator deploymentIter = deployments
-                                    .iterator();
-                                while ((deploymentIter.hasNext())
-                                    && (mostRecentDataContainer == null)) {
-                                    DataProducer mostRecentDeployment = (DataProducer) deploymentIter
-                                        .next();
-                                    // Grab the full graph of the data producer
-                                    mostRecentDeployment = (DataProducer) dprodAccess
-                                        .getMetadataObjectGraph(mostRecentDeployment);
+                    // Find the max number of hours back for a device
+                    int maxNumHours = this.getMaxNumberOfHoursBack(deviceID,
+                        packetSubType);
+                    logger.debug("The max number of hours back for "
+                        + "that device in the database is " + maxNumHours);
+
+                    // Create the end date (now)
+                    Calendar startCalendar = GregorianCalendar.getInstance();
+                    startCalendar.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+                    // Set the time to the run start date
+                    startCalendar.setTime(this.runStartDate);
+                    // Now take off the max number of hours
+                    startCalendar.add(GregorianCalendar.HOUR, -1 * maxNumHours);
+                    logger.debug("StartDate is "
+                        + this.getXmlDateFormat().format(
+                            startCalendar.getTime()));
+                    logger.debug("EndDate is "
+                        + this.getXmlDateFormat().format(this.runStartDate));
+
+                    // Grab the data
+                    Object[][] data = null;
+                    try {
+                        data = deviceMetadata.getDeviceDataAccess()
+                            .getDeviceData(currentDevice, packetSubType,
+                                recordVariableNames, startCalendar.getTime(),
+                                this.runStartDate);
+                    } catch (Exception e) {
+                        logger
+                            .error("Error trying to get data from SSDS for device "
+                                + deviceID.toString() + ": " + e.getMessage());
+                    }
+                    if (data != null) {
+                        logger.debug("Found " + data.length
+                            + " matching data records");
+                    } else {
+                        logger.debug("No data returned");
+                    }
+
+                    // OK, I now have all the data for the largest time
+                    // window, loop over the different record variable names
+                    Iterator rvNameIter = recordVariableNames.iterator();
+                    int rvIndex = 1;
+                    while (rvNameIter.hasNext()) {
+                        String rvName = (String) rvNameIter.next();
+                        logger.debug("Working with the record variable name "
+                            + rvName + " (specified in database)");
+                        // For each name, let's find the matching RV
+                        RecordVariable matchingRV = null;
+                        if (mostRecentDataContainer != null) {
+                            RecordDescription recordDescription = mostRecentDataContainer
+                                .getRecordDescription();
+                            if (recordDescription != null) {
+                                logger.debug("RecordDescription is "
+                                    + recordDescription
+                                        .toStringRepresentation("|"));
+                                Collection recordVariables = recordDescription
+                                    .getRecordVariables();
+                                if (recordVariables != null) {
                                     logger
-                                        .debug("The most recent Deployment is "
-                                            + mostRecentDeployment
-                                                .toStringRepresentation("|"));
-                                    // Grab the correct output
-                                    DataContainerAccessHome dcah = DataContainerAccessUtil
-                                        .getHome();
-                                    DataContainerAccess dca = dcah.create();
-                                    Collection mostRecentDeploymentOutputs = new HashSet(
-                                        mostRecentDeployment.getOutputs());
-                                    Iterator mostRecentDeploymentOutputIterator = mostRecentDeploymentOutputs
+                                        .debug("There are "
+                                            + recordVariables.size()
+                                            + " record variable to search in (from RecordDescription)");
+                                    Iterator rvIter = recordVariables
                                         .iterator();
-                                    while ((mostRecentDeploymentOutputIterator
-                                        .hasNext())
-                                        && (mostRecentDataContainer == null)) {
-                                        DataContainer tempOutput = (DataContainer) dca
-                                            .getMetadataObjectGraph((DataContainer) mostRecentDeploymentOutputIterator
-                                                .next());
-                                        logger
-                                            .debug("Should have the full graph of the "
-                                                + " data container to compare against: "
-                                                + tempOutput
+                                    while (rvIter.hasNext()) {
+                                        RecordVariable tempRV = (RecordVariable) rvIter
+                                            .next();
+                                        if (tempRV.getName().equalsIgnoreCase(
+                                            rvName)) {
+                                            logger.debug("Matched on RV : "
+                                                + tempRV
                                                     .toStringRepresentation("|"));
-                                        if ((tempOutput.getRecordDescription() != null)
-                                            && (tempOutput
-                                                .getRecordDescription()
-                                                .getRecordType() != null)
-                                            && (tempOutput
-                                                .getRecordDescription()
-                                                .getRecordType().longValue() == packetSubType
-                                                .longValue())) {
-                                            mostRecentDataContainer = tempOutput;
+                                            matchingRV = tempRV;
+                                            break;
                                         }
                                     }
-                                    if (mostRecentDataContainer != null) {
-                                        logger
-                                            .debug("The most recent data container is "
-                                                + mostRecentDataContainer
-                                                    .toStringRepresentation("|"));
-                                    } else {
-                                        logger
-                                            .debug("No most recent data container was found");
-                                    }
+                                } else {
+                                    logger
+                                        .debug("No record variable in the record description");
                                 }
-                            } else {
-                                logger
-                                    .debug("No deployment for that device found");
                             }
-                        } catch (Exception e1) {
-                            logger
-                                .error("Error finding the most recent DataContainer: "
-                                    + e1.getMessage());
                         }
-
-                        // Grab the collection of record variable names
-                        Collection recordVariableNames = this
-                            .getRecordVariableNames(deviceID, packetSubType);
-                        if (recordVariableNames != null) {
-                            logger
-                                .debug(recordVariableNames.size()
-                                    + " record variable names were specified in the database");
-                        } else {
-                            logger
-                                .debug("No record variable names specified in the database");
-                        }
-
-                        // Find the max number of hours back for a device
-                        int maxNumHours = this.getMaxNumberOfHoursBack(
-                            deviceID, packetSubType);
-                        logger.debug("The max number of hours back for "
-                            + "that device in the database is " + maxNumHours);
-
-                        // Create the end date (now)
-                        Calendar startCalendar = GregorianCalendar
-                            .getInstance();
-                        startCalendar.setTimeZone(TimeZone.getTimeZone("GMT"));
-
-                        // Set the time to the run start date
-                        startCalendar.setTime(this.runStartDate);
-                        // Now take off the max number of hours
-                        startCalendar.add(GregorianCalendar.HOUR, -1
-                            * maxNumHours);
-                        logger.debug("StartDate is "
-                            + xmlDateFormat.format(startCalendar.getTime()));
-                        logger.debug("EndDate is "
-                            + xmlDateFormat.format(this.runStartDate));
-
-                        // Grab the data
-                        Object[][] data = null;
-                        try {
-                            DeviceDataAccessHome ddah = DeviceDataAccessUtil
-                                .getHome();
-                            DeviceDataAccess dda = ddah.create();
-                            data = dda.getDeviceData(currentDevice,
-                                packetSubType, recordVariableNames,
-                                startCalendar.getTime(), this.runStartDate);
-                        } catch (Exception e) {
-                            logger
-                                .error("Error trying to get data from SSDS for device "
-                                    + deviceID.toString()
-                                    + ": "
-                                    + e.getMessage());
-                        }
-                        if (data != null) {
-                            logger.debug("Found " + data.length
-                                + " matching data records");
-                        } else {
-                            logger.debug("No data returned");
-                        }
-
-                        // OK, I now have all the data for the largest time
-                        // window, loop
-                        // over the different record variable names
-                        Iterator rvNameIter = recordVariableNames.iterator();
-                        int rvIndex = 1;
-                        while (rvNameIter.hasNext()) {
-                            String rvName = (String) rvNameIter.next();
-                            logger
-                                .debug("Working with the record variable name "
-                                    + rvName + " (specified in database)");
-                            // For each name, let's find the matching RV
-                            RecordVariable matchingRV = null;
-                            if (mostRecentDataContainer != null) {
-                                RecordDescription recordDescription = mostRecentDataContainer
-                                    .getRecordDescription();
-                                if (recordDescription != null) {
-                                    logger.debug("RecordDescription is "
-                                        + recordDescription
-                                            .toStringRepresentation("|"));
-                                    Collection recordVariables = recordDescription
-                                        .getRecordVariables();
-                                    if (recordVariables != null) {
-                                        logger
-                                            .debug("There are "
-                                                + recordVariables.size()
-                                                + " record variable to search in (from RecordDescription)");
-                                        Iterator rvIter = recordVariables
-                                            .iterator();
-                                        while (rvIter.hasNext()) {
-                                            RecordVariable tempRV = (RecordVariable) rvIter
-                                                .next();
-                                            if (tempRV.getName()
-                                                .equalsIgnoreCase(rvName)) {
-                                                logger
-                                                    .debug("Matched on RV : "
-                                                        + tempRV
-                                                            .toStringRepresentation("|"));
-                                                matchingRV = tempRV;
-                                                break;
-                                            }
-                                        }
+                        // Hopefully we should have the correct matching RV
+                        // Now let's iterate over all the time windows
+                        // specified in the DB and create the appropriate graphs
+                        Map propertiesMap = this
+                            .getAllTimeSeriesGraphProperties(deviceID, rvName);
+                        if (propertiesMap != null) {
+                            Set numHoursKeys = propertiesMap.keySet();
+                            Iterator numHoursIter = numHoursKeys.iterator();
+                            while (numHoursIter.hasNext()) {
+                                Integer numberOfHours = (Integer) numHoursIter
+                                    .next();
+                                // Grab the properties
+                                Properties currentProps = (Properties) propertiesMap
+                                    .get(numberOfHours);
+                                // Setup some defaults
+                                int xSize = 600;
+                                int ySize = 300;
+                                String xAxisLabel = "Time (GMT)";
+                                String yAxisLabel = rvName + " (Unknown Units)";
+                                String title = rvName
+                                    + " (Unknown Units) vs. Time (GMT)";
+                                String subtitle = "Unknown Device";
+                                String pageTitle = "Unknown Device Page";
+                                Double yMax = null;
+                                Double yMin = null;
+
+                                // Try to grab stuff from the matching
+                                // variable
+                                if (matchingRV != null) {
+                                    // Check to see if user wants long
+                                    // variable name used
+                                    if (currentProps
+                                        .containsKey("useLongVariableName")
+                                        && (currentProps
+                                            .get("useLongVariableName") != null)
+                                        && ((Boolean) currentProps
+                                            .get("useLongVariableName"))
+                                            .booleanValue()) {
+                                        yAxisLabel = matchingRV.getLongName()
+                                            + " (" + matchingRV.getUnits()
+                                            + ")";
+                                        title = matchingRV.getLongName() + " ("
+                                            + matchingRV.getUnits() + ")"
+                                            + " vs. Time (GMT)";
                                     } else {
-                                        logger
-                                            .debug("No record variable in the record description");
-                                    }
-                                }
-                            }
-                            // Hopefully we should have the correct matching RV
-                            // Now let's iterate over all the time windows
-                            // specified in
-                            // the
-                            // DB and create the appropriate graphs
-                            Map propertiesMap = this
-                                .getAllTimeSeriesGraphProperties(deviceID,
-                                    rvName);
-                            if (propertiesMap != null) {
-                                Set numHoursKeys = propertiesMap.keySet();
-                                Iterator numHoursIter = numHoursKeys.iterator();
-                                while (numHoursIter.hasNext()) {
-                                    Integer numberOfHours = (Integer) numHoursIter
-                                        .next();
-                                    // Grab the properties
-                                    Properties currentProps = (Properties) propertiesMap
-                                        .get(numberOfHours);
-                                    // Setup some defaults
-                                    int xSize = 600;
-                                    int ySize = 300;
-                                    String xAxisLabel = "Time (GMT)";
-                                    String yAxisLabel = rvName
-                                        + " (Unknown Units)";
-                                    String title = rvName
-                                        + " (Unknown Units) vs. Time (GMT)";
-                                    String subtitle = "Unknown Device";
-                                    String pageTitle = "Unknown Device Page";
-                                    Double yMax = null;
-                                    Double yMin = null;
-
-                                    // Try to grab stuff from the matching
-                                    // variable
-                                    if (matchingRV != null) {
-                                        // Check to see if user wants long
-                                        // variable name used
-                                        if (currentProps
-                                            .containsKey("useLongVariableName")
-                                            && (currentProps
-                                                .get("useLongVariableName") != null)
-                                            && ((Boolean) currentProps
-                                                .get("useLongVariableName"))
-                                                .booleanValue()) {
-                                            yAxisLabel = matchingRV
-                                                .getLongName()
-                                                + " ("
-                                                + matchingRV.getUnits()
-                                                + ")";
-                                            title = matchingRV.getLongName()
-                                                + " (" + matchingRV.getUnits()
-                                                + ")" + " vs. Time (GMT)";
-                                        } else {
-                                            yAxisLabel = matchingRV.getName()
-                                                + " (" + matchingRV.getUnits()
-                                                + ")";
-                                            title = matchingRV.getName() + " ("
-                                                + matchingRV.getUnits() + ")"
-                                                + " vs. Time (GMT)";
-                                        }
-                                        yMax = matchingRV.getDisplayMax();
-                                        yMin = matchingRV.getDisplayMin();
-                                    }
-                                    // If device was found, create better
-                                    // subtitle
-                                    if (currentDevice != null) {
-                                        subtitle = "Device "
-                                            + currentDevice.getName()
-                                            + " (ID="
-                                            + currentDevice.getId()
-                                            + ", Manufacturer="
-                                            + currentDevice.getMfgName()
-                                            + ", Model="
-                                            + currentDevice.getMfgModel()
+                                        yAxisLabel = matchingRV.getName()
+                                            + " (" + matchingRV.getUnits()
                                             + ")";
-                                        pageTitle = currentDevice.getId()
-                                            .toString();
+                                        title = matchingRV.getName() + " ("
+                                            + matchingRV.getUnits() + ")"
+                                            + " vs. Time (GMT)";
                                     }
-
-                                    // Now override with database or RV
-                                    // information
-                                    // where
-                                    // appropriate
-                                    if (currentProps.containsKey("xSize")
-                                        && (currentProps.get("xSize") != null))
-                                        xSize = ((Integer) currentProps
-                                            .get("xSize")).intValue();
-                                    if (currentProps.containsKey("ySize")
-                                        && (currentProps.get("ySize") != null))
-                                        ySize = ((Integer) currentProps
-                                            .get("ySize")).intValue();
-                                    if (currentProps.containsKey("xAxisLabel")
-                                        && (currentProps
-                                            .getProperty("xAxisLabel") != null))
-                                        xAxisLabel = (String) currentProps
-                                            .get("xAxisLabel");
-                                    if (currentProps.containsKey("yAxisLabel")
-                                        && (currentProps
-                                            .getProperty("yAxisLabel") != null))
-                                        yAxisLabel = (String) currentProps
-                                            .get("yAxisLabel");
-                                    if (currentProps.containsKey("title")
-                                        && (currentProps.getProperty("title") != null))
-                                        title = (String) currentProps
-                                            .get("title");
-                                    if (currentProps.containsKey("pageTitle")
-                                        && (currentProps
-                                            .getProperty("pageTitle") != null))
-                                        pageTitle = (String) currentProps
-                                            .get("pageTitle");
-                                    if (currentProps.containsKey("yMax")
-                                        && (currentProps.get("yMax") != null))
-                                        yMax = (Double) currentProps
-                                            .get("yMax");
-                                    if (currentProps.containsKey("yMin")
-                                        && (currentProps.get("yMin") != null))
-                                        yMin = (Double) currentProps
-                                            .get("yMin");
-
-                                    // Build the chart
-                                    JFreeChart chart = this
-                                        .buildTimeSeriesPlot(data, rvIndex,
-                                            numberOfHours.intValue(), xSize,
-                                            ySize, xAxisLabel, yAxisLabel,
-                                            title, subtitle, yMax, yMin);
-
-                                    // First create the directory for the device
-                                    // (if
-                                    // needed)
-                                    File deviceDirectory = new File(
-                                        this.plotsBaseDirectory
-                                            + File.separator + deviceID);
-                                    if (!deviceDirectory.exists())
-                                        deviceDirectory.mkdir();
-
-                                    // Now the plots directory
-                                    File devicePlotsDirectory = new File(
-                                        this.plotsBaseDirectory
-                                            + File.separator + deviceID
-                                            + File.separator + "plots");
-                                    if (!devicePlotsDirectory.exists())
-                                        devicePlotsDirectory.mkdir();
-
-                                    // Now the data directory
-                                    File deviceDataDirectory = new File(
-                                        this.plotsBaseDirectory
-                                            + File.separator + deviceID
-                                            + File.separator + "data");
-                                    if (!deviceDataDirectory.exists())
-                                        deviceDataDirectory.mkdir();
-
-                                    // Now create the chart filename
-                                    String chartFilename = this.plotsBaseDirectory
-                                        + File.separator
-                                        + deviceID
-                                        + File.separator
-                                        + "plots"
-                                        + File.separator
-                                        + rvName.trim().replaceAll("\\s+", "_")
-                                        + "_" + numberOfHours + ".jpg";
-
-                                    // Create the URL to the chart
-                                    String chartUrl = this.plotsBaseUrlString
-                                        + "/" + deviceID + "/plots/"
-                                        + rvName.trim().replaceAll("\\s+", "_")
-                                        + "_" + numberOfHours + ".jpg";
-
-                                    // Create the filename for the data
-                                    String dataFilename = this.plotsBaseDirectory
-                                        + File.separator
-                                        + deviceID
-                                        + File.separator
-                                        + "data"
-                                        + File.separator
-                                        + rvName.trim().replaceAll("\\s+", "_")
-                                        + "_" + numberOfHours + ".htm";
-
-                                    // Create the URL to the data
-                                    String dataUrl = this.plotsBaseUrlString
-                                        + "/" + deviceID + "/data/"
-                                        + rvName.trim().replaceAll("\\s+", "_")
-                                        + "_" + numberOfHours + ".htm";
-
-                                    // HTML Page url
-                                    String pageUrlString = this.plotsBaseUrlString
-                                        + "/" + pageTitle + ".htm";
-
-                                    // Now write the chart to a file
-                                    try {
-                                        ChartUtilities.saveChartAsJPEG(
-                                            new File(chartFilename), chart,
-                                            xSize, ySize,
-                                            new ChartRenderingInfo());
-                                    } catch (IOException e1) {
-                                        logger
-                                            .error("IOException on chart saving: "
-                                                + e1.getMessage());
-                                    } catch (Exception e1) {
-                                        logger
-                                            .error("Exception on chart saving: "
-                                                + e1.getMessage());
-                                    }
-
-                                    // Create the data page
-                                    this.buildDataPage(new File(dataFilename),
-                                        data, rvIndex,
-                                        numberOfHours.intValue(), xAxisLabel,
-                                        yAxisLabel, title);
-
-                                    // TODO kgomes Now update the URLs in the DB
-                                    this.updateURLs(deviceID, "time_series",
-                                        rvName, numberOfHours.intValue(),
-                                        pageUrlString, chartUrl, dataUrl);
+                                    yMax = matchingRV.getDisplayMax();
+                                    yMin = matchingRV.getDisplayMin();
+                                }
+                                // If device was found, create better
+                                // subtitle
+                                if (currentDevice != null) {
+                                    subtitle = "Device "
+                                        + currentDevice.getName() + " (ID="
+                                        + currentDevice.getId()
+                                        + ", Manufacturer="
+                                        + currentDevice.getMfgName()
+                                        + ", Model="
+                                        + currentDevice.getMfgModel() + ")";
+                                    pageTitle = currentDevice.getId()
+                                        .toString();
                                 }
+
+                                // Now override with database or RV
+                                // information where appropriate
+                                if (currentProps.containsKey("xSize")
+                                    && (currentProps.get("xSize") != null))
+                                    xSize = ((Integer) currentProps
+                                        .get("xSize")).intValue();
+                                if (currentProps.containsKey("ySize")
+                                    && (currentProps.get("ySize") != null))
+                                    ySize = ((Integer) currentProps
+                                        .get("ySize")).intValue();
+                                if (currentProps.containsKey("xAxisLabel")
+                                    && (currentProps.getProperty("xAxisLabel") != null))
+                                    xAxisLabel = (String) currentProps
+                                        .get("xAxisLabel");
+                                if (currentProps.containsKey("yAxisLabel")
+                                    && (currentProps.getProperty("yAxisLabel") != null))
+                                    yAxisLabel = (String) currentProps
+                                        .get("yAxisLabel");
+                                if (currentProps.containsKey("title")
+                                    && (currentProps.getProperty("title") != null))
+                                    title = (String) currentProps.get("title");
+                                if (currentProps.containsKey("pageTitle")
+                                    && (currentProps.getProperty("pageTitle") != null))
+                                    pageTitle = (String) currentProps
+                                        .get("pageTitle");
+                                if (currentProps.containsKey("yMax")
+                                    && (currentProps.get("yMax") != null))
+                                    yMax = (Double) currentProps.get("yMax");
+                                if (currentProps.containsKey("yMin")
+                                    && (currentProps.get("yMin") != null))
+                                    yMin = (Double) currentProps.get("yMin");
+
+                                // Now render the chart and write out the
+                                // pages on the render pool
+                                this.renderPool.execute(new TimeSeriesPlotJob(
+                                    deviceID, rvName, data, rvIndex,
+                                    numberOfHours.intValue(), xSize, ySize,
+                                    xAxisLabel, yAxisLabel, title, subtitle,
+                                    pageTitle, yMax, yMin));
                             }
-                            rvIndex++;
-                        } // End loop over recordVariableName
-                    } // End loop over packetSubTypes
-                } else if (chartType.equalsIgnoreCase("gps")) {
-                    // We now need to build a GPS plot for the given device.
-                    // First, grab all the GPS related properties
-                    Map gpsProperties = this.getAllGpsGraphProperties(deviceID);
-
-                    // Construct the service interface
-                    GeospatialGraphingAccessHome ggah = null;
-                    try {
-                        ggah = GeospatialGraphingAccessUtil.getHome();
-                    } catch (NamingException e) {
-                        logger.error("NamingException caught: "
-                            + e.getMessage());
-                    }
-                    GeospatialGraphingAccess gga = null;
+                        }
+                        rvIndex++;
+                    } // End loop over recordVariableName
+                } // End loop over packetSubTypes
+            } else if (chartType.equalsIgnoreCase("gps")) {
+                // We now need to build a GPS plot for the given device.
+                // First, grab all the GPS related properties
+                Map gpsProperties = this.getAllGpsGraphProperties(deviceID);
+
+                // Construct the service interface
+                GeospatialGraphingAccess gga = deviceMetadata
+                    .getGeospatialGraphingAccess();
+
+                // OK so I have a map of number of hours back to properties
+                Set numHoursKeys = gpsProperties.keySet();
+                Iterator numHoursIter = numHoursKeys.iterator();
+                while (numHoursIter.hasNext()) {
+                    // The URL of the chart
+                    String chartUrl = null;
+
+                    // Grab the number of hours to build a graph for
+                    Integer numberOfHours = (Integer) numHoursIter.next();
+                    // Grab the properties
+                    Properties currentProps = (Properties) gpsProperties
+                        .get(numberOfHours);
+
+                    // First figure out the start and end dates
+                    Calendar startCalendar = GregorianCalendar.getInstance();
+                    startCalendar.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+                    // Set the time to the run start date
+                    startCalendar.setTime(this.runStartDate);
+                    // Now take off the number of hours
+                    startCalendar.add(GregorianCalendar.HOUR, -1
+                        * numberOfHours.intValue());
+
+                    // Create a device with the current ID
+                    Device tempDevice = new Device();
+                    tempDevice.setId(deviceID);
+
+                    // Have SSDS build the chart and grab the returned URL
                     try {
-                        if (ggah != null)
-                            gga = ggah.create();
+                        if (gga != null)
+                            chartUrl = gga.getGpsChart(tempDevice,
+                                startCalendar.getTime(), this.runStartDate,
+                                ((Boolean) currentProps.get("showWatchCircle"))
+                                    .booleanValue(), ((Double) currentProps
+                                    .get("watchCircleDiameterInKm"))
+                                    .doubleValue(), ((Boolean) currentProps
+                                    .get("scaleChartToFitData"))
+                                    .booleanValue(), ((Boolean) currentProps
+                                    .get("showAnchor")).booleanValue(),
+                                ((Double) currentProps.get("anchorLatitude"))
+                                    .doubleValue(), ((Double) currentProps
+                                    .get("anchorLongitude")).doubleValue(),
+                                ((Integer) currentProps.get("xSize"))
+                                    .intValue(), ((Integer) currentProps
+                                    .get("ySize")).intValue(),
+                                (String) currentProps.get("Title"));
                     } catch (RemoteException e) {
-                        logger.error("RemoteException caught: "
-                            + e.getMessage());
-                    } catch (CreateException e) {
-                        logger.error("CreateException caught: "
-                            + e.getMessage());
+                        logger.error("RemoteException caught building the "
+                            + "GPS chart: " + e.getMessage());
                     }
+                    this.updateURLs(deviceID, "gps", null, numberOfHours
+                        .intValue(), null, chartUrl, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * This is the job that renders one time series chart, writes it and its
+     * data page out and updates the URLs in the database. The data array is
+     * shared (read only) with the other charts of the same device.
+     */
+    private class TimeSeriesPlotJob implements Runnable {
+
+        TimeSeriesPlotJob(Long deviceID, String rvName, Object[][] data,
+            int rvIndex, int numberOfHours, int xSize, int ySize,
+            String xAxisLabel, String yAxisLabel, String title,
+            String subtitle, String pageTitle, Double yMax, Double yMin) {
+            this.deviceID = deviceID;
+            this.rvName = rvName;
+            this.data = data;
+            this.rvIndex = rvIndex;
+            this.numberOfHours = numberOfHours;
+            this.xSize = xSize;
+            this.ySize = ySize;
+            this.xAxisLabel = xAxisLabel;
+            this.yAxisLabel = yAxisLabel;
+            this.title = title;
+            this.subtitle = subtitle;
+            this.pageTitle = pageTitle;
+            this.yMax = yMax;
+            this.yMin = yMin;
+        }
+
+        public void run() {
+            // Build the chart
+            JFreeChart chart = buildTimeSeriesPlot(data, rvIndex,
+                numberOfHours, xSize, ySize, xAxisLabel, yAxisLabel, title,
+                subtitle, yMax, yMin);
+
+            // The name the files are given
+            String baseName = rvName.trim().replaceAll("\\s+", "_") + "_"
+                + numberOfHours;
+
+            // Now create the chart filename
+            String chartFilename = plotsBaseDirectory + File.separator
+                + deviceID + File.separator + "plots" + File.separator
+                + baseName + ".jpg";
+
+            // Create the URL to the chart
+            String chartUrl = plotsBaseUrlString + "/" + deviceID + "/plots/"
+                + baseName + ".jpg";
+
+            // Create the filename for the data
+            String dataFilename = plotsBaseDirectory + File.separator
+                + deviceID + File.separator + "data" + File.separator
+                + baseName + ".htm";
+
+            // Create the URL to the data
+            String dataUrl = plotsBaseUrlString + "/" + deviceID + "/data/"
+                + baseName + ".htm";
+
+            // HTML Page url
+            String pageUrlString = plotsBaseUrlString + "/" + pageTitle
+                + ".htm";
+
+            // Now write the chart to a file
+            try {
+                ChartUtilities.saveChartAsJPEG(new File(chartFilename), chart,
+                    xSize, ySize, new ChartRenderingInfo());
+            } catch (IOException e1) {
+                logger.error("IOException on chart saving: "
+                    + e1.getMessage());
+            } catch (Exception e1) {
+                logger.error("Exception on chart saving: " + e1.getMessage());
+            }
 
-                    // OK so I have a map of number of hours back to properties
-                    Set numHoursKeys = gpsProperties.keySet();
-                    Iterator numHoursIter = numHoursKeys.iterator();
-                    while (numHoursIter.hasNext()) {
-                        // The URL of the chart
-                        String chartUrl = null;
-
-                        // Grab the number of hours to build a graph for
-                        Integer numberOfHours = (Integer) numHoursIter.next();
-                        // Grab the properties
-                        Properties currentProps = (Properties) gpsProperties
-                            .get(numberOfHours);
-
-                        // First figure out the start and end dates
-                        Calendar startCalendar = GregorianCalendar
-                            .getInstance();
-                        startCalendar.setTimeZone(TimeZone.getTimeZone("GMT"));
-
-                        // Set the time to the run start date
-                        startCalendar.setTime(this.runStartDate);
-                        // Now take off the number of hours
-                        startCalendar.add(GregorianCalendar.HOUR, -1
-                            * numberOfHours.intValue());
-
-                        // Create a device with the current ID
-                        Device tempDevice = new Device();
-                        tempDevice.setId(deviceID);
-
-                        // Have SSDS build the chart and grab the returned URL
-                        try {
-                            if (gga != null)
-                                chartUrl = gga
-                                    .getGpsChart(tempDevice, startCalendar
-                                        .getTime(), this.runStartDate,
-                                        ((Boolean) currentProps
-                                            .get("showWatchCircle"))
-                                            .booleanValue(),
-                                        ((Double) currentProps
-                                            .get("watchCircleDiameterInKm"))
-                                            .doubleValue(),
-                                        ((Boolean) currentProps
-                                            .get("scaleChartToFitData"))
-                                            .booleanValue(),
-                                        ((Boolean) currentProps
-                                            .get("showAnchor")).booleanValue(),
-                                        ((Double) currentProps
-                                            .get("anchorLatitude"))
-                                            .doubleValue(),
-                                        ((Double) currentProps
-                                            .get("anchorLongitude"))
-                                            .doubleValue(),
-                                        ((Integer) currentProps.get("xSize"))
-                                            .intValue(),
-                                        ((Integer) currentProps.get("ySize"))
-                                            .intValue(), (String) currentProps
-                                            .get("Title"));
-                        } catch (RemoteException e) {
-                            // TODO Auto-generated catch block
-                            e.printStackTrace();
+            // Create the data page
+            buildDataPage(new File(dataFilename), data, rvIndex,
+                numberOfHours, xAxisLabel, yAxisLabel, title);
+
+            // TODO kgomes Now update the URLs in the DB
+            updateURLs(deviceID, "time_series", rvName, numberOfHours,
+                pageUrlString, chartUrl, dataUrl);
+        }
+
+        private Long deviceID;
+        private String rvName;
+        private Object[][] data;
+        private int rvIndex;
+        private int numberOfHours;
+        private int xSize;
+        private int ySize;
+        private String xAxisLabel;
+        private String yAxisLabel;
+        private String title;
+        private String subtitle;
+        private String pageTitle;
+        private Double yMax;
+        private Double yMin;
+    }
+
+    /**
+     * This class looks up and keeps the metadata for one device (and the
+     * service proxies to get it) so that it is only read once, no matter how
+     * many packet sub types and charts are made for the device. The
+     * deployments are walked newest first and only as far as needed to find a
+     * data container for the packet sub types that are asked for.
+     */
+    private class DeviceMetadata {
+
+        DeviceMetadata(Long deviceID) {
+            this.deviceID = deviceID;
+        }
+
+        /**
+         * @return the persistent <code>Device</code> (or null if it could not
+         *         be found)
+         */
+        Device getDevice() {
+            if (!deviceLoaded) {
+                deviceLoaded = true;
+                try {
+                    DeviceAccess deva = deviceAccessHome.create();
+                    device = (Device) deva.findById(deviceID, true);
+                } catch (Exception e1) {
+                    logger.error("Exception caught trying to find the Device: "
+                        + e1.getMessage());
+                }
+                if (device != null) {
+                    logger.debug("Found matching persistent device: "
+                        + device.toStringRepresentation("|"));
+                } else {
+                    logger.debug("No matching persistent device found");
+                }
+            }
+            return device;
+        }
+
+        /**
+         * This method returns the output of the most recent deployment of the
+         * device that has a record description of the given packet sub type
+         * 
+         * @param packetSubType
+         *            the record type to look for
+         * @return the full graph of the <code>DataContainer</code> (or null if
+         *         there is none)
+         */
+        DataContainer getMostRecentDataContainer(Long packetSubType) {
+            if (mostRecentDataContainers.containsKey(packetSubType))
+                return (DataContainer) mostRecentDataContainers
+                    .get(packetSubType);
+            try {
+                if (deploymentIter == null) {
+                    dprodAccess = dataProducerAccessHome.create();
+                    dca = dataContainerAccessHome.create();
+                    Collection deployments = dprodAccess.findByDevice(
+                        getDevice(), "startDate", "desc", false);
+                    if (deployments != null) {
+                        logger.debug(deployments.size()
+                            + " deployments found for that device");
+                    } else {
+                        logger.debug("No deployment for that device found");
+                        deployments = new ArrayList();
+                    }
+                    deploymentIter = deployments.iterator();
+                }
+                // Keep walking back through the deployments until one has an
+                // output of the record type, remembering the most recent
+                // output of every record type along the way
+                while ((!mostRecentDataContainers.containsKey(packetSubType))
+                    && (deploymentIter.hasNext())) {
+                    DataProducer deployment = (DataProducer) dprodAccess
+                        .getMetadataObjectGraph((DataProducer) deploymentIter
+                            .next());
+                    logger.debug("Looking at the outputs of deployment "
+                        + deployment.toStringRepresentation("|"));
+                    Iterator outputIter = new HashSet(deployment.getOutputs())
+                        .iterator();
+                    while (outputIter.hasNext()) {
+                        DataContainer output = (DataContainer) dca
+                            .getMetadataObjectGraph((DataContainer) outputIter
+                                .next());
+                        if ((output.getRecordDescription() != null)
+                            && (output.getRecordDescription().getRecordType() != null)) {
+                            Long recordType = output.getRecordDescription()
+                                .getRecordType();
+                            if (!mostRecentDataContainers
+                                .containsKey(recordType))
+                                mostRecentDataContainers
+                                    .put(recordType, output);
                         }
-                        this.updateURLs(deviceID, "gps", null, numberOfHours
-                            .intValue(), null, chartUrl, null);
                     }
                 }
+            } catch (Exception e1) {
+                logger.error("Error finding the most recent DataContainer: "
+                    + e1.getMessage());
+            }
+            if (!mostRecentDataContainers.containsKey(packetSubType))
+                mostRecentDataContainers.put(packetSubType, null);
+            return (DataContainer) mostRecentDataContainers.get(packetSubType);
+        }
+
+        /**
+         * @return the service that reads the data of the device
+         */
+        DeviceDataAccess getDeviceDataAccess() throws RemoteException,
+            CreateException {
+            if (dda == null)
+                dda = deviceDataAccessHome.create();
+            return dda;
+        }
+
+        /**
+         * @return the service that builds the GPS charts (or null if it could
+         *         not be created)
+         */
+        GeospatialGraphingAccess getGeospatialGraphingAccess() {
+            if ((gga == null) && (geospatialGraphingAccessHome != null)) {
+                try {
+                    gga = geospatialGraphingAccessHome.create();
+                } catch (RemoteException e) {
+                    logger.error("RemoteException caught: " + e.getMessage());
+                } catch (CreateException e) {
+                    logger.error("CreateException caught: " + e.getMessage());
+                }
             }
+            return gga;
+        }
+
+        private Long deviceID = null;
+        private boolean deviceLoaded = false;
+        private Device device = null;
+        private Iterator deploymentIter = null;
+        private Map mostRecentDataContainers = new HashMap();
+        private DataProducerAccess dprodAccess = null;
+        private DataContainerAccess dca = null;
+        private DeviceDataAccess dda = null;
+        private GeospatialGraphingAccess gga = null;
+    }
+
+    /**
+     * This method looks up the homes of the services that are used to build
+     * the plots (they are shared by all the device tasks)
+     */
+    private void lookupHomes() {
+        try {
+            this.deviceAccessHome = DeviceAccessUtil.getHome();
+            this.dataProducerAccessHome = DataProducerAccessUtil.getHome();
+            this.dataContainerAccessHome = DataContainerAccessUtil.getHome();
+            this.deviceDataAccessHome = DeviceDataAccessUtil.getHome();
+        } catch (NamingException e) {
+            logger.error("NamingException caught looking up the services: "
+                + e.getMessage());
         }
-        // Build the header pages
-        this.buildHeadPages();
+        try {
+            this.geospatialGraphingAccessHome = GeospatialGraphingAccessUtil
+                .getHome();
+        } catch (NamingException e) {
+            logger.error("NamingException caught: " + e.getMessage());
+        }
+    }
 
-        // Now build the master index page
-        this.buildIndexPage();
+    /**
+     * @return the date formatter for the current thread
+     */
+    private XmlDateFormat getXmlDateFormat() {
+        return (XmlDateFormat) this.xmlDateFormat.get();
     }
 
     private JFreeChart buildTimeSeriesPlot(Object[][] data, int rvIndex,
@@ -866,8 +1000,9 @@ public class DeviceQCPlotCreator {
                         // Add it to the data series
                         Date tempDate = new Date();
                         tempDate.setTime(((Long) data[j][0]).longValue());
-                        htmlWriter.println(xmlDateFormat.format(tempDate) + ","
-                            + data[j][rvIndex]);
+                        htmlWriter.println(this.getXmlDateFormat().format(
+                            tempDate)
+                            + "," + data[j][rvIndex]);
                     }
                 }
             }
@@ -1798,9 +1933,29 @@ public class DeviceQCPlotCreator {
     private Date runStartDate = null;
 
     /**
-     * A data formatter
+     * A data formatter (one for each thread)
+     */
+    private ThreadLocal xmlDateFormat = new ThreadLocal() {
+        protected Object initialValue() {
+            return new XmlDateFormat();
+        }
+    };
+
+    /**
+     * The number of devices that are worked on at the same time and the pool
+     * the charts are rendered and written out on
+     */
+    private int deviceThreads = 4;
+    private ExecutorService renderPool = null;
+
+    /**
+     * The homes of the services (looked up once for the run)
      */
-    private XmlDateFormat xmlDateFormat = new XmlDateFormat();
+    private DeviceAccessHome deviceAccessHome = null;
+    private DataProducerAccessHome dataProducerAccessHome = null;
+    private DataContainerAccessHome dataContainerAccessHome = null;
+    private DeviceDataAccessHome deviceDataAccessHome = null;
+    private GeospatialGraphingAccessHome geospatialGraphingAccessHome = null;
 
     /**
      * A log4j logger
@@ -21,6 +21,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -28,6 +29,8 @@ import java.net.URLConnection;
 import java.net.UnknownHostException;
 import java.nio.channels.FileChannel;
 import java.rmi.RemoteException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -43,6 +46,14 @@ import java.util.Iterator;
 import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.activation.DataHandler;
 import javax.ejb.CreateException;
@@ -177,6 +188,35 @@ public class UpdateBot {
         }
         this.adminEmailAddress = updateBotProperties
             .getProperty("client.updateBot.admin.email.address");
+        try {
+            String crawlThreadsProperty = updateBotProperties
+                .getProperty("client.updateBot.crawl.threads");
+            if ((crawlThreadsProperty != null)
+                && (!crawlThreadsProperty.trim().equals("")))
+                this.crawlThreads = Integer.parseInt(crawlThreadsProperty
+                    .trim());
+            String timeoutProperty = updateBotProperties
+                .getProperty("client.updateBot.crawl.deployment.timeout.seconds");
+            if ((timeoutProperty != null)
+                && (!timeoutProperty.trim().equals("")))
+                this.deploymentTimeoutSeconds = Long.parseLong(timeoutProperty
+                    .trim());
+        } catch (NumberFormatException e) {
+            logger.error("Could not parse the crawl thread properties: "
+                + e.getMessage());
+        }
+        String skipUnchangedProperty = updateBotProperties
+            .getProperty("client.updateBot.crawl.skip.unchanged");
+        if ((skipUnchangedProperty != null)
+            && (skipUnchangedProperty.trim().equalsIgnoreCase("false"))) {
+            this.skipUnchangedDeployments = false;
+        }
+        String incrementalProperty = updateBotProperties
+            .getProperty("client.updateBot.netcdf.incremental");
+        if ((incrementalProperty != null)
+            && (incrementalProperty.trim().equalsIgnoreCase("false"))) {
+            this.incrementalNetCDF = false;
+        }
 
         logger.debug("The following properties will be used:");
         logger.debug("client.updateBot.netcdf.base.directory="
@@ -195,6 +235,13 @@ public class UpdateBot {
             .debug("client.updateBot.send.admin.email=" + this.sendAdminEmail);
         logger.debug("client.updateBot.admin.email.address="
             + this.adminEmailAddress);
+        logger.debug("client.updateBot.crawl.threads=" + this.crawlThreads);
+        logger.debug("client.updateBot.crawl.deployment.timeout.seconds="
+            + this.deploymentTimeoutSeconds);
+        logger.debug("client.updateBot.crawl.skip.unchanged="
+            + this.skipUnchangedDeployments);
+        logger.debug("client.updateBot.netcdf.incremental="
+            + this.incrementalNetCDF);
 
         // Load the DB driver
         try {
@@ -249,7 +296,12 @@ public class UpdateBot {
 
     /**
      * This method loads in all parentless deployments and then crawls them to
-     * build the products and metadata necessary
+     * build the products and metadata necessary. If more than one crawl thread
+     * (or a deployment timeout) is configured, the deployments are crawled
+     * concurrently by a pool of worker threads, one deployment per task, so a
+     * slow deployment does not hold up the rest. Deployments whose outputs
+     * have not changed since the last successful crawl are skipped (unless
+     * that is turned off in the properties).
      */
     public void crawlAllParentlessDeployments() {
 
@@ -260,6 +312,11 @@ public class UpdateBot {
             deploymentProcessingLogDirectory.mkdir();
         }
 
+        // Read in what was found on the last successful crawls
+        this.crawlStateFile = new File(deploymentProcessingLogDirectory,
+            "update_bot_crawl_state.properties");
+        this.loadCrawlState();
+
         logger.debug("Going to try to find all the parentless deployments");
         try {
             this.parentlessDeployments = dpa.findParentlessDeployments("id",
@@ -281,159 +338,559 @@ public class UpdateBot {
 
             logger.debug("There are " + this.parentlessDeployments.size()
                 + " dataProducers to iterate over");
-            Iterator parentlessDeploymentIter = this.parentlessDeployments
-                .iterator();
-
-            while (parentlessDeploymentIter.hasNext()) {
+            if ((this.crawlThreads > 1)
+                || (this.deploymentTimeoutSeconds > 0)) {
+                this.crawlConcurrently(this.parentlessDeployments);
+            } else {
+                Iterator parentlessDeploymentIter = this.parentlessDeployments
+                    .iterator();
+                while (parentlessDeploymentIter.hasNext()) {
+                    DataProducer parentlessDeployment = (DataProducer) parentlessDeploymentIter
+                        .next();
+                    try {
+                        this.crawlParentlessDeployment(parentlessDeployment,
+                            new StringBuffer());
+                    } catch (Throwable e) {
+                        logger.error("Throwable caught trying to crawl "
+                            + "deployment " + parentlessDeployment.getName()
+                            + ": " + e.getMessage());
+                    }
+                }
+            }
+        } else {
+            logger.error("No parentless deployments were found");
+        }
 
-                // Initialize the buffers to track log and email information
-                this.deploymentProcessingLogBuffer = new StringBuffer();
+    }
 
-                // Create the start and end dates of the processing
-                Date parentlessProcessStartDate = new Date();
-                Date parentlessProcessEndDate = null;
+    /**
+     * This method crawls the deployments with a bounded pool of worker
+     * threads. Each deployment is its own task with its own log buffer, so a
+     * deployment that fails only affects itself. If a deployment takes longer
+     * than the timeout, its task is cancelled (the worker thread is
+     * interrupted) and the partial log for it is written out.
+     * 
+     * @param deployments
+     *            the parentless deployments to crawl
+     */
+    private void crawlConcurrently(Collection deployments) {
+        int numberOfThreads = Math.max(1, this.crawlThreads);
+        logger.debug("Will crawl " + deployments.size()
+            + " deployments with " + numberOfThreads + " threads");
+        ExecutorService workers = Executors.newFixedThreadPool(numberOfThreads);
+        ScheduledExecutorService watchdog = Executors
+            .newSingleThreadScheduledExecutor();
+
+        // Submit a task for each deployment
+        ArrayList tasks = new ArrayList();
+        Iterator deploymentIter = deployments.iterator();
+        while (deploymentIter.hasNext()) {
+            DeploymentCrawlTask task = new DeploymentCrawlTask(
+                (DataProducer) deploymentIter.next(), new StringBuffer(),
+                watchdog);
+            tasks.add(task);
+            workers.execute(task);
+        }
+        workers.shutdown();
 
-                // The string buffer that can be passed to build the report
-                boolean reportNeeded = false;
+        // Now wait for each one to finish (or be cancelled)
+        Iterator taskIter = tasks.iterator();
+        while (taskIter.hasNext()) {
+            DeploymentCrawlTask task = (DeploymentCrawlTask) taskIter.next();
+            String deploymentName = task.getDeployment().getName();
+            try {
+                task.get();
+            } catch (CancellationException e) {
+                logger.error("Crawl of deployment " + deploymentName
+                    + " did not finish in " + this.deploymentTimeoutSeconds
+                    + " seconds and was cancelled");
+                task.getLogBuffer().append(
+                    "\nProcessing was cancelled after "
+                        + this.deploymentTimeoutSeconds + " seconds at "
+                        + this.getXmlDateFormat().format(new Date()) + "\n");
+                this.writeDeploymentProcessingLog(task.getDeployment(), task
+                    .getLogBuffer());
+            } catch (ExecutionException e) {
+                logger.error("Exception caught crawling deployment "
+                    + deploymentName + ": " + e.getCause());
+            } catch (InterruptedException e) {
+                logger.error("InterruptedException caught waiting for "
+                    + "deployment " + deploymentName + ": " + e.getMessage());
+            }
+        }
+        watchdog.shutdownNow();
+    }
 
-                DataProducer parentlessDeployment = (DataProducer) parentlessDeploymentIter
-                    .next();
-                logger.debug("Now working with "
-                    + parentlessDeployment.toStringRepresentation("|"));
-
-                this.deploymentProcessingLogBuffer
-                    .append("SSDS Processing Report for data sets from Deployment "
-                        + parentlessDeployment.getName());
-                // if (parentlessDeployment.getDevice() != null)
-                // this.deploymentProcessingLogBuffer.append(" of platform "
-                // + parentlessDeployment.getDevice().getName());
-                this.deploymentProcessingLogBuffer.append("\n\n");
-                this.deploymentProcessingLogBuffer
-                    .append("Processing began at "
-                        + xmlDateFormat.format(new Date()) + "\n\n");
-
-                if ((this.specifiedDataProducerName == null)
-                    || (parentlessDeployment.getName()
-                        .equalsIgnoreCase(this.specifiedDataProducerName))) {
-
-                    // Reset the boolean that states there are not open streams
-                    containsOpenStreams = false;
-
-                    // Call the method to build any parallel netCDF outputs
-                    reportNeeded = this.buildNetCDFOutputs(
-                        parentlessDeployment, 1);
-
-                    // The end of processing date
-                    parentlessProcessEndDate = new Date();
-                    this.deploymentProcessingLogBuffer
-                        .append("Processing for deployment "
-                            + parentlessDeployment.getName() + " ended at "
-                            + xmlDateFormat.format(parentlessProcessEndDate)
-                            + "\n\n");
-
-                    // Now send out any notifications for the parentless data
-                    // producer
-                    if (reportNeeded) {
-                        // Write out the log file
-                        File deploymentProcessingLogFile = new File(
-                            this.netCDFBaseDirectory + File.separator
-                                + "update_bot_logs" + File.separator
-                                + parentlessDeployment.getId()
-                                + "_processing.log");
+    /**
+     * This method crawls one parentless deployment, builds its NetCDF files
+     * and sends out the reports. All the logging for the deployment goes into
+     * the given buffer, which is used as the processing log of the current
+     * thread until the deployment is done.
+     * 
+     * @param parentlessDeployment
+     *            the deployment to crawl
+     * @param logBuffer
+     *            the buffer the processing log is written to
+     */
+    private void crawlParentlessDeployment(DataProducer parentlessDeployment,
+        StringBuffer logBuffer) {
 
-                        // If the file exists we want to blow it away and
-                        // recreate it
-                        if (deploymentProcessingLogFile.exists()) {
-                            deploymentProcessingLogFile.delete();
-                        }
+        // Use the given buffer to track log and email information
+        this.deploymentProcessingLogBuffer.set(logBuffer);
+        try {
+            // Create the start and end dates of the processing
+            Date parentlessProcessStartDate = new Date();
+            Date parentlessProcessEndDate = null;
+
+            // The string buffer that can be passed to build the report
+            boolean reportNeeded = false;
+
+            logger.debug("Now working with "
+                + parentlessDeployment.toStringRepresentation("|"));
+
+            logBuffer
+                .append("SSDS Processing Report for data sets from Deployment "
+                    + parentlessDeployment.getName());
+            logBuffer.append("\n\n");
+            logBuffer.append("Processing began at "
+                + this.getXmlDateFormat().format(new Date()) + "\n\n");
+
+            if ((this.specifiedDataProducerName != null)
+                && (!parentlessDeployment.getName().equalsIgnoreCase(
+                    this.specifiedDataProducerName)))
+                return;
+
+            // Check to see if anything changed since the last crawl
+            String fingerprint = null;
+            if (this.skipUnchangedDeployments) {
+                fingerprint = this.getOutputsFingerprint(parentlessDeployment);
+                if ((fingerprint != null)
+                    && fingerprint.equals(this.getCrawlState(
+                        parentlessDeployment.getId()))) {
+                    logger.debug("The outputs of deployment "
+                        + parentlessDeployment.getName()
+                        + " have not changed since the last crawl, "
+                        + "will skip it");
+                    return;
+                }
+            }
 
-                        try {
-                            FileWriter processingLogWriter = new FileWriter(
-                                deploymentProcessingLogFile);
-                            if (processingLogWriter != null) {
-                                processingLogWriter
-                                    .write(this.deploymentProcessingLogBuffer
-                                        .toString());
-                                processingLogWriter.flush();
-                                processingLogWriter.close();
-                            }
-                        } catch (IOException e) {
-                            logger
-                                .error("IOException caught trying to write out NetCDF log: "
-                                    + e.getMessage());
-                        }
+            // Reset the booleans that state there are not open streams and
+            // nothing has failed
+            this.containsOpenStreams.set(Boolean.FALSE);
+            this.conversionFailed.set(Boolean.FALSE);
+
+            // Call the method to build any parallel netCDF outputs
+            reportNeeded = this.buildNetCDFOutputs(parentlessDeployment, 1);
+
+            // If the crawl was cancelled (by the watchdog), the log has
+            // already been written and nothing more should be written out
+            if (this.isCrawlCancelled()) {
+                logger.error("Crawl of deployment "
+                    + parentlessDeployment.getName()
+                    + " finished after it was cancelled, "
+                    + "nothing more will be written");
+                return;
+            }
 
-                        // Create a resource for the deployment log file and
-                        // attach to
-                        // the parentless deployment
-                        Resource processingLogResource = new Resource();
-                        try {
-                            processingLogResource
-                                .setName("SSDS UpdateBot Processing Log");
-                        } catch (MetadataException e1) {}
-                        processingLogResource
-                            .setStartDate(parentlessProcessStartDate);
-                        processingLogResource
-                            .setEndDate(parentlessProcessEndDate);
-                        try {
-                            processingLogResource
-                                .setUriString(this.netCDFBaseUrlString
-                                    + "/update_bot_logs/"
-                                    + parentlessDeployment.getId()
-                                    + "_processing.log");
-                        } catch (MetadataException e) {}
-
-                        // Now update it
-                        try {
-                            dpa.addResource(parentlessDeployment,
-                                processingLogResource);
-                        } catch (RemoteException e) {
-                            // TODO Auto-generated catch block
-                            e.printStackTrace();
-                        } catch (MetadataAccessException e) {
-                            // TODO Auto-generated catch block
-                            e.printStackTrace();
-                        }
+            // The end of processing date
+            parentlessProcessEndDate = new Date();
+            logBuffer.append("Processing for deployment "
+                + parentlessDeployment.getName() + " ended at "
+                + this.getXmlDateFormat().format(parentlessProcessEndDate)
+                + "\n\n");
+
+            // Now send out any notifications for the parentless data
+            // producer
+            if (reportNeeded) {
+                // Write out the log file
+                this.writeDeploymentProcessingLog(parentlessDeployment,
+                    logBuffer);
+
+                // Create a resource for the deployment log file and attach to
+                // the parentless deployment
+                Resource processingLogResource = new Resource();
+                try {
+                    processingLogResource
+                        .setName("SSDS UpdateBot Processing Log");
+                } catch (MetadataException e1) {}
+                processingLogResource.setStartDate(parentlessProcessStartDate);
+                processingLogResource.setEndDate(parentlessProcessEndDate);
+                try {
+                    processingLogResource.setUriString(this.netCDFBaseUrlString
+                        + "/update_bot_logs/" + parentlessDeployment.getId()
+                        + "_processing.log");
+                } catch (MetadataException e) {}
 
-                        // Send any emails
-                        if (this.sendAdminEmail) {
-                            this.sendOutReports(parentlessDeployment,
-                                this.adminEmailAddress);
-                        }
-                        if (this.sendUserEmail) {
-                            String userEmail = null;
-                            try {
-                                userEmail = this
-                                    .findUserEmail(parentlessDeployment);
-                            } catch (Throwable e) {
-                                logger
-                                    .error("Throwable caught trying to get user's email address: "
-                                        + e.getMessage());
-                            }
-                            if (userEmail != null) {
-                                this.sendOutReports(parentlessDeployment,
-                                    userEmail);
-                            } else {
-                                String errorMessage = "An email was supposed to be sent to the user, "
-                                    + "but no user email could be found to send to!";
-                                logger.error(errorMessage);
-                                this.sendEmail("No user email found",
-                                    errorMessage, adminEmailAddress);
-                            }
-                        }
+                // Now update it
+                try {
+                    dpa.addResource(parentlessDeployment,
+                        processingLogResource);
+                } catch (RemoteException e) {
+                    logger.error("RemoteException caught trying to add the "
+                        + "processing log resource: " + e.getMessage());
+                } catch (MetadataAccessException e) {
+                    logger.error("MetadataAccessException caught trying to "
+                        + "add the processing log resource: "
+                        + e.getMessage());
+                }
 
+                // Send any emails
+                if (this.sendAdminEmail) {
+                    this.sendOutReports(parentlessDeployment,
+                        this.adminEmailAddress);
+                }
+                if (this.sendUserEmail) {
+                    String userEmail = null;
+                    try {
+                        userEmail = this.findUserEmail(parentlessDeployment);
+                    } catch (Throwable e) {
+                        logger
+                            .error("Throwable caught trying to get user's email address: "
+                                + e.getMessage());
+                    }
+                    if (userEmail != null) {
+                        this.sendOutReports(parentlessDeployment, userEmail);
+                    } else {
+                        String errorMessage = "An email was supposed to be sent to the user, "
+                            + "but no user email could be found to send to!";
+                        logger.error(errorMessage);
+                        this.sendEmail("No user email found", errorMessage,
+                            adminEmailAddress);
                     }
                 }
             }
-        } else {
-            logger.error("No parentless deployments were found");
+
+            // Remember what the outputs looked like after this crawl (the
+            // crawl itself can add outputs). Deployments with open streams
+            // or outputs that failed to convert always have to be crawled
+            // again.
+            if (this.skipUnchangedDeployments && !this.isCrawlCancelled()) {
+                if (this.isContainsOpenStreams()
+                    || this.isConversionFailed()) {
+                    this.setCrawlState(parentlessDeployment.getId(), null);
+                } else {
+                    this.setCrawlState(parentlessDeployment.getId(), this
+                        .getOutputsFingerprint(parentlessDeployment));
+                }
+            }
+        } finally {
+            this.deploymentProcessingLogBuffer.set(null);
+        }
+    }
+
+    /**
+     * This method copies the contents of one file to another
+     */
+    private static void copyFile(File source, File destination)
+        throws IOException {
+        // Create channel on the source
+        FileChannel srcChannel = new FileInputStream(source.getAbsoluteFile())
+            .getChannel();
+
+        // Create channel on the destination
+        FileChannel dstChannel = new FileOutputStream(destination
+            .getAbsoluteFile()).getChannel();
+
+        // Copy file contents from source to destination
+        dstChannel.transferFrom(srcChannel, 0, srcChannel.size());
+
+        // Close the channels
+        srcChannel.close();
+        dstChannel.close();
+    }
+
+    /**
+     * This method writes the processing log of a deployment out to the
+     * update_bot_logs directory (replacing the last one)
+     */
+    private void writeDeploymentProcessingLog(DataProducer deployment,
+        StringBuffer logBuffer) {
+        File deploymentProcessingLogFile = new File(this.netCDFBaseDirectory
+            + File.separator + "update_bot_logs" + File.separator
+            + deployment.getId() + "_processing.log");
+
+        // If the file exists we want to blow it away and recreate it
+        if (deploymentProcessingLogFile.exists()) {
+            deploymentProcessingLogFile.delete();
+        }
+
+        try {
+            FileWriter processingLogWriter = new FileWriter(
+                deploymentProcessingLogFile);
+            processingLogWriter.write(logBuffer.toString());
+            processingLogWriter.flush();
+            processingLogWriter.close();
+        } catch (IOException e) {
+            logger.error("IOException caught trying to write out NetCDF log: "
+                + e.getMessage());
+        }
+    }
+
+    /**
+     * This method builds a fingerprint (an MD5 hash) of the metadata of all
+     * the outputs of the deployment and its child deployments (and of the
+     * modification time and length of the files at their URLs). If it is the
+     * same as the last time the deployment was crawled, none of the outputs
+     * have changed.
+     * 
+     * @param deployment
+     *            the deployment to fingerprint
+     * @return the fingerprint or null if it could not be built
+     */
+    private String getOutputsFingerprint(DataProducer deployment) {
+        StringBuffer description = new StringBuffer();
+        try {
+            this.describeOutputs(deployment, description);
+        } catch (Throwable e) {
+            logger.error("Throwable caught trying to fingerprint the outputs "
+                + "of deployment " + deployment.getName() + ": "
+                + e.getMessage());
+            return null;
+        }
+        byte[] hash = null;
+        try {
+            hash = MessageDigest.getInstance("MD5").digest(
+                description.toString().getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            logger.error("MD5 is not available: " + e.getMessage());
+            return null;
+        } catch (IOException e) {
+            logger.error("UTF-8 is not available: " + e.getMessage());
+            return null;
+        }
+        StringBuffer hex = new StringBuffer();
+        for (int i = 0; i < hash.length; i++) {
+            hex.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(hash[i] & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * This method adds a line for each output of the deployment (and its
+     * child deployments) to the description
+     */
+    private void describeOutputs(DataProducer deployment,
+        StringBuffer description) throws RemoteException,
+        MetadataAccessException {
+        description.append("DP|" + deployment.getId() + "|"
+            + deployment.getStartDate() + "|" + deployment.getEndDate() + "\n");
+        Collection outputs = deployment.getOutputs();
+        if (outputs != null) {
+            Iterator outputIter = outputs.iterator();
+            while (outputIter.hasNext()) {
+                DataContainer output = (DataContainer) outputIter.next();
+                description.append("DC|" + output.getId() + "|"
+                    + output.getUriString() + "|" + output.getStartDate() + "|"
+                    + output.getEndDate() + "|" + output.getContentLength()
+                    + "|" + output.getNumberOfRecords() + "|"
+                    + output.isNoNetCDF() + "|"
+                    + this.describeUrlContent(output) + "\n");
+            }
+        }
+        Collection childDeployments = dpa.findChildDataProducers(deployment,
+            false);
+        if (childDeployments != null) {
+            Iterator childIter = childDeployments.iterator();
+            while (childIter.hasNext())
+                this.describeOutputs((DataProducer) childIter.next(),
+                    description);
+        }
+    }
+
+    /**
+     * This method returns the last modified time and length of what is at the
+     * URL of a FILE output (the metadata of a file can stay the same while
+     * its content changes), or an empty string for other outputs or if the
+     * URL can not be reached
+     */
+    private String describeUrlContent(DataContainer output) {
+        if (!DataContainer.TYPE_FILE.equals(output.getDataContainerType())
+            || (output.getUrl() == null))
+            return "";
+        URLConnection conn = null;
+        try {
+            conn = output.getUrl().openConnection();
+            if (conn instanceof HttpURLConnection)
+                ((HttpURLConnection) conn).setRequestMethod("HEAD");
+            return conn.getLastModified() + "|" + conn.getContentLength();
+        } catch (IOException e) {
+            logger.error("IOException caught trying to connect to url "
+                + output.getUriString() + ": " + e.getMessage());
+            return "";
+        } finally {
+            if (conn instanceof HttpURLConnection)
+                ((HttpURLConnection) conn).disconnect();
+        }
+    }
+
+    /**
+     * This method reads the fingerprints from the last successful crawls of
+     * the deployments
+     */
+    private void loadCrawlState() {
+        synchronized (this.crawlState) {
+            this.crawlState.clear();
+            if (!this.crawlStateFile.exists())
+                return;
+            try {
+                FileInputStream inputStream = new FileInputStream(
+                    this.crawlStateFile);
+                this.crawlState.load(inputStream);
+                inputStream.close();
+            } catch (IOException e) {
+                logger.error("IOException caught trying to read the crawl "
+                    + "state from " + this.crawlStateFile + ": "
+                    + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the fingerprint of the deployment's outputs from the last
+     *         successful crawl (or null if there is none)
+     */
+    private String getCrawlState(Long deploymentId) {
+        synchronized (this.crawlState) {
+            return this.crawlState.getProperty(String.valueOf(deploymentId));
         }
+    }
 
+    /**
+     * This method records the fingerprint of the deployment's outputs after a
+     * successful crawl (a null clears it) and writes the state out to the file
+     */
+    private void setCrawlState(Long deploymentId, String fingerprint) {
+        synchronized (this.crawlState) {
+            if (fingerprint == null)
+                this.crawlState.remove(String.valueOf(deploymentId));
+            else
+                this.crawlState.setProperty(String.valueOf(deploymentId),
+                    fingerprint);
+            try {
+                FileOutputStream outputStream = new FileOutputStream(
+                    this.crawlStateFile);
+                this.crawlState.store(outputStream,
+                    "Fingerprints of the outputs of crawled deployments");
+                outputStream.close();
+            } catch (IOException e) {
+                logger.error("IOException caught trying to write the crawl "
+                    + "state to " + this.crawlStateFile + ": "
+                    + e.getMessage());
+            }
+        }
     }
 
+    /**
+     * @return the processing log buffer of the deployment that the current
+     *         thread is crawling
+     */
+    private StringBuffer getDeploymentProcessingLogBuffer() {
+        StringBuffer logBuffer = (StringBuffer) this.deploymentProcessingLogBuffer
+            .get();
+        if (logBuffer == null) {
+            logBuffer = new StringBuffer();
+            this.deploymentProcessingLogBuffer.set(logBuffer);
+        }
+        return logBuffer;
+    }
+
+    /**
+     * @return true if the deployment the current thread is crawling has any
+     *         open streams
+     */
+    private boolean isContainsOpenStreams() {
+        Boolean contains = (Boolean) this.containsOpenStreams.get();
+        return (contains != null) && contains.booleanValue();
+    }
+
+    /**
+     * @return true if any output of the deployment the current thread is
+     *         crawling failed to be converted to NetCDF
+     */
+    private boolean isConversionFailed() {
+        Boolean failed = (Boolean) this.conversionFailed.get();
+        return (failed != null) && failed.booleanValue();
+    }
+
+    /**
+     * @return true if the crawl the current thread is working on has been
+     *         cancelled by the watchdog. The work itself can not always be
+     *         interrupted, so this has to be checked before anything is
+     *         written out.
+     */
+    private boolean isCrawlCancelled() {
+        FutureTask task = (FutureTask) this.currentCrawlTask.get();
+        return (task != null) && task.isCancelled();
+    }
+
+    /**
+     * @return the date formatter for the current thread
+     */
+    private XmlDateFormat getXmlDateFormat() {
+        return (XmlDateFormat) this.xmlDateFormat.get();
+    }
+
+    /**
+     * This is the task that crawls one deployment. It schedules its own
+     * cancellation with the watchdog when it starts to run, so the timeout is
+     * counted from when the deployment starts and not from when it was
+     * submitted.
+     */
+    private class DeploymentCrawlTask extends FutureTask {
+
+        DeploymentCrawlTask(final DataProducer deployment,
+            final StringBuffer logBuffer, ScheduledExecutorService watchdog) {
+            super(new Runnable() {
+                public void run() {
+                    crawlParentlessDeployment(deployment, logBuffer);
+                }
+            }, null);
+            this.deployment = deployment;
+            this.logBuffer = logBuffer;
+            this.watchdog = watchdog;
+        }
+
+        public void run() {
+            ScheduledFuture timeout = null;
+            if (deploymentTimeoutSeconds > 0) {
+                timeout = watchdog.schedule(new Runnable() {
+                    public void run() {
+                        cancel(true);
+                    }
+                }, deploymentTimeoutSeconds, TimeUnit.SECONDS);
+            }
+            currentCrawlTask.set(this);
+            try {
+                super.run();
+            } finally {
+                currentCrawlTask.set(null);
+                if (timeout != null)
+                    timeout.cancel(false);
+            }
+        }
+
+        DataProducer getDeployment() {
+            return deployment;
+        }
+
+        StringBuffer getLogBuffer() {
+            return logBuffer;
+        }
+
+        private DataProducer deployment = null;
+
+        private StringBuffer logBuffer = null;
+
+        private ScheduledExecutorService watchdog = null;
+    }
     /**
      * This method builds NetCDF files that match the data in any direct outputs
-     * that have their noNetCDF attribute set to false
+     * that have their noNetCDF attribute set to false. If any of them can not
+     * be converted, that is recorded so <code>isConversionFailed</code>
+     * returns true. If the crawl is cancelled, it stops before writing any
+     * more files.
      * 
      * @param deployment
      * @param reportBuffer
@@ -447,7 +904,7 @@ public class UpdateBot {
         // updating
         boolean deploymentUpdated = false;
 
-        this.deploymentProcessingLogBuffer.append(this.getReportIndent(depth)
+        this.getDeploymentProcessingLogBuffer().append(this.getReportIndent(depth)
             + "Going to try to convert " + "any outputs of deployment "
             + deployment.getName() + " to NetCDF files:\n");
 
@@ -463,7 +920,7 @@ public class UpdateBot {
 
             // Iterate over them
             Iterator outputIter = outputs.iterator();
-            while (outputIter.hasNext()) {
+            while (outputIter.hasNext() && !this.isCrawlCancelled()) {
                 // Grab the output proxy
                 DataContainer output = (DataContainer) outputIter.next();
 
@@ -474,7 +931,7 @@ public class UpdateBot {
                 try {
                     outputFull = (DataContainer) dca
                         .findEquivalentPersistentObject(output, true);
-                    this.deploymentProcessingLogBuffer.append(this
+                    this.getDeploymentProcessingLogBuffer().append(this
                         .getReportIndent(depth)
                         + " - Working on output "
                         + outputFull.getName()
@@ -497,7 +954,7 @@ public class UpdateBot {
                 if (outputFull.getDataContainerType().equalsIgnoreCase(
                     DataContainer.TYPE_STREAM)
                     && (outputFull.getEndDate() == null))
-                    containsOpenStreams = true;
+                    containsOpenStreams.set(Boolean.TRUE);
 
                 // Check the noNetCDF attribute is clear and the
                 // recordDescription shows the output to be parseable
@@ -511,7 +968,7 @@ public class UpdateBot {
                     logger.debug("OK, I have go for liftoff on converting "
                         + outputFull.toStringRepresentation("|")
                         + " to a NetCDF file");
-                    this.deploymentProcessingLogBuffer.append(this
+                    this.getDeploymentProcessingLogBuffer().append(this
                         .getReportIndent(depth)
                         + "   - The RecordDescription and NoNetCDF "
                         + "flag show the output can be converted.\n");
@@ -537,7 +994,7 @@ public class UpdateBot {
                         File netCDFFile = new File(parallelNetCDFFilePath);
 
                         logger.debug("NetCDF File: " + netCDFFile.toString());
-                        this.deploymentProcessingLogBuffer.append(this
+                        this.getDeploymentProcessingLogBuffer().append(this
                             .getReportIndent(depth)
                             + "   - The NetCDF was flagged that it needed "
                             + "creating so it will be created at "
@@ -549,15 +1006,39 @@ public class UpdateBot {
                         if (workingNetCDFFile.exists()) {
                             workingNetCDFFile.delete();
                         }
+                        File workingStateFile = NetcdfConverter
+                            .getAppendStateFile(workingNetCDFFile);
+                        if (workingStateFile.exists()) {
+                            workingStateFile.delete();
+                        }
                         // Make sure the final file has its parent directory
                         // structure instantiated
                         File parentFile = netCDFFile.getParentFile();
                         if (!parentFile.exists())
                             parentFile.mkdirs();
 
+                        // If only the new records are to be added, start
+                        // from a copy of the last file (the converter will
+                        // rebuild it if it can't be appended to)
+                        File stateFile = NetcdfConverter
+                            .getAppendStateFile(netCDFFile);
+                        if (this.incrementalNetCDF && netCDFFile.exists()
+                            && stateFile.exists()) {
+                            try {
+                                copyFile(netCDFFile, workingNetCDFFile);
+                                copyFile(stateFile, workingStateFile);
+                            } catch (IOException e) {
+                                logger.error("IOException caught trying to "
+                                    + "copy the last NetCDF file: "
+                                    + e.getMessage());
+                                workingNetCDFFile.delete();
+                                workingStateFile.delete();
+                            }
+                        }
+
                         // If the old file exists delete it
                         if (netCDFFile.exists()) {
-                            this.deploymentProcessingLogBuffer.append(this
+                            this.getDeploymentProcessingLogBuffer().append(this
                                 .getReportIndent(depth)
                                 + "   - The NetCDF file already exists, "
                                 + "so will delete it.\n");
@@ -581,17 +1062,21 @@ public class UpdateBot {
                             logger
                                 .error("ParsingException caught creating the NetcdfConverter: "
                                     + e.getMessage());
+                            conversionFailed.set(Boolean.TRUE);
                         } catch (IOException e) {
                             logger
                                 .error("IOException caught creating the NetcdfConverter: "
                                     + e.getMessage());
+                            conversionFailed.set(Boolean.TRUE);
                         }
+                        if (netcdfConverter != null)
+                            netcdfConverter.setIncremental(this.incrementalNetCDF);
                         // Now create the NetCDF file
                         Date netCDFCreationStartDate = new Date();
-                        this.deploymentProcessingLogBuffer.append(this
+                        this.getDeploymentProcessingLogBuffer().append(this
                             .getReportIndent(depth)
                             + "   - Starting the NetCDF creation at "
-                            + xmlDateFormat.format(netCDFCreationStartDate)
+                            + this.getXmlDateFormat().format(netCDFCreationStartDate)
                             + "\n");
                         try {
                             if (netcdfConverter != null)
@@ -601,37 +1086,37 @@ public class UpdateBot {
                             logger
                                 .error("IOException caught creating the NetCDF file: "
                                     + e.getMessage());
-                            e.printStackTrace();
+                            conversionFailed.set(Boolean.TRUE);
                         }
                         Date netCDFCreationEndDate = new Date();
-                        this.deploymentProcessingLogBuffer.append(this
+                        this.getDeploymentProcessingLogBuffer().append(this
                             .getReportIndent(depth)
                             + "   - NetCDF creation finished at "
-                            + xmlDateFormat.format(netCDFCreationEndDate)
+                            + this.getXmlDateFormat().format(netCDFCreationEndDate)
                             + "\n");
 
+                        // If the crawl was cancelled while the file was being
+                        // built, leave the final file alone
+                        if (this.isCrawlCancelled()) {
+                            logger.error("Crawl was cancelled while building "
+                                + workingNetCDFFile.getAbsolutePath()
+                                + ", it will not be copied");
+                            return deploymentUpdated;
+                        }
+
                         // Now I have created the working file, copy that over
                         // to the final resting place.
                         logger.debug("Going to name "
                             + workingNetCDFFile.getAbsolutePath() + " to "
                             + netCDFFile.getAbsolutePath());
                         try {
-                            // Create channel on the source
-                            FileChannel srcChannel = new FileInputStream(
-                                workingNetCDFFile.getAbsoluteFile())
-                                .getChannel();
-
-                            // Create channel on the destination
-                            FileChannel dstChannel = new FileOutputStream(
-                                netCDFFile.getAbsoluteFile()).getChannel();
-
-                            // Copy file contents from source to destination
-                            dstChannel.transferFrom(srcChannel, 0, srcChannel
-                                .size());
-
-                            // Close the channels
-                            srcChannel.close();
-                            dstChannel.close();
+                            copyFile(workingNetCDFFile, netCDFFile);
+                            // Along with what is needed to append to it
+                            if (workingStateFile.exists()) {
+                                copyFile(workingStateFile, stateFile);
+                            } else if (stateFile.exists()) {
+                                stateFile.delete();
+                            }
                         } catch (IOException e) {
                             logger
                                 .error("IOException caught trying to copy file (Source: "
@@ -655,7 +1140,7 @@ public class UpdateBot {
                             .getParallelNetCDFFilePath(outputFull,
                                 PATH_TYPE_LOG);
 
-                        this.deploymentProcessingLogBuffer
+                        this.getDeploymentProcessingLogBuffer()
                             .append(this.getReportIndent(depth)
                                 + "   - Now will write out the NetCDF creation log to "
                                 + this.getParallelNetCDFFilePath(outputFull,
@@ -684,7 +1169,7 @@ public class UpdateBot {
                         // In order to store all the metadata for the process
                         // and data file, create the object that will be used to
                         // track that information and associate them
-                        this.deploymentProcessingLogBuffer.append(this
+                        this.getDeploymentProcessingLogBuffer().append(this
                             .getReportIndent(depth)
                             + "   - Now will create the SSDS Metadata objects "
                             + "to track the processing and NetCDF file.\n");
@@ -693,15 +1178,15 @@ public class UpdateBot {
                         DataProducer netCDFDataProducer = this
                             .createNetCDFDataProducer(outputFull,
                                 netCDFCreationStartDate, netCDFCreationEndDate);
-                        this.deploymentProcessingLogBuffer.append(this
+                        this.getDeploymentProcessingLogBuffer().append(this
                             .getReportIndent(depth)
                             + "   - The UpdateBot DataProducer will be named "
                             + netCDFDataProducer.getName()
                             + "(start date = "
-                            + xmlDateFormat.format(netCDFDataProducer
+                            + this.getXmlDateFormat().format(netCDFDataProducer
                                 .getStartDate())
                             + ", end date = "
-                            + xmlDateFormat.format(netCDFDataProducer
+                            + this.getXmlDateFormat().format(netCDFDataProducer
                                 .getEndDate()) + ").\n");
 
                         // If the NetCDF Creator has mean geospatial
@@ -793,7 +1278,7 @@ public class UpdateBot {
                         // The NetCDF DataProducerGroup
                         DataProducerGroup netCDFCreationDataProducerGroup = this
                             .createNetCDFDataProducerGroup();
-                        this.deploymentProcessingLogBuffer.append(this
+                        this.getDeploymentProcessingLogBuffer().append(this
                             .getReportIndent(depth)
                             + "   - Created DataProducerGroup with name "
                             + netCDFCreationDataProducerGroup.getName() + "\n");
@@ -809,7 +1294,7 @@ public class UpdateBot {
                         // The NetCDF DataContainerGroup
                         DataContainerGroup netCDFDataContainerGroup = this
                             .createNetCDFDataContainerGroup();
-                        this.deploymentProcessingLogBuffer.append(this
+                        this.getDeploymentProcessingLogBuffer().append(this
                             .getReportIndent(depth)
                             + "   - Created DataContainerGroup with name "
                             + netCDFDataContainerGroup.getName() + "\n");
@@ -821,7 +1306,7 @@ public class UpdateBot {
                                     PATH_TYPE_LOG_URL),
                                 netCDFCreationStartDate, netCDFCreationEndDate);
 
-                        this.deploymentProcessingLogBuffer.append(this
+                        this.getDeploymentProcessingLogBuffer().append(this
                             .getReportIndent(depth)
                             + "   - The NetCDF DataContainer will be "
                             + parallelNetCDFDataContainer.getName()
@@ -829,7 +1314,7 @@ public class UpdateBot {
                             + parallelNetCDFDataContainer.getUriString()
                             + ".\n");
 
-                        this.deploymentProcessingLogBuffer.append(this
+                        this.getDeploymentProcessingLogBuffer().append(this
                             .getReportIndent(depth)
                             + "   - NetCDF creation log file Resource will be "
                             + logFileResource.getName()
@@ -851,11 +1336,11 @@ public class UpdateBot {
                         // to assign start and end dates to the output they were
                         // created from
                         if (parallelNetCDFDataContainer.getStartDate() != null) {
-                            this.deploymentProcessingLogBuffer
+                            this.getDeploymentProcessingLogBuffer()
                                 .append(this.getReportIndent(depth)
                                     + "   - Since a start date was found in the NetCDF "
                                     + "file, will assign "
-                                    + xmlDateFormat
+                                    + this.getXmlDateFormat()
                                         .format(parallelNetCDFDataContainer
                                             .getStartDate())
                                     + " to the start date of "
@@ -883,11 +1368,11 @@ public class UpdateBot {
                                 .getEndDate());
                             outputFull.setEndDate(parallelNetCDFDataContainer
                                 .getEndDate());
-                            this.deploymentProcessingLogBuffer
+                            this.getDeploymentProcessingLogBuffer()
                                 .append(this.getReportIndent(depth)
                                     + "   - Since a end date was found in the NetCDF "
                                     + "file, will assign "
-                                    + xmlDateFormat
+                                    + this.getXmlDateFormat()
                                         .format(parallelNetCDFDataContainer
                                             .getEndDate())
                                     + " to the end date of "
@@ -915,7 +1400,7 @@ public class UpdateBot {
                                 outputFull
                                     .setMinLatitude(parallelNetCDFDataContainer
                                         .getMinLatitude());
-                                this.deploymentProcessingLogBuffer
+                                this.getDeploymentProcessingLogBuffer()
                                     .append(this.getReportIndent(depth)
                                         + "   - Since a min latitude was found in the NetCDF "
                                         + "file, will assign "
@@ -933,7 +1418,7 @@ public class UpdateBot {
                                 outputFull
                                     .setMaxLatitude(parallelNetCDFDataContainer
                                         .getMaxLatitude());
-                                this.deploymentProcessingLogBuffer
+                                this.getDeploymentProcessingLogBuffer()
                                     .append(this.getReportIndent(depth)
                                         + "   - Since a max latitude was found in the NetCDF "
                                         + "file, will assign "
@@ -951,7 +1436,7 @@ public class UpdateBot {
                                 outputFull
                                     .setMinLongitude(parallelNetCDFDataContainer
                                         .getMinLongitude());
-                                this.deploymentProcessingLogBuffer
+                                this.getDeploymentProcessingLogBuffer()
                                     .append(this.getReportIndent(depth)
                                         + "   - Since a min longitude was found in the NetCDF "
                                         + "file, will assign "
@@ -969,7 +1454,7 @@ public class UpdateBot {
                                 outputFull
                                     .setMaxLongitude(parallelNetCDFDataContainer
                                         .getMaxLongitude());
-                                this.deploymentProcessingLogBuffer
+                                this.getDeploymentProcessingLogBuffer()
                                     .append(this.getReportIndent(depth)
                                         + "   - Since a max longitude was found in the NetCDF "
                                         + "file, will assign "
@@ -986,7 +1471,7 @@ public class UpdateBot {
                                 outputFull
                                     .setMinDepth(parallelNetCDFDataContainer
                                         .getMinDepth());
-                                this.deploymentProcessingLogBuffer
+                                this.getDeploymentProcessingLogBuffer()
                                     .append(this.getReportIndent(depth)
                                         + "   - Since a min depth was found in the NetCDF "
                                         + "file, will assign "
@@ -1003,7 +1488,7 @@ public class UpdateBot {
                                 outputFull
                                     .setMaxDepth(parallelNetCDFDataContainer
                                         .getMaxDepth());
-                                this.deploymentProcessingLogBuffer
+                                this.getDeploymentProcessingLogBuffer()
                                     .append(this.getReportIndent(depth)
                                         + "   - Since a max depth was found in the NetCDF "
                                         + "file, will assign "
@@ -1021,7 +1506,7 @@ public class UpdateBot {
                             && (outputLength.longValue() > 0)) {
                             output.setContentLength(outputLength);
                             outputFull.setContentLength(outputLength);
-                            this.deploymentProcessingLogBuffer.append(this
+                            this.getDeploymentProcessingLogBuffer().append(this
                                 .getReportIndent(depth)
                                 + "   - Set the content length of "
                                 + outputFull.getName()
@@ -1046,12 +1531,12 @@ public class UpdateBot {
                                     + "dataProducer access interfaces and persist: "
                                     + e.getMessage());
                         }
-                        this.deploymentProcessingLogBuffer.append(this
+                        this.getDeploymentProcessingLogBuffer().append(this
                             .getReportIndent(depth)
                             + " - UpdateBot DataProducer "
                             + "persisted and has ID " + dataProducerID + ".\n");
                     } else {
-                        this.deploymentProcessingLogBuffer.append(this
+                        this.getDeploymentProcessingLogBuffer().append(this
                             .getReportIndent(depth)
                             + "   - The NetCDF already exists and is up to "
                             + "date so no NetCDF will be created.\n\n");
@@ -1060,29 +1545,29 @@ public class UpdateBot {
                     logger.debug("It looks like the output "
                         + outputFull.toStringRepresentation("|")
                         + " could not be converted to NetCDF");
-                    this.deploymentProcessingLogBuffer
+                    this.getDeploymentProcessingLogBuffer()
                         .append(this.getReportIndent(depth)
                             + "   - This output could not be converted to NetCDF because ");
                     if ((outputFull.isNoNetCDF() != null)
                         && (outputFull.isNoNetCDF().booleanValue())) {
-                        this.deploymentProcessingLogBuffer
+                        this.getDeploymentProcessingLogBuffer()
                             .append("it was flagged to NOT have NetCDF created.");
                     } else if (outputFull.getRecordDescription() == null) {
-                        this.deploymentProcessingLogBuffer
+                        this.getDeploymentProcessingLogBuffer()
                             .append("the RecordDescription was null.");
                     } else if ((outputFull.getRecordDescription().isParseable() == null)
                         || (!outputFull.getRecordDescription().isParseable()
                             .booleanValue())) {
-                        this.deploymentProcessingLogBuffer
+                        this.getDeploymentProcessingLogBuffer()
                             .append("the RecordDescription stated the output was not parseable.");
                     }
-                    this.deploymentProcessingLogBuffer.append("\n");
+                    this.getDeploymentProcessingLogBuffer().append("\n");
                 }
             }
 
         } else {
             logger.debug("No outputs found");
-            this.deploymentProcessingLogBuffer.append(this
+            this.getDeploymentProcessingLogBuffer().append(this
                 .getReportIndent(depth)
                 + "  - There were no direct outputs for that deployment.\n");
         }
@@ -1100,7 +1585,7 @@ public class UpdateBot {
         }
         if ((childDeployments != null) && (childDeployments.size() > 0)) {
 
-            this.deploymentProcessingLogBuffer.append(this
+            this.getDeploymentProcessingLogBuffer().append(this
                 .getReportIndent(depth)
                 + "  - Will loop through child deployments now (there are "
                 + childDeployments.size() + " of them)\n");
@@ -1109,7 +1594,7 @@ public class UpdateBot {
             Date latestChildDeploymentEndDate = null;
 
             Iterator childDeploymentIter = childDeployments.iterator();
-            while (childDeploymentIter.hasNext()) {
+            while (childDeploymentIter.hasNext() && !this.isCrawlCancelled()) {
                 DataProducer childDataProducer = (DataProducer) childDeploymentIter
                     .next();
 
@@ -1236,7 +1721,7 @@ public class UpdateBot {
                 deploymentUpdated = true;
             }
         }
-        if ((latestEndDate != null) && (!containsOpenStreams)) {
+        if ((latestEndDate != null) && (!this.isContainsOpenStreams())) {
             if ((deployment.getEndDate() == null)
                 || (latestEndDate.after(deployment.getEndDate()))) {
                 deployment.setEndDate(latestEndDate);
@@ -1260,7 +1745,7 @@ public class UpdateBot {
                     + deployment.toStringRepresentation("|") + ": "
                     + e.getMessage());
             }
-            this.deploymentProcessingLogBuffer.append(this
+            this.getDeploymentProcessingLogBuffer().append(this
                 .getReportIndent(depth)
                 + " - Deployment "
                 + deployment.getName()
@@ -1377,7 +1862,7 @@ public class UpdateBot {
                             logger.debug("Modification time for file at URL "
                                 + dataContainer.getUriString()
                                 + " is "
-                                + xmlDateFormat.format(modificationTime
+                                + this.getXmlDateFormat().format(modificationTime
                                     .getTime()));
                             break;
                         }
@@ -1572,7 +2057,7 @@ public class UpdateBot {
         // Set the name to the name of this class
         try {
             netCDFDataProducer.setName("NetCDFConverter on "
-                + xmlDateFormat.format(startDate));
+                + this.getXmlDateFormat().format(startDate));
         } catch (MetadataException e3) {
             logger.error("MetadataException caught trying to "
                 + "set the name of the NetCDF DataProducer to :"
@@ -2358,9 +2843,9 @@ public class UpdateBot {
         if ((parentDataProducer.getStartDate() != null)
             && (parentDataProducer.getEndDate() != null)) {
             body.append(" ("
-                + xmlDateFormat.format(parentDataProducer.getStartDate())
+                + this.getXmlDateFormat().format(parentDataProducer.getStartDate())
                 + " to "
-                + xmlDateFormat.format(parentDataProducer.getEndDate()) + ")");
+                + this.getXmlDateFormat().format(parentDataProducer.getEndDate()) + ")");
         }
         body.append("</h4>\n<hr/>\n");
         body.append("<ol>");
@@ -2689,14 +3174,55 @@ public class UpdateBot {
 
     /**
      * A boolean to help track whether or not the deployment has any open
-     * streams
+     * streams (one for each crawl thread)
+     */
+    private ThreadLocal containsOpenStreams = new ThreadLocal();
+
+    /**
+     * A boolean to track whether any output of the deployment failed to be
+     * converted to NetCDF (one for each crawl thread)
+     */
+    private ThreadLocal conversionFailed = new ThreadLocal();
+
+    /**
+     * The task that is crawling the deployment, so the crawl can check if it
+     * has been cancelled (one for each crawl thread, null when not crawling
+     * concurrently)
      */
-    private boolean containsOpenStreams = false;
+    private ThreadLocal currentCrawlTask = new ThreadLocal();
 
     /**
-     * A StringBuffer used to write log reports
+     * The StringBuffer used to write log reports (each crawl thread has the
+     * one for the deployment it is working on)
      */
-    private StringBuffer deploymentProcessingLogBuffer = null;
+    private ThreadLocal deploymentProcessingLogBuffer = new ThreadLocal();
+
+    /**
+     * The number of threads that crawl deployments at the same time and the
+     * number of seconds a deployment is given before it is cancelled (zero
+     * means no limit)
+     */
+    private int crawlThreads = 1;
+    private long deploymentTimeoutSeconds = 0;
+
+    /**
+     * If this is true, deployments whose outputs have not changed since the
+     * last successful crawl are skipped
+     */
+    private boolean skipUnchangedDeployments = true;
+
+    /**
+     * If this is true, new records are appended to the NetCDF files from the
+     * last run instead of rebuilding them
+     */
+    private boolean incrementalNetCDF = true;
+
+    /**
+     * The fingerprints of the outputs of each deployment from the last
+     * successful crawls (by deployment ID) and the file they are kept in
+     */
+    private Properties crawlState = new Properties();
+    private File crawlStateFile = null;
 
     /**
      * Some constants
@@ -2709,9 +3235,13 @@ public class UpdateBot {
     private final String PATH_TYPE_LOG_URL = "LOG_URL";
 
     /**
-     * A date formatter
+     * A date formatter (one for each crawl thread)
      */
-    private XmlDateFormat xmlDateFormat = new XmlDateFormat();
+    private ThreadLocal xmlDateFormat = new ThreadLocal() {
+        protected Object initialValue() {
+            return new XmlDateFormat();
+        }
+    };
 
     /**
      * A log4j logger
@@ -19,11 +19,14 @@ import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 
 import moos.ssds.dao.util.MetadataAccessException;
+import moos.ssds.dao.util.SpatialTemporalIndex;
 import moos.ssds.metadata.CommentTag;
 import moos.ssds.metadata.DataContainer;
 import moos.ssds.metadata.DataContainerGroup;
@@ -117,7 +120,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// Check for return full object graph
 		if (returnFullObjectGraph)
-			dataContainerToReturn = (DataContainer) getRealObjectAndRelationships(dataContainerToReturn);
+			dataContainerToReturn = (DataContainer) loadObjectGraph(dataContainerToReturn);
 
 		return dataContainerToReturn;
 	}
@@ -219,7 +222,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// Check to see if full object graphs were requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -333,7 +336,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// Check if full object graphs were requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -418,7 +421,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// Check if full object graphs were requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -495,7 +498,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// Check if full object graphs were requested
 		if (returnFullObjectGraph)
-			dataContainerToReturn = (DataContainer) getRealObjectAndRelationships(dataContainerToReturn);
+			dataContainerToReturn = (DataContainer) loadObjectGraph(dataContainerToReturn);
 
 		// Return the result
 		return dataContainerToReturn;
@@ -527,7 +530,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// Check if full object graphs were requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the result
 		return results;
@@ -638,7 +641,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// Check if full object graphs were requested
 		if (returnFullObjectGraph)
-			dataContainerToReturn = (DataContainer) getRealObjectAndRelationships(dataContainerToReturn);
+			dataContainerToReturn = (DataContainer) loadObjectGraph(dataContainerToReturn);
 
 		// Return the result
 		return dataContainerToReturn;
@@ -671,7 +674,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// Check if full object graphs were requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the result
 		return results;
@@ -743,6 +746,10 @@ public class DataContainerDAO extends MetadataDAO {
 					geospatialLonMax, false, geospatialVerticalMin, false,
 					geospatialVerticalMax, false, orderByPropertyName,
 					ascendingOrDescending);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					geospatialVerticalMin, geospatialVerticalMax, null, null))
+				return new ArrayList();
 			results = criteria.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -750,7 +757,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// Check if full object graphs were requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the result
 		return results;
@@ -770,6 +777,10 @@ public class DataContainerDAO extends MetadataDAO {
 					geospatialLatMax, false, geospatialLonMin, false,
 					geospatialLonMax, false, geospatialVerticalMin, false,
 					geospatialVerticalMax, false, null, null);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					geospatialVerticalMin, geospatialVerticalMax, null, null))
+				return 0;
 			count = ((Long) criteria.uniqueResult()).intValue();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -826,6 +837,10 @@ public class DataContainerDAO extends MetadataDAO {
 					geospatialLonMax, false, geospatialVerticalMin, false,
 					geospatialVerticalMax, false, orderByPropertyName,
 					ascendingOrDescending);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					geospatialVerticalMin, geospatialVerticalMax, startDate, endDate))
+				return new ArrayList();
 			results = criteria.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -833,7 +848,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// Check if full object graphs were requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the result
 		return results;
@@ -855,6 +870,10 @@ public class DataContainerDAO extends MetadataDAO {
 					geospatialLatMax, false, geospatialLonMin, false,
 					geospatialLonMax, false, geospatialVerticalMin, false,
 					geospatialVerticalMax, false, null, null);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					geospatialVerticalMin, geospatialVerticalMax, startDate, endDate))
+				return 0;
 			count = ((Long) criteria.uniqueResult()).intValue();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -912,7 +931,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph) {
-			dataContainers = getRealObjectsAndRelationships(dataContainers);
+			dataContainers = loadObjectGraphs(dataContainers);
 		}
 
 		return dataContainers;
@@ -946,7 +965,7 @@ public class DataContainerDAO extends MetadataDAO {
 		}
 
 		if (returnFullObjectGraph)
-			dataContainerToReturn = (DataContainer) getRealObjectAndRelationships(dataContainerToReturn);
+			dataContainerToReturn = (DataContainer) loadObjectGraph(dataContainerToReturn);
 
 		return dataContainerToReturn;
 
@@ -991,7 +1010,7 @@ public class DataContainerDAO extends MetadataDAO {
 		}
 
 		if (returnFullObjectGraph)
-			dataContainers = getRealObjectsAndRelationships(dataContainers);
+			dataContainers = loadObjectGraphs(dataContainers);
 
 		return dataContainers;
 	}
@@ -1042,7 +1061,7 @@ public class DataContainerDAO extends MetadataDAO {
 		}
 
 		if (returnFullObjectGraph)
-			dataContainers = getRealObjectsAndRelationships(dataContainers);
+			dataContainers = loadObjectGraphs(dataContainers);
 
 		return dataContainers;
 	}
@@ -1091,7 +1110,7 @@ public class DataContainerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			dataContainersToReturn = getRealObjectsAndRelationships(dataContainersToReturn);
+			dataContainersToReturn = loadObjectGraphs(dataContainersToReturn);
 
 		// Now return the results
 		return dataContainersToReturn;
@@ -1179,7 +1198,7 @@ public class DataContainerDAO extends MetadataDAO {
 		}
 
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		return results;
 	}
@@ -1269,7 +1288,7 @@ public class DataContainerDAO extends MetadataDAO {
 		results = query.list();
 
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		return results;
 	}
@@ -1281,11 +1300,39 @@ public class DataContainerDAO extends MetadataDAO {
 		return new ArrayList();
 	}
 
+	/**
+	 * This method returns the <code>DataProducer</code>s that created the
+	 * given <code>DataContainer</code>, the ones that created its inputs and
+	 * so on up the processing chain (see <code>LineageTraversal</code>).
+	 * 
+	 * @param dataContainer
+	 *            the <code>DataContainer</code> to start from
+	 * @param fetchDepth
+	 *            the number of creators to follow up the chain (1 is the
+	 *            direct creator only)
+	 * @param orderByPropertyName
+	 *            the property of <code>DataProducer</code> to order the
+	 *            results by (they are nearest first if this is null)
+	 * @param returnFullObjectGraph
+	 *            If true then return populated object graphs
+	 * @return the <code>Collection</code> of <code>DataProducer</code>s
+	 * @throws MetadataAccessException
+	 *             if something goes wrong
+	 */
 	public Collection findCreatorChain(DataContainer dataContainer,
 			int fetchDepth, String orderByPropertyName,
 			String ascendingOrDescending, boolean returnFullObjectGraph)
 			throws MetadataAccessException {
-		return new ArrayList();
+		Long dataContainerID = findLineageStartID(dataContainer);
+		if ((dataContainerID == null) || (fetchDepth <= 0))
+			return new ArrayList();
+		LineageTraversal lineageTraversal = new LineageTraversal(this
+				.getSession(), objectGraphBatchSize);
+		List creatorIDs = lineageTraversal.findCreatorIDs(Collections
+				.singletonList(dataContainerID), fetchDepth);
+		return loadLineage(lineageTraversal, DataProducer.class, creatorIDs,
+				orderByPropertyName, ascendingOrDescending,
+				returnFullObjectGraph);
 	}
 
 	public Collection findAllIndirectConsumers(DataContainer dataContainer,
@@ -1302,94 +1349,224 @@ public class DataContainerDAO extends MetadataDAO {
 		return new ArrayList();
 	}
 
+	/**
+	 * This method returns the <code>DataContainer</code>s that were the
+	 * inputs to the <code>DataProducer</code> that created the given
+	 * <code>DataContainer</code>
+	 * 
+	 * @see #findAllInputs(DataContainer, int, String, String, boolean)
+	 */
 	public Collection findDirectInputs(DataContainer dataContainer,
 			String orderByPropertyName, String ascendingOrDescending,
 			boolean returnFullObjectGraph) throws MetadataAccessException {
-		return new ArrayList();
+		return findAllInputs(dataContainer, 1, orderByPropertyName,
+				ascendingOrDescending, returnFullObjectGraph);
 	}
 
+	/**
+	 * This method returns the <code>DataContainer</code>s that the given
+	 * <code>DataContainer</code> was created from: the inputs of its creator,
+	 * the inputs of their creators and so on (see
+	 * <code>LineageTraversal</code>).
+	 * 
+	 * @param dataContainer
+	 *            the <code>DataContainer</code> to start from
+	 * @param fetchDepth
+	 *            the number of processing steps to follow (1 is the direct
+	 *            inputs only)
+	 * @param orderByPropertyName
+	 *            the property to order the results by (they are nearest first
+	 *            if this is null)
+	 * @param returnFullObjectGraph
+	 *            If true then return populated object graphs
+	 * @return the <code>Collection</code> of <code>DataContainer</code>s
+	 * @throws MetadataAccessException
+	 *             if something goes wrong
+	 */
 	public Collection findAllInputs(DataContainer dataContainer,
 			int fetchDepth, String orderByPropertyName,
 			String ascendingOrDescending, boolean returnFullObjectGraph)
 			throws MetadataAccessException {
-		return new ArrayList();
+		Long dataContainerID = findLineageStartID(dataContainer);
+		if ((dataContainerID == null) || (fetchDepth <= 0))
+			return new ArrayList();
+		LineageTraversal lineageTraversal = new LineageTraversal(this
+				.getSession(), objectGraphBatchSize);
+		List inputIDs = lineageTraversal.findInputIDs(Collections
+				.singletonList(dataContainerID), fetchDepth);
+		return loadLineage(lineageTraversal, DataContainer.class, inputIDs,
+				orderByPropertyName, ascendingOrDescending,
+				returnFullObjectGraph);
 	}
 
+	/**
+	 * This method returns the <code>DataContainer</code>s that were derived
+	 * from the given <code>DataContainer</code>: the outputs of the
+	 * <code>DataProducer</code>s that consumed it, the outputs of the
+	 * consumers of those and so on (see <code>LineageTraversal</code>).
+	 * 
+	 * @param dataContainer
+	 *            the <code>DataContainer</code> to start from
+	 * @param fetchDepth
+	 *            the number of processing steps to follow (1 is the outputs of
+	 *            the direct consumers only)
+	 * @param orderByPropertyName
+	 *            the property to order the results by (they are nearest first
+	 *            if this is null)
+	 * @param returnFullObjectGraph
+	 *            If true then return populated object graphs
+	 * @return the <code>Collection</code> of <code>DataContainer</code>s
+	 * @throws MetadataAccessException
+	 *             if something goes wrong
+	 */
 	public Collection findAllDerivedOutputs(DataContainer dataContainer,
 			int fetchDepth, String orderByPropertyName,
 			String ascendingOrDescending, boolean returnFullObjectGraph)
 			throws MetadataAccessException {
-		return new ArrayList();
+		Long dataContainerID = findLineageStartID(dataContainer);
+		if ((dataContainerID == null) || (fetchDepth <= 0))
+			return new ArrayList();
+		LineageTraversal lineageTraversal = new LineageTraversal(this
+				.getSession(), objectGraphBatchSize);
+		List derivedIDs = lineageTraversal.findDerivedOutputIDs(Collections
+				.singletonList(dataContainerID), fetchDepth);
+		return loadLineage(lineageTraversal, DataContainer.class, derivedIDs,
+				orderByPropertyName, ascendingOrDescending,
+				returnFullObjectGraph);
 	}
 
+	/**
+	 * This method adds the <code>DataContainer</code>s derived from the given
+	 * <code>DataContainer</code> to a collection (those that are not in it
+	 * already)
+	 * 
+	 * @see #findAllDerivedOutputs(DataContainer, int, String, String, boolean)
+	 */
 	public void addAllDerivedOutputsToCollection(Collection derivedOutputs,
 			DataContainer dataContainer, int fetchDepth,
 			String orderByPropertyName, String ascendingOrDescending,
 			boolean returnFullObjectGraph) throws MetadataAccessException {
-
-		// Grab the persistent equivalent
-		DataContainer persistentDC = (DataContainer) this
-				.findEquivalentPersistentObject(dataContainer, false);
-
-		// Now add all the outputs of the consumers
-		Collection consumers = persistentDC.getConsumers();
-		if ((fetchDepth > 0) && (consumers != null)) {
-			int newFetchDepth = fetchDepth - 1;
-			Iterator consumerIter = consumers.iterator();
-			while (consumerIter.hasNext()) {
-				DataProducer consumer = (DataProducer) consumerIter.next();
-				// Grab the outputs
-				Collection outputs = consumer.getOutputs();
-				// Iterate over them
-				Iterator outputsIter = outputs.iterator();
-				while (outputsIter.hasNext()) {
-					DataContainer output = (DataContainer) outputsIter.next();
-					if (!derivedOutputs.contains(output))
-						derivedOutputs.add(output);
-					this.addAllDerivedOutputsToCollection(derivedOutputs,
-							output, newFetchDepth, orderByPropertyName,
-							ascendingOrDescending, returnFullObjectGraph);
-				}
-			}
-		}
+		addAllToCollection(derivedOutputs, this.findAllDerivedOutputs(
+				dataContainer, fetchDepth, orderByPropertyName,
+				ascendingOrDescending, returnFullObjectGraph));
 	}
 
+	/**
+	 * This method returns the outputs of the given <code>DataProducer</code>
+	 * along with all the <code>DataContainer</code>s that were derived from
+	 * them.
+	 * 
+	 * @param dataProducer
+	 *            the <code>DataProducer</code> to start from
+	 * @param fetchDepth
+	 *            the number of processing steps to follow (0 or 1 is the
+	 *            outputs of the <code>DataProducer</code> only)
+	 * @param orderByPropertyName
+	 *            the property to order the results by (they are nearest first
+	 *            if this is null)
+	 * @param returnFullObjectGraph
+	 *            If true then return populated object graphs
+	 * @return the <code>Collection</code> of <code>DataContainer</code>s
+	 * @throws MetadataAccessException
+	 *             if something goes wrong
+	 */
 	public Collection findAllDerivedOutputs(DataProducer dataProducer,
 			int fetchDepth, String orderByPropertyName,
 			String ascendingOrDescending, boolean returnFullObjectGraph)
 			throws MetadataAccessException {
 
-		// The ArrayList to return
-		Collection derivedOutputs = new ArrayList();
-
 		// Now grab the persistent equivalent for the DataProducer that is input
 		DataProducerDAO dpdao = new DataProducerDAO(this.getSession());
 		DataProducer persistentDP = (DataProducer) dpdao
 				.findEquivalentPersistentObject(dataProducer, false);
+		if (persistentDP == null)
+			return new ArrayList();
 
-		// Now add its outputs to the collection
-		derivedOutputs.addAll(persistentDP.getOutputs());
-
-		// If the fetch depth is greater than zero, keep going
-		if (fetchDepth > 0) {
-			Iterator outputIter = persistentDP.getOutputs().iterator();
-			while (outputIter.hasNext()) {
-				this.addAllDerivedOutputsToCollection(derivedOutputs,
-						(DataContainer) outputIter.next(), (fetchDepth - 1),
-						orderByPropertyName, ascendingOrDescending,
-						returnFullObjectGraph);
-			}
+		// Find the IDs of its outputs
+		List outputIDs = null;
+		try {
+			Query query = this.getSession().createQuery(
+					"select dataContainer.id from DataContainer dataContainer "
+							+ "where dataContainer.creator.id = :dataProducerID");
+			query.setLong("dataProducerID", persistentDP.getId().longValue());
+			outputIDs = query.list();
+		} catch (HibernateException e) {
+			throw new MetadataAccessException(e);
 		}
 
-		// Now drill down through the DataContainers
-		return derivedOutputs;
+		// And drill down through the DataContainers from there
+		LineageTraversal lineageTraversal = new LineageTraversal(this
+				.getSession(), objectGraphBatchSize);
+		List derivedIDs = new ArrayList(outputIDs);
+		derivedIDs.addAll(lineageTraversal.findDerivedOutputIDs(outputIDs,
+				fetchDepth - 1));
+		return loadLineage(lineageTraversal, DataContainer.class, derivedIDs,
+				orderByPropertyName, ascendingOrDescending,
+				returnFullObjectGraph);
 	}
 
+	/**
+	 * This method adds the outputs of the given <code>DataProducer</code> and
+	 * the <code>DataContainer</code>s derived from them to a collection (those
+	 * that are not in it already)
+	 * 
+	 * @see #findAllDerivedOutputs(DataProducer, int, String, String, boolean)
+	 */
 	public void addAllDerivedOutputsToCollection(Collection derivedOutputs,
 			DataProducer dataProducer, int fetchDepth,
 			String orderByPropertyName, String ascendingOrDescending,
 			boolean returnFullObjectGraph) throws MetadataAccessException {
-		return;
+		addAllToCollection(derivedOutputs, this.findAllDerivedOutputs(
+				dataProducer, fetchDepth, orderByPropertyName,
+				ascendingOrDescending, returnFullObjectGraph));
+	}
+
+	/**
+	 * This method returns the ID of the persistent equivalent of the
+	 * <code>DataContainer</code> to start a lineage query from (or null if
+	 * there is none)
+	 */
+	private Long findLineageStartID(DataContainer dataContainer)
+			throws MetadataAccessException {
+		if (dataContainer == null)
+			return null;
+		DataContainer persistentDC = (DataContainer) this
+				.findEquivalentPersistentObject(dataContainer, false);
+		if (persistentDC == null)
+			return null;
+		return persistentDC.getId();
+	}
+
+	/**
+	 * This method loads the objects found by a lineage query, orders them (if
+	 * asked to) and fills out their object graphs (if asked to)
+	 */
+	private Collection loadLineage(LineageTraversal lineageTraversal,
+			Class persistentClass, List ids, String orderByPropertyName,
+			String ascendingOrDescending, boolean returnFullObjectGraph)
+			throws MetadataAccessException {
+		List results = lineageTraversal.load(persistentClass, ids);
+		LineageTraversal.sortByProperty(results, orderByPropertyName,
+				MetadataDAO.DESCENDING_ORDER.equals(ascendingOrDescending));
+		logger.debug("Lineage query found " + results.size() + " objects with "
+				+ lineageTraversal.getNumberOfQueries() + " queries");
+		if (returnFullObjectGraph)
+			return loadObjectGraphs(results);
+		return results;
+	}
+
+	/**
+	 * This method adds the objects that are not in the collection already to
+	 * it (checking against a hash set instead of the collection itself)
+	 */
+	private void addAllToCollection(Collection collection, Collection toAdd) {
+		HashSet alreadyThere = new HashSet(collection);
+		Iterator iterator = toAdd.iterator();
+		while (iterator.hasNext()) {
+			Object object = iterator.next();
+			if (alreadyThere.add(object))
+				collection.add(object);
+		}
 	}
 
 	/**
@@ -1441,7 +1618,7 @@ public class DataContainerDAO extends MetadataDAO {
 		results = query.list();
 
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		return results;
 
@@ -1482,7 +1659,7 @@ public class DataContainerDAO extends MetadataDAO {
 			outputs = new HashSet(persistentDataProducer.getOutputs());
 
 		if (returnFullObjectGraph)
-			outputs = getRealObjectsAndRelationships(outputs);
+			outputs = loadObjectGraphs(outputs);
 
 		return outputs;
 
@@ -2211,6 +2388,18 @@ public class DataContainerDAO extends MetadataDAO {
 		if (!persistedBefore)
 			getSession().save(dataContainerToPersist);
 
+		// Keep the geospatial index up to date
+		if (dataContainerToPersist != null)
+			indexGeospatialExtent(geospatialIndex, dataContainerToPersist
+					.getId(), dataContainerToPersist.getMinLatitude(),
+					dataContainerToPersist.getMaxLatitude(),
+					dataContainerToPersist.getMinLongitude(),
+					dataContainerToPersist.getMaxLongitude(),
+					dataContainerToPersist.getMinDepth(),
+					dataContainerToPersist.getMaxDepth(),
+					dataContainerToPersist.getStartDate(),
+					dataContainerToPersist.getEndDate());
+
 		// Now return the Id
 		if (dataContainerToPersist != null) {
 			return dataContainerToPersist.getId();
@@ -2393,6 +2582,32 @@ public class DataContainerDAO extends MetadataDAO {
 		return dataContainer;
 	}
 
+	/**
+	 * This method narrows a geospatial query down to the
+	 * <code>DataContainer</code>s the geospatial index says could be in the
+	 * cube (see <code>MetadataDAO.findGeospatialCandidateIDs</code>). The
+	 * criteria still check the extents.
+	 * 
+	 * @return false if there is nothing in the cube (so the query does not
+	 *         need to be run)
+	 */
+	private boolean restrictToGeospatialCandidates(Criteria criteria,
+			Double geospatialLatMin, Double geospatialLatMax,
+			Double geospatialLonMin, Double geospatialLonMax,
+			Float geospatialDepthMin, Float geospatialDepthMax,
+			Date startDate, Date endDate) throws MetadataAccessException {
+		List candidateIDs = findGeospatialCandidateIDs(geospatialIndex,
+				GEOSPATIAL_EXTENT_QUERY, geospatialLatMin, geospatialLatMax,
+				geospatialLonMin, geospatialLonMax, geospatialDepthMin,
+				geospatialDepthMax, startDate, endDate);
+		if (candidateIDs == null)
+			return true;
+		if (candidateIDs.isEmpty())
+			return false;
+		criteria.add(Restrictions.in("id", candidateIDs));
+		return true;
+	}
+
 	private Criteria formulatePropertyCriteria(boolean countQuery, Long id,
 			String name, boolean exactNameMatch, String dataContainerType,
 			Date startDate, boolean boundedByStartDate, Date endDate,
@@ -2629,4 +2844,17 @@ public class DataContainerDAO extends MetadataDAO {
 	 * The Log4J Logger
 	 */
 	static Logger logger = Logger.getLogger(DataContainerDAO.class);
+
+	/**
+	 * The in memory index of the extents of all the
+	 * <code>DataContainer</code>s and the query that loads it
+	 */
+	private static final SpatialTemporalIndex geospatialIndex = new SpatialTemporalIndex(
+			SpatialTemporalIndex.DEFAULT_NODE_CAPACITY);
+	private static final String GEOSPATIAL_EXTENT_QUERY = "select "
+			+ "dataContainer.id, dataContainer.minLatitude, "
+			+ "dataContainer.maxLatitude, dataContainer.minLongitude, "
+			+ "dataContainer.maxLongitude, dataContainer.minDepth, "
+			+ "dataContainer.maxDepth, dataContainer.startDate, "
+			+ "dataContainer.endDate from DataContainer dataContainer";
 }
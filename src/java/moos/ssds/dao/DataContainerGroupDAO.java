@@ -101,7 +101,7 @@ public class DataContainerGroupDAO extends MetadataDAO {
 
 		// If the full return graph is requested, fill it out
 		if (returnFullObjectGraph)
-			dataContainerGroupToReturn = (DataContainerGroup) getRealObjectAndRelationships(dataContainerGroupToReturn);
+			dataContainerGroupToReturn = (DataContainerGroup) loadObjectGraph(dataContainerGroupToReturn);
 
 		// Now return the persistent object that is considered equivalent
 		return dataContainerGroupToReturn;
@@ -197,7 +197,7 @@ public class DataContainerGroupDAO extends MetadataDAO {
 		// Now if the full object graph was requested, fill out the
 		// relationships
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -341,7 +341,7 @@ public class DataContainerGroupDAO extends MetadataDAO {
 
 		// If the full object graph is requested, fill out the relationships
 		if (returnFullObjectGraph)
-			dataContainerGroups = getRealObjectsAndRelationships(dataContainerGroups);
+			dataContainerGroups = loadObjectGraphs(dataContainerGroups);
 
 		// Return the result
 		return dataContainerGroups;
@@ -19,11 +19,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import moos.ssds.dao.util.MetadataAccessException;
+import moos.ssds.dao.util.SpatialTemporalIndex;
 import moos.ssds.metadata.DataContainer;
 import moos.ssds.metadata.DataProducer;
 import moos.ssds.metadata.DataProducerGroup;
@@ -109,7 +111,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// Check to see if the graph is requested
 		if (returnFullObjectGraph)
-			dataProducerToReturn = (DataProducer) getRealObjectAndRelationships(dataProducerToReturn);
+			dataProducerToReturn = (DataProducer) loadObjectGraph(dataProducerToReturn);
 
 		// Return the result
 		return dataProducerToReturn;
@@ -212,7 +214,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -322,7 +324,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -415,7 +417,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the result
 		return results;
@@ -488,7 +490,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			parentlessDeployments = getRealObjectsAndRelationships(parentlessDeployments);
+			parentlessDeployments = loadObjectGraphs(parentlessDeployments);
 
 		return parentlessDeployments;
 	}
@@ -553,7 +555,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			parentlessDataProducers = getRealObjectsAndRelationships(parentlessDataProducers);
+			parentlessDataProducers = loadObjectGraphs(parentlessDataProducers);
 
 		return parentlessDataProducers;
 	}
@@ -654,7 +656,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// Check for object graph return
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -731,6 +733,10 @@ public class DataProducerDAO extends MetadataDAO {
 					geospatialLonMax, geospatialVerticalMin,
 					geospatialVerticalMax, null, null, null, false,
 					orderByPropertyName, ascendingOrDescending);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					null, null))
+				return new ArrayList();
 			results = criteria.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e.getMessage());
@@ -738,7 +744,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// Check for object graph return
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -776,6 +782,10 @@ public class DataProducerDAO extends MetadataDAO {
 					geospatialLatMin, geospatialLatMax, geospatialLonMin,
 					geospatialLonMax, geospatialVerticalMin,
 					geospatialVerticalMax, null, null, null, false, null, null);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					null, null))
+				return 0;
 			count = ((Long) criteria.uniqueResult()).intValue();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e.getMessage());
@@ -827,6 +837,10 @@ public class DataProducerDAO extends MetadataDAO {
 					geospatialLonMin, geospatialLonMax, geospatialVerticalMin,
 					geospatialVerticalMax, null, null, null, false,
 					orderByPropertyName, ascendingOrDescending);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					startDate, endDate))
+				return new ArrayList();
 			results = criteria.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e.getMessage());
@@ -834,7 +848,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// Check for object graph return
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -878,6 +892,10 @@ public class DataProducerDAO extends MetadataDAO {
 					boundedByEndDate, geospatialLatMin, geospatialLatMax,
 					geospatialLonMin, geospatialLonMax, geospatialVerticalMin,
 					geospatialVerticalMax, null, null, null, false, null, null);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					startDate, endDate))
+				return 0;
 			count = ((Long) criteria.uniqueResult()).intValue();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -926,6 +944,10 @@ public class DataProducerDAO extends MetadataDAO {
 					geospatialLonMax, geospatialVerticalMin,
 					geospatialVerticalMax, null, null, null, false,
 					orderByPropertyName, ascendingOrDescending);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					null, null))
+				return new ArrayList();
 			results = criteria.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e.getMessage());
@@ -933,7 +955,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// Check for object graph return
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -974,6 +996,10 @@ public class DataProducerDAO extends MetadataDAO {
 					geospatialLatMin, geospatialLatMax, geospatialLonMin,
 					geospatialLonMax, geospatialVerticalMin,
 					geospatialVerticalMax, null, null, null, false, null, null);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					null, null))
+				return 0;
 			count = ((Long) criteria.uniqueResult()).intValue();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -1027,6 +1053,10 @@ public class DataProducerDAO extends MetadataDAO {
 					geospatialLatMax, geospatialLonMin, geospatialLonMax,
 					geospatialVerticalMin, geospatialVerticalMax, null, null,
 					null, false, orderByPropertyName, ascendingOrDescending);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					startDate, endDate))
+				return new ArrayList();
 			results = criteria.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e.getMessage());
@@ -1034,7 +1064,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// Check for object graph return
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -1083,6 +1113,10 @@ public class DataProducerDAO extends MetadataDAO {
 					geospatialLatMax, geospatialLonMin, geospatialLonMax,
 					geospatialVerticalMin, geospatialVerticalMax, null, null,
 					null, false, null, null);
+			if (!restrictToGeospatialCandidates(criteria, geospatialLatMin,
+					geospatialLatMax, geospatialLonMin, geospatialLonMax,
+					startDate, endDate))
+				return 0;
 			count = ((Long) criteria.uniqueResult()).intValue();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e.getMessage());
@@ -1127,7 +1161,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// Check for object graph return
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -1207,7 +1241,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph) {
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 		}
 
 		return dataProducersToReturn;
@@ -1294,7 +1328,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 
 		return dataProducersToReturn;
 	}
@@ -1362,7 +1396,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			collectionToReturn = getRealObjectsAndRelationships(collectionToReturn);
+			collectionToReturn = loadObjectGraphs(collectionToReturn);
 
 		// Now return the results (if any)
 		return collectionToReturn;
@@ -1447,7 +1481,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 
 		return dataProducersToReturn;
 	}
@@ -1480,7 +1514,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 
 		// Now return it
 		return dataProducersToReturn;
@@ -1520,7 +1554,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 
 		// Now return it
 		return dataProducersToReturn;
@@ -1552,7 +1586,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 
 		return dataProducersToReturn;
 
@@ -1603,7 +1637,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 
 		return dataProducersToReturn;
 	}
@@ -1677,7 +1711,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 
 		return dataProducersToReturn;
 	}
@@ -1732,7 +1766,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 
 		return dataProducersToReturn;
 	}
@@ -1775,7 +1809,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 
 		return dataProducersToReturn;
 	}
@@ -1829,7 +1863,7 @@ public class DataProducerDAO extends MetadataDAO {
 					}
 				}
 				if (returnFullObjectGraph) {
-					parentDataProducer = (DataProducer) getRealObjectAndRelationships(parentDataProducer);
+					parentDataProducer = (DataProducer) loadObjectGraph(parentDataProducer);
 				}
 			}
 			return parentDataProducer;
@@ -1934,7 +1968,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// Fill out graphs is asked for
 		if (returnFullObjectGraphs)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		return results;
 	}
@@ -2027,7 +2061,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 
 		return dataProducersToReturn;
 	}
@@ -2102,7 +2136,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -2195,7 +2229,7 @@ public class DataProducerDAO extends MetadataDAO {
 		dataProducersToReturn = query.list();
 
 		if (returnFullObjectGraph)
-			dataProducersToReturn = getRealObjectsAndRelationships(dataProducersToReturn);
+			dataProducersToReturn = loadObjectGraphs(dataProducersToReturn);
 
 		return dataProducersToReturn;
 	}
@@ -2252,7 +2286,7 @@ public class DataProducerDAO extends MetadataDAO {
 		dataProducerToReturn = (DataProducer) query.uniqueResult();
 
 		if (returnFullObjectGraph)
-			dataProducerToReturn = (DataProducer) getRealObjectAndRelationships(dataProducerToReturn);
+			dataProducerToReturn = (DataProducer) loadObjectGraph(dataProducerToReturn);
 
 		return dataProducerToReturn;
 	}
@@ -2319,7 +2353,7 @@ public class DataProducerDAO extends MetadataDAO {
 		results = query.list();
 
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		return results;
 	}
@@ -2371,7 +2405,7 @@ public class DataProducerDAO extends MetadataDAO {
 		}
 
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		return results;
 	}
@@ -2501,7 +2535,7 @@ public class DataProducerDAO extends MetadataDAO {
 
 		// Check if the full object graph is to be returned
 		if (returnFullObjectGraph)
-			allDeployments = getRealObjectsAndRelationships(allDeployments);
+			allDeployments = loadObjectGraphs(allDeployments);
 
 		// Now return the results
 		return allDeployments;
@@ -4310,6 +4344,18 @@ public class DataProducerDAO extends MetadataDAO {
 			}
 		}
 
+		// Keep the geospatial index up to date
+		if (dataProducerToPersist != null)
+			indexGeospatialExtent(geospatialIndex, dataProducerToPersist
+					.getId(), dataProducerToPersist.getNominalLatitude(),
+					dataProducerToPersist.getNominalLatitude(),
+					dataProducerToPersist.getNominalLongitude(),
+					dataProducerToPersist.getNominalLongitude(),
+					dataProducerToPersist.getNominalDepth(),
+					dataProducerToPersist.getNominalDepth(),
+					dataProducerToPersist.getStartDate(),
+					dataProducerToPersist.getEndDate());
+
 		// Return the ID
 		if (dataProducerToPersist != null) {
 			return dataProducerToPersist.getId();
@@ -4489,6 +4535,31 @@ public class DataProducerDAO extends MetadataDAO {
 		return dataProducer;
 	}
 
+	/**
+	 * This method narrows a geospatial query down to the
+	 * <code>DataProducer</code>s the geospatial index says could be in the
+	 * cube (see <code>MetadataDAO.findGeospatialCandidateIDs</code>). The
+	 * criteria still check the position, depth and benthic altitude.
+	 * 
+	 * @return false if there is nothing in the cube (so the query does not
+	 *         need to be run)
+	 */
+	private boolean restrictToGeospatialCandidates(Criteria criteria,
+			Double geospatialLatMin, Double geospatialLatMax,
+			Double geospatialLonMin, Double geospatialLonMax,
+			Date startDate, Date endDate) throws MetadataAccessException {
+		List candidateIDs = findGeospatialCandidateIDs(geospatialIndex,
+				GEOSPATIAL_EXTENT_QUERY, geospatialLatMin, geospatialLatMax,
+				geospatialLonMin, geospatialLonMax, null, null, startDate,
+				endDate);
+		if (candidateIDs == null)
+			return true;
+		if (candidateIDs.isEmpty())
+			return false;
+		criteria.add(Restrictions.in("id", candidateIDs));
+		return true;
+	}
+
 	/**
 	 * TODO kgomes document this
 	 * 
@@ -4735,4 +4806,18 @@ public class DataProducerDAO extends MetadataDAO {
 	 * The Log4J Logger
 	 */
 	static Logger logger = Logger.getLogger(DataProducerDAO.class);
+
+	/**
+	 * The in memory index of the nominal positions and the dates of all the
+	 * <code>DataProducer</code>s and the query that loads it (the depth is
+	 * left to the criteria)
+	 */
+	private static final SpatialTemporalIndex geospatialIndex = new SpatialTemporalIndex(
+			SpatialTemporalIndex.DEFAULT_NODE_CAPACITY);
+	private static final String GEOSPATIAL_EXTENT_QUERY = "select "
+			+ "dataProducer.id, dataProducer.nominalLatitude, "
+			+ "dataProducer.nominalLatitude, dataProducer.nominalLongitude, "
+			+ "dataProducer.nominalLongitude, dataProducer.nominalDepth, "
+			+ "dataProducer.nominalDepth, dataProducer.startDate, "
+			+ "dataProducer.endDate from DataProducer dataProducer";
 }
@@ -76,7 +76,7 @@ public class DataProducerGroupDAO extends MetadataDAO {
 					.uniqueResult();
 		}
 		if (returnFullObjectGraph)
-			dataProducerGroupToReturn = (DataProducerGroup) getRealObjectAndRelationships(dataProducerGroupToReturn);
+			dataProducerGroupToReturn = (DataProducerGroup) loadObjectGraph(dataProducerGroupToReturn);
 
 		// Return the result
 		return dataProducerGroupToReturn;
@@ -155,7 +155,7 @@ public class DataProducerGroupDAO extends MetadataDAO {
 				exactMatch, orderByPropertyName, ascendingOrDescending);
 		results = criteria.list();
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 		// Return the results
 		return results;
 	}
@@ -254,7 +254,7 @@ public class DataProducerGroupDAO extends MetadataDAO {
 		}
 
 		if (returnFullObjectGraph)
-			dataProducerGroups = getRealObjectsAndRelationships(dataProducerGroups);
+			dataProducerGroups = loadObjectGraphs(dataProducerGroups);
 
 		// Return the result
 		return dataProducerGroups;
@@ -112,7 +112,7 @@ public class DeviceDAO extends MetadataDAO {
 
 		// Check for relationship initialization
 		if (returnFullObjectGraph)
-			deviceToReturn = (Device) getRealObjectAndRelationships(deviceToReturn);
+			deviceToReturn = (Device) loadObjectGraph(deviceToReturn);
 
 		// OK, return the result
 		if (deviceToReturn != null)
@@ -197,7 +197,7 @@ public class DeviceDAO extends MetadataDAO {
 
 		// Check for relationship init
 		if (returnFullObjectGraph)
-			deviceToReturn = (Device) getRealObjectAndRelationships(deviceToReturn);
+			deviceToReturn = (Device) loadObjectGraph(deviceToReturn);
 
 		// Return the result
 		return deviceToReturn;
@@ -241,7 +241,7 @@ public class DeviceDAO extends MetadataDAO {
 
 		// Check for relationship init
 		if (returnFullObjectGraph)
-			devicesToReturn = getRealObjectsAndRelationships(devicesToReturn);
+			devicesToReturn = loadObjectGraphs(devicesToReturn);
 
 		// Now return the results
 		if (devicesToReturn != null) {
@@ -439,7 +439,7 @@ public class DeviceDAO extends MetadataDAO {
 		}
 
 		if (returnFullObjectGraph)
-			matchingDevices = getRealObjectsAndRelationships(matchingDevices);
+			matchingDevices = loadObjectGraphs(matchingDevices);
 
 		// Return the result
 		return matchingDevices;
@@ -532,7 +532,7 @@ public class DeviceDAO extends MetadataDAO {
 
 		// Check relationship init
 		if (returnFullObjectGraph)
-			devices = getRealObjectsAndRelationships(devices);
+			devices = loadObjectGraphs(devices);
 
 		// Now return the real objects
 		return devices;
@@ -598,7 +598,7 @@ public class DeviceDAO extends MetadataDAO {
 		}
 
 		if (returnFullObjectGraph)
-			devices = getRealObjectsAndRelationships(devices);
+			devices = loadObjectGraphs(devices);
 
 		// Now return the real objects
 		return devices;
@@ -853,7 +853,7 @@ public class DeviceDAO extends MetadataDAO {
 		}
 
 		if (returnFullObjectGraph)
-			devices = getRealObjectsAndRelationships(devices);
+			devices = loadObjectGraphs(devices);
 
 		return devices;
 	}
@@ -910,7 +910,7 @@ public class DeviceDAO extends MetadataDAO {
 		}
 
 		if (returnFullObjectGraph)
-			devices = getRealObjectsAndRelationships(devices);
+			devices = loadObjectGraphs(devices);
 
 		return devices;
 	}
@@ -974,7 +974,7 @@ public class DeviceDAO extends MetadataDAO {
 		results = query.list();
 
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		return results;
 	}
@@ -1031,7 +1031,7 @@ public class DeviceDAO extends MetadataDAO {
 		results = (Device) query.uniqueResult();
 
 		if (returnFullObjectGraph)
-			results = (Device) getRealObjectAndRelationships(results);
+			results = (Device) loadObjectGraph(results);
 
 		return results;
 	}
@@ -88,7 +88,7 @@ public class DeviceTypeDAO extends MetadataDAO {
 
 		// Check for relationship initialization
 		if (returnFullObjectGraph)
-			deviceTypeToReturn = (DeviceType) getRealObjectAndRelationships(deviceTypeToReturn);
+			deviceTypeToReturn = (DeviceType) loadObjectGraph(deviceTypeToReturn);
 
 		return deviceTypeToReturn;
 	}
@@ -107,7 +107,7 @@ public class DeviceTypeDAO extends MetadataDAO {
 
 		// Create the query and run it
 		try {
-			Query query = getSession().createQuery(
+			Query query = createQuery(
 					"select distinct deviceType.id from "
 							+ "DeviceType deviceType order by deviceType.id");
 			deviceTypeIDs = query.list();
@@ -124,7 +124,7 @@ public class DeviceTypeDAO extends MetadataDAO {
 		// The count
 		int count = 0;
 		try {
-			Long longCount = (Long) getSession().createQuery(
+			Long longCount = (Long) createQuery(
 					"select count(distinct deviceType.id) from "
 							+ "DeviceType deviceType").uniqueResult();
 			if (longCount != null)
@@ -168,7 +168,7 @@ public class DeviceTypeDAO extends MetadataDAO {
 
 		// Check for relationship initiation
 		if (returnFullObjectGraph)
-			deviceTypeToReturn = (DeviceType) getRealObjectAndRelationships(deviceTypeToReturn);
+			deviceTypeToReturn = (DeviceType) loadObjectGraph(deviceTypeToReturn);
 
 		// Return the first deviceType
 		return deviceTypeToReturn;
@@ -205,7 +205,7 @@ public class DeviceTypeDAO extends MetadataDAO {
 
 		// Check for relationship initialization
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -225,7 +225,7 @@ public class DeviceTypeDAO extends MetadataDAO {
 
 		// Create the query and run it
 		try {
-			Query query = getSession().createQuery(
+			Query query = createQuery(
 					"select distinct deviceType.name from "
 							+ "DeviceType deviceType order by deviceType.name");
 			deviceTypeNames = query.list();
@@ -415,7 +415,7 @@ public class DeviceTypeDAO extends MetadataDAO {
 			String name, boolean exactNameMatch, String orderByProperty,
 			String ascendingOrDescending) throws MetadataAccessException {
 		// The Criteria to return
-		Criteria criteria = getSession().createCriteria(DeviceType.class);
+		Criteria criteria = createCriteria(DeviceType.class);
 		// Make the return distinct
 		criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
 
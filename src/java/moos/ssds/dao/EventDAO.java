@@ -182,7 +182,7 @@ public class EventDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			results = (Collection<Event>) getRealObjectsAndRelationships(results);
+			results = (Collection<Event>) loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -275,7 +275,7 @@ public class EventDAO extends MetadataDAO {
 
 		// Check for objectgraph
 		if (returnFullObjectGraph)
-			eventToReturn = (Event) getRealObjectAndRelationships(eventToReturn);
+			eventToReturn = (Event) loadObjectGraph(eventToReturn);
 
 		// Return the result
 		return eventToReturn;
@@ -311,7 +311,7 @@ public class EventDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			results = (Collection<Event>) getRealObjectsAndRelationships(results);
+			results = (Collection<Event>) loadObjectGraphs(results);
 
 		// Return the results
 		return results;
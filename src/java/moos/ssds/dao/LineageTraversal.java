@@ -0,0 +1,339 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.dao;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import moos.ssds.dao.util.MetadataAccessException;
+import moos.ssds.metadata.IMetadataObject;
+
+import org.apache.log4j.Logger;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+
+/**
+ * <p>
+ * This class walks the lineage (provenance) graph of
+ * <code>DataContainer</code>s, where a <code>DataContainer</code> is an input
+ * to the <code>DataProducer</code>s that consume it and those
+ * <code>DataProducer</code>s create the <code>DataContainer</code>s that are
+ * derived from it.
+ * </p>
+ * <p>
+ * The walk is breadth first and works on IDs only. For each level, the edges
+ * of all the <code>DataContainer</code>s in the level are found with queries
+ * that have up to <code>batchSize</code> IDs in an <code>IN</code> clause, so
+ * the number of queries depends on how deep the graph is and not on how many
+ * objects are in it. The IDs that have been visited are kept in a hash set so
+ * each node is only expanded once (and cycles end). The objects themselves are
+ * then loaded with <code>load</code> in batches as well.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class LineageTraversal {
+
+	/**
+	 * A log4j logger
+	 */
+	static Logger logger = Logger.getLogger(LineageTraversal.class);
+
+	/**
+	 * The IDs of the outputs of the consumers of a set of DataContainers
+	 */
+	private static final String DERIVED_OUTPUTS_QUERY = "select distinct "
+			+ "output.id from DataContainer output join output.creator creator "
+			+ "join creator.inputs input where input.id in (:ids)";
+
+	/**
+	 * The IDs of the inputs of the creators of a set of DataContainers
+	 */
+	private static final String INPUTS_QUERY = "select distinct input.id from "
+			+ "DataContainer output join output.creator creator "
+			+ "join creator.inputs input where output.id in (:ids)";
+
+	/**
+	 * The IDs of the creators of a set of DataContainers along with the IDs of
+	 * the inputs of those creators (null if a creator has none)
+	 */
+	private static final String CREATORS_QUERY = "select distinct creator.id, "
+			+ "input.id from DataContainer output join output.creator creator "
+			+ "left join creator.inputs input where output.id in (:ids)";
+
+	/**
+	 * This is the constructor that takes in the session to query with and how
+	 * many IDs to put in each query
+	 *
+	 * @param session
+	 *            the Hibernate <code>Session</code> to query with
+	 * @param batchSize
+	 *            the largest number of IDs to put in one query
+	 */
+	public LineageTraversal(Session session, int batchSize) {
+		this.session = session;
+		this.batchSize = (batchSize < 1) ? ObjectGraphLoader.DEFAULT_BATCH_SIZE
+				: batchSize;
+	}
+
+	/**
+	 * This method finds the IDs of the <code>DataContainer</code>s that were
+	 * derived (created by the consumers) from the given ones.
+	 *
+	 * @param dataContainerIDs
+	 *            the IDs of the <code>DataContainer</code>s to start from
+	 *            (these are not part of the result)
+	 * @param depth
+	 *            the number of processing steps to follow (1 is the outputs of
+	 *            the direct consumers only)
+	 * @return the IDs in the order they were found (nearest first)
+	 * @throws MetadataAccessException
+	 *             if something went wrong with the queries
+	 */
+	public List findDerivedOutputIDs(Collection dataContainerIDs, int depth)
+			throws MetadataAccessException {
+		return walk(DERIVED_OUTPUTS_QUERY, dataContainerIDs, depth);
+	}
+
+	/**
+	 * This method finds the IDs of the <code>DataContainer</code>s that the
+	 * given ones were created from (the inputs of their creators, the inputs of
+	 * the creators of those and so on).
+	 *
+	 * @param dataContainerIDs
+	 *            the IDs of the <code>DataContainer</code>s to start from
+	 *            (these are not part of the result)
+	 * @param depth
+	 *            the number of processing steps to follow (1 is the direct
+	 *            inputs only)
+	 * @return the IDs in the order they were found (nearest first)
+	 * @throws MetadataAccessException
+	 *             if something went wrong with the queries
+	 */
+	public List findInputIDs(Collection dataContainerIDs, int depth)
+			throws MetadataAccessException {
+		return walk(INPUTS_QUERY, dataContainerIDs, depth);
+	}
+
+	/**
+	 * This method finds the IDs of the <code>DataProducer</code>s that created
+	 * the given <code>DataContainer</code>s, the ones that created the inputs
+	 * of those and so on up the chain.
+	 *
+	 * @param dataContainerIDs
+	 *            the IDs of the <code>DataContainer</code>s to start from
+	 * @param depth
+	 *            the number of creators to follow up the chain (1 is the direct
+	 *            creators only)
+	 * @return the IDs of the <code>DataProducer</code>s in the order they
+	 *         were found (nearest first)
+	 * @throws MetadataAccessException
+	 *             if something went wrong with the queries
+	 */
+	public List findCreatorIDs(Collection dataContainerIDs, int depth)
+			throws MetadataAccessException {
+		List creatorIDs = new ArrayList();
+		Set visitedCreators = new HashSet();
+		Set visitedContainers = new HashSet(dataContainerIDs);
+		List level = new ArrayList(visitedContainers);
+		for (int step = 0; (step < depth) && !level.isEmpty(); step++) {
+			List nextLevel = new ArrayList();
+			for (Iterator iterator = query(CREATORS_QUERY, level).iterator(); iterator
+					.hasNext();) {
+				Object[] row = (Object[]) iterator.next();
+				if (visitedCreators.add(row[0]))
+					creatorIDs.add(row[0]);
+				if ((row[1] != null) && visitedContainers.add(row[1]))
+					nextLevel.add(row[1]);
+			}
+			level = nextLevel;
+		}
+		logger.debug("Found " + creatorIDs.size() + " creators with "
+				+ numberOfQueries + " queries");
+		return creatorIDs;
+	}
+
+	/**
+	 * This method loads the objects with the given IDs (a batch at a time)
+	 *
+	 * @param persistentClass
+	 *            the class of the objects
+	 * @param ids
+	 *            the IDs of the objects to load
+	 * @return the objects in the same order as the IDs (any that could not be
+	 *         found are left out)
+	 * @throws MetadataAccessException
+	 *             if something went wrong with the queries
+	 */
+	public List load(Class persistentClass, List ids)
+			throws MetadataAccessException {
+		Map objectsByID = new HashMap();
+		for (Iterator iterator = query(
+				"from " + persistentClass.getName() + " o where o.id in (:ids)",
+				ids).iterator(); iterator.hasNext();) {
+			IMetadataObject metadataObject = (IMetadataObject) iterator.next();
+			objectsByID.put(metadataObject.getId(), metadataObject);
+		}
+		List objects = new ArrayList();
+		for (Iterator iterator = ids.iterator(); iterator.hasNext();) {
+			Object metadataObject = objectsByID.get(iterator.next());
+			if (metadataObject != null)
+				objects.add(metadataObject);
+		}
+		return objects;
+	}
+
+	/**
+	 * @return the number of queries that have been run so far
+	 */
+	public int getNumberOfQueries() {
+		return numberOfQueries;
+	}
+
+	/**
+	 * This method sorts the objects by the value of one of their properties.
+	 * The list is left as it is if the property name is empty or the objects
+	 * do not have the property.
+	 *
+	 * @param objects
+	 *            the objects to sort (all of the same class)
+	 * @param propertyName
+	 *            the name of the property to sort on
+	 * @param descending
+	 *            true to put the largest values first
+	 */
+	public static void sortByProperty(List objects,
+			String propertyName, final boolean descending) {
+		if ((objects == null) || (objects.size() < 2) || (propertyName == null)
+				|| (propertyName.equals("")))
+			return;
+		final Method getter;
+		try {
+			getter = objects.get(0).getClass().getMethod(
+					"get" + propertyName.substring(0, 1).toUpperCase()
+							+ propertyName.substring(1), new Class[0]);
+		} catch (NoSuchMethodException e) {
+			logger.debug("No property " + propertyName + " to sort on");
+			return;
+		}
+		Collections.sort(objects, new Comparator() {
+			public int compare(Object first, Object second) {
+				Object firstValue = getValue(first);
+				Object secondValue = getValue(second);
+				int comparison = 0;
+				if (firstValue == null)
+					comparison = (secondValue == null) ? 0 : -1;
+				else if (secondValue == null)
+					comparison = 1;
+				else if (firstValue instanceof Comparable)
+					comparison = ((Comparable) firstValue)
+							.compareTo(secondValue);
+				return descending ? -comparison : comparison;
+			}
+
+			private Object getValue(Object object) {
+				try {
+					return getter.invoke(object, new Object[0]);
+				} catch (Exception e) {
+					return null;
+				}
+			}
+		});
+	}
+
+	/**
+	 * This method runs the breadth first walk where the query gives the IDs
+	 * of the next level for a level of IDs
+	 */
+	private List walk(String queryString, Collection dataContainerIDs,
+			int depth) throws MetadataAccessException {
+		List foundIDs = new ArrayList();
+		Set visited = new HashSet(dataContainerIDs);
+		List level = new ArrayList(visited);
+		for (int step = 0; (step < depth) && !level.isEmpty(); step++) {
+			List nextLevel = new ArrayList();
+			for (Iterator iterator = query(queryString, level).iterator(); iterator
+					.hasNext();) {
+				Object id = iterator.next();
+				if (visited.add(id))
+					nextLevel.add(id);
+			}
+			foundIDs.addAll(nextLevel);
+			level = nextLevel;
+		}
+		logger.debug("Walked " + foundIDs.size() + " DataContainers with "
+				+ numberOfQueries + " queries");
+		return foundIDs;
+	}
+
+	/**
+	 * This method runs the query for the IDs a batch at a time and returns
+	 * all the results together
+	 *
+	 * @param queryString
+	 *            the HQL query with an <code>ids</code> parameter list
+	 * @param ids
+	 *            the IDs to run the query for
+	 * @return the results of all the batches
+	 * @throws MetadataAccessException
+	 *             if something went wrong with the queries
+	 */
+	protected List query(String queryString, List ids)
+			throws MetadataAccessException {
+		List results = new ArrayList();
+		try {
+			for (int start = 0; start < ids.size(); start += batchSize) {
+				results.addAll(session.createQuery(queryString)
+						.setParameterList(
+								"ids",
+								ids.subList(start, Math.min(start + batchSize,
+										ids.size()))).list());
+				numberOfQueries++;
+			}
+		} catch (HibernateException e) {
+			logger.error("HibernateException caught walking the lineage: "
+					+ e.getMessage());
+			throw new MetadataAccessException(e.getMessage());
+		}
+		return results;
+	}
+
+	/**
+	 * The Hibernate session to query with
+	 */
+	private Session session = null;
+
+	/**
+	 * The largest number of IDs in each query
+	 */
+	private int batchSize = ObjectGraphLoader.DEFAULT_BATCH_SIZE;
+
+	/**
+	 * The number of queries that have been run
+	 */
+	private int numberOfQueries = 0;
+}
@@ -24,11 +24,13 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.Random;
 import java.util.TreeMap;
 
 import moos.ssds.dao.util.MetadataAccessException;
+import moos.ssds.dao.util.SpatialTemporalIndex;
 import moos.ssds.metadata.CommentTag;
 import moos.ssds.metadata.DataContainer;
 import moos.ssds.metadata.DataContainerGroup;
@@ -44,6 +46,7 @@ import moos.ssds.metadata.Person;
 import moos.ssds.metadata.RecordDescription;
 import moos.ssds.metadata.RecordVariable;
 import moos.ssds.metadata.Resource;
+import moos.ssds.metadata.ResourceType;
 import moos.ssds.metadata.Software;
 import moos.ssds.metadata.StandardDomain;
 import moos.ssds.metadata.StandardKeyword;
@@ -116,6 +119,42 @@ public abstract class MetadataDAO implements IMetadataDAO {
 	 */
 	static boolean sendUserMessages = false;
 
+	/**
+	 * The number of IDs in each query and the number of levels of
+	 * relationships that are loaded in batches when full object graphs are
+	 * returned (see <code>ObjectGraphLoader</code>)
+	 */
+	static int objectGraphBatchSize = ObjectGraphLoader.DEFAULT_BATCH_SIZE;
+	static int defaultObjectGraphDepth = ObjectGraphLoader.DEFAULT_MAX_DEPTH;
+
+	/**
+	 * Whether the geospatial and time queries narrow down the rows with the
+	 * in memory indexes first (see <code>SpatialTemporalIndex</code>), the
+	 * most IDs they will put in the query (more than that and the index is
+	 * not narrowing it down much) and how often the indexes are reloaded from
+	 * the database
+	 */
+	static boolean geospatialIndexEnabled = true;
+	static int geospatialIndexMaxCandidates = 1000;
+	static long geospatialIndexRefreshMillis = 600000;
+
+	/**
+	 * The read mostly classes that are kept in the second level cache (their
+	 * mappings have to be marked with <code>hibernate.cache</code> too)
+	 */
+	private static final HashSet<Class<?>> cachedClasses = new HashSet<Class<?>>(
+			Arrays.asList(new Class<?>[] { StandardUnit.class,
+					StandardVariable.class, StandardKeyword.class,
+					StandardDomain.class, StandardReferenceScale.class,
+					DeviceType.class, ResourceType.class, UserGroup.class,
+					RecordDescription.class, RecordVariable.class }));
+
+	/**
+	 * The number of levels of relationships this DAO loads in batches when it
+	 * returns full object graphs
+	 */
+	private int objectGraphDepth = defaultObjectGraphDepth;
+
 	/**
 	 * A random number generator
 	 */
@@ -225,6 +264,54 @@ public abstract class MetadataDAO implements IMetadataDAO {
 		this.session = session;
 	}
 
+	/**
+	 * These methods get and set the number of levels of relationships that
+	 * are loaded in batches (see <code>ObjectGraphLoader</code>) before full
+	 * object graphs are returned by this DAO. Relationships deeper than this
+	 * are still filled out, just one at a time.
+	 */
+	public int getObjectGraphDepth() {
+		return objectGraphDepth;
+	}
+
+	public void setObjectGraphDepth(int objectGraphDepth) {
+		this.objectGraphDepth = objectGraphDepth;
+	}
+
+	/**
+	 * This method returns true if the given class is one of the read mostly
+	 * classes that are kept in the second level cache (marked with
+	 * <code>hibernate.cache</code>). Queries made by the DAOs of these classes
+	 * are put in the query cache too.
+	 */
+	public static boolean isCachedClass(Class<?> metadataClass) {
+		return cachedClasses.contains(metadataClass);
+	}
+
+	/**
+	 * This method creates a <code>Query</code> from the HQL string using the
+	 * current session. If this DAO is for one of the cached classes, the
+	 * results of the query are put in the query cache.
+	 */
+	protected Query createQuery(String queryString) {
+		Query query = getSession().createQuery(queryString);
+		if (isCachedClass(getPersistentClass()))
+			query.setCacheable(true);
+		return query;
+	}
+
+	/**
+	 * This method creates a <code>Criteria</code> for the given class using
+	 * the current session. If this DAO is for one of the cached classes, the
+	 * results are put in the query cache.
+	 */
+	protected Criteria createCriteria(Class<?> criteriaClass) {
+		Criteria criteria = getSession().createCriteria(criteriaClass);
+		if (isCachedClass(getPersistentClass()))
+			criteria.setCacheable(true);
+		return criteria;
+	}
+
 	/**
 	 * The method to get the SSDS Administrator email address where any messages
 	 * in the DAO should be sent from.
@@ -268,7 +355,7 @@ public abstract class MetadataDAO implements IMetadataDAO {
 		// Return the result
 		superLogger.debug("OK, will return the metadataObject found by ID");
 		if (returnFullObjectGraph)
-			metadataObject = getRealObjectAndRelationships(metadataObject);
+			metadataObject = loadObjectGraph(metadataObject);
 
 		return metadataObject;
 	}
@@ -327,7 +414,7 @@ public abstract class MetadataDAO implements IMetadataDAO {
 
 		// Query for all instances
 		try {
-			Query query = session.createQuery(sqlStringBuffer.toString());
+			Query query = createQuery(sqlStringBuffer.toString());
 			results = query.list();
 		} catch (HibernateException e) {
 			superLogger.error("HibernateException caught while trying to "
@@ -337,7 +424,7 @@ public abstract class MetadataDAO implements IMetadataDAO {
 
 		// Return full object graph is requested
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return what was found
 		return results;
@@ -372,7 +459,7 @@ public abstract class MetadataDAO implements IMetadataDAO {
 		}
 		// Check if full graphs are to be returned
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -776,6 +863,165 @@ public abstract class MetadataDAO implements IMetadataDAO {
 		return metadataObjectsToReturn;
 	}
 
+	/**
+	 * This method loads the relationships of the whole collection of
+	 * <code>IMetadataObject</code>s in batches (see
+	 * <code>ObjectGraphLoader</code>) and then replaces them with the real
+	 * objects and relationships (which no longer has to go to the database
+	 * for each one).
+	 * 
+	 * @param metadataObjects
+	 *            the collection of <code>IMetadataObject</code>s to replace
+	 *            with the real objects
+	 * @return a collection of <code>IMetadataObject</code>s which are no longer
+	 *         Hibernate proxies
+	 * @throws MetadataAccessException
+	 */
+	protected Collection<? extends IMetadataObject> loadObjectGraphs(
+			Collection<? extends IMetadataObject> metadataObjects)
+			throws MetadataAccessException {
+		if (metadataObjects == null)
+			return null;
+		new ObjectGraphLoader(session, objectGraphBatchSize, objectGraphDepth)
+				.load(metadataObjects);
+		return getRealObjectsAndRelationships(metadataObjects);
+	}
+
+	/**
+	 * This method is the same as <code>loadObjectGraphs</code> for a single
+	 * <code>IMetadataObject</code>
+	 */
+	protected IMetadataObject loadObjectGraph(IMetadataObject metadataObject)
+			throws MetadataAccessException {
+		if (metadataObject == null)
+			return null;
+		Collection<IMetadataObject> metadataObjects = new ArrayList<IMetadataObject>();
+		metadataObjects.add(metadataObject);
+		new ObjectGraphLoader(session, objectGraphBatchSize, objectGraphDepth)
+				.load(metadataObjects);
+		return getRealObjectAndRelationships(metadataObject);
+	}
+
+	/**
+	 * This method uses an in memory index to find the IDs of the objects that
+	 * could be in a geospatial cube and time window. The query that uses the
+	 * IDs still has to check the extents (the index gives back a superset).
+	 * The index is loaded with the given query the first time it is used and
+	 * again when it is older than the refresh interval (while it is being
+	 * loaded, the old one is used, or none if there is no old one).
+	 * 
+	 * @param index
+	 *            the index of the class being queried
+	 * @param extentQuery
+	 *            the HQL query for the extents of all the objects of the
+	 *            class. Each row has the ID, the minimum and maximum latitude,
+	 *            longitude and depth and the start and end dates (in that
+	 *            order).
+	 * @return the IDs of the objects that could be in the cube and window, or
+	 *         null if the index is not being used (or would not narrow down
+	 *         the query enough)
+	 * @throws MetadataAccessException
+	 *             if the index could not be loaded
+	 */
+	protected List<Long> findGeospatialCandidateIDs(
+			SpatialTemporalIndex index, String extentQuery,
+			Double geospatialLatMin, Double geospatialLatMax,
+			Double geospatialLonMin, Double geospatialLonMax,
+			Float geospatialDepthMin, Float geospatialDepthMax,
+			Date startDate, Date endDate) throws MetadataAccessException {
+		if (!geospatialIndexEnabled)
+			return null;
+		if (index.startBuild(geospatialIndexRefreshMillis))
+			buildGeospatialIndex(index, extentQuery);
+		if (!index.isBuilt())
+			return null;
+
+		// Query the index (NaN means that side is not bounded)
+		double[] query = new double[SpatialTemporalIndex.EXTENT_LENGTH];
+		for (int i = 0; i < query.length; i++)
+			query[i] = Double.NaN;
+		SpatialTemporalIndex.toExtent(query, geospatialLatMin,
+				geospatialLatMax, geospatialLonMin, geospatialLonMax,
+				geospatialDepthMin, geospatialDepthMax, null, null);
+		if (startDate != null)
+			query[2 * SpatialTemporalIndex.TIME] = startDate.getTime();
+		if (endDate != null)
+			query[2 * SpatialTemporalIndex.TIME + 1] = endDate.getTime();
+		Collection<Long> ids = index.findIDs(query);
+		superLogger.debug("The geospatial index found " + ids.size()
+				+ " candidates out of " + index.size());
+		if (ids.size() > geospatialIndexMaxCandidates)
+			return null;
+		return new ArrayList<Long>(ids);
+	}
+
+	/**
+	 * This method adds the extents of an object that was just persisted to the
+	 * index of its class (if the index is being used)
+	 */
+	protected void indexGeospatialExtent(SpatialTemporalIndex index, Long id,
+			Number latitudeMin, Number latitudeMax, Number longitudeMin,
+			Number longitudeMax, Number depthMin, Number depthMax,
+			Date startDate, Date endDate) {
+		if (!geospatialIndexEnabled || (id == null))
+			return;
+		index.add(id.longValue(), SpatialTemporalIndex.toExtent(
+				new double[SpatialTemporalIndex.EXTENT_LENGTH], latitudeMin,
+				latitudeMax, longitudeMin, longitudeMax, depthMin, depthMax,
+				(startDate == null) ? null : Long.valueOf(startDate.getTime()),
+				(endDate == null) ? null : Long.valueOf(endDate.getTime())));
+	}
+
+	/**
+	 * This method loads the extents of all the objects of a class into its
+	 * index with one query
+	 */
+	private void buildGeospatialIndex(SpatialTemporalIndex index,
+			String extentQuery) throws MetadataAccessException {
+		long[] ids = new long[1024];
+		double[] extents = new double[ids.length
+				* SpatialTemporalIndex.EXTENT_LENGTH];
+		double[] extent = new double[SpatialTemporalIndex.EXTENT_LENGTH];
+		int size = 0;
+		try {
+			Iterator<?> rows = createQuery(extentQuery).list().iterator();
+			while (rows.hasNext()) {
+				Object[] row = (Object[]) rows.next();
+				if (size == ids.length) {
+					long[] newIDs = new long[size * 2];
+					System.arraycopy(ids, 0, newIDs, 0, size);
+					ids = newIDs;
+					double[] newExtents = new double[newIDs.length
+							* SpatialTemporalIndex.EXTENT_LENGTH];
+					System.arraycopy(extents, 0, newExtents, 0, extents.length);
+					extents = newExtents;
+				}
+				ids[size] = ((Long) row[0]).longValue();
+				SpatialTemporalIndex.toExtent(extent, (Number) row[1],
+						(Number) row[2], (Number) row[3], (Number) row[4],
+						(Number) row[5], (Number) row[6],
+						(row[7] == null) ? null : Long.valueOf(((Date) row[7])
+								.getTime()), (row[8] == null) ? null
+								: Long.valueOf(((Date) row[8]).getTime()));
+				System.arraycopy(extent, 0, extents, size
+						* SpatialTemporalIndex.EXTENT_LENGTH,
+						SpatialTemporalIndex.EXTENT_LENGTH);
+				size++;
+			}
+		} catch (HibernateException e) {
+			index.cancelBuild();
+			superLogger.error("HibernateException caught loading the "
+					+ "geospatial index: " + e.getMessage());
+			throw new MetadataAccessException(e.getMessage());
+		} catch (RuntimeException e) {
+			index.cancelBuild();
+			throw e;
+		}
+		index.build(ids, extents, size);
+		superLogger.debug("Loaded the geospatial index with " + size
+				+ " entries");
+	}
+
 	/**
 	 * This method adds an ordering clause to the criteria supplied. If checks
 	 * to see if the property is valid, then adds the order clause to the
@@ -1251,6 +1497,49 @@ public abstract class MetadataDAO implements IMetadataDAO {
 			} else {
 				sendUserMessages = false;
 			}
+			// How the object graphs are loaded
+			try {
+				String batchSizeProperty = daoProperties
+						.getProperty("metadata.dao.object.graph.batch.size");
+				if ((batchSizeProperty != null)
+						&& (!batchSizeProperty.trim().equals("")))
+					objectGraphBatchSize = Integer.parseInt(batchSizeProperty
+							.trim());
+				String depthProperty = daoProperties
+						.getProperty("metadata.dao.object.graph.depth");
+				if ((depthProperty != null)
+						&& (!depthProperty.trim().equals("")))
+					defaultObjectGraphDepth = Integer.parseInt(depthProperty
+							.trim());
+			} catch (NumberFormatException e) {
+				superLogger.error("Could not read the object graph "
+						+ "properties: " + e.getMessage());
+			}
+			objectGraphDepth = defaultObjectGraphDepth;
+			// How the geospatial indexes are used
+			String indexEnabledProperty = daoProperties
+					.getProperty("metadata.dao.geospatial.index.enabled");
+			if ((indexEnabledProperty != null)
+					&& (!indexEnabledProperty.trim().equals("")))
+				geospatialIndexEnabled = indexEnabledProperty.trim()
+						.equalsIgnoreCase("true");
+			try {
+				String maxCandidatesProperty = daoProperties
+						.getProperty("metadata.dao.geospatial.index.max.candidates");
+				if ((maxCandidatesProperty != null)
+						&& (!maxCandidatesProperty.trim().equals("")))
+					geospatialIndexMaxCandidates = Integer
+							.parseInt(maxCandidatesProperty.trim());
+				String refreshProperty = daoProperties
+						.getProperty("metadata.dao.geospatial.index.refresh.seconds");
+				if ((refreshProperty != null)
+						&& (!refreshProperty.trim().equals("")))
+					geospatialIndexRefreshMillis = Long
+							.parseLong(refreshProperty.trim()) * 1000;
+			} catch (NumberFormatException e) {
+				superLogger.error("Could not read the geospatial index "
+						+ "properties: " + e.getMessage());
+			}
 		} else {
 			superLogger.error("Could not load the dao.properties.");
 		}
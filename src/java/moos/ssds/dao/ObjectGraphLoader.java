@@ -0,0 +1,384 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.dao;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import moos.ssds.dao.util.MetadataAccessException;
+import moos.ssds.metadata.DataContainer;
+import moos.ssds.metadata.DataProducer;
+import moos.ssds.metadata.Device;
+import moos.ssds.metadata.HeaderDescription;
+import moos.ssds.metadata.IMetadataObject;
+import moos.ssds.metadata.Person;
+import moos.ssds.metadata.RecordDescription;
+import moos.ssds.metadata.RecordVariable;
+import moos.ssds.metadata.StandardVariable;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+
+/**
+ * <p>
+ * This class loads the relationships of a whole set of metadata objects into
+ * the Hibernate <code>Session</code> one level at a time, so that filling out
+ * the object graphs (<code>MetadataDAO.getRealObjectsAndRelationships</code>)
+ * does not have to go to the database for every proxy and lazy collection it
+ * runs into.
+ * </p>
+ * <p>
+ * For each level of the graphs, the objects are grouped by class and each
+ * relationship is loaded for all of them with queries that have up to
+ * <code>batchSize</code> IDs in an <code>IN</code> clause (collections with a
+ * <code>join fetch</code>, proxies by their IDs). The number of queries then
+ * depends on how many levels are loaded and how many relationships there are,
+ * and not on how many objects there are (as long as they fit in a batch). The
+ * relationships that are followed are the same ones that
+ * <code>getRealObjectAndRelationships</code> fills out.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class ObjectGraphLoader {
+
+	/**
+	 * A log4j logger
+	 */
+	static Logger logger = Logger.getLogger(ObjectGraphLoader.class);
+
+	/**
+	 * The default number of IDs to put in each query
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	/**
+	 * The default number of levels of relationships to load (enough to get
+	 * from a DataProducer to the StandardUnits of the StandardVariables of its
+	 * outputs)
+	 */
+	public static final int DEFAULT_MAX_DEPTH = 5;
+
+	/**
+	 * The single valued relationships (properties) of each class that are
+	 * followed
+	 */
+	private static final Map<Class<?>, String[]> singleProperties = new LinkedHashMap<Class<?>, String[]>();
+
+	/**
+	 * The collection relationships (properties) of each class that are
+	 * followed
+	 */
+	private static final Map<Class<?>, String[]> collectionProperties = new LinkedHashMap<Class<?>, String[]>();
+
+	static {
+		singleProperties.put(DataContainer.class, new String[] { "person",
+				"headerDescription", "recordDescription" });
+		collectionProperties.put(DataContainer.class, new String[] {
+				"dataContainerGroups", "keywords", "resources" });
+
+		singleProperties.put(DataProducer.class, new String[] { "person",
+				"device", "software" });
+		collectionProperties.put(DataProducer.class, new String[] {
+				"dataProducerGroups", "inputs", "outputs", "resources",
+				"keywords", "events" });
+
+		singleProperties.put(Device.class, new String[] { "person",
+				"deviceType" });
+		collectionProperties.put(Device.class, new String[] { "resources" });
+
+		collectionProperties.put(HeaderDescription.class,
+				new String[] { "commentTags" });
+
+		collectionProperties.put(Person.class, new String[] { "userGroups" });
+
+		collectionProperties.put(RecordDescription.class,
+				new String[] { "recordVariables" });
+
+		singleProperties.put(RecordVariable.class, new String[] {
+				"standardDomain", "standardKeyword", "standardReferenceScale",
+				"standardUnit", "standardVariable" });
+
+		collectionProperties.put(StandardVariable.class,
+				new String[] { "standardUnits" });
+	}
+
+	/**
+	 * This is the constructor that takes in the session to load with and how
+	 * to load
+	 *
+	 * @param session
+	 *            the Hibernate <code>Session</code> the objects belong to
+	 * @param batchSize
+	 *            the largest number of IDs to put in one query
+	 * @param maxDepth
+	 *            the number of levels of relationships to load (0 only
+	 *            replaces the proxies in the objects given)
+	 */
+	public ObjectGraphLoader(Session session, int batchSize, int maxDepth) {
+		this.session = session;
+		this.batchSize = (batchSize < 1) ? DEFAULT_BATCH_SIZE : batchSize;
+		this.maxDepth = (maxDepth < 0) ? 0 : maxDepth;
+	}
+
+	/**
+	 * This method loads the relationships of the objects (and of their
+	 * relationships, down to the maximum depth) into the session
+	 *
+	 * @param metadataObjects
+	 *            the objects to load the graphs of
+	 * @throws MetadataAccessException
+	 *             if something went wrong with the queries
+	 */
+	public void load(Collection<? extends IMetadataObject> metadataObjects)
+			throws MetadataAccessException {
+		if ((metadataObjects == null) || metadataObjects.isEmpty())
+			return;
+		try {
+			Set<String> visited = new HashSet<String>();
+			List<Object> level = unproxy(new ArrayList<Object>(metadataObjects),
+					visited);
+			for (int depth = 0; (depth < maxDepth) && !level.isEmpty(); depth++) {
+				List<Object> nextLevel = new ArrayList<Object>();
+				Map<Class<?>, List<Object>> objectsByClass = groupByClass(level);
+				for (Iterator<Class<?>> iterator = objectsByClass.keySet()
+						.iterator(); iterator.hasNext();) {
+					Class<?> mappedClass = iterator.next();
+					List<Object> objects = objectsByClass.get(mappedClass);
+					loadCollections(mappedClass, objects, nextLevel);
+					loadSingles(mappedClass, objects, nextLevel);
+				}
+				level = unproxy(nextLevel, visited);
+			}
+		} catch (HibernateException e) {
+			logger.error("HibernateException caught loading object graphs: "
+					+ e.getMessage());
+			throw new MetadataAccessException(e.getMessage());
+		}
+		logger.debug("Loaded object graphs of " + metadataObjects.size()
+				+ " objects with " + numberOfQueries + " queries");
+	}
+
+	/**
+	 * @return the number of queries that have been run so far
+	 */
+	public int getNumberOfQueries() {
+		return numberOfQueries;
+	}
+
+	/**
+	 * This method fetches the collections of the objects that have not been
+	 * initialized yet with a <code>join fetch</code> for each property and
+	 * adds the members of all the collections to the next level
+	 */
+	@SuppressWarnings("unchecked")
+	private void loadCollections(Class<?> mappedClass, List<Object> objects,
+			List<Object> nextLevel) {
+		String[] properties = collectionProperties.get(mappedClass);
+		if (properties == null)
+			return;
+		for (int i = 0; i < properties.length; i++) {
+			List<Long> ids = new ArrayList<Long>();
+			for (Iterator<Object> iterator = objects.iterator(); iterator
+					.hasNext();) {
+				Object object = iterator.next();
+				if (!Hibernate.isInitialized(getProperty(object, properties[i])))
+					ids.add(((IMetadataObject) object).getId());
+			}
+			for (int start = 0; start < ids.size(); start += batchSize) {
+				session.createQuery(
+						"select distinct o from " + mappedClass.getName()
+								+ " o left join fetch o." + properties[i]
+								+ " where o.id in (:ids)").setParameterList(
+						"ids",
+						ids.subList(start, Math.min(start + batchSize, ids
+								.size()))).list();
+				numberOfQueries++;
+			}
+			for (Iterator<Object> iterator = objects.iterator(); iterator
+					.hasNext();) {
+				Collection<Object> members = (Collection<Object>) getProperty(
+						iterator.next(), properties[i]);
+				if (members != null)
+					nextLevel.addAll(members);
+			}
+		}
+	}
+
+	/**
+	 * This method adds the single valued relationships of the objects to the
+	 * next level (any that are proxies are loaded when the next level is
+	 * unproxied)
+	 */
+	private void loadSingles(Class<?> mappedClass, List<Object> objects,
+			List<Object> nextLevel) {
+		String[] properties = singleProperties.get(mappedClass);
+		if (properties == null)
+			return;
+		for (Iterator<Object> iterator = objects.iterator(); iterator
+				.hasNext();) {
+			Object object = iterator.next();
+			for (int i = 0; i < properties.length; i++) {
+				Object value = getProperty(object, properties[i]);
+				if (value != null)
+					nextLevel.add(value);
+			}
+		}
+	}
+
+	/**
+	 * This method loads all the uninitialized proxies in the list (a batch of
+	 * IDs at a time for each class) and returns the real objects that have
+	 * not been seen before
+	 */
+	private List<Object> unproxy(List<Object> objects, Set<String> visited) {
+		// Find the proxies that still need loading
+		Map<Class<?>, List<Long>> idsByClass = new HashMap<Class<?>, List<Long>>();
+		for (Iterator<Object> iterator = objects.iterator(); iterator
+				.hasNext();) {
+			Object object = iterator.next();
+			if ((object instanceof HibernateProxy)
+					&& !Hibernate.isInitialized(object)) {
+				LazyInitializer initializer = ((HibernateProxy) object)
+						.getHibernateLazyInitializer();
+				List<Long> ids = idsByClass.get(initializer
+						.getPersistentClass());
+				if (ids == null) {
+					ids = new ArrayList<Long>();
+					idsByClass.put(initializer.getPersistentClass(), ids);
+				}
+				ids.add((Long) initializer.getIdentifier());
+			}
+		}
+		for (Iterator<Class<?>> iterator = idsByClass.keySet().iterator(); iterator
+				.hasNext();) {
+			Class<?> persistentClass = iterator.next();
+			List<Long> ids = idsByClass.get(persistentClass);
+			for (int start = 0; start < ids.size(); start += batchSize) {
+				session.createQuery(
+						"from " + persistentClass.getName()
+								+ " o where o.id in (:ids)").setParameterList(
+						"ids",
+						ids.subList(start, Math.min(start + batchSize, ids
+								.size()))).list();
+				numberOfQueries++;
+			}
+		}
+
+		// Now swap the proxies for the real objects (which are in the session
+		// now, so this does not go to the database)
+		List<Object> realObjects = new ArrayList<Object>();
+		for (Iterator<Object> iterator = objects.iterator(); iterator
+				.hasNext();) {
+			Object object = iterator.next();
+			if (object instanceof HibernateProxy)
+				object = ((HibernateProxy) object)
+						.getHibernateLazyInitializer().getImplementation();
+			if (!(object instanceof IMetadataObject))
+				continue;
+			String key = object.getClass().getName() + "#"
+					+ ((IMetadataObject) object).getId();
+			if (visited.add(key))
+				realObjects.add(object);
+		}
+		return realObjects;
+	}
+
+	/**
+	 * This method groups the objects by the class whose relationships they
+	 * have (an object only gets grouped if its relationships are followed)
+	 */
+	private Map<Class<?>, List<Object>> groupByClass(List<Object> objects) {
+		Map<Class<?>, List<Object>> objectsByClass = new LinkedHashMap<Class<?>, List<Object>>();
+		for (Iterator<Object> iterator = objects.iterator(); iterator
+				.hasNext();) {
+			Object object = iterator.next();
+			Class<?> mappedClass = null;
+			if (singleProperties.containsKey(object.getClass())
+					|| collectionProperties.containsKey(object.getClass()))
+				mappedClass = object.getClass();
+			if (mappedClass == null)
+				continue;
+			List<Object> group = objectsByClass.get(mappedClass);
+			if (group == null) {
+				group = new ArrayList<Object>();
+				objectsByClass.put(mappedClass, group);
+			}
+			group.add(object);
+		}
+		return objectsByClass;
+	}
+
+	/**
+	 * This method calls the getter of the property on the object
+	 */
+	private Object getProperty(Object object, String property) {
+		String key = object.getClass().getName() + "." + property;
+		Method getter = getters.get(key);
+		try {
+			if (getter == null) {
+				getter = object.getClass().getMethod(
+						"get" + property.substring(0, 1).toUpperCase()
+								+ property.substring(1), new Class[0]);
+				getters.put(key, getter);
+			}
+			return getter.invoke(object, new Object[0]);
+		} catch (Exception e) {
+			throw new HibernateException("Could not get property " + property
+					+ " of " + object.getClass().getName() + ": "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * The getter methods that have been looked up
+	 */
+	private Map<String, Method> getters = new HashMap<String, Method>();
+
+	/**
+	 * The Hibernate session to load with
+	 */
+	private Session session = null;
+
+	/**
+	 * The largest number of IDs in one query
+	 */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * The number of levels of relationships to load
+	 */
+	private int maxDepth = DEFAULT_MAX_DEPTH;
+
+	/**
+	 * The number of queries that have been run
+	 */
+	private int numberOfQueries = 0;
+}
@@ -117,7 +117,7 @@ public class PersonDAO extends MetadataDAO {
 
 		// If the full object graph was requested, fill it out
 		if (returnFullObjectGraph)
-			personToReturn = (Person) getRealObjectAndRelationships(personToReturn);
+			personToReturn = (Person) loadObjectGraph(personToReturn);
 
 		if (personToReturn != null) {
 			logger.debug("OK, returning the person: "
@@ -209,7 +209,7 @@ public class PersonDAO extends MetadataDAO {
 
 		// Check for relationship initialization
 		if (returnFullObjectGraph)
-			personsToReturn = getRealObjectsAndRelationships(personsToReturn);
+			personsToReturn = loadObjectGraphs(personsToReturn);
 
 		// Return the collection
 		return personsToReturn;
@@ -256,7 +256,7 @@ public class PersonDAO extends MetadataDAO {
 
 		// Check for relationship initialization
 		if (returnFullObjectGraph)
-			personToReturn = (Person) getRealObjectAndRelationships(personToReturn);
+			personToReturn = (Person) loadObjectGraph(personToReturn);
 
 		// Return the person
 		return personToReturn;
@@ -336,7 +336,7 @@ public class PersonDAO extends MetadataDAO {
 
 		// If the full object graphs are requested
 		if (returnFullObjectGraph)
-			personsToReturn = getRealObjectsAndRelationships(personsToReturn);
+			personsToReturn = loadObjectGraphs(personsToReturn);
 
 		// Now return the results
 		return personsToReturn;
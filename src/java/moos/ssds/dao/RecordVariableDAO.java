@@ -92,7 +92,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Check to see if the graph is requested
 		if (returnFullObjectGraph)
-			recordVariableToReturn = (RecordVariable) getRealObjectAndRelationships(recordVariableToReturn);
+			recordVariableToReturn = (RecordVariable) loadObjectGraph(recordVariableToReturn);
 
 		// Return the result
 		return recordVariableToReturn;
@@ -172,7 +172,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Run the query
 		try {
-			query = this.getSession().createQuery(sqlStringBuffer.toString());
+			query = this.createQuery(sqlStringBuffer.toString());
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
 		}
@@ -182,7 +182,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Check for full graph request
 		if (returnFullObjectGraph)
-			recordVariablesByStandardUnit = getRealObjectsAndRelationships(recordVariablesByStandardUnit);
+			recordVariablesByStandardUnit = loadObjectGraphs(recordVariablesByStandardUnit);
 
 		// Now return the results
 		return recordVariablesByStandardUnit;
@@ -247,7 +247,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Run the query
 		try {
-			query = this.getSession().createQuery(sqlStringBuffer.toString());
+			query = this.createQuery(sqlStringBuffer.toString());
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
 		}
@@ -257,7 +257,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Check for full graph request
 		if (returnFullObjectGraph)
-			recordVariablesByStandardVariable = getRealObjectsAndRelationships(recordVariablesByStandardVariable);
+			recordVariablesByStandardVariable = loadObjectGraphs(recordVariablesByStandardVariable);
 
 		// Now return the results
 		return recordVariablesByStandardVariable;
@@ -321,7 +321,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Run the query
 		try {
-			query = this.getSession().createQuery(sqlStringBuffer.toString());
+			query = this.createQuery(sqlStringBuffer.toString());
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
 		}
@@ -331,7 +331,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Check for full graph request
 		if (returnFullObjectGraph)
-			recordVariablesByStandardDomain = getRealObjectsAndRelationships(recordVariablesByStandardDomain);
+			recordVariablesByStandardDomain = loadObjectGraphs(recordVariablesByStandardDomain);
 
 		// Now return the results
 		return recordVariablesByStandardDomain;
@@ -399,7 +399,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Run the query
 		try {
-			query = this.getSession().createQuery(sqlStringBuffer.toString());
+			query = this.createQuery(sqlStringBuffer.toString());
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
 		}
@@ -409,7 +409,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Check for full graph request
 		if (returnFullObjectGraph)
-			recordVariablesByStandardReferenceScale = getRealObjectsAndRelationships(recordVariablesByStandardReferenceScale);
+			recordVariablesByStandardReferenceScale = loadObjectGraphs(recordVariablesByStandardReferenceScale);
 
 		// Now return the results
 		return recordVariablesByStandardReferenceScale;
@@ -473,7 +473,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Run the query
 		try {
-			query = this.getSession().createQuery(sqlStringBuffer.toString());
+			query = this.createQuery(sqlStringBuffer.toString());
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
 		}
@@ -483,7 +483,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Check for full graph request
 		if (returnFullObjectGraph)
-			recordVariablesByStandardKeyword = getRealObjectsAndRelationships(recordVariablesByStandardKeyword);
+			recordVariablesByStandardKeyword = loadObjectGraphs(recordVariablesByStandardKeyword);
 
 		// Now return the results
 		return recordVariablesByStandardKeyword;
@@ -695,10 +695,9 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Create the query and run it
 		try {
-			Query query = getSession()
-					.createQuery(
-							"select distinct recordVariable.name from "
-									+ "RecordVariable recordVariable order by recordVariable.name");
+			Query query = createQuery(
+					"select distinct recordVariable.name from "
+							+ "RecordVariable recordVariable order by recordVariable.name");
 			recordVariableNames = query.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -710,7 +709,7 @@ public class RecordVariableDAO extends MetadataDAO {
 		int count = 0;
 		// Create the query and run it
 		try {
-			Long integerCount = (Long) getSession().createQuery(
+			Long integerCount = (Long) createQuery(
 					"select count(distinct recordVariable.name) from "
 							+ "RecordVariable recordVariable").uniqueResult();
 			if (integerCount != null)
@@ -752,7 +751,7 @@ public class RecordVariableDAO extends MetadataDAO {
 
 		// Check for relationship init
 		if (returnFullObjectGraph)
-			this.getRealObjectsAndRelationships(recordVariablesToReturn);
+			this.loadObjectGraphs(recordVariablesToReturn);
 
 		// Now return the results
 		return recordVariablesToReturn;
@@ -762,7 +761,7 @@ public class RecordVariableDAO extends MetadataDAO {
 			String name, boolean exactNameMatch, String orderByProperty,
 			String ascendOrDescend) throws MetadataAccessException {
 		// The Criteria to return
-		Criteria criteria = getSession().createCriteria(RecordVariable.class);
+		Criteria criteria = createCriteria(RecordVariable.class);
 		// Make it distinct
 		criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
 
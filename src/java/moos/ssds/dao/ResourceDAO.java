@@ -237,7 +237,7 @@ public class ResourceDAO extends MetadataDAO {
 
 		// Check for full object graphs
 		if (returnFullObjectGraph)
-			resources = getRealObjectsAndRelationships(resources);
+			resources = loadObjectGraphs(resources);
 
 		// Now return the results
 		return resources;
@@ -278,7 +278,7 @@ public class ResourceDAO extends MetadataDAO {
 		}
 
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		return results;
 	}
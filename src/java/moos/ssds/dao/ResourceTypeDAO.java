@@ -86,7 +86,7 @@ public class ResourceTypeDAO extends MetadataDAO {
 
         // Create the query and run it
         try {
-            Query query = getSession().createQuery(
+            Query query = createQuery(
                 "select distinct resourceType.id from "
                     + "ResourceType resourceType order by resourceType.id");
             resourceTypeIDs = query.list();
@@ -103,7 +103,7 @@ public class ResourceTypeDAO extends MetadataDAO {
         // The count
         int count = 0;
         try {
-            Long longCount = (Long) getSession().createQuery(
+            Long longCount = (Long) createQuery(
                 "select count(distinct resourceType.id) from "
                     + "ResourceType resourceType").uniqueResult();
             if (longCount != null)
@@ -131,10 +131,9 @@ public class ResourceTypeDAO extends MetadataDAO {
         try {
             if (!exactMatch) {
                 try {
-                    Query query = getSession()
-                        .createQuery(
-                            "select distinct resourceType from "
-                                + "ResourceType resourceType where resourceType.name like :name");
+                    Query query = createQuery(
+                        "select distinct resourceType from "
+                            + "ResourceType resourceType where resourceType.name like :name");
                     query.setString("name", "%" + name + "%");
                     results = query.list();
                 } catch (HibernateException e) {
@@ -142,10 +141,9 @@ public class ResourceTypeDAO extends MetadataDAO {
                 }
             } else {
                 try {
-                    Query query = getSession()
-                        .createQuery(
-                            "select distinct resourceType from "
-                                + "ResourceType resourceType where resourceType.name = :name");
+                    Query query = createQuery(
+                        "select distinct resourceType from "
+                            + "ResourceType resourceType where resourceType.name = :name");
                     query.setString("name", name);
                     results = query.list();
                 } catch (HibernateException e) {
@@ -165,7 +163,7 @@ public class ResourceTypeDAO extends MetadataDAO {
 
         // Create the query and run it
         try {
-            Query query = getSession().createQuery(
+            Query query = createQuery(
                 "select distinct resourceType.name from "
                     + "ResourceType resourceType order by resourceType.name");
             resourceTypeNames = query.list();
@@ -147,7 +147,7 @@ public class SoftwareDAO extends MetadataDAO {
 
 		// Check for full object graph
 		if ((softwareToReturn != null) && (returnFullObjectGraph))
-			softwareToReturn = (Software) getRealObjectAndRelationships(softwareToReturn);
+			softwareToReturn = (Software) loadObjectGraph(softwareToReturn);
 
 		// Now return it
 		return softwareToReturn;
@@ -223,7 +223,7 @@ public class SoftwareDAO extends MetadataDAO {
 		results = query.list();
 
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		return results;
 	}
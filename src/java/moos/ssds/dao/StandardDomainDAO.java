@@ -62,7 +62,7 @@ public class StandardDomainDAO extends MetadataDAO {
         // The count
         int count = 0;
         try {
-            Long longCount = (Long) getSession().createQuery(
+            Long longCount = (Long) createQuery(
                 "select count(distinct standardDomain.id) from "
                     + "StandardDomain standardDomain").uniqueResult();
             if (longCount != null)
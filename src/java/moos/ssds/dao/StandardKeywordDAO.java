@@ -62,7 +62,7 @@ public class StandardKeywordDAO extends MetadataDAO {
 		// The count
 		int count = 0;
 		try {
-			Long longCount = (Long) getSession().createQuery(
+			Long longCount = (Long) createQuery(
 					"select count(distinct standardKeyword.id) from "
 							+ "StandardKeyword standardKeyword").uniqueResult();
 			if (longCount != null)
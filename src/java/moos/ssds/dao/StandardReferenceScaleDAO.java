@@ -63,7 +63,7 @@ public class StandardReferenceScaleDAO extends MetadataDAO {
 		// The count
 		int count = 0;
 		try {
-			Long longCount = (Long) getSession().createQuery(
+			Long longCount = (Long) createQuery(
 					"select count(distinct standardReferenceScale.id) from "
 							+ "StandardReferenceScale standardReferenceScale")
 					.uniqueResult();
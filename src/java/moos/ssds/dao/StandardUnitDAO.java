@@ -116,10 +116,9 @@ public class StandardUnitDAO extends MetadataDAO {
 
 		// Create the query and run it
 		try {
-			Query query = getSession()
-					.createQuery(
-							"select distinct standardUnit.id from "
-									+ "StandardUnit standardUnit order by standardUnit.id");
+			Query query = createQuery(
+					"select distinct standardUnit.id from "
+							+ "StandardUnit standardUnit order by standardUnit.id");
 			standardUnitIDs = query.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -134,7 +133,7 @@ public class StandardUnitDAO extends MetadataDAO {
 		// The count
 		int count = 0;
 		try {
-			Long longCount = (Long) getSession().createQuery(
+			Long longCount = (Long) createQuery(
 					"select count(distinct standardUnit.id) from "
 							+ "StandardUnit standardUnit").uniqueResult();
 			if (longCount != null)
@@ -175,7 +174,7 @@ public class StandardUnitDAO extends MetadataDAO {
 		// Grab a session and run the query
 		Collection standardUnitsWithName = null;
 		try {
-			Query query = getSession().createQuery(
+			Query query = createQuery(
 					"from StandardUnit su where su.name = :name");
 			query.setString("name", name);
 			standardUnitsWithName = query.list();
@@ -219,7 +218,7 @@ public class StandardUnitDAO extends MetadataDAO {
 
 		// Grab a session and run the query
 		try {
-			Query query = getSession().createQuery(
+			Query query = createQuery(
 					"from StandardUnit su where su.name "
 							+ "like :likeName order by su.name");
 			query.setString("likeName", "%" + likeName + "%");
@@ -249,10 +248,9 @@ public class StandardUnitDAO extends MetadataDAO {
 
 		// Create the query and run it
 		try {
-			Query query = getSession()
-					.createQuery(
-							"select distinct standardUnit.name from "
-									+ "StandardUnit standardUnit order by standardUnit.name");
+			Query query = createQuery(
+					"select distinct standardUnit.name from "
+							+ "StandardUnit standardUnit order by standardUnit.name");
 			names = query.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -291,7 +289,7 @@ public class StandardUnitDAO extends MetadataDAO {
 
 		// Grab a session and run the query
 		try {
-			Query query = getSession().createQuery(
+			Query query = createQuery(
 					"from StandardUnit su where su.symbol = :symbol");
 			query.setString("symbol", symbol);
 			standardUnitsToReturn = query.list();
@@ -329,7 +327,7 @@ public class StandardUnitDAO extends MetadataDAO {
 
 		// Grab a session and run the query
 		try {
-			Query query = getSession().createQuery(
+			Query query = createQuery(
 					"from StandardUnit su where su.symbol "
 							+ "like :likeSymbol order by su.symbol");
 			query.setString("likeSymbol", "%" + likeSymbol + "%");
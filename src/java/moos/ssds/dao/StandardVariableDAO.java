@@ -86,7 +86,7 @@ public class StandardVariableDAO extends MetadataDAO {
 
 		// Check for object graph
 		if (returnFullObjectGraph)
-			standardVariableToReturn = (StandardVariable) getRealObjectAndRelationships(standardVariableToReturn);
+			standardVariableToReturn = (StandardVariable) loadObjectGraph(standardVariableToReturn);
 
 		// Return the answer
 		return standardVariableToReturn;
@@ -106,10 +106,9 @@ public class StandardVariableDAO extends MetadataDAO {
 
 		// Create the query and run it
 		try {
-			Query query = getSession()
-					.createQuery(
-							"select distinct standardVariable.id from "
-									+ "StandardVariable standardVariable order by standardVariable.id");
+			Query query = createQuery(
+					"select distinct standardVariable.id from "
+							+ "StandardVariable standardVariable order by standardVariable.id");
 			standardVariableIDs = query.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -124,7 +123,7 @@ public class StandardVariableDAO extends MetadataDAO {
 		// The count
 		int count = 0;
 		try {
-			Long longCount = (Long) getSession().createQuery(
+			Long longCount = (Long) createQuery(
 					"select count(distinct standardVariable.id) from "
 							+ "StandardVariable standardVariable")
 					.uniqueResult();
@@ -160,7 +159,7 @@ public class StandardVariableDAO extends MetadataDAO {
 
 		// Grab a session and run the query
 		try {
-			Query query = getSession().createQuery(
+			Query query = createQuery(
 					"from StandardVariable sv where sv.name = '" + name + "'");
 			results = query.list();
 		} catch (HibernateException e) {
@@ -197,7 +196,7 @@ public class StandardVariableDAO extends MetadataDAO {
 
 		// Grab a session and run the query
 		try {
-			Query query = getSession().createQuery(
+			Query query = createQuery(
 					"from StandardVariable su where su.name "
 							+ "like :likeName order by su.name");
 			query.setString("likeName", "%" + likeName + "%");
@@ -226,10 +225,9 @@ public class StandardVariableDAO extends MetadataDAO {
 
 		// Create the query and run it
 		try {
-			Query query = getSession()
-					.createQuery(
-							"select distinct standardVariable.name from "
-									+ "StandardVariable standardVariable order by standardVariable.name");
+			Query query = createQuery(
+					"select distinct standardVariable.name from "
+							+ "StandardVariable standardVariable order by standardVariable.name");
 			names = query.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -269,7 +267,7 @@ public class StandardVariableDAO extends MetadataDAO {
 
 		// Grab a session and run the query
 		try {
-			Query query = getSession().createQuery(
+			Query query = createQuery(
 					"from StandardVariable sv where "
 							+ "sv.referenceScale = :referenceScale");
 			query.setString("referenceScale", referenceScale);
@@ -309,10 +307,9 @@ public class StandardVariableDAO extends MetadataDAO {
 
 		// Grab a session and run the query
 		try {
-			Query query = getSession()
-					.createQuery(
-							"from StandardVariable sv where sv.referenceScale "
-									+ "like :likeReferenceScale order by sv.referenceScale");
+			Query query = createQuery(
+					"from StandardVariable sv where sv.referenceScale "
+							+ "like :likeReferenceScale order by sv.referenceScale");
 			query.setString("likeReferenceScale", "%" + likeReferenceScale
 					+ "%");
 			results = query.list();
@@ -341,10 +338,9 @@ public class StandardVariableDAO extends MetadataDAO {
 
 		// Create the query and run it
 		try {
-			Query query = getSession()
-					.createQuery(
-							"select distinct standardVariable.referenceScale from "
-									+ "StandardVariable standardVariable order by standardVariable.referenceScale");
+			Query query = createQuery(
+					"select distinct standardVariable.referenceScale from "
+							+ "StandardVariable standardVariable order by standardVariable.referenceScale");
 			referenceScales = query.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -404,8 +400,7 @@ public class StandardVariableDAO extends MetadataDAO {
 		// Now grab all SV's that match the query
 		Collection standardVariablesWithNameAndUriString = null;
 		try {
-			Query query = getSession()
-					.createQuery(queryStringBuffer.toString());
+			Query query = createQuery(queryStringBuffer.toString());
 			standardVariablesWithNameAndUriString = query.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -420,7 +415,7 @@ public class StandardVariableDAO extends MetadataDAO {
 
 		// Check for graph
 		if (returnFullObjectGraph)
-			standardVariableToReturn = (StandardVariable) getRealObjectAndRelationships(standardVariableToReturn);
+			standardVariableToReturn = (StandardVariable) loadObjectGraph(standardVariableToReturn);
 
 		// Now return the result
 		return standardVariableToReturn;
@@ -468,8 +463,7 @@ public class StandardVariableDAO extends MetadataDAO {
 		}
 		Collection standardVariablesWithNameAndReferenceScale = null;
 		try {
-			Query query = getSession()
-					.createQuery(queryStringBuffer.toString());
+			Query query = createQuery(queryStringBuffer.toString());
 			standardVariablesWithNameAndReferenceScale = query.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -510,10 +504,9 @@ public class StandardVariableDAO extends MetadataDAO {
 								+ "find the StandardVariable associated with the RecordVariable");
 			}
 			try {
-				Query query = getSession()
-						.createQuery(
-								"select recordVariable.standardVariable from RecordVariable "
-										+ "recordVariable where recordVariable.id = :recordVariableId");
+				Query query = createQuery(
+						"select recordVariable.standardVariable from RecordVariable "
+								+ "recordVariable where recordVariable.id = :recordVariableId");
 				query.setString("recordVariableId", recordVariable.getId()
 						.toString());
 				logger.debug("Compiled query = " + query.getQueryString());
@@ -571,7 +564,7 @@ public class StandardVariableDAO extends MetadataDAO {
 			}
 		}
 		try {
-			query = this.getSession().createQuery(sqlStringBuffer.toString());
+			query = this.createQuery(sqlStringBuffer.toString());
 			query.setLong("standardUnitID", persistentStandardUnit.getId()
 					.longValue());
 		} catch (HibernateException e) {
@@ -581,7 +574,7 @@ public class StandardVariableDAO extends MetadataDAO {
 		results = query.list();
 
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		return results;
 	}
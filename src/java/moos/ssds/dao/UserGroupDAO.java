@@ -91,7 +91,7 @@ public class UserGroupDAO extends MetadataDAO {
 
 		// Is a full object graph was requested, fill it out
 		if (returnFullObjectGraph)
-			userGroupToReturn = (UserGroup) getRealObjectAndRelationships(userGroupToReturn);
+			userGroupToReturn = (UserGroup) loadObjectGraph(userGroupToReturn);
 
 		// Return the result of the search
 		return userGroupToReturn;
@@ -105,7 +105,7 @@ public class UserGroupDAO extends MetadataDAO {
 
 		// Create the query and run it
 		try {
-			Query query = getSession().createQuery(
+			Query query = createQuery(
 					"select distinct userGroup.id from "
 							+ "UserGroup userGroup order by userGroup.id");
 			userGroupIDs = query.list();
@@ -122,7 +122,7 @@ public class UserGroupDAO extends MetadataDAO {
 		// The count
 		int count = 0;
 		try {
-			Long longCount = (Long) getSession().createQuery(
+			Long longCount = (Long) createQuery(
 					"select count(distinct userGroup.id) from "
 							+ "UserGroup userGroup").uniqueResult();
 			if (longCount != null)
@@ -177,7 +177,7 @@ public class UserGroupDAO extends MetadataDAO {
 
 		// If the full object graph is requested, return it
 		if (returnFullObjectGraph)
-			results = getRealObjectsAndRelationships(results);
+			results = loadObjectGraphs(results);
 
 		// Return the results
 		return results;
@@ -241,10 +241,9 @@ public class UserGroupDAO extends MetadataDAO {
 
 		// Create the query and run it
 		try {
-			Query query = getSession()
-					.createQuery(
-							"select distinct userGroup.groupName from "
-									+ "UserGroup userGroup order by userGroup.groupName");
+			Query query = createQuery(
+					"select distinct userGroup.groupName from "
+							+ "UserGroup userGroup order by userGroup.groupName");
 			userGroupNames = query.list();
 		} catch (HibernateException e) {
 			throw new MetadataAccessException(e);
@@ -265,7 +264,7 @@ public class UserGroupDAO extends MetadataDAO {
 
 		// Create the query and run it
 		try {
-			Long integerCount = (Long) getSession().createQuery(
+			Long integerCount = (Long) createQuery(
 					"select count(distinct userGroup.groupName) from "
 							+ "UserGroup userGroup").uniqueResult();
 			if (integerCount != null)
@@ -467,7 +466,7 @@ public class UserGroupDAO extends MetadataDAO {
 			String orderByProperty, String ascendingOrDescending)
 			throws MetadataAccessException {
 		// The Criteria to return
-		Criteria criteria = getSession().createCriteria(UserGroup.class);
+		Criteria criteria = createCriteria(UserGroup.class);
 		// Make the return distinct
 		criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
 
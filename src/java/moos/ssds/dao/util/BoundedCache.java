@@ -0,0 +1,203 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.dao.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * This is a simple in memory cache that is bounded by the number of entries it
+ * will hold and by how long an entry is kept. When the cache is full, the entry
+ * that was used the longest time ago is dropped and entries that are older
+ * than the time to live are dropped the next time they are looked up. It also
+ * keeps count of the hits and misses so it can be seen if the cache is doing
+ * any good.
+ * </p>
+ * <p>
+ * All the methods are synchronized, the cache is meant to hold small, read
+ * mostly things (like the standard units and variables) where locking is not
+ * going to be the bottleneck.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class BoundedCache {
+
+	/**
+	 * This constructor takes in the name of the cache and its bounds
+	 *
+	 * @param name
+	 *            the name of the cache (used in the statistics)
+	 * @param maxElements
+	 *            the most entries to keep (zero or less means no limit)
+	 * @param timeToLiveMillis
+	 *            how long to keep an entry in milliseconds (zero or less means
+	 *            forever)
+	 */
+	public BoundedCache(String name, int maxElements, long timeToLiveMillis) {
+		this.name = name;
+		this.maxElements = maxElements;
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+
+	/**
+	 * @return the name of the cache
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * This method looks up the value that was put in the cache with the key
+	 *
+	 * @return the value or null if it is not in the cache (or is too old)
+	 */
+	public synchronized Object get(Object key) {
+		Entry entry = (Entry) entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		if (isExpired(entry, System.currentTimeMillis())) {
+			entries.remove(key);
+			expirations++;
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	/**
+	 * This method puts the value in the cache (replacing anything that was
+	 * there for the key)
+	 */
+	public synchronized void put(Object key, Object value) {
+		entries.put(key, new Entry(value, System.currentTimeMillis()));
+		puts++;
+	}
+
+	/**
+	 * This method takes the value for the key out of the cache
+	 */
+	public synchronized void remove(Object key) {
+		entries.remove(key);
+	}
+
+	/**
+	 * This method empties the cache (the statistics are kept)
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return the number of entries in the cache (some of which may be
+	 *         expired but not dropped yet)
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return a copy of the keys and values that are in the cache and not
+	 *         expired
+	 */
+	public synchronized Map toMap() {
+		long now = System.currentTimeMillis();
+		Map copy = new HashMap();
+		Iterator entryIter = entries.entrySet().iterator();
+		while (entryIter.hasNext()) {
+			Map.Entry mapEntry = (Map.Entry) entryIter.next();
+			Entry entry = (Entry) mapEntry.getValue();
+			if (!isExpired(entry, now))
+				copy.put(mapEntry.getKey(), entry.value);
+		}
+		return copy;
+	}
+
+	/**
+	 * @return a snapshot of the counts for this cache
+	 */
+	public synchronized CacheStatistics getStatistics() {
+		return new CacheStatistics(name, entries.size(), hits, misses, puts,
+				evictions, expirations);
+	}
+
+	/**
+	 * This method checks if the entry has been in the cache longer than the
+	 * time to live
+	 */
+	private boolean isExpired(Entry entry, long now) {
+		return (timeToLiveMillis > 0)
+				&& (now - entry.timestamp > timeToLiveMillis);
+	}
+
+	/**
+	 * The value and the time it was put in the cache
+	 */
+	private static class Entry {
+		Entry(Object value, long timestamp) {
+			this.value = value;
+			this.timestamp = timestamp;
+		}
+
+		Object value;
+
+		long timestamp;
+	}
+
+	/**
+	 * The name of the cache
+	 */
+	private String name = null;
+
+	/**
+	 * The bounds of the cache
+	 */
+	private int maxElements = 0;
+	private long timeToLiveMillis = 0;
+
+	/**
+	 * The counts that are kept for the statistics
+	 */
+	private long hits = 0;
+	private long misses = 0;
+	private long puts = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+
+	/**
+	 * The entries, in the order they were last used so the oldest one can be
+	 * dropped when the cache is full
+	 */
+	private LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			if ((maxElements > 0) && (size() > maxElements)) {
+				evictions++;
+				return true;
+			}
+			return false;
+		}
+	};
+}
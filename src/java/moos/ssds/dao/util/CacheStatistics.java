@@ -0,0 +1,126 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.dao.util;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ * This class is a snapshot of the counts that a <code>BoundedCache</code>
+ * keeps. It is serializable so it can be handed back to clients of the
+ * metadata services.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class CacheStatistics implements Serializable {
+
+	/**
+	 * This is the version that this class is
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The constructor that takes in all the counts
+	 */
+	public CacheStatistics(String name, int size, long hits, long misses,
+			long puts, long evictions, long expirations) {
+		this.name = name;
+		this.size = size;
+		this.hits = hits;
+		this.misses = misses;
+		this.puts = puts;
+		this.evictions = evictions;
+		this.expirations = expirations;
+	}
+
+	/**
+	 * @return the name of the cache (the Hibernate region)
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of entries in the cache
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the number of lookups that found a value
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that did not find a value
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of values put in the cache
+	 */
+	public long getPuts() {
+		return puts;
+	}
+
+	/**
+	 * @return the number of entries dropped because the cache was full
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the number of entries dropped because they were too old
+	 */
+	public long getExpirations() {
+		return expirations;
+	}
+
+	/**
+	 * @return the fraction of the lookups that were hits (or zero if there
+	 *         have been no lookups)
+	 */
+	public double getHitRatio() {
+		long lookups = hits + misses;
+		return (lookups == 0) ? 0.0 : (double) hits / lookups;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return name + ": size=" + size + ", hits=" + hits + ", misses="
+				+ misses + ", puts=" + puts + ", evictions=" + evictions
+				+ ", expirations=" + expirations;
+	}
+
+	private String name = null;
+	private int size = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long puts = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.dao.util;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.hibernate.cache.Cache;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.CacheProvider;
+import org.hibernate.cache.Timestamper;
+import org.hibernate.cache.UpdateTimestampsCache;
+
+/**
+ * <p>
+ * This is the Hibernate <code>CacheProvider</code> for the metadata services.
+ * It builds a <code>BoundedCache</code> for each cache region (the entity and
+ * collection caches of the classes that are marked with
+ * <code>hibernate.cache</code> and the query cache) so the caches are limited
+ * in both size and age. The number of entries and the time to live are read
+ * from the dao.properties (<code>metadata.dao.cache.max.elements</code> and
+ * <code>metadata.dao.cache.time.to.live.seconds</code>).
+ * </p>
+ * <p>
+ * The region that keeps the time stamps of the last update of each table is
+ * never bounded, if an entry there were dropped, Hibernate would think the
+ * cached query results were still good.
+ * </p>
+ * <p>
+ * The hit and miss counts of all the regions can be seen by calling
+ * <code>getStatistics()</code>.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class MetadataCacheProvider implements CacheProvider {
+
+	/**
+	 * A log4j logger
+	 */
+	static Logger logger = Logger.getLogger(MetadataCacheProvider.class);
+
+	/**
+	 * The default bounds (if they are not in the properties)
+	 */
+	public static final int DEFAULT_MAX_ELEMENTS = 10000;
+	public static final long DEFAULT_TIME_TO_LIVE_SECONDS = 3600;
+
+	/**
+	 * @see org.hibernate.cache.CacheProvider#buildCache(java.lang.String,
+	 *      java.util.Properties)
+	 */
+	public Cache buildCache(String regionName, Properties properties)
+			throws CacheException {
+		BoundedCache boundedCache = null;
+		if (UpdateTimestampsCache.class.getName().equals(regionName)) {
+			boundedCache = new BoundedCache(regionName, 0, 0);
+		} else {
+			boundedCache = new BoundedCache(regionName, maxElements,
+					timeToLiveSeconds * 1000);
+		}
+		synchronized (caches) {
+			caches.put(regionName, boundedCache);
+		}
+		logger.debug("Built cache for region " + regionName);
+		return new RegionCache(boundedCache);
+	}
+
+	/**
+	 * @see org.hibernate.cache.CacheProvider#nextTimestamp()
+	 */
+	public long nextTimestamp() {
+		return Timestamper.next();
+	}
+
+	/**
+	 * This method reads the bounds of the caches from the dao.properties
+	 *
+	 * @see org.hibernate.cache.CacheProvider#start(java.util.Properties)
+	 */
+	public void start(Properties properties) throws CacheException {
+		Properties daoProperties = new Properties();
+		try {
+			InputStream inputStream = this.getClass().getResourceAsStream(
+					"/moos/ssds/dao/dao.properties");
+			if (inputStream != null) {
+				daoProperties.load(inputStream);
+				inputStream.close();
+			}
+		} catch (Exception e) {
+			logger.error("Exception trying to read in properties file: "
+					+ e.getMessage());
+		}
+		try {
+			String maxElementsProperty = daoProperties
+					.getProperty("metadata.dao.cache.max.elements");
+			if ((maxElementsProperty != null)
+					&& (!maxElementsProperty.trim().equals("")))
+				maxElements = Integer.parseInt(maxElementsProperty.trim());
+			String timeToLiveProperty = daoProperties
+					.getProperty("metadata.dao.cache.time.to.live.seconds");
+			if ((timeToLiveProperty != null)
+					&& (!timeToLiveProperty.trim().equals("")))
+				timeToLiveSeconds = Long.parseLong(timeToLiveProperty.trim());
+		} catch (NumberFormatException e) {
+			logger.error("Could not read the cache properties: "
+					+ e.getMessage());
+		}
+		logger.info("Metadata caches will hold " + maxElements
+				+ " entries for " + timeToLiveSeconds + " seconds");
+	}
+
+	/**
+	 * @see org.hibernate.cache.CacheProvider#stop()
+	 */
+	public void stop() {
+		synchronized (caches) {
+			caches.clear();
+		}
+	}
+
+	/**
+	 * @see org.hibernate.cache.CacheProvider#isMinimalPutsEnabledByDefault()
+	 */
+	public boolean isMinimalPutsEnabledByDefault() {
+		return false;
+	}
+
+	/**
+	 * This method returns the statistics for all the cache regions that have
+	 * been built
+	 *
+	 * @return a <code>Collection</code> of <code>CacheStatistics</code> (one
+	 *         for each region, sorted by region name)
+	 */
+	public static Collection<CacheStatistics> getStatistics() {
+		Collection<CacheStatistics> statistics = new ArrayList<CacheStatistics>();
+		synchronized (caches) {
+			Iterator<BoundedCache> cacheIter = caches.values().iterator();
+			while (cacheIter.hasNext())
+				statistics.add(cacheIter.next().getStatistics());
+		}
+		return statistics;
+	}
+
+	/**
+	 * This class adapts a <code>BoundedCache</code> to the Hibernate
+	 * <code>Cache</code> interface
+	 */
+	private static class RegionCache implements Cache {
+
+		RegionCache(BoundedCache boundedCache) {
+			this.boundedCache = boundedCache;
+		}
+
+		public Object read(Object key) throws CacheException {
+			return boundedCache.get(key);
+		}
+
+		public Object get(Object key) throws CacheException {
+			return boundedCache.get(key);
+		}
+
+		public void put(Object key, Object value) throws CacheException {
+			boundedCache.put(key, value);
+		}
+
+		public void update(Object key, Object value) throws CacheException {
+			boundedCache.put(key, value);
+		}
+
+		public void remove(Object key) throws CacheException {
+			boundedCache.remove(key);
+		}
+
+		public void clear() throws CacheException {
+			boundedCache.clear();
+		}
+
+		public void destroy() throws CacheException {
+			boundedCache.clear();
+		}
+
+		public void lock(Object key) throws CacheException {
+			// The read-write strategy does its own locking
+		}
+
+		public void unlock(Object key) throws CacheException {
+			// The read-write strategy does its own locking
+		}
+
+		public long nextTimestamp() {
+			return Timestamper.next();
+		}
+
+		public int getTimeout() {
+			// One minute (in the units of the time stamper)
+			return Timestamper.ONE_MS * 60000;
+		}
+
+		public String getRegionName() {
+			return boundedCache.getName();
+		}
+
+		public long getSizeInMemory() {
+			return -1;
+		}
+
+		public long getElementCountInMemory() {
+			return boundedCache.size();
+		}
+
+		public long getElementCountOnDisk() {
+			return 0;
+		}
+
+		public Map toMap() {
+			return boundedCache.toMap();
+		}
+
+		public String toString() {
+			return "MetadataCache(" + boundedCache.getName() + ")";
+		}
+
+		private BoundedCache boundedCache = null;
+	}
+
+	/**
+	 * The bounds of the caches
+	 */
+	private int maxElements = DEFAULT_MAX_ELEMENTS;
+	private long timeToLiveSeconds = DEFAULT_TIME_TO_LIVE_SECONDS;
+
+	/**
+	 * All the caches that have been built (by region name)
+	 */
+	private static TreeMap<String, BoundedCache> caches = new TreeMap<String, BoundedCache>();
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.dao.util;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * This is an in memory index of the extents (latitude, longitude, depth and
+ * time) of metadata objects that answers cube and time window queries with the
+ * IDs of the objects that could be in them. It is a packed R-tree: the entries
+ * are sorted along a Hilbert curve through the centers of their latitude and
+ * longitude ranges and then grouped, a node's worth at a time, into the nodes
+ * of each level up to the root. A query only goes down the nodes whose
+ * bounding boxes overlap it.
+ * </p>
+ * <p>
+ * A missing latitude, longitude or depth is NaN and never matches a query that
+ * is bounded in that dimension (like a null column in SQL). A missing start or
+ * end time is open (negative or positive infinity).
+ * </p>
+ * <p>
+ * The entries are loaded all at once with <code>build</code>. After that,
+ * <code>add</code> puts in entries for objects that were created or changed,
+ * but nothing is ever taken out until the next <code>build</code>. An object
+ * that changed has its old and its new extents in the index and one that was
+ * deleted is still in it, so what comes back is a superset of what is really
+ * in the cube (even if the transaction that made the change rolls back) and
+ * the query that uses the IDs still has to check the extents. The entries that
+ * were added since the last build are kept through the next one, so changes
+ * that were not committed yet when the index was loaded are not lost. The
+ * added entries are scanned until there are enough of them to be worth
+ * packing into the tree.
+ * </p>
+ * <p>
+ * All the methods are synchronized.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class SpatialTemporalIndex {
+
+	/**
+	 * The dimensions of the extents
+	 */
+	public static final int LATITUDE = 0;
+	public static final int LONGITUDE = 1;
+	public static final int DEPTH = 2;
+	public static final int TIME = 3;
+
+	/**
+	 * The number of values in each extent (a minimum and a maximum for each
+	 * dimension)
+	 */
+	public static final int EXTENT_LENGTH = 8;
+
+	/**
+	 * The default number of children of each node
+	 */
+	public static final int DEFAULT_NODE_CAPACITY = 16;
+
+	/**
+	 * The number of cells along each side of the Hilbert curve grid
+	 */
+	private static final int HILBERT_SIDE = 1 << 16;
+
+	/**
+	 * This constructor takes in the number of children of each node of the
+	 * tree
+	 */
+	public SpatialTemporalIndex(int nodeCapacity) {
+		this.nodeCapacity = (nodeCapacity < 2) ? DEFAULT_NODE_CAPACITY
+				: nodeCapacity;
+	}
+
+	/**
+	 * This method fills an extent array with the values for one object
+	 * (converting nulls to NaN or to open times)
+	 *
+	 * @param extent
+	 *            the array to fill (<code>EXTENT_LENGTH</code> long)
+	 * @return the extent
+	 */
+	public static double[] toExtent(double[] extent, Number latitudeMin,
+			Number latitudeMax, Number longitudeMin, Number longitudeMax,
+			Number depthMin, Number depthMax, Long startMillis, Long endMillis) {
+		extent[2 * LATITUDE] = toDouble(latitudeMin, Double.NaN);
+		extent[2 * LATITUDE + 1] = toDouble(latitudeMax, Double.NaN);
+		extent[2 * LONGITUDE] = toDouble(longitudeMin, Double.NaN);
+		extent[2 * LONGITUDE + 1] = toDouble(longitudeMax, Double.NaN);
+		extent[2 * DEPTH] = toDouble(depthMin, Double.NaN);
+		extent[2 * DEPTH + 1] = toDouble(depthMax, Double.NaN);
+		extent[2 * TIME] = toDouble(startMillis, Double.NEGATIVE_INFINITY);
+		extent[2 * TIME + 1] = toDouble(endMillis, Double.POSITIVE_INFINITY);
+		return extent;
+	}
+
+	/**
+	 * This method replaces everything in the index with the given entries (and
+	 * the ones that were added since the last build)
+	 *
+	 * @param ids
+	 *            the IDs of the objects
+	 * @param extents
+	 *            the extents of the objects, <code>EXTENT_LENGTH</code>
+	 *            values for each ID
+	 * @param size
+	 *            the number of entries in the arrays
+	 */
+	public synchronized void build(long[] ids, double[] extents, int size) {
+		baseIDs = new long[size];
+		System.arraycopy(ids, 0, baseIDs, 0, size);
+		baseExtents = new double[size * EXTENT_LENGTH];
+		System.arraycopy(extents, 0, baseExtents, 0, size * EXTENT_LENGTH);
+		baseSize = size;
+
+		// Keep what was added since the last build (dropping what was kept
+		// from the one before that)
+		int keptSize = addedSize - carriedSize;
+		System.arraycopy(addedIDs, carriedSize, addedIDs, 0, keptSize);
+		System.arraycopy(addedExtents, carriedSize * EXTENT_LENGTH,
+				addedExtents, 0, keptSize * EXTENT_LENGTH);
+		addedSize = keptSize;
+		carriedSize = keptSize;
+		pack();
+		buildTime = System.currentTimeMillis();
+		built = true;
+		building = false;
+	}
+
+	/**
+	 * This method checks if the index needs to be (re)built and, if it does
+	 * and nobody else is building it already, marks it as being built by the
+	 * caller (who then has to call <code>build</code> or
+	 * <code>cancelBuild</code>). The old entries are still used while the new
+	 * ones are being loaded.
+	 *
+	 * @param maxAgeMillis
+	 *            how long a build is good for (zero or less means forever)
+	 * @return true if the caller should build the index
+	 */
+	public synchronized boolean startBuild(long maxAgeMillis) {
+		if (building)
+			return false;
+		if (built
+				&& ((maxAgeMillis <= 0) || (System.currentTimeMillis()
+						- buildTime <= maxAgeMillis)))
+			return false;
+		building = true;
+		return true;
+	}
+
+	/**
+	 * This method is called instead of <code>build</code> if loading the
+	 * entries failed
+	 */
+	public synchronized void cancelBuild() {
+		building = false;
+	}
+
+	/**
+	 * This method adds the extent of an object that was created or changed
+	 */
+	public synchronized void add(long id, double[] extent) {
+		if (addedSize == addedIDs.length) {
+			long[] newIDs = new long[addedSize * 2];
+			System.arraycopy(addedIDs, 0, newIDs, 0, addedSize);
+			addedIDs = newIDs;
+			double[] newExtents = new double[addedSize * 2 * EXTENT_LENGTH];
+			System.arraycopy(addedExtents, 0, newExtents, 0, addedSize
+					* EXTENT_LENGTH);
+			addedExtents = newExtents;
+		}
+		addedIDs[addedSize] = id;
+		System.arraycopy(extent, 0, addedExtents, addedSize * EXTENT_LENGTH,
+				EXTENT_LENGTH);
+		addedSize++;
+		if (built
+				&& (addedSize - packedAddedSize > Math.max(nodeCapacity,
+						(baseSize + addedSize) / 8)))
+			pack();
+	}
+
+	/**
+	 * This method finds the IDs of the objects whose extents overlap the query
+	 * (the bounds are inclusive)
+	 *
+	 * @param query
+	 *            the bounds of the query, <code>EXTENT_LENGTH</code> values
+	 *            laid out the same as an extent where NaN means that side is
+	 *            not bounded
+	 * @return the IDs of the objects
+	 */
+	public synchronized Set findIDs(double[] query) {
+		Set ids = new HashSet();
+		if (levels != null)
+			search(levels.length - 1, 0, levels[levels.length - 1].length
+					/ EXTENT_LENGTH, query, ids);
+		for (int i = packedAddedSize; i < addedSize; i++)
+			if (overlaps(addedExtents, i, query))
+				ids.add(new Long(addedIDs[i]));
+		return ids;
+	}
+
+	/**
+	 * @return true if the index has been built
+	 */
+	public synchronized boolean isBuilt() {
+		return built;
+	}
+
+	/**
+	 * @return the time the index was last built in epoch milliseconds
+	 */
+	public synchronized long getBuildTime() {
+		return buildTime;
+	}
+
+	/**
+	 * @return the number of entries in the index
+	 */
+	public synchronized int size() {
+		return baseSize + addedSize;
+	}
+
+	/**
+	 * This method empties the index so it has to be built again
+	 */
+	public synchronized void clear() {
+		baseIDs = new long[0];
+		baseExtents = new double[0];
+		baseSize = 0;
+		addedSize = 0;
+		packedAddedSize = 0;
+		carriedSize = 0;
+		levels = null;
+		leafIDs = null;
+		built = false;
+	}
+
+	/**
+	 * This method looks through the children of a range of nodes on a level
+	 * and collects the IDs of the entries that overlap the query
+	 */
+	private void search(int level, int start, int end, double[] query,
+			Set ids) {
+		double[] boxes = levels[level];
+		for (int i = start; i < end; i++) {
+			if (!overlaps(boxes, i, query))
+				continue;
+			if (level == 0) {
+				ids.add(new Long(leafIDs[i]));
+			} else {
+				int childEnd = Math.min((i + 1) * nodeCapacity,
+						levels[level - 1].length / EXTENT_LENGTH);
+				search(level - 1, i * nodeCapacity, childEnd, query, ids);
+			}
+		}
+	}
+
+	/**
+	 * This method builds the tree from the base entries and all the added
+	 * ones
+	 */
+	private void pack() {
+		int size = baseSize + addedSize;
+		long[] ids = new long[size];
+		double[] extents = new double[size * EXTENT_LENGTH];
+		System.arraycopy(baseIDs, 0, ids, 0, baseSize);
+		System.arraycopy(baseExtents, 0, extents, 0, baseSize * EXTENT_LENGTH);
+		System.arraycopy(addedIDs, 0, ids, baseSize, addedSize);
+		System.arraycopy(addedExtents, 0, extents, baseSize * EXTENT_LENGTH,
+				addedSize * EXTENT_LENGTH);
+		packedAddedSize = addedSize;
+		if (size == 0) {
+			levels = null;
+			leafIDs = null;
+			return;
+		}
+
+		// Sort the entries along the Hilbert curve
+		long[] keys = new long[size];
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = hilbertKey(extents, i);
+			order[i] = i;
+		}
+		sortByKey(order, keys);
+
+		// The leaves are the entries in that order
+		leafIDs = new long[size];
+		double[] leaves = new double[size * EXTENT_LENGTH];
+		for (int i = 0; i < size; i++) {
+			leafIDs[i] = ids[order[i]];
+			System.arraycopy(extents, order[i] * EXTENT_LENGTH, leaves, i
+					* EXTENT_LENGTH, EXTENT_LENGTH);
+		}
+
+		// And each level above is the boxes around a node's worth of the one
+		// below it
+		int numberOfLevels = 1;
+		for (int count = size; count > 1; count = (count + nodeCapacity - 1)
+				/ nodeCapacity)
+			numberOfLevels++;
+		levels = new double[numberOfLevels][];
+		levels[0] = leaves;
+		for (int level = 1; level < numberOfLevels; level++) {
+			double[] children = levels[level - 1];
+			int numberOfChildren = children.length / EXTENT_LENGTH;
+			int numberOfNodes = (numberOfChildren + nodeCapacity - 1)
+					/ nodeCapacity;
+			double[] nodes = new double[numberOfNodes * EXTENT_LENGTH];
+			for (int node = 0; node < numberOfNodes; node++) {
+				for (int d = 0; d < EXTENT_LENGTH; d += 2) {
+					nodes[node * EXTENT_LENGTH + d] = Double.NaN;
+					nodes[node * EXTENT_LENGTH + d + 1] = Double.NaN;
+				}
+				int end = Math.min((node + 1) * nodeCapacity, numberOfChildren);
+				for (int child = node * nodeCapacity; child < end; child++) {
+					for (int d = 0; d < EXTENT_LENGTH; d += 2) {
+						nodes[node * EXTENT_LENGTH + d] = min(nodes[node
+								* EXTENT_LENGTH + d], children[child
+								* EXTENT_LENGTH + d]);
+						nodes[node * EXTENT_LENGTH + d + 1] = max(nodes[node
+								* EXTENT_LENGTH + d + 1], children[child
+								* EXTENT_LENGTH + d + 1]);
+					}
+				}
+			}
+			levels[level] = nodes;
+		}
+	}
+
+	/**
+	 * This method checks if the box at the index overlaps the query. A NaN in
+	 * the box fails any comparison, so it only matches where the query is not
+	 * bounded.
+	 */
+	private static boolean overlaps(double[] boxes, int index, double[] query) {
+		int offset = index * EXTENT_LENGTH;
+		for (int d = 0; d < EXTENT_LENGTH; d += 2) {
+			if (!Double.isNaN(query[d]) && !(boxes[offset + d + 1] >= query[d]))
+				return false;
+			if (!Double.isNaN(query[d + 1])
+					&& !(boxes[offset + d] <= query[d + 1]))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * This method gives the position along the Hilbert curve of the center of
+	 * the latitude and longitude of an entry (entries without a position go at
+	 * the end)
+	 */
+	private static long hilbertKey(double[] extents, int index) {
+		int offset = index * EXTENT_LENGTH;
+		double latitude = center(extents[offset + 2 * LATITUDE],
+				extents[offset + 2 * LATITUDE + 1]);
+		double longitude = center(extents[offset + 2 * LONGITUDE],
+				extents[offset + 2 * LONGITUDE + 1]);
+		if (Double.isNaN(latitude) || Double.isNaN(longitude))
+			return Long.MAX_VALUE;
+		int x = toCell((longitude + 180.0) / 360.0);
+		int y = toCell((latitude + 90.0) / 180.0);
+		long key = 0;
+		for (int side = HILBERT_SIDE / 2; side > 0; side /= 2) {
+			int rx = ((x & side) > 0) ? 1 : 0;
+			int ry = ((y & side) > 0) ? 1 : 0;
+			key += (long) side * side * ((3 * rx) ^ ry);
+			// Rotate the quadrant
+			if (ry == 0) {
+				if (rx == 1) {
+					x = side - 1 - x;
+					y = side - 1 - y;
+				}
+				int swap = x;
+				x = y;
+				y = swap;
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * This method sorts the order by the keys (a merge sort so entries with
+	 * the same key stay in the order they were in)
+	 */
+	private static void sortByKey(int[] order, long[] keys) {
+		int[] buffer = new int[order.length];
+		for (int width = 1; width < order.length; width *= 2) {
+			for (int start = 0; start < order.length; start += 2 * width) {
+				int middle = Math.min(start + width, order.length);
+				int end = Math.min(start + 2 * width, order.length);
+				int left = start;
+				int right = middle;
+				for (int i = start; i < end; i++) {
+					if ((left < middle)
+							&& ((right >= end) || (keys[order[left]] <= keys[order[right]])))
+						buffer[i] = order[left++];
+					else
+						buffer[i] = order[right++];
+				}
+			}
+			System.arraycopy(buffer, 0, order, 0, order.length);
+		}
+	}
+
+	private static int toCell(double fraction) {
+		int cell = (int) (fraction * HILBERT_SIDE);
+		return Math.max(0, Math.min(HILBERT_SIDE - 1, cell));
+	}
+
+	private static double center(double min, double max) {
+		if (Double.isNaN(min))
+			return max;
+		if (Double.isNaN(max))
+			return min;
+		return (min + max) / 2.0;
+	}
+
+	/**
+	 * The minimum and maximum that skip NaNs
+	 */
+	private static double min(double first, double second) {
+		if (Double.isNaN(first) || (second < first))
+			return second;
+		return first;
+	}
+
+	private static double max(double first, double second) {
+		if (Double.isNaN(first) || (second > first))
+			return second;
+		return first;
+	}
+
+	private static double toDouble(Number number, double defaultValue) {
+		return (number == null) ? defaultValue : number.doubleValue();
+	}
+
+	/**
+	 * The number of children of each node
+	 */
+	private int nodeCapacity = DEFAULT_NODE_CAPACITY;
+
+	/**
+	 * The entries that were loaded by the last build
+	 */
+	private long[] baseIDs = new long[0];
+	private double[] baseExtents = new double[0];
+	private int baseSize = 0;
+
+	/**
+	 * The entries that were added (since the build before last) and how many
+	 * of them are in the tree (the rest are scanned)
+	 */
+	private long[] addedIDs = new long[16];
+	private double[] addedExtents = new double[16 * EXTENT_LENGTH];
+	private int addedSize = 0;
+	private int packedAddedSize = 0;
+
+	/**
+	 * The number of the added entries (at the start) that were kept from
+	 * before the last build
+	 */
+	private int carriedSize = 0;
+
+	/**
+	 * The bounding boxes of each level of the tree (the leaves are level 0)
+	 * and the IDs of the leaves
+	 */
+	private double[][] levels = null;
+	private long[] leafIDs = null;
+
+	/**
+	 * Whether the index has been built and when
+	 */
+	private boolean built = false;
+	private long buildTime = 0;
+
+	/**
+	 * Whether someone is loading the entries for a build
+	 */
+	private boolean building = false;
+}
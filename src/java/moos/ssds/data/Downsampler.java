@@ -0,0 +1,436 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * This class reduces a time series to a small number of points (for plotting,
+ * for example). The samples are handed to <code>add</code> one at a time (in
+ * time order) and only the bins that are being worked on are kept, so the
+ * whole series never has to be in memory. The series is cut into bins of the
+ * same width (in time) starting at an origin and each bin is reduced with one
+ * of the aggregations:
+ * </p>
+ * <ul>
+ * <li><code>MIN</code>, <code>MAX</code> - the smallest (largest) sample in
+ * the bin, at its own time</li>
+ * <li><code>MIN_MAX</code> - both the smallest and the largest sample of the
+ * bin (in time order), which keeps the envelope of the data</li>
+ * <li><code>MEAN</code> - the mean of the samples, at the mean of their
+ * times</li>
+ * <li><code>COUNT</code> - the number of samples, at the start of the bin</li>
+ * <li><code>LTTB</code> - largest triangle three buckets: the first and last
+ * samples and, from each bin, the sample that makes the largest triangle with
+ * the sample picked from the bin before and the mean of the bin after. This
+ * keeps the shape of the series better than the others.</li>
+ * </ul>
+ * <p>
+ * Samples that are NaN are skipped and bins without samples do not produce
+ * any points.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1 $
+ */
+public class Downsampler {
+
+    /**
+     * The aggregations
+     */
+    public static final int MIN = 0;
+    public static final int MAX = 1;
+    public static final int MIN_MAX = 2;
+    public static final int MEAN = 3;
+    public static final int COUNT = 4;
+    public static final int LTTB = 5;
+
+    /**
+     * The names of the aggregations (in the order of the constants)
+     */
+    private static final String[] AGGREGATION_NAMES = {"min", "max",
+        "minmax", "mean", "count", "lttb"};
+
+    /**
+     * The constructor
+     *
+     * @param originMillis
+     *            the time the first bin starts at
+     * @param binWidthMillis
+     *            the width of the bins (must be more than zero)
+     * @param aggregation
+     *            one of the aggregation constants
+     */
+    public Downsampler(long originMillis, long binWidthMillis, int aggregation) {
+        if (binWidthMillis <= 0)
+            throw new IllegalArgumentException(
+                "The bin width must be more than zero");
+        if ((aggregation < MIN) || (aggregation > LTTB))
+            throw new IllegalArgumentException("Unknown aggregation "
+                + aggregation);
+        this.originMillis = originMillis;
+        this.binWidthMillis = binWidthMillis;
+        this.aggregation = aggregation;
+    }
+
+    /**
+     * This method returns the width of the bins that cuts the time window
+     * into (at most) the given number of points for the aggregation
+     *
+     * @param startMillis
+     *            the start of the window
+     * @param endMillis
+     *            the end of the window
+     * @param numberOfPoints
+     *            the most points to return
+     * @param aggregation
+     *            the aggregation that will be used
+     * @return the bin width in milliseconds (at least one)
+     */
+    public static long getBinWidth(long startMillis, long endMillis,
+        int numberOfPoints, int aggregation) {
+        // MIN_MAX gives two points a bin and LTTB adds the first and last
+        long numberOfBins = numberOfPoints;
+        if (aggregation == MIN_MAX)
+            numberOfBins = numberOfPoints / 2;
+        else if (aggregation == LTTB)
+            numberOfBins = numberOfPoints - 2;
+        if (numberOfBins < 1)
+            numberOfBins = 1;
+        long span = endMillis - startMillis + 1;
+        long binWidth = (span + numberOfBins - 1) / numberOfBins;
+        return (binWidth < 1) ? 1 : binWidth;
+    }
+
+    /**
+     * This method returns the aggregation constant for a name ("min", "max",
+     * "minmax", "mean", "count" or "lttb", case does not matter)
+     *
+     * @param name
+     * @return the constant or -1 if the name is not known
+     */
+    public static int getAggregation(String name) {
+        if (name == null)
+            return -1;
+        for (int i = 0; i < AGGREGATION_NAMES.length; i++) {
+            if (AGGREGATION_NAMES[i].equalsIgnoreCase(name.trim()))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * This method adds the next sample of the series. The samples have to be
+     * added in time order.
+     *
+     * @param timeMillis
+     *            the time of the sample
+     * @param value
+     *            the value (NaN values are skipped)
+     */
+    public void add(long timeMillis, double value) {
+        if (Double.isNaN(value))
+            return;
+        if (aggregation == LTTB)
+            addLttb(timeMillis, value);
+        else
+            addAggregate(timeMillis, value);
+    }
+
+    /**
+     * This method adds all the samples of a pair of columns
+     *
+     * @param timesMillis
+     *            the times (in order)
+     * @param values
+     *            the values
+     */
+    public void add(long[] timesMillis, double[] values) {
+        for (int i = 0; i < timesMillis.length; i++)
+            add(timesMillis[i], values[i]);
+    }
+
+    /**
+     * This method finishes the bins that are still open and returns the
+     * points. Each row is the time (a <code>Long</code>) and the value (a
+     * <code>Double</code>, or a <code>Long</code> for <code>COUNT</code>). No
+     * more samples should be added after this is called.
+     *
+     * @return the reduced series
+     */
+    public Object[][] getResult() {
+        if (!finished) {
+            if (aggregation == LTTB)
+                finishLttb();
+            else
+                flushBin();
+            finished = true;
+        }
+        return (Object[][]) points.toArray(new Object[points.size()][]);
+    }
+
+    /**
+     * @return the number of samples that have been added (not counting NaNs)
+     */
+    public long getNumberOfSamples() {
+        return numberOfSamples;
+    }
+
+    private long getBinIndex(long timeMillis) {
+        long offset = timeMillis - originMillis;
+        // Round down for times before the origin too
+        return (offset >= 0) ? offset / binWidthMillis : -((-offset
+            + binWidthMillis - 1) / binWidthMillis);
+    }
+
+    /**
+     * This method adds a sample to the current bin (or starts a new one)
+     */
+    private void addAggregate(long timeMillis, double value) {
+        long binIndex = getBinIndex(timeMillis);
+        if ((binCount > 0) && (binIndex != currentBin))
+            flushBin();
+        if (binCount == 0) {
+            currentBin = binIndex;
+            minValue = value;
+            minTime = timeMillis;
+            maxValue = value;
+            maxTime = timeMillis;
+            sumValues = 0;
+            sumTimes = 0;
+        } else {
+            if (value < minValue) {
+                minValue = value;
+                minTime = timeMillis;
+            }
+            if (value > maxValue) {
+                maxValue = value;
+                maxTime = timeMillis;
+            }
+        }
+        sumValues += value;
+        // Times are summed as offsets from the bin so they can not overflow
+        sumTimes += (double) (timeMillis - originMillis - currentBin
+            * binWidthMillis);
+        binCount++;
+        numberOfSamples++;
+    }
+
+    /**
+     * This method writes the points of the current bin
+     */
+    private void flushBin() {
+        if (binCount == 0)
+            return;
+        long binStart = originMillis + currentBin * binWidthMillis;
+        switch (aggregation) {
+            case MIN:
+                addPoint(minTime, minValue);
+                break;
+            case MAX:
+                addPoint(maxTime, maxValue);
+                break;
+            case MIN_MAX:
+                if (minTime == maxTime) {
+                    addPoint(minTime, minValue);
+                } else if (minTime < maxTime) {
+                    addPoint(minTime, minValue);
+                    addPoint(maxTime, maxValue);
+                } else {
+                    addPoint(maxTime, maxValue);
+                    addPoint(minTime, minValue);
+                }
+                break;
+            case MEAN:
+                addPoint(binStart + Math.round(sumTimes / binCount), sumValues
+                    / binCount);
+                break;
+            case COUNT:
+                points.add(new Object[]{new Long(binStart),
+                    new Long(binCount)});
+                break;
+        }
+        binCount = 0;
+    }
+
+    /**
+     * This method adds a sample for LTTB. The newest sample is held back
+     * because the last sample of the series is always kept on its own.
+     */
+    private void addLttb(long timeMillis, double value) {
+        numberOfSamples++;
+        if (numberOfSamples == 1) {
+            // The first sample is always kept
+            addPoint(timeMillis, value);
+            selectedTime = timeMillis;
+            selectedValue = value;
+            return;
+        }
+        if (hasPending) {
+            long binIndex = getBinIndex(pendingTime);
+            if ((nextBucket.size() > 0) && (binIndex != nextBucket.binIndex)) {
+                // The next bucket is done, so a point can be picked from the
+                // current one
+                selectFromCurrent(nextBucket.getMeanTime(), nextBucket
+                    .getMeanValue());
+                Bucket emptied = currentBucket;
+                currentBucket = nextBucket;
+                nextBucket = emptied;
+                nextBucket.clear();
+            }
+            nextBucket.add(binIndex, pendingTime, pendingValue);
+        }
+        pendingTime = timeMillis;
+        pendingValue = value;
+        hasPending = true;
+    }
+
+    /**
+     * This method picks the points from the buckets that are left and adds the
+     * last sample
+     */
+    private void finishLttb() {
+        if (!hasPending)
+            return;
+        if (nextBucket.size() > 0) {
+            selectFromCurrent(nextBucket.getMeanTime(), nextBucket
+                .getMeanValue());
+            currentBucket = nextBucket;
+        }
+        selectFromCurrent(pendingTime, pendingValue);
+        addPoint(pendingTime, pendingValue);
+    }
+
+    /**
+     * This method picks the sample in the current bucket that makes the
+     * largest triangle with the last picked sample and the given point
+     */
+    private void selectFromCurrent(double nextTime, double nextValue) {
+        if (currentBucket.size() == 0)
+            return;
+        int best = 0;
+        double bestArea = -1;
+        // The times are taken relative to the last pick to keep precision
+        double nextX = nextTime - selectedTime;
+        double nextY = nextValue - selectedValue;
+        for (int i = 0; i < currentBucket.size(); i++) {
+            double x = currentBucket.times[i] - selectedTime;
+            double y = currentBucket.values[i] - selectedValue;
+            double area = Math.abs(x * nextY - nextX * y);
+            if (area > bestArea) {
+                bestArea = area;
+                best = i;
+            }
+        }
+        selectedTime = currentBucket.times[best];
+        selectedValue = currentBucket.values[best];
+        addPoint(selectedTime, selectedValue);
+        currentBucket.clear();
+    }
+
+    private void addPoint(long timeMillis, double value) {
+        points.add(new Object[]{new Long(timeMillis), new Double(value)});
+    }
+
+    /**
+     * This holds the samples of one LTTB bucket (which is one bin)
+     */
+    private static class Bucket {
+
+        void add(long binIndex, long time, double value) {
+            if (size == times.length) {
+                long[] newTimes = new long[size * 2];
+                double[] newValues = new double[size * 2];
+                System.arraycopy(times, 0, newTimes, 0, size);
+                System.arraycopy(values, 0, newValues, 0, size);
+                times = newTimes;
+                values = newValues;
+            }
+            this.binIndex = binIndex;
+            times[size] = time;
+            values[size] = value;
+            sumTimes += (double) (time - times[0]);
+            sumValues += value;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        double getMeanTime() {
+            return times[0] + sumTimes / size;
+        }
+
+        double getMeanValue() {
+            return sumValues / size;
+        }
+
+        void clear() {
+            size = 0;
+            sumTimes = 0;
+            sumValues = 0;
+        }
+
+        long binIndex = 0;
+        long[] times = new long[16];
+        double[] values = new double[16];
+        int size = 0;
+        double sumTimes = 0;
+        double sumValues = 0;
+    }
+
+    /**
+     * The bins
+     */
+    private final long originMillis;
+    private final long binWidthMillis;
+    private final int aggregation;
+
+    /**
+     * The state of the current bin of the aggregations
+     */
+    private long currentBin = 0;
+    private long binCount = 0;
+    private double minValue = 0;
+    private long minTime = 0;
+    private double maxValue = 0;
+    private long maxTime = 0;
+    private double sumValues = 0;
+    private double sumTimes = 0;
+
+    /**
+     * The state of LTTB (the bucket a point is being picked from, the bucket
+     * after it, the last sample and the last point picked)
+     */
+    private Bucket currentBucket = new Bucket();
+    private Bucket nextBucket = new Bucket();
+    private boolean hasPending = false;
+    private long pendingTime = 0;
+    private double pendingValue = 0;
+    private long selectedTime = 0;
+    private double selectedValue = 0;
+
+    /**
+     * The number of samples added and the points so far
+     */
+    private long numberOfSamples = 0;
+    private List points = new ArrayList();
+    private boolean finished = false;
+}
@@ -17,6 +17,8 @@ package moos.ssds.data;
 
 import java.util.Date;
 
+import moos.ssds.metadata.RecordVariable;
+
 /**
  * This interface defines the methods that a class must support for access to
  * time indexed data.
@@ -31,6 +33,41 @@ public interface ITimeIndexedDataAccess extends IDataAccess {
      */
     public abstract Object[] getTime();
 
+    /**
+     * This method returns the same times as <code>getTime()</code> but as
+     * primitive <code>long</code>s (epoch milliseconds for the time indexed
+     * data)
+     * 
+     * @return the time index for the data, in the same order as the data
+     */
+    public abstract long[] getTimeValues();
+
+    /**
+     * This method returns the data for a <code>RecordVariable</code> as an
+     * array of primitives (in the same order as <code>getTimeValues()</code>)
+     * so that large data sets do not have to be boxed. The array is a
+     * <code>double[]</code>, <code>float[]</code>, <code>int[]</code>
+     * (byte, short and int data), <code>long[]</code> or an
+     * <code>Object[]</code> for data that is not numeric. Missing values are
+     * NaN in the floating point arrays.
+     * 
+     * @param recordVariable
+     *            the <code>RecordVariable</code> to get the data for
+     * @return the array of data or null if there is no data for the variable
+     */
+    public abstract Object getPrimitiveData(RecordVariable recordVariable);
+
+    /**
+     * This method returns the data for a numeric <code>RecordVariable</code>
+     * as doubles (missing values are NaN)
+     * 
+     * @param recordVariable
+     *            the <code>RecordVariable</code> to get the data for
+     * @return the array of data or null if there is no numeric data for the
+     *         variable
+     */
+    public abstract double[] getDoubleData(RecordVariable recordVariable);
+
     /**
      * This returns the <code>Date</code> of the earliest data object.
      * 
@@ -0,0 +1,549 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.data;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+import moos.ssds.data.parsers.ColumnarRecordSink;
+import moos.ssds.data.parsers.VariableFormatMap;
+import moos.ssds.metadata.RecordVariable;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * This class works out how the time of a record is stored in the variables of
+ * a <code>RecordDescription</code> once, so that the time of each record can
+ * then be computed from the parsed values with simple arithmetic (no
+ * <code>Calendar</code>, no pattern matching and no looking at the units of
+ * each variable over and over again). It understands the same units that
+ * <code>TimeIndexedFreeFormAccess</code> does:
+ * </p>
+ * <ul>
+ * <li>"epoch seconds" (or "seconds since 1970-01-01 00:00:00") and "epoch
+ * milliseconds"</li>
+ * <li>"minuteOfDay"</li>
+ * <li>dates like MM/dd/yyyy or dd-MM-yy and times like HH:mm:ss, hh:mm:ss or
+ * KK:mm:ss (where the fields do not have to be padded)</li>
+ * <li>fixed position fields using the SimpleDateFormat letters y, M (numeric),
+ * D, d, H, k, m, s and S</li>
+ * </ul>
+ * <p>
+ * If any of the string variables uses something else (era, weeks, day names,
+ * month names, am/pm or time zones), <code>isCompiled</code> returns false and
+ * the time has to be resolved the slow way. All times are GMT. Fields that are
+ * not in the record default to the current year and month (as of when
+ * the resolver was built) and to zero for the time of day, and a time with
+ * no date is on the first day of 1970.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class RecordTimeResolver {
+
+    /**
+     * This is returned from <code>resolve</code> when the time of the record
+     * could not be found
+     */
+    public static final long UNRESOLVED = Long.MIN_VALUE;
+
+    /**
+     * The constructor that analyses the variables that can hold the time
+     *
+     * @param dateRecordVariables
+     *            the <code>RecordVariable</code>s that could hold the time of
+     *            a record
+     */
+    public RecordTimeResolver(Collection dateRecordVariables) {
+        // The defaults for the fields that are not in the records
+        Calendar now = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+        this.currentYear = now.get(Calendar.YEAR);
+        this.currentMonth = now.get(Calendar.MONTH);
+        this.twoDigitYearStart = this.currentYear - 80;
+
+        List compiledColumns = new ArrayList();
+        if (dateRecordVariables != null) {
+            Iterator rvIter = dateRecordVariables.iterator();
+            while (rvIter.hasNext()) {
+                RecordVariable rv = (RecordVariable) rvIter.next();
+                TimeColumn column = compile(rv);
+                if (column == null)
+                    continue;
+                if (column.kind == UNSUPPORTED) {
+                    logger.debug("Units " + rv.getUnits() + " of variable "
+                        + rv.getName() + " can not be compiled");
+                    this.compiled = false;
+                }
+                compiledColumns.add(column);
+            }
+        }
+        this.columns = (TimeColumn[]) compiledColumns
+            .toArray(new TimeColumn[compiledColumns.size()]);
+    }
+
+    /**
+     * @return true if the time of the records can be computed by this
+     *         resolver, false if some of the units are not understood
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * This method computes the time of the current (not yet committed) record
+     * in the sink
+     *
+     * @param sink
+     *            the <code>ColumnarRecordSink</code> the record was parsed
+     *            into
+     * @return the time of the record in epoch milliseconds (GMT) or
+     *         <code>UNRESOLVED</code>
+     */
+    public long resolve(ColumnarRecordSink sink) {
+
+        // Epoch times win outright
+        for (int i = 0; i < columns.length; i++) {
+            TimeColumn column = columns[i];
+            if ((column.kind != EPOCH_SECONDS)
+                && (column.kind != EPOCH_MILLISECONDS))
+                continue;
+            long epochMillis = -1;
+            if (column.numeric) {
+                double value = sink.getCurrentDouble(column.columnIndex);
+                if (!Double.isNaN(value))
+                    epochMillis = (long) ((column.kind == EPOCH_SECONDS) ? value * 1000
+                        : value);
+            } else {
+                Object value = sink.getCurrentValue(column.columnIndex);
+                if (value != null) {
+                    String text = value.toString();
+                    long parsed = parseLong(text, 0, text.length());
+                    if (parsed != UNRESOLVED)
+                        epochMillis = (column.kind == EPOCH_SECONDS) ? parsed * 1000
+                            : parsed;
+                }
+            }
+            if (epochMillis >= 0)
+                return epochMillis;
+        }
+
+        // Otherwise put the time together from its fields
+        int year = -1;
+        int month = -1;
+        int dayInMonth = -1;
+        int dayInYear = -1;
+        int hourOfDay = 0;
+        int minute = 0;
+        int second = 0;
+        int millisecond = 0;
+        boolean dateParsed = false;
+        boolean timeParsed = false;
+        int[] tokens = new int[3];
+        for (int i = 0; i < columns.length; i++) {
+            TimeColumn column = columns[i];
+            if (column.kind == MINUTE_OF_DAY) {
+                int minuteOfDay = -1;
+                if (column.numeric) {
+                    double value = sink.getCurrentDouble(column.columnIndex);
+                    if (!Double.isNaN(value))
+                        minuteOfDay = (int) value;
+                } else {
+                    Object value = sink.getCurrentValue(column.columnIndex);
+                    if (value != null) {
+                        String text = value.toString();
+                        minuteOfDay = parseInt(text, 0, text.length());
+                    }
+                }
+                if (minuteOfDay >= 0) {
+                    hourOfDay = minuteOfDay / 60;
+                    minute = minuteOfDay % 60;
+                }
+                continue;
+            }
+            if ((column.kind == EPOCH_SECONDS)
+                || (column.kind == EPOCH_MILLISECONDS) || column.numeric)
+                continue;
+            Object value = sink.getCurrentValue(column.columnIndex);
+            if (value == null)
+                continue;
+            String text = value.toString();
+            switch (column.kind) {
+                case MONTH_DAY_YEAR:
+                case DAY_MONTH_YEAR:
+                    if (splitTokens(text, tokens, DATE_SEPARATORS)) {
+                        int tokenMonth = (column.kind == MONTH_DAY_YEAR) ? tokens[0]
+                            : tokens[1];
+                        int tokenDay = (column.kind == MONTH_DAY_YEAR) ? tokens[1]
+                            : tokens[0];
+                        year = tokens[2];
+                        if (column.twoDigitYear && (year < 100)) {
+                            year += (twoDigitYearStart / 100) * 100;
+                            if (year < twoDigitYearStart)
+                                year += 100;
+                        }
+                        month = tokenMonth - 1;
+                        dayInMonth = tokenDay;
+                        dateParsed = true;
+                    }
+                    break;
+                case HOUR_MINUTE_SECOND:
+                case HOUR12_MINUTE_SECOND:
+                case HOUR11_MINUTE_SECOND:
+                    if (splitTokens(text, tokens, TIME_SEPARATORS)) {
+                        hourOfDay = tokens[0];
+                        if ((column.kind == HOUR12_MINUTE_SECOND)
+                            && (hourOfDay == 12))
+                            hourOfDay = 0;
+                        minute = tokens[1];
+                        second = tokens[2];
+                        timeParsed = true;
+                    }
+                    break;
+                case FIELDS:
+                    for (int f = 0; f < column.fields.length; f++) {
+                        int start = column.starts[f];
+                        int end = column.ends[f];
+                        if (end > text.length())
+                            continue;
+                        int fieldValue = parseInt(text, start, end);
+                        if (fieldValue == Integer.MIN_VALUE)
+                            continue;
+                        switch (column.fields[f]) {
+                            case 'y':
+                                if (fieldValue >= 0) {
+                                    if (fieldValue < 70) {
+                                        fieldValue += 2000;
+                                    } else if (fieldValue < 1970) {
+                                        fieldValue += 1900;
+                                    }
+                                    year = fieldValue;
+                                }
+                                break;
+                            case 'M':
+                                if (fieldValue >= 1)
+                                    month = fieldValue - 1;
+                                break;
+                            case 'D':
+                                if ((fieldValue > 0) && (fieldValue <= 366))
+                                    dayInYear = fieldValue;
+                                break;
+                            case 'd':
+                                if ((fieldValue > 0) && (fieldValue < 35))
+                                    dayInMonth = fieldValue;
+                                break;
+                            case 'H':
+                                if ((fieldValue >= 0) && (fieldValue <= 23))
+                                    hourOfDay = fieldValue;
+                                break;
+                            case 'k':
+                                if ((fieldValue > 0) && (fieldValue <= 24))
+                                    hourOfDay = fieldValue - 1;
+                                break;
+                            case 'm':
+                                if ((fieldValue >= 0) && (fieldValue <= 59))
+                                    minute = fieldValue;
+                                break;
+                            case 's':
+                                if ((fieldValue >= 0) && (fieldValue <= 59))
+                                    second = fieldValue;
+                                break;
+                            case 'S':
+                                if ((fieldValue >= 0) && (fieldValue <= 999))
+                                    millisecond = fieldValue;
+                                break;
+                        }
+                    }
+                    break;
+            }
+        }
+
+        // There has to be a day to have a time
+        long days;
+        if (dayInMonth > 0) {
+            days = daysSinceEpoch((year >= 0) ? year : currentYear,
+                (month >= 0) ? month : currentMonth, dayInMonth);
+        } else if (dayInYear > 0) {
+            days = daysSinceEpoch((year >= 0) ? year : currentYear, 0, 1)
+                + dayInYear - 1;
+        } else if (timeParsed && (year < 0) && (month < 0) && !dateParsed) {
+            // A time with no date is on the first day of 1970
+            days = 0;
+        } else {
+            return UNRESOLVED;
+        }
+        return (days * 86400000L) + (hourOfDay * 3600000L)
+            + (minute * 60000L) + (second * 1000L) + millisecond;
+    }
+
+    /**
+     * This method figures out how the time is stored in one variable
+     *
+     * @return the compiled column or null if the variable can be ignored
+     */
+    private TimeColumn compile(RecordVariable rv) {
+        String units = rv.getUnits();
+        if (units == null)
+            return null;
+        TimeColumn column = new TimeColumn();
+        column.columnIndex = rv.getColumnIndex();
+        if (rv.getFormat() != null) {
+            Class format = (Class) VariableFormatMap.getInstance().get(
+                rv.getFormat().toLowerCase());
+            column.numeric = (format != null) && (format != String.class);
+        }
+
+        if (units.equalsIgnoreCase("epoch seconds")
+            || units.equalsIgnoreCase("seconds since 1970-01-01 00:00:00")) {
+            column.kind = EPOCH_SECONDS;
+        } else if (units.equalsIgnoreCase("epoch milliseconds")) {
+            column.kind = EPOCH_MILLISECONDS;
+        } else if (column.numeric) {
+            // Numbers are only used for the epoch times and minute of day
+            if (!units.equalsIgnoreCase("minuteOfDay"))
+                return null;
+            column.kind = MINUTE_OF_DAY;
+        } else if (MONTH_DAY_YEAR_PATTERN.matcher(units).matches()) {
+            column.kind = MONTH_DAY_YEAR;
+            column.twoDigitYear = countLetter(units, 'y') <= 2;
+        } else if (DAY_MONTH_YEAR_PATTERN.matcher(units).matches()) {
+            column.kind = DAY_MONTH_YEAR;
+            column.twoDigitYear = countLetter(units, 'y') <= 2;
+        } else if (units.equals("HH:mm:ss")) {
+            column.kind = HOUR_MINUTE_SECOND;
+        } else if (units.equals("hh:mm:ss")) {
+            column.kind = HOUR12_MINUTE_SECOND;
+        } else if (units.equals("KK:mm:ss")) {
+            column.kind = HOUR11_MINUTE_SECOND;
+        } else if (units.equalsIgnoreCase("minuteOfDay")) {
+            column.kind = MINUTE_OF_DAY;
+        } else {
+            // Fixed position fields (from the first to the last occurrence of
+            // each letter)
+            StringBuffer fields = new StringBuffer();
+            for (int i = 0; i < units.length(); i++) {
+                char letter = units.charAt(i);
+                if (((letter >= 'a') && (letter <= 'z'))
+                    || ((letter >= 'A') && (letter <= 'Z'))) {
+                    if (FIELD_LETTERS.indexOf(letter) < 0) {
+                        column.kind = UNSUPPORTED;
+                        return column;
+                    }
+                    if (fields.toString().indexOf(letter) < 0)
+                        fields.append(letter);
+                }
+            }
+            // Month names have to be looked up
+            if (countSpan(units, 'M') > 2) {
+                column.kind = UNSUPPORTED;
+                return column;
+            }
+            // The fields are applied in the same order as before
+            StringBuffer ordered = new StringBuffer();
+            for (int i = 0; i < FIELD_LETTERS.length(); i++) {
+                if (fields.toString().indexOf(FIELD_LETTERS.charAt(i)) >= 0)
+                    ordered.append(FIELD_LETTERS.charAt(i));
+            }
+            column.kind = FIELDS;
+            column.fields = ordered.toString().toCharArray();
+            column.starts = new int[column.fields.length];
+            column.ends = new int[column.fields.length];
+            for (int f = 0; f < column.fields.length; f++) {
+                column.starts[f] = units.indexOf(column.fields[f]);
+                column.ends[f] = units.lastIndexOf(column.fields[f]) + 1;
+            }
+        }
+        return column;
+    }
+
+    /**
+     * The number of days from 1970-01-01 to the given (GMT) date. Months past
+     * December and days past the end of the month roll over like a lenient
+     * calendar does.
+     *
+     * @param year
+     * @param month
+     *            zero based month
+     * @param dayInMonth
+     *            one based day of the month
+     */
+    static long daysSinceEpoch(int year, int month, int dayInMonth) {
+        year += month / 12;
+        month = month % 12;
+        if (month < 0) {
+            month += 12;
+            year--;
+        }
+        // Count from March so the leap day is at the end of the year
+        int m = month + 1;
+        long y = (m <= 2) ? year - 1 : year;
+        long era = ((y >= 0) ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (m + ((m > 2) ? -3 : 9)) + 2) / 5 + dayInMonth
+            - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+            + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * This method splits three unsigned numbers out of the text (separated by
+     * any of the separator characters)
+     *
+     * @return true if exactly three numbers were found
+     */
+    private static boolean splitTokens(String text, int[] tokens,
+        String separators) {
+        int count = 0;
+        int start = 0;
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            if ((i == length) || (separators.indexOf(text.charAt(i)) >= 0)) {
+                if (count == 3)
+                    return false;
+                int value = parseInt(text, start, i);
+                if (value < 0)
+                    return false;
+                tokens[count++] = value;
+                start = i + 1;
+            }
+        }
+        return count == 3;
+    }
+
+    /**
+     * This method parses a (optionally signed) integer from part of the text
+     *
+     * @return the value or Integer.MIN_VALUE if it is not a number
+     */
+    static int parseInt(String text, int start, int end) {
+        long value = parseLong(text, start, end);
+        if ((value == UNRESOLVED) || (value > Integer.MAX_VALUE)
+            || (value < Integer.MIN_VALUE + 1))
+            return Integer.MIN_VALUE;
+        return (int) value;
+    }
+
+    /**
+     * This method parses a (optionally signed) long from part of the text
+     *
+     * @return the value or UNRESOLVED if it is not a number
+     */
+    static long parseLong(String text, int start, int end) {
+        if ((start < 0) || (start >= end) || (end > text.length()))
+            return UNRESOLVED;
+        boolean negative = false;
+        char first = text.charAt(start);
+        if ((first == '-') || (first == '+')) {
+            negative = (first == '-');
+            start++;
+            if (start == end)
+                return UNRESOLVED;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char digit = text.charAt(i);
+            if ((digit < '0') || (digit > '9') || (value > Long.MAX_VALUE / 10))
+                return UNRESOLVED;
+            value = value * 10 + (digit - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static int countLetter(String text, char letter) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == letter)
+                count++;
+        }
+        return count;
+    }
+
+    private static int countSpan(String text, char letter) {
+        int first = text.indexOf(letter);
+        return (first < 0) ? 0 : text.lastIndexOf(letter) - first + 1;
+    }
+
+    /**
+     * One of the variables that can hold the time and how to read it
+     */
+    private static class TimeColumn {
+        int kind;
+        long columnIndex;
+        boolean numeric = false;
+        boolean twoDigitYear = false;
+        char[] fields;
+        int[] starts;
+        int[] ends;
+    }
+
+    /**
+     * The kinds of time columns
+     */
+    private static final int UNSUPPORTED = 0;
+    private static final int EPOCH_SECONDS = 1;
+    private static final int EPOCH_MILLISECONDS = 2;
+    private static final int MINUTE_OF_DAY = 3;
+    private static final int MONTH_DAY_YEAR = 4;
+    private static final int DAY_MONTH_YEAR = 5;
+    private static final int HOUR_MINUTE_SECOND = 6;
+    private static final int HOUR12_MINUTE_SECOND = 7;
+    private static final int HOUR11_MINUTE_SECOND = 8;
+    private static final int FIELDS = 9;
+
+    /**
+     * The fixed position fields that are understood (in the order they are
+     * applied)
+     */
+    private static final String FIELD_LETTERS = "yMDdHkmsS";
+
+    private static final String DATE_SEPARATORS = "/|-";
+    private static final String TIME_SEPARATORS = ":";
+    private static final Pattern MONTH_DAY_YEAR_PATTERN = Pattern
+        .compile("M+[/|-]d+[/|-]y+");
+    private static final Pattern DAY_MONTH_YEAR_PATTERN = Pattern
+        .compile("d+[/|-]M+[/|-]y+");
+
+    /**
+     * The compiled columns
+     */
+    private final TimeColumn[] columns;
+
+    /**
+     * Whether all the columns could be compiled
+     */
+    private boolean compiled = true;
+
+    /**
+     * The defaults for the fields that are not in the records
+     */
+    private final int currentYear;
+    private final int currentMonth;
+    private final int twoDigitYearStart;
+
+    /**
+     * A log4j logger
+     */
+    static Logger logger = Logger.getLogger(RecordTimeResolver.class);
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import moos.ssds.metadata.RecordVariable;
+
+import org.apache.log4j.Logger;
+import org.mbari.util.MathUtil;
+
+/**
+ * <p>
+ * This class lines up the data of a set of variables from several
+ * <code>ITimeIndexedDataAccess</code>es (the outputs of the deployments of a
+ * device, for example) on one time axis. The times and the data of each
+ * variable are read from each access once and then the sorted outputs are
+ * merged by time in a single pass, so the cost grows with the number of
+ * records and not with the square of it.
+ * </p>
+ * <p>
+ * When more than one record has the same time (in different outputs or in the
+ * same one), the duplicate policy says which values are used:
+ * </p>
+ * <ul>
+ * <li><code>DUPLICATES_FIRST</code> - the whole record from the first output
+ * that was added (and the first record in it) is used</li>
+ * <li><code>DUPLICATES_LAST</code> - the whole record from the last one is
+ * used</li>
+ * <li><code>DUPLICATES_MERGE</code> - each variable gets the first value that
+ * is not missing</li>
+ * </ul>
+ * <p>
+ * When a variable has no value at a time (it is missing or not in the output
+ * the time came from), the gap policy says what to do:
+ * </p>
+ * <ul>
+ * <li><code>GAPS_MISSING</code> - the value is left missing (null in the rows
+ * and NaN in the columns)</li>
+ * <li><code>GAPS_HOLD</code> - the last value of the variable is carried
+ * forward</li>
+ * <li><code>GAPS_DROP</code> - the time is dropped</li>
+ * </ul>
+ * <p>
+ * The defaults (<code>DUPLICATES_FIRST</code> and <code>GAPS_MISSING</code>)
+ * are what <code>DeviceDataAccess.getDeviceData</code> has always returned.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1 $
+ */
+public class TimeAligner {
+
+    /**
+     * The policies for records with the same time
+     */
+    public static final int DUPLICATES_FIRST = 0;
+    public static final int DUPLICATES_LAST = 1;
+    public static final int DUPLICATES_MERGE = 2;
+
+    /**
+     * The policies for variables without a value at a time
+     */
+    public static final int GAPS_MISSING = 0;
+    public static final int GAPS_HOLD = 1;
+    public static final int GAPS_DROP = 2;
+
+    /**
+     * The constructor that takes the names of the variables to line up (in the
+     * order they will be in the results)
+     *
+     * @param recordVariableNames
+     *            the names of the <code>RecordVariable</code>s
+     */
+    public TimeAligner(String[] recordVariableNames) {
+        this.recordVariableNames = recordVariableNames;
+    }
+
+    /**
+     * @param duplicatePolicy
+     *            one of the <code>DUPLICATES_</code> constants
+     */
+    public void setDuplicatePolicy(int duplicatePolicy) {
+        if ((duplicatePolicy < DUPLICATES_FIRST)
+            || (duplicatePolicy > DUPLICATES_MERGE))
+            throw new IllegalArgumentException("Unknown duplicate policy "
+                + duplicatePolicy);
+        this.duplicatePolicy = duplicatePolicy;
+    }
+
+    /**
+     * @param gapPolicy
+     *            one of the <code>GAPS_</code> constants
+     */
+    public void setGapPolicy(int gapPolicy) {
+        if ((gapPolicy < GAPS_MISSING) || (gapPolicy > GAPS_DROP))
+            throw new IllegalArgumentException("Unknown gap policy "
+                + gapPolicy);
+        this.gapPolicy = gapPolicy;
+    }
+
+    /**
+     * This method adds the data from an access. The times are read right
+     * away, the data of the variables is read (once) when the results are
+     * built.
+     *
+     * @param timeIndexedDataAccess
+     *            the access to add
+     */
+    public void addOutput(ITimeIndexedDataAccess timeIndexedDataAccess) {
+        long[] times = timeIndexedDataAccess.getTimeValues();
+        if ((times == null) || (times.length == 0))
+            return;
+        outputs.add(new Output(timeIndexedDataAccess, times));
+    }
+
+    /**
+     * @return the number of outputs that had times
+     */
+    public int getNumberOfOutputs() {
+        return outputs.size();
+    }
+
+    /**
+     * This method builds the aligned data as rows. The first column of each
+     * row is the time (as a <code>Long</code>) and the others are the values
+     * of the variables (in the order of the names given to the constructor)
+     * as the accesses box them.
+     *
+     * @return the rows (sorted by time)
+     */
+    public Object[][] getRows() {
+        RowBuilder rowBuilder = new RowBuilder();
+        merge(rowBuilder);
+        return rowBuilder.getRows();
+    }
+
+    /**
+     * This method builds the aligned data as primitive columns (missing values
+     * are NaN). This is quicker and much smaller than the rows when there is a
+     * lot of numeric data. The times are then available from
+     * <code>getTimes()</code>.
+     *
+     * @return a <code>double[]</code> for each variable (null for variables
+     *         that are not numeric)
+     */
+    public double[][] getDoubleColumns() {
+        ColumnBuilder columnBuilder = new ColumnBuilder();
+        merge(columnBuilder);
+        columnTimes = columnBuilder.getTimes();
+        return columnBuilder.getColumns();
+    }
+
+    /**
+     * @return the times of the last columns built by
+     *         <code>getDoubleColumns</code> (or null if none were built)
+     */
+    public long[] getTimes() {
+        return columnTimes;
+    }
+
+    /**
+     * This method does the merge. It keeps a cursor in each output and, for
+     * each time (smallest first), hands all the records at that time to the
+     * builder.
+     */
+    private void merge(Builder builder) {
+        Output[] sources = (Output[]) outputs.toArray(new Output[outputs
+            .size()]);
+        int maxRows = 0;
+        for (int i = 0; i < sources.length; i++) {
+            sources[i].cursor = 0;
+            maxRows += sources[i].times.length;
+        }
+        builder.start(sources, maxRows);
+        while (true) {
+            // Find the smallest time at the cursors
+            long time = 0;
+            boolean found = false;
+            for (int i = 0; i < sources.length; i++) {
+                Output source = sources[i];
+                if ((source.cursor < source.times.length)
+                    && ((!found) || (source.currentTime() < time))) {
+                    time = source.currentTime();
+                    found = true;
+                }
+            }
+            if (!found)
+                break;
+
+            // Now take the records at that time from each output (in the
+            // order they were added)
+            builder.startRow(time);
+            boolean first = true;
+            for (int i = 0; i < sources.length; i++) {
+                Output source = sources[i];
+                while ((source.cursor < source.times.length)
+                    && (source.currentTime() == time)) {
+                    int record = source.currentRecord();
+                    if (duplicatePolicy == DUPLICATES_MERGE)
+                        builder.fillMissing(i, record);
+                    else if (first || (duplicatePolicy == DUPLICATES_LAST))
+                        builder.set(i, record);
+                    first = false;
+                    source.cursor++;
+                }
+            }
+            builder.endRow();
+        }
+        if (logger.isDebugEnabled())
+            logger.debug("Merged " + maxRows + " records from "
+                + sources.length + " outputs");
+    }
+
+    /**
+     * This class holds an output and the cursor in it for the merge. If the
+     * times of the output are not in order, it keeps the order to read them in
+     * (a stable sort, so duplicates stay in the order they were in).
+     */
+    private class Output {
+
+        Output(ITimeIndexedDataAccess access, long[] times) {
+            this.access = access;
+            for (int i = 1; i < times.length; i++) {
+                if (times[i] < times[i - 1]) {
+                    order = MathUtil.getSortOrder(times);
+                    break;
+                }
+            }
+            this.times = times;
+        }
+
+        long currentTime() {
+            return times[currentRecord()];
+        }
+
+        int currentRecord() {
+            return (order == null) ? cursor : order[cursor];
+        }
+
+        /**
+         * This method reads the boxed data of each variable (once)
+         */
+        Object[][] getObjectData() {
+            if (objectData == null) {
+                objectData = new Object[recordVariableNames.length][];
+                for (int i = 0; i < recordVariableNames.length; i++)
+                    objectData[i] = access.getData(recordVariableNames[i]);
+            }
+            return objectData;
+        }
+
+        /**
+         * This method reads the primitive data of each variable (once)
+         */
+        double[][] getDoubleData() {
+            if (doubleData == null) {
+                doubleData = new double[recordVariableNames.length][];
+                for (int i = 0; i < recordVariableNames.length; i++) {
+                    RecordVariable recordVariable = findRecordVariable(
+                        recordVariableNames[i]);
+                    if (recordVariable != null)
+                        doubleData[i] = access.getDoubleData(recordVariable);
+                }
+            }
+            return doubleData;
+        }
+
+        private RecordVariable findRecordVariable(String name) {
+            if (access.getRecordVariables() == null)
+                return null;
+            Iterator iter = access.getRecordVariables().iterator();
+            while (iter.hasNext()) {
+                RecordVariable recordVariable = (RecordVariable) iter.next();
+                if ((recordVariable.getName() != null)
+                    && (recordVariable.getName().equalsIgnoreCase(name)))
+                    return recordVariable;
+            }
+            return null;
+        }
+
+        private final ITimeIndexedDataAccess access;
+        private final long[] times;
+        private int[] order = null;
+        private int cursor = 0;
+        private Object[][] objectData = null;
+        private double[][] doubleData = null;
+    }
+
+    /**
+     * This is what the merge writes the records to
+     */
+    private interface Builder {
+
+        void start(Output[] sources, int maxRows);
+
+        void startRow(long time);
+
+        /**
+         * Set all the values of the row from the record
+         */
+        void set(int sourceIndex, int record);
+
+        /**
+         * Set the values of the row that are still missing from the record
+         */
+        void fillMissing(int sourceIndex, int record);
+
+        void endRow();
+    }
+
+    /**
+     * This builds the rows of boxed values
+     */
+    private class RowBuilder implements Builder {
+
+        public void start(Output[] sources, int maxRows) {
+            data = new Object[sources.length][][];
+            for (int i = 0; i < sources.length; i++)
+                data[i] = sources[i].getObjectData();
+            rows = new Object[maxRows][];
+            last = new Object[recordVariableNames.length];
+        }
+
+        public void startRow(long time) {
+            row = new Object[recordVariableNames.length + 1];
+            row[0] = new Long(time);
+        }
+
+        public void set(int sourceIndex, int record) {
+            for (int i = 0; i < recordVariableNames.length; i++) {
+                Object[] column = data[sourceIndex][i];
+                row[i + 1] = (column == null) ? null : column[record];
+            }
+        }
+
+        public void fillMissing(int sourceIndex, int record) {
+            for (int i = 0; i < recordVariableNames.length; i++) {
+                Object[] column = data[sourceIndex][i];
+                if ((row[i + 1] == null) && (column != null))
+                    row[i + 1] = column[record];
+            }
+        }
+
+        public void endRow() {
+            for (int i = 0; i < recordVariableNames.length; i++) {
+                if (row[i + 1] != null) {
+                    last[i] = row[i + 1];
+                } else if (gapPolicy == GAPS_HOLD) {
+                    row[i + 1] = last[i];
+                } else if (gapPolicy == GAPS_DROP) {
+                    return;
+                }
+            }
+            rows[numberOfRows++] = row;
+        }
+
+        Object[][] getRows() {
+            if (numberOfRows == rows.length)
+                return rows;
+            Object[][] trimmed = new Object[numberOfRows][];
+            System.arraycopy(rows, 0, trimmed, 0, numberOfRows);
+            return trimmed;
+        }
+
+        private Object[][][] data = null;
+        private Object[][] rows = null;
+        private Object[] row = null;
+        private Object[] last = null;
+        private int numberOfRows = 0;
+    }
+
+    /**
+     * This builds the primitive columns
+     */
+    private class ColumnBuilder implements Builder {
+
+        public void start(Output[] sources, int maxRows) {
+            data = new double[sources.length][][];
+            for (int i = 0; i < sources.length; i++)
+                data[i] = sources[i].getDoubleData();
+            times = new long[maxRows];
+            columns = new double[recordVariableNames.length][];
+            // Only variables that are numeric somewhere get a column
+            for (int i = 0; i < recordVariableNames.length; i++) {
+                for (int j = 0; j < sources.length; j++) {
+                    if (data[j][i] != null) {
+                        columns[i] = new double[maxRows];
+                        break;
+                    }
+                }
+            }
+            row = new double[recordVariableNames.length];
+            last = new double[recordVariableNames.length];
+            Arrays.fill(last, Double.NaN);
+        }
+
+        public void startRow(long time) {
+            rowTime = time;
+            Arrays.fill(row, Double.NaN);
+        }
+
+        public void set(int sourceIndex, int record) {
+            for (int i = 0; i < row.length; i++) {
+                double[] column = data[sourceIndex][i];
+                row[i] = (column == null) ? Double.NaN : column[record];
+            }
+        }
+
+        public void fillMissing(int sourceIndex, int record) {
+            for (int i = 0; i < row.length; i++) {
+                double[] column = data[sourceIndex][i];
+                if (Double.isNaN(row[i]) && (column != null))
+                    row[i] = column[record];
+            }
+        }
+
+        public void endRow() {
+            for (int i = 0; i < row.length; i++) {
+                if (columns[i] == null)
+                    continue;
+                if (!Double.isNaN(row[i])) {
+                    last[i] = row[i];
+                } else if (gapPolicy == GAPS_HOLD) {
+                    row[i] = last[i];
+                } else if (gapPolicy == GAPS_DROP) {
+                    return;
+                }
+            }
+            times[numberOfRows] = rowTime;
+            for (int i = 0; i < row.length; i++) {
+                if (columns[i] != null)
+                    columns[i][numberOfRows] = row[i];
+            }
+            numberOfRows++;
+        }
+
+        long[] getTimes() {
+            if (numberOfRows == times.length)
+                return times;
+            long[] trimmed = new long[numberOfRows];
+            System.arraycopy(times, 0, trimmed, 0, numberOfRows);
+            return trimmed;
+        }
+
+        double[][] getColumns() {
+            for (int i = 0; i < columns.length; i++) {
+                if ((columns[i] != null)
+                    && (columns[i].length != numberOfRows)) {
+                    double[] trimmed = new double[numberOfRows];
+                    System.arraycopy(columns[i], 0, trimmed, 0, numberOfRows);
+                    columns[i] = trimmed;
+                }
+            }
+            return columns;
+        }
+
+        private double[][][] data = null;
+        private long[] times = null;
+        private double[][] columns = null;
+        private double[] row = null;
+        private double[] last = null;
+        private long rowTime = 0;
+        private int numberOfRows = 0;
+    }
+
+    /**
+     * The names of the variables to line up
+     */
+    private final String[] recordVariableNames;
+
+    /**
+     * The outputs (in the order they were added)
+     */
+    private final List outputs = new ArrayList();
+
+    /**
+     * The policies
+     */
+    private int duplicatePolicy = DUPLICATES_FIRST;
+    private int gapPolicy = GAPS_MISSING;
+
+    /**
+     * The times of the last columns that were built
+     */
+    private long[] columnTimes = null;
+
+    /**
+     * A log4j logger
+     */
+    static Logger logger = Logger.getLogger(TimeAligner.class);
+}
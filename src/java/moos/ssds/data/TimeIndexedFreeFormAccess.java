@@ -34,8 +34,10 @@ import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import moos.ssds.data.parsers.Parser;
+import moos.ssds.data.parsers.ColumnarRecordSink;
 import moos.ssds.data.parsers.IParser;
+import moos.ssds.data.parsers.Parser;
+import moos.ssds.data.parsers.ParserContext;
 import moos.ssds.metadata.DataContainer;
 import moos.ssds.metadata.RecordVariable;
 
@@ -88,8 +90,7 @@ public class TimeIndexedFreeFormAccess implements ITimeIndexedDataAccess {
     public Object[] getData(String recordVariableName) {
         // Loop through the list of record variables and find the one
         // that matches the given name and return its data.
-        Set rvs = mapRecordVariablesToData.keySet();
-        Iterator iterator = rvs.iterator();
+        Iterator iterator = recordVariables.iterator();
         while (iterator.hasNext()) {
             RecordVariable tempRV = (RecordVariable) iterator.next();
             if (tempRV.getName().equalsIgnoreCase(recordVariableName)) {
@@ -111,15 +112,63 @@ public class TimeIndexedFreeFormAccess implements ITimeIndexedDataAccess {
         }
 
         // Setup times if not setup already
-        if (times == null) {
+        if (sink == null) {
             logger.debug("No times found, going to initialize the data");
             initializeData();
         }
 
+        // Sort based on time. Reject duplicates (use first occurence)
+        RecordVariable foundRV = findRecordVariable(recordVariable);
+        if (foundRV == null) {
+            return null;
+        }
+        return sink.getObjectColumn(foundRV.getColumnIndex(), sortOrder);
+    }
+
+    /**
+     * @see ITimeIndexedDataAccess#getPrimitiveData(RecordVariable)
+     */
+    public Object getPrimitiveData(RecordVariable recordVariable) {
+        if (sink == null) {
+            initializeData();
+        }
+        RecordVariable foundRV = findRecordVariable(recordVariable);
+        if (foundRV == null) {
+            return null;
+        }
+        return sink.getColumnArray(foundRV.getColumnIndex(), sortOrder);
+    }
+
+    /**
+     * @see ITimeIndexedDataAccess#getDoubleData(RecordVariable)
+     */
+    public double[] getDoubleData(RecordVariable recordVariable) {
+        if (sink == null) {
+            initializeData();
+        }
+        RecordVariable foundRV = findRecordVariable(recordVariable);
+        if (foundRV == null) {
+            return null;
+        }
+        return sink.getDoubleColumn(foundRV.getColumnIndex(), sortOrder);
+    }
+
+    /**
+     * This method finds the <code>RecordVariable</code> that data was loaded
+     * for that matches the given one (by ID or by name and column index)
+     * 
+     * @param recordVariable
+     *            the <code>RecordVariable</code> to look for
+     * @return the matching <code>RecordVariable</code> or null if there is no
+     *         data for it
+     */
+    private RecordVariable findRecordVariable(RecordVariable recordVariable) {
+        if (recordVariable == null) {
+            return null;
+        }
         // Try to find by ID
-        Set rvs = mapRecordVariablesToData.keySet();
-        Iterator iterator = rvs.iterator();
-        RecordVariable foundRV = recordVariable;
+        Iterator iterator = recordVariables.iterator();
+        RecordVariable foundRV = null;
         while (iterator.hasNext()) {
             RecordVariable currentRV = (RecordVariable) iterator.next();
             if ((currentRV.getId() != null)
@@ -137,45 +186,34 @@ public class TimeIndexedFreeFormAccess implements ITimeIndexedDataAccess {
                 foundRV = currentRV;
             }
         }
-        if (mapRecordVariablesToData.containsKey(foundRV)) {
-            // Grab the data list
-            List dataList = (List) mapRecordVariablesToData.get(foundRV);
-
-            // Sort based on time. Reject duplicates (use first occurence)
-            Object[] out = (Object[]) dataList.toArray(new Object[dataList
-                .size()]);
-            return MathUtil.orderVector(out, sortOrder);
-        } else {
-            logger.debug("getData called with RecordVariable "
-                + recordVariable.getName()
-                + ", but it appears that data needs to be initialized");
-            initializeData();
+        // The variable may be the same object that was loaded
+        if ((foundRV == null) && recordVariables.contains(recordVariable)) {
+            foundRV = recordVariable;
         }
-
-        // try to call this method again, now that the buffer is filled in.
-        return getData(foundRV);
+        return foundRV;
     }
 
     /**
      * @see ITimeIndexedDataAccess#getTime()
      */
     public Object[] getTime() {
-        // logger.debug("getTime called");
-        Object[] timesToReturn = null;
-        if (times == null) {
+        long[] timeValues = getTimeValues();
+        Long[] timesToReturn = new Long[timeValues.length];
+        for (int i = 0; i < timeValues.length; i++) {
+            timesToReturn[i] = new Long(timeValues[i]);
+        }
+        return timesToReturn;
+    }
+
+    /**
+     * @see ITimeIndexedDataAccess#getTimeValues()
+     */
+    public long[] getTimeValues() {
+        if (sink == null) {
             logger.debug("No times found, going to initialize the data");
             initializeData();
         }
-        if (sortOrder != null) {
-            // logger.debug("Sort order was not null");
-            timesToReturn = MathUtil.orderVector((Long[]) times
-                .toArray(new Long[times.size()]), sortOrder);
-            // logger.debug("going to return an array of " +
-            // timesToReturn.length );
-        } else {
-            timesToReturn = times.toArray(new Long[times.size()]);
-        }
-        return timesToReturn;
+        return sink.getTimes(sortOrder);
     }
 
     /**
@@ -185,36 +223,53 @@ public class TimeIndexedFreeFormAccess implements ITimeIndexedDataAccess {
     private void initializeData() {
 
         // logger.debug("initializeData called");
-        // Create a new array for times
-        times = new ArrayList();
-
-        // This loop is creating a new array list for each variable in the
-        // datacontainer
-        // where the data will be stored
+        // This loop is picking out the variables in the datacontainer that
+        // data will be stored for and the ones that could hold the time of
+        // the record
+        recordVariables = new ArrayList();
+        Collection dateVariables = new ArrayList();
+        Collection sinkVariables = new ArrayList();
         for (Iterator iter = getDataContainer().getRecordDescription()
             .getRecordVariables().iterator(); iter.hasNext();) {
-            Object obj = iter.next();
+            RecordVariable rv = (RecordVariable) iter.next();
+            boolean selected = true;
             // Check to see if the collection of record variable names was
             // specified
             if ((this.recordVariableNames != null)
                 && (this.recordVariableNames.size() > 0)) {
-                // Cast to a record variable to check against name
-                RecordVariable rv = (RecordVariable) obj;
-                if (this.recordVariableNames.contains(rv.getName())) {
-                    mapRecordVariablesToData.put(obj, new ArrayList());
-                }
-            } else {
-                mapRecordVariablesToData.put(obj, new ArrayList());
+                selected = this.recordVariableNames.contains(rv.getName());
+            }
+            if (selected) {
+                recordVariables.add(rv);
+            }
+            boolean dateVariable = ((rv.getFormat() != null) && (rv
+                .getFormat().equalsIgnoreCase("datetime")))
+                || ((rv.getName() != null) && ((rv.getName().indexOf("Time") >= 0) || (rv
+                    .getName().indexOf("time") >= 0)));
+            if (dateVariable) {
+                dateVariables.add(rv);
+            }
+            if (selected || dateVariable) {
+                sinkVariables.add(rv);
             }
         }
 
-        // This is the map that contains a map of IRecordVariable to
-        // data for a single record that was parsed from the DataContainer
-        Map freeFormMapRecordVariablesToData = null;
+        // The data is parsed straight into columns of primitives
+        sink = new ColumnarRecordSink(sinkVariables);
+
+        // Work out how to get the time out of the records once (if the units
+        // of the time variables are not understood, findDate is used)
+        RecordTimeResolver timeResolver = new RecordTimeResolver(
+            dateVariables);
+        long startMillis = getStartDate().getTime();
+        long endMillis = getEndDate().getTime();
+
+        // This is the map that contains the values of the variables that
+        // could hold the time for a single record
+        Map dateVariablesToData = new HashMap();
 
-        // Grab the ASCI file context from the parser
-        // AsciiFileContext context = (AsciiFileContext)
-        // getParser().getContext();
+        // Grab the context from the parser
+        ParserContext context = getParser().getParserContext();
 
         // An index counter
         int index = 0;
@@ -224,66 +279,58 @@ public class TimeIndexedFreeFormAccess implements ITimeIndexedDataAccess {
         // somewhat on smaller time frames so that the in-memory footprint
         // doesn't
         // run wild.
-        while (getParser().hasNext()) {
+        while (context.hasNext()) {
             // Increment record index that we have read
             index++;
 
-            // Grab the data for the record variables from the DataContainer
+            // Parse the record into the sink
+            boolean parsed = false;
             try {
-                freeFormMapRecordVariablesToData = (Map) getParser().next();
+                parsed = context.next(sink);
             } catch (Exception e) {
                 logger.debug("Failed to parse packet contents: "
                     + e.getMessage());
+                sink.discardRecord();
                 continue;
             }
 
             // Check to see if the data is even valid, if not skip it
-            if (freeFormMapRecordVariablesToData == null) {
-                logger
-                    .debug("Returned freeFormMapRecordVariablesToData was null");
+            if (!parsed) {
+                logger.debug("No record could be parsed");
                 continue;
             }
 
             // Try to get the date out of the record
-            Date recordDate = this.findDate(freeFormMapRecordVariablesToData);
-//            logger.debug("recordDate at index " + index + " found to be " + recordDate);
-
-            // If one found, add the data if in the time range specified
-            if (((recordDate == null) && (freeFormMapRecordVariablesToData != null))
-                || ((freeFormMapRecordVariablesToData != null) && ((recordDate
-                    .after(getStartDate()) && recordDate.before(getEndDate()))
-                    || recordDate.equals(getStartDate()) || recordDate
-                    .equals(getEndDate())))) {
-                if (recordDate != null) {
-                    times.add(new Long(recordDate.getTime()));
-                    // logger.debug("Adding record date that was converted to a
-                    // long " + recordDate.getTime());
-                    datesResolved = true;
-                } else {
-                    times.add(new Long(index));
-                }
-                for (Iterator iter = freeFormMapRecordVariablesToData.keySet()
-                    .iterator(); iter.hasNext();) {
-
+            long recordTime = RecordTimeResolver.UNRESOLVED;
+            if (timeResolver.isCompiled()) {
+                recordTime = timeResolver.resolve(sink);
+            } else {
+                dateVariablesToData.clear();
+                for (Iterator iter = dateVariables.iterator(); iter.hasNext();) {
                     RecordVariable rv = (RecordVariable) iter.next();
-                    List vList = (List) mapRecordVariablesToData.get(rv);
-                    if (vList != null) {
-                        Object o = freeFormMapRecordVariablesToData.get(rv);
-                        if (o != null) {
-                            vList.add(o);
-                        } else {
-                            vList.add(null);
-                        }
+                    Object value = sink.getCurrentValue(rv.getColumnIndex());
+                    if (value != null) {
+                        dateVariablesToData.put(rv, value);
                     }
                 }
+                Date recordDate = this.findDate(dateVariablesToData);
+                if (recordDate != null)
+                    recordTime = recordDate.getTime();
+            }
+
+            // If one found, add the data if in the time range specified
+            if (recordTime == RecordTimeResolver.UNRESOLVED) {
+                sink.commitRecord(index);
+            } else if ((recordTime >= startMillis) && (recordTime <= endMillis)) {
+                sink.commitRecord(recordTime);
+                datesResolved = true;
+            } else {
+                sink.discardRecord();
             }
         }
 
         // Create the sort order for the times
-        // logger.debug("There are " + times.size() + " time entries");
-        sortOrder = MathUtil.uniqueSort((Long[]) times.toArray(new Long[times
-            .size()]));
-        // logger.debug("Soft order has " + sortOrder.length + " elements");
+        sortOrder = MathUtil.uniqueSort(sink.getTimes());
     }
 
     /**
@@ -313,10 +360,9 @@ public class TimeIndexedFreeFormAccess implements ITimeIndexedDataAccess {
      * <a
      * href="http://java.sun.com/j2se/1.4.2/docs/api/index.html">SimpleDateFormat</a>
      * <br>
-     * TODO KJG 06-15-2005 The better thing to do here would be to figure out
-     * the parsing scheme once and then just execute that same parsing scheme
-     * for each record. Currently, I figure out the scheme each time. This is
-     * too slow.
+     * This is only used when the <code>RecordTimeResolver</code> does not
+     * understand the units of the time variables (it figures out the parsing
+     * scheme once instead of for every record).
      */
     private Date findDate(Map freeFormMapRecordVariablesToData) {
 
@@ -456,6 +502,7 @@ public class TimeIndexedFreeFormAccess implements ITimeIndexedDataAccess {
                         && (!dataIsNumber)) {
                         // Use the SimpleDateFormat
                         DateFormat df = new SimpleDateFormat(units);
+                        df.setTimeZone(TimeZone.getTimeZone("GMT"));
                         // Now parse the date
                         Date tempDate = null;
                         try {
@@ -964,7 +1011,7 @@ public class TimeIndexedFreeFormAccess implements ITimeIndexedDataAccess {
      * @see moos.ssds.data.IDataAccess#getRecordVariables()
      */
     public Collection getRecordVariables() {
-        return new ArrayList(this.mapRecordVariablesToData.keySet());
+        return new ArrayList(this.recordVariables);
     }
 
     /**
@@ -1004,18 +1051,16 @@ public class TimeIndexedFreeFormAccess implements ITimeIndexedDataAccess {
     private int[] sortOrder;
 
     /**
-     * This is a List of the time objects that are associated with the
-     * corresponding data objects
+     * This is the <code>List</code> of <code>RecordVariable</code>s that
+     * data is loaded for
      */
-    private List times = null;
+    private List recordVariables = new ArrayList();
 
     /**
-     * This is a <code>Map</code> that holds the
-     * <code>moos.ssds.model.IRecordVariable</code> as the key and an array of
-     * <code>Number</code>s that are the data for that
-     * <code>RecordVariable</code>
+     * This is the <code>ColumnarRecordSink</code> that holds the times and
+     * the data (as primitives) for each of the record variables
      */
-    private final Map mapRecordVariablesToData = new HashMap();
+    private ColumnarRecordSink sink = null;
 
     /**
      * This is the IFileParser that will be used to parse the contents of the
@@ -1035,4 +1080,4 @@ public class TimeIndexedFreeFormAccess implements ITimeIndexedDataAccess {
      * A log4j logger
      */
     static Logger logger = Logger.getLogger(TimeIndexedFreeFormAccess.class);
-}
\ No newline at end of file
+}
@@ -18,7 +18,6 @@ package moos.ssds.data;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -26,8 +25,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TimeZone;
 
+import moos.ssds.data.parsers.ColumnarRecordSink;
 import moos.ssds.metadata.DataContainer;
 import moos.ssds.metadata.RecordVariable;
 
@@ -35,7 +34,7 @@ import org.apache.log4j.Logger;
 
 import ucar.ma2.Array;
 import ucar.ma2.InvalidRangeException;
-import ucar.nc2.DataType;
+import ucar.ma2.Range;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.Variable;
 import ucar.nc2.dods.DODSNetcdfFile;
@@ -77,6 +76,19 @@ public class TimeIndexedNetcdfAccess implements ITimeIndexedDataAccess {
         netcdfFile = getNetcdfFile(dataContainer);
     }
 
+    /**
+     * This constructor is the same as the one above but only every
+     * <code>stride</code> sample in the time window will be returned
+     * 
+     * @see #setStride(int)
+     */
+    public TimeIndexedNetcdfAccess(DataContainer dataContainer, Date startDate,
+        Date endDate, int stride) throws MalformedURLException, IOException,
+        DODSException {
+        this(dataContainer, startDate, endDate);
+        setStride(stride);
+    }
+
     /**
      * This method constructs the netcdf file from the given
      * <code>IDataContainer</code>
@@ -172,8 +184,127 @@ public class TimeIndexedNetcdfAccess implements ITimeIndexedDataAccess {
             + rv.getName());
         Object[] out = null;
 
+        // Read the data
+        Variable v = findVariable(rv);
+        Object data = readWindow(v);
+        if (data == null) {
+            if (v != null)
+                logger.debug("No data was read");
+        } else if (data instanceof int[]) {
+            int[] intData = (int[]) data;
+            Integer[] integerData = new Integer[intData.length];
+            for (int j = 0; j < intData.length; j++) {
+                integerData[j] = new Integer(intData[j]);
+            }
+            out = integerData;
+        } else if (data instanceof double[]) {
+            double[] doubleData = (double[]) data;
+            Double[] boxedData = new Double[doubleData.length];
+            for (int j = 0; j < doubleData.length; j++) {
+                boxedData[j] = new Double(doubleData[j]);
+            }
+            out = boxedData;
+        } else if (data instanceof float[]) {
+            float[] floatData = (float[]) data;
+            Float[] boxedData = new Float[floatData.length];
+            for (int j = 0; j < floatData.length; j++) {
+                boxedData[j] = new Float(floatData[j]);
+            }
+            out = boxedData;
+        } else if (data instanceof long[]) {
+            long[] longData = (long[]) data;
+            Long[] boxedData = new Long[longData.length];
+            for (int j = 0; j < longData.length; j++) {
+                boxedData[j] = new Long(longData[j]);
+            }
+            out = boxedData;
+        } else if (data instanceof short[]) {
+            short[] shortData = (short[]) data;
+            Short[] boxedData = new Short[shortData.length];
+            for (int j = 0; j < shortData.length; j++) {
+                boxedData[j] = new Short(shortData[j]);
+            }
+            out = boxedData;
+        } else if (data instanceof String[]) {
+            out = (String[]) data;
+        }
+        if (out != null)
+            logger.debug("Array of " + out.length + " "
+                + v.getDataType() + " will be returned");
+        return out;
+    }
+
+    /**
+     * @see ITimeIndexedDataAccess#getPrimitiveData(RecordVariable)
+     */
+    public Object getPrimitiveData(RecordVariable rv) {
+        Object data = readWindow(findVariable(rv));
+        if (data == null)
+            return null;
+        // Widen shorts and bytes to ints
+        if (data instanceof short[]) {
+            short[] shortData = (short[]) data;
+            int[] intData = new int[shortData.length];
+            for (int j = 0; j < shortData.length; j++)
+                intData[j] = shortData[j];
+            data = intData;
+        } else if (data instanceof byte[]) {
+            byte[] byteData = (byte[]) data;
+            int[] intData = new int[byteData.length];
+            for (int j = 0; j < byteData.length; j++)
+                intData[j] = byteData[j];
+            data = intData;
+        }
+        return data;
+    }
+
+    /**
+     * @see ITimeIndexedDataAccess#getDoubleData(RecordVariable)
+     */
+    public double[] getDoubleData(RecordVariable rv) {
+        Object data = getPrimitiveData(rv);
+        if ((data == null) || (data instanceof Object[]))
+            return null;
+        return ColumnarRecordSink.toDoubleArray(data);
+    }
+
+    /**
+     * This method sets how many samples to move ahead in the time window for
+     * each sample that is returned (1 returns them all, 10 returns every
+     * tenth one). The times and the data are both decimated the same way.
+     * 
+     * @param stride
+     *            the number of samples between the samples that are returned
+     */
+    public void setStride(int stride) {
+        if (stride < 1)
+            stride = 1;
+        if (stride != this.stride) {
+            this.stride = stride;
+            // The times have to be read again
+            this.timeValues = null;
+        }
+    }
+
+    /**
+     * @return the number of samples between the samples that are returned
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * This method finds the netcdf <code>Variable</code> that matches the
+     * given <code>RecordVariable</code>
+     * 
+     * @param rv
+     *            the <code>RecordVariable</code> to look for
+     * @return the netcdf <code>Variable</code> or null if none was found
+     */
+    private Variable findVariable(RecordVariable rv) {
+
         // Initialize times if needed
-        if (times == null) {
+        if (timeValues == null) {
             initializeTime();
         }
 
@@ -202,82 +333,65 @@ public class TimeIndexedNetcdfAccess implements ITimeIndexedDataAccess {
             if (v != null) {
                 logger.debug("Found netcdf variable that matched and has name "
                     + v.getName() + " and DataType " + v.getDataType());
-                if ((endIndex - startIndex) > 0) {
-                    // Get the shape of the netcdf file
-                    int[] shape = {endIndex - startIndex + 1};
-                    // Get the origin of the netcdf file
-                    int[] origin = {startIndex};
-                    // The array to read into
-                    Array a = null;
-                    // Now read it
-                    try {
-                        a = v.read(origin, shape);
-                    } catch (IOException e) {
-                        logger.error("IOException caught: " + e.getMessage());
-                    } catch (InvalidRangeException e) {
-                        logger.error("InvalidRangeException caught: "
-                            + e.getMessage());
-                    }
-                    // Check to see if something was returned
-                    if (a != null) {
-                        if (v.getDataType() == DataType.INT) {
-                            int[] data = (int[]) a.copyTo1DJavaArray();
-                            Integer[] integerData = new Integer[data.length];
-                            for (int j = 0; j < data.length; j++) {
-                                integerData[j] = new Integer(data[j] + "");
-                            }
-                            logger.debug("Array of " + data.length
-                                + " integers will be returned");
-                            out = integerData;
-                        } else if (v.getDataType() == DataType.DOUBLE) {
-                            double[] data = (double[]) a.copyTo1DJavaArray();
-                            Double[] doubleData = new Double[data.length];
-                            for (int j = 0; j < data.length; j++) {
-                                doubleData[j] = new Double(data[j] + "");
-                            }
-                            logger.debug("Array of " + data.length
-                                + " doubles will be returned");
-                            out = doubleData;
-                        } else if (v.getDataType() == DataType.FLOAT) {
-                            float[] data = (float[]) a.copyTo1DJavaArray();
-                            Float[] floatData = new Float[data.length];
-                            for (int j = 0; j < data.length; j++) {
-                                floatData[j] = new Float(data[j] + "");
-                            }
-                            logger.debug("Array of " + data.length
-                                + " floats will be returned");
-                            out = floatData;
-                        } else if (v.getDataType() == DataType.LONG) {
-                            long[] data = (long[]) a.copyTo1DJavaArray();
-                            Long[] longData = new Long[data.length];
-                            for (int j = 0; j < data.length; j++) {
-                                longData[j] = new Long(data[j] + "");
-                            }
-                            logger.debug("Array of " + data.length
-                                + " longs will be returned");
-                            out = longData;
-                        } else if (v.getDataType() == DataType.SHORT) {
-                            short[] data = (short[]) a.copyTo1DJavaArray();
-                            Short[] shortData = new Short[data.length];
-                            for (int j = 0; j < data.length; j++) {
-                                shortData[j] = new Short(data[j] + "");
-                            }
-                            logger.debug("Array of " + data.length
-                                + " shorts will be returned");
-                            out = shortData;
-                        } else if (v.getDataType() == DataType.STRING) {
-                            String[] data = (String[]) a.copyTo1DJavaArray();
-                            logger.debug("Array of " + data.length
-                                + " strings will be returned");
-                            out = data;
-                        }
-                    } else {
-                        logger.error("Data array was null");
-                    }
-                }
             }
+            return v;
         }
-        return out;
+        return null;
+    }
+
+    /**
+     * This method reads the section of the netcdf variable that is inside the
+     * time window (every <code>stride</code> sample of it). With a stride,
+     * the window is read in blocks and each block is decimated before the
+     * next is read, so only the samples that are returned are held on to.
+     * 
+     * @param v
+     *            the netcdf <code>Variable</code> to read
+     * @return the window of data as a java array (<code>double[]</code>,
+     *         <code>short[]</code>, etc.) or null if nothing could be read
+     */
+    private Object readWindow(Variable v) {
+        if ((v == null) || (windowLength <= 0))
+            return null;
+        try {
+            if (stride == 1) {
+                return v.read(new int[]{startIndex}, new int[]{windowLength})
+                    .copyTo1DJavaArray();
+            }
+            // Read blocks that are a whole number of strides long so the
+            // samples line up with the times
+            int blockLength = ((READ_BLOCK_SIZE + stride - 1) / stride)
+                * stride;
+            List blocks = new ArrayList();
+            int numberOfSamples = 0;
+            for (int offset = 0; offset < windowLength; offset += blockLength) {
+                int length = Math.min(blockLength, windowLength - offset);
+                Array block = v.read(new int[]{startIndex + offset},
+                    new int[]{length});
+                Object decimated = block.section(
+                    new Range[]{new Range(0, length - 1, stride)})
+                    .copyTo1DJavaArray();
+                blocks.add(decimated);
+                numberOfSamples += java.lang.reflect.Array
+                    .getLength(decimated);
+            }
+            // Now put the blocks together
+            Object data = java.lang.reflect.Array.newInstance(blocks.get(0)
+                .getClass().getComponentType(), numberOfSamples);
+            int position = 0;
+            for (Iterator i = blocks.iterator(); i.hasNext();) {
+                Object block = i.next();
+                int length = java.lang.reflect.Array.getLength(block);
+                System.arraycopy(block, 0, data, position, length);
+                position += length;
+            }
+            return data;
+        } catch (IOException e) {
+            logger.error("IOException caught: " + e.getMessage());
+        } catch (InvalidRangeException e) {
+            logger.error("InvalidRangeException caught: " + e.getMessage());
+        }
+        return null;
     }
 
     /**
@@ -286,15 +400,23 @@ public class TimeIndexedNetcdfAccess implements ITimeIndexedDataAccess {
     public Object[] getTime() {
 
         logger.debug("getTime called");
+        long[] values = getTimeValues();
+        Long[] timesToReturn = new Long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            timesToReturn[i] = new Long(values[i]);
+        }
+        return timesToReturn;
+    }
+
+    /**
+     * @see ITimeIndexedDataAccess#getTimeValues()
+     */
+    public long[] getTimeValues() {
         // Check to see if time needs to be initialized
-        if (times == null) {
+        if (timeValues == null) {
             initializeTime();
         }
-
-        // Get the array and return it (try to cast into array of Longs)
-        Object[] timesToReturn = times.toArray(new Long[times.size()]);
-
-        return timesToReturn;
+        return (long[]) timeValues.clone();
     }
 
     /**
@@ -308,67 +430,102 @@ public class TimeIndexedNetcdfAccess implements ITimeIndexedDataAccess {
      * @see ITimeIndexedDataAccess#getEndDate()
      */
     public Date getEndDate() {
-        return this.getEndDate();
+        return this.endDate;
     }
 
     /**
-     * A method to initialize the array of time objects from the netcdf file
+     * A method to find the section of the netcdf file that is inside the time
+     * window and read its times. The time variable has to be increasing (the
+     * data files SSDS writes are sorted by time), so the start and end of the
+     * window are found with binary searches that each read only a few single
+     * times instead of the whole variable.
      */
     private void initializeTime() {
 
         logger.debug("initializeTime called");
-        if (times == null) {
-            times = new ArrayList();
-            // Check for netcdf file
-            if (netcdfFile != null) {
-                // Lookup the netcdf variable of time
-                Variable timeVariable = netcdfFile.findVariable("time");
-                if (timeVariable != null) {
-                    Array timeArray = null;
-                    try {
-                        timeArray = timeVariable.read();
-                    } catch (IOException e) {
-                        logger
-                            .error("IOException caught while trying to read time:"
-                                + e.getMessage());
-                    }
-                    // Now copy over times to double array
-                    double[] doubleTimes = (double[]) timeArray
-                        .copyTo1DJavaArray();
-                    // Check if OK
-                    if (doubleTimes != null) {
-                        boolean startIndexFound = false;
-                        // Loop through double times to find section that is
-                        // valid
-                        // over range of start/end times that were specified
-                        for (int i = 0; i < doubleTimes.length; i++) {
-                            Calendar tempCal = Calendar.getInstance();
-                            tempCal.setTimeZone(TimeZone.getTimeZone("GMT"));
-                            tempCal
-                                .setTimeInMillis((new Double(doubleTimes[i]))
-                                    .longValue() * 1000);
-                            if ((tempCal.getTime().after(startDate) || tempCal
-                                .getTime().equals(startDate))
-                                && (tempCal.getTime().before(endDate) || tempCal
-                                    .getTime().equals(endDate))) {
-                                // Set the index flag to true
-                                if (!startIndexFound) {
-                                    startIndexFound = true;
-                                    startIndex = i;
-                                }
-                                endIndex = i;
-                                times
-                                    .add(new Long(tempCal.getTime().getTime()));
-                            }
-                        }
-                    }
-                } else {
-                    logger.error("Could not find time variable in netcdf file");
-                }
-            } else {
-                logger.error("netcdfFile is null!!!");
+        timeValues = new long[0];
+        windowLength = 0;
+        // Check for netcdf file
+        if (netcdfFile == null) {
+            logger.error("netcdfFile is null!!!");
+            return;
+        }
+        // Lookup the netcdf variable of time
+        Variable timeVariable = netcdfFile.findVariable("time");
+        if (timeVariable == null) {
+            logger.error("Could not find time variable in netcdf file");
+            return;
+        }
+        try {
+            int numberOfTimes = timeVariable.getShape()[0];
+            startIndex = findFirstIndexAtOrAfter(timeVariable, numberOfTimes,
+                startDate.getTime());
+            int afterEndIndex = findFirstIndexAtOrAfter(timeVariable,
+                numberOfTimes, endDate.getTime() + 1);
+            if (afterEndIndex <= startIndex)
+                return;
+            windowLength = afterEndIndex - startIndex;
+
+            // Now read the times in the window
+            double[] seconds = ColumnarRecordSink
+                .toDoubleArray(readWindow(timeVariable));
+            if (seconds == null) {
+                windowLength = 0;
+                return;
             }
+            timeValues = new long[seconds.length];
+            for (int i = 0; i < seconds.length; i++) {
+                timeValues[i] = toMillis(seconds[i]);
+                if ((i > 0) && (timeValues[i] < timeValues[i - 1]))
+                    logger.warn("The time variable in "
+                        + dataContainer.getUrl()
+                        + " is not in order, the window may not be right");
+            }
+            logger.debug("Time window is " + windowLength
+                + " samples starting at index " + startIndex + " of "
+                + numberOfTimes + " (" + timeValues.length
+                + " will be returned)");
+        } catch (IOException e) {
+            logger.error("IOException caught while trying to read time:"
+                + e.getMessage());
+            windowLength = 0;
+        } catch (InvalidRangeException e) {
+            logger.error("InvalidRangeException caught while trying "
+                + "to read time: " + e.getMessage());
+            windowLength = 0;
+        }
+    }
+
+    /**
+     * This method does a binary search of the time variable for the first
+     * time that is at or after the given time
+     * 
+     * @return the index of the time or the number of times if they are all
+     *         before it
+     */
+    private int findFirstIndexAtOrAfter(Variable timeVariable,
+        int numberOfTimes, long millis) throws IOException,
+        InvalidRangeException {
+        int low = 0;
+        int high = numberOfTimes;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            double seconds = timeVariable.read(new int[]{middle},
+                new int[]{1}).getIndexIterator().getDoubleNext();
+            if (toMillis(seconds) < millis)
+                low = middle + 1;
+            else
+                high = middle;
         }
+        return low;
+    }
+
+    /**
+     * This method converts the epoch seconds in the time variable to the
+     * epoch milliseconds that are returned (whole seconds only)
+     */
+    private static long toMillis(double seconds) {
+        return ((long) seconds) * 1000;
     }
 
     /**
@@ -410,20 +567,31 @@ public class TimeIndexedNetcdfAccess implements ITimeIndexedDataAccess {
     private final Date endDate;
 
     /**
-     * This is a <code>List</code> of the time objects that are associated
-     * with the corresponding data objects
+     * These are the times (epoch milliseconds) that are associated with the
+     * corresponding data values
      */
-    private List times = null;
+    private long[] timeValues = null;
 
     /**
-     * TODO KJG - Document this
+     * This is the index in the netcdf file of the first sample inside the
+     * time window
      */
     private int startIndex = 0;
 
     /**
-     * TODO KJG - Document this
+     * This is the number of samples in the netcdf file inside the time window
+     */
+    private int windowLength = 0;
+
+    /**
+     * This is the number of samples to move ahead for each one returned
+     */
+    private int stride = 1;
+
+    /**
+     * The number of samples read at a time when the data is decimated
      */
-    private int endIndex = 0;
+    private static final int READ_BLOCK_SIZE = 64 * 1024;
 
     /**
      * This is a <code>Map</code> that holds the
@@ -20,11 +20,8 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -32,6 +29,7 @@ import java.util.regex.Pattern;
 import javax.ejb.CreateException;
 import javax.naming.NamingException;
 
+import moos.ssds.data.parsers.ColumnarRecordSink;
 import moos.ssds.data.parsers.IParser;
 import moos.ssds.data.parsers.PacketParserContext;
 import moos.ssds.data.parsers.Parser;
@@ -88,8 +86,7 @@ public class TimeIndexedPacketAccess implements ITimeIndexedDataAccess {
     public Object[] getData(String recordVariableName) {
         // Loop through the list of record variables and find the one
         // that matches the given name and return its data.
-        Set rvs = mapRecordVariablesToData.keySet();
-        Iterator iterator = rvs.iterator();
+        Iterator iterator = recordVariables.iterator();
         while (iterator.hasNext()) {
             RecordVariable tempRV = (RecordVariable) iterator.next();
             if (tempRV.getName().equalsIgnoreCase(recordVariableName)) {
@@ -109,10 +106,53 @@ public class TimeIndexedPacketAccess implements ITimeIndexedDataAccess {
      *         values will result in the first occurence being used.
      */
     public Object[] getData(RecordVariable v) {
+        // Look for the matching record variable and return the data sorted
+        // based on time (duplicates are rejected, the first occurence is used)
+        RecordVariable matchingID = findRecordVariable(v);
+        if (matchingID != null) {
+            return sink.getObjectColumn(matchingID.getColumnIndex(),
+                sortOrder);
+        }
+        return null;
+    }
+
+    /**
+     * @see ITimeIndexedDataAccess#getPrimitiveData(RecordVariable)
+     */
+    public Object getPrimitiveData(RecordVariable v) {
+        RecordVariable matchingID = findRecordVariable(v);
+        if (matchingID != null) {
+            return sink
+                .getColumnArray(matchingID.getColumnIndex(), sortOrder);
+        }
+        return null;
+    }
+
+    /**
+     * @see ITimeIndexedDataAccess#getDoubleData(RecordVariable)
+     */
+    public double[] getDoubleData(RecordVariable v) {
+        RecordVariable matchingID = findRecordVariable(v);
+        if (matchingID != null) {
+            return sink.getDoubleColumn(matchingID.getColumnIndex(),
+                sortOrder);
+        }
+        return null;
+    }
+
+    /**
+     * This method finds the <code>RecordVariable</code> that data was loaded
+     * for that matches the given one (by ID first and then by name)
+     * 
+     * @param v
+     *            the <code>RecordVariable</code> to look for
+     * @return the matching <code>RecordVariable</code> or null if there is no
+     *         data for it
+     */
+    private RecordVariable findRecordVariable(RecordVariable v) {
         // Look for the matching record variable
         RecordVariable matchingID = null;
-        Set rvs = mapRecordVariablesToData.keySet();
-        Iterator iterator = rvs.iterator();
+        Iterator iterator = recordVariables.iterator();
         while (iterator.hasNext()) {
             RecordVariable tempRV = (RecordVariable) iterator.next();
             if (tempRV.getId().longValue() == v.getId().longValue()) {
@@ -122,7 +162,7 @@ public class TimeIndexedPacketAccess implements ITimeIndexedDataAccess {
         }
         // If matching ID was not found, try by name
         if (matchingID == null) {
-            iterator = rvs.iterator();
+            iterator = recordVariables.iterator();
             while (iterator.hasNext()) {
                 RecordVariable tempRV = (RecordVariable) iterator.next();
                 if (tempRV.getName().equalsIgnoreCase(v.getName())) {
@@ -132,18 +172,7 @@ public class TimeIndexedPacketAccess implements ITimeIndexedDataAccess {
             }
 
         }
-        // Return the data
-        if (mapRecordVariablesToData.containsKey(matchingID)) {
-            List dataList = (List) mapRecordVariablesToData.get(matchingID);
-            if (dataList == null) {
-                logger.error("dataList was null, this should never happen");
-            }
-            // Sort based on time. Reject duplicates (use first occurence)
-            Object[] out = (Object[]) dataList.toArray(new Object[dataList
-                .size()]);
-            return MathUtil.orderVector(out, sortOrder);
-        }
-        return null;
+        return matchingID;
     }
 
     /**
@@ -173,29 +202,23 @@ public class TimeIndexedPacketAccess implements ITimeIndexedDataAccess {
             throw new DataException(
                 "No device ID could be extracted from the DataContainer specified");
 
-        // The array list of times
-        times = new ArrayList();
-
-        // This loop is creating a new list for each variable in the
-        // datacontainer
+        // This loop is picking out the variables in the datacontainer to
+        // load the data for
+        recordVariables = new ArrayList();
         for (Iterator iter = getDataContainer().getRecordDescription()
             .getRecordVariables().iterator(); iter.hasNext();) {
-            Object obj = iter.next();
+            RecordVariable rv = (RecordVariable) iter.next();
             // Check to see if the collection of record variable names was
             // specified
             if ((this.recordVariableNames != null)
                 && (this.recordVariableNames.size() > 0)) {
-                // Cast to a record variable to check against name
-                RecordVariable rv = (RecordVariable) obj;
                 if (this.recordVariableNames.contains(rv.getName())) {
-                    mapRecordVariablesToData.put(obj, new ArrayList());
+                    recordVariables.add(rv);
                 }
             } else {
-                mapRecordVariablesToData.put(obj, new ArrayList());
+                recordVariables.add(rv);
             }
         }
-        // This is the map of data to record variables for a single record
-        Map packetMapRecordVariablesToData;
 
         // Next we need to pull the packets from the time range given
         TreeMap dataMap = null;
@@ -316,69 +339,47 @@ public class TimeIndexedPacketAccess implements ITimeIndexedDataAccess {
         // Set the collection of packets
         context.setSsdsDevicePackets(packets);
 
+        // The data is parsed straight into columns of primitives
+        sink = new ColumnarRecordSink(recordVariables, packets.size() + 1);
+
+        // I had to add this in to watch for null start and end dates (which
+        // is possible)
+        long tempStartTime = 0;
+        long tempEndTime = System.currentTimeMillis();
+        if (getStartDate() != null)
+            tempStartTime = getStartDate().getTime();
+        if (getEndDate() != null)
+            tempEndTime = getEndDate().getTime();
+
         // Load all data in a single pass
-        while (getParser().hasNext()) {
+        while (context.hasNext()) {
+            boolean parsed = false;
             try {
-                // map contains data as key = RecordVariable, value = data (as
-                // Object)
-                packetMapRecordVariablesToData = (Map) getParser().next();
+                parsed = context.next(sink);
             } catch (Exception e) {
                 logger
                     .debug("Failed to parse packet contents for DataContainer : "
                         + getDataContainer().toStringRepresentation(",")
                         + ": "
                         + e.getMessage());
+                sink.discardRecord();
                 continue;
             }
-            // Grab the packet information
-            Date packetDate = new Date(context.getCurrentSsdsDevicePacket()
-                .systemTime());
-            // Check to see if data is already there
-            int alreadyThere = times.indexOf(new Long(context
-                .getCurrentSsdsDevicePacket().systemTime()));
-
-            // I had to add this in to watch for null start and end dates (which
-            // is possible)
-            Date tempStartDate = new Date();
-            tempStartDate.setTime(0);
-            Date tempEndDate = new Date();
-            if (getStartDate() != null)
-                tempStartDate = getStartDate();
-            if (getEndDate() != null)
-                tempEndDate = getEndDate();
-
-            // If not, and it meets time criterion, add it
-            if ((alreadyThere == -1)
-                && (packetMapRecordVariablesToData != null)
-                && ((packetDate.after(tempStartDate) && packetDate
-                    .before(tempEndDate))
-                    || packetDate.equals(tempStartDate) || packetDate
-                    .equals(tempEndDate))) {
-                // Add the time from the packet
-                times.add(new Long(context.getCurrentSsdsDevicePacket()
-                    .systemTime()));
-                // Now add the data for each variable
-                for (Iterator iter = packetMapRecordVariablesToData.keySet()
-                    .iterator(); iter.hasNext();) {
-                    RecordVariable rv = (RecordVariable) iter.next();
-                    List vList = (List) mapRecordVariablesToData.get(rv);
-                    if (vList != null) {
-                        Object o = packetMapRecordVariablesToData.get(rv);
-                        if (o != null) {
-                            vList.add(o);
-                        } else {
-                            logger
-                                .error("object is null, trouble with record variable "
-                                    + rv.toStringRepresentation("|"));
-                            vList.add(null);
-                        }
-                    }
-                }
+            if (!parsed)
+                continue;
+
+            // Grab the packet time and if it meets the time criterion, keep
+            // it (duplicate times are taken care of by the sort)
+            long packetTime = context.getCurrentSsdsDevicePacket()
+                .systemTime();
+            if ((packetTime >= tempStartTime) && (packetTime <= tempEndTime)) {
+                sink.commitRecord(packetTime);
+            } else {
+                sink.discardRecord();
             }
         }
         // Set the sort order
-        sortOrder = MathUtil.uniqueSort((Long[]) times.toArray(new Long[times
-            .size()]));
+        sortOrder = MathUtil.uniqueSort(sink.getTimes());
     }
 
     /**
@@ -389,15 +390,28 @@ public class TimeIndexedPacketAccess implements ITimeIndexedDataAccess {
      *         getData();
      */
     public Object[] getTime() {
-        if (times == null) {
+        long[] timeValues = getTimeValues();
+        if (timeValues == null)
+            return null;
+        Long[] timesToReturn = new Long[timeValues.length];
+        for (int i = 0; i < timeValues.length; i++) {
+            timesToReturn[i] = new Long(timeValues[i]);
+        }
+        return timesToReturn;
+    }
+
+    /**
+     * @see moos.ssds.data.ITimeIndexedDataAccess#getTimeValues()
+     */
+    public long[] getTimeValues() {
+        if (sink == null) {
             try {
                 initializeData();
             } catch (DataException e) {
                 return null;
             }
         }
-        return MathUtil.orderVector((Long[]) times.toArray(new Long[times
-            .size()]), sortOrder);
+        return sink.getTimes(sortOrder);
     }
 
     /**
@@ -435,7 +449,7 @@ public class TimeIndexedPacketAccess implements ITimeIndexedDataAccess {
      * @see moos.ssds.data.IDataAccess#getRecordVariables()
      */
     public Collection getRecordVariables() {
-        return new ArrayList(this.mapRecordVariablesToData.keySet());
+        return new ArrayList(this.recordVariables);
     }
 
     /**
@@ -469,18 +483,16 @@ public class TimeIndexedPacketAccess implements ITimeIndexedDataAccess {
     private int[] sortOrder;
 
     /**
-     * This is a List of the time objects that are associated with the
-     * corresponding data objects
+     * This is the <code>List</code> of <code>RecordVariable</code>s that
+     * data is loaded for
      */
-    private List times = null;
+    private List recordVariables = new ArrayList();
 
     /**
-     * This is a <code>Map</code> that holds the
-     * <code>moos.ssds.model.RecordVariable</code> as the key and an array of
-     * <code>Number</code> s that are the data for that
-     * <code>RecordVariable</code>
+     * This is the <code>ColumnarRecordSink</code> that holds the times and
+     * the data (as primitives) for each of the record variables
      */
-    private final Map mapRecordVariablesToData = new HashMap();
+    private ColumnarRecordSink sink = null;
 
     /**
      * This is the IFileParser that will be used to parse the contents of the
@@ -16,13 +16,17 @@
 package moos.ssds.data.converters;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Properties;
 
 import moos.ssds.data.ITimeIndexedDataAccess;
 import moos.ssds.data.TimeIndexedDataAccessFactory;
@@ -48,6 +52,7 @@ import org.apache.log4j.Logger;
 import ucar.ma2.ArrayAbstract;
 import ucar.ma2.InvalidRangeException;
 import ucar.nc2.Dimension;
+import ucar.nc2.NetcdfFile;
 import ucar.nc2.NetcdfFileWriteable;
 
 /**
@@ -109,20 +114,34 @@ public class NetcdfConverter {
 
     /**
      * This is the method that is called to actually execute the creation of the
-     * NetCDF file
+     * NetCDF file. If the converter is incremental and the NetCDF file was
+     * written by an earlier run (with the same <code>RecordDescription</code>),
+     * only the records after the last one in the file are read and they are
+     * appended to the file. Otherwise the file is built from scratch.
      * 
      * @throws IOException
      */
     public void create() throws IOException {
 
+        logger.debug("Create called.");
+        this.appended = false;
+        this.recordOrigin = 0;
+
+        // See if the file that is already there can be appended to
+        Properties appendState = null;
+        if (this.incremental)
+            appendState = this.readAppendState();
+        Date startDate = null;
+        if (appendState != null)
+            startDate = new Date(this.lastTimeMillis + 1);
+
         // Try to create an ITimeIndexedDataAccess from the
         // <code>DataContainer</code>
-        logger.debug("Create called.");
         try {
             logger
                 .debug("Going to build TimeIndexedDataAccess for the DataContainer");
-            this.timeIndexedDataAccess = TimeIndexedDataAccessFactory
-                .getTimeIndexedDataAccess(this.dataContainer, null, null, null);
+            this.timeIndexedDataAccess = this
+                .createTimeIndexedDataAccess(startDate);
         } catch (DataException e) {
             logger
                 .debug("Could not create a time indexed data access for the NetCDF creator");
@@ -133,18 +152,43 @@ public class NetcdfConverter {
                     + e.getMessage());
         }
 
-        // If not able, create the parser
+        // If not able, create the parser (only whole files can be parsed)
         if (this.timeIndexedDataAccess == null) {
+            if (appendState != null) {
+                appendState = null;
+                logger.debug("Could not build a time indexed data access "
+                    + "for the new records, will rebuild the whole file");
+            }
             this.parser = new Parser(this.dataContainer);
         }
 
-        // Create or get the specified NetCDFWriteable
-        this.makeNetcdfFileWriteable();
+        if (appendState != null) {
+            // Open the existing file and pick up where it left off
+            this.netcdfWriteable = new NetcdfFileWriteable(this.netcdfFile
+                .getAbsolutePath());
+            this.restoreAppendState(appendState);
+            this.appended = true;
+            this.initLog();
+            appendLogText("Appending the records after "
+                + DATE_FORMAT.format(new Date(this.lastTimeMillis))
+                + " to the existing file (which had " + this.recordOrigin
+                + " records)");
+        } else {
+            // Start over with a new file
+            if (this.netcdfFile.exists())
+                this.netcdfFile.delete();
+            this.lastTimeMillis = Long.MIN_VALUE;
+            // Create or get the specified NetCDFWriteable
+            this.makeNetcdfFileWriteable();
+            this.initLog();
+        }
 
-        this.initLog();
         this.addData();
         netcdfWriteable.close();
 
+        // Remember where this run left off
+        this.writeAppendState();
+
         // Set the flag to indicate that the file was created
         this.fileCreated = true;
     }
@@ -284,6 +328,39 @@ public class NetcdfConverter {
         return fileCreated;
     }
 
+    /**
+     * These methods get and set whether the converter only appends the new
+     * records to a NetCDF file that is already there (if it can)
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return true if the last call to <code>create()</code> appended to the
+     *         existing file instead of building a new one
+     */
+    public boolean isAppended() {
+        return appended;
+    }
+
+    /**
+     * This method returns the file that keeps track of what has been written
+     * to the NetCDF file (so later runs can append to it). It should be kept
+     * (and copied) along with the NetCDF file.
+     * 
+     * @param netcdfFile
+     *            the NetCDF file
+     * @return the file the append state is kept in
+     */
+    public static File getAppendStateFile(File netcdfFile) {
+        return new File(netcdfFile.getAbsolutePath() + ".state");
+    }
+
     /**
      * This is the method that takes the data that is backing the
      * <code>DataContainer</code> reads it all in and writes it out the the
@@ -293,6 +370,19 @@ public class NetcdfConverter {
         // There are two cases here. Either we will be reading from the
         // ITimeIndexedDataAccess, or from the IParser
         if (timeIndexedDataAccess != null) {
+            // If appending, skip any records that are already in the file
+            long[] timeValues = timeIndexedDataAccess.getTimeValues();
+            int firstNewRecord = 0;
+            if (timeValues != null) {
+                while ((firstNewRecord < timeValues.length)
+                    && (timeValues[firstNewRecord] <= this.lastTimeMillis))
+                    firstNewRecord++;
+                if (timeValues.length > firstNewRecord)
+                    this.lastTimeMillis = timeValues[timeValues.length - 1];
+                appendLogText((timeValues.length - firstNewRecord)
+                    + " records will be written");
+            }
+
             // Now iterate over the RecordVariables
             Iterator rvIter = this.dataContainer.getRecordDescription()
                 .getRecordVariables().iterator();
@@ -301,6 +391,15 @@ public class NetcdfConverter {
                 RecordVariable rv = (RecordVariable) rvIter.next();
                 // Grab the array of data values for the RecordVariable
                 Object[] dataValues = timeIndexedDataAccess.getData(rv);
+                if ((dataValues != null) && (firstNewRecord > 0)) {
+                    Object[] newValues = new Object[Math.max(0,
+                        dataValues.length - firstNewRecord)];
+                    System.arraycopy(dataValues, Math.min(firstNewRecord,
+                        dataValues.length), newValues, 0, newValues.length);
+                    dataValues = newValues;
+                }
+                if ((dataValues == null) || (dataValues.length == 0))
+                    continue;
 
                 // Write the values
                 try {
@@ -316,6 +415,22 @@ public class NetcdfConverter {
         }
     }
 
+    /**
+     * This method builds the <code>ITimeIndexedDataAccess</code> that the
+     * records are read from
+     * 
+     * @param startDate
+     *            the date of the first record to read (null to read them all)
+     * @return the data access or null if the <code>DataContainer</code> is not
+     *         indexed by time
+     * @throws DataException
+     */
+    protected ITimeIndexedDataAccess createTimeIndexedDataAccess(Date startDate)
+        throws DataException {
+        return TimeIndexedDataAccessFactory.getTimeIndexedDataAccess(
+            this.dataContainer, startDate, null, null);
+    }
+
     /**
      * This method checks to see if the URL specified in the dataContainer
      * actually has a file at the end of it
@@ -332,6 +447,9 @@ public class NetcdfConverter {
         URL dcUrl = dataContainer.getUrl();
         if (dcUrl == null)
             return false;
+        // A local file can be checked directly
+        if (dcUrl.getProtocol().equals("file"))
+            return new File(dcUrl.getPath()).exists();
         // Setup the HTTP connection
         HttpURLConnection conn = null;
         try {
@@ -569,10 +687,16 @@ public class NetcdfConverter {
     private void write(RecordVariable recordVariable, Object[] dataValues)
         throws IOException, InvalidRangeException {
 
-        // First check length against number of records
+        // Nothing to write
+        if ((dataValues == null) || (dataValues.length == 0))
+            return;
+
+        // First check length against number of records (the values are
+        // written after any records that are already in the file)
+        long recordsAfterWrite = recordOrigin + dataValues.length;
         if ((numberOfRecords == null)
-            || (dataValues.length > numberOfRecords.longValue())) {
-            numberOfRecords = new Long(dataValues.length);
+            || (recordsAfterWrite > numberOfRecords.longValue())) {
+            numberOfRecords = new Long(recordsAfterWrite);
         }
 
         // First set a flag to indicate if the RV is a geospatial RV
@@ -611,15 +735,15 @@ public class NetcdfConverter {
                 for (int i = 0; i < dataValues.length; i++) {
                     byteArray[i] = ((Byte) dataValues[i]).byteValue();
                 }
-                netcdfWriteable.write(recordVariable.getName(), ArrayAbstract
-                    .factory(byteArray));
+                netcdfWriteable.write(recordVariable.getName(),
+                    new int[]{recordOrigin}, ArrayAbstract.factory(byteArray));
             } else if (number instanceof Short) {
                 short[] shortArray = new short[dataValues.length];
                 for (int i = 0; i < dataValues.length; i++) {
                     shortArray[i] = ((Short) dataValues[i]).shortValue();
                 }
-                netcdfWriteable.write(recordVariable.getName(), ArrayAbstract
-                    .factory(shortArray));
+                netcdfWriteable.write(recordVariable.getName(),
+                    new int[]{recordOrigin}, ArrayAbstract.factory(shortArray));
             } else if (number instanceof Integer) {
                 int minInt = Integer.MAX_VALUE;
                 int maxInt = -1 * Integer.MAX_VALUE;
@@ -637,8 +761,8 @@ public class NetcdfConverter {
                     }
                 }
                 // Write to NetCDF file
-                netcdfWriteable.write(recordVariable.getName(), ArrayAbstract
-                    .factory(intArray));
+                netcdfWriteable.write(recordVariable.getName(),
+                    new int[]{recordOrigin}, ArrayAbstract.factory(intArray));
 
                 // Calculate stats if needed
                 if (geospatialRV) {
@@ -682,8 +806,8 @@ public class NetcdfConverter {
                     }
                 }
                 // Write to NetCDF File
-                netcdfWriteable.write(recordVariable.getName(), ArrayAbstract
-                    .factory(longArray));
+                netcdfWriteable.write(recordVariable.getName(),
+                    new int[]{recordOrigin}, ArrayAbstract.factory(longArray));
 
                 // Calculate stats if needed
                 if (geospatialRV) {
@@ -730,8 +854,8 @@ public class NetcdfConverter {
                     }
                 }
                 // Write to NetCDF File
-                netcdfWriteable.write(recordVariable.getName(), ArrayAbstract
-                    .factory(floatArray));
+                netcdfWriteable.write(recordVariable.getName(),
+                    new int[]{recordOrigin}, ArrayAbstract.factory(floatArray));
 
                 // Calculate stats if needed
                 if (geospatialRV) {
@@ -805,8 +929,8 @@ public class NetcdfConverter {
                     }
                 }
                 // Write to NetCDF file
-                netcdfWriteable.write(recordVariable.getName(), ArrayAbstract
-                    .factory(doubleArray));
+                netcdfWriteable.write(recordVariable.getName(),
+                    new int[]{recordOrigin}, ArrayAbstract.factory(doubleArray));
 
                 // Calculate stats if needed
                 if (geospatialRV) {
@@ -818,22 +942,220 @@ public class NetcdfConverter {
             }
         }
 
-        // Now if this was a geospatial variable, record the extents
-        if (geospatialRV) {
+        // Now if this was a geospatial variable, record the extents (combined
+        // with the extents of the records already in the file)
+        if (geospatialRV && (minValue != null)) {
             if (recordVariable.getName().equalsIgnoreCase("latitude")) {
-                minLatitude = minValue;
-                maxLatitude = maxValue;
-                meanLatitude = meanValue;
+                Number[] extents = mergeExtents(minLatitude, maxLatitude,
+                    meanLatitude, minValue, maxValue, meanValue,
+                    dataValues.length);
+                minLatitude = extents[0];
+                maxLatitude = extents[1];
+                meanLatitude = extents[2];
             } else if (recordVariable.getName().equalsIgnoreCase("longitude")) {
-                minLongitude = minValue;
-                maxLongitude = maxValue;
-                meanLongitude = meanValue;
+                Number[] extents = mergeExtents(minLongitude, maxLongitude,
+                    meanLongitude, minValue, maxValue, meanValue,
+                    dataValues.length);
+                minLongitude = extents[0];
+                maxLongitude = extents[1];
+                meanLongitude = extents[2];
             } else if (recordVariable.getName().equalsIgnoreCase("depth")) {
-                minDepth = minValue;
-                maxDepth = maxValue;
-                meanDepth = meanValue;
+                Number[] extents = mergeExtents(minDepth, maxDepth, meanDepth,
+                    minValue, maxValue, meanValue, dataValues.length);
+                minDepth = extents[0];
+                maxDepth = extents[1];
+                meanDepth = extents[2];
+            }
+        }
+    }
+
+    /**
+     * This method combines the extents of the records that were already in
+     * the file (if appending) with the extents of the records just written
+     * 
+     * @return an array of the minimum, maximum and mean
+     */
+    private Number[] mergeExtents(Number oldMin, Number oldMax,
+        Number oldMean, Number newMin, Number newMax, Number newMean,
+        int numberOfNewRecords) {
+        if ((recordOrigin == 0) || (oldMin == null) || (oldMax == null)
+            || (oldMean == null))
+            return new Number[]{newMin, newMax, newMean};
+        Number min = (oldMin.doubleValue() <= newMin.doubleValue()) ? oldMin
+            : newMin;
+        Number max = (oldMax.doubleValue() >= newMax.doubleValue()) ? oldMax
+            : newMax;
+        double mean = ((oldMean.doubleValue() * recordOrigin) + (newMean
+            .doubleValue() * numberOfNewRecords))
+            / (recordOrigin + numberOfNewRecords);
+        return new Number[]{min, max, new Double(mean)};
+    }
+
+    /**
+     * This method reads the state that was written with the NetCDF file the
+     * last time and checks that the new records can be appended to it: the
+     * file has to have a time dimension with the number of records in the
+     * state and the <code>RecordDescription</code> cannot have changed.
+     * 
+     * @return the state or null if the file has to be rebuilt
+     */
+    private Properties readAppendState() {
+        File stateFile = getAppendStateFile(this.netcdfFile);
+        if ((!this.netcdfFile.exists()) || (!stateFile.exists()))
+            return null;
+        Properties appendState = new Properties();
+        try {
+            FileInputStream inputStream = new FileInputStream(stateFile);
+            appendState.load(inputStream);
+            inputStream.close();
+        } catch (IOException e) {
+            logger.error("IOException caught trying to read the append state "
+                + stateFile.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+
+        // The variables have to be the same
+        if (!this.getRecordDescriptionSignature().equals(
+            appendState.getProperty("recordDescriptionSignature"))) {
+            logger.debug("The RecordDescription changed, the NetCDF file "
+                + "will be rebuilt");
+            return null;
+        }
+
+        // And the file has to have what the state says was written to it
+        try {
+            this.lastTimeMillis = Long.parseLong(appendState
+                .getProperty("lastTimeMillis"));
+            long recordsInState = Long.parseLong(appendState
+                .getProperty("numberOfRecords"));
+            NetcdfFile existingFile = new NetcdfFile(this.netcdfFile
+                .getAbsolutePath());
+            Dimension timeDimension = existingFile.findDimension("time");
+            long recordsInFile = (timeDimension == null) ? -1
+                : timeDimension.getLength();
+            existingFile.close();
+            if (recordsInFile != recordsInState) {
+                logger.debug("The NetCDF file has " + recordsInFile
+                    + " time records but " + recordsInState
+                    + " were written, the NetCDF file will be rebuilt");
+                return null;
             }
+        } catch (NumberFormatException e) {
+            logger.error("Could not read the append state: " + e.getMessage());
+            return null;
+        } catch (IOException e) {
+            logger.error("IOException caught trying to open the existing "
+                + "NetCDF file: " + e.getMessage());
+            return null;
         }
+        return appendState;
+    }
+
+    /**
+     * This method sets up the counts and extents from the state of the file
+     * that is being appended to
+     */
+    private void restoreAppendState(Properties appendState) {
+        this.numberOfRecords = getLongState(appendState, "numberOfRecords");
+        this.recordOrigin = this.numberOfRecords.intValue();
+        this.startEMilliSecs = getLongState(appendState, "startEMilliSecs");
+        this.endEMilliSecs = getLongState(appendState, "endEMilliSecs");
+        this.minLatitude = getDoubleState(appendState, "minLatitude");
+        this.maxLatitude = getDoubleState(appendState, "maxLatitude");
+        this.meanLatitude = getDoubleState(appendState, "meanLatitude");
+        this.minLongitude = getDoubleState(appendState, "minLongitude");
+        this.maxLongitude = getDoubleState(appendState, "maxLongitude");
+        this.meanLongitude = getDoubleState(appendState, "meanLongitude");
+        this.minDepth = getDoubleState(appendState, "minDepth");
+        this.maxDepth = getDoubleState(appendState, "maxDepth");
+        this.meanDepth = getDoubleState(appendState, "meanDepth");
+    }
+
+    /**
+     * This method writes out the state of the NetCDF file so the next run
+     * can append to it. Files that are not indexed by time cannot be appended
+     * to so any old state is removed.
+     */
+    private void writeAppendState() {
+        File stateFile = getAppendStateFile(this.netcdfFile);
+        if ((this.timeIndexedDataAccess == null)
+            || (this.numberOfRecords == null)) {
+            if (stateFile.exists())
+                stateFile.delete();
+            return;
+        }
+        Properties appendState = new Properties();
+        appendState.setProperty("recordDescriptionSignature", this
+            .getRecordDescriptionSignature());
+        appendState.setProperty("lastTimeMillis", String
+            .valueOf(this.lastTimeMillis));
+        setState(appendState, "numberOfRecords", this.numberOfRecords);
+        setState(appendState, "startEMilliSecs", this.startEMilliSecs);
+        setState(appendState, "endEMilliSecs", this.endEMilliSecs);
+        setState(appendState, "minLatitude", this.minLatitude);
+        setState(appendState, "maxLatitude", this.maxLatitude);
+        setState(appendState, "meanLatitude", this.meanLatitude);
+        setState(appendState, "minLongitude", this.minLongitude);
+        setState(appendState, "maxLongitude", this.maxLongitude);
+        setState(appendState, "meanLongitude", this.meanLongitude);
+        setState(appendState, "minDepth", this.minDepth);
+        setState(appendState, "maxDepth", this.maxDepth);
+        setState(appendState, "meanDepth", this.meanDepth);
+        try {
+            FileOutputStream outputStream = new FileOutputStream(stateFile);
+            appendState.store(outputStream, "State of "
+                + this.netcdfFile.getName() + " for appending new records");
+            outputStream.close();
+        } catch (IOException e) {
+            logger.error("IOException caught trying to write the append "
+                + "state " + stateFile.getAbsolutePath() + ": "
+                + e.getMessage());
+        }
+    }
+
+    /**
+     * This method builds a signature (an MD5 hash) of the variables in the
+     * <code>RecordDescription</code> so a change to them can be found
+     */
+    private String getRecordDescriptionSignature() {
+        StringBuffer description = new StringBuffer();
+        Iterator rvIter = this.dataContainer.getRecordDescription()
+            .getRecordVariables().iterator();
+        while (rvIter.hasNext()) {
+            RecordVariable rv = (RecordVariable) rvIter.next();
+            description.append(rv.getName() + "|" + rv.getFormat() + "|"
+                + rv.getUnits() + "|" + rv.getLongName() + "|"
+                + rv.getMissingValue() + "|" + rv.getColumnIndex() + "\n");
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("MD5").digest(
+                description.toString().getBytes("UTF-8"));
+            StringBuffer hex = new StringBuffer();
+            for (int i = 0; i < hash.length; i++) {
+                hex.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(hash[i] & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            // No hash, so fall back to the description itself
+            return description.toString();
+        }
+    }
+
+    private static void setState(Properties appendState, String name,
+        Number value) {
+        if (value != null)
+            appendState.setProperty(name, value.toString());
+    }
+
+    private static Long getLongState(Properties appendState, String name) {
+        String value = appendState.getProperty(name);
+        return (value == null) ? null : new Long(value);
+    }
+
+    private static Double getDoubleState(Properties appendState, String name) {
+        String value = appendState.getProperty(name);
+        return (value == null) ? null : new Double(value);
     }
 
     /**
@@ -891,6 +1213,21 @@ public class NetcdfConverter {
      */
     private boolean fileCreated = false;
 
+    /**
+     * If this is true, new records are appended to the NetCDF file from the
+     * last run (if it can be) and appended is set if they were
+     */
+    private boolean incremental = false;
+    private boolean appended = false;
+
+    /**
+     * The index in the NetCDF file where the records are written (the number
+     * of records that were already there) and the time of the last record
+     * written to the file (epoch milliseconds)
+     */
+    private int recordOrigin = 0;
+    private long lastTimeMillis = Long.MIN_VALUE;
+
     /**
      * This is a map that can be used to link up names to data types
      */
@@ -15,7 +15,6 @@
  */
 package moos.ssds.data.parsers;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -65,50 +64,58 @@ public class AsciiFileContext extends ParserContext {
     public Object next() {
         // The Map that will eventually be returned
         Map data = null;
-        // Create a ByteArrayOutputStream so we can just write out the data
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        // Read in bytes till the record terminator is found
-        try {
-            // Create holder for the next byte to be read
-            byte[] nextByte = new byte[1];
-            // Create a byte array that will hold the same amount of bytes
-            // as the record terminator that is defined in the RecordDescription
-            byte[] slidingBuffer = new byte[recordTerminator.getBytes().length];
-            // Now keep reading
-            while (!this.eofFound) {
-                // Read in a byte
-                int readResult = in.read(nextByte);
-                // If less than zero, end of file was found so bail out
-                if (readResult < 0) {
-                    this.eofFound = true;
-                    return null;
-                }
-
-                // Slide the bytes down and add the new one
-                for (int i = 0; i < (slidingBuffer.length - 1); i++) {
-                    slidingBuffer[i] = slidingBuffer[i + 1];
-                }
-                // Now write the new byte to the end of the sliding buffer
-                slidingBuffer[slidingBuffer.length - 1] = nextByte[0];
-                // Write it to the output stream
-                bos.write(nextByte);
-                // Check to see if record terminator was hit
-                if (new String(slidingBuffer).equals(recordTerminator)) {
-                    break;
-                }
-            }
-        } catch (IOException e) {
-            logger.error("IOException caught: " + e.getMessage());
-        }
+        // Find the next record
+        if (!readRecord())
+            return null;
         // OK, so now I should have a line from the file, map it!
         try {
-            data = recordParser.parse(bos.toByteArray());
+            data = asciiRecordParser.parse(splitter.getBuffer(), splitter
+                .getRecordOffset(), splitter.getRecordLength());
         } catch (ParsingException e1) {
             appendLogtext("ParsingException caught: " + e1.getMessage());
         }
         return data;
     }
 
+    /**
+     * @see ParserContext#next(ColumnarRecordSink)
+     */
+    public boolean next(ColumnarRecordSink sink) {
+        // Find the next record
+        if (!readRecord())
+            return false;
+        try {
+            asciiRecordParser.parse(splitter.getBuffer(), splitter
+                .getRecordOffset(), splitter.getRecordLength(), sink);
+        } catch (ParsingException e1) {
+            appendLogtext("ParsingException caught: " + e1.getMessage());
+            sink.discardRecord();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This method moves the splitter on to the next record. The record
+     * (including the terminator) is left in the buffer of the splitter so it
+     * can be parsed from there.
+     * 
+     * @return true if a record was found or false if the end of the file was
+     *         found
+     */
+    private boolean readRecord() {
+        if (this.eofFound || (splitter == null))
+            return false;
+        try {
+            if (splitter.nextRecord())
+                return true;
+        } catch (IOException e) {
+            logger.error("IOException caught: " + e.getMessage());
+        }
+        this.eofFound = true;
+        return false;
+    }
+
     /**
      * This method sets the <code>DataContainer</code> that will be used for
      * the metadata to parse the file and sets up the associated record parser.
@@ -138,8 +145,9 @@ public class AsciiFileContext extends ParserContext {
         super.setSource(source);
 
         // Setup the correct record parser
-        this.setRecordParser(new AsciiRecordParser(source
-            .getRecordDescription()));
+        asciiRecordParser = new AsciiRecordParser(source
+            .getRecordDescription());
+        this.setRecordParser(asciiRecordParser);
 
         // If the record terminator is supplied, assign it, otherwise try to use
         // newline
@@ -153,9 +161,11 @@ public class AsciiFileContext extends ParserContext {
 
         // TODO Right now assuming I can use a buffer reader to read the ASCII
         // file
+        splitter = null;
         try {
             URL url = source.getUrl();
             in = url.openStream();
+            splitter = new RecordSplitter(in, recordTerminator.getBytes());
             skipHeader();
         } catch (Exception ex) {
             logger.error("Could not open input stream from URL: "
@@ -183,6 +193,17 @@ public class AsciiFileContext extends ParserContext {
      */
     private InputStream in = null;
 
+    /**
+     * The splitter that reads the stream in blocks and finds the records
+     */
+    private RecordSplitter splitter = null;
+
+    /**
+     * The record parser (kept as an <code>AsciiRecordParser</code> so the
+     * records can be parsed right out of the buffer of the splitter)
+     */
+    private AsciiRecordParser asciiRecordParser = null;
+
     /**
      * This boolean tracks whether or not the end of the InputStream was found
      */
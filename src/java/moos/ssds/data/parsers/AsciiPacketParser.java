@@ -66,19 +66,43 @@ public class AsciiPacketParser extends PacketParser {
         try {
             out = parser.parse(ssdsDevicePacket.getDataBuffer());
         } catch (ParsingException e) {
-            Date timestamp = new Date();
-            timestamp.setTime(ssdsDevicePacket.systemTime());
-            StringBuffer parseExceptionMessage = new StringBuffer();
-            parseExceptionMessage.append("ParsingException caught: "
-                + e.getMessage() + "\n");
-            parseExceptionMessage.append("PacketInfo: Date=" + timestamp
-                + ", DeviceID= " + ssdsDevicePacket.sourceID()
-                + ", SequenceNumber=" + ssdsDevicePacket.sequenceNo());
-            throw new ParsingException(parseExceptionMessage.toString());
+            throw packetParsingException(ssdsDevicePacket, e);
         }
         return out;
     }
 
+    /**
+     * This method parses the data buffer of the packet straight into the
+     * <code>ColumnarRecordSink</code>
+     * 
+     * @see PacketParser#parse(SSDSDevicePacket, ColumnarRecordSink)
+     */
+    public void parse(SSDSDevicePacket ssdsDevicePacket, ColumnarRecordSink sink)
+        throws ParsingException {
+        try {
+            parser.parse(ssdsDevicePacket.getDataBuffer(), sink);
+        } catch (ParsingException e) {
+            throw packetParsingException(ssdsDevicePacket, e);
+        }
+    }
+
+    /**
+     * This method adds the packet information to the message of a
+     * <code>ParsingException</code>
+     */
+    private ParsingException packetParsingException(
+        SSDSDevicePacket ssdsDevicePacket, ParsingException e) {
+        Date timestamp = new Date();
+        timestamp.setTime(ssdsDevicePacket.systemTime());
+        StringBuffer parseExceptionMessage = new StringBuffer();
+        parseExceptionMessage.append("ParsingException caught: "
+            + e.getMessage() + "\n");
+        parseExceptionMessage.append("PacketInfo: Date=" + timestamp
+            + ", DeviceID= " + ssdsDevicePacket.sourceID()
+            + ", SequenceNumber=" + ssdsDevicePacket.sequenceNo());
+        return new ParsingException(parseExceptionMessage.toString());
+    }
+
     /**
      * This is the RecordParser that will be used to parse the actual record
      * contents.
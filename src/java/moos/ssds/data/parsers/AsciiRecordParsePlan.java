@@ -0,0 +1,887 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.data.parsers;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import moos.ssds.metadata.RecordDescription;
+import moos.ssds.metadata.RecordVariable;
+
+/**
+ * <p>
+ * This class is the &quot;compiled&quot; form of a
+ * <code>RecordDescription</code> that is used by the
+ * <code>AsciiRecordParser</code>. All the work that only depends on the
+ * metadata (compiling the regular expressions, resolving the separator,
+ * column indexes and the types of each <code>RecordVariable</code>) is done
+ * once when the plan is created, so that parsing a record is just a scan over
+ * the bytes to find where each value starts and ends, followed by the
+ * conversion of each value.
+ * </p>
+ * <p>
+ * The parsing rules are the same as the original string based parser (the
+ * record is trimmed and split with the buffer item separator the same way
+ * <code>String.split</code> does, or matched against the record parse regular
+ * expression, each value is trimmed, run through its own regular expression and
+ * a leading plus sign is removed), but no intermediate strings are created
+ * except for the values that end up as <code>String</code>s or floating point
+ * numbers.
+ * </p>
+ * <p>
+ * A plan keeps scratch space and <code>Matcher</code>s around between records
+ * so it is NOT thread safe (neither is the parser that owns it).
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class AsciiRecordParsePlan {
+
+    /**
+     * These are the different ways the values can be converted
+     */
+    public static final int CONVERT_SKIP = 0;
+    public static final int CONVERT_STRING = 1;
+    public static final int CONVERT_BYTE = 2;
+    public static final int CONVERT_SHORT = 3;
+    public static final int CONVERT_INT = 4;
+    public static final int CONVERT_LONG = 5;
+    public static final int CONVERT_FLOAT = 6;
+    public static final int CONVERT_DOUBLE = 7;
+    public static final int CONVERT_FAIL = 8;
+
+    /**
+     * These are the different ways the record can be split into values
+     */
+    public static final int SPLIT_WHITESPACE = 0;
+    public static final int SPLIT_LITERAL = 1;
+    public static final int SPLIT_REGEXP = 2;
+    public static final int SPLIT_RECORD_REGEXP = 3;
+
+    /**
+     * These are the characters that make a separator a regular expression
+     * instead of a literal (same list <code>String.split</code> uses)
+     */
+    private static final String REGEXP_META_CHARACTERS = ".$|()[{^?*+\\";
+
+    /**
+     * This constructor compiles the plan for the given
+     * <code>RecordDescription</code>
+     *
+     * @param recordDescription
+     *            the <code>RecordDescription</code> that describes the
+     *            records that will be parsed
+     */
+    public AsciiRecordParsePlan(RecordDescription recordDescription) {
+        this.recordDescription = recordDescription;
+
+        // Figure out how the record is going to be broken into values
+        if ((recordDescription.getRecordParseRegExp() != null)
+            && (!recordDescription.getRecordParseRegExp().equals(""))) {
+            splitMode = SPLIT_RECORD_REGEXP;
+            splitMatcher = Pattern.compile(
+                recordDescription.getRecordParseRegExp()).matcher("");
+        } else {
+            // Find the buffer item seperator and check for the aliases
+            String bufferSep = recordDescription.getBufferItemSeparator();
+            if (bufferSep == null || bufferSep.equals(" ")
+                || bufferSep.equals("space") || bufferSep.equals("tab")
+                || bufferSep.equals("whitespace") || bufferSep.equals("")) {
+                splitMode = SPLIT_WHITESPACE;
+            } else if (bufferSep.equals("comma")) {
+                splitMode = SPLIT_LITERAL;
+                separator = ",";
+            } else if (isLiteral(bufferSep)) {
+                splitMode = SPLIT_LITERAL;
+                separator = bufferSep;
+            } else {
+                splitMode = SPLIT_REGEXP;
+                splitMatcher = Pattern.compile(bufferSep).matcher("");
+            }
+        }
+
+        // Now resolve everything about the variables
+        Collection recordVariables = recordDescription.getRecordVariables();
+        numVariables = (recordVariables == null) ? 0 : recordVariables.size();
+        variables = new RecordVariable[numVariables];
+        columnIndexes = new int[numVariables];
+        converters = new int[numVariables];
+        valueMatchers = new Matcher[numVariables];
+        compileMessages = new String[numVariables];
+        valueStarts = new int[numVariables];
+        valueEnds = new int[numVariables];
+        int index = 0;
+        if (recordVariables != null) {
+            Iterator i = recordVariables.iterator();
+            while (i.hasNext()) {
+                RecordVariable v = (RecordVariable) i.next();
+                variables[index] = v;
+                columnIndexes[index] = ((int) v.getColumnIndex()) - 1;
+                converters[index] = resolveConverter(v.getFormat());
+                if ((v.getParseRegExp() != null)
+                    && (v.getParseRegExp().compareTo("") != 0)) {
+                    try {
+                        valueMatchers[index] = Pattern.compile(
+                            v.getParseRegExp()).matcher("");
+                    } catch (Exception ex) {
+                        compileMessages[index] = "Could not compile data pattern: "
+                            + v.getParseRegExp() + "\n";
+                    }
+                }
+                index++;
+            }
+        }
+    }
+
+    /**
+     * This method returns true if the plan was compiled for the given
+     * <code>RecordDescription</code> and it still has the same number of
+     * variables
+     */
+    public boolean isCompiledFor(RecordDescription recordDescription) {
+        if (recordDescription != this.recordDescription)
+            return false;
+        Collection recordVariables = recordDescription.getRecordVariables();
+        return ((recordVariables == null) ? 0 : recordVariables.size()) == numVariables;
+    }
+
+    /**
+     * @return the <code>RecordDescription</code> this plan was compiled for
+     */
+    public RecordDescription getRecordDescription() {
+        return recordDescription;
+    }
+
+    /**
+     * @return how the record is split into values (one of the SPLIT_*
+     *         constants)
+     */
+    public int getSplitMode() {
+        return splitMode;
+    }
+
+    /**
+     * This method takes a data record and parses it into a <code>Map</code>
+     * of <code>RecordVariable</code>s as keys and data as values.
+     *
+     * @param record
+     *            the bytes that contain the record
+     * @param offset
+     *            where the record starts in the array
+     * @param length
+     *            the number of bytes in the record
+     * @param parseMessages
+     *            the buffer that messages about the parsing are appended to
+     * @return the <code>Map</code> of parsed data
+     * @throws ParsingException
+     *             if the record did not have the right number of values
+     */
+    public Map parse(byte[] record, int offset, int length,
+        StringBuffer parseMessages) throws ParsingException {
+        Map parsedData = new HashMap(numVariables * 2);
+        parse(record, offset, length, parsedData, null, parseMessages);
+        return parsedData;
+    }
+
+    /**
+     * This method is the same as the one that returns a <code>Map</code>,
+     * but the values are written into the current record of the
+     * <code>ColumnarRecordSink</code> (by the column index of each
+     * <code>RecordVariable</code>) so nothing is boxed. The caller is
+     * responsible for committing or discarding the record.
+     *
+     * @param record
+     *            the bytes that contain the record
+     * @param offset
+     *            where the record starts in the array
+     * @param length
+     *            the number of bytes in the record
+     * @param sink
+     *            the <code>ColumnarRecordSink</code> to write the values to
+     * @param parseMessages
+     *            the buffer that messages about the parsing are appended to
+     * @throws ParsingException
+     *             if the record did not have the right number of values
+     */
+    public void parse(byte[] record, int offset, int length,
+        ColumnarRecordSink sink, StringBuffer parseMessages)
+        throws ParsingException {
+        parse(record, offset, length, null, sink, parseMessages);
+    }
+
+    /**
+     * This is the method that does the actual parsing into either a
+     * <code>Map</code> or a <code>ColumnarRecordSink</code>
+     */
+    private void parse(byte[] record, int offset, int length, Map parsedData,
+        ColumnarRecordSink sink, StringBuffer parseMessages)
+        throws ParsingException {
+
+        // Build something we can scan and match against. If the record is
+        // plain ASCII (the normal case) the bytes are used directly,
+        // otherwise they are decoded like the original parser did.
+        CharSequence chars = null;
+        boolean ascii = true;
+        for (int i = offset; i < offset + length; i++) {
+            if (record[i] < 0) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            byteSequence.wrap(record, offset, length);
+            chars = byteSequence;
+        } else {
+            chars = new String(record, offset, length);
+        }
+
+        // Trim the record
+        int start = 0;
+        int end = chars.length();
+        while ((start < end) && (chars.charAt(start) <= ' '))
+            start++;
+        while ((start < end) && (chars.charAt(end - 1) <= ' '))
+            end--;
+
+        // Find the values
+        int numValues = 0;
+        if (splitMode == SPLIT_RECORD_REGEXP) {
+            numValues = matchRecord(chars, start, end);
+        } else {
+            numValues = splitRecord(chars, start, end);
+        }
+
+        // Check for weird conditions
+        if (numValues > numVariables) {
+            parseMessages
+                .append("Something went wrong in parsing, there are supposed to be "
+                    + numVariables
+                    + " values, but "
+                    + numValues
+                    + " were found, SSDS will only pay attention to the first "
+                    + numVariables + " values.\n");
+            parseMessages.append("RecordDescription-->"
+                + this.recordDescription.toStringRepresentation("|") + "\n");
+            throw new ParsingException(
+                "Something went wrong in parsing, there are supposed to be "
+                    + numVariables + " values, but " + numValues
+                    + " were found.  SSDS will NOT try to parse this record");
+        }
+        if (numValues < numVariables) {
+            parseMessages
+                .append("There were fewer values found in the record than was expected (there was "
+                    + numValues
+                    + " and there should have been "
+                    + numVariables + "\n");
+            parseMessages.append("RecordDescription-->"
+                + this.recordDescription.toStringRepresentation("|") + "\n");
+            throw new ParsingException(
+                "Could not read enough values from the record string");
+        }
+
+        // Now convert each of the variables
+        for (int i = 0; i < numVariables; i++) {
+            RecordVariable v = variables[i];
+            int column = columnIndexes[i];
+            if ((column < 0) || (column >= numVariables))
+                throw new ParsingException("Unable to parse data from "
+                    + chars.toString());
+
+            // A negative start means the value was not found
+            int valueStart = valueStarts[column];
+            int valueEnd = valueEnds[column];
+            if (valueStart < 0)
+                continue;
+
+            // Trim off any whitespace
+            while ((valueStart < valueEnd)
+                && (chars.charAt(valueStart) <= ' '))
+                valueStart++;
+            while ((valueStart < valueEnd)
+                && (chars.charAt(valueEnd - 1) <= ' '))
+                valueEnd--;
+
+            if (converters[i] == CONVERT_SKIP) {
+                parseMessages.append("Skipped variable " + v.getName()
+                    + " due to no format\n");
+                continue;
+            }
+            if (converters[i] == CONVERT_FAIL)
+                throw new ParsingException("Unable to parse data from "
+                    + chars.toString());
+            if (compileMessages[i] != null)
+                parseMessages.append(compileMessages[i]);
+
+            // Try to pattern grab the actual value if there is a pattern
+            Matcher m = valueMatchers[i];
+            if (m != null) {
+                m.reset(chars);
+                m.region(valueStart, valueEnd);
+                if (m.matches()) {
+                    if ((m.groupCount() < 1) || (m.start(1) < 0))
+                        throw new ParsingException("Unable to parse data from "
+                            + chars.toString());
+                    valueStart = m.start(1);
+                    valueEnd = m.end(1);
+                }
+            }
+
+            // If the value starts with a plus, strip it off
+            if ((valueStart < valueEnd) && (chars.charAt(valueStart) == '+'))
+                valueStart++;
+
+            convert(v, converters[i], chars, valueStart, valueEnd, parsedData,
+                sink, parseMessages);
+        }
+    }
+
+    /**
+     * This method converts a single value and puts it in the map (or sink)
+     */
+    private void convert(RecordVariable v, int converter, CharSequence chars,
+        int start, int end, Map parsedData, ColumnarRecordSink sink,
+        StringBuffer parseMessages) {
+        switch (converter) {
+            case CONVERT_STRING:
+                String stringValue = chars.subSequence(start, end).toString();
+                if (sink != null)
+                    sink.setObject(v.getColumnIndex(), stringValue);
+                else
+                    parsedData.put(v, stringValue);
+                break;
+            case CONVERT_BYTE:
+                long byteValue = parseLong(chars, start, end);
+                if ((byteValue == NOT_A_LONG) || (byteValue < Byte.MIN_VALUE)
+                    || (byteValue > Byte.MAX_VALUE)) {
+                    try {
+                        byteValue = Byte.parseByte(chars
+                            .subSequence(start, end).toString());
+                    } catch (Exception e1) {
+                        parseMessages.append("Could not parse " + v.getName()
+                            + " byte: " + chars.subSequence(start, end) + "\n");
+                        storeMissing(v, parsedData, sink);
+                        break;
+                    }
+                }
+                storeLong(v, converter, byteValue, parsedData, sink);
+                break;
+            case CONVERT_SHORT:
+                long shortValue = parseLong(chars, start, end);
+                if ((shortValue == NOT_A_LONG)
+                    || (shortValue < Short.MIN_VALUE)
+                    || (shortValue > Short.MAX_VALUE)) {
+                    try {
+                        shortValue = Short.parseShort(chars.subSequence(start,
+                            end).toString());
+                    } catch (Exception e1) {
+                        parseMessages.append("Could not parse " + v.getName()
+                            + " short: " + chars.subSequence(start, end)
+                            + "\n");
+                        storeMissing(v, parsedData, sink);
+                        break;
+                    }
+                }
+                storeLong(v, converter, shortValue, parsedData, sink);
+                break;
+            case CONVERT_INT:
+                long intValue = parseLong(chars, start, end);
+                if ((intValue == NOT_A_LONG)
+                    || (intValue < Integer.MIN_VALUE)
+                    || (intValue > Integer.MAX_VALUE)) {
+                    String value = chars.subSequence(start, end).toString();
+                    try {
+                        intValue = Integer.parseInt(value);
+                    } catch (Exception e1) {
+                        parseMessages.append("Could not parse " + v.getName()
+                            + " int: " + value + "\n");
+                        storeMissing(v, parsedData, sink);
+                        // If this happens see if we can lop off any
+                        // decimals. This will lose data, but it will parse.
+                        if (value.indexOf(".") < 0)
+                            break;
+                        try {
+                            intValue = Integer.parseInt(value.substring(0,
+                                value.indexOf(".")));
+                        } catch (Exception e) {
+                            parseMessages.append("Could not parse "
+                                + v.getName() + " int: " + value + "\n");
+                            storeMissing(v, parsedData, sink);
+                            break;
+                        }
+                    }
+                }
+                storeLong(v, converter, intValue, parsedData, sink);
+                break;
+            case CONVERT_LONG:
+                long longValue = parseLong(chars, start, end);
+                if (longValue == NOT_A_LONG) {
+                    try {
+                        longValue = Long.parseLong(chars
+                            .subSequence(start, end).toString());
+                    } catch (Exception e1) {
+                        parseMessages.append("Could not parse " + v.getName()
+                            + " long: " + chars.subSequence(start, end) + "\n");
+                        storeMissing(v, parsedData, sink);
+                        break;
+                    }
+                }
+                storeLong(v, converter, longValue, parsedData, sink);
+                break;
+            case CONVERT_FLOAT:
+                try {
+                    float floatValue = parseFloat(chars, start, end);
+                    if (Float.isNaN(floatValue))
+                        floatValue = Float.parseFloat(chars.subSequence(start,
+                            end).toString());
+                    if (sink != null)
+                        sink.setFloat(v.getColumnIndex(), floatValue);
+                    else
+                        parsedData.put(v, new Float(floatValue));
+                } catch (Exception e1) {
+                    parseMessages.append("Could not parse " + v.getName()
+                        + " float: " + chars.subSequence(start, end) + "\n");
+                    storeMissing(v, parsedData, sink);
+                }
+                break;
+            default:
+                try {
+                    double doubleValue = parseDouble(chars, start, end);
+                    if (Double.isNaN(doubleValue))
+                        doubleValue = Double.parseDouble(chars.subSequence(
+                            start, end).toString());
+                    if (sink != null)
+                        sink.setDouble(v.getColumnIndex(), doubleValue);
+                    else
+                        parsedData.put(v, new Double(doubleValue));
+                } catch (Exception e1) {
+                    parseMessages.append("Could not parse " + v.getName()
+                        + " double: " + chars.subSequence(start, end) + "\n");
+                    storeMissing(v, parsedData, sink);
+                }
+                break;
+        }
+    }
+
+    /**
+     * This method stores an integer value, boxing it into the type the
+     * variable calls for if it is going into the map
+     */
+    private static void storeLong(RecordVariable v, int converter, long value,
+        Map parsedData, ColumnarRecordSink sink) {
+        if (sink != null) {
+            if (converter == CONVERT_LONG)
+                sink.setLong(v.getColumnIndex(), value);
+            else
+                sink.setInt(v.getColumnIndex(), (int) value);
+        } else if (converter == CONVERT_BYTE) {
+            parsedData.put(v, new Byte((byte) value));
+        } else if (converter == CONVERT_SHORT) {
+            parsedData.put(v, new Short((short) value));
+        } else if (converter == CONVERT_INT) {
+            parsedData.put(v, new Integer((int) value));
+        } else {
+            parsedData.put(v, new Long(value));
+        }
+    }
+
+    /**
+     * This method stores a value that could not be parsed
+     */
+    private static void storeMissing(RecordVariable v, Map parsedData,
+        ColumnarRecordSink sink) {
+        if (sink != null)
+            sink.setMissing(v.getColumnIndex());
+        else
+            parsedData.put(v, null);
+    }
+
+    /**
+     * This is the value <code>parseLong</code> returns when the characters
+     * are not a simple decimal number
+     */
+    private static final long NOT_A_LONG = Long.MIN_VALUE;
+
+    /**
+     * This method does a quick parse of an (optionally negative) decimal
+     * number of up to 18 digits. Anything else returns
+     * <code>NOT_A_LONG</code> so the caller can fall back to the
+     * <code>valueOf</code> methods (and their error handling).
+     */
+    private static long parseLong(CharSequence chars, int start, int end) {
+        boolean negative = false;
+        if ((start < end) && (chars.charAt(start) == '-')) {
+            negative = true;
+            start++;
+        }
+        if ((start >= end) || (end - start > 18))
+            return NOT_A_LONG;
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            char c = chars.charAt(i);
+            if ((c < '0') || (c > '9'))
+                return NOT_A_LONG;
+            result = result * 10 + (c - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * The powers of ten that can be represented exactly as doubles
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+        1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+        1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * This method does a quick parse of a decimal number like 12.5, -0.034
+     * or 1.2E-5 with up to 15 significant digits and a power of ten of at
+     * most 22. The digits and the power of ten are then both exact doubles,
+     * so one multiply or divide rounds the same way
+     * <code>Double.parseDouble</code> does. Anything else (more digits, a
+     * larger exponent, NaN, hex, padding, etc.) returns NaN so the caller can
+     * fall back to <code>Double.parseDouble</code>.
+     */
+    private static double parseDouble(CharSequence chars, int start, int end) {
+        boolean negative = false;
+        if ((start < end)
+            && ((chars.charAt(start) == '-') || (chars.charAt(start) == '+'))) {
+            negative = (chars.charAt(start) == '-');
+            start++;
+        }
+        long digits = 0;
+        int numberOfDigits = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        int i = start;
+        for (; i < end; i++) {
+            char c = chars.charAt(i);
+            if ((c >= '0') && (c <= '9')) {
+                numberOfDigits++;
+                if (point)
+                    fractionDigits++;
+                if ((digits == 0) && (c == '0'))
+                    continue;
+                if (++significantDigits > 15)
+                    return Double.NaN;
+                digits = digits * 10 + (c - '0');
+            } else if ((c == '.') && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (numberOfDigits == 0)
+            return Double.NaN;
+
+        // The exponent (if there is one)
+        int exponent = 0;
+        if ((i < end)
+            && ((chars.charAt(i) == 'e') || (chars.charAt(i) == 'E'))) {
+            i++;
+            boolean negativeExponent = false;
+            if ((i < end)
+                && ((chars.charAt(i) == '-') || (chars.charAt(i) == '+'))) {
+                negativeExponent = (chars.charAt(i) == '-');
+                i++;
+            }
+            if ((i >= end) || (end - i > 3))
+                return Double.NaN;
+            for (; i < end; i++) {
+                char c = chars.charAt(i);
+                if ((c < '0') || (c > '9'))
+                    return Double.NaN;
+                exponent = exponent * 10 + (c - '0');
+            }
+            if (negativeExponent)
+                exponent = -exponent;
+        }
+        if (i != end)
+            return Double.NaN;
+
+        double value = digits;
+        if (digits != 0) {
+            exponent -= fractionDigits;
+            if ((exponent < -22) || (exponent > 22))
+                return Double.NaN;
+            if (exponent < 0)
+                value = value / POWERS_OF_TEN[-exponent];
+            else
+                value = value * POWERS_OF_TEN[exponent];
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * This method does a quick parse of a float by rounding the quick parse
+     * of the double. That only rounds the same way
+     * <code>Float.parseFloat</code> does when the double is not exactly half
+     * way between two floats (and is in the range of normal floats), so NaN
+     * is returned for those and for anything <code>parseDouble</code> could
+     * not do.
+     */
+    private static float parseFloat(CharSequence chars, int start, int end) {
+        double value = parseDouble(chars, start, end);
+        if (Double.isNaN(value) || (value == 0))
+            return (float) value;
+        double magnitude = Math.abs(value);
+        if ((magnitude < SMALLEST_NORMAL_FLOAT) || (magnitude > Float.MAX_VALUE))
+            return Float.NaN;
+        // The 29 bits of the double that a float does not have
+        if ((Double.doubleToLongBits(value) & 0x1fffffffL) == 0x10000000L)
+            return Float.NaN;
+        return (float) value;
+    }
+
+    /**
+     * The smallest float that has all its precision (Float.MIN_NORMAL)
+     */
+    private static final double SMALLEST_NORMAL_FLOAT = 1.17549435E-38f;
+
+    /**
+     * This method fills in the value starts and ends using the record parse
+     * regular expression and returns the number of values
+     */
+    private int matchRecord(CharSequence chars, int start, int end)
+        throws ParsingException {
+        for (int i = 0; i < numVariables; i++)
+            valueStarts[i] = -1;
+        splitMatcher.reset(chars);
+        splitMatcher.region(start, end);
+        if (splitMatcher.find()) {
+            if (splitMatcher.groupCount() < numVariables)
+                throw new ParsingException("The record parse expression only has "
+                    + splitMatcher.groupCount() + " groups, but there are "
+                    + numVariables + " variables");
+            for (int i = 0; i < numVariables; i++) {
+                valueStarts[i] = splitMatcher.start(i + 1);
+                valueEnds[i] = splitMatcher.end(i + 1);
+            }
+        }
+        return numVariables;
+    }
+
+    /**
+     * This method fills in the value starts and ends by splitting the record
+     * with the separator and returns the number of values (following the
+     * rules of <code>String.split</code>, so trailing empty values are not
+     * counted). Only the first <code>numVariables</code> values are recorded,
+     * but all of them are counted.
+     */
+    private int splitRecord(CharSequence chars, int start, int end) {
+        int count = 0;
+        int lastNonEmpty = -1;
+        int valueStart = start;
+        boolean separatorFound = false;
+
+        if (splitMode == SPLIT_WHITESPACE) {
+            // The record is trimmed so every value is a run of non whitespace
+            int i = start;
+            while (i < end) {
+                if (isWhitespace(chars.charAt(i))) {
+                    separatorFound = true;
+                    count = addValue(count, valueStart, i);
+                    lastNonEmpty = count - 1;
+                    while ((i < end) && isWhitespace(chars.charAt(i)))
+                        i++;
+                    valueStart = i;
+                } else {
+                    i++;
+                }
+            }
+        } else if (splitMode == SPLIT_LITERAL) {
+            int separatorLength = separator.length();
+            char first = separator.charAt(0);
+            int i = start;
+            while (i <= end - separatorLength) {
+                if ((chars.charAt(i) == first)
+                    && regionMatches(chars, i, separator)) {
+                    separatorFound = true;
+                    count = addValue(count, valueStart, i);
+                    if (i > valueStart)
+                        lastNonEmpty = count - 1;
+                    i += separatorLength;
+                    valueStart = i;
+                } else {
+                    i++;
+                }
+            }
+        } else {
+            splitMatcher.reset(chars);
+            splitMatcher.region(start, end);
+            while (splitMatcher.find()) {
+                // A zero width match at the beginning does not make an empty
+                // leading value
+                if (splitMatcher.end() == start)
+                    continue;
+                separatorFound = true;
+                count = addValue(count, valueStart, splitMatcher.start());
+                if (splitMatcher.start() > valueStart)
+                    lastNonEmpty = count - 1;
+                valueStart = splitMatcher.end();
+            }
+        }
+
+        // If there was no separator at all, the whole record is the value
+        if (!separatorFound) {
+            addValue(0, start, end);
+            return 1;
+        }
+
+        // Add the remainder and drop the trailing empty values
+        count = addValue(count, valueStart, end);
+        if (end > valueStart)
+            lastNonEmpty = count - 1;
+        return lastNonEmpty + 1;
+    }
+
+    /**
+     * This method records a value (if there is room) and returns the new
+     * count
+     */
+    private int addValue(int count, int start, int end) {
+        if (count < numVariables) {
+            valueStarts[count] = start;
+            valueEnds[count] = end;
+        }
+        return count + 1;
+    }
+
+    /**
+     * @return true if the separator is found at the given index
+     */
+    private static boolean regionMatches(CharSequence chars, int index,
+        String separator) {
+        for (int i = 0; i < separator.length(); i++) {
+            if (chars.charAt(index + i) != separator.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the character is in the regular expression \s class
+     */
+    private static boolean isWhitespace(char c) {
+        return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\u000B')
+            || (c == '\f') || (c == '\r');
+    }
+
+    /**
+     * @return true if the separator has no regular expression meta characters
+     */
+    private static boolean isLiteral(String separator) {
+        for (int i = 0; i < separator.length(); i++) {
+            if (REGEXP_META_CHARACTERS.indexOf(separator.charAt(i)) >= 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * This method maps the format of a <code>RecordVariable</code> to one of
+     * the CONVERT_* constants
+     */
+    private static int resolveConverter(String format) {
+        if (format == null)
+            return CONVERT_FAIL;
+        Class formatClass = (Class) VariableFormatMap.getInstance().get(
+            format.toLowerCase());
+        if (formatClass == null)
+            return CONVERT_SKIP;
+        if (formatClass == java.lang.String.class)
+            return CONVERT_STRING;
+        if (formatClass == byte.class)
+            return CONVERT_BYTE;
+        if (formatClass == short.class)
+            return CONVERT_SHORT;
+        if (formatClass == int.class)
+            return CONVERT_INT;
+        if (formatClass == long.class)
+            return CONVERT_LONG;
+        if (formatClass == float.class)
+            return CONVERT_FLOAT;
+        return CONVERT_DOUBLE;
+    }
+
+    /**
+     * This is a <code>CharSequence</code> over ASCII bytes so the record can
+     * be scanned and matched without decoding it into a <code>String</code>
+     */
+    private static class ByteCharSequence implements CharSequence {
+        private byte[] bytes = null;
+        private int offset = 0;
+        private int length = 0;
+
+        public void wrap(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public char charAt(int index) {
+            return (char) bytes[offset + index];
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, offset + start, end - start);
+        }
+
+        public String toString() {
+            return new String(bytes, offset, length);
+        }
+    }
+
+    /**
+     * The <code>RecordDescription</code> the plan was compiled from
+     */
+    private RecordDescription recordDescription = null;
+
+    /**
+     * How the record is broken into values and the supporting objects
+     */
+    private int splitMode = SPLIT_WHITESPACE;
+    private String separator = null;
+    private Matcher splitMatcher = null;
+
+    /**
+     * The resolved variable information (all indexed the same way)
+     */
+    private int numVariables = 0;
+    private RecordVariable[] variables = null;
+    private int[] columnIndexes = null;
+    private int[] converters = null;
+    private Matcher[] valueMatchers = null;
+    private String[] compileMessages = null;
+
+    /**
+     * Scratch space for where each value starts and ends (a start of -1 means
+     * the value was not found)
+     */
+    private int[] valueStarts = null;
+    private int[] valueEnds = null;
+    private ByteCharSequence byteSequence = new ByteCharSequence();
+}
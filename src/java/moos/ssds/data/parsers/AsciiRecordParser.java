@@ -15,14 +15,9 @@
  */
 package moos.ssds.data.parsers;
 
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import moos.ssds.metadata.RecordDescription;
-import moos.ssds.metadata.RecordVariable;
 
 import org.apache.log4j.Logger;
 
@@ -66,42 +61,15 @@ public class AsciiRecordParser extends RecordParser {
 
     /**
      * This method sets the record description that describes the records that
-     * will be parsed
+     * will be parsed and compiles the parse plan for it
      */
     public void setRecordDescription(RecordDescription recordDescription) {
         // Call it on the parent first
         super.setRecordDescription(recordDescription);
         if (recordDescription != null) {
-            // First check for parse regular expression
-            if ((recordDescription.getRecordParseRegExp() != null)
-                && (!recordDescription.getRecordParseRegExp().equals(""))) {
-                // Clear the buffer separator
-                bufferSep = null;
-                // Now grab the regexp
-                recordParseRegularExpression = recordDescription
-                    .getRecordParseRegExp();
-                // Create the pattern
-                recordParsePattern = Pattern
-                    .compile(recordParseRegularExpression);
-            } else {
-                // Clear the record reg exp
-                recordParseRegularExpression = null;
-                recordParsePattern = null;
-
-                // Find the buffer item seperator
-                bufferSep = recordDescription.getBufferItemSeparator();
-
-                // Check for separator aliases
-                if (bufferSep == null || bufferSep.equals(" ")
-                    || bufferSep.equals("space") || bufferSep.equals("tab")
-                    || bufferSep.equals("whitespace") || bufferSep.equals("")) {
-                    // Whitespace
-                    bufferSep = new String("\\s+");
-                } else if (bufferSep.equals("comma")) {
-                    // Comma separated
-                    bufferSep = new String(",");
-                }
-            }
+            parsePlan = new AsciiRecordParsePlan(recordDescription);
+        } else {
+            parsePlan = null;
         }
     }
 
@@ -119,210 +87,110 @@ public class AsciiRecordParser extends RecordParser {
      *      types are mapped to java types.
      */
     public Map parse(byte[] record) throws ParsingException {
+        return this.parse(record, 0, record.length);
+    }
 
-        // Clear the message queue
-        this.parseMessages = new StringBuffer();
+    /**
+     * This method is the same as <code>parse(byte[])</code> but the record is
+     * a range of a larger array (the data buffer of an SSDS packet for
+     * example) so it does not have to be copied out first.
+     * 
+     * @param record
+     *            the array that contains the record
+     * @param offset
+     *            the index in the array where the record starts
+     * @param length
+     *            the number of bytes in the record
+     * @return the <code>Map</code> of <code>RecordVariable</code>s to data
+     * @throws ParsingException
+     *             if the record could not be parsed
+     */
+    public Map parse(byte[] record, int offset, int length)
+        throws ParsingException {
 
-        // Create the map to put parsed data into
-        Map parsedData = new HashMap();
+        // Clear the message queue
+        this.parseMessages.setLength(0);
 
-        // Now depending on how the parser is setup, either break the record
-        // into tokens using the buffer item separator, or use the regepx to
-        // pull out the variables
-        String recordString = new String(record);
-        recordString = recordString.trim();
-        String[] values = null;
-        int numVariables = this.recordVariables.size();
-        if (recordParsePattern != null) {
-            values = new String[numVariables];
-            // Now try the pattern match
-            Matcher matcher = recordParsePattern.matcher(recordString);
-            if (matcher.find()) {
-                // Loop through the groups
-                for (int i = 1; i <= numVariables; i++) {
-                    values[(i - 1)] = matcher.group(i);
-                }
-            }
-        } else {
-            values = recordString.split(bufferSep);
+        try {
+            return getCurrentParsePlan().parse(record, offset, length,
+                parseMessages);
+        } catch (ParsingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ParsingException("Unable to parse data from "
+                + new String(record, offset, length));
         }
+    }
 
-        // Check for weird conditions
-        if (values.length > numVariables) {
-            parseMessages
-                .append("Something went wrong in parsing, there are supposed to be "
-                    + numVariables
-                    + " values, but "
-                    + values.length
-                    + " were found, SSDS will only pay attention to the first "
-                    + numVariables + " values.\n");
-            parseMessages.append("RecordDescription-->"
-                + this.recordDescription.toStringRepresentation("|") + "\n");
-            throw new ParsingException(
-                "Something went wrong in parsing, there are supposed to be "
-                    + numVariables + " values, but " + values.length
-                    + " were found.  SSDS will NOT try to parse this record");
-        }
-        if (values.length < numVariables) {
-            parseMessages
-                .append("There were fewer values found in the record than was expected (there was "
-                    + values.length
-                    + " and there should have been "
-                    + numVariables + "\n");
-            parseMessages.append("RecordDescription-->"
-                + this.recordDescription.toStringRepresentation("|") + "\n");
-            throw new ParsingException(
-                "Could not read enough values from the record string");
-        }
+    /**
+     * This method parses the record straight into the
+     * <code>ColumnarRecordSink</code> so the values are never boxed
+     * 
+     * @see RecordParser#parse(byte[], ColumnarRecordSink)
+     */
+    public void parse(byte[] record, ColumnarRecordSink sink)
+        throws ParsingException {
+        this.parse(record, 0, record.length, sink);
+    }
 
+    /**
+     * This method parses a range of a larger array straight into the
+     * <code>ColumnarRecordSink</code>
+     * 
+     * @param record
+     *            the array that contains the record
+     * @param offset
+     *            the index in the array where the record starts
+     * @param length
+     *            the number of bytes in the record
+     * @param sink
+     *            the <code>ColumnarRecordSink</code> to write the values to
+     * @throws ParsingException
+     *             if the record could not be parsed
+     */
+    public void parse(byte[] record, int offset, int length,
+        ColumnarRecordSink sink) throws ParsingException {
+        this.parseMessages.setLength(0);
         try {
-            // Loop over the recordVariables and get the data
-            Iterator i = recordVariables.iterator();
-            RecordVariable v = null;
-            Class format = null;
-            while (i.hasNext()) {
-                v = (RecordVariable) i.next();
-                String value = null;
-                value = values[((int) v.getColumnIndex()) - 1];
-                if (value != null) {
-                    // Trim off any whitespace
-                    value = value.trim();
-                    if ((v == null)
-                        || (typeMap.get(v.getFormat().toLowerCase()) == null)) {
-                        // SKip variables that do not have a format
-                        parseMessages.append("Skipped variable " + v.getName()
-                            + " due to no format\n");
-                        continue;
-                    }
-                    Pattern dataPattern = null;
-                    if ((v.getParseRegExp() != null)
-                        && (v.getParseRegExp().compareTo("") != 0)) {
-                        try {
-                            dataPattern = Pattern.compile(v.getParseRegExp());
-                        } catch (Exception ex) {
-                            parseMessages
-                                .append("Could not compile data pattern: "
-                                    + v.getParseRegExp() + "\n");
-                        }
-                    }
-                    // Try to pattern grab the actual values if a pattern was
-                    // found
-                    if (dataPattern != null) {
-                        Matcher m = dataPattern.matcher(value);
-                        boolean b = m.matches();
-                        if (b) {
-                            value = m.group(1);
-                        }
-                    }
-                    // If the value starts with a plus, strip it off
-                    if (value.startsWith("+")) {
-                        value = value.substring(1);
-                    }
-                    // Try to convert values from scientific notation if
-                    // applicable
-                    format = (Class) typeMap.get(v.getFormat().toLowerCase());
-                    // Check for what type of data
-                    if (format == java.lang.String.class) {
-                        try {
-                            parsedData.put(v, value);
-                        } catch (Exception e1) {
-                            parseMessages.append("Could not parse "
-                                + v.getName() + " string: " + value + "\n");
-                            parsedData.put(v, null);
-                        }
-                    } else if (format == byte.class) {
-                        try {
-                            parsedData.put(v, Byte.valueOf(value));
-                        } catch (Exception e1) {
-                            parseMessages.append("Could not parse "
-                                + v.getName() + " byte: " + value + "\n");
-                            parsedData.put(v, null);
-                        }
-                    } else if (format == short.class) {
-                        try {
-                            parsedData.put(v, Short.valueOf(value));
-                        } catch (Exception e1) {
-                            parseMessages.append("Could not parse "
-                                + v.getName() + " short: " + value + "\n");
-                            parsedData.put(v, null);
-                        }
-                    } else if (format == int.class) {
-                        boolean parseSucceeded = true;
-                        try {
-                            parsedData.put(v, Integer.valueOf(value));
-                        } catch (Exception e1) {
-                            parseSucceeded = false;
-                            parseMessages.append("Could not parse "
-                                + v.getName() + " int: " + value + "\n");
-                            parsedData.put(v, null);
-                        }
-                        // If this happens see if we can lop off any
-                        // decimals. This will lose data, but it will parse.
-                        if ((!parseSucceeded) && (value.indexOf(".") >= 0)) {
-                            String tempValue = value.substring(0, value
-                                .indexOf("."));
-                            try {
-                                parsedData.put(v, Integer.valueOf(tempValue));
-                            } catch (Exception e) {
-                                parseSucceeded = false;
-                                parseMessages.append("Could not parse "
-                                    + v.getName() + " int: " + value + "\n");
-                                parsedData.put(v, null);
-                            }
-                        }
-                    } else if (format == long.class) {
-                        try {
-                            parsedData.put(v, Long.valueOf(value));
-                        } catch (Exception e1) {
-                            parseMessages.append("Could not parse "
-                                + v.getName() + " long: " + value + "\n");
-                            parsedData.put(v, null);
-                        }
-                    } else if (format == double.class) {
-                        try {
-                            parsedData.put(v, Double.valueOf(value));
-                        } catch (Exception e1) {
-                            parseMessages.append("Could not parse "
-                                + v.getName() + " double: " + value + "\n");
-                            parsedData.put(v, null);
-                        }
-                    } else if (format == float.class) {
-                        try {
-                            parsedData.put(v, Float.valueOf(value));
-                        } catch (Exception e1) {
-                            parseMessages.append("Could not parse "
-                                + v.getName() + " float: " + value + "\n");
-                            parsedData.put(v, null);
-                        }
-                    } else {
-                        try {
-                            parsedData.put(v, Double.valueOf(value));
-                        } catch (Exception e1) {
-                            parseMessages.append("Could not parse "
-                                + v.getName() + " default double: " + value);
-                            parsedData.put(v, null);
-                        }
-                    }
-                }
-            }
+            getCurrentParsePlan().parse(record, offset, length, sink,
+                parseMessages);
+        } catch (ParsingException e) {
+            throw e;
         } catch (Exception e) {
             throw new ParsingException("Unable to parse data from "
-                + new String(record));
+                + new String(record, offset, length));
         }
-        return parsedData;
     }
 
     /**
-     * The delimiter to split variables up by
+     * This method returns the parse plan, compiling it again if the
+     * <code>RecordDescription</code> has changed (the variables may have
+     * been changed since it was compiled)
      */
-    private String bufferSep = null;
+    private AsciiRecordParsePlan getCurrentParsePlan() throws ParsingException {
+        if ((parsePlan == null) || !parsePlan.isCompiledFor(recordDescription)) {
+            if (recordDescription == null)
+                throw new ParsingException(
+                    "No RecordDescription was set on the parser");
+            parsePlan = new AsciiRecordParsePlan(recordDescription);
+            recordVariables = recordDescription.getRecordVariables();
+        }
+        return parsePlan;
+    }
+
+    /**
+     * @return the parse plan that was compiled from the
+     *         <code>RecordDescription</code>
+     */
+    public AsciiRecordParsePlan getParsePlan() {
+        return parsePlan;
+    }
 
     /**
-     * This is the regular expression (and supporting objects) that can be used
-     * to parse the whole record into variables
+     * This is the compiled plan (regular expressions, column indexes and
+     * converters) used to parse each record
      */
-    private String recordParseRegularExpression = null;
-    private Pattern recordParsePattern = null;
+    private AsciiRecordParsePlan parsePlan;
 
     /**
      * A log4J logger
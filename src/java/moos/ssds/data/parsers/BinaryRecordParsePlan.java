@@ -0,0 +1,356 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.data.parsers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import moos.ssds.metadata.RecordDescription;
+import moos.ssds.metadata.RecordVariable;
+
+/**
+ * <p>
+ * This class is the precomputed layout of a binary record that is described by
+ * a <code>RecordDescription</code>. The variables are put in column order, the
+ * byte offset and size of each one is worked out from its format and the byte
+ * order is resolved from the endianness, all once when the plan is created.
+ * Parsing a record is then one pass of absolute reads from a
+ * <code>ByteBuffer</code>.
+ * </p>
+ * <p>
+ * The layout follows the rules the stream based parser always used: columns
+ * 1 through the number of variables are read in order, a column without a
+ * variable (or a variable whose format is not known) takes up no bytes, and
+ * any format other than byte, short, int, long and float is read as an eight
+ * byte double.
+ * </p>
+ * <p>
+ * A plan keeps the last <code>ByteBuffer</code> it wrapped around so it is NOT
+ * thread safe (neither is the parser that owns it).
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class BinaryRecordParsePlan {
+
+    /**
+     * These are the types the values can be read as
+     */
+    public static final int TYPE_BYTE = 0;
+    public static final int TYPE_SHORT = 1;
+    public static final int TYPE_INT = 2;
+    public static final int TYPE_LONG = 3;
+    public static final int TYPE_FLOAT = 4;
+    public static final int TYPE_DOUBLE = 5;
+
+    /**
+     * This is the number of bytes each of the types takes up
+     */
+    private static final int[] TYPE_SIZES = {1, 2, 4, 8, 4, 8};
+
+    /**
+     * This constructor works out the layout for the given
+     * <code>RecordDescription</code>
+     *
+     * @param recordDescription
+     *            the <code>RecordDescription</code> that describes the
+     *            records that will be parsed
+     */
+    public BinaryRecordParsePlan(RecordDescription recordDescription) {
+        this.recordDescription = recordDescription;
+
+        // Resolve the byte order
+        byteOrder = resolveByteOrder(recordDescription);
+
+        // Put the variables in column order, the first variable found for a
+        // column wins
+        Collection recordVariables = recordDescription.getRecordVariables();
+        numVariables = (recordVariables == null) ? 0 : recordVariables.size();
+        RecordVariable[] byColumn = new RecordVariable[numVariables + 1];
+        compiledVariables = new RecordVariable[numVariables];
+        compiledFormats = new String[numVariables];
+        compiledColumnIndexes = new long[numVariables];
+        if (recordVariables != null) {
+            int index = 0;
+            for (Iterator i = recordVariables.iterator(); i.hasNext();) {
+                RecordVariable variable = (RecordVariable) i.next();
+                compiledVariables[index] = variable;
+                compiledFormats[index] = variable.getFormat();
+                compiledColumnIndexes[index] = variable.getColumnIndex();
+                index++;
+                int column = (int) variable.getColumnIndex();
+                if ((column >= 1) && (column <= numVariables)
+                    && (byColumn[column] == null)) {
+                    byColumn[column] = variable;
+                }
+            }
+        }
+
+        // Now lay out the bytes
+        Map typeMap = VariableFormatMap.getInstance();
+        List layoutVariables = new ArrayList();
+        List layoutTypes = new ArrayList();
+        for (int column = 1; column <= numVariables; column++) {
+            RecordVariable variable = byColumn[column];
+            if (variable == null)
+                continue;
+            Class format = (Class) typeMap.get(variable.getFormat());
+            // If the format is not defined, skip it
+            if (format == null)
+                continue;
+            layoutVariables.add(variable);
+            layoutTypes.add(new Integer(resolveType(format)));
+        }
+        variables = (RecordVariable[]) layoutVariables
+            .toArray(new RecordVariable[layoutVariables.size()]);
+        types = new int[variables.length];
+        offsets = new int[variables.length];
+        columnIndexes = new long[variables.length];
+        int offset = 0;
+        for (int i = 0; i < variables.length; i++) {
+            types[i] = ((Integer) layoutTypes.get(i)).intValue();
+            offsets[i] = offset;
+            columnIndexes[i] = variables[i].getColumnIndex();
+            offset += TYPE_SIZES[types[i]];
+        }
+        recordLength = offset;
+    }
+
+    /**
+     * This method returns true if the plan was made for the given
+     * <code>RecordDescription</code> and it still has the same endianness and
+     * variables (each with the same format, which sets its length, and column)
+     */
+    public boolean isCompiledFor(RecordDescription recordDescription) {
+        if ((recordDescription != this.recordDescription)
+            || (resolveByteOrder(recordDescription) != byteOrder))
+            return false;
+        Collection recordVariables = recordDescription.getRecordVariables();
+        if (((recordVariables == null) ? 0 : recordVariables.size()) != numVariables)
+            return false;
+        if (recordVariables == null)
+            return true;
+        int index = 0;
+        for (Iterator i = recordVariables.iterator(); i.hasNext(); index++) {
+            RecordVariable variable = (RecordVariable) i.next();
+            if ((variable != compiledVariables[index])
+                || (variable.getColumnIndex() != compiledColumnIndexes[index]))
+                return false;
+            String format = variable.getFormat();
+            if ((format == null) ? (compiledFormats[index] != null) : !format
+                .equals(compiledFormats[index]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bytes a record takes up
+     */
+    public int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * @return the byte order the values are read with
+     */
+    public ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    /**
+     * This method reads the values of a record into a <code>Map</code> of
+     * <code>RecordVariable</code>s to data
+     *
+     * @param record
+     *            the array that holds the record
+     * @param offset
+     *            where the record starts in the array
+     * @param length
+     *            the number of bytes available for the record
+     * @return the <code>Map</code> of parsed data
+     * @throws ParsingException
+     *             if the record is too short
+     */
+    public Map parse(byte[] record, int offset, int length)
+        throws ParsingException {
+        ByteBuffer buffer = wrap(record, offset, length);
+        Map parsedData = new HashMap(variables.length * 2);
+        for (int i = 0; i < variables.length; i++) {
+            int index = offset + offsets[i];
+            Number value = null;
+            switch (types[i]) {
+                case TYPE_BYTE:
+                    value = new Byte(buffer.get(index));
+                    break;
+                case TYPE_SHORT:
+                    value = new Short(buffer.getShort(index));
+                    break;
+                case TYPE_INT:
+                    value = new Integer(buffer.getInt(index));
+                    break;
+                case TYPE_LONG:
+                    value = new Long(buffer.getLong(index));
+                    break;
+                case TYPE_FLOAT:
+                    value = new Float(buffer.getFloat(index));
+                    break;
+                default:
+                    value = new Double(buffer.getDouble(index));
+                    break;
+            }
+            parsedData.put(variables[i], value);
+        }
+        return parsedData;
+    }
+
+    /**
+     * This method reads the values of a record into the current record of the
+     * <code>ColumnarRecordSink</code> without boxing them
+     *
+     * @param record
+     *            the array that holds the record
+     * @param offset
+     *            where the record starts in the array
+     * @param length
+     *            the number of bytes available for the record
+     * @param sink
+     *            the <code>ColumnarRecordSink</code> to write to
+     * @throws ParsingException
+     *             if the record is too short
+     */
+    public void parse(byte[] record, int offset, int length,
+        ColumnarRecordSink sink) throws ParsingException {
+        ByteBuffer buffer = wrap(record, offset, length);
+        for (int i = 0; i < variables.length; i++) {
+            int index = offset + offsets[i];
+            switch (types[i]) {
+                case TYPE_BYTE:
+                    sink.setInt(columnIndexes[i], buffer.get(index));
+                    break;
+                case TYPE_SHORT:
+                    sink.setInt(columnIndexes[i], buffer.getShort(index));
+                    break;
+                case TYPE_INT:
+                    sink.setInt(columnIndexes[i], buffer.getInt(index));
+                    break;
+                case TYPE_LONG:
+                    sink.setLong(columnIndexes[i], buffer.getLong(index));
+                    break;
+                case TYPE_FLOAT:
+                    sink.setFloat(columnIndexes[i], buffer.getFloat(index));
+                    break;
+                default:
+                    sink.setDouble(columnIndexes[i], buffer.getDouble(index));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * This method checks the length of the record and returns a
+     * <code>ByteBuffer</code> over the array with the right byte order. The
+     * last buffer is reused if the same array is parsed again.
+     */
+    private ByteBuffer wrap(byte[] record, int offset, int length)
+        throws ParsingException {
+        if ((offset < 0) || (length < recordLength)
+            || (offset + length > record.length))
+            throw new ParsingException("Unable to parse packet, the record has "
+                + length + " bytes but " + recordLength + " are needed");
+        if ((lastBuffer == null) || (lastRecord != record)) {
+            lastBuffer = ByteBuffer.wrap(record);
+            lastBuffer.order(byteOrder);
+            lastRecord = record;
+        }
+        return lastBuffer;
+    }
+
+    /**
+     * This method returns the byte order for the endianness of the
+     * <code>RecordDescription</code> (little endian is only used when it is
+     * asked for, everything else is big endian)
+     */
+    private static ByteOrder resolveByteOrder(
+        RecordDescription recordDescription) {
+        String endian = recordDescription.getEndian();
+        if ((endian != null)
+            && (endian.equalsIgnoreCase(RecordDescription.ENDIAN_LITTLE)))
+            return ByteOrder.LITTLE_ENDIAN;
+        return ByteOrder.BIG_ENDIAN;
+    }
+
+    /**
+     * This method maps the format class to one of the TYPE_* constants
+     */
+    private static int resolveType(Class format) {
+        if (format == byte.class)
+            return TYPE_BYTE;
+        if (format == short.class)
+            return TYPE_SHORT;
+        if (format == int.class)
+            return TYPE_INT;
+        if (format == long.class)
+            return TYPE_LONG;
+        if (format == float.class)
+            return TYPE_FLOAT;
+        // if no match is found use a double
+        return TYPE_DOUBLE;
+    }
+
+    /**
+     * The <code>RecordDescription</code> the plan was made from
+     */
+    private RecordDescription recordDescription = null;
+
+    /**
+     * The number of variables in the <code>RecordDescription</code>
+     */
+    private int numVariables = 0;
+
+    /**
+     * The variables of the <code>RecordDescription</code> (in the order of
+     * the collection) with the formats and columns they had when the plan was
+     * made
+     */
+    private RecordVariable[] compiledVariables = null;
+    private String[] compiledFormats = null;
+    private long[] compiledColumnIndexes = null;
+
+    /**
+     * The layout (all indexed the same way, in column order)
+     */
+    private RecordVariable[] variables = null;
+    private long[] columnIndexes = null;
+    private int[] types = null;
+    private int[] offsets = null;
+    private int recordLength = 0;
+    private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+
+    /**
+     * The last array that was wrapped and its buffer
+     */
+    private byte[] lastRecord = null;
+    private ByteBuffer lastBuffer = null;
+}
@@ -15,18 +15,9 @@
  */
 package moos.ssds.data.parsers;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInput;
-import java.io.DataInputStream;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 import moos.ssds.metadata.RecordDescription;
-import moos.ssds.metadata.RecordVariable;
-
-import com.mindprod.ledatastream.LEDataInputStream;
 
 /**
  * <p>
@@ -58,6 +49,20 @@ public class BinaryRecordParser extends RecordParser {
         super(recordDescription);
     }
 
+    /**
+     * This method sets the record description that describes the records that
+     * will be parsed and works out the layout of the records from it
+     */
+    public void setRecordDescription(RecordDescription recordDescription) {
+        // Call it on the parent first
+        super.setRecordDescription(recordDescription);
+        if (recordDescription != null) {
+            parsePlan = new BinaryRecordParsePlan(recordDescription);
+        } else {
+            parsePlan = null;
+        }
+    }
+
     /**
      * This is the method that actually reads in the data and parses it into the
      * correct <code>IRecordVariable</code>s that are then containe in the
@@ -68,77 +73,98 @@ public class BinaryRecordParser extends RecordParser {
      *         record).
      */
     public Map parse(byte[] buffer) throws ParsingException {
+        return this.parse(buffer, 0, buffer.length);
+    }
 
-        // Create the data map to return
-        Map parsedData = new HashMap();
-        // Create a DataInput to read from
-        DataInput dis = null;
+    /**
+     * This method is the same as <code>parse(byte[])</code> but the record is
+     * a range of a larger array so it does not have to be copied out first.
+     * 
+     * @param buffer
+     *            the array that contains the record
+     * @param offset
+     *            the index in the array where the record starts
+     * @param length
+     *            the number of bytes in the record
+     * @return the <code>Map</code> of <code>RecordVariable</code>s to data
+     * @throws ParsingException
+     *             if the record could not be parsed
+     */
+    public Map parse(byte[] buffer, int offset, int length)
+        throws ParsingException {
         try {
-            // Check the endianness to create the correct reader
-            String endian = recordDescription.getEndian();
-            if ((endian != null)
-                && (endian.equalsIgnoreCase(RecordDescription.ENDIAN_LITTLE))) {
-                dis = new LEDataInputStream(new ByteArrayInputStream(buffer));
-            } else {
-                dis = new DataInputStream(new ByteArrayInputStream(buffer));
-            }
+            return getCurrentParsePlan().parse(buffer, offset, length);
+        } catch (ParsingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ParsingException("Unable to parse packet "
+                + e.getMessage());
+        }
+    }
 
-            // Loop over the number of variables to pick off the data from the
-            // buffer
-            for (int i = 1; i <= recordDescription.getRecordVariables().size(); i++) {
-                // Grab the record variables and iterate over them
-                Collection variables = recordDescription.getRecordVariables();
-                Iterator iterator = variables.iterator();
-                RecordVariable rvToUse = null;
-                while (iterator.hasNext()) {
-                    // Grab a record variable
-                    RecordVariable variable = (RecordVariable) iterator.next();
-                    // Check to see if it is the one for the current column
-                    if ((int) variable.getColumnIndex() == i) {
-                        rvToUse = variable;
-                        break;
-                    }
-                }
-                if (rvToUse != null) {
-                    // Grab the class type of that record variable
-                    Class format = (Class) typeMap.get(rvToUse
-                        .getFormat());
-                    // Create a Number to hold the data read
-                    Number value = null;
-                    // If the variable or its format is not defined, skip it
-                    // TODO KJG - This seems hackish and not very robust
-                    if ((rvToUse == null) || (format == null)) {
-                        // Skip variables that do not have a format
-                        continue;
-                    }
-                    // Check the format and read the number of bytes
-                    // that correspond to that class
-                    if (format == byte.class) {
-                        value = new Byte(dis.readByte());
-                    } else if (format == short.class) {
-                        value = new Short(dis.readShort());
-                    } else if (format == int.class) {
-                        value = new Integer(dis.readInt());
-                    } else if (format == long.class) {
-                        value = new Long(dis.readLong());
-                    } else if (format == float.class) {
-                        value = new Float(dis.readFloat());
-                    }
-                    // if no match is found use a double
-                    // TODO KJG - Again hackish and very error prone
-                    else {
-                        value = new Double(dis.readDouble());
-                    }
+    /**
+     * This method reads the record straight into the current record of the
+     * <code>ColumnarRecordSink</code> so the values are never boxed
+     * 
+     * @see RecordParser#parse(byte[], ColumnarRecordSink)
+     */
+    public void parse(byte[] buffer, ColumnarRecordSink sink)
+        throws ParsingException {
+        this.parse(buffer, 0, buffer.length, sink);
+    }
 
-                    // Put in the map
-                    parsedData.put(rvToUse, value);
-                }
-            }
+    /**
+     * This method is the same as <code>parse(byte[], int, int)</code> but
+     * the values are written to a <code>ColumnarRecordSink</code>
+     * 
+     * @param buffer
+     *            the array that contains the record
+     * @param offset
+     *            the index in the array where the record starts
+     * @param length
+     *            the number of bytes in the record
+     * @param sink
+     *            the <code>ColumnarRecordSink</code> to write the values to
+     * @throws ParsingException
+     *             if the record could not be parsed
+     */
+    public void parse(byte[] buffer, int offset, int length,
+        ColumnarRecordSink sink) throws ParsingException {
+        try {
+            getCurrentParsePlan().parse(buffer, offset, length, sink);
+        } catch (ParsingException e) {
+            throw e;
         } catch (Exception e) {
             throw new ParsingException("Unable to parse packet "
                 + e.getMessage());
         }
-        return parsedData;
     }
 
+    /**
+     * This method returns the layout for the current record description,
+     * working it out again if the record description was changed (variables
+     * added for example) since it was last worked out
+     */
+    private BinaryRecordParsePlan getCurrentParsePlan() throws ParsingException {
+        if ((parsePlan == null) || !parsePlan.isCompiledFor(recordDescription)) {
+            if (recordDescription == null)
+                throw new ParsingException(
+                    "No RecordDescription was set on the parser");
+            parsePlan = new BinaryRecordParsePlan(recordDescription);
+        }
+        return parsePlan;
+    }
+
+    /**
+     * @return the layout that is used to parse the records
+     */
+    public BinaryRecordParsePlan getParsePlan() {
+        return parsePlan;
+    }
+
+    /**
+     * This is the precomputed layout (offsets, types and byte order) used to
+     * parse each record
+     */
+    private BinaryRecordParsePlan parsePlan;
 }
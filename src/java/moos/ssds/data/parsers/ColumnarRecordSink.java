@@ -0,0 +1,751 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.data.parsers;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import moos.ssds.metadata.RecordVariable;
+
+/**
+ * <p>
+ * This class collects parsed records in columns of primitives instead of one
+ * <code>Map</code> of boxed values per record. There is one column for each
+ * <code>RecordVariable</code> (looked up by its column index) that is a
+ * growable <code>double[]</code>, <code>float[]</code>, <code>int[]</code>
+ * (byte, short and int variables), <code>long[]</code> or
+ * <code>Object[]</code> (strings and variables without a format) depending on
+ * the format of the variable, plus a <code>long[]</code> time column.
+ * </p>
+ * <p>
+ * A parser fills in the values of the current record with the set methods and
+ * the caller then either keeps the record with <code>commitRecord</code> (which
+ * also sets its time) or throws it away with <code>discardRecord</code>. Any
+ * column that was not set for a committed record is marked as missing (and
+ * holds NaN or zero).
+ * </p>
+ * <p>
+ * Values for column indexes that the sink does not know about are ignored, so
+ * a sink that is created for a subset of the variables only keeps those. If two
+ * variables share a column index they share the column. This class is not
+ * thread safe.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class ColumnarRecordSink {
+
+    /**
+     * These are the types of columns
+     */
+    public static final int TYPE_DOUBLE = 0;
+    public static final int TYPE_FLOAT = 1;
+    public static final int TYPE_INT = 2;
+    public static final int TYPE_LONG = 3;
+    public static final int TYPE_OBJECT = 4;
+
+    /**
+     * This is the default number of records the columns are sized for
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * This constructor creates a column for each of the
+     * <code>RecordVariable</code>s in the collection
+     *
+     * @param recordVariables
+     *            the <code>Collection</code> of <code>RecordVariable</code>s
+     *            to keep data for
+     */
+    public ColumnarRecordSink(Collection recordVariables) {
+        this(recordVariables, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * This constructor creates a column for each of the
+     * <code>RecordVariable</code>s in the collection with room for the given
+     * number of records (they grow if more records are added)
+     *
+     * @param recordVariables
+     *            the <code>Collection</code> of <code>RecordVariable</code>s
+     *            to keep data for
+     * @param initialCapacity
+     *            the number of records to size the columns for
+     */
+    public ColumnarRecordSink(Collection recordVariables, int initialCapacity) {
+        this.capacity = Math.max(initialCapacity, 16);
+        this.times = new long[capacity];
+
+        // Find the largest column index so the columns can be looked up
+        // directly
+        int maxColumnIndex = 0;
+        if (recordVariables != null) {
+            for (Iterator i = recordVariables.iterator(); i.hasNext();) {
+                RecordVariable v = (RecordVariable) i.next();
+                maxColumnIndex = Math.max(maxColumnIndex, (int) v
+                    .getColumnIndex());
+            }
+        }
+        columns = new Column[maxColumnIndex + 1];
+        if (recordVariables != null) {
+            for (Iterator i = recordVariables.iterator(); i.hasNext();) {
+                RecordVariable v = (RecordVariable) i.next();
+                int columnIndex = (int) v.getColumnIndex();
+                if ((columnIndex >= 0) && (columns[columnIndex] == null)) {
+                    columns[columnIndex] = new Column(v, capacity);
+                }
+                if (columnIndex >= 0)
+                    recordVariableList.add(v);
+            }
+        }
+    }
+
+    /**
+     * @return the <code>RecordVariable</code>s that this sink has columns
+     *         for
+     */
+    public Collection getRecordVariables() {
+        return new ArrayList(recordVariableList);
+    }
+
+    /**
+     * @return the number of committed records
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there is a column for the given column index
+     */
+    public boolean hasColumn(long columnIndex) {
+        return getColumn(columnIndex) != null;
+    }
+
+    /**
+     * @return the type (one of the TYPE_* constants) of the column with the
+     *         given index, or -1 if there is no such column
+     */
+    public int getColumnType(long columnIndex) {
+        Column column = getColumn(columnIndex);
+        return (column == null) ? -1 : column.type;
+    }
+
+    /**
+     * These methods set the value of a column for the current record. The value
+     * is converted to the type of the column if needed.
+     */
+    public void setDouble(long columnIndex, double value) {
+        Column column = getColumn(columnIndex);
+        if (column == null)
+            return;
+        switch (column.type) {
+            case TYPE_DOUBLE:
+                column.doubles[size] = value;
+                break;
+            case TYPE_FLOAT:
+                column.floats[size] = (float) value;
+                break;
+            case TYPE_INT:
+                column.ints[size] = (int) value;
+                break;
+            case TYPE_LONG:
+                column.longs[size] = (long) value;
+                break;
+            default:
+                column.objects[size] = new Double(value);
+                break;
+        }
+        column.written(size);
+    }
+
+    public void setFloat(long columnIndex, float value) {
+        Column column = getColumn(columnIndex);
+        if ((column != null) && (column.type == TYPE_FLOAT)) {
+            column.floats[size] = value;
+            column.written(size);
+        } else {
+            setDouble(columnIndex, value);
+        }
+    }
+
+    public void setLong(long columnIndex, long value) {
+        Column column = getColumn(columnIndex);
+        if (column == null)
+            return;
+        switch (column.type) {
+            case TYPE_LONG:
+                column.longs[size] = value;
+                break;
+            case TYPE_INT:
+                column.ints[size] = (int) value;
+                break;
+            case TYPE_DOUBLE:
+                column.doubles[size] = value;
+                break;
+            case TYPE_FLOAT:
+                column.floats[size] = value;
+                break;
+            default:
+                column.objects[size] = new Long(value);
+                break;
+        }
+        column.written(size);
+    }
+
+    public void setInt(long columnIndex, int value) {
+        Column column = getColumn(columnIndex);
+        if ((column != null) && (column.type == TYPE_INT)) {
+            column.ints[size] = value;
+            column.written(size);
+        } else {
+            setLong(columnIndex, value);
+        }
+    }
+
+    public void setObject(long columnIndex, Object value) {
+        Column column = getColumn(columnIndex);
+        if (column == null)
+            return;
+        if (value == null) {
+            setMissing(columnIndex);
+        } else if (column.type == TYPE_OBJECT) {
+            column.objects[size] = value;
+            column.written(size);
+        } else if ((value instanceof Double) || (value instanceof Float)) {
+            setDouble(columnIndex, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            setLong(columnIndex, ((Number) value).longValue());
+        } else {
+            setMissing(columnIndex);
+        }
+    }
+
+    /**
+     * This method marks the value of a column for the current record as
+     * missing (a value that could not be parsed)
+     */
+    public void setMissing(long columnIndex) {
+        Column column = getColumn(columnIndex);
+        if (column != null)
+            column.setMissing(size);
+    }
+
+    /**
+     * This method returns the value that was set for a column in the current
+     * (not yet committed) record, boxed the same way
+     * <code>getObjectColumn</code> does. It is meant for the few values a
+     * caller needs to look at before deciding whether to keep a record.
+     *
+     * @return the value or null if the column was not set or is missing
+     */
+    public Object getCurrentValue(long columnIndex) {
+        Column column = getColumn(columnIndex);
+        if ((column == null) || (column.writtenRow != size)
+            || column.missing.get(size))
+            return null;
+        switch (column.type) {
+            case TYPE_DOUBLE:
+                return new Double(column.doubles[size]);
+            case TYPE_FLOAT:
+                return new Float(column.floats[size]);
+            case TYPE_INT:
+                if (column.format == byte.class)
+                    return new Byte((byte) column.ints[size]);
+                else if (column.format == short.class)
+                    return new Short((short) column.ints[size]);
+                return new Integer(column.ints[size]);
+            case TYPE_LONG:
+                return new Long(column.longs[size]);
+            default:
+                return column.objects[size];
+        }
+    }
+
+    /**
+     * This method returns the value that was set for a numeric column in the
+     * current (not yet committed) record without boxing it
+     *
+     * @return the value or NaN if the column was not set, is missing or does
+     *         not hold numbers
+     */
+    public double getCurrentDouble(long columnIndex) {
+        Column column = getColumn(columnIndex);
+        if ((column == null) || (column.writtenRow != size)
+            || column.missing.get(size))
+            return Double.NaN;
+        switch (column.type) {
+            case TYPE_DOUBLE:
+                return column.doubles[size];
+            case TYPE_FLOAT:
+                return column.floats[size];
+            case TYPE_INT:
+                return column.ints[size];
+            case TYPE_LONG:
+                return column.longs[size];
+            default:
+                if (column.objects[size] instanceof Number)
+                    return ((Number) column.objects[size]).doubleValue();
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * This method copies the values from a <code>Map</code> of
+     * <code>RecordVariable</code>s to data (like the ones the parsers
+     * return) into the current record
+     *
+     * @param recordVariablesToData
+     */
+    public void setValues(Map recordVariablesToData) {
+        if (recordVariablesToData == null)
+            return;
+        for (Iterator i = recordVariablesToData.entrySet().iterator(); i
+            .hasNext();) {
+            Map.Entry entry = (Map.Entry) i.next();
+            setObject(((RecordVariable) entry.getKey()).getColumnIndex(), entry
+                .getValue());
+        }
+    }
+
+    /**
+     * This method keeps the current record and sets its time. Any column that
+     * was not set is marked as missing.
+     *
+     * @param time
+     *            the time of the record
+     */
+    public void commitRecord(long time) {
+        for (int i = 0; i < columns.length; i++) {
+            if ((columns[i] != null) && (columns[i].writtenRow != size))
+                columns[i].setMissing(size);
+        }
+        times[size] = time;
+        size++;
+        if (size == capacity)
+            grow();
+    }
+
+    /**
+     * This method throws away any values that were set for the current record
+     */
+    public void discardRecord() {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] != null) {
+                columns[i].clear(size);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the times of the committed records
+     */
+    public long[] getTimes() {
+        return getTimes(null);
+    }
+
+    /**
+     * This method returns the times of the committed records in the given
+     * order (an array of record indexes like the ones from
+     * <code>MathUtil.uniqueSort</code>)
+     *
+     * @param order
+     *            the record indexes to return, or null for all of them in the
+     *            order they were committed
+     * @return the array of times
+     */
+    public long[] getTimes(int[] order) {
+        int length = (order == null) ? size : order.length;
+        long[] out = new long[length];
+        for (int i = 0; i < length; i++)
+            out[i] = times[(order == null) ? i : order[i]];
+        return out;
+    }
+
+    /**
+     * @return true if the value of the column is missing for the given record
+     */
+    public boolean isMissing(long columnIndex, int record) {
+        Column column = getColumn(columnIndex);
+        return (column == null) || column.missing.get(record);
+    }
+
+    /**
+     * This method returns a copy of the column in its own type. It will be a
+     * <code>double[]</code>, <code>float[]</code>, <code>int[]</code>,
+     * <code>long[]</code> or <code>Object[]</code>. Missing values are NaN
+     * for floating point columns, zero for integer columns and null for object
+     * columns.
+     *
+     * @return the array or null if there is no column with that index
+     */
+    public Object getColumnArray(long columnIndex) {
+        return getColumnArray(columnIndex, null);
+    }
+
+    /**
+     * This method returns a copy of the column in its own type with the
+     * records in the given order
+     *
+     * @param columnIndex
+     *            the column index of the <code>RecordVariable</code>
+     * @param order
+     *            the record indexes to return, or null for all of them in the
+     *            order they were committed
+     * @return the array or null if there is no column with that index
+     * @see #getColumnArray(long)
+     */
+    public Object getColumnArray(long columnIndex, int[] order) {
+        Column column = getColumn(columnIndex);
+        if (column == null)
+            return null;
+        int length = (order == null) ? size : order.length;
+        switch (column.type) {
+            case TYPE_DOUBLE:
+                double[] doubles = new double[length];
+                for (int i = 0; i < length; i++)
+                    doubles[i] = column.doubles[(order == null) ? i : order[i]];
+                return doubles;
+            case TYPE_FLOAT:
+                float[] floats = new float[length];
+                for (int i = 0; i < length; i++)
+                    floats[i] = column.floats[(order == null) ? i : order[i]];
+                return floats;
+            case TYPE_INT:
+                int[] ints = new int[length];
+                for (int i = 0; i < length; i++)
+                    ints[i] = column.ints[(order == null) ? i : order[i]];
+                return ints;
+            case TYPE_LONG:
+                long[] longs = new long[length];
+                for (int i = 0; i < length; i++)
+                    longs[i] = column.longs[(order == null) ? i : order[i]];
+                return longs;
+            default:
+                Object[] objects = new Object[length];
+                for (int i = 0; i < length; i++)
+                    objects[i] = column.objects[(order == null) ? i : order[i]];
+                return objects;
+        }
+    }
+
+    /**
+     * This method returns the column as doubles (missing values are NaN)
+     *
+     * @return the array or null if there is no such column or it is not a
+     *         number column
+     */
+    public double[] getDoubleColumn(long columnIndex) {
+        return getDoubleColumn(columnIndex, null);
+    }
+
+    /**
+     * This method returns the column as doubles (missing values are NaN) with
+     * the records in the given order
+     *
+     * @param columnIndex
+     *            the column index of the <code>RecordVariable</code>
+     * @param order
+     *            the record indexes to return, or null for all of them in the
+     *            order they were committed
+     * @return the array or null if there is no such column or it is not a
+     *         number column
+     */
+    public double[] getDoubleColumn(long columnIndex, int[] order) {
+        Column column = getColumn(columnIndex);
+        if ((column == null) || (column.type == TYPE_OBJECT))
+            return null;
+        double[] out = toDoubleArray(getColumnArray(columnIndex, order));
+        if ((column.type == TYPE_INT) || (column.type == TYPE_LONG)) {
+            for (int i = 0; i < out.length; i++) {
+                if (column.missing.get((order == null) ? i : order[i]))
+                    out[i] = Double.NaN;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * This method returns the column boxed the same way the parsers box values
+     * in their <code>Map</code>s (missing values are null)
+     *
+     * @return the array or null if there is no column with that index
+     */
+    public Object[] getObjectColumn(long columnIndex) {
+        return getObjectColumn(columnIndex, null);
+    }
+
+    /**
+     * This method returns the column boxed the same way the parsers box values
+     * in their <code>Map</code>s (missing values are null) with the records
+     * in the given order
+     *
+     * @param columnIndex
+     *            the column index of the <code>RecordVariable</code>
+     * @param order
+     *            the record indexes to return, or null for all of them in the
+     *            order they were committed
+     * @return the array or null if there is no column with that index
+     */
+    public Object[] getObjectColumn(long columnIndex, int[] order) {
+        Column column = getColumn(columnIndex);
+        if (column == null)
+            return null;
+        int length = (order == null) ? size : order.length;
+        Object[] out = new Object[length];
+        for (int j = 0; j < length; j++) {
+            int i = (order == null) ? j : order[j];
+            if (column.missing.get(i))
+                continue;
+            switch (column.type) {
+                case TYPE_DOUBLE:
+                    out[j] = new Double(column.doubles[i]);
+                    break;
+                case TYPE_FLOAT:
+                    out[j] = new Float(column.floats[i]);
+                    break;
+                case TYPE_INT:
+                    if (column.format == byte.class)
+                        out[j] = new Byte((byte) column.ints[i]);
+                    else if (column.format == short.class)
+                        out[j] = new Short((short) column.ints[i]);
+                    else
+                        out[j] = new Integer(column.ints[i]);
+                    break;
+                case TYPE_LONG:
+                    out[j] = new Long(column.longs[i]);
+                    break;
+                default:
+                    out[j] = column.objects[i];
+                    break;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * This method converts a primitive array (like the ones returned from
+     * <code>getColumnArray</code>) to an array of doubles. Arrays of objects
+     * are converted if they hold <code>Number</code>s (other values become
+     * NaN).
+     *
+     * @param array
+     *            the array to convert
+     * @return the array of doubles (or null if the array is null or not an
+     *         array)
+     */
+    public static double[] toDoubleArray(Object array) {
+        double[] out = null;
+        if (array instanceof double[]) {
+            out = (double[]) array;
+        } else if (array instanceof float[]) {
+            float[] values = (float[]) array;
+            out = new double[values.length];
+            for (int i = 0; i < values.length; i++)
+                out[i] = values[i];
+        } else if (array instanceof int[]) {
+            int[] values = (int[]) array;
+            out = new double[values.length];
+            for (int i = 0; i < values.length; i++)
+                out[i] = values[i];
+        } else if (array instanceof long[]) {
+            long[] values = (long[]) array;
+            out = new double[values.length];
+            for (int i = 0; i < values.length; i++)
+                out[i] = values[i];
+        } else if (array instanceof short[]) {
+            short[] values = (short[]) array;
+            out = new double[values.length];
+            for (int i = 0; i < values.length; i++)
+                out[i] = values[i];
+        } else if (array instanceof byte[]) {
+            byte[] values = (byte[]) array;
+            out = new double[values.length];
+            for (int i = 0; i < values.length; i++)
+                out[i] = values[i];
+        } else if (array instanceof Object[]) {
+            Object[] values = (Object[]) array;
+            out = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] instanceof Number)
+                    out[i] = ((Number) values[i]).doubleValue();
+                else
+                    out[i] = Double.NaN;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * This method finds the column for the given column index
+     */
+    private Column getColumn(long columnIndex) {
+        if ((columnIndex < 0) || (columnIndex >= columns.length))
+            return null;
+        return columns[(int) columnIndex];
+    }
+
+    /**
+     * This method doubles the size of all the columns
+     */
+    private void grow() {
+        int newCapacity = capacity * 2;
+        long[] newTimes = new long[newCapacity];
+        System.arraycopy(times, 0, newTimes, 0, size);
+        times = newTimes;
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] != null)
+                columns[i].grow(size, newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
+    /**
+     * This is a single column of data. Only the array that matches the type
+     * is allocated.
+     */
+    private static class Column {
+        Class format;
+        int type;
+        double[] doubles;
+        float[] floats;
+        int[] ints;
+        long[] longs;
+        Object[] objects;
+        BitSet missing = new BitSet();
+        int writtenRow = -1;
+
+        Column(RecordVariable recordVariable, int capacity) {
+            if (recordVariable.getFormat() != null)
+                format = (Class) VariableFormatMap.getInstance().get(
+                    recordVariable.getFormat().toLowerCase());
+            if ((format == null) || (format == String.class)) {
+                type = TYPE_OBJECT;
+            } else if (format == float.class) {
+                type = TYPE_FLOAT;
+            } else if (format == long.class) {
+                type = TYPE_LONG;
+            } else if ((format == int.class) || (format == short.class)
+                || (format == byte.class)) {
+                type = TYPE_INT;
+            } else {
+                type = TYPE_DOUBLE;
+            }
+            allocate(capacity);
+        }
+
+        void allocate(int capacity) {
+            switch (type) {
+                case TYPE_DOUBLE:
+                    doubles = new double[capacity];
+                    break;
+                case TYPE_FLOAT:
+                    floats = new float[capacity];
+                    break;
+                case TYPE_INT:
+                    ints = new int[capacity];
+                    break;
+                case TYPE_LONG:
+                    longs = new long[capacity];
+                    break;
+                default:
+                    objects = new Object[capacity];
+                    break;
+            }
+        }
+
+        Object array() {
+            switch (type) {
+                case TYPE_DOUBLE:
+                    return doubles;
+                case TYPE_FLOAT:
+                    return floats;
+                case TYPE_INT:
+                    return ints;
+                case TYPE_LONG:
+                    return longs;
+                default:
+                    return objects;
+            }
+        }
+
+        void grow(int size, int newCapacity) {
+            Object old = array();
+            allocate(newCapacity);
+            System.arraycopy(old, 0, array(), 0, size);
+        }
+
+        void written(int row) {
+            writtenRow = row;
+            missing.clear(row);
+        }
+
+        void setMissing(int row) {
+            clear(row);
+            writtenRow = row;
+            missing.set(row);
+        }
+
+        void clear(int row) {
+            writtenRow = -1;
+            missing.clear(row);
+            switch (type) {
+                case TYPE_DOUBLE:
+                    doubles[row] = Double.NaN;
+                    break;
+                case TYPE_FLOAT:
+                    floats[row] = Float.NaN;
+                    break;
+                case TYPE_INT:
+                    ints[row] = 0;
+                    break;
+                case TYPE_LONG:
+                    longs[row] = 0;
+                    break;
+                default:
+                    objects[row] = null;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * The columns indexed by the column index of their
+     * <code>RecordVariable</code>s
+     */
+    private Column[] columns = null;
+
+    /**
+     * The <code>RecordVariable</code>s that have columns
+     */
+    private ArrayList recordVariableList = new ArrayList();
+
+    /**
+     * The time column
+     */
+    private long[] times = null;
+
+    /**
+     * The number of committed records and the size of the arrays
+     */
+    private int size = 0;
+    private int capacity = 0;
+}
@@ -78,6 +78,23 @@ abstract public class PacketParser {
     public abstract Map parse(SSDSDevicePacket ssdsDevicePacket)
         throws ParsingException;
 
+    /**
+     * This method parses the packet into the current record of the
+     * <code>ColumnarRecordSink</code>. This implementation copies the values
+     * from <code>parse(SSDSDevicePacket)</code>, parsers that can write
+     * primitives directly should override it.
+     * 
+     * @param ssdsDevicePacket
+     *            the packet whose data buffer will be parsed
+     * @param sink
+     *            the <code>ColumnarRecordSink</code> to write the values to
+     * @throws ParsingException
+     */
+    public void parse(SSDSDevicePacket ssdsDevicePacket, ColumnarRecordSink sink)
+        throws ParsingException {
+        sink.setValues(parse(ssdsDevicePacket));
+    }
+
     /**
      * This method returns a String that is a compiled set of messages from the
      * previous parse method call. It should be helpful in debugging.
@@ -88,6 +88,26 @@ public class PacketParserContext extends ParserContext {
         return null;
     }
 
+    /**
+     * @see moos.ssds.data.parsers.ParserContext#next(ColumnarRecordSink)
+     */
+    public boolean next(ColumnarRecordSink sink) {
+        if ((this.ssdsDevicePacketIterator != null)
+            && (this.ssdsDevicePacketIterator.hasNext())) {
+            currentSsdsDevicePacket = (SSDSDevicePacket) this.ssdsDevicePacketIterator
+                .next();
+            // Now parse that packet!
+            try {
+                packetParser.parse(currentSsdsDevicePacket, sink);
+                return true;
+            } catch (ParsingException e) {
+                this.appendLogtext("ParsingException: " + e.getMessage());
+                sink.discardRecord();
+            }
+        }
+        return false;
+    }
+
     /**
      * This method checks to see if the iterator has more packets it can deliver
      */
@@ -59,6 +59,27 @@ public abstract class ParserContext {
      */
     public abstract Object next();
 
+    /**
+     * This method parses the next record into the current record of the
+     * <code>ColumnarRecordSink</code> instead of returning a <code>Map</code>.
+     * This implementation copies the values from <code>next()</code>, the
+     * contexts override it to have their parsers write straight into the sink.
+     * The caller is responsible for committing (or discarding) the record.
+     * 
+     * @param sink
+     *            the <code>ColumnarRecordSink</code> to write the values to
+     * @return <code>true</code> if a record was parsed into the sink,
+     *         <code>false</code> if there was no record or it could not be
+     *         parsed
+     */
+    public boolean next(ColumnarRecordSink sink) {
+        Object data = next();
+        if (!(data instanceof Map))
+            return false;
+        sink.setValues((Map) data);
+        return true;
+    }
+
     /**
      * This method implements the <code>hasNext()</code> method of the
      * Iterator interface. It tells the caller whether or not the parser thinks
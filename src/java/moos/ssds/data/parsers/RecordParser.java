@@ -82,6 +82,25 @@ abstract public class RecordParser {
      */
     public abstract Map parse(byte[] buffer) throws ParsingException;
 
+    /**
+     * This method parses a record and writes the values into the current
+     * record of the given <code>ColumnarRecordSink</code> instead of a
+     * <code>Map</code>. This implementation just copies the values from
+     * <code>parse(byte[])</code>; parsers that can write primitives directly
+     * should override it. The caller is responsible for committing (or
+     * discarding) the record in the sink.
+     * 
+     * @param buffer
+     *            the record to parse
+     * @param sink
+     *            the <code>ColumnarRecordSink</code> to write the values to
+     * @throws ParsingException
+     */
+    public void parse(byte[] buffer, ColumnarRecordSink sink)
+        throws ParsingException {
+        sink.setValues(parse(buffer));
+    }
+
     /**
      * This method returns a String that is a compiled set of messages from the
      * previous parse method call. It should be helpful in debugging.
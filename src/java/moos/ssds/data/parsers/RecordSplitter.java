@@ -0,0 +1,269 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.data.parsers;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>
+ * This class splits an <code>InputStream</code> into records that end with a
+ * record terminator. The stream is read in large blocks into one buffer and
+ * the terminator is searched for in the buffer, so each record is handed back
+ * as a range (offset and length) of the buffer instead of being copied out a
+ * byte at a time.
+ * </p>
+ * <p>
+ * The search uses a skip table that is built from the terminator when the
+ * splitter is created (Boyer-Moore-Horspool), so for multi-byte terminators
+ * most of the bytes in the buffer are never compared. A terminator that is
+ * split across two blocks is found because the unread part of the buffer is
+ * moved to the front before the next block is read in. If a record is longer
+ * than the buffer, the buffer is made bigger.
+ * </p>
+ * <p>
+ * The range returned by <code>getRecordOffset()</code> and
+ * <code>getRecordLength()</code> is only good until the next call to
+ * <code>nextRecord()</code>.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class RecordSplitter {
+
+    /**
+     * The size of the blocks that are read from the stream (if no other size
+     * is given)
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * This constructor uses the default block size
+     *
+     * @param in
+     *            the <code>InputStream</code> to read the records from
+     * @param terminator
+     *            the bytes that end each record
+     */
+    public RecordSplitter(InputStream in, byte[] terminator) {
+        this(in, terminator, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * This is the constructor that takes in the stream, the record terminator
+     * and the size of the blocks to read
+     *
+     * @param in
+     *            the <code>InputStream</code> to read the records from
+     * @param terminator
+     *            the bytes that end each record
+     * @param blockSize
+     *            the number of bytes to read from the stream at a time
+     */
+    public RecordSplitter(InputStream in, byte[] terminator, int blockSize) {
+        if ((terminator == null) || (terminator.length == 0))
+            throw new IllegalArgumentException(
+                "The record terminator must have at least one byte");
+        this.in = in;
+        this.terminator = (byte[]) terminator.clone();
+        this.buffer = new byte[Math.max(blockSize, terminator.length)];
+
+        // Build the skip table, any byte not in the terminator (except as the
+        // last byte) lets the search move ahead by the whole terminator
+        for (int i = 0; i < skip.length; i++)
+            skip[i] = terminator.length;
+        for (int i = 0; i < terminator.length - 1; i++)
+            skip[terminator[i] & 0xff] = terminator.length - 1 - i;
+    }
+
+    /**
+     * This method finds the next record in the stream
+     *
+     * @return true if there is a record (its range can be found with
+     *         <code>getRecordOffset()</code> and <code>getRecordLength()</code>)
+     *         or false if the end of the stream was reached
+     * @throws IOException
+     *             if the stream could not be read
+     */
+    public boolean nextRecord() throws IOException {
+        while (true) {
+            int found = indexOf(buffer, searchFrom, limit, terminator, skip);
+            if (found >= 0) {
+                recordOffset = start;
+                recordLength = found + terminator.length - start;
+                start = found + terminator.length;
+                searchFrom = start;
+                return true;
+            }
+
+            // The terminator could still start in the last few bytes, so
+            // the next search has to back up a little
+            searchFrom = Math.max(start, limit - terminator.length + 1);
+
+            if (eofFound) {
+                // Hand back whatever is left after the last terminator
+                if (limit > start) {
+                    recordOffset = start;
+                    recordLength = limit - start;
+                    start = limit;
+                    searchFrom = limit;
+                    return true;
+                }
+                return false;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * @return the array that holds the current record
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the index in the buffer where the current record starts
+     */
+    public int getRecordOffset() {
+        return recordOffset;
+    }
+
+    /**
+     * @return the number of bytes in the current record (including the
+     *         terminator if there was one)
+     */
+    public int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * @return a copy of the bytes of the current record
+     */
+    public byte[] getRecord() {
+        byte[] record = new byte[recordLength];
+        System.arraycopy(buffer, recordOffset, record, 0, recordLength);
+        return record;
+    }
+
+    /**
+     * This method closes the stream
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * This method finds the first place the pattern occurs in the range of the
+     * array
+     *
+     * @param bytes
+     *            the array to search
+     * @param from
+     *            the index to start the search at
+     * @param to
+     *            the index after the last byte to search
+     * @param pattern
+     *            the bytes to look for
+     * @param skip
+     *            the skip table for the pattern
+     * @return the index where the pattern starts or -1 if it was not found
+     */
+    static int indexOf(byte[] bytes, int from, int to, byte[] pattern,
+        int[] skip) {
+        int last = pattern.length - 1;
+        // The most common case is a single byte (newline) so just scan
+        if (last == 0) {
+            byte b = pattern[0];
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == b)
+                    return i;
+            }
+            return -1;
+        }
+        int i = from;
+        while (i + last < to) {
+            int j = last;
+            while ((j >= 0) && (bytes[i + j] == pattern[j]))
+                j--;
+            if (j < 0)
+                return i;
+            i += skip[bytes[i + last] & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * This method moves the unread bytes to the front of the buffer (making
+     * the buffer bigger if they fill it) and reads in the next block
+     */
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            limit -= start;
+            searchFrom -= start;
+            start = 0;
+        }
+        if (limit == buffer.length) {
+            byte[] bigger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, bigger, 0, limit);
+            buffer = bigger;
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0)
+            eofFound = true;
+        else
+            limit += read;
+    }
+
+    /**
+     * The stream the records are read from
+     */
+    private InputStream in = null;
+
+    /**
+     * The bytes that end each record and the skip table used to find them
+     */
+    private byte[] terminator = null;
+    private int[] skip = new int[256];
+
+    /**
+     * The buffer the blocks are read into
+     */
+    private byte[] buffer = null;
+
+    /**
+     * The index of the first byte that has not been handed back yet, the
+     * index after the last byte read in and the index to start looking for
+     * the next terminator
+     */
+    private int start = 0;
+    private int limit = 0;
+    private int searchFrom = 0;
+
+    /**
+     * The range of the current record
+     */
+    private int recordOffset = 0;
+    private int recordLength = 0;
+
+    /**
+     * This is true once the end of the stream has been read
+     */
+    private boolean eofFound = false;
+}
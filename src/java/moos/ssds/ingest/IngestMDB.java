@@ -21,19 +21,11 @@ import java.util.Properties;
 
 import javax.jms.BytesMessage;
 import javax.jms.JMSException;
-import javax.jms.Session;
-import javax.jms.Topic;
-import javax.jms.TopicConnection;
-import javax.jms.TopicConnectionFactory;
-import javax.jms.TopicPublisher;
-import javax.jms.TopicSession;
-import javax.naming.Context;
-import javax.naming.InitialContext;
-import javax.naming.NamingException;
 
 import moos.ssds.io.PacketOutput;
 import moos.ssds.io.PacketOutputManager;
 import moos.ssds.io.PacketSQLOutput;
+import moos.ssds.io.util.PacketUtility;
 
 import org.apache.log4j.Logger;
 
@@ -44,6 +36,12 @@ import org.apache.log4j.Logger;
  * by certain &quot;keys&quot;. It then passes these message on to more topics
  * for further processing.
  * </p>
+ * <p>
+ * If <code>ingest.pipeline.enabled</code> is on, the packets are instead handed
+ * to an <code>IngestPipeline</code> (shared by all the instances of the bean)
+ * that stores and republishes them on its own threads, so a slow database does
+ * not hold up the consumer of the topic.
+ * </p>
  * <hr>
  * 
  * @author : $Author: kgomes $
@@ -90,43 +88,30 @@ public class IngestMDB implements javax.ejb.MessageDrivenBean,
 	private boolean fileSerializationEnabled = false;
 
 	/**
-	 * This is the JNDI Context that will be used (Naming Service) to locate the
-	 * appropriate remote classes to use for publishing messages.
-	 */
-	private Context jndiContext = null;
-
-	/**
-	 * The TopicConnectionFactory that will be used to republish messages
-	 */
-	private TopicConnectionFactory topicConnectionFactory = null;
-
-	/**
-	 * This is the connection to the topic that the messages will be published
-	 * to
-	 */
-	private TopicConnection topicConnection = null;
-
-	/**
-	 * These are the JMS topics that will be used for publishing
+	 * This is the class that republishes the metadata packets when the packets
+	 * are handled synchronously
 	 */
-	private Topic topic = null;
+	private TopicRepublisher topicRepublisher = null;
 
 	/**
-	 * This is a session that the publishing of messages will be run in.
+	 * This is a flag to indicate if the packets are handed to the
+	 * <code>IngestPipeline</code> (instead of being handled in
+	 * <code>onMessage</code>)
 	 */
-	private TopicSession topicSession = null;
+	private boolean pipelineEnabled = false;
 
 	/**
-	 * These are the topic publishers that are actually used to send messages to
-	 * the topic
+	 * This is the pipeline that is shared by all the instances of the bean in
+	 * the VM and the number of instances that are using it
 	 */
-	private TopicPublisher topicPublisher = null;
+	private static IngestPipeline ingestPipeline = null;
+	private static int ingestPipelineUsers = 0;
 
 	/**
-	 * This is a boolean to indicated if the publishing is setup and working
-	 * correctly
+	 * How long to wait for the pipeline to empty when the last bean using it
+	 * is removed
 	 */
-	private boolean publishingSetup = false;
+	private static final long PIPELINE_SHUTDOWN_TIMEOUT_MILLIS = 30000;
 
 	/**
 	 * This is the default constructor
@@ -164,111 +149,90 @@ public class IngestMDB implements javax.ejb.MessageDrivenBean,
 				.equalsIgnoreCase("on"))
 			fileSerializationEnabled = true;
 
-		// Instead of using the publisher component, let's manage our own so
-		// that we can use a different InvocationLayer
-		this.setupPublishing();
+		// Check to see if the packets should be handed to the pipeline
+		String pipelineProperty = ingestProps
+				.getProperty("ingest.pipeline.enabled");
+		if ((pipelineProperty != null)
+				&& (pipelineProperty.equalsIgnoreCase("on")))
+			pipelineEnabled = true;
+
+		if (pipelineEnabled) {
+			acquireIngestPipeline(ingestProps, republishTopicName,
+					fileSerializationEnabled);
+		} else {
+			// Instead of using the publisher component, let's manage our own
+			// so that we can use a different InvocationLayer
+			topicRepublisher = new TopicRepublisher(republishTopicName);
+			topicRepublisher.setupPublishing();
+		}
 
 	} // End ejbCreate
 
 	/**
-	 * This method sets up the publishing so the the message driven bean can
-	 * republish the message after doing its thing.
-	 * 
-	 * @return a <code>boolean</code> that indicates if the setup went OK or not
+	 * This method creates the shared <code>IngestPipeline</code> if it does
+	 * not exist yet and counts this bean as one of its users
 	 */
-	private boolean setupPublishing() {
-		// First tear down any existing connections
-		this.tearDownPublishing();
-		this.publishingSetup = false;
-
-		// Set a flag to track success of setup
-		boolean setupOK = true;
-		// First get the naming context from the container
-		try {
-			this.jndiContext = new InitialContext();
-			topicConnectionFactory = (TopicConnectionFactory) jndiContext
-					.lookup("java:/ConnectionFactory");
-			this.topicConnection = topicConnectionFactory
-					.createTopicConnection();
-			this.topic = (Topic) jndiContext.lookup(this.republishTopicName);
-			this.topicSession = this.topicConnection.createTopicSession(false,
-					Session.AUTO_ACKNOWLEDGE);
-			this.topicConnection.start();
-			this.topicPublisher = topicSession.createPublisher(this.topic);
-		} catch (NamingException e) {
-			logger.error("NamingException caught in setupPublishing: "
-					+ e.getMessage());
-			this.publishingSetup = false;
-			setupOK = false;
-		} catch (JMSException e) {
-			logger.error("JMSException caught in setupPublishing: "
-					+ e.getMessage());
-			this.publishingSetup = false;
-			setupOK = false;
-		} catch (Exception e) {
-			logger.error("Exception caught in setupPublishing: "
-					+ e.getMessage());
-			this.publishingSetup = false;
-			setupOK = false;
+	private static synchronized void acquireIngestPipeline(
+			Properties ingestProps, String republishTopicName,
+			boolean fileSerializationEnabled) {
+		if (ingestPipeline == null) {
+			int partitions = 4;
+			int queueCapacity = 1000;
+			try {
+				partitions = Integer.parseInt(ingestProps
+						.getProperty("ingest.pipeline.partitions"));
+			} catch (NumberFormatException e) {
+				logger.warn("Could not read ingest.pipeline.partitions, "
+						+ "will use " + partitions);
+			}
+			try {
+				queueCapacity = Integer.parseInt(ingestProps
+						.getProperty("ingest.pipeline.queue.capacity"));
+			} catch (NumberFormatException e) {
+				logger.warn("Could not read ingest.pipeline.queue.capacity, "
+						+ "will use " + queueCapacity);
+			}
+			ingestPipeline = new IngestPipeline(partitions, queueCapacity,
+					new PacketStorageStage(fileSerializationEnabled),
+					new TopicRepublisher(republishTopicName));
 		}
-		this.publishingSetup = true;
-		return setupOK;
+		ingestPipelineUsers++;
 	}
 
 	/**
-	 * This method stops all the JMS components
-	 * 
-	 * @return
+	 * This method counts this bean out of the users of the shared
+	 * <code>IngestPipeline</code> and shuts the pipeline down when it was the
+	 * last one
 	 */
-	private boolean tearDownPublishing() {
-		this.publishingSetup = false;
-		boolean tearDownOK = true;
-		try {
-			// Close up everything
-			if (this.topicPublisher != null) {
-				this.topicPublisher.close();
-				this.topicPublisher = null;
-			}
-			// Now stop the connection
-			if (this.topicConnection != null) {
-				this.topicConnection.stop();
-			}
-			// Now close the session
-			if (this.topicSession != null) {
-				this.topicSession.close();
-				this.topicSession = null;
-			}
-			// Now close the connection
-			if (this.topicConnection != null) {
-				this.topicConnection.close();
-				this.topicConnection = null;
-			}
-			// Now close the jndi context
-			if (this.jndiContext != null) {
-				this.jndiContext.close();
-				this.jndiContext = null;
-			}
-			// Null out the topic connection factory
-			this.topicConnectionFactory = null;
-		} catch (JMSException e) {
-			logger.error("Tear down caught a JMSException " + e.getMessage());
-			tearDownOK = false;
-		} catch (NamingException e) {
-			logger.error("Tear down caught a NameException " + e.getMessage());
-			tearDownOK = false;
-		} catch (Exception e) {
-			logger.error("Tear down caught a Exception " + e.getMessage());
-			tearDownOK = false;
+	private static synchronized void releaseIngestPipeline() {
+		ingestPipelineUsers--;
+		if ((ingestPipelineUsers <= 0) && (ingestPipeline != null)) {
+			ingestPipeline.shutdown(PIPELINE_SHUTDOWN_TIMEOUT_MILLIS);
+			ingestPipeline = null;
+			ingestPipelineUsers = 0;
 		}
+	}
 
-		return tearDownOK;
+	/**
+	 * @return the shared <code>IngestPipeline</code> (null if the pipeline is
+	 *         not being used)
+	 */
+	public static synchronized IngestPipeline getIngestPipeline() {
+		return ingestPipeline;
 	}
 
 	/**
 	 * This is the callback that the container uses when removing this bean
 	 */
 	public void ejbRemove() {
-		this.tearDownPublishing();
+		if (pipelineEnabled) {
+			releaseIngestPipeline();
+		} else {
+			if (topicRepublisher != null)
+				topicRepublisher.tearDownPublishing();
+			// Write out any rows still waiting in a batch
+			PacketOutputManager.flushPacketSQLOutputs();
+		}
 	} // End ejbRemove
 
 	/**
@@ -304,6 +268,15 @@ public class IngestMDB implements javax.ejb.MessageDrivenBean,
 						+ e.getMessage());
 			}
 
+			// Hand the packet to the pipeline if it is being used
+			if (pipelineEnabled) {
+				byte[] bytes = PacketUtility
+						.extractByteArrayFromBytesMessage(bytesMessage);
+				submitToPipeline(new IngestPacket(deviceID, parentID,
+						packetType, packetSubType, dataDescriptionID, bytes));
+				return;
+			}
+
 			// Check to see if the message should be serialized to disk
 			if (fileSerializationEnabled)
 				persistBytesMessageToFile(deviceID, parentID, packetSubType,
@@ -313,27 +286,38 @@ public class IngestMDB implements javax.ejb.MessageDrivenBean,
 			persistBytesMessageToDatabase(deviceID, bytesMessage);
 
 			// If the packet is a metadata packet, send on to Ruminate
-			if (packetType == 1) {
+			if (packetType == IngestPacket.METADATA_PACKET_TYPE) {
 				logger.debug("bytesMessage was a metadata packet "
 						+ "so ingest will republish");
-				// Should be it, now republish the packet to the next step
-				// Create a new message
-				if (!this.publishingSetup) {
-					logger.error("Publishing was not setup");
-					this.setupPublishing();
-				}
-				try {
-					topicPublisher.publish(bytesMessage);
-				} catch (JMSException e2) {
-					logger.error("JMSException caught while trying "
-							+ "to publish the bytes message" + e2.getMessage());
-					this.publishingSetup = false;
-				}
+				// Should be it, now republish the packet to the next step (the
+				// republisher sets the publishing up again if it has to)
+				topicRepublisher.publish(bytesMessage);
 			}
 		}
 
 	}
 
+	/**
+	 * This method puts the packet on the pipeline (waiting for room if the
+	 * queue of its device is full)
+	 *
+	 * @param packet
+	 */
+	private void submitToPipeline(IngestPacket packet) {
+		IngestPipeline pipeline = getIngestPipeline();
+		if (pipeline == null) {
+			logger.error("The ingest pipeline is not running, packet from device "
+					+ packet.getDeviceID() + " was not stored");
+			return;
+		}
+		try {
+			pipeline.submit(packet);
+		} catch (InterruptedException e) {
+			logger.error("Interrupted while waiting to hand packet from device "
+					+ packet.getDeviceID() + " to the ingest pipeline");
+		}
+	}
+
 	/**
 	 * This method takes in a BytesMessage (JMS Message) and records it's
 	 * contents to storage on disk
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.ingest;
+
+/**
+ * <p>
+ * This class holds one packet as it moves through the stages of the
+ * <code>IngestPipeline</code>. The keys are read from the message when it
+ * arrives and the SSDS formatted bytes are copied out of it, so the packet
+ * does not depend on the JMS message after <code>onMessage</code> returns.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class IngestPacket {
+
+	/**
+	 * This is the packet type of metadata packets (which are republished)
+	 */
+	public static final int METADATA_PACKET_TYPE = 1;
+
+	/**
+	 * The keys of the packet
+	 */
+	private long deviceID;
+	private long parentID;
+	private int packetType;
+	private long packetSubType;
+	private long dataDescriptionID;
+
+	/**
+	 * The packet in the SSDS format
+	 */
+	private byte[] bytes;
+
+	/**
+	 * This constructor takes in the keys of the packet and its bytes
+	 */
+	public IngestPacket(long deviceID, long parentID, int packetType,
+			long packetSubType, long dataDescriptionID, byte[] bytes) {
+		this.deviceID = deviceID;
+		this.parentID = parentID;
+		this.packetType = packetType;
+		this.packetSubType = packetSubType;
+		this.dataDescriptionID = dataDescriptionID;
+		this.bytes = bytes;
+	}
+
+	public long getDeviceID() {
+		return deviceID;
+	}
+
+	public long getParentID() {
+		return parentID;
+	}
+
+	public int getPacketType() {
+		return packetType;
+	}
+
+	public long getPacketSubType() {
+		return packetSubType;
+	}
+
+	public long getDataDescriptionID() {
+		return dataDescriptionID;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return true if this is a metadata packet that should be republished
+	 */
+	public boolean isMetadataPacket() {
+		return packetType == METADATA_PACKET_TYPE;
+	}
+}
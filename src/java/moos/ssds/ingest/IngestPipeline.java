@@ -0,0 +1,419 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.ingest;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * This class takes the work of storing and republishing packets off of the
+ * thread that receives them. Packets are put on one of a number of bounded
+ * queues (partitions) by their device ID, and each partition has one thread
+ * that runs the packets through the storage stage. Since all the packets of a
+ * device go through the same partition, they are stored in the order they
+ * arrived, while a burst of packets from one device only holds up the devices
+ * that share its partition.
+ * </p>
+ * <p>
+ * When a partition runs out of packets, the storage stage is asked to flush
+ * the devices it has seen since the last flush, so under load the database
+ * writes go out in batches and when things are quiet they go out right away.
+ * Metadata packets are handed on (after they are stored) to a separate queue
+ * and thread that runs the republish stage.
+ * </p>
+ * <p>
+ * If a queue is full, <code>submit</code> waits for room (which slows down the
+ * consumer of the topic instead of dropping packets). Every time that happens
+ * it is counted and it is logged as a warning (at most once every
+ * <code>BACK_PRESSURE_LOG_INTERVAL_MILLIS</code>).
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class IngestPipeline {
+
+	/**
+	 * This is the interface of the stages of the pipeline
+	 */
+	public interface Stage {
+
+		/**
+		 * This method does the work of the stage on one packet
+		 */
+		public void process(IngestPacket packet) throws Exception;
+
+		/**
+		 * This method writes out anything held back for the device
+		 */
+		public void flush(long deviceID);
+
+		/**
+		 * This method releases anything the stage holds on to
+		 */
+		public void close();
+	}
+
+	/**
+	 * A log4j logger
+	 */
+	static Logger logger = Logger.getLogger(IngestPipeline.class);
+
+	/**
+	 * The least amount of time between back pressure warnings
+	 */
+	public static final long BACK_PRESSURE_LOG_INTERVAL_MILLIS = 10000;
+
+	/**
+	 * How long the threads wait for a packet before checking if they have
+	 * been asked to stop
+	 */
+	private static final long POLL_MILLIS = 500;
+
+	/**
+	 * This constructor creates and starts the pipeline
+	 *
+	 * @param numberOfPartitions
+	 *            the number of storage queues (and threads)
+	 * @param queueCapacity
+	 *            the number of packets each queue can hold
+	 * @param storageStage
+	 *            the stage that stores the packets
+	 * @param republishStage
+	 *            the stage that republishes the metadata packets (can be null)
+	 */
+	public IngestPipeline(int numberOfPartitions, int queueCapacity,
+			Stage storageStage, Stage republishStage) {
+		if (numberOfPartitions < 1)
+			numberOfPartitions = 1;
+		if (queueCapacity < 1)
+			queueCapacity = 1;
+		this.storageStage = storageStage;
+		this.republishStage = republishStage;
+
+		partitions = new Partition[numberOfPartitions];
+		for (int i = 0; i < numberOfPartitions; i++) {
+			partitions[i] = new Partition(i, queueCapacity);
+			partitions[i].start();
+		}
+		if (republishStage != null) {
+			republishQueue = new ArrayBlockingQueue<IngestPacket>(queueCapacity);
+			republishThread = new Thread(new Runnable() {
+				public void run() {
+					runRepublishStage();
+				}
+			}, "IngestPipeline-republish");
+			republishThread.setDaemon(true);
+			republishThread.start();
+		}
+		logger.info("IngestPipeline started with " + numberOfPartitions
+				+ " partitions of " + queueCapacity + " packets");
+	}
+
+	/**
+	 * This method puts the packet on the queue of its device. If the queue is
+	 * full, it waits until there is room.
+	 *
+	 * @param packet
+	 *            the packet to store (and republish)
+	 * @throws InterruptedException
+	 *             if the wait for room is interrupted
+	 */
+	public void submit(IngestPacket packet) throws InterruptedException {
+		if (!running)
+			throw new IllegalStateException("The IngestPipeline is shut down");
+		Partition partition = partitions[getPartitionIndex(packet
+				.getDeviceID())];
+		if (!partition.queue.offer(packet)) {
+			backPressureCount.incrementAndGet();
+			reportBackPressure(partition);
+			partition.queue.put(packet);
+		}
+		submittedCount.incrementAndGet();
+	}
+
+	/**
+	 * This method stops taking packets, waits (up to the timeout) for the
+	 * queues to empty and then closes the stages
+	 *
+	 * @param timeoutMillis
+	 *            how long to wait for each thread to finish
+	 */
+	public void shutdown(long timeoutMillis) {
+		running = false;
+		for (int i = 0; i < partitions.length; i++) {
+			try {
+				partitions[i].thread.join(timeoutMillis);
+			} catch (InterruptedException e) {
+				logger.error("Interrupted while waiting for partition " + i
+						+ " to finish");
+			}
+			if (partitions[i].queue.size() > 0)
+				logger.error("Partition " + i + " still had "
+						+ partitions[i].queue.size()
+						+ " packets when it was shut down");
+		}
+		// The partitions are done handing on metadata packets
+		republishRunning = false;
+		if (republishThread != null) {
+			try {
+				republishThread.join(timeoutMillis);
+			} catch (InterruptedException e) {
+				logger.error("Interrupted while waiting for "
+						+ "the republish stage to finish");
+			}
+			republishStage.close();
+		}
+		storageStage.close();
+		logger.info("IngestPipeline shut down: " + getStatus());
+	}
+
+	/**
+	 * @return the index of the partition that handles the device
+	 */
+	public int getPartitionIndex(long deviceID) {
+		return (int) Math.abs(deviceID % partitions.length);
+	}
+
+	/**
+	 * @return the number of partitions
+	 */
+	public int getNumberOfPartitions() {
+		return partitions.length;
+	}
+
+	/**
+	 * @return the number of packets waiting in the queue of the partition
+	 */
+	public int getQueueDepth(int partitionIndex) {
+		return partitions[partitionIndex].queue.size();
+	}
+
+	/**
+	 * @return the number of metadata packets waiting to be republished
+	 */
+	public int getRepublishQueueDepth() {
+		return (republishQueue == null) ? 0 : republishQueue.size();
+	}
+
+	/**
+	 * @return the number of packets that have been submitted
+	 */
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	/**
+	 * @return the number of packets that have been through the storage stage
+	 */
+	public long getStoredCount() {
+		return storedCount.get();
+	}
+
+	/**
+	 * @return the number of packets that a stage failed on
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * @return the number of times <code>submit</code> had to wait for room
+	 */
+	public long getBackPressureCount() {
+		return backPressureCount.get();
+	}
+
+	/**
+	 * @return a one line description of the state of the pipeline
+	 */
+	public String getStatus() {
+		StringBuffer status = new StringBuffer();
+		status.append("submitted=" + submittedCount.get());
+		status.append(", stored=" + storedCount.get());
+		status.append(", failed=" + failedCount.get());
+		status.append(", backPressure=" + backPressureCount.get());
+		status.append(", queueDepths=[");
+		for (int i = 0; i < partitions.length; i++) {
+			if (i > 0)
+				status.append(",");
+			status.append(partitions[i].queue.size());
+		}
+		status.append("], republishQueueDepth=" + getRepublishQueueDepth());
+		return status.toString();
+	}
+
+	/**
+	 * This method logs a warning that the partition is full (if one has not
+	 * been logged too recently)
+	 */
+	private void reportBackPressure(Partition partition) {
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			if (now - lastBackPressureLogMillis < BACK_PRESSURE_LOG_INTERVAL_MILLIS)
+				return;
+			lastBackPressureLogMillis = now;
+		}
+		logger.warn("IngestPipeline partition " + partition.index
+				+ " is full, ingest is waiting on storage (" + getStatus()
+				+ ")");
+	}
+
+	/**
+	 * This is the loop of the republish thread
+	 */
+	private void runRepublishStage() {
+		while (republishRunning || !republishQueue.isEmpty()) {
+			IngestPacket packet = null;
+			try {
+				packet = republishQueue.poll(POLL_MILLIS,
+						TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				break;
+			}
+			if (packet == null)
+				continue;
+			try {
+				republishStage.process(packet);
+			} catch (Throwable t) {
+				failedCount.incrementAndGet();
+				logger.error("Could not republish packet from device "
+						+ packet.getDeviceID() + ": " + t.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * This class is one queue of packets and the thread that stores them
+	 */
+	private class Partition implements Runnable {
+
+		private int index;
+		private BlockingQueue<IngestPacket> queue = null;
+		private Thread thread = null;
+
+		/**
+		 * The devices that have been stored since the last flush
+		 */
+		private Set<Long> devicesToFlush = new HashSet<Long>();
+
+		Partition(int index, int queueCapacity) {
+			this.index = index;
+			this.queue = new ArrayBlockingQueue<IngestPacket>(queueCapacity);
+			this.thread = new Thread(this, "IngestPipeline-partition-"
+					+ index);
+			this.thread.setDaemon(true);
+		}
+
+		void start() {
+			thread.start();
+		}
+
+		public void run() {
+			while (running || !queue.isEmpty()) {
+				IngestPacket packet = null;
+				try {
+					packet = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					break;
+				}
+				if (packet != null)
+					store(packet);
+				// Once the queue runs dry, write out what has been held back
+				if (queue.isEmpty())
+					flushDevices();
+			}
+			flushDevices();
+		}
+
+		private void store(IngestPacket packet) {
+			try {
+				storageStage.process(packet);
+				storedCount.incrementAndGet();
+			} catch (Throwable t) {
+				failedCount.incrementAndGet();
+				logger.error("Could not store packet from device "
+						+ packet.getDeviceID() + ": " + t.getMessage());
+			}
+			devicesToFlush.add(new Long(packet.getDeviceID()));
+
+			// Metadata packets go on to be republished
+			if (packet.isMetadataPacket() && (republishQueue != null)) {
+				try {
+					republishQueue.put(packet);
+				} catch (InterruptedException e) {
+					logger.error("Interrupted while waiting to republish "
+							+ "packet from device " + packet.getDeviceID());
+				}
+			}
+		}
+
+		private void flushDevices() {
+			for (Iterator<Long> iterator = devicesToFlush.iterator(); iterator
+					.hasNext();) {
+				try {
+					storageStage.flush(iterator.next().longValue());
+				} catch (Throwable t) {
+					logger.error("Could not flush partition " + index + ": "
+							+ t.getMessage());
+				}
+			}
+			devicesToFlush.clear();
+		}
+	}
+
+	/**
+	 * The stages
+	 */
+	private Stage storageStage = null;
+	private Stage republishStage = null;
+
+	/**
+	 * The storage partitions and the republish queue and thread
+	 */
+	private Partition[] partitions = null;
+	private BlockingQueue<IngestPacket> republishQueue = null;
+	private Thread republishThread = null;
+
+	/**
+	 * This is false once the pipeline has been asked to shut down
+	 */
+	private volatile boolean running = true;
+
+	/**
+	 * This is false once the partitions have finished (so nothing more will
+	 * be put on the republish queue)
+	 */
+	private volatile boolean republishRunning = true;
+
+	/**
+	 * The counters
+	 */
+	private AtomicLong submittedCount = new AtomicLong();
+	private AtomicLong storedCount = new AtomicLong();
+	private AtomicLong failedCount = new AtomicLong();
+	private AtomicLong backPressureCount = new AtomicLong();
+	private long lastBackPressureLogMillis = 0;
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.ingest;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import moos.ssds.io.PacketOutput;
+import moos.ssds.io.PacketOutputManager;
+import moos.ssds.io.PacketSQLOutput;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * This is the stage of the <code>IngestPipeline</code> that stores the
+ * packets. It writes each packet to its file (if file serialization is on)
+ * and then to the table of its device. The <code>PacketSQLOutput</code>s
+ * collect the rows in batches, and the pipeline flushes the batches of a
+ * device when its queue runs dry.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class PacketStorageStage implements IngestPipeline.Stage {
+
+	/**
+	 * A log4j logger
+	 */
+	static Logger logger = Logger.getLogger(PacketStorageStage.class);
+
+	/**
+	 * This is a flag to indicate if the packets should be serialized to disk
+	 * as well as to the database
+	 */
+	private boolean fileSerializationEnabled = false;
+
+	/**
+	 * The constructor
+	 *
+	 * @param fileSerializationEnabled
+	 *            true if the packets should also be written to disk
+	 */
+	public PacketStorageStage(boolean fileSerializationEnabled) {
+		this.fileSerializationEnabled = fileSerializationEnabled;
+	}
+
+	/**
+	 * @see IngestPipeline.Stage#process(IngestPacket)
+	 */
+	public void process(IngestPacket packet) throws Exception {
+		// Check to see if the packet should be serialized to disk
+		if (fileSerializationEnabled) {
+			PacketOutput po = PacketOutputManager.getPacketOutput(packet
+					.getDeviceID(), packet.getDataDescriptionID(), packet
+					.getPacketSubType(), packet.getParentID());
+			try {
+				po.writeBytes(packet.getBytes());
+			} catch (IOException e) {
+				logger.error("IOException caught trying to write to disk: "
+						+ e.getMessage());
+			}
+		}
+
+		// Now "Serialize" the packet to the database
+		PacketSQLOutput pso = PacketOutputManager.getPacketSQLOutput(packet
+				.getDeviceID());
+		try {
+			pso.writeBytes(packet.getBytes());
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to persist "
+					+ "packet from device " + packet.getDeviceID()
+					+ " to the database: " + e.getMessage());
+			throw e;
+		}
+	}
+
+	/**
+	 * @see IngestPipeline.Stage#flush(long)
+	 */
+	public void flush(long deviceID) {
+		PacketOutputManager.getPacketSQLOutput(deviceID).flush();
+	}
+
+	/**
+	 * @see IngestPipeline.Stage#close()
+	 */
+	public void close() {
+		PacketOutputManager.flushPacketSQLOutputs();
+	}
+}
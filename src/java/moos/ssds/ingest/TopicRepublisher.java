@@ -0,0 +1,289 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.ingest;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Session;
+import javax.jms.Topic;
+import javax.jms.TopicConnection;
+import javax.jms.TopicConnectionFactory;
+import javax.jms.TopicPublisher;
+import javax.jms.TopicSession;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * This class manages the JMS connection that ingest uses to republish packets
+ * to the next topic. If the publishing is not set up (or a publish fails), the
+ * connection is set up again and the publish is tried one more time, so one
+ * bad connection does not stop all the packets that follow from being
+ * republished.
+ * </p>
+ * <p>
+ * A JMS session can only be used by one thread at a time, so the methods are
+ * synchronized. It is also the republish stage of the
+ * <code>IngestPipeline</code>.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class TopicRepublisher implements IngestPipeline.Stage {
+
+	/**
+	 * A log4j logger
+	 */
+	static Logger logger = Logger.getLogger(TopicRepublisher.class);
+
+	/**
+	 * This is the name of the topic that the packets will be republished to
+	 */
+	private String republishTopicName = null;
+
+	/**
+	 * This is the JNDI Context that will be used (Naming Service) to locate the
+	 * appropriate remote classes to use for publishing messages.
+	 */
+	private Context jndiContext = null;
+
+	/**
+	 * The TopicConnectionFactory that will be used to republish messages
+	 */
+	private TopicConnectionFactory topicConnectionFactory = null;
+
+	/**
+	 * This is the connection to the topic that the messages will be published
+	 * to
+	 */
+	private TopicConnection topicConnection = null;
+
+	/**
+	 * This is the JMS topic that will be used for publishing
+	 */
+	private Topic topic = null;
+
+	/**
+	 * This is a session that the publishing of messages will be run in.
+	 */
+	private TopicSession topicSession = null;
+
+	/**
+	 * This is the topic publisher that is actually used to send messages to the
+	 * topic
+	 */
+	private TopicPublisher topicPublisher = null;
+
+	/**
+	 * This is a boolean to indicated if the publishing is setup and working
+	 * correctly
+	 */
+	private boolean publishingSetup = false;
+
+	/**
+	 * This constructor takes in the JNDI name of the topic to republish to
+	 * (the connection is set up the first time it is needed)
+	 *
+	 * @param republishTopicName
+	 */
+	public TopicRepublisher(String republishTopicName) {
+		this.republishTopicName = republishTopicName;
+	}
+
+	/**
+	 * This method sets up the publishing so that packets can be republished.
+	 *
+	 * @return a <code>boolean</code> that indicates if the setup went OK or not
+	 */
+	public synchronized boolean setupPublishing() {
+		// First tear down any existing connections
+		this.tearDownPublishing();
+
+		// Set a flag to track success of setup
+		boolean setupOK = true;
+		// First get the naming context from the container
+		try {
+			this.jndiContext = new InitialContext();
+			topicConnectionFactory = (TopicConnectionFactory) jndiContext
+					.lookup("java:/ConnectionFactory");
+			this.topicConnection = topicConnectionFactory
+					.createTopicConnection();
+			this.topic = (Topic) jndiContext.lookup(this.republishTopicName);
+			this.topicSession = this.topicConnection.createTopicSession(false,
+					Session.AUTO_ACKNOWLEDGE);
+			this.topicConnection.start();
+			this.topicPublisher = topicSession.createPublisher(this.topic);
+		} catch (NamingException e) {
+			logger.error("NamingException caught in setupPublishing: "
+					+ e.getMessage());
+			setupOK = false;
+		} catch (JMSException e) {
+			logger.error("JMSException caught in setupPublishing: "
+					+ e.getMessage());
+			setupOK = false;
+		} catch (Exception e) {
+			logger.error("Exception caught in setupPublishing: "
+					+ e.getMessage());
+			setupOK = false;
+		}
+		// Only mark it as setup if it all worked
+		this.publishingSetup = setupOK;
+		return setupOK;
+	}
+
+	/**
+	 * This method stops all the JMS components
+	 *
+	 * @return a <code>boolean</code> that indicates if the tear down went OK
+	 */
+	public synchronized boolean tearDownPublishing() {
+		this.publishingSetup = false;
+		boolean tearDownOK = true;
+		try {
+			// Close up everything
+			if (this.topicPublisher != null) {
+				this.topicPublisher.close();
+				this.topicPublisher = null;
+			}
+			// Now stop the connection
+			if (this.topicConnection != null) {
+				this.topicConnection.stop();
+			}
+			// Now close the session
+			if (this.topicSession != null) {
+				this.topicSession.close();
+				this.topicSession = null;
+			}
+			// Now close the connection
+			if (this.topicConnection != null) {
+				this.topicConnection.close();
+				this.topicConnection = null;
+			}
+			// Now close the jndi context
+			if (this.jndiContext != null) {
+				this.jndiContext.close();
+				this.jndiContext = null;
+			}
+		} catch (JMSException e) {
+			logger.error("Tear down caught a JMSException " + e.getMessage());
+			tearDownOK = false;
+		} catch (NamingException e) {
+			logger.error("Tear down caught a NameException " + e.getMessage());
+			tearDownOK = false;
+		} catch (Exception e) {
+			logger.error("Tear down caught a Exception " + e.getMessage());
+			tearDownOK = false;
+		} finally {
+			// Start from scratch next time, even if the close failed
+			this.topicPublisher = null;
+			this.topicSession = null;
+			this.topicConnection = null;
+			this.jndiContext = null;
+			this.topicConnectionFactory = null;
+		}
+
+		return tearDownOK;
+	}
+
+	/**
+	 * @return true if the publishing is currently set up
+	 */
+	public boolean isPublishingSetup() {
+		return publishingSetup;
+	}
+
+	/**
+	 * This method republishes a message that was received
+	 *
+	 * @param bytesMessage
+	 *            the message to republish
+	 * @return true if the message was published
+	 */
+	public synchronized boolean publish(BytesMessage bytesMessage) {
+		return publish(bytesMessage, null);
+	}
+
+	/**
+	 * This method publishes a new message that contains the bytes given
+	 *
+	 * @param bytes
+	 *            the SSDS formatted bytes to publish
+	 * @return true if the message was published
+	 */
+	public synchronized boolean publish(byte[] bytes) {
+		return publish(null, bytes);
+	}
+
+	/**
+	 * This method publishes either the message (if it is not null) or a new
+	 * message made from the bytes. If it fails, the publishing is set up again
+	 * and it is tried once more.
+	 */
+	private boolean publish(BytesMessage bytesMessage, byte[] bytes) {
+		for (int attempt = 0; attempt < 2; attempt++) {
+			if (!this.publishingSetup) {
+				logger.warn("Publishing was not setup, will set it up");
+				if (!this.setupPublishing())
+					continue;
+			}
+			try {
+				BytesMessage messageToPublish = bytesMessage;
+				if (messageToPublish == null) {
+					messageToPublish = topicSession.createBytesMessage();
+					messageToPublish.writeBytes(bytes);
+				}
+				topicPublisher.publish(messageToPublish);
+				return true;
+			} catch (JMSException e) {
+				logger.error("JMSException caught while trying "
+						+ "to publish the bytes message: " + e.getMessage());
+				this.publishingSetup = false;
+			}
+		}
+		logger.error("Could not republish the message to "
+				+ this.republishTopicName);
+		return false;
+	}
+
+	/**
+	 * @see IngestPipeline.Stage#process(IngestPacket)
+	 */
+	public void process(IngestPacket packet) throws Exception {
+		if (!this.publish(packet.getBytes()))
+			throw new JMSException("Could not republish packet from device "
+					+ packet.getDeviceID());
+	}
+
+	/**
+	 * Nothing is held back, so there is nothing to flush
+	 *
+	 * @see IngestPipeline.Stage#flush(long)
+	 */
+	public void flush(long deviceID) {
+	}
+
+	/**
+	 * @see IngestPipeline.Stage#close()
+	 */
+	public void close() {
+		this.tearDownPublishing();
+	}
+}
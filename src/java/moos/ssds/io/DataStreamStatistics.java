@@ -0,0 +1,360 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.io;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * This class holds the running statistics of one stream of packets (a device
+ * and record type, or a device and all of its record types). The statistics
+ * are updated one packet at a time as packets are ingested so that questions
+ * like "how many records are there", "when was the last one" and "where are
+ * the gaps" can be answered without scanning the device table.
+ * </p>
+ * <p>
+ * The gap index holds every pair of consecutive timestamps that are further
+ * apart than the minimum gap of the index, so it can answer any gap query
+ * whose gap (plus margin) is at least that large. The average sample interval
+ * is the time spanned by the stream divided by the number of intervals in it.
+ * Packets with timestamps too far in the future are counted, but otherwise
+ * ignored (the same way the latest timestamp query ignored them).
+ * </p>
+ * <p>
+ * The changes to the gap index since the statistics were last persisted are
+ * kept so that only those have to be written (see
+ * <code>DataStreamStatisticsStore</code>).
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class DataStreamStatistics {
+
+	/**
+	 * This is the record type used for the statistics of all the packets of a
+	 * device (no matter what record type they are)
+	 */
+	public static final long ALL_RECORD_TYPES = -1;
+
+	/**
+	 * Packets whose timestamp is more than this far ahead of the clock when
+	 * they are recorded are considered to be in the future
+	 */
+	public static final long FUTURE_TOLERANCE_MILLIS = 60000;
+
+	/**
+	 * The device and record type of the stream
+	 */
+	private long deviceID;
+	private long recordType;
+
+	/**
+	 * The total number of records in the stream
+	 */
+	private long numberOfRecords = 0;
+
+	/**
+	 * The earliest and latest timestamps (epoch millis) in the stream (zero if
+	 * there are none yet)
+	 */
+	private long firstTimestampMillis = 0;
+	private long latestTimestampMillis = 0;
+
+	/**
+	 * The number of intervals between the timestamps from the first to the
+	 * latest
+	 */
+	private long numberOfIntervals = 0;
+
+	/**
+	 * The smallest gap (in millis) that is put in the gap index
+	 */
+	private long gapIndexMinMillis = 0;
+
+	/**
+	 * The gap index, start of the gap (epoch millis) to end of the gap
+	 */
+	private TreeMap<Long, Long> gaps = new TreeMap<Long, Long>();
+
+	/**
+	 * The gaps that have been added to and removed from the index since the
+	 * last time the statistics were persisted
+	 */
+	private TreeMap<Long, Long> addedGaps = new TreeMap<Long, Long>();
+	private List<Long> removedGapStarts = new ArrayList<Long>();
+
+	/**
+	 * This is true if the statistics have changed since they were last
+	 * persisted
+	 */
+	private boolean dirty = false;
+
+	/**
+	 * This constructs the statistics for a new (empty) stream
+	 *
+	 * @param deviceID
+	 *            the ID of the device
+	 * @param recordType
+	 *            the record type (or <code>ALL_RECORD_TYPES</code>)
+	 * @param gapIndexMinMillis
+	 *            the smallest gap (in millis) that is put in the gap index
+	 */
+	public DataStreamStatistics(long deviceID, long recordType,
+			long gapIndexMinMillis) {
+		this.deviceID = deviceID;
+		this.recordType = recordType;
+		this.gapIndexMinMillis = gapIndexMinMillis;
+	}
+
+	/**
+	 * This constructs the statistics from values that were persisted earlier
+	 * (the gaps can be added with <code>loadGap</code>)
+	 */
+	public DataStreamStatistics(long deviceID, long recordType,
+			long numberOfRecords, long firstTimestampMillis,
+			long latestTimestampMillis, long numberOfIntervals,
+			long gapIndexMinMillis) {
+		this(deviceID, recordType, gapIndexMinMillis);
+		this.numberOfRecords = numberOfRecords;
+		this.firstTimestampMillis = firstTimestampMillis;
+		this.latestTimestampMillis = latestTimestampMillis;
+		this.numberOfIntervals = numberOfIntervals;
+	}
+
+	/**
+	 * This method updates the statistics with the timestamp of a new packet
+	 *
+	 * @param timestampMillis
+	 *            the timestamp of the packet (epoch millis)
+	 * @param nowMillis
+	 *            the current time (epoch millis), used to leave out packets
+	 *            from the future
+	 */
+	public synchronized void addTimestamp(long timestampMillis, long nowMillis) {
+		numberOfRecords++;
+		dirty = true;
+
+		// Packets from the future are only counted
+		if ((timestampMillis <= 0)
+				|| (timestampMillis > nowMillis + FUTURE_TOLERANCE_MILLIS))
+			return;
+
+		if (latestTimestampMillis == 0) {
+			// The first one
+			firstTimestampMillis = timestampMillis;
+			latestTimestampMillis = timestampMillis;
+		} else if (timestampMillis > latestTimestampMillis) {
+			// The usual case, a new latest timestamp
+			numberOfIntervals++;
+			if (timestampMillis - latestTimestampMillis > gapIndexMinMillis)
+				addGap(latestTimestampMillis, timestampMillis);
+			latestTimestampMillis = timestampMillis;
+		} else if (timestampMillis < firstTimestampMillis) {
+			// A packet from before the start of the stream
+			numberOfIntervals++;
+			if (firstTimestampMillis - timestampMillis > gapIndexMinMillis)
+				addGap(timestampMillis, firstTimestampMillis);
+			firstTimestampMillis = timestampMillis;
+		} else if ((timestampMillis != latestTimestampMillis)
+				&& (timestampMillis != firstTimestampMillis)) {
+			// A packet that arrived late and splits an interval in two (which
+			// does not change the time spanned by the stream)
+			numberOfIntervals++;
+			// Split the gap that the packet falls in (the last one that
+			// starts before it, if it ends after it)
+			SortedMap<Long, Long> earlierGaps = gaps.headMap(new Long(
+					timestampMillis));
+			if (!earlierGaps.isEmpty()) {
+				long start = earlierGaps.lastKey().longValue();
+				long end = earlierGaps.get(earlierGaps.lastKey()).longValue();
+				if (end > timestampMillis) {
+					removeGap(start);
+					if (timestampMillis - start > gapIndexMinMillis)
+						addGap(start, timestampMillis);
+					if (end - timestampMillis > gapIndexMinMillis)
+						addGap(timestampMillis, end);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method adds a gap that was persisted earlier to the index (it is
+	 * not recorded as a change)
+	 */
+	public synchronized void loadGap(long startMillis, long endMillis) {
+		gaps.put(new Long(startMillis), new Long(endMillis));
+	}
+
+	/**
+	 * This method returns true if the gap index can answer a query for gaps
+	 * larger than the given threshold
+	 */
+	public boolean isGapIndexedFor(long gapThresholdMillis) {
+		return gapThresholdMillis >= gapIndexMinMillis;
+	}
+
+	/**
+	 * This method returns the gaps in the index that are larger than the
+	 * threshold and that start and end inside the window
+	 *
+	 * @return a <code>TreeMap</code> of start <code>Date</code> to end
+	 *         <code>Date</code>
+	 */
+	public synchronized TreeMap<Date, Date> getGaps(long windowStartMillis,
+			long windowEndMillis, long gapThresholdMillis) {
+		TreeMap<Date, Date> gapsToReturn = new TreeMap<Date, Date>();
+		Iterator<Map.Entry<Long, Long>> iterator = gaps.tailMap(
+				new Long(windowStartMillis)).entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Long, Long> gap = iterator.next();
+			long start = gap.getKey().longValue();
+			long end = gap.getValue().longValue();
+			if (start >= windowEndMillis)
+				break;
+			if ((end < windowEndMillis) && (end - start > gapThresholdMillis))
+				gapsToReturn.put(new Date(start), new Date(end));
+		}
+		return gapsToReturn;
+	}
+
+	/**
+	 * This method adds a gap to the index and records it as a change
+	 */
+	private void addGap(long startMillis, long endMillis) {
+		Long start = new Long(startMillis);
+		Long end = new Long(endMillis);
+		gaps.put(start, end);
+		addedGaps.put(start, end);
+	}
+
+	/**
+	 * This method removes a gap from the index and records it as a change
+	 */
+	private void removeGap(long startMillis) {
+		Long start = new Long(startMillis);
+		gaps.remove(start);
+		// If it was never persisted, just forget about it
+		if (addedGaps.remove(start) == null)
+			removedGapStarts.add(start);
+	}
+
+	/**
+	 * @return the gaps that were added since the statistics were last
+	 *         persisted
+	 */
+	public synchronized TreeMap<Long, Long> getAddedGaps() {
+		return new TreeMap<Long, Long>(addedGaps);
+	}
+
+	/**
+	 * @return the starts of the gaps that were removed since the statistics
+	 *         were last persisted
+	 */
+	public synchronized List<Long> getRemovedGapStarts() {
+		return new ArrayList<Long>(removedGapStarts);
+	}
+
+	/**
+	 * This method clears the changes once they have been persisted
+	 */
+	public synchronized void markPersisted() {
+		addedGaps.clear();
+		removedGapStarts.clear();
+		dirty = false;
+	}
+
+	/**
+	 * @return true if the statistics have changed since they were last
+	 *         persisted
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	public long getDeviceID() {
+		return deviceID;
+	}
+
+	public long getRecordType() {
+		return recordType;
+	}
+
+	public long getNumberOfRecords() {
+		return numberOfRecords;
+	}
+
+	public long getFirstTimestampMillis() {
+		return firstTimestampMillis;
+	}
+
+	public long getLatestTimestampMillis() {
+		return latestTimestampMillis;
+	}
+
+	public long getNumberOfIntervals() {
+		return numberOfIntervals;
+	}
+
+	public long getGapIndexMinMillis() {
+		return gapIndexMinMillis;
+	}
+
+	/**
+	 * @return the number of gaps in the index
+	 */
+	public synchronized int getNumberOfGaps() {
+		return gaps.size();
+	}
+
+	/**
+	 * @return the average time between samples (in millis) or -1 if there are
+	 *         not at least two samples yet
+	 */
+	public long getAverageSampleIntervalMillis() {
+		if (numberOfIntervals <= 0)
+			return -1;
+		return (latestTimestampMillis - firstTimestampMillis)
+				/ numberOfIntervals;
+	}
+
+	/**
+	 * @return the latest timestamp as a <code>Date</code> (null if there is
+	 *         none)
+	 */
+	public Date getLatestTimestamp() {
+		if (latestTimestampMillis <= 0)
+			return null;
+		return new Date(latestTimestampMillis);
+	}
+
+	public String toString() {
+		return "DataStreamStatistics[deviceID=" + deviceID + ",recordType="
+				+ recordType + ",numberOfRecords=" + numberOfRecords
+				+ ",firstTimestampMillis=" + firstTimestampMillis
+				+ ",latestTimestampMillis=" + latestTimestampMillis
+				+ ",numberOfIntervals=" + numberOfIntervals
+				+ ",numberOfGaps=" + gaps.size() + "]";
+	}
+}
@@ -0,0 +1,677 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.io;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import moos.ssds.util.DateUtils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * This class keeps the <code>DataStreamStatistics</code> of the devices that
+ * packets are being written for and persists them in two tables next to the
+ * device tables:
+ * </p>
+ * <ul>
+ * <li>DataStreamStatistics - one row per device and record type (and one with
+ * record type <code>ALL_RECORD_TYPES</code> per device) with the number of
+ * records, first and latest timestamps, number of intervals and the minimum
+ * gap of the gap index</li>
+ * <li>DataStreamGap - one row per gap in the gap index</li>
+ * </ul>
+ * <p>
+ * The statistics of a device are loaded the first time a packet for that
+ * device comes through. If nothing was persisted for the device yet, its
+ * table is read once (timestamps only, in order) to build them. After that
+ * they are updated as packets are written and persisted when the packets are
+ * committed, so readers (see the static <code>read*</code> methods) never
+ * have to scan the device tables. It is assumed that only one store writes
+ * the statistics for any one device. Devices that have not had a packet for
+ * longer than the idle time (and whose statistics have been persisted) are
+ * dropped from memory and loaded again with their next packet.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class DataStreamStatisticsStore {
+
+	/**
+	 * The names of the tables
+	 */
+	public static final String STATISTICS_TABLE_NAME = "DataStreamStatistics";
+	public static final String GAP_TABLE_NAME = "DataStreamGap";
+
+	/**
+	 * The string that is used to delimit table names
+	 */
+	private String sqlTableDelimiter = null;
+
+	/**
+	 * The smallest gap (in millis) that is put in the gap index of new streams
+	 */
+	private long gapIndexMinMillis = 0;
+
+	/**
+	 * The statistics that have been loaded, a map of device ID to a map of
+	 * record type to <code>DataStreamStatistics</code>
+	 */
+	private Map<Long, Map<Long, DataStreamStatistics>> devices = new HashMap<Long, Map<Long, DataStreamStatistics>>();
+
+	/**
+	 * How long (in millis) a device can go without a packet before its
+	 * persisted statistics are dropped from memory (zero or less keeps them
+	 * forever)
+	 */
+	private long deviceIdleMillis = 0;
+
+	/**
+	 * The time (epoch millis) each device that is loaded last had a packet
+	 */
+	private Map<Long, Long> deviceLastUsedMillis = new HashMap<Long, Long>();
+
+	/**
+	 * The time (epoch millis) the idle devices were last looked for
+	 */
+	private long lastIdleCheckMillis = System.currentTimeMillis();
+
+	/**
+	 * A log4j logger
+	 */
+	static Logger logger = Logger.getLogger(DataStreamStatisticsStore.class);
+
+	/**
+	 * The constructor
+	 *
+	 * @param sqlTableDelimiter
+	 *            the string that is used to delimit table names
+	 * @param gapIndexMinMillis
+	 *            the smallest gap (in millis) that is put in the gap index
+	 */
+	public DataStreamStatisticsStore(String sqlTableDelimiter,
+			long gapIndexMinMillis) {
+		this(sqlTableDelimiter, gapIndexMinMillis, 0);
+	}
+
+	/**
+	 * The constructor
+	 *
+	 * @param sqlTableDelimiter
+	 *            the string that is used to delimit table names
+	 * @param gapIndexMinMillis
+	 *            the smallest gap (in millis) that is put in the gap index
+	 * @param deviceIdleMillis
+	 *            how long a device can go without a packet before its
+	 *            (persisted) statistics are dropped from memory, zero or less
+	 *            keeps them forever
+	 */
+	public DataStreamStatisticsStore(String sqlTableDelimiter,
+			long gapIndexMinMillis, long deviceIdleMillis) {
+		this.sqlTableDelimiter = (sqlTableDelimiter == null) ? ""
+				: sqlTableDelimiter;
+		this.gapIndexMinMillis = gapIndexMinMillis;
+		this.deviceIdleMillis = deviceIdleMillis;
+	}
+
+	/**
+	 * This method creates the statistics tables if they are not in the
+	 * database yet
+	 *
+	 * @param connection
+	 *            the connection to the database
+	 * @param createStatisticsTableSQL
+	 *            the SQL that creates the statistics table
+	 * @param createGapTableSQL
+	 *            the SQL that creates the gap table
+	 * @return true if the tables are there
+	 */
+	public static boolean createTables(Connection connection,
+			String createStatisticsTableSQL, String createGapTableSQL) {
+		boolean tablesOK = true;
+		if (!doesTableExist(connection, STATISTICS_TABLE_NAME))
+			tablesOK = executeCreate(connection, createStatisticsTableSQL);
+		if (tablesOK && !doesTableExist(connection, GAP_TABLE_NAME))
+			tablesOK = executeCreate(connection, createGapTableSQL);
+		return tablesOK;
+	}
+
+	/**
+	 * This method makes sure the statistics of a device are loaded. It has to
+	 * be called before the first packet of the device is written so that the
+	 * packet is not counted twice when the statistics are built from the
+	 * device table.
+	 *
+	 * @param connection
+	 *            the connection to use
+	 * @param deviceID
+	 *            the ID of the device
+	 */
+	public synchronized void ensureLoaded(Connection connection, long deviceID)
+			throws SQLException {
+		Long deviceKey = new Long(deviceID);
+		deviceLastUsedMillis.put(deviceKey, new Long(System
+				.currentTimeMillis()));
+		if (devices.containsKey(deviceKey))
+			return;
+		Map<Long, DataStreamStatistics> streams = loadStatistics(connection,
+				deviceID);
+		if (streams.size() == 0)
+			streams = buildStatistics(connection, deviceID);
+		devices.put(deviceKey, streams);
+	}
+
+	/**
+	 * This method updates the statistics of a device with a packet that has
+	 * been written (the statistics of the device must have been loaded)
+	 *
+	 * @param deviceID
+	 *            the ID of the device
+	 * @param recordType
+	 *            the record type (packet sub type) of the packet
+	 * @param timestampMillis
+	 *            the timestamp of the packet (epoch millis)
+	 */
+	public synchronized void recordPacket(long deviceID, long recordType,
+			long timestampMillis) {
+		Map<Long, DataStreamStatistics> streams = devices.get(new Long(
+				deviceID));
+		if (streams == null)
+			return;
+		long now = System.currentTimeMillis();
+		getStream(streams, deviceID, recordType).addTimestamp(timestampMillis,
+				now);
+		getStream(streams, deviceID, DataStreamStatistics.ALL_RECORD_TYPES)
+				.addTimestamp(timestampMillis, now);
+	}
+
+	/**
+	 * This method writes the statistics (and gap index changes) of a device
+	 * that have changed since they were last persisted. It does not commit and
+	 * the changes are kept until <code>markPersisted</code> is called (so they
+	 * are written again if the transaction is rolled back).
+	 *
+	 * @param connection
+	 *            the connection to write with
+	 * @param deviceID
+	 *            the ID of the device
+	 */
+	public synchronized void persist(Connection connection, long deviceID)
+			throws SQLException {
+		Map<Long, DataStreamStatistics> streams = devices.get(new Long(
+				deviceID));
+		if (streams == null)
+			return;
+		PreparedStatement update = null;
+		PreparedStatement insert = null;
+		PreparedStatement insertGap = null;
+		PreparedStatement deleteGap = null;
+		try {
+			for (Iterator<DataStreamStatistics> iterator = streams.values()
+					.iterator(); iterator.hasNext();) {
+				DataStreamStatistics statistics = iterator.next();
+				if (!statistics.isDirty())
+					continue;
+
+				// Write the gap index changes
+				List<Long> removedGapStarts = statistics.getRemovedGapStarts();
+				if (removedGapStarts.size() > 0) {
+					if (deleteGap == null)
+						deleteGap = connection.prepareStatement("DELETE FROM "
+								+ getTable(GAP_TABLE_NAME)
+								+ " WHERE DeviceID = ? AND RecordType = ? "
+								+ "AND StartMillis = ?");
+					for (Iterator<Long> starts = removedGapStarts.iterator(); starts
+							.hasNext();) {
+						deleteGap.setLong(1, deviceID);
+						deleteGap.setLong(2, statistics.getRecordType());
+						deleteGap.setLong(3, starts.next().longValue());
+						deleteGap.executeUpdate();
+					}
+				}
+				TreeMap<Long, Long> addedGaps = statistics.getAddedGaps();
+				if (addedGaps.size() > 0) {
+					// Each one is deleted first in case an earlier attempt to
+					// persist got part way through
+					if (deleteGap == null)
+						deleteGap = connection.prepareStatement("DELETE FROM "
+								+ getTable(GAP_TABLE_NAME)
+								+ " WHERE DeviceID = ? AND RecordType = ? "
+								+ "AND StartMillis = ?");
+					if (insertGap == null)
+						insertGap = connection.prepareStatement("INSERT INTO "
+								+ getTable(GAP_TABLE_NAME)
+								+ " (DeviceID, RecordType, StartMillis, "
+								+ "EndMillis) VALUES (?,?,?,?)");
+					for (Iterator<Map.Entry<Long, Long>> gaps = addedGaps
+							.entrySet().iterator(); gaps.hasNext();) {
+						Map.Entry<Long, Long> gap = gaps.next();
+						deleteGap.setLong(1, deviceID);
+						deleteGap.setLong(2, statistics.getRecordType());
+						deleteGap.setLong(3, gap.getKey().longValue());
+						deleteGap.executeUpdate();
+						insertGap.setLong(1, deviceID);
+						insertGap.setLong(2, statistics.getRecordType());
+						insertGap.setLong(3, gap.getKey().longValue());
+						insertGap.setLong(4, gap.getValue().longValue());
+						insertGap.executeUpdate();
+					}
+				}
+
+				// Now the statistics row (update it, or insert it if it is not
+				// there yet)
+				if (update == null)
+					update = connection.prepareStatement("UPDATE "
+							+ getTable(STATISTICS_TABLE_NAME)
+							+ " SET NumberOfRecords = ?, "
+							+ "FirstTimestampMillis = ?, "
+							+ "LatestTimestampMillis = ?, "
+							+ "NumberOfIntervals = ?, GapIndexMinMillis = ? "
+							+ "WHERE DeviceID = ? AND RecordType = ?");
+				update.setLong(1, statistics.getNumberOfRecords());
+				update.setLong(2, statistics.getFirstTimestampMillis());
+				update.setLong(3, statistics.getLatestTimestampMillis());
+				update.setLong(4, statistics.getNumberOfIntervals());
+				update.setLong(5, statistics.getGapIndexMinMillis());
+				update.setLong(6, deviceID);
+				update.setLong(7, statistics.getRecordType());
+				if (update.executeUpdate() == 0) {
+					if (insert == null)
+						insert = connection.prepareStatement("INSERT INTO "
+								+ getTable(STATISTICS_TABLE_NAME)
+								+ " (DeviceID, RecordType, NumberOfRecords, "
+								+ "FirstTimestampMillis, LatestTimestampMillis, "
+								+ "NumberOfIntervals, GapIndexMinMillis) "
+								+ "VALUES (?,?,?,?,?,?,?)");
+					insert.setLong(1, deviceID);
+					insert.setLong(2, statistics.getRecordType());
+					insert.setLong(3, statistics.getNumberOfRecords());
+					insert.setLong(4, statistics.getFirstTimestampMillis());
+					insert.setLong(5, statistics.getLatestTimestampMillis());
+					insert.setLong(6, statistics.getNumberOfIntervals());
+					insert.setLong(7, statistics.getGapIndexMinMillis());
+					insert.executeUpdate();
+				}
+			}
+		} finally {
+			closeStatement(update);
+			closeStatement(insert);
+			closeStatement(insertGap);
+			closeStatement(deleteGap);
+		}
+	}
+
+	/**
+	 * This method clears the changes of the statistics of a device once they
+	 * have been committed (and drops the devices that have been idle too long
+	 * from memory)
+	 */
+	public synchronized void markPersisted(long deviceID) {
+		Map<Long, DataStreamStatistics> streams = devices.get(new Long(
+				deviceID));
+		if (streams != null) {
+			for (Iterator<DataStreamStatistics> iterator = streams.values()
+					.iterator(); iterator.hasNext();) {
+				DataStreamStatistics statistics = iterator.next();
+				if (statistics.isDirty())
+					statistics.markPersisted();
+			}
+		}
+		this.removeIdleDevices();
+	}
+
+	/**
+	 * This method drops the statistics of the devices that have not had a
+	 * packet for longer than the idle time from memory (the ones with changes
+	 * that have not been persisted are kept). It looks at most once per idle
+	 * time.
+	 */
+	private void removeIdleDevices() {
+		long now = System.currentTimeMillis();
+		if ((deviceIdleMillis <= 0)
+				|| (now - lastIdleCheckMillis < deviceIdleMillis))
+			return;
+		lastIdleCheckMillis = now;
+		for (Iterator<Map.Entry<Long, Long>> iterator = deviceLastUsedMillis
+				.entrySet().iterator(); iterator.hasNext();) {
+			Map.Entry<Long, Long> lastUsed = iterator.next();
+			if (now - lastUsed.getValue().longValue() < deviceIdleMillis)
+				continue;
+			Map<Long, DataStreamStatistics> streams = devices.get(lastUsed
+					.getKey());
+			boolean dirty = false;
+			if (streams != null) {
+				for (Iterator<DataStreamStatistics> streamIter = streams
+						.values().iterator(); streamIter.hasNext();) {
+					if (streamIter.next().isDirty())
+						dirty = true;
+				}
+			}
+			if (dirty)
+				continue;
+			devices.remove(lastUsed.getKey());
+			iterator.remove();
+			logger.debug("Dropped the statistics of idle device "
+					+ lastUsed.getKey());
+		}
+	}
+
+	/**
+	 * @return the number of devices whose statistics are in memory
+	 */
+	public synchronized int getNumberOfLoadedDevices() {
+		return devices.size();
+	}
+
+	/**
+	 * This method returns the statistics of a device and record type that
+	 * have been loaded (null if they have not been)
+	 */
+	public synchronized DataStreamStatistics getStatistics(long deviceID,
+			long recordType) {
+		Map<Long, DataStreamStatistics> streams = devices.get(new Long(
+				deviceID));
+		if (streams == null)
+			return null;
+		return streams.get(new Long(recordType));
+	}
+
+	/**
+	 * This method reads the persisted statistics of a device and record type
+	 * (without the gap index)
+	 *
+	 * @param connection
+	 *            the connection to read with
+	 * @param sqlTableDelimiter
+	 *            the string that is used to delimit table names
+	 * @param deviceID
+	 *            the ID of the device
+	 * @param recordType
+	 *            the record type (null for all record types)
+	 * @return the statistics or null if there are none for the device (in
+	 *         which case the statistics are not being kept for it)
+	 */
+	public static DataStreamStatistics readStatistics(Connection connection,
+			String sqlTableDelimiter, Long deviceID, Long recordType)
+			throws SQLException {
+		if (deviceID == null)
+			return null;
+		long recordTypeToRead = (recordType == null) ? DataStreamStatistics.ALL_RECORD_TYPES
+				: recordType.longValue();
+		String delimiter = (sqlTableDelimiter == null) ? ""
+				: sqlTableDelimiter;
+		PreparedStatement pstmt = connection.prepareStatement("SELECT "
+				+ "RecordType, NumberOfRecords, FirstTimestampMillis, "
+				+ "LatestTimestampMillis, NumberOfIntervals, GapIndexMinMillis "
+				+ "FROM " + delimiter + STATISTICS_TABLE_NAME + delimiter
+				+ " WHERE DeviceID = ? AND (RecordType = ? OR RecordType = ?)");
+		DataStreamStatistics statistics = null;
+		boolean deviceFound = false;
+		try {
+			pstmt.setLong(1, deviceID.longValue());
+			pstmt.setLong(2, recordTypeToRead);
+			pstmt.setLong(3, DataStreamStatistics.ALL_RECORD_TYPES);
+			ResultSet rs = pstmt.executeQuery();
+			while (rs.next()) {
+				// The all record types row tells us the device is tracked
+				deviceFound = true;
+				if (rs.getLong(1) == recordTypeToRead)
+					statistics = readStatistics(rs, deviceID.longValue());
+			}
+			rs.close();
+		} finally {
+			closeStatement(pstmt);
+		}
+		// If the device is tracked, but there is nothing for the record type,
+		// the stream is empty
+		if (deviceFound && (statistics == null))
+			statistics = new DataStreamStatistics(deviceID.longValue(),
+					recordTypeToRead, 0);
+		return statistics;
+	}
+
+	/**
+	 * This method reads the gaps of a stream from the gap index that are
+	 * larger than the threshold and start and end within the window (the
+	 * statistics of the stream must say the index can answer for the
+	 * threshold)
+	 *
+	 * @return a <code>TreeMap</code> of start <code>Date</code> to end
+	 *         <code>Date</code>
+	 */
+	public static TreeMap<Date, Date> readGaps(Connection connection,
+			String sqlTableDelimiter, long deviceID, long recordType,
+			long windowStartMillis, long windowEndMillis,
+			long gapThresholdMillis) throws SQLException {
+		TreeMap<Date, Date> gaps = new TreeMap<Date, Date>();
+		String delimiter = (sqlTableDelimiter == null) ? ""
+				: sqlTableDelimiter;
+		PreparedStatement pstmt = connection.prepareStatement("SELECT "
+				+ "StartMillis, EndMillis FROM " + delimiter + GAP_TABLE_NAME
+				+ delimiter + " WHERE DeviceID = ? AND RecordType = ? "
+				+ "AND StartMillis >= ? AND StartMillis < ? AND EndMillis < ? "
+				+ "ORDER BY StartMillis");
+		try {
+			pstmt.setLong(1, deviceID);
+			pstmt.setLong(2, recordType);
+			pstmt.setLong(3, windowStartMillis);
+			pstmt.setLong(4, windowEndMillis);
+			pstmt.setLong(5, windowEndMillis);
+			ResultSet rs = pstmt.executeQuery();
+			while (rs.next()) {
+				long start = rs.getLong(1);
+				long end = rs.getLong(2);
+				if (end - start > gapThresholdMillis)
+					gaps.put(new Date(start), new Date(end));
+			}
+			rs.close();
+		} finally {
+			closeStatement(pstmt);
+		}
+		return gaps;
+	}
+
+	/**
+	 * This method loads the persisted statistics (and gap indexes) of a device
+	 */
+	private Map<Long, DataStreamStatistics> loadStatistics(
+			Connection connection, long deviceID) throws SQLException {
+		Map<Long, DataStreamStatistics> streams = new HashMap<Long, DataStreamStatistics>();
+		PreparedStatement pstmt = connection.prepareStatement("SELECT "
+				+ "RecordType, NumberOfRecords, FirstTimestampMillis, "
+				+ "LatestTimestampMillis, NumberOfIntervals, GapIndexMinMillis "
+				+ "FROM " + getTable(STATISTICS_TABLE_NAME)
+				+ " WHERE DeviceID = ?");
+		try {
+			pstmt.setLong(1, deviceID);
+			ResultSet rs = pstmt.executeQuery();
+			while (rs.next()) {
+				DataStreamStatistics statistics = readStatistics(rs, deviceID);
+				streams.put(new Long(statistics.getRecordType()), statistics);
+			}
+			rs.close();
+		} finally {
+			closeStatement(pstmt);
+		}
+		if (streams.size() == 0)
+			return streams;
+
+		pstmt = connection.prepareStatement("SELECT RecordType, StartMillis, "
+				+ "EndMillis FROM " + getTable(GAP_TABLE_NAME)
+				+ " WHERE DeviceID = ?");
+		try {
+			pstmt.setLong(1, deviceID);
+			ResultSet rs = pstmt.executeQuery();
+			while (rs.next()) {
+				DataStreamStatistics statistics = streams.get(new Long(rs
+						.getLong(1)));
+				if (statistics != null)
+					statistics.loadGap(rs.getLong(2), rs.getLong(3));
+			}
+			rs.close();
+		} finally {
+			closeStatement(pstmt);
+		}
+		logger.debug("Loaded statistics of " + streams.size()
+				+ " streams for device " + deviceID);
+		return streams;
+	}
+
+	/**
+	 * This method builds the statistics of a device from the packets that are
+	 * already in its table (this is only done once per device, after that the
+	 * statistics are persisted)
+	 */
+	private Map<Long, DataStreamStatistics> buildStatistics(
+			Connection connection, long deviceID) throws SQLException {
+		Map<Long, DataStreamStatistics> streams = new HashMap<Long, DataStreamStatistics>();
+		// There is always a row for all the record types, so readers know the
+		// device is being tracked
+		getStream(streams, deviceID, DataStreamStatistics.ALL_RECORD_TYPES);
+
+		// Read the timestamps in order
+		if (doesTableExist(connection, "" + deviceID)) {
+			logger.info("Building the data stream statistics for device "
+					+ deviceID + " from its table");
+			Statement stmt = connection.createStatement();
+			try {
+				ResultSet rs = stmt.executeQuery("SELECT packetSubType, "
+						+ "timestampSeconds, timestampNanoseconds FROM "
+						+ getTable("" + deviceID)
+						+ " ORDER BY timestampSeconds, timestampNanoseconds");
+				long now = System.currentTimeMillis();
+				while (rs.next()) {
+					long timestampMillis = DateUtils
+							.constructEpochMillisFromEpochSecondsAndNanoseconds(
+									rs.getLong(2), rs.getLong(3));
+					getStream(streams, deviceID, rs.getLong(1)).addTimestamp(
+							timestampMillis, now);
+					getStream(streams, deviceID,
+							DataStreamStatistics.ALL_RECORD_TYPES)
+							.addTimestamp(timestampMillis, now);
+				}
+				rs.close();
+			} finally {
+				closeStatement(stmt);
+			}
+		}
+		return streams;
+	}
+
+	/**
+	 * This method returns the statistics of a stream from the map, creating
+	 * them if they are not there
+	 */
+	private DataStreamStatistics getStream(
+			Map<Long, DataStreamStatistics> streams, long deviceID,
+			long recordType) {
+		Long recordTypeKey = new Long(recordType);
+		DataStreamStatistics statistics = streams.get(recordTypeKey);
+		if (statistics == null) {
+			statistics = new DataStreamStatistics(deviceID, recordType,
+					gapIndexMinMillis);
+			streams.put(recordTypeKey, statistics);
+		}
+		return statistics;
+	}
+
+	/**
+	 * This method reads the statistics from the current row of the result set
+	 */
+	private static DataStreamStatistics readStatistics(ResultSet rs,
+			long deviceID) throws SQLException {
+		return new DataStreamStatistics(deviceID, rs.getLong("RecordType"), rs
+				.getLong("NumberOfRecords"), rs.getLong("FirstTimestampMillis"),
+				rs.getLong("LatestTimestampMillis"), rs
+						.getLong("NumberOfIntervals"), rs
+						.getLong("GapIndexMinMillis"));
+	}
+
+	/**
+	 * This method returns the delimited name of a table
+	 */
+	private String getTable(String tableName) {
+		return sqlTableDelimiter + tableName + sqlTableDelimiter;
+	}
+
+	/**
+	 * This method checks the database metadata for a table
+	 */
+	private static boolean doesTableExist(Connection connection,
+			String tableName) {
+		boolean tableFound = false;
+		try {
+			DatabaseMetaData dbm = connection.getMetaData();
+			String[] tableTypes = { "TABLE" };
+			ResultSet tables = dbm.getTables(null, null, tableName, tableTypes);
+			while (tables.next()) {
+				tableFound = true;
+			}
+			tables.close();
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to look for table "
+					+ tableName + ": " + e.getMessage());
+		}
+		return tableFound;
+	}
+
+	/**
+	 * This method runs a create statement
+	 */
+	private static boolean executeCreate(Connection connection, String sql) {
+		if ((sql == null) || (sql.trim().length() == 0)) {
+			logger.error("No SQL was given to create a statistics table");
+			return false;
+		}
+		try {
+			PreparedStatement pstmt = connection.prepareStatement(sql);
+			pstmt.execute();
+			pstmt.close();
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to create "
+					+ "statistics table: " + e.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * This method closes a statement and logs any problem
+	 */
+	private static void closeStatement(Statement statement) {
+		if (statement == null)
+			return;
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to close statement: "
+					+ e.getMessage());
+		}
+	}
+}
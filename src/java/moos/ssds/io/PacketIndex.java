@@ -0,0 +1,463 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import moos.ssds.io.util.SSDSv3PacketView;
+import moos.ssds.util.DateUtils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * This class keeps a sparse index of a file of serialized packets (the files
+ * that <code>PacketOutput</code> writes). The index is kept in a file next to
+ * the packet file (with <code>.idx</code> added to the name) and is a list of
+ * fixed length entries. Each entry has the byte offset of a packet in the
+ * packet file, the latest timestamp (epoch milliseconds) and the largest
+ * sequence number of all the packets up to and including that packet.
+ * </p>
+ * <p>
+ * Because the entries hold the largest values seen so far (and not the values
+ * of the packet at the offset), they always increase and every packet before
+ * the offset of an entry is no later than the entry. So, to find the packets
+ * at or after some time, a reader can binary search for the last entry that is
+ * earlier than that time, skip to its offset and read forward from there
+ * without missing any packets, even if the packets were not written in time
+ * order.
+ * </p>
+ * <p>
+ * An entry is added for the first packet in the file and then after every
+ * <code>packetInterval</code> packets or when the packet time has moved more
+ * than <code>timeIntervalMillis</code> past the last entry (whichever comes
+ * first). If the index is missing or behind the packet file (when packets were
+ * written before the index existed) it is brought up to date by reading
+ * through the headers of the packets that are not indexed. If the packet file
+ * has packets that are not in the version 3 format, no index is kept and
+ * readers will read from the start of the file.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1 $
+ */
+public class PacketIndex {
+
+	/**
+	 * A log4j logger
+	 */
+	static Logger logger = Logger.getLogger(PacketIndex.class);
+
+	/**
+	 * This is what is added to the name of the packet file to get the name of
+	 * the index file
+	 */
+	public static final String INDEX_FILE_SUFFIX = ".idx";
+
+	/**
+	 * This is the number of bytes in each entry (offset, time and sequence
+	 * number as longs)
+	 */
+	public static final int ENTRY_LENGTH = 24;
+
+	/**
+	 * These are the default intervals between entries
+	 */
+	public static final int DEFAULT_PACKET_INTERVAL = 100;
+	public static final long DEFAULT_TIME_INTERVAL_MILLIS = 60000;
+
+	/**
+	 * This is the constructor that sets up the index for a packet file that is
+	 * going to be written to. The existing index (if any) is checked against
+	 * the packet file when the first packet is written.
+	 *
+	 * @param packetFile
+	 *            is the file of serialized packets that is being indexed
+	 * @param packetInterval
+	 *            is the most packets that will be written between entries
+	 * @param timeIntervalMillis
+	 *            is the most time (in packet time) between entries (zero means
+	 *            the entries are only made by packet count)
+	 */
+	public PacketIndex(File packetFile, int packetInterval,
+			long timeIntervalMillis) {
+		this.packetFile = packetFile;
+		this.indexFile = getIndexFile(packetFile);
+		this.packetInterval = packetInterval;
+		this.timeIntervalMillis = timeIntervalMillis;
+	}
+
+	/**
+	 * This method returns the index file that goes with a packet file
+	 *
+	 * @param packetFile
+	 * @return the <code>File</code> where the index of the packet file is
+	 */
+	public static File getIndexFile(File packetFile) {
+		return new File(packetFile.getAbsolutePath() + INDEX_FILE_SUFFIX);
+	}
+
+	/**
+	 * @return the file of serialized packets this index is for
+	 */
+	public File getPacketFile() {
+		return packetFile;
+	}
+
+	/**
+	 * This method is called after a version 3 packet has been written to the
+	 * packet file and adds an entry to the index if one is due.
+	 *
+	 * @param offset
+	 *            is the byte offset in the packet file where the packet starts
+	 *            (where its version number is)
+	 * @param timestampSeconds
+	 *            is the seconds part of the packet timestamp
+	 * @param timestampNanoseconds
+	 *            is the nanoseconds part of the packet timestamp
+	 * @param sequenceNumber
+	 *            is the sequence number of the packet
+	 */
+	public void packetWritten(long offset, long timestampSeconds,
+			long timestampNanoseconds, long sequenceNumber) {
+		if (!checked)
+			checkIndex(offset);
+		if (!enabled)
+			return;
+		try {
+			addPacket(offset, DateUtils
+					.constructEpochMillisFromEpochSecondsAndNanoseconds(
+							timestampSeconds, timestampNanoseconds),
+					sequenceNumber);
+		} catch (IOException e) {
+			logger.error("IOException caught writing to the index "
+					+ indexFile.getAbsolutePath()
+					+ " (the index will be removed): " + e.getMessage());
+			disable();
+		}
+	}
+
+	/**
+	 * This method returns the offset in the packet file where reading should
+	 * start to find the first packet at or after the given time.
+	 *
+	 * @param packetFile
+	 *            is the file of serialized packets
+	 * @param epochMillis
+	 *            is the time to look for
+	 * @return the offset to start reading from (zero if there is no index or
+	 *         nothing in it is earlier than the time)
+	 */
+	public static long findOffsetBeforeTime(File packetFile, long epochMillis) {
+		return findOffsetBefore(packetFile, 8, epochMillis);
+	}
+
+	/**
+	 * This method returns the offset in the packet file where reading should
+	 * start to find the first packet with a sequence number at or after the
+	 * given one.
+	 *
+	 * @param packetFile
+	 *            is the file of serialized packets
+	 * @param sequenceNumber
+	 *            is the sequence number to look for
+	 * @return the offset to start reading from (zero if there is no index or
+	 *         nothing in it is before the sequence number)
+	 */
+	public static long findOffsetBeforeSequence(File packetFile,
+			long sequenceNumber) {
+		return findOffsetBefore(packetFile, 16, sequenceNumber);
+	}
+
+	/**
+	 * This method does the binary search for the last entry whose key (at the
+	 * given position in the entry) is less than the target.
+	 */
+	private static long findOffsetBefore(File packetFile, int keyPosition,
+			long target) {
+		File indexFile = getIndexFile(packetFile);
+		if (!indexFile.exists())
+			return 0;
+		long packetFileLength = packetFile.length();
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(indexFile, "r");
+			long low = 0;
+			long high = raf.length() / ENTRY_LENGTH - 1;
+			long offset = 0;
+			while (low <= high) {
+				long middle = (low + high) >>> 1;
+				raf.seek(middle * ENTRY_LENGTH + keyPosition);
+				if (raf.readLong() < target) {
+					raf.seek(middle * ENTRY_LENGTH);
+					offset = raf.readLong();
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			// The index could be newer than what made it to the packet file
+			if ((offset < 0) || (offset >= packetFileLength)) {
+				logger.warn("The index " + indexFile.getAbsolutePath()
+						+ " points past the end of the packet file, will"
+						+ " read from the start");
+				offset = 0;
+			}
+			return offset;
+		} catch (IOException e) {
+			logger.error("IOException caught reading the index "
+					+ indexFile.getAbsolutePath() + ": " + e.getMessage());
+			return 0;
+		} finally {
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method updates the running maximums and writes an entry if one is
+	 * due
+	 */
+	private void addPacket(long offset, long epochMillis, long sequenceNumber)
+			throws IOException {
+		if (epochMillis > latestMillis)
+			latestMillis = epochMillis;
+		if (sequenceNumber > largestSequenceNumber)
+			largestSequenceNumber = sequenceNumber;
+		packetsSinceEntry++;
+		boolean entryDue = (numberOfEntries == 0)
+				|| (packetsSinceEntry >= packetInterval);
+		if ((!entryDue) && (timeIntervalMillis > 0))
+			entryDue = (latestMillis - lastEntryMillis >= timeIntervalMillis);
+		if (entryDue) {
+			DataOutputStream indexOut = new DataOutputStream(
+					new FileOutputStream(indexFile, true));
+			try {
+				indexOut.writeLong(offset);
+				indexOut.writeLong(latestMillis);
+				indexOut.writeLong(largestSequenceNumber);
+			} finally {
+				indexOut.close();
+			}
+			numberOfEntries++;
+			packetsSinceEntry = 0;
+			lastEntryMillis = latestMillis;
+		}
+	}
+
+	/**
+	 * This method is called before the first entry is written. It reads the
+	 * last entry of the existing index (dropping any entries that point past
+	 * the packet that is being written) and then reads through the headers of
+	 * the packets after that entry so the index covers the whole packet file.
+	 *
+	 * @param endOffset
+	 *            is the offset of the packet that was just written (all the
+	 *            packets before it are already in the packet file)
+	 */
+	private void checkIndex(long endOffset) {
+		checked = true;
+		if (packetInterval <= 0) {
+			enabled = false;
+			return;
+		}
+		enabled = true;
+		long scanFrom = 0;
+		RandomAccessFile raf = null;
+		try {
+			if (indexFile.exists()) {
+				raf = new RandomAccessFile(indexFile, "rw");
+				long entries = raf.length() / ENTRY_LENGTH;
+				// Drop entries that are not in the packet file (or torn)
+				while (entries > 0) {
+					raf.seek((entries - 1) * ENTRY_LENGTH);
+					if (raf.readLong() < endOffset)
+						break;
+					entries--;
+				}
+				raf.setLength(entries * ENTRY_LENGTH);
+				if (entries > 0) {
+					raf.seek((entries - 1) * ENTRY_LENGTH);
+					scanFrom = raf.readLong();
+					latestMillis = raf.readLong();
+					largestSequenceNumber = raf.readLong();
+					lastEntryMillis = latestMillis;
+					numberOfEntries = entries;
+					// The packet at the entry is already counted
+					packetsSinceEntry = -1;
+				}
+			}
+		} catch (IOException e) {
+			logger.error("IOException caught reading the index "
+					+ indexFile.getAbsolutePath()
+					+ " (the index will be rebuilt): " + e.getMessage());
+			indexFile.delete();
+			scanFrom = 0;
+			numberOfEntries = 0;
+			packetsSinceEntry = 0;
+			latestMillis = Long.MIN_VALUE;
+			largestSequenceNumber = Long.MIN_VALUE;
+		} finally {
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		if (scanFrom < endOffset) {
+			if (scanFrom == 0)
+				logger.info("Indexing the existing packets in "
+						+ packetFile.getAbsolutePath());
+			if (!indexExistingPackets(scanFrom, endOffset))
+				disable();
+		}
+	}
+
+	/**
+	 * This method reads the headers of the packets in the given range of the
+	 * packet file and adds them to the index
+	 *
+	 * @return <code>true</code> if the packets could be read and indexed
+	 */
+	private boolean indexExistingPackets(long fromOffset, long toOffset) {
+		DataInputStream packetIn = null;
+		try {
+			packetIn = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(packetFile)));
+			skipFully(packetIn, fromOffset);
+			long offset = fromOffset;
+			byte[] header = new byte[SSDSv3PacketView.HEADER_LENGTH];
+			while (offset < toOffset) {
+				if (packetIn.readInt() != 3) {
+					logger.warn("The packet file "
+							+ packetFile.getAbsolutePath()
+							+ " has packets that are not version 3, it will"
+							+ " not be indexed");
+					return false;
+				}
+				packetIn.readFully(header);
+				DataInputStream headerIn = new DataInputStream(
+						new ByteArrayInputStream(header));
+				headerIn.skip(SSDSv3PacketView.TIMESTAMP_SECONDS_OFFSET);
+				long timestampSeconds = headerIn.readLong();
+				long timestampNanoseconds = headerIn.readLong();
+				long sequenceNumber = headerIn.readLong();
+				int bufferLen = headerIn.readInt();
+				if (bufferLen < 0)
+					return false;
+				skipFully(packetIn, bufferLen);
+				int bufferTwoLen = packetIn.readInt();
+				if (bufferTwoLen < 0)
+					return false;
+				skipFully(packetIn, bufferTwoLen);
+				addPacket(offset, DateUtils
+						.constructEpochMillisFromEpochSecondsAndNanoseconds(
+								timestampSeconds, timestampNanoseconds),
+						sequenceNumber);
+				offset += 4 + SSDSv3PacketView.HEADER_LENGTH + bufferLen + 4
+						+ bufferTwoLen;
+			}
+			return offset == toOffset;
+		} catch (EOFException e) {
+			logger.warn("The packet file " + packetFile.getAbsolutePath()
+					+ " ended in the middle of a packet, it will not be"
+					+ " indexed");
+			return false;
+		} catch (IOException e) {
+			logger.error("IOException caught indexing the packet file "
+					+ packetFile.getAbsolutePath() + ": " + e.getMessage());
+			return false;
+		} finally {
+			if (packetIn != null) {
+				try {
+					packetIn.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method skips the given number of bytes (or throws an
+	 * <code>EOFException</code> if there are not that many)
+	 */
+	private static void skipFully(DataInputStream in, long numberOfBytes)
+			throws IOException {
+		while (numberOfBytes > 0) {
+			long skipped = in.skip(numberOfBytes);
+			if (skipped <= 0) {
+				if (in.read() < 0)
+					throw new EOFException();
+				skipped = 1;
+			}
+			numberOfBytes -= skipped;
+		}
+	}
+
+	/**
+	 * This method stops indexing and removes the index file so readers do not
+	 * use an index that is missing packets
+	 */
+	private void disable() {
+		enabled = false;
+		if (indexFile.exists() && !indexFile.delete())
+			logger.error("Could not remove the index "
+					+ indexFile.getAbsolutePath());
+	}
+
+	/**
+	 * The packet file and its index
+	 */
+	private File packetFile = null;
+	private File indexFile = null;
+
+	/**
+	 * The intervals between entries
+	 */
+	private int packetInterval = DEFAULT_PACKET_INTERVAL;
+	private long timeIntervalMillis = DEFAULT_TIME_INTERVAL_MILLIS;
+
+	/**
+	 * These indicate if the existing index has been checked against the packet
+	 * file and if entries are being written
+	 */
+	private boolean checked = false;
+	private boolean enabled = false;
+
+	/**
+	 * The running state of the index
+	 */
+	private long numberOfEntries = 0;
+	private int packetsSinceEntry = 0;
+	private long lastEntryMillis = Long.MIN_VALUE;
+	private long latestMillis = Long.MIN_VALUE;
+	private long largestSequenceNumber = Long.MIN_VALUE;
+}
@@ -1167,6 +1167,78 @@ public class PacketInput implements Enumeration<Object> {
 		return objectToReturn;
 	}
 
+	/**
+	 * This method moves the input to the first packet (in the order they are
+	 * in the file) whose timestamp is at or after the given time, so that the
+	 * next call to <code>nextElement</code> returns that packet. It uses the
+	 * index that <code>PacketOutput</code> keeps next to the packet file (see
+	 * <code>PacketIndex</code>) to skip most of the file and then reads
+	 * forward. If there is no index, it reads forward from the start of the
+	 * file.
+	 * 
+	 * @param epochMillis
+	 *            is the time (epoch milliseconds) to seek to
+	 * @return <code>true</code> if a packet at or after the time was found,
+	 *         <code>false</code> if the end of the file was reached first
+	 * @throws IOException
+	 *             if the input is not reading from a file or something goes
+	 *             wrong with the reading
+	 */
+	public boolean seekToTime(long epochMillis) throws IOException {
+		if ((file == null) || (urlSource))
+			throw new IOException(
+					"Seeking is only supported when reading from a file");
+		return seekForward(PacketIndex.findOffsetBeforeTime(file, epochMillis),
+				epochMillis, true);
+	}
+
+	/**
+	 * This method moves the input to the first packet (in the order they are
+	 * in the file) whose sequence number is at or after the given one, so that
+	 * the next call to <code>nextElement</code> returns that packet. Like
+	 * <code>seekToTime</code>, it uses the index of the packet file if there is
+	 * one.
+	 * 
+	 * @param sequenceNumber
+	 *            is the sequence number to seek to
+	 * @return <code>true</code> if a packet at or after the sequence number was
+	 *         found, <code>false</code> if the end of the file was reached
+	 *         first
+	 * @throws IOException
+	 *             if the input is not reading from a file or something goes
+	 *             wrong with the reading
+	 */
+	public boolean seekToSequence(long sequenceNumber) throws IOException {
+		if ((file == null) || (urlSource))
+			throw new IOException(
+					"Seeking is only supported when reading from a file");
+		return seekForward(PacketIndex.findOffsetBeforeSequence(file,
+				sequenceNumber), sequenceNumber, false);
+	}
+
+	/**
+	 * This method starts reading at the given offset and reads packets until
+	 * it finds one whose time (or sequence number) is at or after the target.
+	 * The input is then reset to the start of that packet.
+	 */
+	private boolean seekForward(long offset, long target, boolean byTime)
+			throws IOException {
+		setFile(file, offset);
+		while (hasMoreElements()) {
+			long packetStart = bytesReadSoFar;
+			Object nextElement = nextElement();
+			if (nextElement instanceof SSDSDevicePacket) {
+				SSDSDevicePacket packet = (SSDSDevicePacket) nextElement;
+				long key = byTime ? packet.systemTime() : packet.sequenceNo();
+				if (key >= target) {
+					setFile(file, packetStart);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * This is the method to return the number of bytes that have been read from
 	 * the <code>PacketInput</code> source already
@@ -23,6 +23,8 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.FileOutputStream;
 import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.OutputStream;
 
 import javax.jms.BytesMessage;
 
@@ -69,6 +71,28 @@ public class PacketOutput {
 	 */
 	private File file;
 
+	/**
+	 * This is the length the file had when the output stream was opened (so
+	 * the offset of a packet is this plus what has been written to the stream)
+	 */
+	private long fileOffset = 0;
+
+	/**
+	 * This counts the bytes written to the stream since it was opened. The
+	 * count of <code>DataOutputStream.size()</code> is an int and stops at 2
+	 * GB, so it can not be used for the offsets of the packets.
+	 */
+	private CountingOutputStream countingStream = null;
+
+	/**
+	 * This is the sparse time/sequence index that is kept next to the file
+	 * (see <code>PacketIndex</code>) and the intervals between its entries. A
+	 * packet interval of zero (or less) means no index is written.
+	 */
+	private PacketIndex packetIndex = null;
+	private int indexPacketInterval = PacketIndex.DEFAULT_PACKET_INTERVAL;
+	private long indexTimeIntervalMillis = PacketIndex.DEFAULT_TIME_INTERVAL_MILLIS;
+
 	/**
 	 * A log4j logger
 	 */
@@ -121,9 +145,16 @@ public class PacketOutput {
 		if (out != null) {
 			out.close();
 		}
+		// If the file is changing, the index has to change with it
+		if ((packetIndex != null) && (!packetIndex.getPacketFile().equals(file))) {
+			packetIndex = null;
+		}
 		// Set the file
 		this.file = file;
 
+		// Remember where the new packets will start
+		fileOffset = file.length();
+
 		// Create the file output stream
 		FileOutputStream fos = null;
 
@@ -134,7 +165,9 @@ public class PacketOutput {
 			fos = new FileOutputStream(file);
 		}
 		// Now create the data output stream
-		out = new DataOutputStream(new BufferedOutputStream(fos));
+		countingStream = new CountingOutputStream(new BufferedOutputStream(
+				fos));
+		out = new DataOutputStream(countingStream);
 	}
 
 	/**
@@ -149,6 +182,30 @@ public class PacketOutput {
 		return file;
 	}
 
+	/**
+	 * This method sets the number of packets written between the entries of
+	 * the time/sequence index of the file. Zero (or less) turns the index off.
+	 * 
+	 * @param indexPacketInterval
+	 */
+	public synchronized void setIndexPacketInterval(int indexPacketInterval) {
+		this.indexPacketInterval = indexPacketInterval;
+		this.packetIndex = null;
+	}
+
+	/**
+	 * This method sets the most time (in milliseconds of packet time) between
+	 * the entries of the time/sequence index of the file. Zero means entries
+	 * are only made by the number of packets.
+	 * 
+	 * @param indexTimeIntervalMillis
+	 */
+	public synchronized void setIndexTimeIntervalMillis(
+			long indexTimeIntervalMillis) {
+		this.indexTimeIntervalMillis = indexTimeIntervalMillis;
+		this.packetIndex = null;
+	}
+
 	/**
 	 * This method closes the <code>DataOutputStream<code> that an instance of
 	 * <code>PacketOutput</code> is serialzing packets to.
@@ -335,6 +392,9 @@ public class PacketOutput {
 			DataInputStream dis = new DataInputStream(bis);
 
 			try {
+				// This is where the packet starts in the file
+				long offset = fileOffset + countingStream.getCount();
+
 				// Write out the serial number
 				out.writeInt(3);
 
@@ -388,6 +448,15 @@ public class PacketOutput {
 				dis.read(bufferTwoBytes);
 				out.write(bufferTwoBytes);
 
+				// Add the packet to the index
+				if (indexPacketInterval > 0) {
+					if (packetIndex == null)
+						packetIndex = new PacketIndex(file,
+								indexPacketInterval, indexTimeIntervalMillis);
+					packetIndex.packetWritten(offset, timestampSeconds,
+							timestampNanoseconds, sequenceNumber);
+				}
+
 				// Write all this to a logger
 				// Debugging stuff
 				// TODO kgomes (I should look for outrageously big buffer here)
@@ -450,4 +519,30 @@ public class PacketOutput {
 		out.flush();
 	}
 
+
+	/**
+	 * This stream counts the bytes written through it (in a long)
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+
+		private long count = 0;
+	}
 }
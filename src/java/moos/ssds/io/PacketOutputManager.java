@@ -93,6 +93,27 @@ public class PacketOutputManager {
 	private static String createTimestampIndexSQLTemplate = null;
 	private static String sqlTableDelimiter = null;
 
+	/**
+	 * These are the batch size and flush interval (milliseconds) that the
+	 * PacketSQLOutputs will be configured with. A batch size of one means each
+	 * packet is written as it is received.
+	 */
+	private static int sqlBatchSize = 1;
+	private static long sqlBatchFlushIntervalMillis = 0;
+
+	/**
+	 * These are the number of packets and the time (milliseconds) between the
+	 * entries of the index that is kept next to each packet file
+	 */
+	private static int indexPacketInterval = PacketIndex.DEFAULT_PACKET_INTERVAL;
+	private static long indexTimeIntervalMillis = PacketIndex.DEFAULT_TIME_INTERVAL_MILLIS;
+
+	/**
+	 * This is the store of data stream statistics that the PacketSQLOutputs
+	 * update (null if the statistics tables could not be set up)
+	 */
+	private static DataStreamStatisticsStore statisticsStore = null;
+
 	/**
 	 * This is the static <code>PacketOutputManager</code> that enforces the
 	 * singelton pattern.
@@ -178,6 +199,116 @@ public class PacketOutputManager {
 		logger.debug("Create timestamp index -> "
 				+ createTimestampIndexSQLTemplate);
 		logger.debug("SQL table delimiter -> " + sqlTableDelimiter);
+
+		// Grab the batching parameters for the SQL outputs
+		try {
+			sqlBatchSize = Integer.parseInt(ioProperties.getProperty(
+					"io.storage.sql.batch.size", "1").trim());
+		} catch (NumberFormatException e) {
+			logger.error("Could not parse io.storage.sql.batch.size, "
+					+ "will write packets one at a time: " + e.getMessage());
+			sqlBatchSize = 1;
+		}
+		try {
+			sqlBatchFlushIntervalMillis = Long.parseLong(ioProperties
+					.getProperty("io.storage.sql.batch.flush.interval.millis",
+							"0").trim());
+		} catch (NumberFormatException e) {
+			logger.error("Could not parse "
+					+ "io.storage.sql.batch.flush.interval.millis: "
+					+ e.getMessage());
+			sqlBatchFlushIntervalMillis = 0;
+		}
+		logger.debug("SQL batch size -> " + sqlBatchSize);
+		logger.debug("SQL batch flush interval -> "
+				+ sqlBatchFlushIntervalMillis);
+
+		// Grab the intervals of the packet file indexes
+		try {
+			indexPacketInterval = Integer.parseInt(ioProperties.getProperty(
+					"io.storage.index.packet.interval",
+					String.valueOf(PacketIndex.DEFAULT_PACKET_INTERVAL))
+					.trim());
+		} catch (NumberFormatException e) {
+			logger.error("Could not parse io.storage.index.packet.interval: "
+					+ e.getMessage());
+		}
+		try {
+			indexTimeIntervalMillis = Long.parseLong(ioProperties.getProperty(
+					"io.storage.index.time.interval.millis",
+					String.valueOf(PacketIndex.DEFAULT_TIME_INTERVAL_MILLIS))
+					.trim());
+		} catch (NumberFormatException e) {
+			logger.error("Could not parse "
+					+ "io.storage.index.time.interval.millis: "
+					+ e.getMessage());
+		}
+		logger.debug("Packet index interval -> " + indexPacketInterval
+				+ " packets or " + indexTimeIntervalMillis + " ms");
+
+		// Set up the data stream statistics
+		setupStatisticsStore();
+	}
+
+	/**
+	 * This method makes sure the data stream statistics tables exist and
+	 * creates the store that keeps them up to date. If the tables are not
+	 * configured (or can not be created) no statistics are kept.
+	 */
+	private static void setupStatisticsStore() {
+		String createStatisticsTableSQL = ioProperties
+				.getProperty("io.storage.sql.create.statistics.table");
+		String createGapTableSQL = ioProperties
+				.getProperty("io.storage.sql.create.statistics.gap.table");
+		if ((dataSource == null) || (createStatisticsTableSQL == null)
+				|| (createStatisticsTableSQL.trim().length() == 0)) {
+			logger.info("Data stream statistics will not be kept");
+			return;
+		}
+		long gapIndexMinMillis = 60000;
+		try {
+			gapIndexMinMillis = Long.parseLong(ioProperties.getProperty(
+					"io.storage.sql.statistics.gap.index.min.millis", "60000")
+					.trim());
+		} catch (NumberFormatException e) {
+			logger.error("Could not parse "
+					+ "io.storage.sql.statistics.gap.index.min.millis: "
+					+ e.getMessage());
+		}
+		long deviceIdleMillis = 3600000;
+		try {
+			deviceIdleMillis = Long.parseLong(ioProperties.getProperty(
+					"io.storage.sql.statistics.device.idle.millis", "3600000")
+					.trim());
+		} catch (NumberFormatException e) {
+			logger.error("Could not parse "
+					+ "io.storage.sql.statistics.device.idle.millis: "
+					+ e.getMessage());
+		}
+		Connection connection = null;
+		try {
+			connection = dataSource.getConnection();
+			if (DataStreamStatisticsStore.createTables(connection,
+					createStatisticsTableSQL, createGapTableSQL)) {
+				statisticsStore = new DataStreamStatisticsStore(
+						sqlTableDelimiter, gapIndexMinMillis, deviceIdleMillis);
+				logger.debug("Data stream statistics gap index minimum -> "
+						+ gapIndexMinMillis);
+				logger.debug("Data stream statistics device idle time -> "
+						+ deviceIdleMillis);
+			}
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to set up the data "
+					+ "stream statistics tables: " + e.getMessage());
+		} finally {
+			try {
+				if (connection != null)
+					connection.close();
+			} catch (SQLException e) {
+				logger.error("Could not close the connection after setting "
+						+ "up the statistics tables: " + e.getMessage());
+			}
+		}
 	}
 
 	/**
@@ -265,6 +396,8 @@ public class PacketOutputManager {
 			}
 			try {
 				packetOutput = new PacketOutput(new File(packetStorageName));
+				packetOutput.setIndexPacketInterval(indexPacketInterval);
+				packetOutput.setIndexTimeIntervalMillis(indexTimeIntervalMillis);
 			} catch (IOException e) {
 				logger
 						.error("Could not create a new PacketOutput for the requested packet: "
@@ -297,11 +430,25 @@ public class PacketOutputManager {
 			checkForTable(deviceID);
 			toReturn = new PacketSQLOutput(PacketOutputManager.dataSource,
 					sqlTableDelimiter);
+			toReturn.setFlushIntervalMillis(sqlBatchFlushIntervalMillis);
+			toReturn.setBatchSize(sqlBatchSize);
+			toReturn.setStatisticsStore(statisticsStore);
 			packetSQLOutputs.put(new Long(deviceID), toReturn);
 		}
 		return toReturn;
 	}
 
+	/**
+	 * This method flushes any pending batches on all the PacketSQLOutputs
+	 */
+	public static synchronized void flushPacketSQLOutputs() {
+		synchronized (packetSQLOutputs) {
+			for (PacketSQLOutput packetSQLOutput : packetSQLOutputs.values()) {
+				packetSQLOutput.flush();
+			}
+		}
+	}
+
 	/**
 	 * This method checks to see if there is a table in the database for the
 	 * specified device. If not one is created.
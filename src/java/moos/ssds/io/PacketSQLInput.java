@@ -516,6 +516,55 @@ public class PacketSQLInput implements Enumeration<Object> {
 		packetSQLQueryFactory.setEndDepth(endDepth);
 	}
 
+	/**
+	 * This method clears the order by parameters and goes back to the default
+	 * (timestamp ascending)
+	 */
+	public void clearOrderByParameters() {
+		packetSQLQueryFactory.clearOrderByParameters();
+	}
+
+	/**
+	 * This method adds a parameter to order the results by (see
+	 * <code>PacketSQLQueryFactory.addOrderByParameter</code>)
+	 * 
+	 * @param orderByParameter
+	 *            the parameter to order the results by
+	 * @param isDescending
+	 *            true for descending, false for ascending
+	 */
+	public void addOrderByParameter(String orderByParameter,
+			boolean isDescending) {
+		packetSQLQueryFactory.addOrderByParameter(orderByParameter,
+				isDescending);
+	}
+
+	/**
+	 * This method sets how the underlying query pages through the results (see
+	 * the CURSOR_MODE constants on <code>PacketSQLQuery</code>)
+	 * 
+	 * @param cursorMode
+	 */
+	public void setCursorMode(int cursorMode) {
+		packetSQLQuery.setCursorMode(cursorMode);
+	}
+
+	/**
+	 * @return the cursor mode used to page through the results
+	 */
+	public int getCursorMode() {
+		return packetSQLQuery.getCursorMode();
+	}
+
+	/**
+	 * This method sets the fetch size hint that is given to the JDBC driver
+	 * 
+	 * @param fetchSize
+	 */
+	public void setFetchSize(int fetchSize) {
+		packetSQLQuery.setFetchSize(fetchSize);
+	}
+
 	/**
 	 * This method runs the query using the parameters stored and then holds the
 	 * result set
@@ -16,18 +16,27 @@
 package moos.ssds.io;
 
 import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import javax.jms.BytesMessage;
 import javax.sql.DataSource;
 
 import moos.ssds.io.util.PacketUtility;
+import moos.ssds.io.util.SSDSv3PacketView;
+import moos.ssds.util.DateUtils;
 
 import org.apache.log4j.Logger;
 
@@ -35,6 +44,22 @@ import org.apache.log4j.Logger;
  * <p>
  * Class for writing <code>DataPackets</code> to a relational database.
  * </p>
+ * <p>
+ * By default, each packet is written using its own connection and statement.
+ * If the batch size is set to something larger than one (see
+ * <code>setBatchSize</code>), the output switches to a batched mode where the
+ * packets are collected and then written with <code>addBatch</code> and
+ * committed in one transaction when the batch reaches the batch size, or when
+ * the oldest pending packet is older than the flush interval. A connection is
+ * only borrowed from the <code>DataSource</code> for each flush. If the batch
+ * fails (a duplicate row for example), it is rolled back and the packets are
+ * written again one at a time so only the ones that really fail are lost.
+ * </p>
+ * <p>
+ * If a <code>DataStreamStatisticsStore</code> is set, the statistics of the
+ * streams are updated with each packet that is written and persisted along
+ * with the packets.
+ * </p>
  * <hr>
  * 
  * @author : $Author: kgomes $
@@ -59,6 +84,53 @@ public class PacketSQLOutput {
 	 */
 	private String sqlTableDelimiter = null;
 
+	/**
+	 * This is the number of rows that will be collected before they are sent
+	 * to the database in one batch. A value of one (the default) means each
+	 * packet is written as soon as it comes in.
+	 */
+	private int batchSize = 1;
+
+	/**
+	 * This is the maximum number of milliseconds a row will sit in a pending
+	 * batch before the batch is flushed to the database (zero or less means
+	 * only the batch size triggers a flush)
+	 */
+	private long flushIntervalMillis = 0;
+
+	/**
+	 * The SSDS packets that have been added to the batch but not yet written
+	 */
+	private List<byte[]> pendingPackets = new ArrayList<byte[]>();
+
+	/**
+	 * The time (in epoch millis) when the oldest pending row was added
+	 */
+	private long oldestPendingRowTime = 0;
+
+	/**
+	 * This is the view that is used to read the fields of each incoming packet
+	 */
+	private SSDSv3PacketView packetView = new SSDSv3PacketView();
+
+	/**
+	 * The timer that flushes the batches (of all the outputs) which have been
+	 * waiting longer than the flush interval. It is created the first time it
+	 * is needed.
+	 */
+	private static Timer flushTimer = null;
+
+	/**
+	 * The task on the flush timer for this output (null if there is none)
+	 */
+	private TimerTask flushTask = null;
+
+	/**
+	 * The store that keeps the statistics of the data streams (null if they
+	 * are not kept)
+	 */
+	private DataStreamStatisticsStore statisticsStore = null;
+
 	/**
 	 * A log4j logger
 	 */
@@ -109,18 +181,110 @@ public class PacketSQLOutput {
 		return dataSource;
 	}
 
+	/**
+	 * This method returns the number of rows that are collected before being
+	 * written to the database in a single batch
+	 * 
+	 * @return the batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * This method sets the number of rows to collect before writing them to
+	 * the database in one batch. A value of one (or less) turns batching off
+	 * and any pending rows are flushed.
+	 * 
+	 * @param batchSize
+	 *            the number of rows per batch
+	 */
+	public synchronized void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			batchSize = 1;
+		if ((batchSize == 1) && (this.batchSize > 1))
+			this.flush();
+		this.batchSize = batchSize;
+		this.scheduleFlushTimer();
+	}
+
+	/**
+	 * This method returns the maximum number of milliseconds a row will wait in
+	 * a batch before being flushed
+	 * 
+	 * @return the flush interval in milliseconds
+	 */
+	public long getFlushIntervalMillis() {
+		return flushIntervalMillis;
+	}
+
+	/**
+	 * This method sets the maximum number of milliseconds a row will wait in a
+	 * batch before being flushed. Zero (or less) means batches are only flushed
+	 * when full or when <code>flush</code> is called.
+	 * 
+	 * @param flushIntervalMillis
+	 *            the flush interval in milliseconds
+	 */
+	public synchronized void setFlushIntervalMillis(long flushIntervalMillis) {
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.scheduleFlushTimer();
+	}
+
+	/**
+	 * This method sets the store that keeps the statistics of the data
+	 * streams. If it is null (the default), no statistics are kept.
+	 * 
+	 * @param statisticsStore
+	 *            the <code>DataStreamStatisticsStore</code> to update
+	 */
+	public synchronized void setStatisticsStore(
+			DataStreamStatisticsStore statisticsStore) {
+		this.statisticsStore = statisticsStore;
+	}
+
+	/**
+	 * @return the store that keeps the statistics of the data streams
+	 */
+	public DataStreamStatisticsStore getStatisticsStore() {
+		return statisticsStore;
+	}
+
+	/**
+	 * This method returns whether or not the output is currently collecting
+	 * rows in batches
+	 * 
+	 * @return true if the batch size is larger than one
+	 */
+	public boolean isBatched() {
+		return (this.batchSize > 1);
+	}
+
 	/**
 	 * This method closes the database <code>Connection</code>.
 	 */
 	public void close() {
 		try {
-			connection.close();
+			if (connection != null)
+				connection.close();
 		} catch (Throwable e) {
 			logger.error("Throwable caught trying to close the connection:"
 					+ e.getMessage());
 		}
 	}
 
+	/**
+	 * This method flushes any pending batch and stops the timed flushes of
+	 * this output.
+	 */
+	public synchronized void shutdown() {
+		this.flush();
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+	}
+
 	/**
 	 * This writes the byte array out in the current version. There really is no
 	 * "version" control here except with what is hard coded.
@@ -164,50 +328,30 @@ public class PacketSQLOutput {
 	 * @param bytes
 	 * @throws SQLException
 	 */
-	public void writeBytesVersion3(byte[] bytes) throws SQLException {
+	public synchronized void writeBytesVersion3(byte[] bytes)
+			throws SQLException {
 
 		// Log the message
 		logger.debug("writeBytesVersion3 called.");
 		PacketUtility.logVersion3SSDSByteArray(bytes, false);
 
-		// Setup the streams to read the bytes
-		ByteArrayInputStream byteIS = new ByteArrayInputStream(bytes);
-		DataInputStream dataIS = new DataInputStream(byteIS);
-
-		// This assumes that this byte array is in the form of the SSDS
-		// specification
-		long deviceID = -999999;
-		long parentID = -999999;
-		int packetType = -999999;
-		long packetSubType = -999999;
-		long dataDescriptionID = -999999;
-		long dataDescriptionVersion = -999999;
-		long timestampSeconds = -999999;
-		long timestampNanoseconds = -999999;
-		long sequenceNumber = -999999;
-		int bufferLen = 1;
-		byte[] bufferBytes = new byte[bufferLen];
-		int bufferTwoLen = 1;
-		byte[] bufferTwoBytes = new byte[bufferTwoLen];
+		// Point the view at the bytes (this assumes that this byte array is in
+		// the form of the SSDS specification)
 		try {
-			deviceID = dataIS.readLong();
-			parentID = dataIS.readLong();
-			packetType = dataIS.readInt();
-			packetSubType = dataIS.readLong();
-			dataDescriptionID = dataIS.readLong();
-			dataDescriptionVersion = dataIS.readLong();
-			timestampSeconds = dataIS.readLong();
-			timestampNanoseconds = dataIS.readLong();
-			sequenceNumber = dataIS.readLong();
-			bufferLen = dataIS.readInt();
-			bufferBytes = new byte[bufferLen];
-			dataIS.read(bufferBytes);
-			bufferTwoLen = dataIS.readInt();
-			bufferTwoBytes = new byte[bufferTwoLen];
-			dataIS.read(bufferTwoBytes);
-		} catch (IOException e) {
-			logger.error("IOException caught: " + e.getMessage());
+			packetView.wrap(bytes);
+		} catch (IllegalArgumentException e) {
+			logger.error("Could not read the SSDS packet, it will not be "
+					+ "written to the database: " + e.getMessage());
+			return;
+		}
+		long deviceID = packetView.getDeviceID();
+
+		// If batching, add to the current batch and return
+		if (this.isBatched()) {
+			this.addToBatch(bytes);
+			return;
 		}
+
 		// Grab a connection
 		try {
 			this.connection = dataSource.getConnection();
@@ -218,42 +362,181 @@ public class PacketSQLOutput {
 		// Try the write
 		try {
 			// Prepare the statement to insert the data
-			PreparedStatement pstmt = this.connection
-					.prepareStatement("INSERT INTO " + this.sqlTableDelimiter
-							+ deviceID + this.sqlTableDelimiter + " VALUES "
-							+ "(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
+			PreparedStatement pstmt = this.connection.prepareStatement(this
+					.getInsertSQL(deviceID));
+			this.loadStatistics(this.connection, deviceID);
 			pstmt.clearParameters();
-			pstmt.setInt(1, 3);
-			pstmt.setLong(2, parentID);
-			pstmt.setInt(3, packetType);
-			pstmt.setLong(4, packetSubType);
-			pstmt.setLong(5, dataDescriptionID);
-			pstmt.setLong(6, dataDescriptionVersion);
-			pstmt.setLong(7, timestampSeconds);
-			pstmt.setLong(8, timestampNanoseconds);
-			pstmt.setLong(9, sequenceNumber);
-			pstmt.setInt(10, bufferLen);
-
-			InputStream in = new ByteArrayInputStream(bufferBytes);
-			pstmt.setBinaryStream(11, in, bufferLen);
-			pstmt.setInt(12, bufferTwoLen);
-			in = new ByteArrayInputStream(bufferTwoBytes);
-			pstmt.setBinaryStream(13, in, bufferTwoLen);
-			pstmt.setNull(14, Types.DOUBLE);
-			pstmt.setNull(15, Types.DOUBLE);
-			pstmt.setNull(16, Types.FLOAT);
+			this.setInsertParameters(pstmt, bytes);
 			pstmt.execute();
+			pstmt.close();
+
+			// The row is in, so update the statistics
+			if (statisticsStore != null) {
+				statisticsStore.recordPacket(deviceID, packetView
+						.getPacketSubType(), this.getPacketTimestampMillis());
+				this.persistStatistics(this.connection, deviceID);
+			}
 		} catch (SQLException e1) {
 			logger.error("SQLException while trying to insert data: "
 					+ e1.getMessage());
 		}
-		// Flush the output
-		this.flush();
-
 		// Close the connection
 		this.close();
 	}
 
+	/**
+	 * This method returns the SQL used to insert a row into the table for the
+	 * given device
+	 * 
+	 * @param deviceID
+	 * @return the insert SQL
+	 */
+	private String getInsertSQL(long deviceID) {
+		return "INSERT INTO " + this.sqlTableDelimiter + deviceID
+				+ this.sqlTableDelimiter + " VALUES "
+				+ "(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+	}
+
+	/**
+	 * This method sets all the parameters of the insert statement from the
+	 * SSDS packet that the view is currently over. The buffers are streamed
+	 * straight out of the packet bytes without being copied.
+	 */
+	private void setInsertParameters(PreparedStatement pstmt, byte[] bytes)
+			throws SQLException {
+		pstmt.setInt(1, 3);
+		pstmt.setLong(2, packetView.getParentID());
+		pstmt.setInt(3, packetView.getPacketType());
+		pstmt.setLong(4, packetView.getPacketSubType());
+		pstmt.setLong(5, packetView.getDataDescriptionID());
+		pstmt.setLong(6, packetView.getDataDescriptionVersion());
+		pstmt.setLong(7, packetView.getTimestampSeconds());
+		pstmt.setLong(8, packetView.getTimestampNanoseconds());
+		pstmt.setLong(9, packetView.getSequenceNumber());
+
+		int bufferLen = packetView.getDataBufferLength();
+		pstmt.setInt(10, bufferLen);
+		InputStream in = new ByteArrayInputStream(bytes, packetView
+				.getDataBufferOffset(), bufferLen);
+		pstmt.setBinaryStream(11, in, bufferLen);
+		int bufferTwoLen = packetView.getOtherBufferLength();
+		pstmt.setInt(12, bufferTwoLen);
+		in = new ByteArrayInputStream(bytes,
+				packetView.getOtherBufferOffset(), bufferTwoLen);
+		pstmt.setBinaryStream(13, in, bufferTwoLen);
+		pstmt.setNull(14, Types.DOUBLE);
+		pstmt.setNull(15, Types.DOUBLE);
+		pstmt.setNull(16, Types.FLOAT);
+	}
+
+	/**
+	 * This method adds the packet to the pending batch. If the batch is full
+	 * (or the oldest packet is too old), the batch is flushed.
+	 */
+	private void addToBatch(byte[] bytes) {
+		if (pendingPackets.isEmpty())
+			oldestPendingRowTime = System.currentTimeMillis();
+		pendingPackets.add(bytes);
+
+		// Check to see if the batch should be sent
+		if ((pendingPackets.size() >= batchSize)
+				|| this.isFlushIntervalExceeded())
+			this.flush();
+	}
+
+	/**
+	 * This method returns the timestamp (epoch millis) of the packet the view
+	 * is over
+	 */
+	private long getPacketTimestampMillis() {
+		return DateUtils.constructEpochMillisFromEpochSecondsAndNanoseconds(
+				packetView.getTimestampSeconds(), packetView
+						.getTimestampNanoseconds());
+	}
+
+	/**
+	 * This method makes sure the statistics of the device are loaded before
+	 * its first row is written. A problem loading them is logged, but does not
+	 * stop the packet from being written.
+	 */
+	private void loadStatistics(Connection connection, long deviceID) {
+		if (statisticsStore == null)
+			return;
+		try {
+			statisticsStore.ensureLoaded(connection, deviceID);
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to load the data "
+					+ "stream statistics for device " + deviceID + ": "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * This method writes the statistics of a device (on a connection that
+	 * commits each statement). A failure is logged and the statistics will be
+	 * written again with the next packet.
+	 */
+	private void persistStatistics(Connection connection, long deviceID) {
+		try {
+			statisticsStore.persist(connection, deviceID);
+			statisticsStore.markPersisted(deviceID);
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to write the data "
+					+ "stream statistics for device " + deviceID + ": "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * This method returns true if the oldest pending row has been waiting
+	 * longer than the flush interval
+	 */
+	private boolean isFlushIntervalExceeded() {
+		return (flushIntervalMillis > 0)
+				&& (!pendingPackets.isEmpty())
+				&& ((System.currentTimeMillis() - oldestPendingRowTime) >= flushIntervalMillis);
+	}
+
+	/**
+	 * This method returns the timer that is shared by all the outputs for the
+	 * timed flushes (creating it the first time)
+	 */
+	private static synchronized Timer getFlushTimer() {
+		if (flushTimer == null)
+			flushTimer = new Timer(true);
+		return flushTimer;
+	}
+
+	/**
+	 * This method (re)schedules the task that flushes batches that have been
+	 * waiting longer than the flush interval. There is only a task in batched
+	 * mode with a positive flush interval.
+	 */
+	private void scheduleFlushTimer() {
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+		if (this.isBatched() && (flushIntervalMillis > 0)) {
+			flushTask = new TimerTask() {
+				public void run() {
+					// An exception here would stop the timer for all outputs
+					try {
+						synchronized (PacketSQLOutput.this) {
+							if (isFlushIntervalExceeded())
+								flush();
+						}
+					} catch (Throwable t) {
+						logger.error("Throwable caught flushing the batch: "
+								+ t.getMessage());
+					}
+				}
+			};
+			getFlushTimer().schedule(flushTask, flushIntervalMillis,
+					flushIntervalMillis);
+		}
+	}
+
 	/**
 	 * This is the method that is called when the object is cleaned up and
 	 * closes all the data streams
@@ -261,7 +544,9 @@ public class PacketSQLOutput {
 	public void finalize() {
 		try {
 			super.finalize();
-			connection.close();
+			this.shutdown();
+			if (connection != null)
+				connection.close();
 		} catch (Throwable t) {
 			logger.error("Throwable caught trying to "
 					+ "finalize and close connections" + t.getMessage());
@@ -269,9 +554,173 @@ public class PacketSQLOutput {
 	}
 
 	/**
-	 * This method does nothing in the SQL case
+	 * This method sends any packets pending in the batch to the database and
+	 * commits them in one transaction on a connection that is borrowed from
+	 * the <code>DataSource</code> for the flush. If the batch fails, it is
+	 * rolled back and the packets are written one at a time instead, so only
+	 * the ones that fail on their own are lost (and logged). The statistics
+	 * are only updated with the packets that were committed. If nothing is
+	 * pending (or batching is off), this does nothing.
+	 */
+	public synchronized void flush() {
+		if (pendingPackets.isEmpty())
+			return;
+		Connection batchConnection = null;
+		try {
+			batchConnection = dataSource.getConnection();
+		} catch (SQLException e) {
+			// Keep the packets and try again with the next flush
+			logger.error("Could not get a connection to write the batch of "
+					+ pendingPackets.size() + " packets: " + e.getMessage());
+			return;
+		}
+		List<byte[]> packets = pendingPackets;
+		pendingPackets = new ArrayList<byte[]>();
+
+		// The statistics have to be loaded before the packets are committed,
+		// otherwise the ones built from the device table would already count
+		// them
+		if (statisticsStore != null) {
+			for (Iterator<byte[]> iterator = packets.iterator(); iterator
+					.hasNext();) {
+				packetView.wrap(iterator.next());
+				this.loadStatistics(batchConnection, packetView.getDeviceID());
+			}
+		}
+
+		// Try them all in one transaction
+		boolean committed = false;
+		try {
+			batchConnection.setAutoCommit(false);
+			committed = this.executeBatch(batchConnection, packets);
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to start batch of "
+					+ packets.size() + " packets: " + e.getMessage());
+		}
+		try {
+			batchConnection.setAutoCommit(true);
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to turn auto commit "
+					+ "back on: " + e.getMessage());
+		}
+
+		// Update the statistics with the packets that made it in (writing
+		// them one at a time if the batch did not)
+		Set<Long> deviceIDs = new HashSet<Long>();
+		for (Iterator<byte[]> iterator = packets.iterator(); iterator
+				.hasNext();) {
+			byte[] bytes = iterator.next();
+			packetView.wrap(bytes);
+			long deviceID = packetView.getDeviceID();
+			if (!committed && !this.insertRow(batchConnection, bytes))
+				continue;
+			if (statisticsStore != null) {
+				statisticsStore.recordPacket(deviceID, packetView
+						.getPacketSubType(), this.getPacketTimestampMillis());
+				deviceIDs.add(new Long(deviceID));
+			}
+		}
+		for (Iterator<Long> iterator = deviceIDs.iterator(); iterator
+				.hasNext();) {
+			this.persistStatistics(batchConnection, iterator.next()
+					.longValue());
+		}
+
+		// Give the connection back
+		try {
+			batchConnection.close();
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to close "
+					+ "the batch connection: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * This method adds the packets to the batches of the insert statements of
+	 * their devices, executes the batches and commits. If that fails, the
+	 * transaction is rolled back.
+	 * 
+	 * @return true if all the packets were committed
 	 */
-	public void flush() {
+	private boolean executeBatch(Connection batchConnection,
+			List<byte[]> packets) {
+		Map<Long, PreparedStatement> statements = new HashMap<Long, PreparedStatement>();
+		try {
+			for (Iterator<byte[]> iterator = packets.iterator(); iterator
+					.hasNext();) {
+				byte[] bytes = iterator.next();
+				packetView.wrap(bytes);
+				Long deviceKey = new Long(packetView.getDeviceID());
+				PreparedStatement pstmt = statements.get(deviceKey);
+				if (pstmt == null) {
+					pstmt = batchConnection.prepareStatement(this
+							.getInsertSQL(deviceKey.longValue()));
+					statements.put(deviceKey, pstmt);
+				}
+				pstmt.clearParameters();
+				this.setInsertParameters(pstmt, bytes);
+				pstmt.addBatch();
+			}
+			for (Iterator<PreparedStatement> iterator = statements.values()
+					.iterator(); iterator.hasNext();) {
+				iterator.next().executeBatch();
+			}
+			batchConnection.commit();
+			logger.debug("Committed batch of " + packets.size() + " packets");
+			return true;
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to write batch of "
+					+ packets.size() + " packets, they will be written "
+					+ "one at a time: " + e.getMessage());
+			try {
+				batchConnection.rollback();
+			} catch (SQLException e1) {
+				logger.error("SQLException caught trying to roll back batch: "
+						+ e1.getMessage());
+			}
+			return false;
+		} finally {
+			for (Iterator<PreparedStatement> iterator = statements.values()
+					.iterator(); iterator.hasNext();) {
+				try {
+					iterator.next().close();
+				} catch (SQLException e) {
+					logger.error("SQLException caught trying to close "
+							+ "batch statement: " + e.getMessage());
+				}
+			}
+		}
 	}
 
-}
\ No newline at end of file
+	/**
+	 * This method inserts one packet (the view must be over it) on its own.
+	 * A failure is logged.
+	 * 
+	 * @return true if the row was written
+	 */
+	private boolean insertRow(Connection connection, byte[] bytes) {
+		long deviceID = packetView.getDeviceID();
+		PreparedStatement pstmt = null;
+		try {
+			pstmt = connection.prepareStatement(this.getInsertSQL(deviceID));
+			this.setInsertParameters(pstmt, bytes);
+			pstmt.execute();
+			return true;
+		} catch (SQLException e) {
+			logger.error("SQLException while trying to insert packet from "
+					+ "device " + deviceID + " (sequence number "
+					+ packetView.getSequenceNumber() + "), it is skipped: "
+					+ e.getMessage());
+			return false;
+		} finally {
+			if (pstmt != null) {
+				try {
+					pstmt.close();
+				} catch (SQLException e) {
+					logger.error("SQLException caught trying to close "
+							+ "statement: " + e.getMessage());
+				}
+			}
+		}
+	}
+}
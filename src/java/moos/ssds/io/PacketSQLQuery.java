@@ -73,6 +73,62 @@ public class PacketSQLQuery implements Enumeration<byte[]> {
 	 */
 	private Object[] resultsCache = new Object[cacheSize];
 
+	/**
+	 * This is the original paging mode where each page of the cache re-runs the
+	 * query on a scrollable result set and skips the rows already read
+	 */
+	public static final int CURSOR_MODE_REQUERY = 0;
+
+	/**
+	 * In this mode, the query is run once and one forward-only cursor is held
+	 * open (along with its connection) until all rows have been read or
+	 * <code>close</code> is called
+	 */
+	public static final int CURSOR_MODE_STREAMING = 1;
+
+	/**
+	 * In this mode, each page is a new query that resumes after the primary
+	 * key (see <code>PacketSQLQueryFactory.KEYSET_COLUMNS</code>) of the last
+	 * row read, so no connection is held between pages. Results are always in
+	 * ascending time order (rows with the same timestamp are ordered by the
+	 * rest of the key, not by sequence number). If a last number of packets
+	 * is requested, the query is re-run for each page instead (as in
+	 * <code>CURSOR_MODE_REQUERY</code>), so this mode never holds a
+	 * connection.
+	 */
+	public static final int CURSOR_MODE_KEYSET = 2;
+
+	/**
+	 * This is the cursor mode that will be used to page through the results
+	 */
+	private int cursorMode = CURSOR_MODE_REQUERY;
+
+	/**
+	 * This is the fetch size hint that will be given to the JDBC driver (zero
+	 * leaves it up to the driver). Note that for MySQL,
+	 * <code>Integer.MIN_VALUE</code> is needed to stream rows one at a time.
+	 */
+	private int fetchSize = 0;
+
+	/**
+	 * These are the connection, statement and result set that are held open in
+	 * streaming mode
+	 */
+	private Connection streamingConnection = null;
+	private PreparedStatement streamingStatement = null;
+	private ResultSet streamingResultSet = null;
+
+	/**
+	 * This indicates that the last query (or cursor) has no more rows so no
+	 * further database calls are needed
+	 */
+	private boolean resultsExhausted = false;
+
+	/**
+	 * These are the keys of the last row read in keyset mode
+	 */
+	private long[] lastKeys = new long[PacketSQLQueryFactory.KEYSET_COLUMNS.length];
+
 	/**
 	 * This constructor takes in the DataSource that will be used to query data
 	 * from and the PacketSQLQueryFactory that will be used to generate the SQL
@@ -202,6 +258,49 @@ public class PacketSQLQuery implements Enumeration<byte[]> {
 		}
 	}
 
+	/**
+	 * This method returns the cursor mode that is used to page through results
+	 * 
+	 * @return one of the CURSOR_MODE constants
+	 */
+	public int getCursorMode() {
+		return cursorMode;
+	}
+
+	/**
+	 * This method sets the cursor mode that is used to page through results.
+	 * This should be called before <code>queryForData</code>.
+	 * 
+	 * @param cursorMode
+	 *            one of <code>CURSOR_MODE_REQUERY</code>,
+	 *            <code>CURSOR_MODE_STREAMING</code> or
+	 *            <code>CURSOR_MODE_KEYSET</code>
+	 */
+	public void setCursorMode(int cursorMode) {
+		if ((cursorMode != CURSOR_MODE_REQUERY)
+				&& (cursorMode != CURSOR_MODE_STREAMING)
+				&& (cursorMode != CURSOR_MODE_KEYSET))
+			throw new IllegalArgumentException("Unknown cursor mode "
+					+ cursorMode);
+		this.cursorMode = cursorMode;
+	}
+
+	/**
+	 * @return the fetch size hint given to the JDBC driver
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * This method sets the fetch size hint given to the JDBC driver
+	 * 
+	 * @param fetchSize
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
 	/**
 	 * This method runs the query using the parameters stored in the
 	 * PacketSQLQueryFactory and then holds the result set
@@ -224,22 +323,33 @@ public class PacketSQLQuery implements Enumeration<byte[]> {
 		// And a new cache
 		resultsCache = new Object[cacheSize];
 
+		// Close any cursor left from a previous query
+		this.close();
+		resultsExhausted = false;
+
+		// Keyset paging requires the keys to be ordered (and cannot be used
+		// when the last number of packets is being selected)
+		packetSQLQueryFactory.clearKeysetStart();
+		packetSQLQueryFactory.setKeysetOrdering(this.isKeysetPaging());
+
 		// Call the method to fill the results cache
 		fillResultsCache();
 	}
 
 	/**
-	 * This method connects up to the database, makes a query, skips the rows
-	 * that have already been read and then takes the next pageSize of results
-	 * and puts them in the cache
+	 * This method returns true if the query will actually be paged by key
 	 */
-	private void fillResultsCache() throws SQLException {
-		logger.debug("fillResultsCache called");
+	private boolean isKeysetPaging() {
+		return (cursorMode == CURSOR_MODE_KEYSET)
+				&& (packetSQLQueryFactory.getLastNumberOfPackets() == PacketSQLQueryFactory.MISSING_VALUE);
+	}
 
-		// Create a connection to the database
+	/**
+	 * This method returns a connection either from the DataSource or directly
+	 * from the DriverManager
+	 */
+	private Connection getConnection() {
 		Connection connection = null;
-
-		// Grab a new connection
 		if (!directConnection) {
 			logger.debug("It is not a direct connection so we "
 					+ "will grab a connection from the DataSource");
@@ -261,6 +371,191 @@ public class PacketSQLQuery implements Enumeration<byte[]> {
 						+ "Connection from DataSource: " + e.getMessage());
 			}
 		}
+		return connection;
+	}
+
+	/**
+	 * This method fills the cache using the current cursor mode
+	 */
+	private void fillResultsCache() throws SQLException {
+		if (cursorMode == CURSOR_MODE_REQUERY) {
+			fillResultsCacheByRequery();
+		} else if (this.isKeysetPaging()) {
+			fillResultsCacheByKeyset();
+		} else if (cursorMode == CURSOR_MODE_KEYSET) {
+			// The last number of packets can not be paged by key
+			fillResultsCacheByRequery();
+		} else {
+			fillResultsCacheByStreaming();
+		}
+	}
+
+	/**
+	 * This method reads the next rows from the cursor that is held open,
+	 * opening it on the first call
+	 */
+	private void fillResultsCacheByStreaming() throws SQLException {
+		logger.debug("fillResultsCacheByStreaming called");
+
+		// If the cursor is done, the cache is empty
+		if (resultsExhausted) {
+			for (int i = 0; i < cacheSize; i++)
+				resultsCache[i] = null;
+			cacheRow = -1;
+			return;
+		}
+
+		// Open the cursor if this is the first page
+		if (streamingResultSet == null) {
+			streamingConnection = this.getConnection();
+			if (streamingConnection == null)
+				throw new SQLException("Could not get a database connection");
+			String queryString = packetSQLQueryFactory.getQueryStatement();
+			logger.debug("SQL statement is: " + queryString);
+			try {
+				streamingStatement = streamingConnection.prepareStatement(
+						queryString, ResultSet.TYPE_FORWARD_ONLY,
+						ResultSet.CONCUR_READ_ONLY);
+				if (fetchSize != 0)
+					streamingStatement.setFetchSize(fetchSize);
+				streamingResultSet = streamingStatement.executeQuery();
+			} catch (SQLException e) {
+				this.close();
+				throw e;
+			}
+		}
+
+		// Read the next page and close the cursor if it ran out
+		int rowsRead = readPageIntoCache(streamingResultSet);
+		if (rowsRead < cacheSize) {
+			resultsExhausted = true;
+			this.close();
+		}
+		cacheRow = -1;
+	}
+
+	/**
+	 * This method runs the query starting just after the keys of the last row
+	 * that was read and reads in one page of results
+	 */
+	private void fillResultsCacheByKeyset() throws SQLException {
+		logger.debug("fillResultsCacheByKeyset called");
+
+		// If the last page was short, there is nothing left
+		if (resultsExhausted) {
+			for (int i = 0; i < cacheSize; i++)
+				resultsCache[i] = null;
+			cacheRow = -1;
+			return;
+		}
+
+		// Resume after the last row (if one has been read)
+		if (resultSetRow >= 0)
+			packetSQLQueryFactory.setKeysetStart(lastKeys);
+
+		Connection connection = this.getConnection();
+		if (connection == null)
+			throw new SQLException("Could not get a database connection");
+		PreparedStatement preparedStatement = null;
+		ResultSet resultSet = null;
+		try {
+			String queryString = packetSQLQueryFactory.getQueryStatement();
+			logger.debug("SQL statement is: " + queryString);
+			preparedStatement = connection.prepareStatement(queryString,
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			preparedStatement.setMaxRows(cacheSize);
+			if (fetchSize > 0)
+				preparedStatement.setFetchSize(fetchSize);
+			resultSet = preparedStatement.executeQuery();
+			int rowsRead = readPageIntoCache(resultSet);
+			if (rowsRead < cacheSize)
+				resultsExhausted = true;
+		} finally {
+			try {
+				if (resultSet != null)
+					resultSet.close();
+				if (preparedStatement != null)
+					preparedStatement.close();
+				connection.close();
+			} catch (SQLException e) {
+				logger.error("SQLException caught trying to close: "
+						+ e.getMessage());
+			}
+		}
+		cacheRow = -1;
+	}
+
+	/**
+	 * This method reads up to one cache page of rows from the result set
+	 * (which must be positioned before the first row to read) and returns the
+	 * number of rows that were read. Slots after the last row are set to null.
+	 */
+	private int readPageIntoCache(ResultSet resultSet) throws SQLException {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		DataOutputStream dataOutputStream = new DataOutputStream(
+				byteArrayOutputStream);
+		String[] returnFields = packetSQLQueryFactory.listReturnFields();
+		Class[] returnClasses = packetSQLQueryFactory.listReturnClasses();
+		boolean trackKeys = this.isKeysetPaging();
+		int rowsRead = 0;
+		for (int i = 0; i < cacheSize; i++) {
+			if ((rowsRead == i) && resultSet.next()) {
+				byteArrayOutputStream.reset();
+				writeRow(resultSet, returnFields, returnClasses,
+						dataOutputStream);
+				resultsCache[i] = byteArrayOutputStream.toByteArray();
+				if (trackKeys) {
+					for (int j = 0; j < lastKeys.length; j++)
+						lastKeys[j] = resultSet
+								.getLong(PacketSQLQueryFactory.KEYSET_COLUMNS[j]);
+				}
+				rowsRead++;
+			} else {
+				resultsCache[i] = null;
+			}
+		}
+		logger.debug("Read " + rowsRead + " rows into the cache");
+		return rowsRead;
+	}
+
+	/**
+	 * This method writes the requested fields of the current row of the result
+	 * set to the DataOutputStream
+	 */
+	private void writeRow(ResultSet resultSet, String[] returnFields,
+			Class[] returnClasses, DataOutputStream dataOutputStream)
+			throws SQLException {
+		for (int j = 0; j < returnFields.length; j++) {
+			try {
+				if (returnClasses[j] == int.class) {
+					dataOutputStream.writeInt(resultSet
+							.getInt(returnFields[j]));
+				} else if (returnClasses[j] == long.class) {
+					dataOutputStream.writeLong(resultSet
+							.getLong(returnFields[j]));
+				} else if (returnClasses[j] == byte[].class) {
+					byte[] byteResult = resultSet.getBytes(returnFields[j]);
+					if (byteResult != null)
+						dataOutputStream.write(byteResult);
+				}
+			} catch (IOException e) {
+				logger.error("IOException caught trying to "
+						+ "write query results to DataOutputStream: "
+						+ e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * This method connects up to the database, makes a query, skips the rows
+	 * that have already been read and then takes the next pageSize of results
+	 * and puts them in the cache
+	 */
+	private void fillResultsCacheByRequery() throws SQLException {
+		logger.debug("fillResultsCacheByRequery called");
+
+		// Create a connection to the database
+		Connection connection = this.getConnection();
 
 		// Grab the SQL statement from the factory
 		String queryString = packetSQLQueryFactory.getQueryStatement();
@@ -474,10 +769,28 @@ public class PacketSQLQuery implements Enumeration<byte[]> {
 	}
 
 	/**
-	 * This method closes the results and connections.
+	 * This method closes the results and connections. Only streaming mode holds
+	 * anything open between calls (the other modes close up after each page).
+	 * Once a streaming cursor is closed, it cannot be resumed, so no more
+	 * elements will be returned until the next <code>queryForData</code>.
 	 */
 	public void close() {
-		// Nothing to do here as the connection closing is moved to the cache
+		if (streamingResultSet != null)
+			resultsExhausted = true;
+		try {
+			if (streamingResultSet != null)
+				streamingResultSet.close();
+			if (streamingStatement != null)
+				streamingStatement.close();
+			if (streamingConnection != null)
+				streamingConnection.close();
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to close: "
+					+ e.getMessage());
+		}
+		streamingResultSet = null;
+		streamingStatement = null;
+		streamingConnection = null;
 	}
 
 	/**
@@ -121,6 +121,32 @@ public class PacketSQLQueryFactory implements Serializable {
 	private Float startDepth = null;
 	private Float endDepth = null;
 
+	/**
+	 * These are the columns that a query that is paged by key is ordered by
+	 * and resumed after. They are the columns of the primary key of the device
+	 * tables (with the timestamp first), so no two rows have the same keys and
+	 * none of them can be null. Note that sequenceNumber is not one of them,
+	 * since it is neither unique nor required.
+	 */
+	public static final String[] KEYSET_COLUMNS = { TIMESTAMP_SECONDS,
+			TIMESTAMP_NANOSECONDS, PARENT_ID, PACKET_TYPE, PACKET_SUB_TYPE,
+			DATA_DESCRIPTION_ID, DATA_DESCRIPTION_VERSION };
+
+	/**
+	 * These are the keys (the values of the <code>KEYSET_COLUMNS</code>) of
+	 * the last row that was read when the query is being paged by key (see
+	 * <code>setKeysetOrdering</code>). If set, only rows that come strictly
+	 * after them will be selected.
+	 */
+	private long[] keysetStart = null;
+
+	/**
+	 * This indicates if the query should be ordered by the
+	 * <code>KEYSET_COLUMNS</code> so that it can be resumed from the last row
+	 * read (keyset paging)
+	 */
+	private boolean keysetOrdering = false;
+
 	/**
 	 * This is the value that will be returned if any of the parameter objects
 	 * are null
@@ -926,6 +952,51 @@ public class PacketSQLQueryFactory implements Serializable {
 		}
 	}
 
+	/**
+	 * This method returns whether the query is ordered for keyset paging
+	 * 
+	 * @return true if the query is ordered by the <code>KEYSET_COLUMNS</code>
+	 */
+	public boolean isKeysetOrdering() {
+		return keysetOrdering;
+	}
+
+	/**
+	 * This method turns on (or off) keyset ordering. When on, the query is
+	 * ordered by the <code>KEYSET_COLUMNS</code> (ascending), which overrides
+	 * any other order by parameters, and those columns are always selected so
+	 * that the query can be resumed after the last row read by using
+	 * <code>setKeysetStart</code>.
+	 * 
+	 * @param keysetOrdering
+	 */
+	public void setKeysetOrdering(boolean keysetOrdering) {
+		this.keysetOrdering = keysetOrdering;
+	}
+
+	/**
+	 * This method sets the keys of the last row that was read so that the query
+	 * will only return rows that come after it.
+	 * 
+	 * @param keys
+	 *            the values of the <code>KEYSET_COLUMNS</code> (in that
+	 *            order) of the last row read
+	 */
+	public void setKeysetStart(long[] keys) {
+		if ((keys == null) || (keys.length != KEYSET_COLUMNS.length))
+			throw new IllegalArgumentException("There must be "
+					+ KEYSET_COLUMNS.length + " keys");
+		this.keysetStart = (long[]) keys.clone();
+	}
+
+	/**
+	 * This method clears the keyset start so the query starts from the first
+	 * row again
+	 */
+	public void clearKeysetStart() {
+		this.keysetStart = null;
+	}
+
 	public String getSqlTableDelimiter() {
 		return sqlTableDelimiter;
 	}
@@ -1029,9 +1100,18 @@ public class PacketSQLQueryFactory implements Serializable {
 				|| selectParametersAndOrder.length == 0) {
 			selectBuilder.append("*");
 		} else {
-			for (int i = 0; i < selectParametersAndOrder.length; i++) {
-				selectBuilder.append(selectParametersAndOrder[i]);
-				if (i != (selectParametersAndOrder.length - 1))
+			List<String> selectList = new ArrayList<String>(Arrays
+					.asList(selectParametersAndOrder));
+			// Keyset paging has to be able to read the keys of every row
+			if (keysetOrdering) {
+				for (int i = 0; i < KEYSET_COLUMNS.length; i++) {
+					if (!selectList.contains(KEYSET_COLUMNS[i]))
+						selectList.add(KEYSET_COLUMNS[i]);
+				}
+			}
+			for (int i = 0; i < selectList.size(); i++) {
+				selectBuilder.append(selectList.get(i));
+				if (i != (selectList.size() - 1))
 					selectBuilder.append(", ");
 			}
 		}
@@ -1288,6 +1368,29 @@ public class PacketSQLQueryFactory implements Serializable {
 			}
 		}
 
+		// Now the keyset start (resume after the last row read)
+		if (keysetStart != null) {
+			// Add where if not added
+			if (!whereAdded) {
+				whereClauseBuilder.append(" WHERE");
+				whereAdded = true;
+			} else {
+				whereClauseBuilder.append(" AND");
+			}
+			// (k1 > v1 OR (k1 = v1 AND (k2 > v2 OR (k2 = v2 AND ...))))
+			whereClauseBuilder.append(" ");
+			int last = KEYSET_COLUMNS.length - 1;
+			for (int i = 0; i < last; i++) {
+				whereClauseBuilder.append("(" + KEYSET_COLUMNS[i] + " > "
+						+ keysetStart[i] + " OR (" + KEYSET_COLUMNS[i] + " = "
+						+ keysetStart[i] + " AND ");
+			}
+			whereClauseBuilder.append(KEYSET_COLUMNS[last] + " > "
+					+ keysetStart[last]);
+			for (int i = 0; i < last; i++)
+				whereClauseBuilder.append("))");
+		}
+
 		// Return the where clause
 		return whereClauseBuilder.toString();
 	}
@@ -1301,6 +1404,16 @@ public class PacketSQLQueryFactory implements Serializable {
 	private String constructOrderByClause() {
 		// Create a string builder to construct the order by clause
 		StringBuilder orderByStringBuilder = new StringBuilder();
+		// Keyset paging needs a total order on the keys
+		if (keysetOrdering) {
+			orderByStringBuilder.append(" ORDER BY");
+			for (int i = 0; i < KEYSET_COLUMNS.length; i++) {
+				orderByStringBuilder.append(" " + KEYSET_COLUMNS[i] + " ASC");
+				if (i != (KEYSET_COLUMNS.length - 1))
+					orderByStringBuilder.append(",");
+			}
+			return orderByStringBuilder.toString();
+		}
 		// Make sure there are parameters
 		if (orderByParameters != null && orderByParameters.length > 0) {
 			orderByStringBuilder.append(" ORDER BY");
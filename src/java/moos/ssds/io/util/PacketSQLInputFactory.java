@@ -0,0 +1,239 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.io.util;
+
+import java.sql.SQLException;
+
+import moos.ssds.io.PacketSQLInput;
+import moos.ssds.io.PacketSQLQueryFactory;
+
+/**
+ * <p>
+ * This class builds the <code>PacketSQLInput</code>s that query for raw
+ * device packets from the ranges of their header fields. It is used by both
+ * the raw data access bean and the servlet that streams the original data.
+ * </p>
+ * <hr>
+ * 
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class PacketSQLInputFactory {
+
+	/**
+	 * These are the orders the raw data can be keyed by
+	 */
+	public static final String BY_SEQUENCE_NUMBER = "sequenceNumber";
+	public static final String BY_TIMESTAMP = "timestamp";
+
+	/**
+	 * This method returns the order to key the raw data by, which is
+	 * <code>BY_TIMESTAMP</code> unless <code>BY_SEQUENCE_NUMBER</code> is
+	 * asked for
+	 */
+	public static String normalizeOrderBy(String orderBy) {
+		if ((orderBy == null)
+				|| (!orderBy.equals(BY_SEQUENCE_NUMBER) && !orderBy
+						.equals(BY_TIMESTAMP))) {
+			return BY_TIMESTAMP;
+		}
+		return orderBy;
+	}
+
+	/**
+	 * This method creates a <code>PacketSQLInput</code> that is set up to
+	 * query for the raw data that matches the parameters (null means the
+	 * parameter is not used). The packets come back in the order given (see
+	 * <code>normalizeOrderBy</code>). The query has not been run yet and the
+	 * caller must close the <code>PacketSQLInput</code> when done.
+	 * 
+	 * @return the <code>PacketSQLInput</code> that is ready to query
+	 * @throws SQLException
+	 *             if the deviceID is not specified
+	 */
+	public static PacketSQLInput createPacketSQLInput(Long deviceID,
+			Long startParentID, Long endParentID, Integer startPacketType,
+			Integer endPacketType, Long startPacketSubType,
+			Long endPacketSubType, Long startDataDescriptionID,
+			Long endDataDescriptionID, Long startDataDescriptionVersion,
+			Long endDataDescriptionVersion, Long startTimestampSeconds,
+			Long endTimestampSeconds, Long startTimestampNanoseconds,
+			Long endTimestampNanoseconds, Long startSequenceNumber,
+			Long endSequenceNumber, Long lastNumberOfPackets,
+			Double startLatitude, Double endLatitude, Double startLongitude,
+			Double endLongitude, Float startDepth, Float endDepth,
+			String orderBy) throws SQLException {
+
+		// First check to see if the deviceID is specified (it must be)
+		if (deviceID == null) {
+			throw new SQLException("The deviceID must be specified");
+		}
+
+		// Create a PacketSQLInput
+		PacketSQLInput packetSQLInput = new PacketSQLInput(null, deviceID, null);
+
+		// Set all the values
+		packetSQLInput.setDeviceID(deviceID.longValue());
+		if (startParentID != null) {
+			packetSQLInput.setStartParentID(startParentID.longValue());
+		} else {
+			packetSQLInput.setStartParentID(PacketSQLInput.MISSING_VALUE);
+		}
+		if (endParentID != null) {
+			packetSQLInput.setEndParentID(endParentID.longValue());
+		} else {
+			packetSQLInput.setEndParentID(PacketSQLInput.MISSING_VALUE);
+		}
+		if (startPacketType != null) {
+			packetSQLInput.setStartPacketType(startPacketType.intValue());
+		} else {
+			packetSQLInput.setStartPacketType(PacketSQLInput.MISSING_VALUE);
+		}
+		if (endPacketType != null) {
+			packetSQLInput.setEndPacketType(endPacketType.intValue());
+		} else {
+			packetSQLInput.setEndPacketType(PacketSQLInput.MISSING_VALUE);
+		}
+		if (startPacketSubType != null) {
+			packetSQLInput
+					.setStartPacketSubType(startPacketSubType.longValue());
+		} else {
+			packetSQLInput.setStartPacketSubType(PacketSQLInput.MISSING_VALUE);
+		}
+		if (endPacketSubType != null) {
+			packetSQLInput.setEndPacketSubType(endPacketSubType.longValue());
+		} else {
+			packetSQLInput.setEndPacketSubType(PacketSQLInput.MISSING_VALUE);
+		}
+		if (startDataDescriptionID != null) {
+			packetSQLInput.setStartDataDescriptionID(startDataDescriptionID
+					.longValue());
+		} else {
+			packetSQLInput
+					.setStartDataDescriptionID(PacketSQLInput.MISSING_VALUE);
+		}
+		if (endDataDescriptionID != null) {
+			packetSQLInput.setEndDataDescriptionID(endDataDescriptionID
+					.longValue());
+		} else {
+			packetSQLInput
+					.setEndDataDescriptionID(PacketSQLInput.MISSING_VALUE);
+		}
+		if (startDataDescriptionVersion != null) {
+			packetSQLInput
+					.setStartDataDescriptionVersion(startDataDescriptionVersion
+							.longValue());
+		} else {
+			packetSQLInput
+					.setStartDataDescriptionVersion(PacketSQLInput.MISSING_VALUE);
+		}
+		if (endDataDescriptionVersion != null) {
+			packetSQLInput
+					.setEndDataDescriptionVersion(endDataDescriptionVersion
+							.longValue());
+		} else {
+			packetSQLInput
+					.setEndDataDescriptionVersion(PacketSQLInput.MISSING_VALUE);
+		}
+		if (startTimestampSeconds != null) {
+			packetSQLInput.setStartTimestampSeconds(startTimestampSeconds
+					.longValue());
+		} else {
+			packetSQLInput
+					.setStartTimestampSeconds(PacketSQLInput.MISSING_VALUE);
+		}
+		if (endTimestampSeconds != null) {
+			packetSQLInput.setEndTimestampSeconds(endTimestampSeconds
+					.longValue());
+		} else {
+			packetSQLInput.setEndTimestampSeconds(PacketSQLInput.MISSING_VALUE);
+		}
+		if (startTimestampNanoseconds != null) {
+			packetSQLInput
+					.setStartTimestampNanoseconds(startTimestampNanoseconds
+							.longValue());
+		} else {
+			packetSQLInput
+					.setStartTimestampNanoseconds(PacketSQLInput.MISSING_VALUE);
+		}
+		if (endTimestampNanoseconds != null) {
+			packetSQLInput.setEndTimestampNanoseconds(endTimestampNanoseconds
+					.longValue());
+		} else {
+			packetSQLInput
+					.setEndTimestampNanoseconds(PacketSQLInput.MISSING_VALUE);
+		}
+		if (startSequenceNumber != null) {
+			packetSQLInput.setStartSequenceNumber(startSequenceNumber
+					.longValue());
+		} else {
+			packetSQLInput.setStartSequenceNumber(PacketSQLInput.MISSING_VALUE);
+		}
+		if (endSequenceNumber != null) {
+			packetSQLInput.setEndSequenceNumber(endSequenceNumber.longValue());
+		} else {
+			packetSQLInput.setEndSequenceNumber(PacketSQLInput.MISSING_VALUE);
+		}
+		if (lastNumberOfPackets != null) {
+			packetSQLInput.setLastNumberOfPackets(lastNumberOfPackets
+					.longValue());
+		} else {
+			packetSQLInput.setLastNumberOfPackets(PacketSQLInput.MISSING_VALUE);
+		}
+		if (startLatitude != null) {
+			packetSQLInput.setStartLatitude(startLatitude.doubleValue());
+		} else {
+			packetSQLInput.setStartLatitude(PacketSQLInput.MISSING_VALUE);
+		}
+		if (endLatitude != null) {
+			packetSQLInput.setEndLatitude(endLatitude.doubleValue());
+		} else {
+			packetSQLInput.setEndLatitude(PacketSQLInput.MISSING_VALUE);
+		}
+		if (startLongitude != null) {
+			packetSQLInput.setStartLongitude(startLongitude.doubleValue());
+		} else {
+			packetSQLInput.setStartLongitude(PacketSQLInput.MISSING_VALUE);
+		}
+		if (endLongitude != null) {
+			packetSQLInput.setEndLongitude(endLongitude.doubleValue());
+		} else {
+			packetSQLInput.setEndLongitude(PacketSQLInput.MISSING_VALUE);
+		}
+		if (startDepth != null) {
+			packetSQLInput.setStartDepth(startDepth.floatValue());
+		} else {
+			packetSQLInput.setStartDepth(PacketSQLInput.MISSING_VALUE);
+		}
+		if (endDepth != null) {
+			packetSQLInput.setEndDepth(endDepth.floatValue());
+		} else {
+			packetSQLInput.setEndDepth(PacketSQLInput.MISSING_VALUE);
+		}
+		// If the data is keyed by sequence number, have the query put it in
+		// that order (the default is by timestamp)
+		if (BY_SEQUENCE_NUMBER.equals(orderBy)) {
+			packetSQLInput.clearOrderByParameters();
+			packetSQLInput.addOrderByParameter(
+					PacketSQLQueryFactory.SEQUENCE_NUMBER, false);
+			packetSQLInput.addOrderByParameter(
+					PacketSQLQueryFactory.TIMESTAMP_SECONDS, false);
+			packetSQLInput.addOrderByParameter(
+					PacketSQLQueryFactory.TIMESTAMP_NANOSECONDS, false);
+		}
+		return packetSQLInput;
+	}
+}
@@ -5,6 +5,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Date;
 
@@ -37,6 +38,21 @@ public class PacketUtility {
 	 */
 	private static final Logger logger = Logger.getLogger(PacketUtility.class);
 
+	/**
+	 * These are the offsets of the fields of a SIAM exported byte array that
+	 * the conversion to SSDS uses (streamID and devicePacketVersion come
+	 * first and the secondPacketVersion is skipped, SSDS ignores them)
+	 */
+	private static final int SIAM_SOURCE_ID_OFFSET = 10;
+	private static final int SIAM_TIMESTAMP_OFFSET = 18;
+	private static final int SIAM_SEQUENCE_NUMBER_OFFSET = 26;
+	private static final int SIAM_METADATA_REF_OFFSET = 34;
+	private static final int SIAM_PARENT_ID_OFFSET = 42;
+	private static final int SIAM_RECORD_TYPE_OFFSET = 50;
+	private static final int SIAM_SECOND_STREAM_ID_OFFSET = 58;
+	private static final int SIAM_BUFFER_LEN_OFFSET = 68;
+	private static final int SIAM_BUFFER_BYTES_OFFSET = 72;
+
 	/**
 	 * This method takes in a JMS BytesMessage and tries to extract a byte array
 	 * 
@@ -111,6 +127,10 @@ public class PacketUtility {
 	 */
 	public static void logSIAMMessageByteArray(byte[] siamByteArray,
 			boolean convertBuffersToASCII) {
+		// Don't bother taking it apart if it is not going to be logged
+		if (!logger.isDebugEnabled())
+			return;
+
 		// This is a string buffer to keep track of the progress of the
 		// extraction
 		StringBuffer loggerMessage = new StringBuffer();
@@ -271,6 +291,10 @@ public class PacketUtility {
 	 */
 	public static void logVersion3SSDSByteArray(byte[] ssdsByteArray,
 			boolean convertBuffersToASCII) {
+		// Don't bother taking it apart if it is not going to be logged
+		if (!logger.isDebugEnabled())
+			return;
+
 		// This is a string buffer to keep track of the progress of the
 		// extraction
 		StringBuffer loggerMessage = new StringBuffer();
@@ -569,35 +593,25 @@ public class PacketUtility {
 		// The collection to return is an array list
 		ArrayList<Object> returnCollection = new ArrayList<Object>();
 
-		// OK now parse out the keys from the byte array
-		DataInputStream dataInputStream = new DataInputStream(
-				new ByteArrayInputStream(ssdsByteArray));
+		// OK now read the keys from the byte array
 		try {
-			returnCollection.add(dataInputStream.readLong());
-			returnCollection.add(dataInputStream.readLong());
-			returnCollection.add(dataInputStream.readInt());
-			returnCollection.add(dataInputStream.readLong());
-			returnCollection.add(dataInputStream.readLong());
-			returnCollection.add(dataInputStream.readLong());
-			returnCollection.add(dataInputStream.readLong());
-			returnCollection.add(dataInputStream.readLong());
-			returnCollection.add(dataInputStream.readLong());
-			int firstBufferSize = dataInputStream.readInt();
-			byte[] firstBuffer = new byte[firstBufferSize];
-			// Read in the data buffer
-			dataInputStream.read(firstBuffer);
-			returnCollection.add(firstBufferSize);
-			returnCollection.add(firstBuffer);
-			// Read in the size of the secondary buffer
-			int secondBufferSize = dataInputStream.readInt();
-			byte[] secondBuffer = new byte[secondBufferSize];
-			// Read in the buffer
-			dataInputStream.read(secondBuffer);
-			returnCollection.add(secondBufferSize);
-			returnCollection.add(secondBuffer);
-		} catch (IOException e) {
-			logger.error("IException caught reading from byte array: "
-					+ e.getMessage());
+			SSDSv3PacketView packetView = new SSDSv3PacketView(ssdsByteArray);
+			returnCollection.add(packetView.getDeviceID());
+			returnCollection.add(packetView.getParentID());
+			returnCollection.add(packetView.getPacketType());
+			returnCollection.add(packetView.getPacketSubType());
+			returnCollection.add(packetView.getDataDescriptionID());
+			returnCollection.add(packetView.getDataDescriptionVersion());
+			returnCollection.add(packetView.getTimestampSeconds());
+			returnCollection.add(packetView.getTimestampNanoseconds());
+			returnCollection.add(packetView.getSequenceNumber());
+			returnCollection.add(packetView.getDataBufferLength());
+			returnCollection.add(packetView.copyDataBuffer());
+			returnCollection.add(packetView.getOtherBufferLength());
+			returnCollection.add(packetView.copyOtherBuffer());
+		} catch (IllegalArgumentException e) {
+			logger.error("IllegalArgumentException caught reading from "
+					+ "byte array: " + e.getMessage());
 		}
 
 		// Now return the collection
@@ -844,27 +858,7 @@ public class PacketUtility {
 
 			// Some reasoning has to be done to figure out the packetType for
 			// SSDS
-			int packetType = 0;
-			// First we can examine the secondStreamID. First check for metadata
-			// packet
-			if (secondStreamID == Exportable.EX_METADATAPACKET) {
-				// For SSDS, the packet type for Metadata packets is 1
-				packetType = 1;
-			} else if (secondStreamID == Exportable.EX_SENSORDATAPACKET) {
-				// For SSDS, SensorDataPacket (and SummaryPackets) are
-				// packetType 0 (data is the most basic packet)
-				packetType = 0;
-			} else if (secondStreamID == Exportable.EX_DEVICEMESSAGEPACKET) {
-				// For SSDS, DeviceMessage packets
-				packetType = 4;
-			} else {
-				// Since it cannot be determined, we will just consider it to be
-				// data (the most basic packet), but log a message.
-				logger.error("The incoming SIAM secondStreamID of "
-						+ secondStreamID
-						+ " was not recognized by SSDS so it will be "
-						+ "converted to a data packet.");
-			}
+			int packetType = getSSDSPacketType(secondStreamID);
 
 			// Write the packet sub type (which is their record type)
 			long packetSubType = 0;
@@ -924,6 +918,120 @@ public class PacketUtility {
 		return ssdsByteArray;
 	}
 
+	/**
+	 * This method does the same conversion as
+	 * <code>convertSIAMByteArrayToVersion3SSDSByteArray</code> (without any
+	 * logging), but reads the SIAM fields by their offsets and writes the SSDS
+	 * byte array into one buffer that is allocated at its final size, so the
+	 * data buffers are only copied once. If the SIAM byte array does not
+	 * look complete (it is too short for the buffer lengths it has), it is
+	 * handed to <code>convertSIAMByteArrayToVersion3SSDSByteArray</code>
+	 * instead so the result is the same either way.
+	 * 
+	 * @param siamByteArray
+	 *            the incoming byte array in SIAM exported format
+	 * @return byte array in SSDS format, returns null if the incoming array is
+	 *         empty
+	 */
+	public static byte[] transcodeSIAMByteArrayToVersion3SSDSByteArray(
+			byte[] siamByteArray) {
+		// Check that the lengths of the buffers fit in the array
+		if ((siamByteArray == null)
+				|| (siamByteArray.length < SIAM_BUFFER_BYTES_OFFSET))
+			return convertSIAMByteArrayToVersion3SSDSByteArray(siamByteArray,
+					false, false, false, false);
+		ByteBuffer siamBuffer = ByteBuffer.wrap(siamByteArray);
+		int firstBufferLength = siamBuffer.getInt(SIAM_BUFFER_LEN_OFFSET);
+		if ((firstBufferLength < 0)
+				|| (firstBufferLength > siamByteArray.length
+						- SIAM_BUFFER_BYTES_OFFSET))
+			return convertSIAMByteArrayToVersion3SSDSByteArray(siamByteArray,
+					false, false, false, false);
+		int secondBufferLengthOffset = SIAM_BUFFER_BYTES_OFFSET
+				+ firstBufferLength;
+		// The second buffer length can be left off altogether
+		int secondBufferLength = 0;
+		if (secondBufferLengthOffset + 4 <= siamByteArray.length)
+			secondBufferLength = siamBuffer.getInt(secondBufferLengthOffset);
+		if ((secondBufferLength < 0)
+				|| ((secondBufferLength > 0) && (secondBufferLength > siamByteArray.length
+						- secondBufferLengthOffset - 4)))
+			return convertSIAMByteArrayToVersion3SSDSByteArray(siamByteArray,
+					false, false, false, false);
+
+		// The header fields
+		long timestamp = siamBuffer.getLong(SIAM_TIMESTAMP_OFFSET);
+		long metadataRef = siamBuffer.getLong(SIAM_METADATA_REF_OFFSET);
+		long recordType = siamBuffer.getLong(SIAM_RECORD_TYPE_OFFSET);
+		int packetType = getSSDSPacketType(siamBuffer
+				.getShort(SIAM_SECOND_STREAM_ID_OFFSET));
+
+		// Metadata packets have the buffers the other way around and a sub
+		// type of 0 (see convertSIAMByteArrayToVersion3SSDSByteArray)
+		int firstBufferOffset = SIAM_BUFFER_BYTES_OFFSET;
+		int secondBufferOffset = secondBufferLengthOffset + 4;
+		if (packetType == 1) {
+			int swap = firstBufferOffset;
+			firstBufferOffset = secondBufferOffset;
+			secondBufferOffset = swap;
+			swap = firstBufferLength;
+			firstBufferLength = secondBufferLength;
+			secondBufferLength = swap;
+		}
+
+		// Now write the SSDS byte array
+		byte[] ssdsByteArray = new byte[SSDSv3PacketView.HEADER_LENGTH
+				+ firstBufferLength + 4 + secondBufferLength];
+		ByteBuffer ssdsBuffer = ByteBuffer.wrap(ssdsByteArray);
+		ssdsBuffer.putLong(siamBuffer.getLong(SIAM_SOURCE_ID_OFFSET));
+		ssdsBuffer.putLong(siamBuffer.getLong(SIAM_PARENT_ID_OFFSET));
+		ssdsBuffer.putInt(packetType);
+		ssdsBuffer.putLong((packetType == 1) ? 0 : recordType);
+		ssdsBuffer.putLong(metadataRef);
+		ssdsBuffer.putLong(metadataRef);
+		// The timestamp is converted the same way as in the stream
+		// conversion above (see the note there about SSDS-77) so the two
+		// give the same bytes
+		ssdsBuffer.putLong(DateUtils
+				.getEpochTimestampSecondsFromEpochMillis(timestamp));
+		ssdsBuffer.putLong(DateUtils.getNanosecondsFromEpochMillis(timestamp));
+		ssdsBuffer.putLong(siamBuffer.getLong(SIAM_SEQUENCE_NUMBER_OFFSET));
+		// (an empty buffer can have an offset past the end of the SIAM array)
+		ssdsBuffer.putInt(firstBufferLength);
+		if (firstBufferLength > 0)
+			ssdsBuffer.put(siamByteArray, firstBufferOffset, firstBufferLength);
+		ssdsBuffer.putInt(secondBufferLength);
+		if (secondBufferLength > 0)
+			ssdsBuffer.put(siamByteArray, secondBufferOffset,
+					secondBufferLength);
+		return ssdsByteArray;
+	}
+
+	/**
+	 * This method works out the SSDS packet type from the second stream ID of
+	 * a SIAM packet
+	 */
+	private static int getSSDSPacketType(short secondStreamID) {
+		// First check for metadata packet
+		if (secondStreamID == Exportable.EX_METADATAPACKET) {
+			// For SSDS, the packet type for Metadata packets is 1
+			return 1;
+		} else if (secondStreamID == Exportable.EX_SENSORDATAPACKET) {
+			// For SSDS, SensorDataPacket (and SummaryPackets) are packetType 0
+			// (data is the most basic packet)
+			return 0;
+		} else if (secondStreamID == Exportable.EX_DEVICEMESSAGEPACKET) {
+			// For SSDS, DeviceMessage packets
+			return 4;
+		}
+		// Since it cannot be determined, we will just consider it to be data
+		// (the most basic packet), but log a message.
+		logger.error("The incoming SIAM secondStreamID of " + secondStreamID
+				+ " was not recognized by SSDS so it will be "
+				+ "converted to a data packet.");
+		return 0;
+	}
+
 	/**
 	 * This method takes in a SSDSDevicePacket and extracts the information into
 	 * the proper byte array structure
@@ -1089,9 +1197,6 @@ public class PacketUtility {
 	public static SSDSDevicePacket convertVersion3SSDSByteArrayToSSDSDevicePacket(
 			byte[] ssdsByteArray, boolean convertToGeoPacket) {
 
-		// OK now parse out the keys from the byte array
-		DataInputStream dataInputStream = new DataInputStream(
-				new ByteArrayInputStream(ssdsByteArray));
 		long sourceID = -99;
 		long platformID = -99;
 		int packetType = -99;
@@ -1101,14 +1206,14 @@ public class PacketUtility {
 		long systemTimeSeconds = -99;
 		long systemTimeNanoseconds = -99;
 		long sequenceNumber = -99;
-		int bufferSize = -99;
 		byte[] buffer = null;
-		int bufferTwoSize = -99;
 		byte[] bufferTwo = null;
+		// OK now read the keys from the byte array
 		try {
-			sourceID = dataInputStream.readLong();
-			platformID = dataInputStream.readLong();
-			int ssdsPacketType = dataInputStream.readInt();
+			SSDSv3PacketView packetView = new SSDSv3PacketView(ssdsByteArray);
+			sourceID = packetView.getDeviceID();
+			platformID = packetView.getParentID();
+			int ssdsPacketType = packetView.getPacketType();
 			if (ssdsPacketType == 0) {
 				packetType = 1;
 			} else if (ssdsPacketType == 1) {
@@ -1116,24 +1221,18 @@ public class PacketUtility {
 			} else if (ssdsPacketType == 4) {
 				packetType = 2;
 			}
-			recordType = dataInputStream.readLong();
-			metadataSequenceNumber = dataInputStream.readLong();
-			dataDescriptionVersion = dataInputStream.readLong();
-			systemTimeSeconds = dataInputStream.readLong();
-			systemTimeNanoseconds = dataInputStream.readLong();
-			sequenceNumber = dataInputStream.readLong();
-			bufferSize = dataInputStream.readInt();
-			buffer = new byte[bufferSize];
-			// Read in the data buffer
-			dataInputStream.read(buffer);
-			// Read in the size of the secondary buffer
-			bufferTwoSize = dataInputStream.readInt();
-			bufferTwo = new byte[bufferTwoSize];
-			// Read in the buffer
-			dataInputStream.read(bufferTwo);
-		} catch (IOException e) {
-			logger.error("IException caught reading from byte array: "
-					+ e.getMessage());
+			recordType = packetView.getPacketSubType();
+			metadataSequenceNumber = packetView.getDataDescriptionID();
+			dataDescriptionVersion = packetView.getDataDescriptionVersion();
+			systemTimeSeconds = packetView.getTimestampSeconds();
+			systemTimeNanoseconds = packetView.getTimestampNanoseconds();
+			sequenceNumber = packetView.getSequenceNumber();
+			// The packet keeps its own copies of the buffers
+			buffer = packetView.copyDataBuffer();
+			bufferTwo = packetView.copyOtherBuffer();
+		} catch (IllegalArgumentException e) {
+			logger.error("IllegalArgumentException caught reading from "
+					+ "byte array: " + e.getMessage());
 		}
 
 		// Create a new packet
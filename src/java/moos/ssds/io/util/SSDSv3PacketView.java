@@ -0,0 +1,294 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.io.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p>
+ * This class is a reusable view over a version 3 SSDS byte array. Instead of
+ * streaming through the bytes and copying the buffers out, the header fields
+ * are read with absolute offsets and the data and &quot;other&quot; buffers are
+ * returned as slices of the underlying bytes. The same instance can be pointed
+ * at a new packet by calling one of the <code>wrap</code> methods, so a loop
+ * over many packets does not need to allocate anything.
+ * </p>
+ * <p>
+ * The layout (all big-endian) is:
+ * </p>
+ * <ol>
+ * <li>deviceID (long)</li>
+ * <li>parentID (long)</li>
+ * <li>packetType (int)</li>
+ * <li>packetSubType (long)</li>
+ * <li>dataDescriptionID (long)</li>
+ * <li>dataDescriptionVersion (long)</li>
+ * <li>timestampSeconds (long)</li>
+ * <li>timestampNanoseconds (long)</li>
+ * <li>sequenceNumber (long)</li>
+ * <li>bufferLen (int)</li>
+ * <li>bufferBytes (byte [])</li>
+ * <li>bufferTwoLen (int)</li>
+ * <li>bufferTwoBytes (byte [])</li>
+ * </ol>
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ * <hr>
+ */
+public class SSDSv3PacketView {
+
+	/**
+	 * These are the offsets of the header fields from the start of the packet
+	 */
+	public static final int DEVICE_ID_OFFSET = 0;
+	public static final int PARENT_ID_OFFSET = 8;
+	public static final int PACKET_TYPE_OFFSET = 16;
+	public static final int PACKET_SUB_TYPE_OFFSET = 20;
+	public static final int DATA_DESCRIPTION_ID_OFFSET = 28;
+	public static final int DATA_DESCRIPTION_VERSION_OFFSET = 36;
+	public static final int TIMESTAMP_SECONDS_OFFSET = 44;
+	public static final int TIMESTAMP_NANOSECONDS_OFFSET = 52;
+	public static final int SEQUENCE_NUMBER_OFFSET = 60;
+	public static final int BUFFER_LEN_OFFSET = 68;
+	public static final int BUFFER_BYTES_OFFSET = 72;
+
+	/**
+	 * This is the size of the header (everything before the first buffer)
+	 */
+	public static final int HEADER_LENGTH = BUFFER_BYTES_OFFSET;
+
+	/**
+	 * This is the smallest possible packet (header plus the two buffer lengths
+	 * with empty buffers)
+	 */
+	public static final int MINIMUM_LENGTH = HEADER_LENGTH + 4;
+
+	/**
+	 * This is the buffer that the view is currently over
+	 */
+	private ByteBuffer buffer = null;
+
+	/**
+	 * This is the absolute index in the buffer where the packet starts
+	 */
+	private int start = 0;
+
+	/**
+	 * These are the length of the packet data buffer and the (absolute) index
+	 * of the second buffer length field. They are resolved when wrapping.
+	 */
+	private int bufferLen = 0;
+	private int bufferTwoLenIndex = 0;
+
+	/**
+	 * The default constructor. One of the <code>wrap</code> methods must be
+	 * called before any of the getters.
+	 */
+	public SSDSv3PacketView() {
+	}
+
+	/**
+	 * This constructor wraps the given SSDS byte array
+	 *
+	 * @param ssdsByteArray
+	 */
+	public SSDSv3PacketView(byte[] ssdsByteArray) {
+		this.wrap(ssdsByteArray);
+	}
+
+	/**
+	 * This method points the view at the given SSDS byte array
+	 *
+	 * @param ssdsByteArray
+	 * @return this view
+	 */
+	public SSDSv3PacketView wrap(byte[] ssdsByteArray) {
+		if (ssdsByteArray == null)
+			throw new IllegalArgumentException(
+					"The buffer is too short to be an SSDS packet");
+		return this.wrap(ByteBuffer.wrap(ssdsByteArray).order(
+				ByteOrder.BIG_ENDIAN), 0);
+	}
+
+	/**
+	 * This method points the view at a packet that starts at the given
+	 * (absolute) index of the buffer. The buffer's position, limit and byte
+	 * order are not changed; the limit is used as the end of the available
+	 * bytes and the packet is always read as big endian.
+	 *
+	 * @param buffer
+	 * @param start
+	 * @return this view
+	 * @throws IllegalArgumentException
+	 *             if the buffer is too short to hold the packet it describes
+	 */
+	public SSDSv3PacketView wrap(ByteBuffer buffer, int start) {
+		if ((buffer == null) || (start < 0)
+				|| ((long) buffer.limit() - start < MINIMUM_LENGTH))
+			throw new IllegalArgumentException(
+					"The buffer is too short to be an SSDS packet");
+		if (buffer.order() != ByteOrder.BIG_ENDIAN)
+			buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		// The lengths come from the packet so the ends are checked as longs
+		// (a large length would overflow an int)
+		int bufferLen = buffer.getInt(start + BUFFER_LEN_OFFSET);
+		long bufferTwoLenIndex = (long) start + BUFFER_BYTES_OFFSET + bufferLen;
+		if ((bufferLen < 0) || (bufferTwoLenIndex + 4 > buffer.limit()))
+			throw new IllegalArgumentException("The data buffer length ("
+					+ bufferLen + ") does not fit in the SSDS packet");
+		int bufferTwoLen = buffer.getInt((int) bufferTwoLenIndex);
+		if ((bufferTwoLen < 0)
+				|| (bufferTwoLenIndex + 4 + bufferTwoLen > buffer.limit()))
+			throw new IllegalArgumentException("The other buffer length ("
+					+ bufferTwoLen + ") does not fit in the SSDS packet");
+		this.buffer = buffer;
+		this.start = start;
+		this.bufferLen = bufferLen;
+		this.bufferTwoLenIndex = (int) bufferTwoLenIndex;
+		return this;
+	}
+
+	/**
+	 * @return the total number of bytes the packet takes up
+	 */
+	public int getLength() {
+		return bufferTwoLenIndex + 4 + getOtherBufferLength() - start;
+	}
+
+	public long getDeviceID() {
+		return buffer.getLong(start + DEVICE_ID_OFFSET);
+	}
+
+	public long getParentID() {
+		return buffer.getLong(start + PARENT_ID_OFFSET);
+	}
+
+	public int getPacketType() {
+		return buffer.getInt(start + PACKET_TYPE_OFFSET);
+	}
+
+	public long getPacketSubType() {
+		return buffer.getLong(start + PACKET_SUB_TYPE_OFFSET);
+	}
+
+	public long getDataDescriptionID() {
+		return buffer.getLong(start + DATA_DESCRIPTION_ID_OFFSET);
+	}
+
+	public long getDataDescriptionVersion() {
+		return buffer.getLong(start + DATA_DESCRIPTION_VERSION_OFFSET);
+	}
+
+	public long getTimestampSeconds() {
+		return buffer.getLong(start + TIMESTAMP_SECONDS_OFFSET);
+	}
+
+	public long getTimestampNanoseconds() {
+		return buffer.getLong(start + TIMESTAMP_NANOSECONDS_OFFSET);
+	}
+
+	public long getSequenceNumber() {
+		return buffer.getLong(start + SEQUENCE_NUMBER_OFFSET);
+	}
+
+	public int getDataBufferLength() {
+		return bufferLen;
+	}
+
+	public int getOtherBufferLength() {
+		return buffer.getInt(bufferTwoLenIndex);
+	}
+
+	/**
+	 * @return the absolute index in the wrapped buffer (or array) where the
+	 *         data buffer starts
+	 */
+	public int getDataBufferOffset() {
+		return start + BUFFER_BYTES_OFFSET;
+	}
+
+	/**
+	 * @return the absolute index in the wrapped buffer (or array) where the
+	 *         other buffer starts
+	 */
+	public int getOtherBufferOffset() {
+		return bufferTwoLenIndex + 4;
+	}
+
+	/**
+	 * This method returns a view of the data buffer that shares the bytes of
+	 * the packet (nothing is copied)
+	 *
+	 * @return a read-only <code>ByteBuffer</code> over the data buffer
+	 */
+	public ByteBuffer getDataBuffer() {
+		return slice(getDataBufferOffset(), bufferLen);
+	}
+
+	/**
+	 * This method returns a view of the other buffer that shares the bytes of
+	 * the packet (nothing is copied)
+	 *
+	 * @return a read-only <code>ByteBuffer</code> over the other buffer
+	 */
+	public ByteBuffer getOtherBuffer() {
+		return slice(getOtherBufferOffset(), getOtherBufferLength());
+	}
+
+	/**
+	 * @return a new array with a copy of the data buffer
+	 */
+	public byte[] copyDataBuffer() {
+		byte[] copy = new byte[bufferLen];
+		getDataBuffer().get(copy);
+		return copy;
+	}
+
+	/**
+	 * @return a new array with a copy of the other buffer
+	 */
+	public byte[] copyOtherBuffer() {
+		byte[] copy = new byte[getOtherBufferLength()];
+		getOtherBuffer().get(copy);
+		return copy;
+	}
+
+	/**
+	 * This method creates a read-only slice of the wrapped buffer
+	 */
+	private ByteBuffer slice(int index, int length) {
+		ByteBuffer duplicate = buffer.asReadOnlyBuffer();
+		duplicate.limit(index + length);
+		duplicate.position(index);
+		return duplicate.slice();
+	}
+
+	public String toString() {
+		if (buffer == null)
+			return "SSDSv3PacketView[empty]";
+		return "SSDSv3PacketView[deviceID=" + getDeviceID() + ", parentID="
+				+ getParentID() + ", packetType=" + getPacketType()
+				+ ", packetSubType=" + getPacketSubType()
+				+ ", dataDescriptionID=" + getDataDescriptionID()
+				+ ", dataDescriptionVersion=" + getDataDescriptionVersion()
+				+ ", timestampSeconds=" + getTimestampSeconds()
+				+ ", timestampNanoseconds=" + getTimestampNanoseconds()
+				+ ", sequenceNumber=" + getSequenceNumber() + ", bufferLen="
+				+ bufferLen + ", bufferTwoLen=" + getOtherBufferLength() + "]";
+	}
+}
@@ -34,6 +34,7 @@ import moos.ssds.metadata.util.MetadataValidator;
  * 
  * @stereotype role
  * @hibernate.class table="DeviceType"
+ * @hibernate.cache usage="read-write"
  * @author : $Author: kgomes $
  * @version : $Revision: 1.1.2.11 $
  */
@@ -37,6 +37,7 @@ import org.apache.log4j.Logger;
  * 
  * @stereotype description
  * @hibernate.class table="RecordDescription"
+ * @hibernate.cache usage="read-write"
  * @author : $Author: kgomes $
  * @version : $Revision: 1.1.2.20 $
  */
@@ -388,6 +389,7 @@ public class RecordDescription implements IMetadataObject {
 	 * @hibernate.collection-key column="RecordDescriptionID_FK"
 	 * @hibernate.collection-one-to-many 
 	 *                                   class="moos.ssds.metadata.RecordVariable"
+	 * @hibernate.collection-cache usage="read-write"
 	 * @return A collection of the <code>RecordVariable<code>s
 	 */
 	public Collection<RecordVariable> getRecordVariables() {
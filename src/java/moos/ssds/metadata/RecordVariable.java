@@ -32,6 +32,7 @@ import org.apache.log4j.Logger;
  * 
  * @stereotype description
  * @hibernate.class table="RecordVariable"
+ * @hibernate.cache usage="read-write"
  * @author : $Author: kgomes $
  * @version : $Revision: 1.1.2.16 $
  */
@@ -31,6 +31,7 @@ import org.apache.log4j.Logger;
  * 
  * @stereotype role
  * @hibernate.class table="ResourceType"
+ * @hibernate.cache usage="read-write"
  * @author : $Author: kgomes $
  * @version : $Revision: 1.1.2.9 $
  */
@@ -32,6 +32,7 @@ import org.apache.log4j.Logger;
  * 
  * @stereotype thing
  * @hibernate.class table="StandardDomain"
+ * @hibernate.cache usage="read-write"
  * @author : $Author: kgomes $
  * @version : $Revision: 1.1.2.10 $
  */
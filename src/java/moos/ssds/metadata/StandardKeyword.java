@@ -32,6 +32,7 @@ import moos.ssds.metadata.util.MetadataValidator;
  * 
  * @stereotype role
  * @hibernate.class table="StandardKeyword"
+ * @hibernate.cache usage="read-write"
  * @author : $Author: kgomes $
  * @version : $Revision: 1.1.2.9 $
  */
@@ -33,6 +33,7 @@ import moos.ssds.metadata.util.MetadataValidator;
  * 
  * @stereotype thing
  * @hibernate.class table="StandardUnit"
+ * @hibernate.cache usage="read-write"
  * @author : $Author: kgomes $
  * @version : $Revision: 1.1.2.11 $
  */
@@ -37,6 +37,7 @@ import moos.ssds.metadata.util.MetadataValidator;
  * 
  * @stereotype desscription
  * @hibernate.class table="StandardVariable"
+ * @hibernate.cache usage="read-write"
  * @author : $Author: kgomes $
  * @version : $Revision: 1.1.2.19 $
  */
@@ -255,6 +256,7 @@ public class StandardVariable implements IMetadataObject, IDescription {
 	 * @hibernate.collection-key column="StandardVariableID_FK"
 	 * @hibernate.collection-many-to-many column="StandardUnitID_FK"
 	 *                                    class="moos.ssds.metadata.StandardUnit"
+	 * @hibernate.collection-cache usage="read-write"
 	 * @return the <code>Collection</code> of <code>StandardUnit</code>s that
 	 *         are associated with the <code>StandardVariable</code>
 	 */
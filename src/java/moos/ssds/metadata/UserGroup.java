@@ -32,6 +32,7 @@ import moos.ssds.metadata.util.MetadataValidator;
  * 
  * @stereotype group
  * @hibernate.class table="UserGroup"
+ * @hibernate.cache usage="read-write"
  * @author : $Author: kgomes $
  * @version : $Revision: 1.1.2.7 $
  */
@@ -46,6 +46,8 @@ import javax.naming.InitialContext;
 import javax.naming.NamingException;
 
 import moos.ssds.dao.util.MetadataAccessException;
+import moos.ssds.io.util.PacketUtility;
+import moos.ssds.io.util.SSDSv3PacketView;
 import moos.ssds.metadata.DataContainer;
 import moos.ssds.metadata.DataProducer;
 import moos.ssds.metadata.Device;
@@ -364,36 +366,25 @@ public class RuminateMDB implements javax.ejb.MessageDrivenBean,
 
 			// This assumes that this byte array is in the form of the SSDS
 			// specification
+			ssdsByteArray = PacketUtility
+					.extractByteArrayFromBytesMessage(bytesMessage);
 			try {
-				deviceID = bytesMessage.readLong();
-				parentID = bytesMessage.readLong();
-				packetType = bytesMessage.readInt();
-				packetSubType = bytesMessage.readLong();
-				dataDescriptionID = bytesMessage.readLong();
-				dataDescriptionVersion = bytesMessage.readLong();
-				timestampSeconds = bytesMessage.readLong();
-				timestampNanoseconds = bytesMessage.readLong();
-				sequenceNumber = bytesMessage.readLong();
-				bufferLen = bytesMessage.readInt();
-				bufferBytes = new byte[bufferLen];
-				bytesMessage.readBytes(bufferBytes);
-				bufferTwoLen = bytesMessage.readInt();
-				bufferTwoBytes = new byte[bufferTwoLen];
-				bytesMessage.readBytes(bufferTwoBytes);
-				logger.debug("Incoming Message:");
-				logger.debug("->deviceID=" + deviceID);
-				logger.debug("->parentID=" + parentID);
-				logger.debug("->packetType=" + packetType);
-				logger.debug("->packetSubType=" + packetSubType);
-				logger.debug("->dataDescriptionID=" + dataDescriptionID);
-				logger.debug("->dataDescriptionVersion="
-						+ dataDescriptionVersion);
-				logger.debug("->timestampSeconds=" + timestampSeconds);
-				logger.debug("->timestampNanoseconds=" + timestampNanoseconds);
-				logger.debug("->sequenceNumber=" + sequenceNumber);
-			} catch (JMSException e) {
-				logger.error("JMSException caught: " + e.getMessage());
+				packetView.wrap(ssdsByteArray);
+			} catch (Exception e) {
+				logger.error("Could not read the SSDS packet from the "
+						+ "message, it will be ignored: " + e.getMessage());
+				return;
 			}
+			deviceID = packetView.getDeviceID();
+			parentID = packetView.getParentID();
+			packetType = packetView.getPacketType();
+			packetSubType = packetView.getPacketSubType();
+			dataDescriptionID = packetView.getDataDescriptionID();
+			dataDescriptionVersion = packetView.getDataDescriptionVersion();
+			timestampSeconds = packetView.getTimestampSeconds();
+			timestampNanoseconds = packetView.getTimestampNanoseconds();
+			sequenceNumber = packetView.getSequenceNumber();
+			logger.debug("Incoming Message: " + packetView);
 
 			// Create a packet date that is easier to use
 			long packetTimestamp = (timestampSeconds * 1000)
@@ -462,8 +453,10 @@ public class RuminateMDB implements javax.ejb.MessageDrivenBean,
 		boolean success = false;
 		// The first thing to do is look for the XML that starts and ends with
 		// metadata tags
-		String originalDataBufferString = new String(bufferBytes);
-		String dataBufferString = new String(bufferBytes).toLowerCase();
+		String originalDataBufferString = new String(ssdsByteArray,
+				packetView.getDataBufferOffset(), packetView
+						.getDataBufferLength());
+		String dataBufferString = originalDataBufferString.toLowerCase();
 		logger.debug("Going to look for metadata tags");
 		int indexOfMetadataStartTag = dataBufferString
 				.indexOf("<?xml version=");
@@ -1540,10 +1533,13 @@ public class RuminateMDB implements javax.ejb.MessageDrivenBean,
 	private long timestampSeconds = -999999;
 	private long timestampNanoseconds = -999999;
 	private long sequenceNumber = -999999;
-	private int bufferLen = 1;
-	private byte[] bufferBytes = new byte[bufferLen];
-	private int bufferTwoLen = 1;
-	private byte[] bufferTwoBytes = new byte[bufferTwoLen];
+
+	/**
+	 * The bytes of the incoming packet and the view that is used to read the
+	 * fields and buffers out of it
+	 */
+	private byte[] ssdsByteArray = null;
+	private SSDSv3PacketView packetView = new SSDSv3PacketView();
 
 	/**
 	 * This is the MessageDrivenContext that is from the container
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package moos.ssds.ruminate;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * This class keeps the SHA-256 hashes of all the XML documents that have been
+ * received for each set of keys (deviceID.parentID.dataDescriptionID), so
+ * checking if a document is new is one lookup in memory instead of reading and
+ * comparing every document that came before it.
+ * </p>
+ * <p>
+ * The XML is normalized before it is hashed: line endings are made the same,
+ * trailing white space is taken off of each line and blank lines at the start
+ * and end are dropped. Everything else has to match exactly (the same way the
+ * documents used to be compared).
+ * </p>
+ * <p>
+ * The index is persisted to a text file with one line per document (the key,
+ * the hash and the name of the file the document came in), which is only ever
+ * appended to. The checks are locked by stripes of keys so different devices
+ * do not wait on each other.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class XMLMetadataHashIndex {
+
+	/**
+	 * A log4j logger
+	 */
+	static Logger logger = Logger.getLogger(XMLMetadataHashIndex.class);
+
+	/**
+	 * The number of lock stripes
+	 */
+	private static final int NUMBER_OF_STRIPES = 32;
+
+	/**
+	 * This constructor loads the index from the file (if it exists)
+	 *
+	 * @param indexFile
+	 *            the file the index is persisted to
+	 */
+	public XMLMetadataHashIndex(File indexFile) {
+		this.indexFile = indexFile;
+		for (int i = 0; i < NUMBER_OF_STRIPES; i++)
+			stripes[i] = new Object();
+		if (indexFile.exists()) {
+			load();
+			loadedFromFile = true;
+		}
+	}
+
+	/**
+	 * @return true if the index was loaded from a file that already existed
+	 */
+	public boolean isLoadedFromFile() {
+		return loadedFromFile;
+	}
+
+	/**
+	 * This method creates the key for the set of IDs
+	 */
+	public static String createKey(long deviceID, long parentID,
+			long dataDescriptionID) {
+		return deviceID + "." + parentID + "." + dataDescriptionID;
+	}
+
+	/**
+	 * This method checks if the hash has been seen for the key before and if
+	 * not, adds it (and persists it)
+	 *
+	 * @param key
+	 *            the key of the document
+	 * @param hash
+	 *            the hash of the normalized document
+	 * @param fileName
+	 *            the name of the file the document is in (only for reference)
+	 * @return true if the hash was not in the index yet
+	 */
+	public boolean addIfNew(String key, String hash, String fileName) {
+		synchronized (stripes[(key.hashCode() & 0x7fffffff) % NUMBER_OF_STRIPES]) {
+			Set<String> hashes = hashesByKey.get(key);
+			if (hashes == null) {
+				hashes = Collections.synchronizedSet(new HashSet<String>());
+				hashesByKey.put(key, hashes);
+			} else if (hashes.contains(hash)) {
+				return false;
+			}
+			hashes.add(hash);
+			append(key, hash, fileName);
+			return true;
+		}
+	}
+
+	/**
+	 * @return true if the hash is in the index for the key
+	 */
+	public boolean contains(String key, String hash) {
+		Set<String> hashes = hashesByKey.get(key);
+		return (hashes != null) && hashes.contains(hash);
+	}
+
+	/**
+	 * @return the number of different documents in the index for the key
+	 */
+	public int getNumberOfHashes(String key) {
+		Set<String> hashes = hashesByKey.get(key);
+		return (hashes == null) ? 0 : hashes.size();
+	}
+
+	/**
+	 * This method returns the hex SHA-256 hash of the normalized contents of
+	 * the file
+	 *
+	 * @return the hash or null if the file could not be read
+	 */
+	public static String hashFile(File xmlFile) {
+		if ((xmlFile == null) || (!xmlFile.exists()))
+			return null;
+		InputStream inputStream = null;
+		try {
+			inputStream = new FileInputStream(xmlFile);
+			byte[] xmlBytes = new byte[(int) xmlFile.length()];
+			int offset = 0;
+			while (offset < xmlBytes.length) {
+				int read = inputStream.read(xmlBytes, offset, xmlBytes.length
+						- offset);
+				if (read < 0)
+					break;
+				offset += read;
+			}
+			return hashXML(new String(xmlBytes, 0, offset));
+		} catch (IOException e) {
+			logger.error("IOException caught trying to read XML file "
+					+ xmlFile.getName() + ": " + e.getMessage());
+			return null;
+		} finally {
+			if (inputStream != null) {
+				try {
+					inputStream.close();
+				} catch (IOException e) {
+					logger.error("IOException caught trying to close "
+							+ xmlFile.getName() + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method returns the hex SHA-256 hash of the normalized XML
+	 */
+	public static String hashXML(String xml) {
+		MessageDigest digest = null;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available: "
+					+ e.getMessage());
+		}
+		byte[] hash = null;
+		try {
+			hash = digest.digest(normalizeXML(xml).getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new IllegalStateException("UTF-8 is not available: "
+					+ e.getMessage());
+		}
+		StringBuffer hex = new StringBuffer(hash.length * 2);
+		for (int i = 0; i < hash.length; i++) {
+			hex.append(HEX_DIGITS[(hash[i] >> 4) & 0xf]);
+			hex.append(HEX_DIGITS[hash[i] & 0xf]);
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * This method normalizes the XML before it is hashed (line endings,
+	 * trailing white space and blank lines at the start and end)
+	 */
+	public static String normalizeXML(String xml) {
+		String[] lines = xml.replaceAll("\r\n?", "\n").split("\n");
+		StringBuffer normalized = new StringBuffer(xml.length());
+		int pendingBlankLines = 0;
+		for (int i = 0; i < lines.length; i++) {
+			String line = lines[i];
+			int end = line.length();
+			while ((end > 0) && Character.isWhitespace(line.charAt(end - 1)))
+				end--;
+			if (end == 0) {
+				pendingBlankLines++;
+				continue;
+			}
+			// Only keep the blank lines that are between other lines
+			if (normalized.length() > 0) {
+				for (int j = 0; j <= pendingBlankLines; j++)
+					normalized.append('\n');
+			}
+			pendingBlankLines = 0;
+			normalized.append(line, 0, end);
+		}
+		return normalized.toString();
+	}
+
+	/**
+	 * This method reads the index from the file
+	 */
+	private void load() {
+		BufferedReader reader = null;
+		int numberOfLines = 0;
+		try {
+			reader = new BufferedReader(new FileReader(indexFile));
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.trim().split(" ");
+				if ((fields.length < 2) || (line.startsWith("#")))
+					continue;
+				Set<String> hashes = hashesByKey.get(fields[0]);
+				if (hashes == null) {
+					hashes = Collections.synchronizedSet(new HashSet<String>());
+					hashesByKey.put(fields[0], hashes);
+				}
+				hashes.add(fields[1]);
+				numberOfLines++;
+			}
+		} catch (IOException e) {
+			logger.error("IOException caught trying to load the XML hash "
+					+ "index from " + indexFile.getName() + ": "
+					+ e.getMessage());
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					logger.error("IOException caught trying to close "
+							+ indexFile.getName() + ": " + e.getMessage());
+				}
+			}
+		}
+		logger.debug("Loaded " + numberOfLines + " hashes for "
+				+ hashesByKey.size() + " keys from " + indexFile.getName());
+	}
+
+	/**
+	 * This method appends one entry to the index file
+	 */
+	private void append(String key, String hash, String fileName) {
+		synchronized (indexFile) {
+			Writer writer = null;
+			try {
+				writer = new FileWriter(indexFile, true);
+				writer.write(key + " " + hash + " "
+						+ ((fileName == null) ? "" : fileName) + "\n");
+			} catch (IOException e) {
+				logger.error("IOException caught trying to add to the XML "
+						+ "hash index " + indexFile.getName() + ": "
+						+ e.getMessage());
+			} finally {
+				if (writer != null) {
+					try {
+						writer.close();
+					} catch (IOException e) {
+						logger.error("IOException caught trying to close "
+								+ indexFile.getName() + ": " + e.getMessage());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The characters used to write the hashes
+	 */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * The file the index is persisted to
+	 */
+	private File indexFile = null;
+
+	/**
+	 * This is true if the index file existed when the index was created
+	 */
+	private boolean loadedFromFile = false;
+
+	/**
+	 * The hashes of the documents for each key
+	 */
+	private ConcurrentHashMap<String, Set<String>> hashesByKey = new ConcurrentHashMap<String, Set<String>>();
+
+	/**
+	 * The locks for the stripes of keys
+	 */
+	private Object[] stripes = new Object[NUMBER_OF_STRIPES];
+}
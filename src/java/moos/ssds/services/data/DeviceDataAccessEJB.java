@@ -24,7 +24,6 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import javax.ejb.CreateException;
 import javax.ejb.EJBException;
@@ -34,6 +33,7 @@ import javax.naming.NamingException;
 
 import moos.ssds.dao.util.MetadataAccessException;
 import moos.ssds.data.ITimeIndexedDataAccess;
+import moos.ssds.data.TimeAligner;
 import moos.ssds.data.TimeIndexedDataAccessFactory;
 import moos.ssds.data.parsers.Nmea21PacketParser;
 import moos.ssds.data.parsers.Nmea21RecordParser;
@@ -111,7 +111,11 @@ public class DeviceDataAccessEJB implements SessionBean {
 	/**
 	 * This method takes in a <code>Device</code>, a collection of
 	 * <code>String</code>s that are the variable names, the start and end dates
-	 * to span
+	 * to span and returns the data of those variables from all the deployments
+	 * of the device lined up by time. Each row starts with the timestamp (a
+	 * <code>Long</code>) followed by the value of each variable (null if there
+	 * was no value at that time). If more than one deployment has data at the
+	 * same time, the data from the first one is used.
 	 * 
 	 * @ejb.interface-method view-type="both"
 	 * @param recordVariableID
@@ -121,9 +125,93 @@ public class DeviceDataAccessEJB implements SessionBean {
 	 */
 	public Object[][] getDeviceData(Device device, Long packetSubType,
 			Collection recordVariables, Date startDate, Date endDate) {
+		return getDeviceData(device, packetSubType, recordVariables,
+				startDate, endDate, TimeAligner.DUPLICATES_FIRST,
+				TimeAligner.GAPS_MISSING);
+	}
+
+	/**
+	 * This method is the same as
+	 * <code>getDeviceData(Device, Long, Collection, Date, Date)</code> but
+	 * lets the caller say what to do with records that have the same time and
+	 * with variables that have no value at a time (see
+	 * <code>TimeAligner</code> for the policies).
+	 * 
+	 * @ejb.interface-method view-type="both"
+	 * @param device
+	 * @param packetSubType
+	 * @param recordVariables
+	 * @param startDate
+	 * @param endDate
+	 * @param duplicatePolicy
+	 *            one of the <code>TimeAligner.DUPLICATES_</code> constants
+	 * @param gapPolicy
+	 *            one of the <code>TimeAligner.GAPS_</code> constants
+	 * @return the rows of data (null if the device had no deployments in the
+	 *         time window)
+	 */
+	public Object[][] getDeviceData(Device device, Long packetSubType,
+			Collection recordVariables, Date startDate, Date endDate,
+			int duplicatePolicy, int gapPolicy) {
+		TimeAligner timeAligner = alignDeviceData(device, packetSubType,
+				recordVariables, startDate, endDate, duplicatePolicy,
+				gapPolicy);
+		if (timeAligner == null)
+			return null;
+		Object[][] data = timeAligner.getRows();
+		logger.debug("OK, data is built up, there are " + data.length
+				+ " timestamps");
+		return data;
+	}
+
+	/**
+	 * This method returns the same data as <code>getDeviceData</code> but as
+	 * primitive columns, which is much smaller and quicker to build for large
+	 * numeric data sets. The first element of the returned array is a
+	 * <code>long[]</code> of the timestamps and the others are a
+	 * <code>double[]</code> for each variable (in the order of the
+	 * recordVariables, missing values are NaN and variables that are not
+	 * numeric are null).
+	 * 
+	 * @ejb.interface-method view-type="both"
+	 * @param device
+	 * @param packetSubType
+	 * @param recordVariables
+	 * @param startDate
+	 * @param endDate
+	 * @param duplicatePolicy
+	 *            one of the <code>TimeAligner.DUPLICATES_</code> constants
+	 * @param gapPolicy
+	 *            one of the <code>TimeAligner.GAPS_</code> constants
+	 * @return the columns of data (null if the device had no deployments in
+	 *         the time window)
+	 */
+	public Object[] getDeviceDataColumns(Device device, Long packetSubType,
+			Collection recordVariables, Date startDate, Date endDate,
+			int duplicatePolicy, int gapPolicy) {
+		TimeAligner timeAligner = alignDeviceData(device, packetSubType,
+				recordVariables, startDate, endDate, duplicatePolicy,
+				gapPolicy);
+		if (timeAligner == null)
+			return null;
+		double[][] columns = timeAligner.getDoubleColumns();
+		Object[] data = new Object[columns.length + 1];
+		data[0] = timeAligner.getTimes();
+		System.arraycopy(columns, 0, data, 1, columns.length);
+		return data;
+	}
 
-		// The object data array to return
-		Object[][] data = null;
+	/**
+	 * This method finds the deployments of the device in the time window and
+	 * adds the outputs with the given packetSubType to a
+	 * <code>TimeAligner</code>
+	 * 
+	 * @return the <code>TimeAligner</code> or null if no variables were given
+	 *         or there were no deployments
+	 */
+	private TimeAligner alignDeviceData(Device device, Long packetSubType,
+			Collection recordVariables, Date startDate, Date endDate,
+			int duplicatePolicy, int gapPolicy) {
 
 		// Make sure recordVariables are specified
 		logger
@@ -135,23 +223,12 @@ public class DeviceDataAccessEJB implements SessionBean {
 			logger.debug("Yep, will go ahead");
 		}
 
-		// For the time axis, we can create an TreeSet to keep track of all the
-		// timestamps collected from the device data.
-		Collection timestamps = new TreeSet();
-		logger.debug("Create timestamps TreeSet");
-
-		// Now we need to build two arrays, one for the RecordVariable and one
-		// for the data TreeMap
-		String[] rvNames = new String[recordVariables.size()];
-		TreeMap[] dataTreeMaps = new TreeMap[recordVariables.size()];
-		int arrayIndex = 0;
-		Iterator recordVariableIter = recordVariables.iterator();
-		while (recordVariableIter.hasNext()) {
-			String rvName = (String) recordVariableIter.next();
-			rvNames[arrayIndex] = rvName;
-			dataTreeMaps[arrayIndex] = new TreeMap();
-			arrayIndex++;
-		}
+		// The names of the variables (in the order of the columns)
+		String[] rvNames = (String[]) recordVariables
+				.toArray(new String[recordVariables.size()]);
+		TimeAligner timeAligner = new TimeAligner(rvNames);
+		timeAligner.setDuplicatePolicy(duplicatePolicy);
+		timeAligner.setGapPolicy(gapPolicy);
 
 		// OK, the first thing to do is look for all deployments of this device
 		// that match the time span given
@@ -274,78 +351,24 @@ public class DeviceDataAccessEJB implements SessionBean {
 												+ ": " + e.getMessage());
 							}
 
-							// If the access object is found, loop through the
-							// records and build up the top level data structure
+							// If the access object is found, add it to the
+							// outputs that will be merged
 							if (outputAccess != null) {
-
-								logger
-										.debug("Going to read in the time and data for each variable");
-								Object[] times = outputAccess.getTime();
-
-								// I am going to assume they are Long epoch
-								// seconds
-								// since I had control of the parsers for the
-								// ITimeIndexedDataAccess
-								logger.debug("There were " + times.length
-										+ " timestamps found");
-								for (int i = 0; i < times.length; i++) {
-									Long epochTimestamp = (Long) times[i];
-									// Put that in the overall times if not
-									// there
-									if (!timestamps.contains(epochTimestamp))
-										timestamps.add(epochTimestamp);
-
-									// Loop over all the RV names and insert the
-									// data if not already in the TreeMap
-									for (int rvIndex = 0; rvIndex < rvNames.length; rvIndex++) {
-										if (!dataTreeMaps[rvIndex]
-												.containsKey(epochTimestamp)) {
-											Object[] rvData = outputAccess
-													.getData(rvNames[rvIndex]);
-											dataTreeMaps[rvIndex].put(
-													epochTimestamp, rvData[i]);
-										}
-									}
-								}
+								timeAligner.addOutput(outputAccess);
 							}
 						}
 					}
 				}
 			}
-			// So now I should have built up the data, now build the
-			// multidimensional array to return
-			logger.debug("OK, data should be built up, there are "
-					+ timestamps.size() + " timestamps");
-			logger.debug("There are " + rvNames.length + " rvs in map");
-			// The overall size of the array is timestamps.size() long by
-			// rvMap.size() wide
-			data = new Object[timestamps.size()][rvNames.length + 1];
-
-			// Now loop over the timestamps and fill in the objects
-			Iterator dataBuildTimestampsIter = timestamps.iterator();
-			int timestampCounter = 0;
-			while (dataBuildTimestampsIter.hasNext()) {
-				// Grab the timestamp
-				Long timestamp = (Long) dataBuildTimestampsIter.next();
-
-				// Put it in the first column at the correct index
-				data[timestampCounter][0] = timestamp;
-
-				// Now loop over and fill out across to fill in the data
-				for (int rvIndex = 1; rvIndex <= rvNames.length; rvIndex++) {
-					data[timestampCounter][rvIndex] = dataTreeMaps[rvIndex - 1]
-							.get(timestamp);
-				}
-
-				// Increment the row
-				timestampCounter++;
-			}
+			logger.debug("There are " + timeAligner.getNumberOfOutputs()
+					+ " outputs with data for " + rvNames.length + " rvs");
 		} else {
 			logger.debug("No deployments matching those criteria found");
+			return null;
 		}
 
-		// Now return the result
-		return data;
+		// Now return the aligner
+		return timeAligner;
 	}
 
 	/**
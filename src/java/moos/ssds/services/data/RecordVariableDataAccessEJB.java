@@ -29,6 +29,8 @@ import javax.ejb.SessionContext;
 import javax.naming.NamingException;
 
 import moos.ssds.dao.util.MetadataAccessException;
+import moos.ssds.data.Downsampler;
+import moos.ssds.data.TimeAligner;
 import moos.ssds.metadata.DataContainer;
 import moos.ssds.metadata.Device;
 import moos.ssds.metadata.RecordVariable;
@@ -109,8 +111,133 @@ public class RecordVariableDataAccessEJB implements SessionBean {
         Object[][] data = null;
 
         // Since I already have an EJB that does this by device and variable
-        // name, just use that. So I will need to find the record variable name
-        // and device id
+        // name, just use that.
+        VariableSource variableSource = findVariableSource(recordVariableId);
+        if (variableSource != null) {
+            DeviceDataAccessLocal ddal = getDeviceDataAccess();
+            if (ddal != null) {
+                // Grab the data (or the best approximation to it)
+                data = ddal.getDeviceData(variableSource.device,
+                    variableSource.packetType,
+                    variableSource.recordVariableNames, startDate, endDate);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * This method returns the data of a <code>RecordVariable</code> in a time
+     * window reduced to (at most) the given number of points, which is what a
+     * plot of the data needs. The aggregation is one of "min", "max",
+     * "minmax" (the smallest and largest sample of each bin), "mean", "count"
+     * or "lttb" (largest triangle three buckets, which keeps the shape of the
+     * data). See <code>Downsampler</code> for the details. Each row is the
+     * time (epoch milliseconds) and the value.
+     * 
+     * @ejb.interface-method view-type="both"
+     * @soap.method
+     * @axis.method
+     * @param recordVariableId
+     * @param startDate
+     * @param endDate
+     * @param numberOfPoints
+     *            the most points to return
+     * @param aggregation
+     *            the name of the aggregation
+     * @return the reduced data (null if the variable is not found or is not
+     *         numeric)
+     */
+    public Object[][] getDownsampledRecordVariableData(Long recordVariableId,
+        Date startDate, Date endDate, Integer numberOfPoints,
+        String aggregation) {
+        if ((recordVariableId == null) || (startDate == null)
+            || (endDate == null) || (numberOfPoints == null)
+            || (numberOfPoints.intValue() <= 0))
+            return null;
+        int aggregationType = Downsampler.getAggregation(aggregation);
+        if (aggregationType < 0) {
+            logger.error("Unknown aggregation " + aggregation);
+            return null;
+        }
+        return getDownsampledData(recordVariableId, startDate, endDate,
+            Downsampler.getBinWidth(startDate.getTime(), endDate.getTime(),
+                numberOfPoints.intValue(), aggregationType), aggregationType);
+    }
+
+    /**
+     * This method is the same as the one that takes the number of points, but
+     * the data is reduced in bins of the given width (starting at the start
+     * date)
+     * 
+     * @ejb.interface-method view-type="both"
+     * @soap.method
+     * @axis.method
+     * @param recordVariableId
+     * @param startDate
+     * @param endDate
+     * @param binWidthMillis
+     *            the width of the bins in milliseconds
+     * @param aggregation
+     *            the name of the aggregation
+     * @return the reduced data (null if the variable is not found or is not
+     *         numeric)
+     */
+    public Object[][] getDownsampledRecordVariableDataByBinWidth(
+        Long recordVariableId, Date startDate, Date endDate,
+        Long binWidthMillis, String aggregation) {
+        if ((recordVariableId == null) || (startDate == null)
+            || (endDate == null) || (binWidthMillis == null)
+            || (binWidthMillis.longValue() <= 0))
+            return null;
+        int aggregationType = Downsampler.getAggregation(aggregation);
+        if (aggregationType < 0) {
+            logger.error("Unknown aggregation " + aggregation);
+            return null;
+        }
+        return getDownsampledData(recordVariableId, startDate, endDate,
+            binWidthMillis.longValue(), aggregationType);
+    }
+
+    /**
+     * This method reads the data of the variable as primitive columns and
+     * runs it through a <code>Downsampler</code>
+     */
+    private Object[][] getDownsampledData(Long recordVariableId,
+        Date startDate, Date endDate, long binWidthMillis, int aggregationType) {
+        VariableSource variableSource = findVariableSource(recordVariableId);
+        if (variableSource == null)
+            return null;
+        DeviceDataAccessLocal ddal = getDeviceDataAccess();
+        if (ddal == null)
+            return null;
+        Object[] columns = ddal.getDeviceDataColumns(variableSource.device,
+            variableSource.packetType, variableSource.recordVariableNames,
+            startDate, endDate, TimeAligner.DUPLICATES_FIRST,
+            TimeAligner.GAPS_MISSING);
+        if ((columns == null) || (columns[1] == null))
+            return null;
+        Downsampler downsampler = new Downsampler(startDate.getTime(),
+            binWidthMillis, aggregationType);
+        downsampler.add((long[]) columns[0], (double[]) columns[1]);
+        Object[][] data = downsampler.getResult();
+        logger.debug("Reduced " + downsampler.getNumberOfSamples()
+            + " samples to " + data.length + " points");
+        return data;
+    }
+
+    /**
+     * This method finds the device, the packet type and the name of a record
+     * variable so its data can be read from the <code>DeviceDataAccess</code>
+     * 
+     * @return the <code>VariableSource</code> or null if any of them could not
+     *         be found
+     */
+    private VariableSource findVariableSource(Long recordVariableId) {
+
+        // The source to return
+        VariableSource variableSource = null;
+
+        // So I will need to find the record variable name and device id
         RecordVariable incomingRecordVariable = new RecordVariable();
         incomingRecordVariable.setId(recordVariableId);
         RecordVariable persistentRecordVariable = null;
@@ -207,31 +334,12 @@ public class RecordVariableDataAccessEJB implements SessionBean {
                             }
 
                             if (deviceThatProduced != null) {
-                                // Now query for the data and return
-                                Collection recordVariables = new ArrayList();
-                                recordVariables.add(persistentRecordVariable
-                                    .getName());
-
-                                DeviceDataAccessLocalHome ddalh = null;
-                                DeviceDataAccessLocal ddal = null;
-                                try {
-                                    ddalh = DeviceDataAccessUtil.getLocalHome();
-                                    ddal = ddalh.create();
-                                } catch (NamingException e) {
-                                    logger
-                                        .error("NamingException caught trying to get DeviceDataAccess access interfaces: "
-                                            + e.getMessage());
-                                } catch (CreateException e) {
-                                    logger
-                                        .error("CreateException caught trying to get DeviceDataAccess access interfaces: "
-                                            + e.getMessage());
-                                }
-
-                                // Grab the data (or the best approximation to
-                                // it)
-                                data = ddal.getDeviceData(deviceThatProduced,
-                                    packetType, recordVariables, startDate,
-                                    endDate);
+                                variableSource = new VariableSource();
+                                variableSource.device = deviceThatProduced;
+                                variableSource.packetType = packetType;
+                                variableSource.recordVariableNames = new ArrayList();
+                                variableSource.recordVariableNames
+                                    .add(persistentRecordVariable.getName());
                             }
                         }
                     }
@@ -239,7 +347,37 @@ public class RecordVariableDataAccessEJB implements SessionBean {
             }
 
         }
-        return data;
+        return variableSource;
+    }
+
+    /**
+     * This method returns the local interface of the DeviceDataAccess
+     */
+    private DeviceDataAccessLocal getDeviceDataAccess() {
+        DeviceDataAccessLocal ddal = null;
+        try {
+            DeviceDataAccessLocalHome ddalh = DeviceDataAccessUtil
+                .getLocalHome();
+            ddal = ddalh.create();
+        } catch (NamingException e) {
+            logger
+                .error("NamingException caught trying to get DeviceDataAccess access interfaces: "
+                    + e.getMessage());
+        } catch (CreateException e) {
+            logger
+                .error("CreateException caught trying to get DeviceDataAccess access interfaces: "
+                    + e.getMessage());
+        }
+        return ddal;
+    }
+
+    /**
+     * This holds what is needed to read the data of a record variable
+     */
+    private static class VariableSource {
+        Device device = null;
+        Long packetType = null;
+        Collection recordVariableNames = null;
     }
 
     /**
@@ -41,8 +41,13 @@ import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
+import moos.ssds.io.DataStreamStatistics;
+import moos.ssds.io.DataStreamStatisticsStore;
 import moos.ssds.io.PacketSQLInput;
+import moos.ssds.io.PacketSQLQuery;
+import moos.ssds.io.PacketSQLQueryFactory;
 import moos.ssds.io.SSDSGeoLocatedDevicePacket;
+import moos.ssds.io.util.PacketSQLInputFactory;
 import moos.ssds.util.XmlDateFormat;
 
 import org.apache.log4j.Logger;
@@ -69,8 +74,8 @@ public class SQLDataStreamRawDataAccessEJB implements SessionBean {
 	 * These are the constants that define the types of sorting and filtering
 	 * can be done by this service
 	 */
-	public static final String BY_SEQUENCE_NUMBER = "sequenceNumber";
-	public static final String BY_TIMESTAMP = "timestamp";
+	public static final String BY_SEQUENCE_NUMBER = PacketSQLInputFactory.BY_SEQUENCE_NUMBER;
+	public static final String BY_TIMESTAMP = PacketSQLInputFactory.BY_TIMESTAMP;
 
 	/**
 	 * Some constants to define what properties are available
@@ -491,12 +496,31 @@ public class SQLDataStreamRawDataAccessEJB implements SessionBean {
 		if (deviceID == null || deviceID.longValue() == 0)
 			return propertiesToReturn;
 
-		// The first thing to do would be to check for the existence of the
-		// table by querying for the number of rows
-		boolean tableExists = doesDataTableExist(deviceID);
+		// Look for the statistics that are kept up to date as the packets are
+		// ingested first, they can answer everything without scanning the
+		// device table
+		DataStreamStatistics statistics = this.readDataStreamStatistics(
+				deviceID, recordType);
+		if (statistics != null) {
+			propertiesToReturn.put(NUMBER_OF_RECORDS, ""
+					+ statistics.getNumberOfRecords());
+			Date latestDate = statistics.getLatestTimestamp();
+			if (latestDate != null)
+				propertiesToReturn.put(DATE_OF_LAST_RECORD, latestDate);
+			long averageSampleInterval = statistics
+					.getAverageSampleIntervalMillis();
+			if (averageSampleInterval >= 0)
+				propertiesToReturn.put(AVERAGE_SAMPLE_INTERVAL_IN_MILLIS, ""
+						+ averageSampleInterval);
+		} else {
+			// No statistics, so check for the existence of the table by
+			// querying for the number of rows
+			boolean tableExists = doesDataTableExist(deviceID);
+
+			// If the table does not exist, there is nothing else to find
+			if (!tableExists)
+				return propertiesToReturn;
 
-		// If the table exists, figure out the rest of the statistics
-		if (tableExists) {
 			// The number of rows for the device and record type
 			long numberOfRows = getNumberOfRows(deviceID, recordType);
 			propertiesToReturn.put(NUMBER_OF_RECORDS, "" + numberOfRows);
@@ -506,41 +530,89 @@ public class SQLDataStreamRawDataAccessEJB implements SessionBean {
 					recordType);
 			if (latestDate != null)
 				propertiesToReturn.put(DATE_OF_LAST_RECORD, latestDate);
+		}
 
-			// If the call includes gaps, find them
-			if (checkForGaps != null && checkForGaps.booleanValue() == true) {
-				// Grab the map of possible gaps
-				TreeMap gapMap = this.findDataGaps(deviceID, recordType,
-						startGapCheckWindow, endGapCheckWindow, typeOfGap,
-						marginInMillis, gapSpec, numberOfRecords,
-						intervalCalcStartWindow, intervalCalcEndWindow,
-						gapInMillis);
-
-				logger.debug("There are " + gapMap.keySet().size()
-						+ " gaps in treemap returned");
-
-				// XML Format
-				XmlDateFormat xmlDateFormat = new XmlDateFormat();
-
-				// Create a counter
-				int gapCounter = 1;
-				Iterator gapMapIter = gapMap.keySet().iterator();
-				while (gapMapIter.hasNext()) {
-					Date startDate = (Date) gapMapIter.next();
-					Date endDate = (Date) gapMap.get(startDate);
-					if (startDate != null && endDate != null) {
-						propertiesToReturn.put(
-								"dataGap" + gapCounter + "Start", xmlDateFormat
-										.format(startDate));
-						propertiesToReturn.put("dataGap" + gapCounter + "End",
-								xmlDateFormat.format(endDate));
-					}
+		// If the call includes gaps, find them
+		if (checkForGaps != null && checkForGaps.booleanValue() == true) {
+			// Grab the map of possible gaps
+			TreeMap gapMap = this.findDataGaps(deviceID, recordType,
+					startGapCheckWindow, endGapCheckWindow, typeOfGap,
+					marginInMillis, gapSpec, numberOfRecords,
+					intervalCalcStartWindow, intervalCalcEndWindow,
+					gapInMillis, statistics);
+
+			logger.debug("There are " + gapMap.keySet().size()
+					+ " gaps in treemap returned");
+
+			// XML Format
+			XmlDateFormat xmlDateFormat = new XmlDateFormat();
+
+			// Create a counter
+			int gapCounter = 1;
+			Iterator gapMapIter = gapMap.keySet().iterator();
+			while (gapMapIter.hasNext()) {
+				Date startDate = (Date) gapMapIter.next();
+				Date endDate = (Date) gapMap.get(startDate);
+				if (startDate != null && endDate != null) {
+					propertiesToReturn.put("dataGap" + gapCounter + "Start",
+							xmlDateFormat.format(startDate));
+					propertiesToReturn.put("dataGap" + gapCounter + "End",
+							xmlDateFormat.format(endDate));
+					gapCounter++;
 				}
 			}
 		}
 		return propertiesToReturn;
 	}
 
+	/**
+	 * This method reads the statistics that are kept for the device and record
+	 * type as packets are ingested (see <code>DataStreamStatisticsStore</code>)
+	 * 
+	 * @param deviceID
+	 *            the device to read the statistics for
+	 * @param recordType
+	 *            the record type (null for all record types)
+	 * @return the statistics or null if none are kept for the device
+	 */
+	private DataStreamStatistics readDataStreamStatistics(Long deviceID,
+			Long recordType) {
+		DataStreamStatistics statistics = null;
+		Connection connection = null;
+		try {
+			connection = dataSource.getConnection();
+			statistics = DataStreamStatisticsStore.readStatistics(connection,
+					this.sqlTableDelimiter, deviceID, recordType);
+		} catch (SQLException e) {
+			// The statistics tables may not be set up
+			logger.debug("SQLException caught trying to read the data stream "
+					+ "statistics of device " + deviceID + ": "
+					+ e.getMessage());
+		} catch (Exception e) {
+			logger.error("Exception caught trying to read the data stream "
+					+ "statistics of device " + deviceID + ": "
+					+ e.getClass().getName() + ": " + e.getMessage());
+		} finally {
+			closeConnection(connection);
+		}
+		logger.debug("Data stream statistics: " + statistics);
+		return statistics;
+	}
+
+	/**
+	 * This method closes a connection (if there is one) and logs any problem
+	 */
+	private void closeConnection(Connection connection) {
+		if (connection == null)
+			return;
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			logger.error("SQLException caught trying to close connection: "
+					+ e.getMessage());
+		}
+	}
+
 	/**
 	 * This method checks to see if the data table exists in the database for a
 	 * specified device
@@ -835,13 +907,16 @@ public class SQLDataStreamRawDataAccessEJB implements SessionBean {
 	 * @param intervalCalcStartWindow
 	 * @param intervalCalcEndWindow
 	 * @param gapInMillis
+	 * @param statistics
+	 *            the statistics of the data stream (null if there are none)
 	 * @return
 	 */
 	private TreeMap findDataGaps(Long deviceID, Long recordType,
 			Date startCheckGapWindow, Date endCheckGapWindow, String typeOfGap,
 			Long marginMillis, String gapSpec, Long numberOfRecords,
 			Date intervalCalcStartWindow, Date intervalCalcEndWindow,
-			Long gapInMillis) throws SQLException {
+			Long gapInMillis, DataStreamStatistics statistics)
+			throws SQLException {
 		logger.debug("findDataGaps called with:\ndeviceID=" + deviceID
 				+ "\nrecordType=" + recordType + "\nstartCheckGapWindow="
 				+ startCheckGapWindow + "\nendCheckGapWindow="
@@ -894,15 +969,47 @@ public class SQLDataStreamRawDataAccessEJB implements SessionBean {
 			if (gapInMillis == null || gapInMillis.longValue() == 0)
 				return gaps;
 			// Just use the user specified criteria
-			marginInMillisToUse = gapInMillis.longValue();
+			marginInMillisToUse = marginMillis.longValue();
 			gapInMillisToUse = gapInMillis.longValue();
 		} else {
 			// The user wants the service to calculate the values for gap and/or
-			// margin
+			// margin, so use the average sample interval if it is known
+			if (statistics != null
+					&& statistics.getAverageSampleIntervalMillis() > 0)
+				gapInMillisToUse = statistics.getAverageSampleIntervalMillis();
+			if (marginMillis != null)
+				marginInMillisToUse = marginMillis.longValue();
 		}
 		logger.debug("marginInMillisToUse=" + marginInMillisToUse);
 		logger.debug("gapInMillisToUse=" + gapInMillisToUse);
 
+		// If the gap index of the data stream covers gaps this size, look them
+		// up there instead of reading the packets (the window is the same one
+		// the query below uses, whole seconds with the ends left out)
+		if (statistics != null
+				&& statistics.isGapIndexedFor(gapInMillisToUse
+						+ marginInMillisToUse)) {
+			try {
+				connection = dataSource.getConnection();
+				gaps = DataStreamStatisticsStore.readGaps(connection,
+						this.sqlTableDelimiter, deviceID.longValue(),
+						statistics.getRecordType(), ((queryStartDate.getTime()
+								/ 1000) + 1) * 1000,
+						(queryEndDate.getTime() / 1000) * 1000,
+						gapInMillisToUse + marginInMillisToUse);
+				logger.debug("Found " + gaps.size()
+						+ " gaps in the gap index");
+				return gaps;
+			} catch (SQLException e) {
+				logger.error("SQLException caught trying to read the gap "
+						+ "index, will search the packets: " + e.getMessage());
+				gaps = new TreeMap();
+			} finally {
+				closeConnection(connection);
+				connection = null;
+			}
+		}
+
 		logger.debug("sqlSelectPacketByTimeTemplate="
 				+ sqlSelectPacketsByTimeTemplate);
 		logger.debug("sqlSelectPacketByTimeWithRecordTypeTemplate="
@@ -1066,169 +1173,27 @@ public class SQLDataStreamRawDataAccessEJB implements SessionBean {
 			Float endDepth, String orderBy, boolean returnAsSSDSDevicePackets)
 			throws SQLException {
 
-		// First check to see if the deviceID is specified (it must be)
-		if (deviceID == null) {
-			throw new SQLException("The deviceID must be specified");
-		}
+		// Normalize the order and build the PacketSQLInput
+		orderBy = PacketSQLInputFactory.normalizeOrderBy(orderBy);
+		PacketSQLInput packetSQLInput = PacketSQLInputFactory
+				.createPacketSQLInput(deviceID, startParentID, endParentID,
+						startPacketType, endPacketType, startPacketSubType,
+						endPacketSubType, startDataDescriptionID,
+						endDataDescriptionID, startDataDescriptionVersion,
+						endDataDescriptionVersion, startTimestampSeconds,
+						endTimestampSeconds, startTimestampNanoseconds,
+						endTimestampNanoseconds, startSequenceNumber,
+						endSequenceNumber, lastNumberOfPackets, startLatitude,
+						endLatitude, startLongitude, endLongitude, startDepth,
+						endDepth, orderBy);
 
-		// Create a PacketSQLInput
-		PacketSQLInput packetSQLInput = new PacketSQLInput(null, deviceID, null);
-		// Set the right SQL delimiter
-		// packetSQLInput.setSqlTableDelimiter(this.sqlTableDelimiter);
-		//
-		// // Set the pre and post ambles for last number of packets query
-		// packetSQLInput
-		// .setSqlLastNumberOfPacketsPreamble(this.sqlLastNumberOfPacketsPreamble);
-		// packetSQLInput
-		// .setSqlLastNumberOfPacketsPostamble(this.sqlLastNumberOfPacketsPostamble);
-
-		// Set all the values
-		packetSQLInput.setDeviceID(deviceID.longValue());
-		if (startParentID != null) {
-			packetSQLInput.setStartParentID(startParentID.longValue());
-		} else {
-			packetSQLInput.setStartParentID(PacketSQLInput.MISSING_VALUE);
-		}
-		if (endParentID != null) {
-			packetSQLInput.setEndParentID(endParentID.longValue());
-		} else {
-			packetSQLInput.setEndParentID(PacketSQLInput.MISSING_VALUE);
-		}
-		if (startPacketType != null) {
-			packetSQLInput.setStartPacketType(startPacketType.intValue());
-		} else {
-			packetSQLInput.setStartPacketType(PacketSQLInput.MISSING_VALUE);
-		}
-		if (endPacketType != null) {
-			packetSQLInput.setEndPacketType(endPacketType.intValue());
-		} else {
-			packetSQLInput.setEndPacketType(PacketSQLInput.MISSING_VALUE);
-		}
-		if (startPacketSubType != null) {
-			packetSQLInput
-					.setStartPacketSubType(startPacketSubType.longValue());
-		} else {
-			packetSQLInput.setStartPacketSubType(PacketSQLInput.MISSING_VALUE);
-		}
-		if (endPacketSubType != null) {
-			packetSQLInput.setEndPacketSubType(endPacketSubType.longValue());
-		} else {
-			packetSQLInput.setEndPacketSubType(PacketSQLInput.MISSING_VALUE);
-		}
-		if (startDataDescriptionID != null) {
-			packetSQLInput.setStartDataDescriptionID(startDataDescriptionID
-					.longValue());
-		} else {
-			packetSQLInput
-					.setStartDataDescriptionID(PacketSQLInput.MISSING_VALUE);
-		}
-		if (endDataDescriptionID != null) {
-			packetSQLInput.setEndDataDescriptionID(endDataDescriptionID
-					.longValue());
-		} else {
-			packetSQLInput
-					.setEndDataDescriptionID(PacketSQLInput.MISSING_VALUE);
-		}
-		if (startDataDescriptionVersion != null) {
-			packetSQLInput
-					.setStartDataDescriptionVersion(startDataDescriptionVersion
-							.longValue());
-		} else {
-			packetSQLInput
-					.setStartDataDescriptionVersion(PacketSQLInput.MISSING_VALUE);
-		}
-		if (endDataDescriptionVersion != null) {
-			packetSQLInput
-					.setEndDataDescriptionVersion(endDataDescriptionVersion
-							.longValue());
-		} else {
-			packetSQLInput
-					.setEndDataDescriptionVersion(PacketSQLInput.MISSING_VALUE);
-		}
-		if (startTimestampSeconds != null) {
-			packetSQLInput.setStartTimestampSeconds(startTimestampSeconds
-					.longValue());
-		} else {
-			packetSQLInput
-					.setStartTimestampSeconds(PacketSQLInput.MISSING_VALUE);
-		}
-		if (endTimestampSeconds != null) {
-			packetSQLInput.setEndTimestampSeconds(endTimestampSeconds
-					.longValue());
-		} else {
-			packetSQLInput.setEndTimestampSeconds(PacketSQLInput.MISSING_VALUE);
-		}
-		if (startTimestampNanoseconds != null) {
-			packetSQLInput
-					.setStartTimestampNanoseconds(startTimestampNanoseconds
-							.longValue());
-		} else {
-			packetSQLInput
-					.setStartTimestampNanoseconds(PacketSQLInput.MISSING_VALUE);
-		}
-		if (endTimestampNanoseconds != null) {
-			packetSQLInput.setEndTimestampNanoseconds(endTimestampNanoseconds
-					.longValue());
-		} else {
-			packetSQLInput
-					.setEndTimestampNanoseconds(PacketSQLInput.MISSING_VALUE);
-		}
-		if (startSequenceNumber != null) {
-			packetSQLInput.setStartSequenceNumber(startSequenceNumber
-					.longValue());
-		} else {
-			packetSQLInput.setStartSequenceNumber(PacketSQLInput.MISSING_VALUE);
-		}
-		if (endSequenceNumber != null) {
-			packetSQLInput.setEndSequenceNumber(endSequenceNumber.longValue());
-		} else {
-			packetSQLInput.setEndSequenceNumber(PacketSQLInput.MISSING_VALUE);
-		}
-		if (lastNumberOfPackets != null) {
-			packetSQLInput.setLastNumberOfPackets(lastNumberOfPackets
-					.longValue());
-		} else {
-			packetSQLInput.setLastNumberOfPackets(PacketSQLInput.MISSING_VALUE);
-		}
-		if (startLatitude != null) {
-			packetSQLInput.setStartLatitude(startLatitude.doubleValue());
-		} else {
-			packetSQLInput.setStartLatitude(PacketSQLInput.MISSING_VALUE);
-		}
-		if (endLatitude != null) {
-			packetSQLInput.setEndLatitude(endLatitude.doubleValue());
-		} else {
-			packetSQLInput.setEndLatitude(PacketSQLInput.MISSING_VALUE);
-		}
-		if (startLongitude != null) {
-			packetSQLInput.setStartLongitude(startLatitude.doubleValue());
-		} else {
-			packetSQLInput.setStartLongitude(PacketSQLInput.MISSING_VALUE);
-		}
-		if (endLongitude != null) {
-			packetSQLInput.setEndLongitude(endLatitude.doubleValue());
-		} else {
-			packetSQLInput.setEndLongitude(PacketSQLInput.MISSING_VALUE);
-		}
-		if (startDepth != null) {
-			packetSQLInput.setStartDepth(startDepth.floatValue());
-		} else {
-			packetSQLInput.setStartDepth(PacketSQLInput.MISSING_VALUE);
-		}
-		if (endDepth != null) {
-			packetSQLInput.setEndDepth(endDepth.floatValue());
-		} else {
-			packetSQLInput.setEndDepth(PacketSQLInput.MISSING_VALUE);
-		}
-		if ((orderBy == null)
-				|| (!orderBy
-						.equals(SQLDataStreamRawDataAccessEJB.BY_SEQUENCE_NUMBER) && !orderBy
-						.equals(SQLDataStreamRawDataAccessEJB.BY_TIMESTAMP))) {
-			orderBy = SQLDataStreamRawDataAccessEJB.BY_TIMESTAMP;
-		}
 		// This is the TreeMap that will be returned
 		TreeMap treeMapToReturn = new TreeMap();
 
+		// Since all the results are read in one pass, hold one cursor open
+		// instead of re-running the query for each page
+		packetSQLInput.setCursorMode(PacketSQLQuery.CURSOR_MODE_STREAMING);
+
 		// Fire the query off
 		packetSQLInput.queryForData();
 
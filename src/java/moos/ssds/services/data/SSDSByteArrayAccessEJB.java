@@ -711,6 +711,46 @@ public class SSDSByteArrayAccessEJB implements SessionBean {
 		packetSQLQueryFactory.setLastNumberOfPackets(lastNumberOfPackets);
 	}
 
+	/**
+	 * This method sets how the query pages through the results. Since this
+	 * bean can be passivated between calls, <code>CURSOR_MODE_KEYSET</code>
+	 * is the best choice for walking long time ranges (see
+	 * <code>PacketSQLQuery</code>). <code>CURSOR_MODE_STREAMING</code> is not
+	 * allowed since it would hold a connection open between calls (and lose
+	 * it if the client does not read every row).
+	 * 
+	 * @ejb.interface-method view-type="both"
+	 * @param cursorMode
+	 * @throws IllegalArgumentException
+	 *             if the mode is <code>CURSOR_MODE_STREAMING</code> or unknown
+	 */
+	public void setCursorMode(int cursorMode) {
+		if (cursorMode == PacketSQLQuery.CURSOR_MODE_STREAMING)
+			throw new IllegalArgumentException("The streaming cursor mode "
+					+ "can not be used through this bean");
+		packetSQLQuery.setCursorMode(cursorMode);
+	}
+
+	/**
+	 * This method returns the mode used to page through the results
+	 * 
+	 * @ejb.interface-method view-type="both"
+	 * @return
+	 */
+	public int getCursorMode() {
+		return packetSQLQuery.getCursorMode();
+	}
+
+	/**
+	 * This method sets the fetch size hint that is given to the JDBC driver
+	 * 
+	 * @ejb.interface-method view-type="both"
+	 * @param fetchSize
+	 */
+	public void setFetchSize(int fetchSize) {
+		packetSQLQuery.setFetchSize(fetchSize);
+	}
+
 	/**
 	 * This method is called when the actually query is executed. It must be
 	 * called before iterating over any elements
@@ -19,6 +19,7 @@ import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
@@ -43,9 +44,14 @@ import javax.naming.NamingException;
 
 import moos.ssds.dao.MetadataDAO;
 import moos.ssds.dao.util.MetadataAccessException;
+import moos.ssds.dao.util.MetadataCacheProvider;
 import moos.ssds.metadata.IMetadataObject;
+import moos.ssds.metadata.RecordDescription;
+import moos.ssds.metadata.RecordVariable;
+import moos.ssds.metadata.StandardVariable;
 
 import org.apache.log4j.Logger;
+import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 
@@ -397,6 +403,9 @@ public abstract class AccessBean implements SessionBean {
         // Now perform makePersistent
         Long persistentID = metadataDAO.makePersistent(insertRecord);
 
+        // Clear anything the caches have for it
+        this.evictFromCaches(persistentID);
+
         // Send any notifications
         this.sendOutNotificationMessage();
 
@@ -432,6 +441,9 @@ public abstract class AccessBean implements SessionBean {
         // Now perform makePersistent
         Long persistentID = metadataDAO.makePersistent(updateRecord);
 
+        // Clear anything the caches have for it
+        this.evictFromCaches(persistentID);
+
         // Send any notifications
         this.sendOutNotificationMessage();
 
@@ -456,6 +468,9 @@ public abstract class AccessBean implements SessionBean {
         // Now perform makePersistent
         metadataDAO.makeTransient(deleteRecord);
 
+        // Clear anything the caches have for it
+        this.evictFromCaches(deleteRecord.getId());
+
         // Send any notifications
         this.sendOutNotificationMessage();
     }
@@ -477,6 +492,9 @@ public abstract class AccessBean implements SessionBean {
         // Now perform makePersistent
         Long persistentID = metadataDAO.makePersistent(metadataObject);
 
+        // Clear anything the caches have for it
+        this.evictFromCaches(persistentID);
+
         // Send any notifications
         this.sendOutNotificationMessage();
 
@@ -501,10 +519,25 @@ public abstract class AccessBean implements SessionBean {
         // Now perform makePersistent
         metadataDAO.makeTransient(deleteRecord);
 
+        // Clear anything the caches have for it
+        this.evictFromCaches(deleteRecord.getId());
+
         // Send any notifications
         this.sendOutNotificationMessage();
     }
 
+    /**
+     * This method returns the hit and miss counts of the second level and
+     * query caches of the metadata (one entry for each cache region)
+     * 
+     * @ejb.interface-method view-type="both"
+     * @ejb.transaction type="Required"
+     * @return a <code>Collection</code> of <code>CacheStatistics</code>
+     */
+    public Collection getCacheStatistics() {
+        return new ArrayList(MetadataCacheProvider.getStatistics());
+    }
+
     /**
      * @see javax.ejb.SessionBean#ejbActivate()
      */
@@ -594,6 +627,41 @@ public abstract class AccessBean implements SessionBean {
         return metadataDAO;
     }
 
+    /**
+     * This method removes the object with the given ID (and the collections
+     * it owns) from the second level cache and clears the query cache, if the
+     * class of this bean is one that is cached. Hibernate keeps the caches up
+     * to date for changes it makes itself, this makes sure nothing stale is
+     * left after a write through the services.
+     * 
+     * @param id
+     *            the ID of the object that was written (can be null)
+     */
+    private void evictFromCaches(Long id) {
+        if ((sessionFactory == null)
+            || (!MetadataDAO.isCachedClass(persistentClass)))
+            return;
+        try {
+            if (id != null) {
+                sessionFactory.evict(persistentClass, id);
+                if (persistentClass == StandardVariable.class)
+                    sessionFactory.evictCollection(StandardVariable.class
+                        .getName()
+                        + ".standardUnits", id);
+            }
+            // The record variables are cached with their record description
+            if (persistentClass == RecordVariable.class)
+                sessionFactory.evictCollection(RecordDescription.class
+                    .getName()
+                    + ".recordVariables");
+            sessionFactory.evictQueries();
+        } catch (HibernateException e) {
+            superLogger.error("HibernateException caught trying to evict "
+                + persistentClass.getName() + " with id " + id
+                + " from the caches: " + e.getMessage());
+        }
+    }
+
     /**
      * This method checks the given DAO's messageMap and send out any messages
      * if it needs to
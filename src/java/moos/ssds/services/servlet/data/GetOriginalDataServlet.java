@@ -16,7 +16,6 @@
 package moos.ssds.services.servlet.data;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
@@ -35,15 +34,12 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Properties;
-import java.util.Set;
 import java.util.TimeZone;
-import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.ejb.CreateException;
-import javax.naming.NamingException;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -54,11 +50,10 @@ import javax.servlet.http.HttpServletResponse;
 
 import moos.ssds.io.PacketInput;
 import moos.ssds.io.PacketSQLInput;
+import moos.ssds.io.PacketSQLQuery;
 import moos.ssds.io.SSDSDevicePacket;
 import moos.ssds.io.SSDSGeoLocatedDevicePacket;
-import moos.ssds.services.data.SQLDataStreamRawDataAccessLocal;
-import moos.ssds.services.data.SQLDataStreamRawDataAccessLocalHome;
-import moos.ssds.services.data.SQLDataStreamRawDataAccessUtil;
+import moos.ssds.io.util.PacketSQLInputFactory;
 import moos.ssds.util.XmlDateFormat;
 
 import org.apache.log4j.Logger;
@@ -206,7 +201,6 @@ public class GetOriginalDataServlet extends HttpServlet {
         Float endDepth = null;
         String orderBy = null;
         int strideCount = 1;
-        boolean returnAsSSDSDevicePackets = true;
 
         // Some variables for tracking
         boolean startDateTimeSpecified = false;
@@ -541,7 +535,14 @@ public class GetOriginalDataServlet extends HttpServlet {
         
         // Convert stride to an integer count for number of packets to skip
         if (stride != null) {
-            strideCount = Integer.parseInt(stride);
+            try {
+                strideCount = Integer.parseInt(stride);
+            } catch (NumberFormatException e) {
+                logger.error("Could not convert " + stride
+                    + " to an integer stride, will return all packets");
+            }
+            if (strideCount < 1)
+                strideCount = 1;
         }
         else {
         	strideCount = 1;
@@ -556,49 +557,30 @@ public class GetOriginalDataServlet extends HttpServlet {
                 .equalsIgnoreCase("true"))))
             noHTMLHeader = true;
 
-        // Grab the local interface to the SQLDataStreamRawDataAccessEJB
-        SQLDataStreamRawDataAccessLocalHome sqlDSLocalHome = null;
-        try {
-            sqlDSLocalHome = SQLDataStreamRawDataAccessUtil.getLocalHome();
-        } catch (NamingException e) {
-            logger.error("Naming Exception caught: " + e.getMessage());
-            response.setContentType("text/html");
-            PrintWriter out = new PrintWriter(response.getOutputStream());
-            out.println("<H1>NamingException caught: " + e.getMessage()
-                + "</H1><br>");
-            out.flush();
-            return;
-        }
-        SQLDataStreamRawDataAccessLocal sqlDSLocal = null;
-        if (sqlDSLocalHome != null) {
-            try {
-                sqlDSLocal = sqlDSLocalHome.create();
-            } catch (CreateException e) {
-                logger.error("CreateException caught: " + e.getMessage());
-                response.setContentType("text/html");
-                PrintWriter out = new PrintWriter(response.getOutputStream());
-                out.println("<H1>CreateException caught: " + e.getMessage()
-                    + "</H1><br>");
-                out.flush();
-                return;
-            }
-        }
-
-        // Now call the method
-        TreeMap dataMap = null;
+        // Build the query. The packets are read from a forward only cursor
+        // and written to the response as they come in (grouped by key), so
+        // only one group of packets is held in memory at a time.
+        orderBy = PacketSQLInputFactory.normalizeOrderBy(orderBy);
+        PacketSQLInput packetSQLInput = null;
         try {
-            dataMap = sqlDSLocal.getSortedRawData(deviceID, startParentID,
-                endParentID, startPacketType, endPacketType,
-                startPacketSubType, endPacketSubType, startDataDescriptionID,
-                endDataDescriptionID, startDataDescriptionVersion,
-                endDataDescriptionVersion, startTimestampSeconds,
-                endTimestampSeconds, startTimestampNanoseconds,
-                endTimestampNanoseconds, startSequenceNumber,
-                endSequenceNumber, lastNumberOfPackets, startLatitude,
-                endLatitude, startLongitude, endLongitude, startDepth,
-                endDepth, orderBy, returnAsSSDSDevicePackets);
+            packetSQLInput = PacketSQLInputFactory
+                .createPacketSQLInput(deviceID, startParentID, endParentID,
+                    startPacketType, endPacketType, startPacketSubType,
+                    endPacketSubType, startDataDescriptionID,
+                    endDataDescriptionID, startDataDescriptionVersion,
+                    endDataDescriptionVersion, startTimestampSeconds,
+                    endTimestampSeconds, startTimestampNanoseconds,
+                    endTimestampNanoseconds, startSequenceNumber,
+                    endSequenceNumber, lastNumberOfPackets, startLatitude,
+                    endLatitude, startLongitude, endLongitude, startDepth,
+                    endDepth, orderBy);
+            packetSQLInput.setCursorMode(PacketSQLQuery.CURSOR_MODE_STREAMING);
+            packetSQLInput.setFetchSize(STREAMING_FETCH_SIZE);
+            packetSQLInput.queryForData();
         } catch (SQLException e) {
             logger.error("SQLException caught: " + e.getMessage());
+            if (packetSQLInput != null)
+                packetSQLInput.close();
             response.setContentType("text/html");
             PrintWriter out = new PrintWriter(response.getOutputStream());
             out.println("<H1>SQLException caught: " + e.getMessage()
@@ -613,15 +595,80 @@ public class GetOriginalDataServlet extends HttpServlet {
         response.setDateHeader("Expires", currentTime - tenMinutes);
 
         // Now depending on format specified, return the data in that format
-        if ((outputAs != null) && (outputAs.equalsIgnoreCase(OUTPUT_AS_BINARY))) {
-            OutputStream outStream = response.getOutputStream();
-            respondBinary(dataMap, outStream, response,
-                recordDelimiterParameter, strideCount);
-        } else {
-            PrintWriter out = new PrintWriter(response.getOutputStream());
-            respondAscii(dataMap, out, displayPacketHeaderInfo, noHTMLHeader,
-                delimiterParameter, recordDelimiterParameter, prependWith,
-                convertTo, response, strideCount);
+        // (no content length is set so the container sends it in chunks)
+        Iterator packetGroups = new PacketGroupIterator(packetSQLInput,
+            orderBy);
+        try {
+            if ((outputAs != null)
+                && (outputAs.equalsIgnoreCase(OUTPUT_AS_BINARY))) {
+                OutputStream outStream = response.getOutputStream();
+                respondBinary(packetGroups, outStream, response,
+                    recordDelimiterParameter, strideCount);
+            } else {
+                PrintWriter out = new PrintWriter(response.getOutputStream());
+                respondAscii(packetGroups, out, displayPacketHeaderInfo,
+                    noHTMLHeader, delimiterParameter, recordDelimiterParameter,
+                    prependWith, convertTo, response, strideCount);
+            }
+        } finally {
+            packetSQLInput.close();
+        }
+    }
+
+    /**
+     * This class reads the packets from the <code>PacketSQLInput</code> and
+     * returns them a group at a time, where a group is a
+     * <code>Collection</code> of the packets that have the same key
+     * (timestamp or sequence number). Since the packets come back from the
+     * query in key order, only the current group and the first packet of the
+     * next one are held.
+     */
+    private static class PacketGroupIterator implements Iterator {
+
+        private PacketSQLInput packetSQLInput = null;
+        private boolean bySequenceNumber = false;
+        private SSDSGeoLocatedDevicePacket nextPacket = null;
+
+        PacketGroupIterator(PacketSQLInput packetSQLInput, String orderBy) {
+            this.packetSQLInput = packetSQLInput;
+            this.bySequenceNumber = PacketSQLInputFactory.BY_SEQUENCE_NUMBER
+                .equals(orderBy);
+            this.nextPacket = readPacket();
+        }
+
+        public boolean hasNext() {
+            return nextPacket != null;
+        }
+
+        public Object next() {
+            if (nextPacket == null)
+                throw new NoSuchElementException();
+            Collection group = new ArrayList();
+            long key = keyOf(nextPacket);
+            while ((nextPacket != null) && (keyOf(nextPacket) == key)) {
+                group.add(nextPacket);
+                nextPacket = readPacket();
+            }
+            return group;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private long keyOf(SSDSGeoLocatedDevicePacket packet) {
+            return bySequenceNumber ? packet.sequenceNo() : packet
+                .systemTime();
+        }
+
+        private SSDSGeoLocatedDevicePacket readPacket() {
+            while (packetSQLInput.hasMoreElements()) {
+                SSDSGeoLocatedDevicePacket packet = (SSDSGeoLocatedDevicePacket) packetSQLInput
+                    .nextElement();
+                if (packet != null)
+                    return packet;
+            }
+            return null;
         }
     }
 
@@ -685,7 +732,7 @@ public class GetOriginalDataServlet extends HttpServlet {
      * @param out
      * @param DEBUG
      */
-    private void respondAscii(TreeMap dataMap, PrintWriter out,
+    private void respondAscii(Iterator packetGroups, PrintWriter out,
         boolean displayPacketHeaderInfo, boolean noHTMLHeader,
         String delimiter, String recordDelimiter, String prependWith,
         String convertTo, HttpServletResponse response, int strideCount) {
@@ -706,26 +753,43 @@ public class GetOriginalDataServlet extends HttpServlet {
                 out.println("databuffer");
             }
         }
-        // Now iterate over the data packets
-        // Now grab the key set and loop through it to print out rows
-        // The data packets are mapped by key which may be a timestamp or sequence number.
-        Set keySet = dataMap.keySet();
-        Iterator i = keySet.iterator();
+        // The calendar and format for OASIS timestamps
+        GregorianCalendar cal = null;
+        NumberFormat nf = null;
+        if ((prependWith != null)
+            && (prependWith.equalsIgnoreCase(PREPEND_WITH_OASIS))) {
+            cal = new GregorianCalendar();
+            cal.setTimeZone(TimeZone.getTimeZone("GMT"));
+            // Format for trailing zeros
+            nf = NumberFormat.getInstance();
+            nf.setMaximumIntegerDigits(3);
+            nf.setMaximumFractionDigits(5);
+            nf.setMinimumIntegerDigits(1);
+            nf.setMinimumFractionDigits(5);
+        }
+        boolean convertToHex = (convertTo != null)
+            && (convertTo.equalsIgnoreCase(CONVERT_TO_HEX));
+
+        // Now iterate over the groups of data packets. The data packets are
+        // grouped by key which may be a timestamp or sequence number.
         int counter = 0;
-        while (i.hasNext()) {
+        while (packetGroups.hasNext()) {
         	
         	// Skip records using a remainder test on the stride specified in the request
         	// Make sure to increment the iterator!
         	counter++;
-        	Long key = (Long) i.next();
-        	//out.println("counter = " + counter + " strideCount = " + strideCount + " mod div = " + (counter % strideCount));
+            Collection values = (Collection) packetGroups.next();
+            // Every so often, make sure the client is still there (this
+            // flushes what has been written so far)
+            if ((counter % CHECK_CLIENT_INTERVAL == 0) && out.checkError()) {
+                logger.error("Error writing the response, the client "
+                    + "must have gone away");
+                return;
+            }
             if (counter % strideCount != 0) {
-            	//out.println(" 1 continuing.");
             	continue;
             }
-            
-            // Grab the collection
-            Collection values = (Collection) dataMap.get(key);
+
             // Now loop over the values for the key - these values may consist of multiple RecordTypes 
             // that may exist at each timestamp or sequence number.
             if (values != null) {
@@ -743,12 +807,8 @@ public class GetOriginalDataServlet extends HttpServlet {
                             + dat.toGMTString() + delimiter
                             + ssdsDP.systemTime() + delimiter);
                     }
-                    if ((prependWith != null)
-                        && (prependWith.equalsIgnoreCase(PREPEND_WITH_OASIS))) {
+                    if (cal != null) {
                         // Use Calendar object to get proper time format
-                        GregorianCalendar cal = new GregorianCalendar();
-                        TimeZone tz = TimeZone.getTimeZone("GMT");
-                        cal.setTimeZone(tz);
                         cal.setTime(dat);
                         int yd = cal.get(Calendar.DAY_OF_YEAR);
                         int hr = cal.get(Calendar.HOUR_OF_DAY);
@@ -756,29 +816,20 @@ public class GetOriginalDataServlet extends HttpServlet {
                         int sc = cal.get(Calendar.SECOND);
                         double fracD = (((float) sc / 60.0 + (float) mn) / 60.0 + (float) hr) / 24.0;
                         float fracYD = (float) ((float) yd + fracD);
-                        // Format for trailing zeros
-                        NumberFormat nf = NumberFormat.getInstance();
-                        nf.setMaximumIntegerDigits(3);
-                        nf.setMaximumFractionDigits(5);
-                        nf.setMinimumIntegerDigits(1);
-                        nf.setMinimumFractionDigits(5);
                         out.print(nf.format(fracYD) + " ");
                     }
-                    if ((convertTo != null)
-                        && (convertTo.equalsIgnoreCase(CONVERT_TO_HEX))) {
-                        StringBuffer hexData = new StringBuffer();
-                        ByteArrayInputStream byteArrayIS = new ByteArrayInputStream(
-                            ssdsDP.getDataBuffer());
-                        while (byteArrayIS.available() > 0) {
-                            hexData.append(Integer.toHexString(
-                                (0xFF & byteArrayIS.read()) | 0x100).substring(
-                                1));
+                    if (convertToHex) {
+                        byte[] dataBuffer = ssdsDP.getDataBuffer();
+                        char[] hexData = new char[dataBuffer.length * 2];
+                        for (int j = 0; j < dataBuffer.length; j++) {
+                            hexData[2 * j] = HEX_DIGITS[(dataBuffer[j] >> 4) & 0xF];
+                            hexData[2 * j + 1] = HEX_DIGITS[dataBuffer[j] & 0xF];
                         }
+                        out.print(hexData);
                         if (recordDelimiter != null) {
-                            out.println(hexData.toString().toUpperCase()
-                                + recordDelimiter);
+                            out.println(recordDelimiter);
                         } else {
-                            out.println(hexData.toString().toUpperCase());
+                            out.println();
                         }
                     } else {
                         if (recordDelimiter != null) {
@@ -798,50 +849,57 @@ public class GetOriginalDataServlet extends HttpServlet {
         return;
     }
 
-    private void respondBinary(TreeMap dataMap, OutputStream out,
+    private void respondBinary(Iterator packetGroups, OutputStream out,
         HttpServletResponse response, String recordDelimiter, int strideCount) {
 
         // Set the response header
         response.setContentType("binary/octet-stream");
-        // Now iterate over the data packets
-        // Now grab the key set and loop through it to print out rows
-     // The data packets are mapped by key which may be a timestamp or sequence number.
-        Set keySet = dataMap.keySet();
-        Iterator i = keySet.iterator();
+        // Now iterate over the groups of data packets. The data packets are
+        // grouped by key which may be a timestamp or sequence number.
+        byte[] recordDelimiterBytes = (recordDelimiter != null) ? recordDelimiter
+            .getBytes()
+            : null;
         int counter = 0;
-        while (i.hasNext()) {
+        while (packetGroups.hasNext()) {
         	
         	// Skip records using a remainder test on the stride specified in the request
         	// Make sure to increment the iterator!
         	counter++;
-        	Long key = (Long) i.next();
+            // These values may consist of multiple RecordTypes 
+            // that may exist at each timestamp or sequence number.
+            Collection values = (Collection) packetGroups.next();
         	if (counter % strideCount != 0) {
             	continue;
             }
-        	
-        	// These values may consist of multiple RecordTypes 
-            // that may exist at each timestamp or sequence number.
-            Collection values = (Collection) dataMap.get(key);
+
             if (values != null) {
                 Iterator iterator = values.iterator();
                 while (iterator.hasNext()) {
                     SSDSGeoLocatedDevicePacket ssdsDP = (SSDSGeoLocatedDevicePacket) iterator
                         .next();
                     try {
-                        if (recordDelimiter != null) {
+                        if (recordDelimiterBytes != null) {
                             out.write(ssdsDP.getDataBuffer());
-                            out.write(recordDelimiter.getBytes());
+                            out.write(recordDelimiterBytes);
                         } else {
                             out.write(ssdsDP.getDataBuffer());
                         }
                     } catch (IOException e) {
+                        // The client has gone away, so stop reading packets
                         logger
                             .error("IOException caught while writing back binary requested data: "
                                 + e.getMessage());
+                        return;
                     }
                 }
             }
         }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            logger.error("IOException caught while flushing binary "
+                + "requested data: " + e.getMessage());
+        }
     }
 
     /**
@@ -1162,6 +1220,19 @@ public class GetOriginalDataServlet extends HttpServlet {
     private static String OUTPUT_AS_BINARY = "binary";
     private static String CONVERT_TO_HEX = "hex";
     private static String PREPEND_WITH_OASIS = "oasis";
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * The number of rows the JDBC driver is asked to fetch at a time when
+     * streaming the packets
+     */
+    private static final int STREAMING_FETCH_SIZE = 500;
+
+    /**
+     * The number of groups of packets written between checks that the client
+     * is still reading the response
+     */
+    private static final int CHECK_CLIENT_INTERVAL = 1000;
 
     /** A log4j logger */
     static Logger logger = Logger.getLogger(GetOriginalDataServlet.class);
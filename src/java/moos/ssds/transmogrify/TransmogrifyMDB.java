@@ -490,9 +490,14 @@ public class TransmogrifyMDB implements javax.ejb.MessageDrivenBean,
 		// TODO kgomes might be nice to put some check in here to make sure
 		// incoming byte array looks like a SIAM formatted byte array
 
-		// Convert it to SSDS format
-		byte[] ssdsBytes = PacketUtility.convertSIAMByteArrayToVersion3SSDSByteArray(
-				siamBytes, false, false, false, false);
+		// Convert it to SSDS format (straight into the SSDS byte array)
+		byte[] ssdsBytes = PacketUtility
+				.transcodeSIAMByteArrayToVersion3SSDSByteArray(siamBytes);
+		if (ssdsBytes == null) {
+			logger.error("The SIAM byte array could not be converted "
+					+ "to SSDS format, nothing will be published");
+			return;
+		}
 		PacketUtility.logVersion3SSDSByteArray(ssdsBytes, false);
 
 		// Now publish those
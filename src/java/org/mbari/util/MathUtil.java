@@ -16,7 +16,6 @@
 package org.mbari.util;
 
 import java.util.Arrays;
-import java.util.TreeMap;
 
 /**
  * <p>
@@ -173,24 +172,8 @@ public class MathUtil {
      * @return order An array of indexes such that y = Array.sort(x) and y =
      *         x(order) are the same.
      */
-    public static final synchronized int[] uniqueSort(double[] x) {
-        TreeMap tm = new TreeMap();
-        for (int i = 0; i < x.length; i++) {
-            Double key = new Double(x[i]);
-            boolean exists = tm.containsKey(key);
-            if (exists) {
-                // Do nothing. Ignore duplicate keys
-            } else {
-                tm.put(key, new Integer(i));
-            }
-        }
-        Object[] values = tm.values().toArray();
-        int[] order = new int[values.length];
-        for (int i = 0; i < values.length; i++) {
-            Integer tmp = (Integer) values[i];
-            order[i] = tmp.intValue();
-        }
-        return order;
+    public static final int[] uniqueSort(double[] x) {
+        return uniqueSortOrder(toSortableKeys(x));
     }
 
     /**
@@ -209,44 +192,12 @@ public class MathUtil {
      * @return order An array of indexes such that y = Array.sort(x) and y =
      *         x(order) are the same.
      */
-    public static final synchronized int[] uniqueSort(long[] x) {
-        TreeMap tm = new TreeMap();
-        for (int i = 0; i < x.length; i++) {
-            Long key = new Long(x[i]);
-            boolean exists = tm.containsKey(key);
-            if (exists) {
-                // Do nothing. Ignore duplicate keys
-            } else {
-                tm.put(key, new Integer(i));
-            }
-        }
-        Object[] values = tm.values().toArray();
-        int[] order = new int[values.length];
-        for (int i = 0; i < values.length; i++) {
-            Integer tmp = (Integer) values[i];
-            order[i] = tmp.intValue();
-        }
-        return order;
+    public static final int[] uniqueSort(long[] x) {
+        return uniqueSortOrder((long[]) x.clone());
     }
 
-    public static final synchronized int[] uniqueSort(Long[] x) {
-        TreeMap tm = new TreeMap();
-        for (int i = 0; i < x.length; i++) {
-            Long key = x[i];
-            boolean exists = tm.containsKey(key);
-            if (exists) {
-                // Do nothing. Ignore duplicate keys
-            } else {
-                tm.put(key, new Integer(i));
-            }
-        }
-        Object[] values = tm.values().toArray();
-        int[] order = new int[values.length];
-        for (int i = 0; i < values.length; i++) {
-            Integer tmp = (Integer) values[i];
-            order[i] = tmp.intValue();
-        }
-        return order;
+    public static final int[] uniqueSort(Long[] x) {
+        return uniqueSortOrder(toKeys(x));
     }
 
     /**
@@ -265,33 +216,8 @@ public class MathUtil {
      * @return order An array of indexes such that y = Array.sort(x) and y =
      *         x(order) are the same.
      */
-    public static final synchronized int[] getSortOrder(double[] x) {
-        // Create an array the same size as the incoming array
-        int[] orderToReturn = new int[x.length];
-        // Create a counter
-        for (int i = 0; i < x.length; i++) {
-            if (i > 0) {
-                boolean inserted = false;
-                for (int j = 0; j < i; j++) {
-                    if (x[orderToReturn[j]] > x[i]) {
-                        // Move all greater values down
-                        for (int k = i; k > j; k--) {
-                            orderToReturn[k] = orderToReturn[k - 1];
-                        }
-                        // Add at the location
-                        orderToReturn[j] = i;
-                        inserted = true;
-                    }
-                    if (inserted)
-                        break;
-                }
-                if (!inserted)
-                    orderToReturn[i] = i;
-            } else {
-                orderToReturn[0] = i;
-            }
-        }
-        return orderToReturn;
+    public static final int[] getSortOrder(double[] x) {
+        return sortOrder(toSortableKeys(x));
     }
 
     /**
@@ -310,33 +236,8 @@ public class MathUtil {
      * @return order An array of indexes such that y = Array.sort(x) and y =
      *         x(order) are the same.
      */
-    public static final synchronized int[] getSortOrder(long[] x) {
-        // Create an array the same size as the incoming array
-        int[] orderToReturn = new int[x.length];
-        // Create a counter
-        for (int i = 0; i < x.length; i++) {
-            if (i > 0) {
-                boolean inserted = false;
-                for (int j = 0; j < i; j++) {
-                    if (x[orderToReturn[j]] > x[i]) {
-                        // Move all greater values down
-                        for (int k = i; k > j; k--) {
-                            orderToReturn[k] = orderToReturn[k - 1];
-                        }
-                        // Add at the location
-                        orderToReturn[j] = i;
-                        inserted = true;
-                    }
-                    if (inserted)
-                        break;
-                }
-                if (!inserted)
-                    orderToReturn[i] = i;
-            } else {
-                orderToReturn[0] = i;
-            }
-        }
-        return orderToReturn;
+    public static final int[] getSortOrder(long[] x) {
+        return sortOrder((long[]) x.clone());
     }
 
     /**
@@ -355,33 +256,123 @@ public class MathUtil {
      * @return order An array of indexes such that y = Array.sort(x) and y =
      *         x(order) are the same.
      */
-    public static final synchronized int[] getSortOrder(Long[] x) {
-        // Create an array the same size as the incoming array
-        int[] orderToReturn = new int[x.length];
-        // Create a counter
+    public static final int[] getSortOrder(Long[] x) {
+        return sortOrder(toKeys(x));
+    }
+
+    /**
+     * Ranges this small are sorted by insertion
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    /**
+     * This method turns doubles into longs that sort in the same order (the
+     * same order as <code>Double.compareTo</code>, so NaN is last and -0.0
+     * comes before 0.0)
+     */
+    private static long[] toSortableKeys(double[] x) {
+        long[] keys = new long[x.length];
         for (int i = 0; i < x.length; i++) {
-            if (i > 0) {
-                boolean inserted = false;
-                for (int j = 0; j < i; j++) {
-                    if (x[orderToReturn[j]].longValue() > x[i].longValue()) {
-                        // Move all greater values down
-                        for (int k = i; k > j; k--) {
-                            orderToReturn[k] = orderToReturn[k - 1];
-                        }
-                        // Add at the location
-                        orderToReturn[j] = i;
-                        inserted = true;
-                    }
-                    if (inserted)
-                        break;
+            long bits = Double.doubleToLongBits(x[i]);
+            keys[i] = bits ^ ((bits >> 63) & 0x7fffffffffffffffL);
+        }
+        return keys;
+    }
+
+    private static long[] toKeys(Long[] x) {
+        long[] keys = new long[x.length];
+        for (int i = 0; i < x.length; i++)
+            keys[i] = x[i].longValue();
+        return keys;
+    }
+
+    /**
+     * This method returns the sort order of the keys, dropping all but the
+     * first of any duplicates
+     */
+    private static int[] uniqueSortOrder(long[] keys) {
+        int[] order = sortOrder(keys);
+        // The sort is stable and leaves the keys sorted, so the first of each
+        // run of the same key is the one that came first in the array
+        int numberOfUnique = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if ((i == 0) || (keys[i] != keys[i - 1]))
+                order[numberOfUnique++] = order[i];
+        }
+        if (numberOfUnique == order.length)
+            return order;
+        int[] uniqueOrder = new int[numberOfUnique];
+        System.arraycopy(order, 0, uniqueOrder, 0, numberOfUnique);
+        return uniqueOrder;
+    }
+
+    /**
+     * This method does a stable merge sort of the keys (which it sorts in
+     * place) and returns where each one came from. This is all done on the
+     * calling thread since these methods are used inside of EJBs.
+     */
+    private static int[] sortOrder(long[] keys) {
+        int[] order = new int[keys.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        mergeSort(keys, order, new long[keys.length], new int[keys.length], 0,
+            keys.length);
+        return order;
+    }
+
+    /**
+     * This method sorts the range [from, to) of the keys and the order along
+     * with them. Equal keys stay in the order they were in.
+     */
+    private static void mergeSort(long[] keys, int[] order, long[] keyBuffer,
+        int[] orderBuffer, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                long key = keys[i];
+                int index = order[i];
+                int j = i - 1;
+                while ((j >= from) && (keys[j] > key)) {
+                    keys[j + 1] = keys[j];
+                    order[j + 1] = order[j];
+                    j--;
                 }
-                if (!inserted)
-                    orderToReturn[i] = i;
+                keys[j + 1] = key;
+                order[j + 1] = index;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(keys, order, keyBuffer, orderBuffer, from, middle);
+        mergeSort(keys, order, keyBuffer, orderBuffer, middle, to);
+        merge(keys, order, keyBuffer, orderBuffer, from, middle, to);
+    }
+
+    /**
+     * This method merges the sorted ranges [from, middle) and [middle, to)
+     */
+    private static void merge(long[] keys, int[] order, long[] keyBuffer,
+        int[] orderBuffer, int from, int middle, int to) {
+        // Time series are usually already in order
+        if (keys[middle - 1] <= keys[middle])
+            return;
+        System.arraycopy(keys, from, keyBuffer, from, middle - from);
+        System.arraycopy(order, from, orderBuffer, from, middle - from);
+        int left = from;
+        int right = middle;
+        int out = from;
+        while ((left < middle) && (right < to)) {
+            if (keys[right] < keyBuffer[left]) {
+                keys[out] = keys[right];
+                order[out++] = order[right++];
             } else {
-                orderToReturn[0] = i;
+                keys[out] = keyBuffer[left];
+                order[out++] = orderBuffer[left++];
             }
         }
-        return orderToReturn;
+        while (left < middle) {
+            keys[out] = keyBuffer[left];
+            order[out++] = orderBuffer[left++];
+        }
     }
 
     /**
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import moos.ssds.dao.LineageTraversal;
+import moos.ssds.dao.util.MetadataAccessException;
+
+/**
+ * This tests the breadth first walks of <code>LineageTraversal</code> over a
+ * small graph of <code>DataProducer</code>s (answering the queries from
+ * memory instead of the database). The graph has a cycle where the output of
+ * the last step is fed back in as the input of the first one.
+ */
+public class TestLineageTraversal extends TestCase {
+
+	public TestLineageTraversal(String name) {
+		super(name);
+	}
+
+	public void testDerivedOutputs() throws MetadataAccessException {
+		Traversal traversal = new Traversal();
+		assertEquals(ids(new long[] { 2 }), traversal.findDerivedOutputIDs(
+				ids(new long[] { 1 }), 1));
+		assertEquals(ids(new long[] { 2, 3, 4 }), traversal
+				.findDerivedOutputIDs(ids(new long[] { 1 }), 2));
+		assertEquals(ids(new long[] { 2, 3, 4, 5, 7 }), traversal
+				.findDerivedOutputIDs(ids(new long[] { 1 }), 3));
+
+		// The cycle back to 1 ends the walk (and 1 is not part of the result)
+		traversal = new Traversal();
+		assertEquals(ids(new long[] { 2, 3, 4, 5, 7 }), traversal
+				.findDerivedOutputIDs(ids(new long[] { 1 }), 100));
+		assertEquals("One query per level until there is nothing new", 4,
+				traversal.queries);
+	}
+
+	public void testInputs() throws MetadataAccessException {
+		Traversal traversal = new Traversal();
+		assertEquals(ids(new long[] { 6, 4 }), traversal.findInputIDs(
+				ids(new long[] { 7 }), 1));
+		assertEquals(ids(new long[] { 6, 4, 2 }), traversal.findInputIDs(
+				ids(new long[] { 7 }), 2));
+
+		traversal = new Traversal();
+		assertEquals(ids(new long[] { 6, 4, 2, 1, 5, 3 }), traversal
+				.findInputIDs(ids(new long[] { 7 }), 100));
+		assertEquals(6, traversal.queries);
+	}
+
+	public void testCreators() throws MetadataAccessException {
+		Traversal traversal = new Traversal();
+		assertEquals(ids(new long[] { 106 }), traversal.findCreatorIDs(
+				ids(new long[] { 7 }), 1));
+		// The creator of 6 has no inputs so its chain ends there
+		assertEquals(ids(new long[] { 106, 102, 105 }), traversal
+				.findCreatorIDs(ids(new long[] { 7 }), 2));
+
+		// Around the cycle and back to the creator of 3 and 4
+		traversal = new Traversal();
+		assertEquals(ids(new long[] { 106, 102, 105, 101, 104, 103 }),
+				traversal.findCreatorIDs(ids(new long[] { 7 }), 100));
+		assertEquals(6, traversal.queries);
+	}
+
+	public void testNoDepth() throws MetadataAccessException {
+		Traversal traversal = new Traversal();
+		assertTrue(traversal.findDerivedOutputIDs(ids(new long[] { 1 }), 0)
+				.isEmpty());
+		assertTrue(traversal.findInputIDs(ids(new long[] { 7 }), -1)
+				.isEmpty());
+		assertTrue(traversal.findCreatorIDs(ids(new long[] { 7 }), 0)
+				.isEmpty());
+		assertTrue(traversal.findDerivedOutputIDs(new ArrayList(), 5)
+				.isEmpty());
+		assertEquals("Nothing is queried", 0, traversal.queries);
+	}
+
+	private static List ids(long[] values) {
+		List ids = new ArrayList();
+		for (int i = 0; i < values.length; i++)
+			ids.add(new Long(values[i]));
+		return ids;
+	}
+
+	/**
+	 * The <code>DataProducer</code>s (with IDs 101 to 106) as their input and
+	 * output <code>DataContainer</code> IDs
+	 */
+	private static final long[][][] PRODUCERS = {
+			{ { 101 }, { 1 }, { 2 } }, { { 102 }, { 2 }, { 3, 4 } },
+			{ { 103 }, { 3 }, { 5 } }, { { 104 }, { 5 }, { 1 } },
+			{ { 105 }, {}, { 6 } }, { { 106 }, { 6, 4 }, { 7 } } };
+
+	/**
+	 * A traversal that answers the queries from <code>PRODUCERS</code>
+	 */
+	private static class Traversal extends LineageTraversal {
+
+		Traversal() {
+			super(null, 0);
+		}
+
+		protected List query(String queryString, List ids) {
+			queries++;
+			List results = new ArrayList();
+			for (int i = 0; i < PRODUCERS.length; i++) {
+				Long producerID = new Long(PRODUCERS[i][0][0]);
+				List inputs = ids(PRODUCERS[i][1]);
+				List outputs = ids(PRODUCERS[i][2]);
+				if (queryString.startsWith("select distinct output.id")) {
+					// The outputs of the consumers of the IDs
+					if (!Collections.disjoint(inputs, ids))
+						addNew(results, outputs);
+				} else if (queryString.startsWith("select distinct input.id")) {
+					// The inputs of the creators of the IDs
+					if (!Collections.disjoint(outputs, ids))
+						addNew(results, inputs);
+				} else if (!Collections.disjoint(outputs, ids)) {
+					// The creators of the IDs and their inputs
+					if (inputs.isEmpty())
+						results.add(new Object[] { producerID, null });
+					for (int j = 0; j < inputs.size(); j++)
+						results.add(new Object[] { producerID, inputs.get(j) });
+				}
+			}
+			return results;
+		}
+
+		private static void addNew(List results, List ids) {
+			for (int i = 0; i < ids.size(); i++)
+				if (!results.contains(ids.get(i)))
+					results.add(ids.get(i));
+		}
+
+		int queries = 0;
+	}
+}
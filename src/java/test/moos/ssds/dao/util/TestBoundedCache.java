@@ -0,0 +1,75 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.dao.util;
+
+import junit.framework.TestCase;
+import moos.ssds.dao.util.BoundedCache;
+import moos.ssds.dao.util.CacheStatistics;
+
+/**
+ * This tests the size and time bounds and the statistics of the cache that
+ * backs the second level cache of the metadata.
+ */
+public class TestBoundedCache extends TestCase {
+
+	public TestBoundedCache(String name) {
+		super(name);
+	}
+
+	public void testLeastRecentlyUsedIsDropped() {
+		BoundedCache cache = new BoundedCache("test", 2, 0);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		// Using a makes b the oldest
+		assertEquals("1", cache.get("a"));
+		cache.put("c", "3");
+		assertEquals("The cache should stay at two entries", 2, cache.size());
+		assertNull("b should have been dropped", cache.get("b"));
+		assertEquals("1", cache.get("a"));
+		assertEquals("3", cache.get("c"));
+
+		CacheStatistics statistics = cache.getStatistics();
+		assertEquals("Hits", 3, statistics.getHits());
+		assertEquals("Misses", 1, statistics.getMisses());
+		assertEquals("Puts", 3, statistics.getPuts());
+		assertEquals("Evictions", 1, statistics.getEvictions());
+		assertEquals(0.75, statistics.getHitRatio(), 0.0001);
+
+		cache.remove("a");
+		assertNull("a was removed", cache.get("a"));
+		cache.clear();
+		assertEquals("The cache should be empty", 0, cache.size());
+	}
+
+	public void testOldEntriesExpire() throws InterruptedException {
+		BoundedCache cache = new BoundedCache("test", 0, 50);
+		cache.put("a", "1");
+		assertEquals("1", cache.get("a"));
+		Thread.sleep(100);
+		assertTrue("Expired entries should not be copied", cache.toMap()
+				.isEmpty());
+		assertNull("a should have expired", cache.get("a"));
+		assertEquals("The expired entry should be dropped", 0, cache.size());
+		assertEquals("Expirations", 1, cache.getStatistics()
+				.getExpirations());
+
+		// No bounds at all
+		BoundedCache unbounded = new BoundedCache("unbounded", 0, 0);
+		for (int i = 0; i < 1000; i++)
+			unbounded.put(new Integer(i), new Integer(i));
+		assertEquals("Nothing should be dropped", 1000, unbounded.size());
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.dao.util;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import moos.ssds.dao.util.SpatialTemporalIndex;
+
+/**
+ * This tests that the in memory geospatial index finds the same things as
+ * checking every extent would.
+ */
+public class TestSpatialTemporalIndex extends TestCase {
+
+	public TestSpatialTemporalIndex(String name) {
+		super(name);
+	}
+
+	public void testMatchesScan() {
+		Random random = new Random(42);
+		int size = 2000;
+		long[] ids = new long[size];
+		double[] extents = new double[size
+				* SpatialTemporalIndex.EXTENT_LENGTH];
+		double[] extent = new double[SpatialTemporalIndex.EXTENT_LENGTH];
+		for (int i = 0; i < size; i++) {
+			ids[i] = i;
+			double latitude = random.nextDouble() * 180 - 90;
+			double longitude = random.nextDouble() * 360 - 180;
+			double depth = random.nextDouble() * 1000;
+			long start = random.nextInt(1000000);
+			// Some without a position or an end
+			Double latitudeValue = (i % 50 == 0) ? null : new Double(latitude);
+			Long end = (i % 20 == 0) ? null : new Long(start
+					+ random.nextInt(50000));
+			SpatialTemporalIndex.toExtent(extent, latitudeValue,
+					(latitudeValue == null) ? null : new Double(latitude
+							+ random.nextDouble()), new Double(longitude),
+					new Double(longitude + random.nextDouble()), new Float(
+							depth), new Float(depth + 10), new Long(start), end);
+			System.arraycopy(extent, 0, extents, i
+					* SpatialTemporalIndex.EXTENT_LENGTH,
+					SpatialTemporalIndex.EXTENT_LENGTH);
+		}
+		SpatialTemporalIndex index = new SpatialTemporalIndex(8);
+		index.build(ids, extents, size);
+		assertEquals(size, index.size());
+
+		for (int q = 0; q < 50; q++) {
+			double[] query = randomQuery(random);
+			assertEquals("Query " + q, scan(extents, size, query), index
+					.findIDs(query));
+		}
+
+		// Nothing bounded finds everything
+		double[] unbounded = new double[SpatialTemporalIndex.EXTENT_LENGTH];
+		for (int i = 0; i < unbounded.length; i++)
+			unbounded[i] = Double.NaN;
+		assertEquals(size, index.findIDs(unbounded).size());
+	}
+
+	public void testAddedEntriesAndRebuild() {
+		SpatialTemporalIndex index = new SpatialTemporalIndex(4);
+		assertTrue("Needs a build", index.startBuild(0));
+		assertTrue("Somebody is building it", !index.startBuild(0));
+		index.build(new long[] { 1 }, extent(36.5, -122, 0, 100), 1);
+		assertTrue("Built for good", !index.startBuild(0));
+
+		double[] query = query(36, 37, -123, -121, 50, 150);
+		assertTrue(index.findIDs(query).contains(new Long(1)));
+
+		// Moving object 2 into the cube (and lots of others elsewhere)
+		index.add(2, extent(10, 10, 0, 100));
+		index.add(2, extent(36.7, -122.5, 120, 130));
+		for (int i = 3; i < 100; i++)
+			index.add(i, extent(-30, 40, 0, 100));
+		Set ids = index.findIDs(query);
+		assertEquals(2, ids.size());
+		assertTrue(ids.contains(new Long(2)));
+		assertTrue("Outside the time window", index.findIDs(
+				query(36, 37, -123, -121, 200, 300)).isEmpty());
+
+		// The entries added since the last build are kept through one more
+		index.build(new long[0], new double[0], 0);
+		assertTrue(index.findIDs(query).contains(new Long(2)));
+		index.build(new long[0], new double[0], 0);
+		assertTrue(index.findIDs(query).isEmpty());
+	}
+
+	private static double[] extent(double latitude, double longitude,
+			long start, long end) {
+		return SpatialTemporalIndex.toExtent(
+				new double[SpatialTemporalIndex.EXTENT_LENGTH], new Double(
+						latitude), new Double(latitude), new Double(longitude),
+				new Double(longitude), null, null, new Long(start), new Long(
+						end));
+	}
+
+	private static double[] query(double latitudeMin, double latitudeMax,
+			double longitudeMin, double longitudeMax, long start, long end) {
+		return new double[] { latitudeMin, latitudeMax, longitudeMin,
+				longitudeMax, Double.NaN, Double.NaN, start, end };
+	}
+
+	private static double[] randomQuery(Random random) {
+		double[] query = new double[SpatialTemporalIndex.EXTENT_LENGTH];
+		double latitude = random.nextDouble() * 160 - 80;
+		double longitude = random.nextDouble() * 340 - 170;
+		query[0] = latitude;
+		query[1] = latitude + random.nextDouble() * 20;
+		query[2] = (random.nextInt(4) == 0) ? Double.NaN : longitude;
+		query[3] = longitude + random.nextDouble() * 20;
+		query[4] = (random.nextBoolean()) ? Double.NaN : 200;
+		query[5] = Double.NaN;
+		query[6] = random.nextInt(1000000);
+		query[7] = query[6] + random.nextInt(200000);
+		return query;
+	}
+
+	/**
+	 * What checking each extent against the query finds
+	 */
+	private static Set scan(double[] extents, int size, double[] query) {
+		Set ids = new HashSet();
+		for (int i = 0; i < size; i++) {
+			boolean overlaps = true;
+			for (int d = 0; d < SpatialTemporalIndex.EXTENT_LENGTH; d += 2) {
+				double min = extents[i * SpatialTemporalIndex.EXTENT_LENGTH
+						+ d];
+				double max = extents[i * SpatialTemporalIndex.EXTENT_LENGTH
+						+ d + 1];
+				if (!Double.isNaN(query[d]) && !(max >= query[d]))
+					overlaps = false;
+				if (!Double.isNaN(query[d + 1]) && !(min <= query[d + 1]))
+					overlaps = false;
+			}
+			if (overlaps)
+				ids.add(new Long(i));
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.data;
+
+import junit.framework.TestCase;
+import moos.ssds.data.Downsampler;
+
+/**
+ * This tests the aggregations of the <code>Downsampler</code>
+ */
+public class TestDownsampler extends TestCase {
+
+    public TestDownsampler(String name) {
+        super(name);
+    }
+
+    public void testAggregates() {
+        // Ten samples a bin, values 0 to 29
+        long[] times = new long[30];
+        double[] values = new double[30];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = 1000 + i * 100;
+            values[i] = (i % 2 == 0) ? i : -i;
+        }
+        values[5] = Double.NaN;
+
+        Object[][] mins = reduce(times, values, Downsampler.MIN);
+        assertEquals("One point a bin", 3, mins.length);
+        assertEquals(new Double(-9), mins[0][1]);
+        assertEquals("At the time of the sample", new Long(1900), mins[0][0]);
+
+        Object[][] maxs = reduce(times, values, Downsampler.MAX);
+        assertEquals(new Double(28), maxs[2][1]);
+
+        Object[][] minMaxs = reduce(times, values, Downsampler.MIN_MAX);
+        assertEquals("Two points a bin", 6, minMaxs.length);
+        assertEquals("In time order", new Long(1800), minMaxs[0][0]);
+        assertEquals(new Double(8), minMaxs[0][1]);
+        assertEquals(new Double(-9), minMaxs[1][1]);
+
+        Object[][] counts = reduce(times, values, Downsampler.COUNT);
+        assertEquals("NaN is not counted", new Long(9), counts[0][1]);
+        assertEquals("At the start of the bin", new Long(2000), counts[1][0]);
+        assertEquals(new Long(10), counts[1][1]);
+
+        Object[][] means = reduce(times, values, Downsampler.MEAN);
+        assertEquals(-0.5, ((Double) means[1][1]).doubleValue(), 1e-9);
+        assertEquals(new Long(2450), means[1][0]);
+    }
+
+    public void testLttbKeepsPeaks() {
+        // A flat series with one spike
+        Downsampler downsampler = new Downsampler(0, 1000, Downsampler.LTTB);
+        for (long time = 0; time < 10000; time += 10)
+            downsampler.add(time, (time == 5550) ? 100 : 0);
+        Object[][] points = downsampler.getResult();
+        assertEquals("First, last and one a bin", 12, points.length);
+        assertEquals("The first sample", new Long(0), points[0][0]);
+        assertEquals("The last sample", new Long(9990),
+            points[points.length - 1][0]);
+        assertEquals("The spike is kept", new Long(5550), points[6][0]);
+        assertEquals(new Double(100), points[6][1]);
+        assertEquals(1000, downsampler.getNumberOfSamples());
+
+        // Too few samples to fill the buckets
+        downsampler = new Downsampler(0, 1000, Downsampler.LTTB);
+        downsampler.add(5, 1);
+        downsampler.add(6, 2);
+        assertEquals(2, downsampler.getResult().length);
+    }
+
+    public void testBinWidth() {
+        assertEquals(100, Downsampler.getBinWidth(0, 9999, 100,
+            Downsampler.MEAN));
+        assertEquals(200, Downsampler.getBinWidth(0, 9999, 100,
+            Downsampler.MIN_MAX));
+        assertEquals(1, Downsampler.getBinWidth(0, 10, 1000, Downsampler.MAX));
+        assertEquals(Downsampler.LTTB, Downsampler.getAggregation("LTTB"));
+        assertEquals(-1, Downsampler.getAggregation("median"));
+    }
+
+    private static Object[][] reduce(long[] times, double[] values,
+        int aggregation) {
+        Downsampler downsampler = new Downsampler(1000, 1000, aggregation);
+        downsampler.add(times, values);
+        return downsampler.getResult();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.data;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+import moos.ssds.data.RecordTimeResolver;
+import moos.ssds.data.parsers.ColumnarRecordSink;
+import moos.ssds.metadata.RecordVariable;
+import moos.ssds.metadata.util.MetadataException;
+
+/**
+ * This tests that the times the <code>RecordTimeResolver</code> computes
+ * match what a GMT calendar gives for the same fields.
+ */
+public class TestRecordTimeResolver extends TestCase {
+
+    public TestRecordTimeResolver(String name) {
+        super(name);
+    }
+
+    public void testEpochSeconds() throws Exception {
+        RecordVariable epoch = createVariable(1, "epochTime", "double",
+            "epoch seconds");
+        Collection variables = new ArrayList();
+        variables.add(epoch);
+        RecordTimeResolver resolver = new RecordTimeResolver(variables);
+        assertTrue("Epoch seconds should compile", resolver.isCompiled());
+
+        ColumnarRecordSink sink = new ColumnarRecordSink(variables);
+        sink.setDouble(1, 1118793600.5);
+        assertEquals(1118793600500L, resolver.resolve(sink));
+    }
+
+    public void testFixedPositionFields() throws Exception {
+        RecordVariable dateTime = createVariable(1, "dateTime", "datetime",
+            "yyyy-MM-dd HH:mm:ss");
+        Collection variables = new ArrayList();
+        variables.add(dateTime);
+        RecordTimeResolver resolver = new RecordTimeResolver(variables);
+        assertTrue("Fixed fields should compile", resolver.isCompiled());
+
+        // Walk through a few years (including leap days)
+        ColumnarRecordSink sink = new ColumnarRecordSink(variables);
+        int[][] dates = { {1970, 1, 1, 0, 0, 0}, {1999, 12, 31, 23, 59, 59},
+            {2000, 2, 29, 12, 30, 15}, {2004, 3, 1, 1, 2, 3},
+            {2009, 6, 15, 18, 45, 0}, {2100, 2, 28, 6, 0, 1}};
+        for (int i = 0; i < dates.length; i++) {
+            int[] d = dates[i];
+            sink.setObject(1, d[0] + "-" + pad(d[1]) + "-" + pad(d[2]) + " "
+                + pad(d[3]) + ":" + pad(d[4]) + ":" + pad(d[5]));
+            assertEquals("Date " + i, gmt(d[0], d[1], d[2], d[3], d[4], d[5]),
+                resolver.resolve(sink));
+        }
+
+        // Day of year and a short record
+        RecordVariable dayOfYear = createVariable(1, "dayTime", "datetime",
+            "yyyy DDD HHmm");
+        variables.clear();
+        variables.add(dayOfYear);
+        resolver = new RecordTimeResolver(variables);
+        sink = new ColumnarRecordSink(variables);
+        sink.setObject(1, "2008 061 1230");
+        assertEquals(gmt(2008, 3, 1, 12, 30, 0), resolver.resolve(sink));
+        sink.setObject(1, "2008");
+        assertEquals("No day should not resolve",
+            RecordTimeResolver.UNRESOLVED, resolver.resolve(sink));
+    }
+
+    public void testSeparateDateAndTimeColumns() throws Exception {
+        RecordVariable date = createVariable(1, "dateTime", "datetime",
+            "MM/dd/yyyy");
+        RecordVariable time = createVariable(2, "timeOfDay", "datetime",
+            "HH:mm:ss");
+        Collection variables = new ArrayList();
+        variables.add(date);
+        variables.add(time);
+        RecordTimeResolver resolver = new RecordTimeResolver(variables);
+        assertTrue("Date and time patterns should compile", resolver
+            .isCompiled());
+
+        // The fields do not have to be padded
+        ColumnarRecordSink sink = new ColumnarRecordSink(variables);
+        sink.setObject(1, "2/1/2005");
+        sink.setObject(2, "7:05:09");
+        assertEquals(gmt(2005, 2, 1, 7, 5, 9), resolver.resolve(sink));
+    }
+
+    public void testUnsupportedUnitsAreNotCompiled() throws Exception {
+        RecordVariable named = createVariable(1, "dateTime", "datetime",
+            "EEE MMM dd yyyy");
+        Collection variables = new ArrayList();
+        variables.add(named);
+        assertTrue("Day and month names should not compile",
+            !new RecordTimeResolver(variables).isCompiled());
+
+        // Numeric time variables that are not epoch times are ignored
+        RecordVariable elapsed = createVariable(1, "elapsedTime", "float",
+            "seconds");
+        variables.clear();
+        variables.add(elapsed);
+        assertTrue("Numeric variables should be skipped",
+            new RecordTimeResolver(variables).isCompiled());
+    }
+
+    private static RecordVariable createVariable(long columnIndex,
+        String name, String format, String units) throws MetadataException {
+        RecordVariable recordVariable = new RecordVariable();
+        recordVariable.setColumnIndex(columnIndex);
+        recordVariable.setName(name);
+        recordVariable.setFormat(format);
+        recordVariable.setUnits(units);
+        return recordVariable;
+    }
+
+    private static long gmt(int year, int month, int day, int hour,
+        int minute, int second) {
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+
+    private static String pad(int value) {
+        return (value < 10) ? "0" + value : String.valueOf(value);
+    }
+}
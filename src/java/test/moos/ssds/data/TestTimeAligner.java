@@ -0,0 +1,184 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+
+import junit.framework.TestCase;
+import moos.ssds.data.ITimeIndexedDataAccess;
+import moos.ssds.data.TimeAligner;
+import moos.ssds.metadata.RecordVariable;
+import moos.ssds.metadata.util.MetadataException;
+
+/**
+ * This tests the merging of outputs by time in <code>TimeAligner</code>
+ */
+public class TestTimeAligner extends TestCase {
+
+    public TestTimeAligner(String name) {
+        super(name);
+    }
+
+    public void testMergeWithDefaultPolicies() throws Exception {
+        TimeAligner timeAligner = new TimeAligner(new String[]{"temp",
+            "depth"});
+        timeAligner.addOutput(new Access(new long[]{10, 20, 30},
+            new Double[]{new Double(1), new Double(2), null}, new Double[]{
+                new Double(100), new Double(200), new Double(300)}));
+        // The second output overlaps at 20 and has times out of order
+        timeAligner.addOutput(new Access(new long[]{25, 20, 5},
+            new Double[]{new Double(2.5), new Double(99), new Double(0.5)},
+            null));
+
+        Object[][] rows = timeAligner.getRows();
+        assertEquals("Rows", 5, rows.length);
+        long[] expectedTimes = {5, 10, 20, 25, 30};
+        for (int i = 0; i < rows.length; i++)
+            assertEquals("Time " + i, new Long(expectedTimes[i]), rows[i][0]);
+        assertEquals("The first output wins", new Double(2), rows[2][1]);
+        assertEquals(new Double(200), rows[2][2]);
+        assertNull("No depth in the second output", rows[0][2]);
+        assertNull("Missing temperature", rows[4][1]);
+
+        double[][] columns = timeAligner.getDoubleColumns();
+        long[] times = timeAligner.getTimes();
+        assertEquals("Columns", 5, times.length);
+        assertEquals(25, times[3]);
+        assertEquals(2.5, columns[0][3], 0.0);
+        assertTrue("Missing values are NaN", Double.isNaN(columns[1][3]));
+        assertEquals(200, columns[1][2], 0.0);
+    }
+
+    public void testDuplicateAndGapPolicies() throws Exception {
+        TimeAligner timeAligner = new TimeAligner(new String[]{"temp",
+            "depth"});
+        timeAligner.addOutput(new Access(new long[]{10, 20}, new Double[]{
+            new Double(1), null}, new Double[]{new Double(100),
+            new Double(200)}));
+        timeAligner.addOutput(new Access(new long[]{20, 30}, new Double[]{
+            new Double(2), new Double(3)}, null));
+
+        timeAligner.setDuplicatePolicy(TimeAligner.DUPLICATES_LAST);
+        Object[][] rows = timeAligner.getRows();
+        assertEquals(new Double(2), rows[1][1]);
+        assertNull("The last record has no depth", rows[1][2]);
+
+        timeAligner.setDuplicatePolicy(TimeAligner.DUPLICATES_MERGE);
+        rows = timeAligner.getRows();
+        assertEquals("Merged temperature", new Double(2), rows[1][1]);
+        assertEquals("Merged depth", new Double(200), rows[1][2]);
+
+        timeAligner.setDuplicatePolicy(TimeAligner.DUPLICATES_FIRST);
+        timeAligner.setGapPolicy(TimeAligner.GAPS_HOLD);
+        rows = timeAligner.getRows();
+        assertEquals("Held temperature", new Double(1), rows[1][1]);
+        assertEquals("Held depth", new Double(200), rows[2][2]);
+        double[][] columns = timeAligner.getDoubleColumns();
+        assertEquals("Held depth column", 200, columns[1][2], 0.0);
+
+        timeAligner.setGapPolicy(TimeAligner.GAPS_DROP);
+        rows = timeAligner.getRows();
+        assertEquals("Only complete rows", 1, rows.length);
+        assertEquals(new Long(10), rows[0][0]);
+        columns = timeAligner.getDoubleColumns();
+        assertEquals(1, timeAligner.getTimes().length);
+        assertEquals(1, columns[0].length);
+
+        try {
+            timeAligner.setGapPolicy(7);
+            fail("Unknown policies should not be accepted");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /**
+     * A simple access over arrays of data
+     */
+    private static class Access implements ITimeIndexedDataAccess {
+
+        Access(long[] times, Double[] temp, Double[] depth)
+            throws MetadataException {
+            this.times = times;
+            this.temp = temp;
+            this.depth = depth;
+            recordVariables.add(createVariable(1, "temp"));
+            if (depth != null)
+                recordVariables.add(createVariable(2, "depth"));
+        }
+
+        public Object[] getTime() {
+            return null;
+        }
+
+        public long[] getTimeValues() {
+            return (long[]) times.clone();
+        }
+
+        public Object getPrimitiveData(RecordVariable recordVariable) {
+            return getDoubleData(recordVariable);
+        }
+
+        public double[] getDoubleData(RecordVariable recordVariable) {
+            Object[] data = getData(recordVariable);
+            if (data == null)
+                return null;
+            double[] doubles = new double[data.length];
+            for (int i = 0; i < data.length; i++)
+                doubles[i] = (data[i] == null) ? Double.NaN
+                    : ((Double) data[i]).doubleValue();
+            return doubles;
+        }
+
+        public Date getStartDate() {
+            return null;
+        }
+
+        public Date getEndDate() {
+            return null;
+        }
+
+        public Object[] getData(String recordVariableName) {
+            if ("temp".equals(recordVariableName))
+                return temp;
+            if ("depth".equals(recordVariableName))
+                return depth;
+            return null;
+        }
+
+        public Object[] getData(RecordVariable recordVariable) {
+            return getData(recordVariable.getName());
+        }
+
+        public Collection getRecordVariables() {
+            return recordVariables;
+        }
+
+        private static RecordVariable createVariable(long columnIndex,
+            String name) throws MetadataException {
+            RecordVariable recordVariable = new RecordVariable();
+            recordVariable.setColumnIndex(columnIndex);
+            recordVariable.setName(name);
+            return recordVariable;
+        }
+
+        private long[] times;
+        private Double[] temp;
+        private Double[] depth;
+        private Collection recordVariables = new ArrayList();
+    }
+}
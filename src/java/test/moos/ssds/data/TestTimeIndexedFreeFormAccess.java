@@ -0,0 +1,152 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.data;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Collections;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+import moos.ssds.data.RecordTimeResolver;
+import moos.ssds.data.TimeIndexedFreeFormAccess;
+import moos.ssds.metadata.DataContainer;
+import moos.ssds.metadata.RecordDescription;
+import moos.ssds.metadata.RecordVariable;
+
+/**
+ * This tests that <code>TimeIndexedFreeFormAccess</code> reads the times of
+ * the records as GMT both when the <code>RecordTimeResolver</code> understands
+ * the units of the time variable and when it falls back to a
+ * <code>SimpleDateFormat</code>. The default time zone is moved off GMT for
+ * the tests so a local time would show.
+ */
+public class TestTimeIndexedFreeFormAccess extends TestCase {
+
+    public TestTimeIndexedFreeFormAccess(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+        asciiFile = File.createTempFile("TestTimeIndexedFreeFormAccess",
+            ".txt");
+    }
+
+    protected void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+        asciiFile.delete();
+    }
+
+    public void testResolvedTimes() throws Exception {
+        DataContainer dataContainer = createDataContainer(false);
+        assertTrue("The resolver understands the units",
+            new RecordTimeResolver(dataContainer.getRecordDescription()
+                .getRecordVariables()).isCompiled());
+        assertTimes(dataContainer);
+    }
+
+    public void testSimpleDateFormatTimes() throws Exception {
+        // The resolver does not do time zones so the dates are read with a
+        // SimpleDateFormat
+        DataContainer dataContainer = createDataContainer(true);
+        assertTrue("The units fall back to a SimpleDateFormat",
+            !new RecordTimeResolver(dataContainer.getRecordDescription()
+                .getRecordVariables()).isCompiled());
+        assertTimes(dataContainer);
+    }
+
+    /**
+     * This checks the records are at midnight GMT on the 2nd, 3rd and 5th of
+     * January 2009
+     */
+    private void assertTimes(DataContainer dataContainer) {
+        TimeIndexedFreeFormAccess access = new TimeIndexedFreeFormAccess(
+            dataContainer, null, null, Collections.singletonList("temperature"));
+        assertTrue(access.getDatesResolved());
+        long[] times = access.getTimeValues();
+        assertEquals(3, times.length);
+        assertEquals(JANUARY_2ND_2009, times[0]);
+        assertEquals(JANUARY_2ND_2009 + DAY, times[1]);
+        assertEquals(JANUARY_2ND_2009 + 3 * DAY, times[2]);
+        Object[] temperatures = access.getData("temperature");
+        assertEquals(3, temperatures.length);
+        assertEquals(new Double(10.5), temperatures[0]);
+        assertEquals(new Double(12.5), temperatures[2]);
+    }
+
+    /**
+     * This writes three records (a date, a temperature and optionally the
+     * time zone of the date) to the file and describes them
+     */
+    private DataContainer createDataContainer(boolean withTimeZone)
+        throws Exception {
+        String[] dates = {"01/02/2009", "01/03/2009", "01/05/2009"};
+        FileWriter writer = new FileWriter(asciiFile);
+        for (int i = 0; i < dates.length; i++)
+            writer.write(dates[i] + "," + (10.5 + i)
+                + (withTimeZone ? ",GMT" : "") + "\n");
+        writer.close();
+
+        RecordDescription recordDescription = new RecordDescription();
+        recordDescription.setBufferStyle(RecordDescription.BUFFER_STYLE_ASCII);
+        recordDescription.setBufferItemSeparator(",");
+        recordDescription.setRecordTerminator("\n");
+        recordDescription.setParseable(Boolean.TRUE);
+        recordDescription.setRecordType(new Long(1));
+
+        RecordVariable dateTime = new RecordVariable();
+        dateTime.setColumnIndex(1);
+        dateTime.setFormat("String");
+        dateTime.setName("dateTime");
+        dateTime.setUnits("MM/dd/yyyy");
+        recordDescription.addRecordVariable(dateTime);
+
+        RecordVariable temperature = new RecordVariable();
+        temperature.setColumnIndex(2);
+        temperature.setFormat("double");
+        temperature.setName("temperature");
+        recordDescription.addRecordVariable(temperature);
+
+        if (withTimeZone) {
+            RecordVariable timeZone = new RecordVariable();
+            timeZone.setColumnIndex(3);
+            timeZone.setFormat("String");
+            timeZone.setName("timeZone");
+            timeZone.setUnits("zzz");
+            recordDescription.addRecordVariable(timeZone);
+        }
+
+        DataContainer dataContainer = new DataContainer();
+        dataContainer.setName("TestTimeIndexedFreeFormAccess");
+        dataContainer.setDataContainerType(DataContainer.TYPE_FILE);
+        dataContainer.setUriString(asciiFile.toURI().toURL().toExternalForm());
+        dataContainer.setRecordDescription(recordDescription);
+        return dataContainer;
+    }
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    /**
+     * Midnight GMT on January 2nd 2009
+     */
+    private static final long JANUARY_2ND_2009 = 1230854400000L;
+
+    private TimeZone defaultTimeZone = null;
+
+    private File asciiFile = null;
+}
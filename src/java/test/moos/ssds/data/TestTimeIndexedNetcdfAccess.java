@@ -0,0 +1,174 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.data;
+
+import java.io.File;
+import java.util.Date;
+
+import junit.framework.TestCase;
+import moos.ssds.data.TimeIndexedNetcdfAccess;
+import moos.ssds.metadata.DataContainer;
+import moos.ssds.metadata.RecordDescription;
+import moos.ssds.metadata.RecordVariable;
+import ucar.ma2.ArrayAbstract;
+import ucar.nc2.Dimension;
+import ucar.nc2.NetcdfFileWriteable;
+
+/**
+ * This tests the time windows that <code>TimeIndexedNetcdfAccess</code> reads
+ * from a local NetCDF file with ten samples a minute apart
+ */
+public class TestTimeIndexedNetcdfAccess extends TestCase {
+
+    public TestTimeIndexedNetcdfAccess(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        netcdfFile = File.createTempFile("TestTimeIndexedNetcdfAccess", ".nc");
+        netcdfFile.delete();
+
+        double[] seconds = new double[NUMBER_OF_SAMPLES];
+        float[] temperatures = new float[NUMBER_OF_SAMPLES];
+        for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+            seconds[i] = FIRST_SECOND + i * 60;
+            temperatures[i] = 10 + i;
+        }
+        NetcdfFileWriteable ncfile = new NetcdfFileWriteable();
+        ncfile.setName(netcdfFile.getAbsolutePath());
+        Dimension[] dims = new Dimension[]{ncfile.addDimension("time", -1)};
+        ncfile.addVariable("time", double.class, dims);
+        ncfile.addVariable("temperature", float.class, dims);
+        ncfile.create();
+        ncfile.write("time", new int[]{0}, ArrayAbstract.factory(seconds));
+        ncfile.write("temperature", new int[]{0}, ArrayAbstract
+            .factory(temperatures));
+        ncfile.close();
+
+        dataContainer = new DataContainer();
+        dataContainer.setName("TestTimeIndexedNetcdfAccess");
+        dataContainer.setDataContainerType(DataContainer.TYPE_FILE);
+        dataContainer.setUriString(netcdfFile.toURI().toURL()
+            .toExternalForm());
+        dataContainer.setDodsAccessible(Boolean.FALSE);
+        RecordDescription recordDescription = new RecordDescription();
+        temperature = new RecordVariable();
+        temperature.setName("temperature");
+        temperature.setColumnIndex(1);
+        recordDescription.addRecordVariable(temperature);
+        dataContainer.setRecordDescription(recordDescription);
+    }
+
+    protected void tearDown() {
+        netcdfFile.delete();
+    }
+
+    public void testWindowBeforeFirstTime() throws Exception {
+        TimeIndexedNetcdfAccess access = createAccess(-3600, -60, 1);
+        assertEquals(0, access.getTimeValues().length);
+        assertNull("No data before the first time", access
+            .getData(temperature));
+
+        // Ending right on the first time picks up just that one
+        access = createAccess(-3600, 0, 1);
+        assertWindow(access, new int[]{0});
+    }
+
+    public void testWindowAfterLastTime() throws Exception {
+        TimeIndexedNetcdfAccess access = createAccess(
+            NUMBER_OF_SAMPLES * 60, NUMBER_OF_SAMPLES * 60 + 3600, 1);
+        assertEquals(0, access.getTimeValues().length);
+        assertNull("No data after the last time", access
+            .getData(temperature));
+
+        // Starting right on the last time picks up just that one
+        access = createAccess((NUMBER_OF_SAMPLES - 1) * 60,
+            NUMBER_OF_SAMPLES * 60 + 3600, 1);
+        assertWindow(access, new int[]{NUMBER_OF_SAMPLES - 1});
+    }
+
+    public void testExactBoundaries() throws Exception {
+        // Both ends are inclusive
+        assertWindow(createAccess(2 * 60, 5 * 60, 1), new int[]{2, 3, 4, 5});
+
+        // Just inside the samples on either side
+        assertWindow(createAccess(2 * 60 + 1, 5 * 60 - 1, 1), new int[]{3,
+            4});
+
+        // A window between two samples is empty
+        assertWindow(createAccess(2 * 60 + 1, 2 * 60 + 59, 1), new int[0]);
+
+        // A window wider than the file has all of it
+        int[] all = new int[NUMBER_OF_SAMPLES];
+        for (int i = 0; i < all.length; i++)
+            all[i] = i;
+        assertWindow(createAccess(-3600, NUMBER_OF_SAMPLES * 60 + 3600, 1),
+            all);
+    }
+
+    public void testStride() throws Exception {
+        assertWindow(createAccess(1 * 60, 8 * 60, 3), new int[]{1, 4, 7});
+
+        // A stride larger than the window returns the first sample
+        assertWindow(createAccess(2 * 60, 5 * 60, 100), new int[]{2});
+
+        // Changing the stride reads the window again
+        TimeIndexedNetcdfAccess access = createAccess(2 * 60, 5 * 60, 100);
+        assertWindow(access, new int[]{2});
+        access.setStride(2);
+        assertWindow(access, new int[]{2, 4});
+    }
+
+    /**
+     * This makes an access over a window given in seconds from the first time
+     */
+    private TimeIndexedNetcdfAccess createAccess(long startSeconds,
+        long endSeconds, int stride) throws Exception {
+        return new TimeIndexedNetcdfAccess(dataContainer, new Date(
+            (FIRST_SECOND + startSeconds) * 1000), new Date(
+            (FIRST_SECOND + endSeconds) * 1000), stride);
+    }
+
+    /**
+     * This checks the times and temperatures are the samples at the indexes
+     */
+    private void assertWindow(TimeIndexedNetcdfAccess access, int[] indexes) {
+        long[] times = access.getTimeValues();
+        assertEquals("Number of times", indexes.length, times.length);
+        Object[] data = access.getData(temperature);
+        if (indexes.length == 0) {
+            assertNull(data);
+            return;
+        }
+        assertEquals("Number of values", indexes.length, data.length);
+        for (int i = 0; i < indexes.length; i++) {
+            assertEquals("Time " + i, (FIRST_SECOND + indexes[i] * 60) * 1000,
+                times[i]);
+            assertEquals("Temperature " + i, new Float(10 + indexes[i]),
+                data[i]);
+        }
+    }
+
+    private static final int NUMBER_OF_SAMPLES = 10;
+
+    private static final long FIRST_SECOND = 1230768000;
+
+    private File netcdfFile = null;
+
+    private DataContainer dataContainer = null;
+
+    private RecordVariable temperature = null;
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.data.converters;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Date;
+
+import junit.framework.TestCase;
+import moos.ssds.data.ITimeIndexedDataAccess;
+import moos.ssds.data.converters.NetcdfConverter;
+import moos.ssds.metadata.DataContainer;
+import moos.ssds.metadata.RecordDescription;
+import moos.ssds.metadata.RecordVariable;
+import moos.ssds.metadata.util.MetadataException;
+import ucar.nc2.NetcdfFile;
+
+/**
+ * This tests appending new records to a NetCDF file that was written by an
+ * earlier run of the <code>NetcdfConverter</code>. The records come from an
+ * <code>ITimeIndexedDataAccess</code> over arrays so no server is needed.
+ */
+public class TestNetcdfConverter extends TestCase {
+
+    public TestNetcdfConverter(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("TestNetcdfConverter", "");
+        directory.delete();
+        directory.mkdirs();
+        File source = new File(directory, "source.dat");
+        source.createNewFile();
+        netcdfFile = new File(directory, "source.nc");
+
+        dataContainer = new DataContainer();
+        dataContainer.setName("TestNetcdfConverter");
+        dataContainer.setDataContainerType(DataContainer.TYPE_STREAM);
+        dataContainer.setUriString(source.toURI().toURL().toExternalForm());
+        RecordDescription recordDescription = new RecordDescription();
+        recordDescription.setParseable(Boolean.TRUE);
+        recordDescription.addRecordVariable(createVariable(1, "time",
+            "double", "seconds since 1970-01-01"));
+        recordDescription.addRecordVariable(createVariable(2, "latitude",
+            "double", "degrees_north"));
+        recordDescription.addRecordVariable(createVariable(3, "temperature",
+            "float", "celsius"));
+        dataContainer.setRecordDescription(recordDescription);
+    }
+
+    protected void tearDown() {
+        File[] files = directory.listFiles();
+        for (int i = 0; (files != null) && (i < files.length); i++)
+            files[i].delete();
+        directory.delete();
+    }
+
+    public void testAppend() throws Exception {
+        // The first run writes five records
+        Converter converter = new Converter(dataContainer, netcdfFile,
+            createAccess(5));
+        converter.setIncremental(true);
+        converter.create();
+        assertTrue("The first run builds the file", !converter.isAppended());
+        assertEquals(new Long(5), converter.getNumberOfRecords());
+        assertTrue("The append state is written", NetcdfConverter
+            .getAppendStateFile(netcdfFile).exists());
+
+        // The second run sees the same five records and three new ones
+        converter = new Converter(dataContainer, netcdfFile, createAccess(8));
+        converter.setIncremental(true);
+        converter.create();
+        assertTrue("The second run appends", converter.isAppended());
+        assertEquals(new Long(8), converter.getNumberOfRecords());
+
+        // The extents cover both runs
+        assertEquals(LATITUDES[0], converter.getMinLatitude().doubleValue(),
+            0.0);
+        assertEquals(LATITUDES[7], converter.getMaxLatitude().doubleValue(),
+            0.0);
+        double sum = 0;
+        for (int i = 0; i < 8; i++)
+            sum += LATITUDES[i];
+        assertEquals(sum / 8, converter.getMeanLatitude().doubleValue(),
+            1.0e-9);
+        assertEquals(new Date(SECONDS[0] * 1000), converter.getDateRange()
+            .getStartDate());
+        assertEquals(new Date(SECONDS[7] * 1000), converter.getDateRange()
+            .getEndDate());
+
+        // The file has each record once and in order across the seam
+        NetcdfFile ncfile = new NetcdfFile(netcdfFile.getAbsolutePath());
+        try {
+            assertEquals(8, ncfile.findDimension("time").getLength());
+            double[] times = read(ncfile, "time");
+            double[] latitudes = read(ncfile, "latitude");
+            double[] temperatures = read(ncfile, "temperature");
+            for (int i = 0; i < 8; i++) {
+                assertEquals("Time " + i, SECONDS[i], times[i], 0.0);
+                assertEquals("Latitude " + i, LATITUDES[i], latitudes[i], 0.0);
+                assertEquals("Temperature " + i, TEMPERATURES[i],
+                    temperatures[i], 1.0e-6);
+            }
+        } finally {
+            ncfile.close();
+        }
+
+        // A run with nothing new leaves the file alone
+        converter = new Converter(dataContainer, netcdfFile, createAccess(8));
+        converter.setIncremental(true);
+        converter.create();
+        assertTrue(converter.isAppended());
+        assertEquals(new Long(8), converter.getNumberOfRecords());
+    }
+
+    public void testChangedRecordDescriptionRebuilds() throws Exception {
+        Converter converter = new Converter(dataContainer, netcdfFile,
+            createAccess(5));
+        converter.setIncremental(true);
+        converter.create();
+
+        ((RecordVariable) dataContainer.getRecordDescription()
+            .getRecordVariables().iterator().next()).setUnits("changed");
+        converter = new Converter(dataContainer, netcdfFile, createAccess(8));
+        converter.setIncremental(true);
+        converter.create();
+        assertTrue("The file has to be rebuilt", !converter.isAppended());
+        assertEquals(new Long(8), converter.getNumberOfRecords());
+        NetcdfFile ncfile = new NetcdfFile(netcdfFile.getAbsolutePath());
+        try {
+            assertEquals(8, ncfile.findDimension("time").getLength());
+        } finally {
+            ncfile.close();
+        }
+    }
+
+    private static double[] read(NetcdfFile ncfile, String name)
+        throws Exception {
+        Object values = ncfile.findVariable(name).read().copyTo1DJavaArray();
+        if (values instanceof double[])
+            return (double[]) values;
+        float[] floats = (float[]) values;
+        double[] doubles = new double[floats.length];
+        for (int i = 0; i < floats.length; i++)
+            doubles[i] = floats[i];
+        return doubles;
+    }
+
+    private static RecordVariable createVariable(long columnIndex,
+        String name, String format, String units) throws MetadataException {
+        RecordVariable recordVariable = new RecordVariable();
+        recordVariable.setColumnIndex(columnIndex);
+        recordVariable.setName(name);
+        recordVariable.setLongName(name);
+        recordVariable.setFormat(format);
+        recordVariable.setUnits(units);
+        return recordVariable;
+    }
+
+    /**
+     * This makes an access over the first records of the test data
+     */
+    private static Access createAccess(int numberOfRecords) {
+        long[] times = new long[numberOfRecords];
+        Double[] seconds = new Double[numberOfRecords];
+        Double[] latitudes = new Double[numberOfRecords];
+        Float[] temperatures = new Float[numberOfRecords];
+        for (int i = 0; i < numberOfRecords; i++) {
+            times[i] = SECONDS[i] * 1000;
+            seconds[i] = new Double(SECONDS[i]);
+            latitudes[i] = new Double(LATITUDES[i]);
+            temperatures[i] = new Float(TEMPERATURES[i]);
+        }
+        return new Access(times, seconds, latitudes, temperatures);
+    }
+
+    /**
+     * The converter with the data access replaced
+     */
+    private static class Converter extends NetcdfConverter {
+
+        Converter(DataContainer dataContainer, File netcdfFile, Access access)
+            throws Exception {
+            super(dataContainer, netcdfFile);
+            this.access = access;
+        }
+
+        protected ITimeIndexedDataAccess createTimeIndexedDataAccess(
+            Date startDate) {
+            return access;
+        }
+
+        private Access access;
+    }
+
+    /**
+     * A simple access over arrays of data (all the records are returned no
+     * matter what the start date is, like a source that has them again)
+     */
+    private static class Access implements ITimeIndexedDataAccess {
+
+        Access(long[] times, Double[] seconds, Double[] latitudes,
+            Float[] temperatures) {
+            this.times = times;
+            this.seconds = seconds;
+            this.latitudes = latitudes;
+            this.temperatures = temperatures;
+        }
+
+        public Object[] getTime() {
+            return null;
+        }
+
+        public long[] getTimeValues() {
+            return (long[]) times.clone();
+        }
+
+        public Object getPrimitiveData(RecordVariable recordVariable) {
+            return null;
+        }
+
+        public double[] getDoubleData(RecordVariable recordVariable) {
+            return null;
+        }
+
+        public Date getStartDate() {
+            return null;
+        }
+
+        public Date getEndDate() {
+            return null;
+        }
+
+        public Object[] getData(String recordVariableName) {
+            if ("time".equals(recordVariableName))
+                return seconds;
+            if ("latitude".equals(recordVariableName))
+                return latitudes;
+            if ("temperature".equals(recordVariableName))
+                return temperatures;
+            return null;
+        }
+
+        public Object[] getData(RecordVariable recordVariable) {
+            return getData(recordVariable.getName());
+        }
+
+        public Collection getRecordVariables() {
+            return null;
+        }
+
+        private long[] times;
+        private Double[] seconds;
+        private Double[] latitudes;
+        private Float[] temperatures;
+    }
+
+    private static final long[] SECONDS = {1230768000, 1230768060,
+        1230768120, 1230768180, 1230768240, 1230768300, 1230768360,
+        1230768420};
+
+    private static final double[] LATITUDES = {36.5, 36.6, 36.7, 36.8, 36.9,
+        37.0, 37.1, 37.2};
+
+    private static final double[] TEMPERATURES = {10.5, 10.6, 10.7, 10.8,
+        10.9, 11.0, 11.1, 11.2};
+
+    private File directory = null;
+
+    private File netcdfFile = null;
+
+    private DataContainer dataContainer = null;
+}
@@ -16,9 +16,12 @@
 package test.moos.ssds.data.parsers;
 
 import java.util.Map;
+import java.util.Random;
 
 import junit.framework.TestCase;
+import moos.ssds.data.parsers.AsciiRecordParsePlan;
 import moos.ssds.data.parsers.AsciiRecordParser;
+import moos.ssds.data.parsers.ParsingException;
 import moos.ssds.metadata.RecordDescription;
 import moos.ssds.metadata.RecordVariable;
 
@@ -334,6 +337,133 @@ public class TestAsciiRecordParser extends TestCase {
 
     }
 
+    /**
+     * This test checks the compiled parse plan against a comma separated
+     * record that is part of a larger array (like an SSDS packet buffer)
+     */
+    public void testParsePlan() throws Exception {
+        RecordDescription rd = new RecordDescription();
+        rd.setBufferStyle(RecordDescription.BUFFER_STYLE_ASCII);
+        rd.setBufferItemSeparator("comma");
+        rd.setParseable(Boolean.TRUE);
+        rd.setRecordType(new Long(1));
+
+        RecordVariable rv1 = new RecordVariable();
+        rv1.setColumnIndex(2);
+        rv1.setFormat("int");
+        rv1.setName("count");
+        rd.addRecordVariable(rv1);
+
+        RecordVariable rv2 = new RecordVariable();
+        rv2.setColumnIndex(1);
+        rv2.setFormat("double");
+        rv2.setName("pressure");
+        rv2.setParseRegExp("P(\\d+\\.\\d+)");
+        rd.addRecordVariable(rv2);
+
+        RecordVariable rv3 = new RecordVariable();
+        rv3.setColumnIndex(3);
+        rv3.setFormat("long");
+        rv3.setName("checksum");
+        rd.addRecordVariable(rv3);
+
+        AsciiRecordParser arp = new AsciiRecordParser(rd);
+        assertEquals("The separator should be used as a literal",
+            AsciiRecordParsePlan.SPLIT_LITERAL, arp.getParsePlan()
+                .getSplitMode());
+
+        // Put the record in the middle of some other bytes
+        byte[] buffer = "HEADER P1017.98, +42, 3649\r\nTRAILER".getBytes();
+        Map recordMap = arp.parse(buffer, 7, 21);
+        assertEquals("The pressure should be equal", 1017.98,
+            ((Double) recordMap.get(rv2)).doubleValue(), 0.001);
+        assertEquals("The count should be equal", new Integer(42), recordMap
+            .get(rv1));
+        assertEquals("The checksum should be equal", new Long(3649),
+            recordMap.get(rv3));
+
+        // Too many values should be rejected
+        try {
+            arp.parse("P1.0,1,2,3".getBytes());
+            fail("A ParsingException should have been thrown");
+        } catch (ParsingException e) {}
+
+        // A decimal in an int column is truncated (with a message)
+        recordMap = arp.parse("P1.0, 7.9, 1".getBytes());
+        assertEquals("The count should be truncated", new Integer(7),
+            recordMap.get(rv1));
+        assertTrue("There should be a parse message", arp.getParseMessages()
+            .length() > 0);
+    }
+
+    /**
+     * This test checks that float and double values come out exactly the
+     * same as <code>Float.parseFloat</code> and
+     * <code>Double.parseDouble</code> would parse them (both for the usual
+     * decimals and the unusual ones that are handed off to those methods)
+     */
+    public void testParseFloatingPoint() throws Exception {
+        RecordDescription rd = new RecordDescription();
+        rd.setBufferStyle(RecordDescription.BUFFER_STYLE_ASCII);
+        rd.setBufferItemSeparator("comma");
+        rd.setParseable(Boolean.TRUE);
+        rd.setRecordType(new Long(1));
+
+        RecordVariable floatVariable = new RecordVariable();
+        floatVariable.setColumnIndex(1);
+        floatVariable.setFormat("float");
+        floatVariable.setName("temperature");
+        rd.addRecordVariable(floatVariable);
+
+        RecordVariable doubleVariable = new RecordVariable();
+        doubleVariable.setColumnIndex(2);
+        doubleVariable.setFormat("double");
+        doubleVariable.setName("latitude");
+        rd.addRecordVariable(doubleVariable);
+
+        AsciiRecordParser arp = new AsciiRecordParser(rd);
+        String[] values = {"0", "-0", "+1", "12.5", "-0.034", "1.", ".5",
+            "36.8351234", "-121.899", "1e5", "1.2E-5", "6.02e+23", "NaN",
+            "-Infinity", "1e400", "1e-400", "1.5f", "0x1p3",
+            "123456789012345", "1234567890123456789", "16777217",
+            "1.00000005960464477", "0.000000000000000000000001"};
+        for (int i = 0; i < values.length; i++)
+            assertParsed(arp, floatVariable, doubleVariable, values[i]);
+
+        // And a lot of random ones
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            StringBuffer value = new StringBuffer();
+            if (random.nextBoolean())
+                value.append('-');
+            int numberOfDigits = 1 + random.nextInt(17);
+            int point = random.nextInt(numberOfDigits + 1);
+            for (int j = 0; j < numberOfDigits; j++) {
+                if (j == point)
+                    value.append('.');
+                value.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextInt(4) == 0)
+                value.append("e" + (random.nextInt(60) - 30));
+            assertParsed(arp, floatVariable, doubleVariable, value.toString());
+        }
+
+        // Things that are not numbers are still missing
+        Map recordMap = arp.parse("1.2.3, -".getBytes());
+        assertNull(recordMap.get(floatVariable));
+        assertNull(recordMap.get(doubleVariable));
+    }
+
+    private void assertParsed(AsciiRecordParser arp,
+        RecordVariable floatVariable, RecordVariable doubleVariable,
+        String value) throws Exception {
+        Map recordMap = arp.parse((value + "," + value).getBytes());
+        assertEquals("Float " + value, new Float(Float.parseFloat(value)),
+            recordMap.get(floatVariable));
+        assertEquals("Double " + value, new Double(Double.parseDouble(value)),
+            recordMap.get(doubleVariable));
+    }
+
     /**
      * The strings to parse
      */
@@ -22,6 +22,8 @@ import java.util.Map;
 
 import junit.framework.TestCase;
 import moos.ssds.data.parsers.BinaryRecordParser;
+import moos.ssds.data.parsers.ColumnarRecordSink;
+import moos.ssds.data.parsers.ParsingException;
 import moos.ssds.metadata.RecordDescription;
 import moos.ssds.metadata.RecordVariable;
 
@@ -256,6 +258,151 @@ public class TestBinaryRecordParser extends TestCase {
         }
     }
 
+    /**
+     * This test checks the layout of a record with a variable that has no
+     * format, parsing from the middle of a larger array (in both byte orders),
+     * parsing into a <code>ColumnarRecordSink</code> and a record that is too
+     * short
+     */
+    public void testParsePlan() throws Exception {
+        RecordDescription rd = new RecordDescription();
+        rd.setBufferStyle(RecordDescription.BUFFER_STYLE_BINARY);
+        rd.setBufferParseType(RecordDescription.PARSE_TYPE_ORDERED_POSITION);
+        rd.setEndian(RecordDescription.ENDIAN_BIG);
+        rd.setParseable(Boolean.TRUE);
+        rd.setRecordType(new Long(1));
+
+        // Add the variables out of order
+        RecordVariable shortVariable = new RecordVariable();
+        shortVariable.setColumnIndex(3);
+        shortVariable.setFormat("short");
+        shortVariable.setName("short_one");
+        rd.addRecordVariable(shortVariable);
+
+        RecordVariable byteVariable = new RecordVariable();
+        byteVariable.setColumnIndex(1);
+        byteVariable.setFormat("byte");
+        byteVariable.setName("byte_one");
+        rd.addRecordVariable(byteVariable);
+
+        // This one has no format so it takes up no bytes
+        RecordVariable noFormatVariable = new RecordVariable();
+        noFormatVariable.setColumnIndex(2);
+        noFormatVariable.setFormat("nothing");
+        noFormatVariable.setName("no_format");
+        rd.addRecordVariable(noFormatVariable);
+
+        RecordVariable doubleVariable = new RecordVariable();
+        doubleVariable.setColumnIndex(4);
+        doubleVariable.setFormat("double");
+        doubleVariable.setName("double_one");
+        rd.addRecordVariable(doubleVariable);
+
+        // Write the record in both byte orders with some bytes around it
+        ByteArrayOutputStream bebyteArray = new ByteArrayOutputStream();
+        ByteArrayOutputStream lebyteArray = new ByteArrayOutputStream();
+        DataOutputStream bedos = new DataOutputStream(bebyteArray);
+        LEDataOutputStream ledos = new LEDataOutputStream(lebyteArray);
+        bedos.writeInt(0);
+        ledos.writeInt(0);
+        bedos.writeByte(-5);
+        ledos.writeByte(-5);
+        bedos.writeShort(-1234);
+        ledos.writeShort(-1234);
+        bedos.writeDouble(12.25);
+        ledos.writeDouble(12.25);
+        bedos.writeInt(0);
+        ledos.writeInt(0);
+        byte[] bebytes = bebyteArray.toByteArray();
+        byte[] lebytes = lebyteArray.toByteArray();
+
+        BinaryRecordParser brp = new BinaryRecordParser(rd);
+        assertEquals("The record should be 11 bytes long", 11, brp
+            .getParsePlan().getRecordLength());
+        Map recordMap = brp.parse(bebytes, 4, 11);
+        assertEquals("There should be three values", 3, recordMap.size());
+        assertEquals("The byte should match", new Byte((byte) -5), recordMap
+            .get(byteVariable));
+        assertEquals("The short should match", new Short((short) -1234),
+            recordMap.get(shortVariable));
+        assertEquals("The double should match", new Double(12.25), recordMap
+            .get(doubleVariable));
+
+        // Changing the endianness should be picked up by the parser
+        rd.setEndian(RecordDescription.ENDIAN_LITTLE);
+        ColumnarRecordSink sink = new ColumnarRecordSink(rd
+            .getRecordVariables());
+        brp.parse(lebytes, 4, 11, sink);
+        sink.commitRecord(1L);
+        assertEquals("The short should match in the sink", -1234, ((int[]) sink
+            .getColumnArray(3))[0]);
+        assertEquals("The double should match in the sink", 12.25, sink
+            .getDoubleColumn(4)[0], 0.0001);
+        assertEquals("The byte should be boxed as a Byte", new Byte((byte) -5),
+            sink.getObjectColumn(1)[0]);
+
+        // A record that is too short can not be parsed
+        try {
+            brp.parse(lebytes, 4, 10);
+            fail("A ParsingException should have been thrown");
+        } catch (ParsingException e) {}
+    }
+
+    /**
+     * This test checks that changing the format or column of a variable
+     * (which changes the layout of the record) makes the parser work the
+     * layout out again
+     */
+    public void testChangedVariablesRebuildPlan() throws Exception {
+        RecordDescription rd = new RecordDescription();
+        rd.setBufferStyle(RecordDescription.BUFFER_STYLE_BINARY);
+        rd.setBufferParseType(RecordDescription.PARSE_TYPE_ORDERED_POSITION);
+        rd.setEndian(RecordDescription.ENDIAN_BIG);
+        rd.setParseable(Boolean.TRUE);
+        rd.setRecordType(new Long(1));
+
+        RecordVariable first = new RecordVariable();
+        first.setColumnIndex(1);
+        first.setFormat("short");
+        first.setName("first");
+        rd.addRecordVariable(first);
+
+        RecordVariable second = new RecordVariable();
+        second.setColumnIndex(2);
+        second.setFormat("int");
+        second.setName("second");
+        rd.addRecordVariable(second);
+
+        ByteArrayOutputStream byteArray = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(byteArray);
+        dos.writeInt(7);
+        dos.writeInt(9);
+        byte[] bytes = byteArray.toByteArray();
+
+        BinaryRecordParser brp = new BinaryRecordParser(rd);
+        assertEquals(6, brp.getParsePlan().getRecordLength());
+        assertTrue(brp.getParsePlan().isCompiledFor(rd));
+
+        // The first variable is now an int, so the record is longer and the
+        // second one starts further along
+        first.setFormat("int");
+        assertTrue("A new format needs a new plan", !brp.getParsePlan()
+            .isCompiledFor(rd));
+        Map recordMap = brp.parse(bytes, 0, 8);
+        assertEquals(8, brp.getParsePlan().getRecordLength());
+        assertEquals(new Integer(7), recordMap.get(first));
+        assertEquals(new Integer(9), recordMap.get(second));
+
+        // Swapping the columns swaps the values
+        first.setColumnIndex(2);
+        second.setColumnIndex(1);
+        assertTrue("New columns need a new plan", !brp.getParsePlan()
+            .isCompiledFor(rd));
+        recordMap = brp.parse(bytes, 0, 8);
+        assertEquals(new Integer(9), recordMap.get(first));
+        assertEquals(new Integer(7), recordMap.get(second));
+    }
+
     /**
      * A log4j logger
      */
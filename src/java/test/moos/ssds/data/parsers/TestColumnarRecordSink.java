@@ -0,0 +1,166 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.data.parsers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import junit.framework.TestCase;
+import moos.ssds.data.parsers.AsciiRecordParser;
+import moos.ssds.data.parsers.ColumnarRecordSink;
+import moos.ssds.data.parsers.ParsingException;
+import moos.ssds.metadata.RecordDescription;
+import moos.ssds.metadata.RecordVariable;
+
+/**
+ * JUnit TestCase.
+ *
+ * @testfamily JUnit
+ * @testkind testcase
+ * @testsetup Default TestCase
+ */
+public class TestColumnarRecordSink extends TestCase {
+
+    /**
+     * Constructs a test case with the given name.
+     */
+    public TestColumnarRecordSink(String name) {
+        super(name);
+    }
+
+    /**
+     * Sets up the record description that is used by the tests
+     */
+    protected void setUp() throws Exception {
+        recordDescription = new RecordDescription();
+        recordDescription.setBufferStyle(RecordDescription.BUFFER_STYLE_ASCII);
+        recordDescription.setBufferItemSeparator(",");
+        recordDescription.setParseable(Boolean.TRUE);
+        recordDescription.setRecordType(new Long(1));
+
+        name = new RecordVariable();
+        name.setColumnIndex(1);
+        name.setFormat("String");
+        name.setName("name");
+        recordDescription.addRecordVariable(name);
+
+        temperature = new RecordVariable();
+        temperature.setColumnIndex(2);
+        temperature.setFormat("double");
+        temperature.setName("temperature");
+        recordDescription.addRecordVariable(temperature);
+
+        count = new RecordVariable();
+        count.setColumnIndex(3);
+        count.setFormat("int");
+        count.setName("count");
+        recordDescription.addRecordVariable(count);
+    }
+
+    /**
+     * This test parses records straight into the sink and checks the columns
+     * that come back out (including missing values, discarded records and
+     * growing past the initial capacity)
+     */
+    public void testParseIntoSink() throws Exception {
+        AsciiRecordParser parser = new AsciiRecordParser(recordDescription);
+        ColumnarRecordSink sink = new ColumnarRecordSink(recordDescription
+            .getRecordVariables(), 16);
+        assertEquals("Temperature should be a double column",
+            ColumnarRecordSink.TYPE_DOUBLE, sink.getColumnType(2));
+        assertEquals("Count should be an int column",
+            ColumnarRecordSink.TYPE_INT, sink.getColumnType(3));
+        assertEquals("Name should be an object column",
+            ColumnarRecordSink.TYPE_OBJECT, sink.getColumnType(1));
+
+        // Add the records in reverse time order
+        for (int i = 99; i >= 0; i--) {
+            String countString = (i == 50) ? "bad" : String.valueOf(i);
+            parser.parse(("CTD," + (i / 10.0) + "," + countString + "\r\n")
+                .getBytes(), sink);
+            sink.commitRecord(i * 1000L);
+        }
+
+        // A record that can not be parsed is discarded
+        try {
+            parser.parse("CTD,1.0,2,3".getBytes(), sink);
+            fail("A ParsingException should have been thrown");
+        } catch (ParsingException e) {
+            sink.discardRecord();
+        }
+        assertEquals("There should be 100 records", 100, sink.size());
+
+        // Now get the columns in time order
+        int[] order = new int[100];
+        for (int i = 0; i < 100; i++)
+            order[i] = 99 - i;
+        long[] times = sink.getTimes(order);
+        double[] temperatures = sink.getDoubleColumn(2, order);
+        int[] counts = (int[]) sink.getColumnArray(3, order);
+        double[] countsAsDoubles = sink.getDoubleColumn(3, order);
+        Object[] names = sink.getObjectColumn(1, order);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("The times should be sorted", i * 1000L, times[i]);
+            assertEquals("The temperature should match", i / 10.0,
+                temperatures[i], 0.0001);
+            assertEquals("The name should match", "CTD", names[i]);
+            if (i == 50) {
+                assertTrue("The bad count should be missing", sink.isMissing(
+                    3, order[i]));
+                assertTrue("The bad count should be NaN", Double
+                    .isNaN(countsAsDoubles[i]));
+            } else {
+                assertEquals("The count should match", i, counts[i]);
+            }
+        }
+        assertEquals("The boxed count should be an Integer", new Integer(7),
+            sink.getObjectColumn(3, order)[7]);
+    }
+
+    /**
+     * This test checks that a sink made for some of the variables ignores the
+     * others and that values that are not set are missing
+     */
+    public void testSubsetOfVariables() {
+        Collection variables = new ArrayList();
+        variables.add(temperature);
+        ColumnarRecordSink sink = new ColumnarRecordSink(variables);
+        assertTrue("There should be no count column", !sink.hasColumn(3));
+
+        sink.setInt(3, 10);
+        sink.setDouble(2, 12.5);
+        assertEquals("The current value should be boxed", new Double(12.5),
+            sink.getCurrentValue(2));
+        sink.commitRecord(1L);
+        sink.setInt(3, 11);
+        sink.commitRecord(2L);
+
+        double[] temperatures = sink.getDoubleColumn(2);
+        assertEquals("The temperature should match", 12.5, temperatures[0],
+            0.0001);
+        assertTrue("The second temperature should be missing", Double
+            .isNaN(temperatures[1]));
+        assertNull("There should be no count data", sink.getColumnArray(3));
+    }
+
+    /**
+     * The objects used by the tests
+     */
+    private RecordDescription recordDescription = null;
+    private RecordVariable name = null;
+    private RecordVariable temperature = null;
+    private RecordVariable count = null;
+}
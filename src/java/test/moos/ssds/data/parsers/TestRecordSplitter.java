@@ -0,0 +1,97 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.data.parsers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import moos.ssds.data.parsers.RecordSplitter;
+
+/**
+ * JUnit TestCase.
+ *
+ * @testfamily JUnit
+ * @testkind testcase
+ * @testsetup Default TestCase
+ */
+public class TestRecordSplitter extends TestCase {
+
+    /**
+     * Constructs a test case with the given name.
+     */
+    public TestRecordSplitter(String name) {
+        super(name);
+    }
+
+    /**
+     * This test uses blocks smaller than the records so the terminators are
+     * split across blocks and the buffer has to grow
+     */
+    public void testMultiByteTerminator() throws IOException {
+        String data = "1,2.5,abc\r\n22,3.5,de\r\n\r\n333,4.5,\rf\r\nlast";
+        List records = split(data, "\r\n", 4);
+        assertEquals("There should be five records", 5, records.size());
+        assertEquals("1,2.5,abc\r\n", records.get(0));
+        assertEquals("22,3.5,de\r\n", records.get(1));
+        assertEquals("\r\n", records.get(2));
+        assertEquals("A lone carriage return is not a terminator",
+            "333,4.5,\rf\r\n", records.get(3));
+        assertEquals("The bytes after the last terminator are a record",
+            "last", records.get(4));
+
+        // Every block size should give the same records
+        for (int blockSize = 1; blockSize < data.length() + 2; blockSize++)
+            assertEquals("Block size " + blockSize, records, split(data,
+                "\r\n", blockSize));
+    }
+
+    /**
+     * This tests a single byte and a longer terminator
+     */
+    public void testOtherTerminators() throws IOException {
+        List records = split("a\nb\n", "\n", 3);
+        assertEquals("There should be two records", 2, records.size());
+        assertEquals("b\n", records.get(1));
+
+        records = split("xx<END>yy<EN<END><END>", "<END>", 2);
+        assertEquals("There should be three records", 3, records.size());
+        assertEquals("xx<END>", records.get(0));
+        assertEquals("yy<EN<END>", records.get(1));
+        assertEquals("<END>", records.get(2));
+
+        assertEquals("An empty stream has no records", 0, split("", "\n", 8)
+            .size());
+    }
+
+    /**
+     * This method splits the data and returns the records as strings
+     */
+    private List split(String data, String terminator, int blockSize)
+        throws IOException {
+        RecordSplitter splitter = new RecordSplitter(new ByteArrayInputStream(
+            data.getBytes()), terminator.getBytes(), blockSize);
+        List records = new ArrayList();
+        while (splitter.nextRecord()) {
+            records.add(new String(splitter.getBuffer(), splitter
+                .getRecordOffset(), splitter.getRecordLength()));
+        }
+        assertTrue("The end should stay the end", !splitter.nextRecord());
+        return records;
+    }
+}
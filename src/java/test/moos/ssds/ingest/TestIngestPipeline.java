@@ -0,0 +1,126 @@
+package test.moos.ssds.ingest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import moos.ssds.ingest.IngestPacket;
+import moos.ssds.ingest.IngestPipeline;
+
+public class TestIngestPipeline extends TestCase {
+
+	public TestIngestPipeline(String name) {
+		super(name);
+	}
+
+	/**
+	 * A stage that records the order the packets of each device went through
+	 * it (and can be made slow)
+	 */
+	private static class RecordingStage implements IngestPipeline.Stage {
+		private Map<Long, List<Long>> sequences = new HashMap<Long, List<Long>>();
+		private List<Long> flushedDevices = Collections
+				.synchronizedList(new ArrayList<Long>());
+		private long sleepMillis = 0;
+		private boolean closed = false;
+
+		RecordingStage(long sleepMillis) {
+			this.sleepMillis = sleepMillis;
+		}
+
+		public void process(IngestPacket packet) throws Exception {
+			if (sleepMillis > 0)
+				Thread.sleep(sleepMillis);
+			synchronized (sequences) {
+				Long deviceID = new Long(packet.getDeviceID());
+				List<Long> sequence = sequences.get(deviceID);
+				if (sequence == null) {
+					sequence = new ArrayList<Long>();
+					sequences.put(deviceID, sequence);
+				}
+				sequence.add(new Long(packet.getPacketSubType()));
+			}
+		}
+
+		public void flush(long deviceID) {
+			flushedDevices.add(new Long(deviceID));
+		}
+
+		public void close() {
+			closed = true;
+		}
+
+		List<Long> getSequence(long deviceID) {
+			synchronized (sequences) {
+				return sequences.get(new Long(deviceID));
+			}
+		}
+	}
+
+	public void testOrderPerDevice() throws Exception {
+		RecordingStage storage = new RecordingStage(0);
+		RecordingStage republish = new RecordingStage(0);
+		IngestPipeline pipeline = new IngestPipeline(3, 10, storage, republish);
+
+		// Interleave the packets of 5 devices, every tenth one is metadata
+		for (int i = 0; i < 200; i++) {
+			for (long deviceID = 100; deviceID < 105; deviceID++) {
+				int packetType = (i % 10 == 0) ? IngestPacket.METADATA_PACKET_TYPE
+						: 0;
+				pipeline.submit(new IngestPacket(deviceID, 1, packetType, i,
+						1, new byte[0]));
+			}
+		}
+		pipeline.shutdown(10000);
+
+		assertEquals("All the packets should be submitted", 1000, pipeline
+				.getSubmittedCount());
+		assertEquals("All the packets should be stored", 1000, pipeline
+				.getStoredCount());
+		for (long deviceID = 100; deviceID < 105; deviceID++) {
+			List<Long> sequence = storage.getSequence(deviceID);
+			assertEquals("All the packets of the device should be stored",
+					200, sequence.size());
+			for (int i = 0; i < 200; i++)
+				assertEquals("The packets should be stored in order", i,
+						sequence.get(i).longValue());
+			List<Long> republished = republish.getSequence(deviceID);
+			assertEquals("Only metadata packets should be republished", 20,
+					republished.size());
+			for (int i = 0; i < 20; i++)
+				assertEquals("The packets should be republished in order",
+						i * 10, republished.get(i).longValue());
+			assertTrue("The device should have been flushed",
+					storage.flushedDevices.contains(new Long(deviceID)));
+		}
+		assertTrue("The storage stage should be closed", storage.closed);
+		assertTrue("The republish stage should be closed", republish.closed);
+	}
+
+	public void testBackPressure() throws Exception {
+		RecordingStage storage = new RecordingStage(5);
+		IngestPipeline pipeline = new IngestPipeline(2, 2, storage, null);
+		assertEquals("Devices should be partitioned by ID", pipeline
+				.getPartitionIndex(7), pipeline.getPartitionIndex(9));
+
+		// A burst from one device fills its queue
+		for (int i = 0; i < 20; i++)
+			pipeline.submit(new IngestPacket(7, 1, 0, i, 1, new byte[0]));
+		assertTrue("The full queue should have been reported", pipeline
+				.getBackPressureCount() > 0);
+		assertTrue("The queue should never hold more than its capacity",
+				pipeline.getQueueDepth(pipeline.getPartitionIndex(7)) <= 2);
+		pipeline.shutdown(10000);
+
+		assertEquals("All the packets should be stored", 20, storage
+				.getSequence(7).size());
+		try {
+			pipeline.submit(new IngestPacket(7, 1, 0, 21, 1, new byte[0]));
+			fail("A shut down pipeline should not take packets");
+		} catch (IllegalStateException e) {
+		}
+	}
+}
@@ -306,4 +306,60 @@ public class PacketSQLQueryFactoryTest extends TestCase {
 				supposedToBe, selectQuery);
 
 	}
+
+	public void testKeysetOrderingAndStart() {
+		// Create the factory class
+		PacketSQLQueryFactory packetSQLQueryFactory = new PacketSQLQueryFactory(
+				new Long(100));
+
+		// Add some parameters (without the keys)
+		packetSQLQueryFactory
+				.addSelectParameter(PacketSQLQueryFactory.SSDS_PACKET_VERSION);
+		packetSQLQueryFactory
+				.addSelectParameter(PacketSQLQueryFactory.BUFFER_BYTES);
+
+		// Turn on keyset ordering and resume after a row
+		packetSQLQueryFactory.setKeysetOrdering(true);
+		packetSQLQueryFactory.setStartPacketSubType(1);
+		packetSQLQueryFactory.setKeysetStart(new long[] { 1000, 500, 10, 0,
+				1, 20, 3 });
+
+		String selectQuery = packetSQLQueryFactory.getQueryStatement();
+
+		// The whole primary key should be selected, used in the WHERE and the
+		// ORDER BY (sequenceNumber is not unique and can be null, so it is
+		// not part of it)
+		assertEquals("The keyset SELECT statement should be correct",
+				"SELECT " + PacketSQLQueryFactory.SSDS_PACKET_VERSION + ", "
+						+ PacketSQLQueryFactory.BUFFER_BYTES
+						+ ", timestampSeconds, timestampNanoseconds, parentID, "
+						+ "packetType, packetSubType, dataDescriptionID, "
+						+ "dataDescriptionVersion FROM " + sqlTableDelimiter
+						+ "100" + sqlTableDelimiter + " WHERE "
+						+ PacketSQLQueryFactory.PACKET_SUB_TYPE
+						+ " = 1 AND (timestampSeconds > 1000 OR "
+						+ "(timestampSeconds = 1000 AND "
+						+ "(timestampNanoseconds > 500 OR "
+						+ "(timestampNanoseconds = 500 AND "
+						+ "(parentID > 10 OR (parentID = 10 AND "
+						+ "(packetType > 0 OR (packetType = 0 AND "
+						+ "(packetSubType > 1 OR (packetSubType = 1 AND "
+						+ "(dataDescriptionID > 20 OR (dataDescriptionID = 20 AND "
+						+ "dataDescriptionVersion > 3)))))))))))) ORDER BY "
+						+ "timestampSeconds ASC, timestampNanoseconds ASC, "
+						+ "parentID ASC, packetType ASC, packetSubType ASC, "
+						+ "dataDescriptionID ASC, dataDescriptionVersion ASC",
+				selectQuery);
+		assertTrue("Sequence numbers should not be compared",
+				selectQuery.indexOf("sequenceNumber") < 0);
+
+		// The returned fields should not include the added keys
+		assertEquals("Only the requested fields should be returned", 2,
+				packetSQLQueryFactory.listReturnFields().length);
+
+		// Clearing the start should drop the keyset predicate
+		packetSQLQueryFactory.clearKeysetStart();
+		assertTrue("The keyset predicate should be gone", packetSQLQueryFactory
+				.getQueryStatement().indexOf("timestampSeconds >") < 0);
+	}
 }
@@ -0,0 +1,104 @@
+package test.moos.ssds.io;
+
+import java.util.Date;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+import moos.ssds.io.DataStreamStatistics;
+
+public class TestDataStreamStatistics extends TestCase {
+
+	public TestDataStreamStatistics(String name) {
+		super(name);
+	}
+
+	public void testInOrderStream() {
+		long now = 2000000000000L;
+		long start = 1000000000000L;
+		DataStreamStatistics statistics = new DataStreamStatistics(101, 1,
+				60000);
+
+		// One sample every 10 seconds with a 5 minute hole after the fifth
+		long time = start;
+		for (int i = 0; i < 10; i++) {
+			statistics.addTimestamp(time, now);
+			time += (i == 4) ? 300000 : 10000;
+		}
+		// A packet from the future is only counted
+		statistics.addTimestamp(now + 3600000, now);
+
+		assertEquals("All packets should be counted", 11, statistics
+				.getNumberOfRecords());
+		assertEquals("The latest should not be from the future", start
+				+ 8 * 10000 + 300000, statistics.getLatestTimestampMillis());
+		assertEquals("There should be 9 intervals", 9, statistics
+				.getNumberOfIntervals());
+		assertEquals("The average interval should match",
+				(8 * 10000 + 300000) / 9, statistics
+						.getAverageSampleIntervalMillis());
+		assertEquals("There should be one gap", 1, statistics
+				.getNumberOfGaps());
+		assertTrue("The gap index should answer for 2 minute gaps",
+				statistics.isGapIndexedFor(120000));
+		assertTrue("The gap index should not answer for 10 second gaps",
+				!statistics.isGapIndexedFor(10000));
+
+		TreeMap<Date, Date> gaps = statistics.getGaps(0, now, 120000);
+		assertEquals("The gap should be found", 1, gaps.size());
+		Date gapStart = gaps.firstKey();
+		assertEquals("The gap should start after the fifth sample", start
+				+ 4 * 10000, gapStart.getTime());
+		assertEquals("The gap should end at the sixth sample", start + 4
+				* 10000 + 300000, gaps.get(gapStart).getTime());
+		assertEquals("The gap is not larger than 10 minutes", 0, statistics
+				.getGaps(0, now, 600000).size());
+		assertEquals("The gap is not inside the window", 0, statistics
+				.getGaps(start + 50000, now, 120000).size());
+
+		// Everything so far is a change to persist
+		assertTrue("The statistics should be dirty", statistics.isDirty());
+		assertEquals("The gap should be an added change", 1, statistics
+				.getAddedGaps().size());
+		statistics.markPersisted();
+		assertTrue("The statistics should be clean", !statistics.isDirty());
+		assertEquals("There should be no changes", 0, statistics
+				.getAddedGaps().size());
+	}
+
+	public void testLatePacketSplitsGap() {
+		long now = 2000000000000L;
+		long start = 1000000000000L;
+		DataStreamStatistics statistics = new DataStreamStatistics(101,
+				DataStreamStatistics.ALL_RECORD_TYPES, 60000);
+		statistics.addTimestamp(start, now);
+		statistics.addTimestamp(start + 600000, now);
+		statistics.markPersisted();
+
+		// A late packet in the middle of the gap splits it in two
+		statistics.addTimestamp(start + 300000, now);
+		assertEquals("There should be two gaps", 2, statistics
+				.getNumberOfGaps());
+		assertEquals("The old gap should be removed", 1, statistics
+				.getRemovedGapStarts().size());
+		assertEquals("The two halves should be added", 2, statistics
+				.getAddedGaps().size());
+		assertEquals("The average interval should be halved", 300000,
+				statistics.getAverageSampleIntervalMillis());
+
+		// A late packet close to the end leaves only the first part a gap
+		statistics.addTimestamp(start + 590000, now);
+		TreeMap<Date, Date> gaps = statistics.getGaps(0, now, 60000);
+		assertEquals("There should be two gaps", 2, gaps.size());
+		assertEquals("The second gap should end at the late packet", start
+				+ 590000, gaps.get(new Date(start + 300000)).getTime());
+
+		// A packet from before the start extends the stream back
+		statistics.addTimestamp(start - 120000, now);
+		assertEquals("The first timestamp should move back", start - 120000,
+				statistics.getFirstTimestampMillis());
+		assertEquals("There should be a gap at the start", 3, statistics
+				.getNumberOfGaps());
+		assertEquals("All packets should be counted", 5, statistics
+				.getNumberOfRecords());
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import moos.ssds.io.PacketIndex;
+import moos.ssds.io.PacketInput;
+import moos.ssds.io.PacketOutput;
+import moos.ssds.io.SSDSDevicePacket;
+import moos.ssds.io.util.PacketUtility;
+import moos.ssds.util.DateUtils;
+
+/**
+ * This tests the index that <code>PacketOutput</code> keeps next to the packet
+ * files and seeking with it in <code>PacketInput</code>.
+ */
+public class TestPacketIndex extends TestCase {
+
+	/**
+	 * The time of the first packet and the time between packets
+	 */
+	private static final long START_MILLIS = 1230768000000L;
+	private static final long STEP_MILLIS = 1500;
+
+	public TestPacketIndex(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		packetFile = File.createTempFile("101_0_1_100_", ".packets");
+		packetFile.delete();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		packetFile.delete();
+		PacketIndex.getIndexFile(packetFile).delete();
+	}
+
+	public void testSeekToTimeAndSequence() throws IOException {
+		PacketOutput packetOutput = new PacketOutput(packetFile);
+		packetOutput.setIndexPacketInterval(10);
+		for (int i = 0; i < 250; i++)
+			writePacket(packetOutput, START_MILLIS + i * STEP_MILLIS, i);
+
+		// One entry for the first packet and one every ten after that
+		File indexFile = PacketIndex.getIndexFile(packetFile);
+		assertEquals("Index entries", 25, indexFile.length()
+				/ PacketIndex.ENTRY_LENGTH);
+
+		PacketInput packetInput = new PacketInput(packetFile);
+		long target = START_MILLIS + 137 * STEP_MILLIS;
+		assertTrue("Should find the time", packetInput.seekToTime(target));
+		assertTrue("Seek should skip most of the file", packetInput
+				.getBytesReadSoFar() > packetFile.length() / 2);
+		SSDSDevicePacket packet = (SSDSDevicePacket) packetInput.nextElement();
+		assertEquals("Sequence at the time", 137, packet.sequenceNo());
+		assertEquals("Time", target, packet.systemTime());
+
+		// A time between packets goes to the next one
+		assertTrue(packetInput.seekToTime(target + 1));
+		packet = (SSDSDevicePacket) packetInput.nextElement();
+		assertEquals("Next packet after the time", 138, packet.sequenceNo());
+
+		// Before the first packet and after the last
+		assertTrue(packetInput.seekToTime(0));
+		packet = (SSDSDevicePacket) packetInput.nextElement();
+		assertEquals("First packet", 0, packet.sequenceNo());
+		assertTrue("Nothing after the last packet", !packetInput
+				.seekToTime(START_MILLIS + 250 * STEP_MILLIS));
+		assertTrue("Should be at the end", !packetInput.hasMoreElements());
+
+		// Sequence numbers
+		assertTrue(packetInput.seekToSequence(241));
+		int count = 0;
+		while (packetInput.hasMoreElements()) {
+			packet = (SSDSDevicePacket) packetInput.nextElement();
+			assertEquals("Reading on from the sequence", 241 + count, packet
+					.sequenceNo());
+			count++;
+		}
+		assertEquals("Packets after the sequence", 9, count);
+		packetInput.close();
+	}
+
+	public void testLatePacketsAreNotSkipped() throws IOException {
+		PacketOutput packetOutput = new PacketOutput(packetFile);
+		packetOutput.setIndexPacketInterval(5);
+		for (int i = 0; i < 100; i++)
+			writePacket(packetOutput, START_MILLIS + i * STEP_MILLIS, i);
+		// A packet that shows up late
+		writePacket(packetOutput, START_MILLIS + 10 * STEP_MILLIS, 1000);
+		for (int i = 100; i < 110; i++)
+			writePacket(packetOutput, START_MILLIS + i * STEP_MILLIS, i);
+
+		PacketInput packetInput = new PacketInput(packetFile);
+		assertTrue(packetInput.seekToTime(START_MILLIS + 10 * STEP_MILLIS));
+		SSDSDevicePacket packet = (SSDSDevicePacket) packetInput.nextElement();
+		assertEquals("First packet in the file at the time", 10, packet
+				.sequenceNo());
+		assertTrue(packetInput.seekToSequence(1000));
+		packet = (SSDSDevicePacket) packetInput.nextElement();
+		assertEquals("The late packet", START_MILLIS + 10 * STEP_MILLIS,
+				packet.systemTime());
+		packetInput.close();
+	}
+
+	public void testMissingIndexIsRebuilt() throws IOException {
+		PacketOutput packetOutput = new PacketOutput(packetFile);
+		packetOutput.setIndexPacketInterval(0);
+		for (int i = 0; i < 50; i++)
+			writePacket(packetOutput, START_MILLIS + i * STEP_MILLIS, i);
+		File indexFile = PacketIndex.getIndexFile(packetFile);
+		assertTrue("No index should be written", !indexFile.exists());
+
+		// Without an index, seeking reads from the start
+		PacketInput packetInput = new PacketInput(packetFile);
+		assertTrue(packetInput.seekToSequence(42));
+		assertEquals(42, ((SSDSDevicePacket) packetInput.nextElement())
+				.sequenceNo());
+
+		// Turning the index on indexes the packets already in the file
+		packetOutput = new PacketOutput(packetFile);
+		packetOutput.setIndexPacketInterval(10);
+		packetOutput.setIndexTimeIntervalMillis(0);
+		writePacket(packetOutput, START_MILLIS + 50 * STEP_MILLIS, 50);
+		assertEquals("Index entries", 6, indexFile.length()
+				/ PacketIndex.ENTRY_LENGTH);
+
+		// And a new output picks up where the index left off
+		packetOutput = new PacketOutput(packetFile);
+		packetOutput.setIndexPacketInterval(10);
+		packetOutput.setIndexTimeIntervalMillis(0);
+		for (int i = 51; i < 75; i++)
+			writePacket(packetOutput, START_MILLIS + i * STEP_MILLIS, i);
+		assertEquals("Index entries", 8, indexFile.length()
+				/ PacketIndex.ENTRY_LENGTH);
+
+		assertTrue(packetInput.seekToTime(START_MILLIS + 71 * STEP_MILLIS));
+		assertEquals(71, ((SSDSDevicePacket) packetInput.nextElement())
+				.sequenceNo());
+		packetInput.close();
+	}
+
+	public void testAppendingToExistingFile() throws IOException {
+		PacketOutput packetOutput = new PacketOutput(packetFile);
+		packetOutput.setIndexPacketInterval(10);
+		packetOutput.setIndexTimeIntervalMillis(0);
+		for (int i = 0; i < 25; i++)
+			writePacket(packetOutput, START_MILLIS + i * STEP_MILLIS, i);
+		packetOutput.close();
+		long firstLength = packetFile.length();
+
+		// A new output on the same file has to index from the end of it
+		packetOutput = new PacketOutput(packetFile);
+		packetOutput.setIndexPacketInterval(10);
+		packetOutput.setIndexTimeIntervalMillis(0);
+		for (int i = 25; i < 60; i++)
+			writePacket(packetOutput, START_MILLIS + i * STEP_MILLIS, i);
+		packetOutput.close();
+		assertEquals("Index entries", 6, PacketIndex.getIndexFile(packetFile)
+				.length()
+				/ PacketIndex.ENTRY_LENGTH);
+
+		// Every packet written by the second output can be found
+		PacketInput packetInput = new PacketInput(packetFile);
+		for (int i = 25; i < 60; i++) {
+			assertTrue("Should find sequence " + i, packetInput
+					.seekToSequence(i));
+			assertEquals(i, ((SSDSDevicePacket) packetInput.nextElement())
+					.sequenceNo());
+		}
+		assertTrue(packetInput.seekToTime(START_MILLIS + 55 * STEP_MILLIS));
+		assertTrue("The seek should start after the first output's packets",
+				packetInput.getBytesReadSoFar() > firstLength);
+		assertEquals(55, ((SSDSDevicePacket) packetInput.nextElement())
+				.sequenceNo());
+		packetInput.close();
+	}
+
+	private void writePacket(PacketOutput packetOutput, long epochMillis,
+			long sequenceNumber) throws IOException {
+		packetOutput.writeBytes(PacketUtility.createVersion3SSDSByteArray(101,
+				100, 0, 1, 0, 0, DateUtils
+						.getEpochTimestampSecondsFromEpochMillis(epochMillis),
+				DateUtils.getNanosecondsFromEpochMillis(epochMillis),
+				sequenceNumber, ("Record " + sequenceNumber).getBytes(),
+				new byte[0]));
+	}
+
+	private File packetFile = null;
+}
@@ -0,0 +1,279 @@
+package test.moos.ssds.io;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+import moos.ssds.io.DataStreamStatistics;
+import moos.ssds.io.DataStreamStatisticsStore;
+import moos.ssds.io.PacketSQLOutput;
+import moos.ssds.io.util.PacketUtility;
+
+/**
+ * This tests the batched writes of the <code>PacketSQLOutput</code> against a
+ * fake <code>DataSource</code> that remembers the sequence numbers of the rows
+ * that were committed and rejects one of them as a duplicate.
+ */
+public class TestPacketSQLOutput extends TestCase {
+
+	public TestPacketSQLOutput(String name) {
+		super(name);
+	}
+
+	public void testBatchIsCommittedTogether() throws SQLException {
+		FakeDatabase database = new FakeDatabase(-1);
+		PacketSQLOutput output = new PacketSQLOutput(database.getDataSource(),
+				"`");
+		output.setBatchSize(5);
+		for (int i = 0; i < 4; i++)
+			output.writeBytes(createPacket(i));
+		assertEquals("Nothing is written until the batch is full", 0,
+				database.committed.size());
+		output.writeBytes(createPacket(4));
+		assertEquals(5, database.committed.size());
+		assertEquals("One connection for the batch", 1,
+				database.connectionsOpened);
+		assertEquals("The connection is given back", 0,
+				database.connectionsOpen);
+		output.shutdown();
+	}
+
+	public void testFailedBatchIsReplayed() throws SQLException {
+		// Sequence number 2 is already in the table
+		FakeDatabase database = new FakeDatabase(2);
+		PacketSQLOutput output = new PacketSQLOutput(database.getDataSource(),
+				"`");
+		output.setBatchSize(5);
+		for (int i = 0; i < 5; i++)
+			output.writeBytes(createPacket(i));
+		assertEquals("The batch should have been rolled back", 1,
+				database.rollbacks);
+		assertEquals("All but the duplicate should be written", 4,
+				database.committed.size());
+		assertTrue(!database.committed.contains(new Long(2)));
+		assertTrue(database.committed.contains(new Long(4)));
+		assertEquals("The connection is given back", 0,
+				database.connectionsOpen);
+
+		// A short batch is written by flush
+		output.writeBytes(createPacket(5));
+		output.flush();
+		assertEquals(5, database.committed.size());
+		output.shutdown();
+	}
+
+	public void testStatisticsOfBatch() throws SQLException {
+		FakeDatabase database = new FakeDatabase(-1);
+		PacketSQLOutput output = new PacketSQLOutput(database.getDataSource(),
+				"`");
+		DataStreamStatisticsStore statisticsStore = new DataStreamStatisticsStore(
+				"`", 0);
+		output.setStatisticsStore(statisticsStore);
+		output.setBatchSize(5);
+		for (int i = 0; i < 5; i++)
+			output.writeBytes(createPacket(i));
+		assertEquals(5, database.committed.size());
+		assertEquals("Each packet is counted once", 5, statisticsStore
+				.getStatistics(101, DataStreamStatistics.ALL_RECORD_TYPES)
+				.getNumberOfRecords());
+		output.shutdown();
+
+		// A new store builds the statistics from the rows already in the
+		// table, before the next batch is committed
+		output = new PacketSQLOutput(database.getDataSource(), "`");
+		statisticsStore = new DataStreamStatisticsStore("`", 0);
+		output.setStatisticsStore(statisticsStore);
+		output.setBatchSize(5);
+		for (int i = 5; i < 8; i++)
+			output.writeBytes(createPacket(i));
+		output.flush();
+		assertEquals(8, database.committed.size());
+		DataStreamStatistics statistics = statisticsStore.getStatistics(101,
+				DataStreamStatistics.ALL_RECORD_TYPES);
+		assertEquals(8, statistics.getNumberOfRecords());
+		assertEquals((1234567890L + 7) * 1000, statistics
+				.getLatestTimestampMillis());
+		output.shutdown();
+	}
+
+	public void testIdleDevicesAreDropped() throws Exception {
+		FakeDatabase database = new FakeDatabase(-1);
+		PacketSQLOutput output = new PacketSQLOutput(database.getDataSource(),
+				"`");
+		DataStreamStatisticsStore statisticsStore = new DataStreamStatisticsStore(
+				"`", 0, 50);
+		output.setStatisticsStore(statisticsStore);
+		output.writeBytes(createPacket(101, 0));
+		output.writeBytes(createPacket(102, 1));
+		assertEquals(2, statisticsStore.getNumberOfLoadedDevices());
+
+		// Only the device that has a packet after the idle time is kept
+		Thread.sleep(100);
+		output.writeBytes(createPacket(102, 2));
+		assertEquals(1, statisticsStore.getNumberOfLoadedDevices());
+		assertNull(statisticsStore.getStatistics(101,
+				DataStreamStatistics.ALL_RECORD_TYPES));
+		assertNotNull(statisticsStore.getStatistics(102,
+				DataStreamStatistics.ALL_RECORD_TYPES));
+
+		// And the dropped one is loaded again with its next packet
+		output.writeBytes(createPacket(101, 3));
+		assertEquals(2, statisticsStore.getNumberOfLoadedDevices());
+		output.shutdown();
+	}
+
+	private static byte[] createPacket(long sequenceNumber) {
+		return createPacket(101, sequenceNumber);
+	}
+
+	private static byte[] createPacket(long deviceID, long sequenceNumber) {
+		return PacketUtility.createVersion3SSDSByteArray(deviceID, 100, 0, 1,
+				0, 0, 1234567890 + sequenceNumber, 0, sequenceNumber, ("Row "
+						+ sequenceNumber).getBytes(), new byte[0]);
+	}
+
+	/**
+	 * This fakes just enough of JDBC to record the rows (by sequence number)
+	 * that get committed. The device table is there once a row has been
+	 * committed and querying it returns the committed rows (the statistics
+	 * tables are always empty).
+	 */
+	private static class FakeDatabase implements InvocationHandler {
+
+		FakeDatabase(long duplicateSequenceNumber) {
+			this.duplicateSequenceNumber = duplicateSequenceNumber;
+		}
+
+		DataSource getDataSource() {
+			return (DataSource) Proxy.newProxyInstance(getClass()
+					.getClassLoader(), new Class[] { DataSource.class }, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			String name = method.getName();
+			if (proxy instanceof DataSource) {
+				if (name.equals("getConnection")) {
+					connectionsOpened++;
+					connectionsOpen++;
+					autoCommit = true;
+					return Proxy.newProxyInstance(getClass().getClassLoader(),
+							new Class[] { Connection.class }, this);
+				}
+			} else if (proxy instanceof Connection) {
+				if (name.equals("setAutoCommit")) {
+					autoCommit = ((Boolean) args[0]).booleanValue();
+				} else if (name.equals("commit")) {
+					committed.addAll(uncommitted);
+					uncommitted.clear();
+				} else if (name.equals("rollback")) {
+					rollbacks++;
+					uncommitted.clear();
+				} else if (name.equals("close")) {
+					connectionsOpen--;
+				} else if (name.equals("prepareStatement")) {
+					return Proxy.newProxyInstance(getClass().getClassLoader(),
+							new Class[] { PreparedStatement.class }, this);
+				} else if (name.equals("createStatement")) {
+					return Proxy.newProxyInstance(getClass().getClassLoader(),
+							new Class[] { Statement.class }, this);
+				} else if (name.equals("getMetaData")) {
+					return Proxy.newProxyInstance(getClass().getClassLoader(),
+							new Class[] { DatabaseMetaData.class }, this);
+				}
+			} else if (proxy instanceof DatabaseMetaData) {
+				if (name.equals("getTables")) {
+					List<long[]> tables = new ArrayList<long[]>();
+					if (args[2].equals("101") && !committed.isEmpty())
+						tables.add(new long[0]);
+					return createResultSet(tables);
+				}
+			} else if (proxy instanceof PreparedStatement) {
+				if (name.equals("setLong")
+						&& (((Integer) args[0]).intValue() == 9)) {
+					sequenceNumber = (Long) args[1];
+				} else if (name.equals("addBatch")) {
+					batch.add(sequenceNumber);
+				} else if (name.equals("executeBatch")) {
+					List<Long> rows = new ArrayList<Long>(batch);
+					batch.clear();
+					for (int i = 0; i < rows.size(); i++)
+						insert(rows.get(i));
+					return new int[rows.size()];
+				} else if (name.equals("execute")) {
+					insert(sequenceNumber);
+					if (autoCommit) {
+						committed.addAll(uncommitted);
+						uncommitted.clear();
+					}
+					return Boolean.FALSE;
+				} else if (name.equals("executeQuery")) {
+					return createResultSet(new ArrayList<long[]>());
+				}
+			} else if (proxy instanceof Statement) {
+				if (name.equals("executeQuery")) {
+					// The packetSubType, timestampSeconds and
+					// timestampNanoseconds of the committed rows
+					List<long[]> rows = new ArrayList<long[]>();
+					for (int i = 0; i < committed.size(); i++)
+						rows.add(new long[] { 1,
+								1234567890 + committed.get(i).longValue(), 0 });
+					return createResultSet(rows);
+				}
+			}
+			if (method.getReturnType() == Boolean.TYPE)
+				return Boolean.FALSE;
+			if (method.getReturnType() == Integer.TYPE)
+				return new Integer(0);
+			return null;
+		}
+
+		/**
+		 * This returns a <code>ResultSet</code> over rows of longs
+		 */
+		private ResultSet createResultSet(final List<long[]> rows) {
+			return (ResultSet) Proxy.newProxyInstance(getClass()
+					.getClassLoader(), new Class[] { ResultSet.class },
+					new InvocationHandler() {
+						private int row = -1;
+
+						public Object invoke(Object proxy, Method method,
+								Object[] args) {
+							if (method.getName().equals("next"))
+								return Boolean.valueOf(++row < rows.size());
+							if (method.getName().equals("getLong"))
+								return new Long(rows.get(row)[((Integer) args[0])
+										.intValue() - 1]);
+							return null;
+						}
+					});
+		}
+
+		private void insert(Long row) throws SQLException {
+			if (row.longValue() == duplicateSequenceNumber)
+				throw new SQLException("Duplicate entry " + row);
+			uncommitted.add(row);
+		}
+
+		private long duplicateSequenceNumber;
+		private boolean autoCommit = true;
+		private Long sequenceNumber = null;
+		private List<Long> batch = new ArrayList<Long>();
+		private List<Long> uncommitted = new ArrayList<Long>();
+		List<Long> committed = new ArrayList<Long>();
+		int rollbacks = 0;
+		int connectionsOpened = 0;
+		int connectionsOpen = 0;
+	}
+}
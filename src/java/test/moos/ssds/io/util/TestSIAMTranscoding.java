@@ -0,0 +1,96 @@
+package test.moos.ssds.io.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import moos.ssds.io.util.PacketUtility;
+
+import org.mbari.siam.distributed.Exportable;
+
+/**
+ * This checks that transcoding a SIAM byte array straight to the SSDS format
+ * gives the same bytes as the stream conversion. It does not need JMS or a
+ * server.
+ */
+public class TestSIAMTranscoding extends TestCase {
+
+	public TestSIAMTranscoding(String name) {
+		super(name);
+	}
+
+	public void testSameAsStreamConversion() {
+		long timestamp = 1230768000123L;
+		byte[][] siamByteArrays = {
+				// Metadata (the buffers get swapped and the sub type is 0)
+				PacketUtility.createSIAMFormatByteArray(
+						Exportable.EX_METADATAPACKET, 0L, 101, timestamp, 1,
+						7L, 100, 0, Exportable.EX_METADATAPACKET, 0L,
+						"Test MetadataPacket cause.".getBytes(),
+						"Test MetadataPacket bytes.".getBytes()),
+				// Sensor data with only one buffer
+				PacketUtility.createSIAMFormatByteArray(
+						Exportable.EX_SENSORDATAPACKET, 0L, 101,
+						timestamp + 1000, 4, 7L, 100, 1,
+						Exportable.EX_SENSORDATAPACKET, 0L,
+						"Test SensorDataPacket Buffer".getBytes(), null),
+				// A device message with no buffers at all
+				PacketUtility.createSIAMFormatByteArray(
+						Exportable.EX_DEVICEMESSAGEPACKET, 0L, 101,
+						timestamp + 2000, 2, 7L, 100, 2,
+						Exportable.EX_DEVICEMESSAGEPACKET, 0L, null, null),
+				// A stream ID that is not known is data
+				PacketUtility.createSIAMFormatByteArray((short) 99, 0L, 101,
+						timestamp + 3000, 5, 7L, 100, 3, (short) 99, 0L,
+						"one".getBytes(), "two".getBytes()) };
+		for (int i = 0; i < siamByteArrays.length; i++) {
+			byte[] expected = convert(siamByteArrays[i]);
+			assertTrue("SIAM byte array " + i
+					+ " should be transcoded the same way", Arrays.equals(
+					expected, transcode(siamByteArrays[i])));
+
+			// Without the second buffer length (read as an empty buffer)
+			byte[] shortened = truncate(siamByteArrays[i], 4);
+			assertTrue("Shortened SIAM byte array " + i
+					+ " should be handled the same way", Arrays.equals(
+					convert(shortened), transcode(shortened)));
+
+			// Cut off in the middle of the buffers
+			byte[] truncated = truncate(siamByteArrays[i], 6);
+			assertTrue("Truncated SIAM byte array " + i
+					+ " should be handled the same way", Arrays.equals(
+					convert(truncated), transcode(truncated)));
+		}
+
+		// Only part of the header
+		byte[] header = truncate(siamByteArrays[1],
+				siamByteArrays[1].length - 40);
+		assertTrue("A partial header should be handled the same way", Arrays
+				.equals(convert(header), transcode(header)));
+
+		// A first buffer length that is longer than the array
+		byte[] corrupt = (byte[]) siamByteArrays[1].clone();
+		ByteBuffer.wrap(corrupt).putInt(68, 1000);
+		assertTrue("A bad length should be handled the same way", Arrays
+				.equals(convert(corrupt), transcode(corrupt)));
+
+		assertNull("Nothing to transcode", transcode(new byte[0]));
+		assertNull("Nothing to transcode", transcode(null));
+	}
+
+	private static byte[] convert(byte[] siamByteArray) {
+		return PacketUtility.convertSIAMByteArrayToVersion3SSDSByteArray(
+				siamByteArray, false, false, false, false);
+	}
+
+	private static byte[] transcode(byte[] siamByteArray) {
+		return PacketUtility
+				.transcodeSIAMByteArrayToVersion3SSDSByteArray(siamByteArray);
+	}
+
+	private static byte[] truncate(byte[] bytes, int bytesToDrop) {
+		byte[] truncated = new byte[bytes.length - bytesToDrop];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		return truncated;
+	}
+}
@@ -0,0 +1,148 @@
+package test.moos.ssds.io.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import moos.ssds.io.util.PacketUtility;
+import moos.ssds.io.util.SSDSv3PacketView;
+
+public class TestSSDSv3PacketView extends TestCase {
+
+	public TestSSDSv3PacketView(String name) {
+		super(name);
+	}
+
+	public void testHeaderAndBuffers() {
+		byte[] dataBuffer = "This is the data buffer".getBytes();
+		byte[] otherBuffer = "other".getBytes();
+		byte[] ssdsByteArray = PacketUtility.createVersion3SSDSByteArray(101,
+				100, 0, 1, 2, 3, 1234567890, 500000, 42, dataBuffer,
+				otherBuffer);
+
+		SSDSv3PacketView packetView = new SSDSv3PacketView(ssdsByteArray);
+		assertEquals("deviceID should match", 101, packetView.getDeviceID());
+		assertEquals("parentID should match", 100, packetView.getParentID());
+		assertEquals("packetType should match", 0, packetView.getPacketType());
+		assertEquals("packetSubType should match", 1, packetView
+				.getPacketSubType());
+		assertEquals("dataDescriptionID should match", 2, packetView
+				.getDataDescriptionID());
+		assertEquals("dataDescriptionVersion should match", 3, packetView
+				.getDataDescriptionVersion());
+		assertEquals("timestampSeconds should match", 1234567890, packetView
+				.getTimestampSeconds());
+		assertEquals("timestampNanoseconds should match", 500000, packetView
+				.getTimestampNanoseconds());
+		assertEquals("sequenceNumber should match", 42, packetView
+				.getSequenceNumber());
+		assertEquals("Data buffer length should match", dataBuffer.length,
+				packetView.getDataBufferLength());
+		assertTrue("Data buffer should match", Arrays.equals(dataBuffer,
+				packetView.copyDataBuffer()));
+		assertEquals("Other buffer length should match", otherBuffer.length,
+				packetView.getOtherBufferLength());
+		assertTrue("Other buffer should match", Arrays.equals(otherBuffer,
+				packetView.copyOtherBuffer()));
+		assertEquals("Length should be the whole array", ssdsByteArray.length,
+				packetView.getLength());
+
+		// The slice should share the bytes of the packet
+		ByteBuffer dataSlice = packetView.getDataBuffer();
+		assertEquals("Slice should be the data buffer length",
+				dataBuffer.length, dataSlice.remaining());
+		assertEquals("Slice should start at the data buffer", dataBuffer[0],
+				dataSlice.get(0));
+	}
+
+	public void testRewrapAndOffset() {
+		byte[] first = PacketUtility.createVersion3SSDSByteArray(1, 2, 0, 3,
+				4, 5, 6, 7, 8, "one".getBytes(), null);
+		byte[] second = PacketUtility.createVersion3SSDSByteArray(11, 12, 1,
+				13, 14, 15, 16, 17, 18, "two".getBytes(), "2".getBytes());
+
+		// Put the second packet after some leading bytes
+		ByteBuffer buffer = ByteBuffer.allocate(10 + second.length);
+		buffer.position(10);
+		buffer.put(second);
+		buffer.flip();
+
+		SSDSv3PacketView packetView = new SSDSv3PacketView(first);
+		assertEquals("deviceID should match", 1, packetView.getDeviceID());
+		assertEquals("Other buffer should be empty", 0, packetView
+				.getOtherBufferLength());
+
+		packetView.wrap(buffer, 10);
+		assertEquals("deviceID should match", 11, packetView.getDeviceID());
+		assertEquals("sequenceNumber should match", 18, packetView
+				.getSequenceNumber());
+		assertEquals("Data buffer should be at an absolute offset",
+				10 + SSDSv3PacketView.HEADER_LENGTH, packetView
+						.getDataBufferOffset());
+		assertEquals("Data buffer should match", "two", new String(packetView
+				.copyDataBuffer()));
+		assertEquals("Other buffer should match", "2", new String(packetView
+				.copyOtherBuffer()));
+	}
+
+	public void testTruncatedPacket() {
+		byte[] ssdsByteArray = PacketUtility.createVersion3SSDSByteArray(1, 2,
+				0, 3, 4, 5, 6, 7, 8, "some data".getBytes(), null);
+		byte[] truncated = new byte[ssdsByteArray.length - 6];
+		System.arraycopy(ssdsByteArray, 0, truncated, 0, truncated.length);
+		try {
+			new SSDSv3PacketView(truncated);
+			fail("A truncated packet should not be wrapped");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	public void testLengthOverflow() {
+		byte[] ssdsByteArray = PacketUtility.createVersion3SSDSByteArray(1, 2,
+				0, 3, 4, 5, 6, 7, 8, "some data".getBytes(), null);
+		ByteBuffer buffer = ByteBuffer.allocate(10 + ssdsByteArray.length);
+		buffer.position(10);
+		buffer.put(ssdsByteArray);
+		buffer.flip();
+
+		// A length that wraps the end of the data buffer around to a
+		// negative index
+		buffer.putInt(10 + SSDSv3PacketView.BUFFER_LEN_OFFSET,
+				Integer.MAX_VALUE);
+		try {
+			new SSDSv3PacketView().wrap(buffer, 10);
+			fail("A data buffer length that overflows should not be wrapped");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+		// The same for the other buffer
+		buffer.putInt(10 + SSDSv3PacketView.BUFFER_LEN_OFFSET, 9);
+		buffer.putInt(10 + SSDSv3PacketView.BUFFER_BYTES_OFFSET + 9,
+				Integer.MAX_VALUE);
+		try {
+			new SSDSv3PacketView().wrap(buffer, 10);
+			fail("An other buffer length that overflows should not be wrapped");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	public void testLittleEndianBuffer() {
+		byte[] ssdsByteArray = PacketUtility.createVersion3SSDSByteArray(101,
+				100, 0, 1, 2, 3, 1234567890, 500000, 42, "data".getBytes(),
+				null);
+		ByteBuffer buffer = ByteBuffer.wrap(ssdsByteArray).order(
+				ByteOrder.LITTLE_ENDIAN);
+		SSDSv3PacketView packetView = new SSDSv3PacketView().wrap(buffer, 0);
+		assertEquals("deviceID should be read big endian", 101, packetView
+				.getDeviceID());
+		assertEquals("sequenceNumber should be read big endian", 42,
+				packetView.getSequenceNumber());
+		assertEquals("data", new String(packetView.copyDataBuffer()));
+		assertEquals("The order of the buffer is left alone",
+				ByteOrder.LITTLE_ENDIAN, buffer.order());
+	}
+}
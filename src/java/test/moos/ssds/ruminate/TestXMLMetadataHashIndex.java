@@ -0,0 +1,96 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.ruminate;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import moos.ssds.ruminate.XMLMetadataHashIndex;
+
+/**
+ * This tests the hash index that ruminate uses to check if the XML that comes
+ * in with a set of keys has been seen before.
+ */
+public class TestXMLMetadataHashIndex extends TestCase {
+
+	public TestXMLMetadataHashIndex(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		indexFile = File.createTempFile("xmlHashIndex", ".txt");
+		indexFile.delete();
+	}
+
+	protected void tearDown() throws Exception {
+		indexFile.delete();
+	}
+
+	public void testNormalizedHashes() {
+		String xml = "<Metadata>\n  <Device id=\"101\"/>\n\n</Metadata>";
+		String sameXML = "\r\n<Metadata>  \r\n  <Device id=\"101\"/>\r\n\r\n</Metadata>\r\n\r\n";
+		String otherXML = "<Metadata>\n  <Device id=\"102\"/>\n\n</Metadata>";
+		assertEquals("Line endings and trailing space should not matter",
+				XMLMetadataHashIndex.hashXML(xml), XMLMetadataHashIndex
+						.hashXML(sameXML));
+		assertTrue("Different XML should hash differently",
+				!XMLMetadataHashIndex.hashXML(xml).equals(
+						XMLMetadataHashIndex.hashXML(otherXML)));
+		assertTrue("Leading space is significant", !XMLMetadataHashIndex
+				.hashXML(xml).equals(
+						XMLMetadataHashIndex.hashXML(xml.replaceAll("  ",
+								" "))));
+		assertEquals("The hash should be hex SHA-256", 64, XMLMetadataHashIndex
+				.hashXML(xml).length());
+	}
+
+	public void testAddIfNewAndReload() throws IOException {
+		String key = XMLMetadataHashIndex.createKey(101, 100, 3);
+		String otherKey = XMLMetadataHashIndex.createKey(102, 100, 3);
+		String hashA = XMLMetadataHashIndex.hashXML("<A/>");
+		String hashB = XMLMetadataHashIndex.hashXML("<B/>");
+
+		XMLMetadataHashIndex index = new XMLMetadataHashIndex(indexFile);
+		assertTrue("A new file should not be loaded", !index
+				.isLoadedFromFile());
+		assertTrue("The first document should be new", index.addIfNew(key,
+				hashA, "a.xml"));
+		assertTrue("A repeat should not be new", !index.addIfNew(key, hashA,
+				"a2.xml"));
+		assertTrue("A change should be new", index.addIfNew(key, hashB,
+				"b.xml"));
+		assertTrue("Going back to the first is not new", !index.addIfNew(key,
+				hashA, "a3.xml"));
+		assertTrue("The same document for another key is new", index
+				.addIfNew(otherKey, hashA, "a4.xml"));
+
+		// The index should come back the same from the file
+		XMLMetadataHashIndex reloaded = new XMLMetadataHashIndex(indexFile);
+		assertTrue("The file should be loaded", reloaded.isLoadedFromFile());
+		assertEquals("There should be two documents for the key", 2, reloaded
+				.getNumberOfHashes(key));
+		assertTrue("The first document should be there", reloaded.contains(
+				key, hashA));
+		assertTrue("A repeat should still not be new", !reloaded.addIfNew(
+				otherKey, hashA, "a5.xml"));
+	}
+
+	/**
+	 * The file the index is kept in
+	 */
+	private File indexFile = null;
+}
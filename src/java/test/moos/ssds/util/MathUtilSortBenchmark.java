@@ -0,0 +1,162 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.util;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.mbari.util.MathUtil;
+
+/**
+ * <p>
+ * This times the sorts of <code>MathUtil</code> against the ones they
+ * replaced (a <code>TreeMap</code> for <code>uniqueSort</code> and an
+ * insertion sort for <code>getSortOrder</code>) on time series from 10^3 to
+ * 10^7 values. It is not a JUnit test, run it with:
+ * </p>
+ *
+ * <pre>
+ * java test.moos.ssds.util.MathUtilSortBenchmark [maxSize [maxInsertionSize]]
+ * </pre>
+ *
+ * <p>
+ * The old insertion sort is O(n^2), so by default it is only timed up to 10^5
+ * values. Each series is mostly in order with some values out of place and
+ * some duplicates, like the timestamps of a data stream.
+ * </p>
+ * <hr>
+ *
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class MathUtilSortBenchmark {
+
+	public static void main(String[] args) {
+		int maxSize = (args.length > 0) ? Integer.parseInt(args[0])
+				: 10000000;
+		int maxInsertionSize = (args.length > 1) ? Integer.parseInt(args[1])
+				: 100000;
+
+		System.out.println("size\tgetSortOrder(ms)\told(ms)"
+				+ "\tuniqueSort(ms)\told(ms)");
+		for (int size = 1000; size <= maxSize; size *= 10) {
+			long[] times = createTimes(size);
+
+			// Warm up once so the first size is not all JIT
+			if (size == 1000) {
+				MathUtil.getSortOrder(times);
+				MathUtil.uniqueSort(times);
+			}
+
+			long start = System.nanoTime();
+			int[] order = MathUtil.getSortOrder(times);
+			long sortMillis = (System.nanoTime() - start) / 1000000;
+
+			String oldSortMillis = "-";
+			if (size <= maxInsertionSize) {
+				start = System.nanoTime();
+				int[] oldOrder = insertionSortOrder(times);
+				oldSortMillis = String
+						.valueOf((System.nanoTime() - start) / 1000000);
+				check("getSortOrder", order, oldOrder);
+			}
+
+			start = System.nanoTime();
+			int[] unique = MathUtil.uniqueSort(times);
+			long uniqueMillis = (System.nanoTime() - start) / 1000000;
+
+			start = System.nanoTime();
+			int[] oldUnique = treeMapUniqueSort(times);
+			long oldUniqueMillis = (System.nanoTime() - start) / 1000000;
+			check("uniqueSort", unique, oldUnique);
+
+			System.out.println(size + "\t" + sortMillis + "\t" + oldSortMillis
+					+ "\t" + uniqueMillis + "\t" + oldUniqueMillis);
+		}
+	}
+
+	/**
+	 * This makes a series of timestamps one second apart where about one in a
+	 * hundred is out of place and about one in a thousand is a repeat
+	 */
+	private static long[] createTimes(int size) {
+		Random random = new Random(size);
+		long[] times = new long[size];
+		for (int i = 0; i < size; i++) {
+			times[i] = 1230768000000L + i * 1000L;
+			if (random.nextInt(100) == 0)
+				times[i] -= random.nextInt(100) * 1000L;
+			else if ((i > 0) && (random.nextInt(1000) == 0))
+				times[i] = times[i - 1];
+		}
+		return times;
+	}
+
+	private static void check(String name, int[] order, int[] oldOrder) {
+		if (order.length != oldOrder.length)
+			throw new IllegalStateException(name + " found " + order.length
+					+ " values, the old one " + oldOrder.length);
+		for (int i = 0; i < order.length; i++) {
+			if (order[i] != oldOrder[i])
+				throw new IllegalStateException(name
+						+ " does not match the old one at " + i);
+		}
+	}
+
+	/**
+	 * This is how <code>uniqueSort</code> used to work
+	 */
+	private static int[] treeMapUniqueSort(long[] x) {
+		TreeMap tm = new TreeMap();
+		for (int i = 0; i < x.length; i++) {
+			Long key = new Long(x[i]);
+			if (!tm.containsKey(key))
+				tm.put(key, new Integer(i));
+		}
+		Object[] values = tm.values().toArray();
+		int[] order = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+			order[i] = ((Integer) values[i]).intValue();
+		return order;
+	}
+
+	/**
+	 * This is how <code>getSortOrder</code> used to work
+	 */
+	private static int[] insertionSortOrder(long[] x) {
+		int[] orderToReturn = new int[x.length];
+		for (int i = 0; i < x.length; i++) {
+			if (i > 0) {
+				boolean inserted = false;
+				for (int j = 0; j < i; j++) {
+					if (x[orderToReturn[j]] > x[i]) {
+						for (int k = i; k > j; k--)
+							orderToReturn[k] = orderToReturn[k - 1];
+						orderToReturn[j] = i;
+						inserted = true;
+					}
+					if (inserted)
+						break;
+				}
+				if (!inserted)
+					orderToReturn[i] = i;
+			} else {
+				orderToReturn[0] = i;
+			}
+		}
+		return orderToReturn;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1 
+ * (the "License"); you may not use this file except in compliance 
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.moos.ssds.util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.mbari.util.MathUtil;
+
+/**
+ * This is the test class to test the sorting methods of the MathUtil class
+ * 
+ * @author : $Author: kgomes $
+ * @version : $Revision: 1.1.2.1 $
+ */
+public class TestMathUtil extends TestCase {
+
+	public TestMathUtil(String arg0) {
+		super(arg0);
+	}
+
+	public void testSmallSorts() {
+		double[] x = { 3.0, 1.0, 2.0, 1.0, Double.NaN, -5.0, 2.0 };
+		assertOrder("Duplicates should stay in order", new int[] { 5, 1, 3,
+				2, 6, 0, 4 }, MathUtil.getSortOrder(x));
+		assertOrder("Only the first duplicate should be kept", new int[] { 5,
+				1, 2, 0, 4 }, MathUtil.uniqueSort(x));
+
+		long[] times = { 30, 10, 20, 10 };
+		assertOrder("Longs should sort", new int[] { 1, 3, 2, 0 }, MathUtil
+				.getSortOrder(times));
+		assertOrder("Unique longs should sort", new int[] { 1, 2, 0 },
+				MathUtil.uniqueSort(times));
+		assertEquals("The array should not be changed", 30, times[0]);
+
+		Long[] boxedTimes = { new Long(30), new Long(10), new Long(10) };
+		assertOrder("Long objects should sort", new int[] { 1, 2, 0 },
+				MathUtil.getSortOrder(boxedTimes));
+		assertOrder("Unique Long objects should sort", new int[] { 1, 0 },
+				MathUtil.uniqueSort(boxedTimes));
+
+		assertEquals("An empty array has no order", 0, MathUtil
+				.uniqueSort(new double[0]).length);
+	}
+
+	/**
+	 * This test sorts a large array and checks it is sorted, stable and has
+	 * all the indexes
+	 */
+	public void testLargeSort() {
+		int n = (1 << 18) + 17;
+		long[] x = new long[n];
+		Random random = new Random(42);
+		for (int i = 0; i < n; i++)
+			x[i] = random.nextInt(n / 3);
+
+		int[] order = MathUtil.getSortOrder(x);
+		assertEquals("All the indexes should be there", n, order.length);
+		boolean[] seen = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			assertTrue("Each index should be there once", !seen[order[i]]);
+			seen[order[i]] = true;
+			if (i > 0) {
+				assertTrue("The values should be sorted",
+						x[order[i - 1]] <= x[order[i]]);
+				if (x[order[i - 1]] == x[order[i]])
+					assertTrue("The sort should be stable",
+							order[i - 1] < order[i]);
+			}
+		}
+
+		int[] unique = MathUtil.uniqueSort(x);
+		for (int i = 1; i < unique.length; i++)
+			assertTrue("The values should be unique",
+					x[unique[i - 1]] < x[unique[i]]);
+		int[] firstIndex = new int[n / 3];
+		for (int i = n - 1; i >= 0; i--)
+			firstIndex[(int) x[i]] = i;
+		for (int i = 0; i < unique.length; i++)
+			assertEquals("The first of the duplicates should be kept",
+					firstIndex[(int) x[unique[i]]], unique[i]);
+	}
+
+	private void assertOrder(String message, int[] expected, int[] actual) {
+		assertEquals(message, expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(message, expected[i], actual[i]);
+	}
+}